@@ -14,6 +14,16 @@ android {
         versionName = "1.0"
 
         testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
+
+        // Clave HMAC para firmar los lotes que se suben al servidor (la misma que
+        // CLAVE_HMAC en el .env del servidor). Se pasa con -PclaveHmac=... o en
+        // ~/.gradle/gradle.properties para no dejarla en el repositorio
+        val claveHmac = (project.findProperty("claveHmac") as String?) ?: ""
+        buildConfigField("String", "CLAVE_HMAC", "\"$claveHmac\"")
+    }
+
+    buildFeatures {
+        buildConfig = true
     }
 
     buildTypes {
@@ -29,6 +39,19 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+
+    testOptions {
+        // Las clases que se prueban en la JVM escriben en android.util.Log;
+        // con el android.jar de AGP eso lanza "Method ... not mocked" si no
+        // se devuelven los valores por defecto
+        unitTests.isReturnDefaultValues = true
+        // Las pruebas de rendimiento (los *BenchmarkTest y las tablas de medidas)
+        // no corren en la ejecución normal de las pruebas: se piden con
+        // ./gradlew testDebugUnitTest -Pbenchmarks=true
+        unitTests.all {
+            it.systemProperty("benchmarks", (project.findProperty("benchmarks") as String?) ?: "false")
+        }
+    }
 }
 
 dependencies {
@@ -37,6 +60,12 @@ dependencies {
     implementation(libs.material)
     implementation(libs.activity)
     implementation(libs.constraintlayout)
+    // Perfil de arranque (src/main/baseline-prof.txt): las clases y métodos
+    // del arranque y del camino de cada trama se compilan a código nativo al
+    // instalar, en lugar de ir interpretados hasta que los compila el JIT.
+    // AGP lo mete en el APK y profileinstaller lo instala también cuando la
+    // app no viene de Play (APK instalado a mano en los móviles de campo)
+    implementation(libs.profileinstaller)
     testImplementation(libs.junit)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
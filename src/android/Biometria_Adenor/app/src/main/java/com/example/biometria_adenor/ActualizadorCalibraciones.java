@@ -0,0 +1,207 @@
+package com.example.biometria_adenor;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// -----------------------------------------------------------------------------------
+// Descarga periódicamente del servidor el registro de calibraciones de los
+// sensores y lo aplica al RegistroCalibraciones de la app
+//
+//   GET /api/calibraciones
+//   ->  {"calibraciones": [
+//          {"sensor": "D4:...", "tipo": "gas", "polinomio": [-12.5, 1.02]},
+//          {"sensor": "D4:...", "tipo": "temperatura", "crudos": [0, 4095], "valores": [-40, 125]},
+//          ...]}
+//
+// Se ejecuta en el ejecutor de subidas (scheduleWithFixedDelay con
+// PERIODO_MS). Las calibraciones que no se entienden se saltan; si falla la
+// descarga se sigue con las curvas que había
+// -----------------------------------------------------------------------------------
+public class ActualizadorCalibraciones implements Runnable {
+
+    // Cada cuánto se descarga (las calibraciones cambian muy de vez en cuando)
+    public static final long PERIODO_MS = 10 * 60_000;
+
+    private static final String ETIQUETA_LOG = "ActualizadorCalibraciones";
+
+    // URL del registro de calibraciones
+    private final String laUrl;
+
+    // Registro donde se aplican
+    private final RegistroCalibraciones elRegistro;
+
+    // Transporte por el que se pide
+    private final TransportePersistente elTransporte;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param url - URL del registro (Logica.URL_CALIBRACIONES)
+    // @param registro - registro que usa la ingesta
+    // @param transporte - transporte por el que se pide
+    // -------------------------------------------------------------------------------
+    public ActualizadorCalibraciones(String url, RegistroCalibraciones registro, TransportePersistente transporte) {
+        this.laUrl = url;
+        this.elRegistro = registro;
+        this.elTransporte = transporte;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Tarea periódica: actualiza y se traga los errores (se reintenta en la
+    // siguiente vuelta)
+    // -------------------------------------------------------------------------------
+    @Override
+    public void run() {
+        try {
+            actualizar();
+        } catch (IOException | RuntimeException e) {
+            Log.w(ETIQUETA_LOG, "run(): no se pudo actualizar: " + e.getMessage());
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Pide el registro y, si el servidor contesta 200 con la lista, la aplica
+    // @return código HTTP de la respuesta
+    // @throws IOException si no se pudo contactar con el servidor
+    // -------------------------------------------------------------------------------
+    public int actualizar() throws IOException {
+        LectorCalibraciones manejador = new LectorCalibraciones();
+        int codigo = this.elTransporte.enviar("GET", this.laUrl, (CuerpoPeticion) null,
+                LectorRespuesta.json(manejador)).getCodigo();
+        if (codigo == 200 && manejador.hayLista) {
+            this.elRegistro.aplicar(manejador.calibraciones);
+        }
+        Log.d(ETIQUETA_LOG, "actualizar(): codigo = " + codigo + ", calibraciones = "
+                + manejador.calibraciones.size() + ", saltadas = " + manejador.saltadas);
+        return codigo;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee la respuesta: cada objeto de "calibraciones" es una curva
+    // -------------------------------------------------------------------------------
+    static class LectorCalibraciones implements DecodificadorJSON.Manejador {
+        final List<RegistroCalibraciones.Calibracion> calibraciones = new ArrayList<>();
+        boolean hayLista = false;
+        int saltadas = 0;
+
+        // Profundidad de objetos: la respuesta es 1 y cada calibración 2
+        private int profundidad = 0;
+        private boolean enLista = false;
+        private String claveActual = null;
+
+        // Campos de la calibración que se está leyendo
+        private String sensor;
+        private String tipo;
+        private List<Double> numeros;
+        private double[] polinomio;
+        private double[] crudos;
+        private double[] valores;
+
+        @Override
+        public void inicioObjeto() {
+            this.profundidad++;
+            if (this.enLista && this.profundidad == 2) {
+                this.sensor = null;
+                this.tipo = null;
+                this.polinomio = null;
+                this.crudos = null;
+                this.valores = null;
+            }
+        }
+
+        @Override
+        public void finObjeto() {
+            if (this.enLista && this.profundidad == 2) {
+                terminarCalibracion();
+            }
+            this.profundidad--;
+        }
+
+        @Override
+        public void clave(CharSequence nombre) {
+            this.claveActual = nombre.toString();
+        }
+
+        @Override
+        public void inicioArray() {
+            if (this.profundidad == 1 && "calibraciones".equals(this.claveActual)) {
+                this.enLista = true;
+                this.hayLista = true;
+            } else if (this.enLista && this.profundidad == 2) {
+                this.numeros = new ArrayList<>();
+            }
+        }
+
+        @Override
+        public void finArray() {
+            if (this.enLista && this.profundidad == 2 && this.numeros != null) {
+                double[] lista = new double[this.numeros.size()];
+                for (int i = 0; i < lista.length; i++) {
+                    lista[i] = this.numeros.get(i);
+                }
+                if ("polinomio".equals(this.claveActual)) {
+                    this.polinomio = lista;
+                } else if ("crudos".equals(this.claveActual)) {
+                    this.crudos = lista;
+                } else if ("valores".equals(this.claveActual)) {
+                    this.valores = lista;
+                }
+                this.numeros = null;
+            } else if (this.enLista && this.profundidad == 1) {
+                this.enLista = false;
+            }
+        }
+
+        @Override
+        public void texto(CharSequence valor) {
+            if (this.enLista && this.profundidad == 2) {
+                if ("sensor".equals(this.claveActual)) {
+                    this.sensor = valor.toString();
+                } else if ("tipo".equals(this.claveActual)) {
+                    this.tipo = valor.toString();
+                }
+            }
+        }
+
+        @Override
+        public void numero(double valor) {
+            if (this.numeros != null) {
+                this.numeros.add(valor);
+            }
+        }
+
+        // Crea la curva de la calibración recién leída (o la salta si no vale)
+        private void terminarCalibracion() {
+            int t = RegistroCalibraciones.tipoDeTexto(this.tipo);
+            try {
+                if (this.sensor == null || t < 0) {
+                    throw new IllegalArgumentException("sin sensor o tipo desconocido: " + this.tipo);
+                }
+                CurvaCalibracion curva;
+                if (this.polinomio != null) {
+                    curva = CurvaCalibracion.polinomio(this.polinomio);
+                } else if (this.crudos != null && this.valores != null) {
+                    int[] enteros = new int[this.crudos.length];
+                    for (int i = 0; i < enteros.length; i++) {
+                        if (this.crudos[i] != Math.rint(this.crudos[i])) {
+                            throw new IllegalArgumentException("crudo no entero: " + this.crudos[i]);
+                        }
+                        enteros[i] = (int) this.crudos[i];
+                    }
+                    curva = CurvaCalibracion.tramos(enteros, this.valores);
+                } else {
+                    throw new IllegalArgumentException("sin polinomio ni tramos");
+                }
+                this.calibraciones.add(new RegistroCalibraciones.Calibracion(this.sensor, t, curva));
+            } catch (IllegalArgumentException e) {
+                this.saltadas++;
+                Log.w(ETIQUETA_LOG, "calibración de " + this.sensor + " saltada: " + e.getMessage());
+            }
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
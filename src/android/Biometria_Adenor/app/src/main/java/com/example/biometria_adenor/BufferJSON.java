@@ -0,0 +1,168 @@
+package com.example.biometria_adenor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// -----------------------------------------------------------------------------------
+// Buffer de bytes reutilizable donde se escribe el JSON de los lotes
+// Todo lo que se escribe en un lote es ASCII (claves, tipos y números), así
+// que cada carácter es un byte y no hace falta pasar por String ni
+// StringBuilder: el mismo array sirve para un envío tras otro y solo crece
+// si un lote no cabe
+// No es seguro entre hilos: cada EnviadorMediciones tiene el suyo
+// -----------------------------------------------------------------------------------
+public class BufferJSON {
+
+    // Bytes escritos hasta ahora (de 0 a longitud)
+    private byte[] bytes;
+    private int longitud;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param capacidad - bytes que se reservan al principio
+    // -------------------------------------------------------------------------------
+    public BufferJSON(int capacidad) {
+        this.bytes = new byte[Math.max(16, capacidad)];
+    }
+
+    // -------------------------------------------------------------------------------
+    // Vacía el buffer para escribir otro cuerpo (conserva el array)
+    // -------------------------------------------------------------------------------
+    public BufferJSON reiniciar() {
+        this.longitud = 0;
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe un carácter ASCII
+    // -------------------------------------------------------------------------------
+    public BufferJSON escribir(char c) {
+        asegurar(1);
+        this.bytes[this.longitud++] = (byte) c;
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe un texto ASCII tal cual (sin escapar: solo para claves y valores fijos)
+    // -------------------------------------------------------------------------------
+    public BufferJSON escribir(String texto) {
+        int n = texto.length();
+        asegurar(n);
+        for (int i = 0; i < n; i++) {
+            this.bytes[this.longitud + i] = (byte) texto.charAt(i);
+        }
+        this.longitud += n;
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe un entero en decimal sin crear ningún String
+    // -------------------------------------------------------------------------------
+    public BufferJSON escribirEntero(long valor) {
+        if (valor == Long.MIN_VALUE) {
+            return escribir("-9223372036854775808");
+        }
+        asegurar(20);
+        if (valor < 0) {
+            this.bytes[this.longitud++] = '-';
+            valor = -valor;
+        }
+        // Cifras al revés y luego se les da la vuelta
+        int inicio = this.longitud;
+        do {
+            this.bytes[this.longitud++] = (byte) ('0' + (int) (valor % 10));
+            valor /= 10;
+        } while (valor != 0);
+        for (int i = inicio, j = this.longitud - 1; i < j; i++, j--) {
+            byte b = this.bytes[i];
+            this.bytes[i] = this.bytes[j];
+            this.bytes[j] = b;
+        }
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe un entero de 64 bits como 16 cifras hexadecimales (minúsculas,
+    // con ceros a la izquierda)
+    // -------------------------------------------------------------------------------
+    public BufferJSON escribirHexadecimal(long valor) {
+        asegurar(16);
+        for (int i = this.longitud + 15; i >= this.longitud; i--) {
+            int cifra = (int) (valor & 0xF);
+            this.bytes[i] = (byte) (cifra < 10 ? '0' + cifra : 'a' + cifra - 10);
+            valor >>>= 4;
+        }
+        this.longitud += 16;
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe un número con como mucho "decimales" cifras decimales (redondeado
+    // y sin ceros al final: 21.5, -3, 0.125) sin crear ningún String
+    // @param valor - número finito
+    // @param decimales - cifras decimales (0..9)
+    // -------------------------------------------------------------------------------
+    public BufferJSON escribirDecimal(double valor, int decimales) {
+        long escala = 1;
+        for (int i = 0; i < decimales; i++) {
+            escala *= 10;
+        }
+        double escalado = valor * escala;
+        // Tan grande que no cabe en un long con los decimales: sin decimales
+        if (Math.abs(escalado) >= 9e18) {
+            return escribirEntero(Math.round(valor));
+        }
+        long n = Math.round(escalado);
+        if (n < 0) {
+            escribir('-');
+            n = -n;
+        }
+        escribirEntero(n / escala);
+        long fraccion = n % escala;
+        if (fraccion == 0) {
+            return this;
+        }
+        int cifras = decimales;
+        while (fraccion % 10 == 0) {
+            fraccion /= 10;
+            cifras--;
+        }
+        asegurar(cifras + 1);
+        this.bytes[this.longitud++] = '.';
+        for (int i = this.longitud + cifras - 1; i >= this.longitud; i--) {
+            this.bytes[i] = (byte) ('0' + (int) (fraccion % 10));
+            fraccion /= 10;
+        }
+        this.longitud += cifras;
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el array interno (solo valen los primeros getLongitud() bytes)
+    // -------------------------------------------------------------------------------
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve cuántos bytes se han escrito
+    // -------------------------------------------------------------------------------
+    public int getLongitud() {
+        return this.longitud;
+    }
+
+    @Override
+    public String toString() {
+        return new String(this.bytes, 0, this.longitud, StandardCharsets.US_ASCII);
+    }
+
+    // Hace sitio para n bytes más (dobla el array si no caben)
+    private void asegurar(int n) {
+        if (this.longitud + n > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, Math.max(this.bytes.length * 2, this.longitud + n));
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,115 @@
+package com.example.biometria_adenor;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// -----------------------------------------------------------------------------------
+// Calentamiento del camino de cada trama al arrancar la app
+// La primera vez que se ejecuta, el código que decodifica las tramas
+// (FormatoTrama, TramaMultivalor, TramaDeltas, SeguidorSecuencias, el
+// trabajador del motor) va interpretado y las primeras tramas del primer
+// escaneo se procesan mucho más despacio. Para evitarlo, mientras el usuario ve
+// la pantalla se pasan tramas sintéticas de los tres formatos por un motor de
+// usar y tirar (un trabajador, destino que no hace nada), así el JIT compila
+// ese código antes de que llegue la primera trama de verdad.
+// Las mediciones que salen no van a ningún sitio: no se suben ni cuentan en
+// el motor de la app. Si el escaneo de verdad empieza antes de terminar, se
+// deja a medias para no quitarle CPU a las primeras tramas
+// -----------------------------------------------------------------------------------
+public class CalentadorEscaneo {
+
+    // Tramas de cada formato que se procesan por defecto (lo bastante para que
+    // los métodos del camino de cada trama pasen a ser "calientes")
+    public static final int TRAMAS_POR_DEFECTO = 3000;
+
+    // Sensores sintéticos entre los que se reparten las tramas
+    static final int SENSORES = 8;
+
+    // UUID de las tramas iBeacon clásicas (el de siempre del proyecto)
+    private static final byte[] UUID_CLASICO = "EPSG-GTI-PROY-3A".getBytes();
+
+    // -------------------------------------------------------------------------------
+    // Procesa tramas sintéticas de los tres formatos en un motor de usar y tirar
+    // Se llama desde un hilo en segundo plano (tarda unas decenas de ms)
+    // @param tramas - tramas de cada formato
+    // @return estadísticas del motor de usar y tirar
+    // -------------------------------------------------------------------------------
+    public static MotorEscaneo.Estadisticas calentar(int tramas) throws Exception {
+        return calentar(tramas, new AtomicBoolean(false));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, pero deja de meter tramas en cuanto "parar" es true
+    // @param tramas - tramas de cada formato
+    // @param parar - se pone a true cuando empieza el escaneo de verdad
+    // @return estadísticas del motor de usar y tirar (con las tramas que dio tiempo)
+    // -------------------------------------------------------------------------------
+    public static MotorEscaneo.Estadisticas calentar(int tramas, AtomicBoolean parar) throws Exception {
+        MotorEscaneo motor = new MotorEscaneo(1, (sensor, tipo, contador, valor, rssi, instante) -> { },
+                Reloj.SISTEMA, MotorEscaneo.SIN_RSSI_MINIMO);
+        try {
+            String[] sensores = new String[SENSORES];
+            for (int s = 0; s < SENSORES; s++) {
+                sensores[s] = String.format("02:00:00:00:00:%02X", s);
+            }
+            byte[] uuid = new byte[16];
+            int[] muestras = new int[TramaDeltas.MAXIMO_MUESTRAS];
+            int[] tipos = {MotorEscaneo.TIPO_GAS, MotorEscaneo.TIPO_TEMPERATURA};
+            int[] valores = new int[2];
+
+            // Se encola por tandas que caben en la cola del trabajador
+            int tanda = MotorEscaneo.CAPACIDAD_COLA / 4;
+            for (int i = 0; i < tramas && !parar.get(); i++) {
+                String sensor = sensores[i % SENSORES];
+                // Contador que avanza en cada sensor: las tramas son nuevas
+                int vuelta = i / SENSORES;
+
+                motor.recibir(sensor, -60, tramaIBeacon(UUID_CLASICO,
+                        (MotorEscaneo.TIPO_GAS << 8) | (vuelta & 0xFF), 400 + (i & 0x3F)), 0);
+
+                valores[0] = 400 + (i & 0x3F);
+                valores[1] = 21;
+                TramaMultivalor.escribirUUID(uuid, vuelta, tipos, valores);
+                motor.recibir(sensor, -60, tramaIBeacon(uuid, 0, 0), 0);
+
+                for (int m = 0; m < muestras.length; m++) {
+                    muestras[m] = 400 + ((i + m) & 0x3F);
+                }
+                int metidas = TramaDeltas.escribirUUID(uuid, 1, muestras, muestras.length);
+                int contador = (vuelta * metidas + metidas - 1) & 0xFF;
+                motor.recibir(sensor, -60, tramaIBeacon(uuid,
+                        (MotorEscaneo.TIPO_TEMPERATURA << 8) | contador, muestras[metidas - 1] & 0xFFFF), 0);
+
+                if ((i + 1) % tanda == 0) {
+                    motor.vaciar(5_000);
+                }
+            }
+            motor.vaciar(5_000);
+            return motor.getEstadisticas();
+        } finally {
+            motor.detener();
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Trama iBeacon completa (con flags) como las que da ScanRecord.getBytes()
+    // @param uuid - 16 bytes del UUID (o la carga de un formato propio)
+    // @param major - major (16 bits)
+    // @param minor - minor (16 bits)
+    // @return la trama
+    // -------------------------------------------------------------------------------
+    static byte[] tramaIBeacon(byte[] uuid, int major, int minor) {
+        byte[] b = new byte[FormatoTrama.LONGITUD_IBEACON];
+        byte[] prefijo = {0x02, 0x01, 0x06, 0x1A, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15};
+        System.arraycopy(prefijo, 0, b, 0, prefijo.length);
+        System.arraycopy(uuid, 0, b, FormatoTrama.INICIO_UUID, 16);
+        b[25] = (byte) (major >> 8);
+        b[26] = (byte) major;
+        b[27] = (byte) (minor >> 8);
+        b[28] = (byte) minor;
+        b[29] = (byte) -59;
+        return b;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
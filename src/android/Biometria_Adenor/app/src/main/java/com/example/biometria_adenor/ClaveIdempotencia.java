@@ -0,0 +1,122 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Clave de idempotencia de una medición: la misma lectura de un sensor da la
+// misma clave en cualquier móvil y en cualquier reintento, así que el servidor
+// puede descartar las repetidas (dos móviles que oyen el mismo sensor, un lote
+// que se reenvía porque la respuesta no llegó...)
+// Se calcula con lo que identifica la lectura en el propio anuncio:
+//   - el sensor (su dirección Bluetooth) y el tipo de medida,
+//   - el contador de la lectura (el del major da la vuelta cada 256),
+//   - la hora de la captura en ventanas de VENTANA_MS, para que el contador
+//     vuelva a valer lo mismo sin que choquen lecturas distintas.
+// La hora es la del servidor (la del móvil corregida con su desfase), no la
+// del móvil: si no, dos móviles con el reloj distinto no coincidirían.
+// Aun así el desfase de cada móvil tiene su error, y una lectura capturada
+// justo en el cambio de ventana puede caer en una en un móvil y en la
+// siguiente en otro. Por eso, a menos de MARGEN_VECINA_MS del cambio, la
+// medición lleva también la clave de la ventana de al lado (vecina()) y el
+// servidor la da por repetida si encuentra cualquiera de las dos.
+// Son 64 bits (FNV-1a) que viajan como 16 caracteres hexadecimales; 0 se
+// reserva para "sin clave"
+// -----------------------------------------------------------------------------------
+public final class ClaveIdempotencia {
+
+    // Ancho de la ventana de tiempo: el contador (8 bits) no debe dar la vuelta
+    // dentro de una ventana. Con un sensor que mide cada segundo tarda 256 s,
+    // y el Arduino mide cada 5-7 s
+    public static final long VENTANA_MS = 60_000L;
+
+    // Distancia al cambio de ventana por debajo de la cual se manda también la
+    // clave de la ventana de al lado: mucho más que el error del desfase
+    // estimado (unos ms o decenas de ms) y poco de la ventana (las claves de
+    // pocas mediciones viajan dobles)
+    public static final long MARGEN_VECINA_MS = 2_000L;
+
+    // Valor de "sin clave" (la medición se sube sin ella)
+    public static final long SIN_CLAVE = 0L;
+
+    // Constantes de FNV-1a de 64 bits
+    private static final long BASE_FNV = 0xcbf29ce484222325L;
+    private static final long PRIMO_FNV = 0x100000001b3L;
+
+    private static final char[] HEXADECIMAL = "0123456789abcdef".toCharArray();
+
+    private ClaveIdempotencia() {
+    }
+
+    // -------------------------------------------------------------------------------
+    // Parte de la clave que no depende de la hora: se calcula al capturar, sin
+    // crear objetos (recorre el texto del sensor carácter a carácter)
+    // @param sensor - dirección del sensor (la de ScanResult)
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param contador - contador de la lectura (el del major en iBeacon; en las
+    //                   tramas multivalor, la secuencia y la posición)
+    // @return semilla para calcular(); nunca SIN_CLAVE
+    // -------------------------------------------------------------------------------
+    public static long semilla(String sensor, int tipo, int contador) {
+        long h = BASE_FNV;
+        for (int i = 0; i < sensor.length(); i++) {
+            h = (h ^ sensor.charAt(i)) * PRIMO_FNV;
+        }
+        h = (h ^ (tipo & 0xFF)) * PRIMO_FNV;
+        for (int i = 0; i < 4; i++) {
+            h = (h ^ ((contador >>> (8 * i)) & 0xFF)) * PRIMO_FNV;
+        }
+        return h == SIN_CLAVE ? 1L : h;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Clave de la lectura: la semilla mezclada con la ventana de la captura
+    // @param semilla - lo que devolvió semilla()
+    // @param instanteServidorMillis - hora de la captura en el reloj del servidor
+    // @return la clave; nunca SIN_CLAVE
+    // -------------------------------------------------------------------------------
+    public static long calcular(long semilla, long instanteServidorMillis) {
+        return mezclar(semilla, Math.floorDiv(instanteServidorMillis, VENTANA_MS));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Clave de la misma lectura en la ventana de al lado (la anterior o la
+    // siguiente, la que esté más cerca), si la captura está a menos de
+    // MARGEN_VECINA_MS del cambio de ventana
+    // @param semilla - lo que devolvió semilla()
+    // @param instanteServidorMillis - hora de la captura en el reloj del servidor
+    // @return la clave vecina o SIN_CLAVE si la captura no está cerca del cambio
+    // -------------------------------------------------------------------------------
+    public static long vecina(long semilla, long instanteServidorMillis) {
+        long ventana = Math.floorDiv(instanteServidorMillis, VENTANA_MS);
+        long dentro = instanteServidorMillis - ventana * VENTANA_MS;
+        if (dentro < MARGEN_VECINA_MS) {
+            return mezclar(semilla, ventana - 1);
+        } else if (dentro >= VENTANA_MS - MARGEN_VECINA_MS) {
+            return mezclar(semilla, ventana + 1);
+        }
+        return SIN_CLAVE;
+    }
+
+    // Mezcla la semilla con el número de ventana (FNV-1a, byte a byte)
+    private static long mezclar(long semilla, long ventana) {
+        long h = semilla;
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ (ventana & 0xFF)) * PRIMO_FNV;
+            ventana >>>= 8;
+        }
+        return h == SIN_CLAVE ? 1L : h;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Texto de la clave (16 caracteres hexadecimales en minúsculas)
+    // -------------------------------------------------------------------------------
+    public static String aTexto(long clave) {
+        char[] texto = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            texto[i] = HEXADECIMAL[(int) (clave & 0xF)];
+            clave >>>= 4;
+        }
+        return new String(texto);
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,261 @@
+package com.example.biometria_adenor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// -----------------------------------------------------------------------------------
+// Prepara el cuerpo JSON de una petición antes de enviarlo:
+//
+//   1) Si ocupa al menos "umbral" bytes lo comprime con gzip o deflate.
+//      Los lotes de mediciones son series temporales muy repetitivas
+//      ({"tipo": "gas", "valor": ...}) y se quedan en una fracción del tamaño.
+//      Por debajo del umbral no compensa: la cabecera gzip y el coste de CPU
+//      se comen lo que se ahorra. Si comprimido no es más pequeño, va tal cual.
+//
+//   2) Si hay clave, calcula un HMAC-SHA256 de los bytes que salen por la red
+//      (ya comprimidos). El servidor lo comprueba antes de descomprimir y
+//      de parsear, así que un cuerpo falso se rechaza casi sin gastar CPU.
+//
+// El Deflater, el CRC32, el Mac y el buffer de salida se reutilizan por hilo
+// -----------------------------------------------------------------------------------
+public class CodificadorCuerpo {
+
+    // Algoritmos de compresión soportados (valor de Content-Encoding)
+    public enum Compresion {
+        NINGUNA(null), GZIP("gzip"), DEFLATE("deflate");
+
+        private final String cabecera;
+
+        Compresion(String cabecera) {
+            this.cabecera = cabecera;
+        }
+
+        public String getCabecera() {
+            return cabecera;
+        }
+    }
+
+    // Tamaño mínimo (bytes) a partir del cual se comprime por defecto
+    public static final int UMBRAL_POR_DEFECTO = 512;
+
+    // Nivel de compresión por defecto: el más rápido, que en JSON repetitivo
+    // comprime casi igual que los niveles altos con bastante menos CPU
+    public static final int NIVEL_POR_DEFECTO = Deflater.BEST_SPEED;
+
+    // Algoritmo de la firma
+    public static final String ALGORITMO_FIRMA = "HmacSHA256";
+
+    // Cabecera en la que viaja la firma (hexadecimal)
+    public static final String CABECERA_FIRMA = "X-Firma";
+
+    // Codificador que deja el cuerpo tal cual
+    public static final CodificadorCuerpo SIN_CODIFICAR =
+            new CodificadorCuerpo(Compresion.NINGUNA, UMBRAL_POR_DEFECTO, null);
+
+    // Cabecera gzip mínima: magic, método deflate, sin flags, sin fecha, SO desconocido
+    private static final byte[] CABECERA_GZIP = {
+            0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    // Deflater por hilo para deflate (formato zlib) y para gzip (deflate "crudo")
+    private static final ThreadLocal<Deflater> DEFLATER_ZLIB =
+            ThreadLocal.withInitial(() -> new Deflater(NIVEL_POR_DEFECTO, false));
+    private static final ThreadLocal<Deflater> DEFLATER_CRUDO =
+            ThreadLocal.withInitial(() -> new Deflater(NIVEL_POR_DEFECTO, true));
+    private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+
+    // Buffer de salida por hilo; crece si un lote no cabe y se queda así
+    private static final ThreadLocal<byte[]> SALIDA = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    private final Compresion compresion;
+    private final int nivel;
+    private final int umbral;
+
+    // Mac por hilo ya inicializado con la clave (null si no se firma)
+    private final ThreadLocal<Mac> elMac;
+
+    // -------------------------------------------------------------------------------
+    // Constructor con el nivel de compresión por defecto
+    // @param compresion - algoritmo a usar
+    // @param umbral - bytes a partir de los cuales se comprime
+    // @param clave - clave HMAC compartida con el servidor (null o vacía: sin firma)
+    // -------------------------------------------------------------------------------
+    public CodificadorCuerpo(Compresion compresion, int umbral, byte[] clave) {
+        this(compresion, NIVEL_POR_DEFECTO, umbral, clave);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param compresion - algoritmo a usar
+    // @param nivel - nivel de compresión (1 = rápido ... 9 = máximo)
+    // @param umbral - bytes a partir de los cuales se comprime
+    // @param clave - clave HMAC compartida con el servidor (null o vacía: sin firma)
+    // -------------------------------------------------------------------------------
+    public CodificadorCuerpo(Compresion compresion, int nivel, int umbral, byte[] clave) {
+        this.compresion = compresion;
+        this.nivel = nivel;
+        this.umbral = umbral;
+        if (clave == null || clave.length == 0) {
+            this.elMac = null;
+        } else {
+            final SecretKeySpec spec = new SecretKeySpec(clave.clone(), ALGORITMO_FIRMA);
+            this.elMac = ThreadLocal.withInitial(() -> crearMac(spec));
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Crea un codificador a partir de la clave en texto
+    // @param compresion - algoritmo a usar
+    // @param clave - clave HMAC en texto (null o vacía: sin firma)
+    // @return el codificador con el umbral por defecto
+    // -------------------------------------------------------------------------------
+    public static CodificadorCuerpo conClave(Compresion compresion, String clave) {
+        byte[] bytesClave = clave == null ? null : clave.getBytes(StandardCharsets.UTF_8);
+        return new CodificadorCuerpo(compresion, UMBRAL_POR_DEFECTO, bytesClave);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Comprime (si toca) y firma (si hay clave) el cuerpo
+    // @param json - bytes del JSON en UTF-8 (null si no hay cuerpo)
+    // @return el cuerpo listo para enviar, o null si json es null
+    // -------------------------------------------------------------------------------
+    public CuerpoPeticion codificar(byte[] json) {
+        if (json == null) {
+            return null;
+        }
+        return codificar(json, json.length);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que codificar(json), pero con los bytes en un buffer reutilizado
+    // (BufferJSON): se comprime directamente desde él y solo se copia lo justo
+    // @param json - array con el JSON en UTF-8 al principio
+    // @param longitud - cuántos bytes del array son el JSON
+    // @return el cuerpo listo para enviar (no comparte el array de entrada)
+    //         salvo que longitud sea json.length y no se comprima
+    // -------------------------------------------------------------------------------
+    public CuerpoPeticion codificar(byte[] json, int longitud) {
+        byte[] bytes = null;
+        String codificacion = null;
+        if (this.compresion != Compresion.NINGUNA && longitud >= this.umbral) {
+            byte[] comprimido = comprimir(json, longitud);
+            if (comprimido.length < longitud) {
+                bytes = comprimido;
+                codificacion = this.compresion.getCabecera();
+            }
+        }
+        if (bytes == null) {
+            bytes = longitud == json.length ? json : Arrays.copyOf(json, longitud);
+        }
+
+        String firma = this.elMac == null ? null : firmar(bytes);
+        return new CuerpoPeticion(bytes, codificacion, firma);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Calcula la firma HMAC en hexadecimal de unos bytes
+    // @param bytes - bytes a firmar
+    // @return firma en hexadecimal (minúsculas)
+    // @throws IllegalStateException si no hay clave
+    // -------------------------------------------------------------------------------
+    public String firmar(byte[] bytes) {
+        if (this.elMac == null) {
+            throw new IllegalStateException("firmar(): no hay clave");
+        }
+        Mac mac = this.elMac.get();
+        return aHexadecimal(mac.doFinal(bytes));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Comprime con el algoritmo configurado
+    // @param json - bytes a comprimir
+    // @param longitud - cuántos bytes del array se comprimen
+    // @return bytes comprimidos (array nuevo de la longitud justa)
+    // -------------------------------------------------------------------------------
+    private byte[] comprimir(byte[] json, int longitud) {
+        boolean gzip = this.compresion == Compresion.GZIP;
+        Deflater deflater = gzip ? DEFLATER_CRUDO.get() : DEFLATER_ZLIB.get();
+        deflater.reset();
+        deflater.setLevel(this.nivel);
+        deflater.setInput(json, 0, longitud);
+        deflater.finish();
+
+        byte[] salida = SALIDA.get();
+        int total = 0;
+        if (gzip) {
+            System.arraycopy(CABECERA_GZIP, 0, salida, 0, CABECERA_GZIP.length);
+            total = CABECERA_GZIP.length;
+        }
+        while (!deflater.finished()) {
+            if (total == salida.length) {
+                salida = Arrays.copyOf(salida, salida.length * 2);
+                SALIDA.set(salida);
+            }
+            total += deflater.deflate(salida, total, salida.length - total);
+        }
+
+        if (gzip) {
+            // Cola gzip: CRC32 y tamaño original, en little endian
+            if (total + 8 > salida.length) {
+                salida = Arrays.copyOf(salida, salida.length * 2);
+                SALIDA.set(salida);
+            }
+            CRC32 crc = CRC.get();
+            crc.reset();
+            crc.update(json, 0, longitud);
+            total = escribirEnteroLE(salida, total, (int) crc.getValue());
+            total = escribirEnteroLE(salida, total, longitud);
+        }
+        return Arrays.copyOf(salida, total);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe un entero de 4 bytes en little endian
+    // @return la posición siguiente
+    // -------------------------------------------------------------------------------
+    private static int escribirEnteroLE(byte[] destino, int pos, int valor) {
+        destino[pos] = (byte) valor;
+        destino[pos + 1] = (byte) (valor >>> 8);
+        destino[pos + 2] = (byte) (valor >>> 16);
+        destino[pos + 3] = (byte) (valor >>> 24);
+        return pos + 4;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Pasa bytes a texto hexadecimal en minúsculas
+    // -------------------------------------------------------------------------------
+    static String aHexadecimal(byte[] bytes) {
+        char[] texto = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            texto[2 * i] = HEX[(bytes[i] >> 4) & 0x0f];
+            texto[2 * i + 1] = HEX[bytes[i] & 0x0f];
+        }
+        return new String(texto);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Crea un Mac HMAC-SHA256 inicializado con la clave
+    // -------------------------------------------------------------------------------
+    private static Mac crearMac(SecretKeySpec spec) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO_FIRMA);
+            mac.init(spec);
+            return mac;
+        } catch (NoSuchAlgorithmException | InvalidKeyException ex) {
+            // HmacSHA256 está en todas las versiones de Android y de la JVM
+            throw new IllegalStateException("crearMac(): " + ex.getMessage(), ex);
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,63 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Cuerpo de una petición tal y como sale por la red
+// Guarda los bytes (comprimidos o no), la codificación usada para la cabecera
+// Content-Encoding y la firma HMAC para la cabecera X-Firma
+// -----------------------------------------------------------------------------------
+public class CuerpoPeticion {
+
+    // Bytes que se escriben en la conexión
+    private final byte[] bytes;
+
+    // Valor de Content-Encoding ("gzip", "deflate") o null si va sin comprimir
+    private final String codificacion;
+
+    // Firma HMAC en hexadecimal de los bytes, o null si no se firma
+    private final String firma;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param bytes - bytes del cuerpo
+    // @param codificacion - Content-Encoding o null
+    // @param firma - firma en hexadecimal o null
+    // -------------------------------------------------------------------------------
+    public CuerpoPeticion(byte[] bytes, String codificacion, String firma) {
+        this.bytes = bytes;
+        this.codificacion = codificacion;
+        this.firma = firma;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Cuerpo JSON sin comprimir ni firmar (null si no hay cuerpo)
+    // @param bytes - bytes del JSON en UTF-8 (puede ser null)
+    // @return el cuerpo, o null si bytes es null
+    // -------------------------------------------------------------------------------
+    public static CuerpoPeticion sinCodificar(byte[] bytes) {
+        return bytes == null ? null : new CuerpoPeticion(bytes, null, null);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve los bytes que se escriben en la conexión
+    // -------------------------------------------------------------------------------
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el Content-Encoding, o null si va sin comprimir
+    // -------------------------------------------------------------------------------
+    public String getCodificacion() {
+        return codificacion;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la firma HMAC en hexadecimal, o null si no va firmado
+    // -------------------------------------------------------------------------------
+    public String getFirma() {
+        return firma;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,268 @@
+package com.example.biometria_adenor;
+
+import java.util.Arrays;
+
+// -----------------------------------------------------------------------------------
+// Curva de calibración de un sensor: pasa el valor crudo del minor (16 bits,
+// 0..65535) a unidades de ingeniería (ppm, ºC)
+//
+// Hay dos formas de curva:
+//   - polinomio:  valor = c0 + c1·crudo + c2·crudo² + ...
+//   - tramos:     rectas entre puntos (crudo, valor); fuera del primer y del
+//                 último punto se queda en el valor del extremo
+//
+// El valor se calcula (en double) una sola vez en los 4097 nodos 0, 16, 32,
+// ..., 65536 y se guarda en una tabla de float: cada lectura se convierte con
+// convertir(), que busca el segmento con un desplazamiento de bits e
+// interpola entre sus dos nodos, sin potencias ni funciones de coma flotante.
+// En un polinomio el error de interpolar es de ANCHO_SEGMENTO²/8 por la
+// segunda derivada (milésimas en las curvas de los sensores); en los tramos
+// es exacto, porque los segmentos con un punto dentro se calculan con la
+// fórmula. La tabla ocupa 16 KB (mil sensores con curvas distintas son
+// 16 MB) y se calcula la primera vez que hace falta (preparar()), así que
+// crear una curva es barato y las curvas iguales se comparten
+// (RegistroCalibraciones reutiliza la que ya tiene gracias a equals())
+// No se modifica después de crearla: se puede usar desde cualquier hilo
+// -----------------------------------------------------------------------------------
+public class CurvaCalibracion {
+
+    // Número de valores crudos posibles (minor de 16 bits)
+    public static final int VALORES_CRUDOS = 1 << 16;
+
+    // Mayor valor crudo
+    public static final int MAXIMO_CRUDO = VALORES_CRUDOS - 1;
+
+    // Ancho de cada segmento de la tabla (en crudos) y número de segmentos
+    private static final int BITS_SEGMENTO = 4;
+    public static final int ANCHO_SEGMENTO = 1 << BITS_SEGMENTO;
+    public static final int SEGMENTOS = VALORES_CRUDOS >>> BITS_SEGMENTO;
+
+    private static final float INVERSO_ANCHO = 1f / ANCHO_SEGMENTO;
+
+    // Grado máximo de los polinomios (más no tiene sentido en una calibración)
+    public static final int MAXIMO_GRADO = 5;
+
+    // Máximo de puntos de una curva por tramos
+    public static final int MAXIMO_PUNTOS = 64;
+
+    // -------------------------------------------------------------------------------
+    // Forma de la curva
+    // -------------------------------------------------------------------------------
+    public enum Forma {
+        POLINOMIO,
+        TRAMOS
+    }
+
+    private final Forma laForma;
+
+    // Polinomio: coeficientes de menor a mayor grado
+    private final double[] losCoeficientes;
+
+    // Tramos: crudos (crecientes) y valores de cada punto
+    private final int[] losCrudos;
+    private final double[] losValores;
+
+    // Tramos: un bit por segmento, a 1 si tiene un punto dentro (ahí la
+    // curva se dobla y no se puede interpolar entre los nodos); null en los
+    // polinomios
+    private final long[] losPartidos;
+
+    // Valor de cada nodo (null hasta que se calcula en preparar())
+    private volatile float[] laTabla;
+
+    // -------------------------------------------------------------------------------
+    // Crea una curva polinómica
+    // @param coeficientes - c0, c1, c2, ... (de menor a mayor grado)
+    // @return la curva
+    // -------------------------------------------------------------------------------
+    public static CurvaCalibracion polinomio(double... coeficientes) {
+        if (coeficientes == null || coeficientes.length == 0 || coeficientes.length > MAXIMO_GRADO + 1) {
+            throw new IllegalArgumentException("El polinomio debe tener de 1 a " + (MAXIMO_GRADO + 1) + " coeficientes");
+        }
+        for (double c : coeficientes) {
+            if (Double.isNaN(c) || Double.isInfinite(c)) {
+                throw new IllegalArgumentException("Coeficiente no válido: " + c);
+            }
+        }
+        return new CurvaCalibracion(Forma.POLINOMIO, coeficientes.clone(), null, null);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Crea una curva por tramos rectos
+    // @param crudos - crudo de cada punto (estrictamente creciente, 0..65535)
+    // @param valores - valor en unidades de ingeniería de cada punto
+    // @return la curva
+    // -------------------------------------------------------------------------------
+    public static CurvaCalibracion tramos(int[] crudos, double[] valores) {
+        if (crudos == null || valores == null || crudos.length != valores.length
+                || crudos.length < 2 || crudos.length > MAXIMO_PUNTOS) {
+            throw new IllegalArgumentException("La curva por tramos debe tener de 2 a " + MAXIMO_PUNTOS + " puntos");
+        }
+        for (int i = 0; i < crudos.length; i++) {
+            if (crudos[i] < 0 || crudos[i] > MAXIMO_CRUDO || (i > 0 && crudos[i] <= crudos[i - 1])) {
+                throw new IllegalArgumentException("Los crudos deben ir de 0 a " + MAXIMO_CRUDO + " y ser crecientes");
+            }
+            if (Double.isNaN(valores[i]) || Double.isInfinite(valores[i])) {
+                throw new IllegalArgumentException("Valor no válido: " + valores[i]);
+            }
+        }
+        return new CurvaCalibracion(Forma.TRAMOS, null, crudos.clone(), valores.clone());
+    }
+
+    // -------------------------------------------------------------------------------
+    // Curva que deja el valor como está (el firmware ya manda unidades)
+    // -------------------------------------------------------------------------------
+    public static CurvaCalibracion identidad() {
+        return polinomio(0, 1);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Curva del minor leído como entero con signo (complemento a 2): la
+    // temperatura la manda el firmware en ºC como int16, así que -12 llega
+    // como 65524
+    // -------------------------------------------------------------------------------
+    public static CurvaCalibracion enteroConSigno() {
+        return tramos(new int[]{0, 0x7FFF, 0x8000, MAXIMO_CRUDO},
+                new double[]{0, 0x7FFF, -0x8000, -1});
+    }
+
+    private CurvaCalibracion(Forma forma, double[] coeficientes, int[] crudos, double[] valores) {
+        this.laForma = forma;
+        this.losCoeficientes = coeficientes;
+        this.losCrudos = crudos;
+        this.losValores = valores;
+        this.losPartidos = crudos == null ? null : partidos(crudos);
+    }
+
+    // Marca los segmentos con un punto estrictamente dentro (si cae en un
+    // nodo, los dos segmentos de al lado siguen siendo rectos)
+    private static long[] partidos(int[] crudos) {
+        long[] bits = new long[SEGMENTOS / Long.SIZE];
+        for (int crudo : crudos) {
+            if ((crudo & (ANCHO_SEGMENTO - 1)) != 0) {
+                int segmento = crudo >>> BITS_SEGMENTO;
+                bits[segmento / Long.SIZE] |= 1L << segmento;
+            }
+        }
+        return bits;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Calcula la tabla si todavía no está (unos pocos ms: mejor llamarlo fuera
+    // de los hilos del motor, como hace RegistroCalibraciones)
+    // @return la tabla de los SEGMENTOS + 1 nodos
+    // -------------------------------------------------------------------------------
+    public float[] preparar() {
+        float[] tabla = this.laTabla;
+        if (tabla == null) {
+            synchronized (this) {
+                tabla = this.laTabla;
+                if (tabla == null) {
+                    tabla = calcularTabla();
+                    this.laTabla = tabla;
+                }
+            }
+        }
+        return tabla;
+    }
+
+    // Calcula el valor de los nodos (el último, 65536, solo sirve para
+    // interpolar el segmento de arriba)
+    private float[] calcularTabla() {
+        float[] tabla = new float[SEGMENTOS + 1];
+        for (int i = 0; i <= SEGMENTOS; i++) {
+            tabla[i] = (float) referencia(i << BITS_SEGMENTO);
+        }
+        return tabla;
+    }
+
+    // Valor en el tramo i (entre los puntos i e i+1) de un crudo
+    private double interpolar(int i, int crudo) {
+        double t = (double) (crudo - this.losCrudos[i]) / (this.losCrudos[i + 1] - this.losCrudos[i]);
+        return this.losValores[i] + t * (this.losValores[i + 1] - this.losValores[i]);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Convierte un crudo a unidades de ingeniería (interpolando entre los dos
+    // nodos de su segmento)
+    // @param crudo - minor del beacon (solo cuentan los 16 bits de abajo)
+    // @return valor en unidades de ingeniería
+    // -------------------------------------------------------------------------------
+    public float convertir(int crudo) {
+        float[] tabla = this.laTabla;
+        if (tabla == null) {
+            tabla = preparar();
+        }
+        int c = crudo & MAXIMO_CRUDO;
+        int segmento = c >>> BITS_SEGMENTO;
+        if (this.losPartidos != null && (this.losPartidos[segmento / Long.SIZE] & (1L << segmento)) != 0) {
+            // Segmento con un punto dentro (hay como mucho MAXIMO_PUNTOS): con la fórmula
+            return (float) referencia(c);
+        }
+        float inicio = tabla[segmento];
+        return inicio + (tabla[segmento + 1] - inicio) * ((c & (ANCHO_SEGMENTO - 1)) * INVERSO_ANCHO);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Calcula el valor de un crudo con la fórmula, en double (es con lo que se
+    // rellenan los nodos; en el camino de cada lectura se usa convertir())
+    // @param crudo - valor crudo (0..65535; 65536 para el último nodo)
+    // @return valor en unidades de ingeniería
+    // -------------------------------------------------------------------------------
+    public double referencia(int crudo) {
+        if (this.laForma == Forma.POLINOMIO) {
+            // Horner
+            double valor = 0;
+            for (int i = this.losCoeficientes.length - 1; i >= 0; i--) {
+                valor = valor * crudo + this.losCoeficientes[i];
+            }
+            return valor;
+        }
+        int ultimo = this.losCrudos.length - 1;
+        if (crudo <= this.losCrudos[0]) {
+            return this.losValores[0];
+        }
+        if (crudo >= this.losCrudos[ultimo]) {
+            return this.losValores[ultimo];
+        }
+        int i = Arrays.binarySearch(this.losCrudos, crudo);
+        if (i >= 0) {
+            return this.losValores[i];
+        }
+        return interpolar(-i - 2, crudo);
+    }
+
+    public Forma getForma() {
+        return this.laForma;
+    }
+
+    // Dos curvas son iguales si tienen la misma forma y los mismos números
+    // (entonces tienen la misma tabla; losPartidos sale de losCrudos)
+    @Override
+    public boolean equals(Object otro) {
+        if (this == otro) {
+            return true;
+        }
+        if (!(otro instanceof CurvaCalibracion)) {
+            return false;
+        }
+        CurvaCalibracion c = (CurvaCalibracion) otro;
+        return this.laForma == c.laForma && Arrays.equals(this.losCoeficientes, c.losCoeficientes)
+                && Arrays.equals(this.losCrudos, c.losCrudos) && Arrays.equals(this.losValores, c.losValores);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * this.laForma.hashCode() + Arrays.hashCode(this.losCoeficientes))
+                + Arrays.hashCode(this.losCrudos)) + Arrays.hashCode(this.losValores);
+    }
+
+    @Override
+    public String toString() {
+        return this.laForma == Forma.POLINOMIO ? "polinomio" + Arrays.toString(this.losCoeficientes)
+                : "tramos" + Arrays.toString(this.losCrudos) + "->" + Arrays.toString(this.losValores);
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,430 @@
+package com.example.biometria_adenor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+// -----------------------------------------------------------------------------------
+// Decodificador de JSON en streaming (estilo SAX)
+//
+// Lee el JSON directamente del stream de la respuesta (siempre en UTF-8) y va
+// avisando a un Manejador de lo que encuentra (inicio de objeto, clave, texto,
+// número, ...). No construye el documento ni el texto completo: usa buffers
+// propios que se reutilizan entre llamadas, así que cada hilo debería usar su
+// propia instancia (ver delHilo()).
+//
+// Los CharSequence que recibe el manejador solo son válidos durante la llamada;
+// si se quieren guardar hay que copiarlos (toString()).
+// -----------------------------------------------------------------------------------
+public class DecodificadorJSON {
+
+    // -------------------------------------------------------------------------------
+    // Interfaz que recibe los eventos del JSON
+    // Todos los métodos tienen implementación vacía: se redefine solo lo que interese
+    // -------------------------------------------------------------------------------
+    public interface Manejador {
+        default void inicioObjeto() {}
+        default void finObjeto() {}
+        default void inicioArray() {}
+        default void finArray() {}
+        default void clave(CharSequence nombre) {}
+        default void texto(CharSequence valor) {}
+        default void numero(double valor) {}
+        default void booleano(boolean valor) {}
+        default void nulo() {}
+    }
+
+    // Profundidad máxima de anidamiento admitida (evita desbordar la pila)
+    private static final int PROFUNDIDAD_MAXIMA = 64;
+
+    // Una instancia por hilo, para reutilizar buffers sin compartirlos
+    private static final ThreadLocal<DecodificadorJSON> POR_HILO =
+            ThreadLocal.withInitial(DecodificadorJSON::new);
+
+    // Buffer de bytes leídos del stream (en modo lectura entre llamadas)
+    private final ByteBuffer bytes = ByteBuffer.allocate(2048);
+
+    // Buffer de caracteres ya decodificados
+    private final CharBuffer caracteres = CharBuffer.allocate(1024);
+
+    // Acumulador reutilizable para textos, claves y números
+    private final StringBuilder texto = new StringBuilder(64);
+
+    // Decodificador UTF-8 (no se fía del charset por defecto de la plataforma)
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    // Stream del que se está leyendo
+    private InputStream entrada;
+
+    // true cuando el stream ya ha devuelto -1
+    private boolean finEntrada;
+
+    // true cuando ya se decodificó todo (no se puede volver a llamar al decoder)
+    private boolean terminado;
+
+    // Carácter actual (-1 si se acabó la entrada)
+    private int actual;
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la instancia del hilo actual
+    // -------------------------------------------------------------------------------
+    public static DecodificadorJSON delHilo() {
+        return POR_HILO.get();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Decodifica un documento JSON completo del stream
+    // Un cuerpo vacío no genera eventos
+    // @param is - stream con el JSON en UTF-8
+    // @param manejador - recibe los eventos
+    // @throws IOException si falla la lectura o el JSON está mal formado
+    // -------------------------------------------------------------------------------
+    public void decodificar(InputStream is, Manejador manejador) throws IOException {
+        this.entrada = is;
+        this.finEntrada = false;
+        this.terminado = false;
+        this.bytes.clear().limit(0);
+        this.caracteres.clear().limit(0);
+        this.utf8.reset();
+
+        try {
+            avanzar();
+            saltarEspacios();
+            if (this.actual == -1) {
+                return;
+            }
+            valor(manejador, 0);
+            saltarEspacios();
+            if (this.actual != -1) {
+                throw error("contenido después del final del documento");
+            }
+        } finally {
+            this.entrada = null;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Decodifica un valor cualquiera empezando en el carácter actual
+    // -------------------------------------------------------------------------------
+    private void valor(Manejador manejador, int profundidad) throws IOException {
+        if (profundidad > PROFUNDIDAD_MAXIMA) {
+            throw error("demasiados niveles de anidamiento");
+        }
+        switch (this.actual) {
+            case '{':
+                objeto(manejador, profundidad);
+                break;
+            case '[':
+                array(manejador, profundidad);
+                break;
+            case '"':
+                leerTexto();
+                manejador.texto(this.texto);
+                break;
+            case 't':
+                literal("true");
+                manejador.booleano(true);
+                break;
+            case 'f':
+                literal("false");
+                manejador.booleano(false);
+                break;
+            case 'n':
+                literal("null");
+                manejador.nulo();
+                break;
+            default:
+                if (this.actual == '-' || (this.actual >= '0' && this.actual <= '9')) {
+                    manejador.numero(leerNumero());
+                } else {
+                    throw error("valor inesperado");
+                }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Decodifica un objeto { "clave": valor, ... }
+    // -------------------------------------------------------------------------------
+    private void objeto(Manejador manejador, int profundidad) throws IOException {
+        manejador.inicioObjeto();
+        avanzar();
+        saltarEspacios();
+        if (this.actual == '}') {
+            avanzar();
+            manejador.finObjeto();
+            return;
+        }
+        while (true) {
+            if (this.actual != '"') {
+                throw error("se esperaba una clave");
+            }
+            leerTexto();
+            manejador.clave(this.texto);
+            saltarEspacios();
+            esperar(':');
+            saltarEspacios();
+            valor(manejador, profundidad + 1);
+            saltarEspacios();
+            if (this.actual == ',') {
+                avanzar();
+                saltarEspacios();
+            } else if (this.actual == '}') {
+                avanzar();
+                manejador.finObjeto();
+                return;
+            } else {
+                throw error("se esperaba ',' o '}'");
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Decodifica un array [ valor, ... ]
+    // -------------------------------------------------------------------------------
+    private void array(Manejador manejador, int profundidad) throws IOException {
+        manejador.inicioArray();
+        avanzar();
+        saltarEspacios();
+        if (this.actual == ']') {
+            avanzar();
+            manejador.finArray();
+            return;
+        }
+        while (true) {
+            valor(manejador, profundidad + 1);
+            saltarEspacios();
+            if (this.actual == ',') {
+                avanzar();
+                saltarEspacios();
+            } else if (this.actual == ']') {
+                avanzar();
+                manejador.finArray();
+                return;
+            } else {
+                throw error("se esperaba ',' o ']'");
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee un texto entre comillas (con sus escapes) y lo deja en "texto"
+    // Al volver, el carácter actual es el siguiente a las comillas de cierre
+    // -------------------------------------------------------------------------------
+    private void leerTexto() throws IOException {
+        this.texto.setLength(0);
+        avanzar();
+        while (this.actual != '"') {
+            if (this.actual == -1) {
+                throw error("texto sin cerrar");
+            }
+            if (this.actual == '\\') {
+                avanzar();
+                switch (this.actual) {
+                    case '"': this.texto.append('"'); break;
+                    case '\\': this.texto.append('\\'); break;
+                    case '/': this.texto.append('/'); break;
+                    case 'b': this.texto.append('\b'); break;
+                    case 'f': this.texto.append('\f'); break;
+                    case 'n': this.texto.append('\n'); break;
+                    case 'r': this.texto.append('\r'); break;
+                    case 't': this.texto.append('\t'); break;
+                    case 'u':
+                        int codigo = 0;
+                        for (int i = 0; i < 4; i++) {
+                            avanzar();
+                            int digito = Character.digit(this.actual, 16);
+                            if (this.actual == -1 || digito < 0) {
+                                throw error("escape \\u incorrecto");
+                            }
+                            codigo = (codigo << 4) | digito;
+                        }
+                        this.texto.append((char) codigo);
+                        break;
+                    default:
+                        throw error("escape desconocido");
+                }
+            } else {
+                this.texto.append((char) this.actual);
+            }
+            avanzar();
+        }
+        avanzar();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee un número JSON y lo convierte a double sin crear objetos
+    // -------------------------------------------------------------------------------
+    private double leerNumero() throws IOException {
+        boolean negativo = false;
+        if (this.actual == '-') {
+            negativo = true;
+            avanzar();
+        }
+
+        long mantisa = 0;
+        int exponente = 0;
+        int digitos = 0;
+        boolean hayDigitos = false;
+
+        // Parte entera
+        while (this.actual >= '0' && this.actual <= '9') {
+            hayDigitos = true;
+            if (digitos < 18) {
+                mantisa = mantisa * 10 + (this.actual - '0');
+                if (mantisa != 0) {
+                    digitos++;
+                }
+            } else {
+                exponente++;
+            }
+            avanzar();
+        }
+
+        // Parte decimal
+        if (this.actual == '.') {
+            avanzar();
+            while (this.actual >= '0' && this.actual <= '9') {
+                hayDigitos = true;
+                if (digitos < 18) {
+                    mantisa = mantisa * 10 + (this.actual - '0');
+                    exponente--;
+                    if (mantisa != 0) {
+                        digitos++;
+                    }
+                }
+                avanzar();
+            }
+        }
+
+        if (!hayDigitos) {
+            throw error("número sin dígitos");
+        }
+
+        // Exponente
+        if (this.actual == 'e' || this.actual == 'E') {
+            avanzar();
+            boolean exponenteNegativo = false;
+            if (this.actual == '+' || this.actual == '-') {
+                exponenteNegativo = this.actual == '-';
+                avanzar();
+            }
+            int valorExponente = 0;
+            boolean hayDigitosExponente = false;
+            while (this.actual >= '0' && this.actual <= '9') {
+                hayDigitosExponente = true;
+                if (valorExponente < 10_000) {
+                    valorExponente = valorExponente * 10 + (this.actual - '0');
+                }
+                avanzar();
+            }
+            if (!hayDigitosExponente) {
+                throw error("exponente sin dígitos");
+            }
+            exponente += exponenteNegativo ? -valorExponente : valorExponente;
+        }
+
+        double resultado = exponente == 0 ? mantisa
+                : (exponente > 0 ? mantisa * Math.pow(10, exponente) : mantisa / Math.pow(10, -exponente));
+        return negativo ? -resultado : resultado;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Comprueba que el texto actual es el literal esperado (true, false, null)
+    // -------------------------------------------------------------------------------
+    private void literal(String esperado) throws IOException {
+        for (int i = 0; i < esperado.length(); i++) {
+            if (this.actual != esperado.charAt(i)) {
+                throw error("se esperaba " + esperado);
+            }
+            avanzar();
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Comprueba que el carácter actual es el esperado y avanza
+    // -------------------------------------------------------------------------------
+    private void esperar(char esperado) throws IOException {
+        if (this.actual != esperado) {
+            throw error("se esperaba '" + esperado + "'");
+        }
+        avanzar();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Salta espacios, tabuladores y saltos de línea
+    // -------------------------------------------------------------------------------
+    private void saltarEspacios() throws IOException {
+        while (this.actual == ' ' || this.actual == '\n' || this.actual == '\r' || this.actual == '\t') {
+            avanzar();
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Pasa al siguiente carácter (-1 si se acabó la entrada)
+    // -------------------------------------------------------------------------------
+    private void avanzar() throws IOException {
+        if (!this.caracteres.hasRemaining() && !rellenar()) {
+            this.actual = -1;
+            return;
+        }
+        this.actual = this.caracteres.get();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee más bytes del stream y los decodifica a caracteres
+    // @return false si ya no quedan caracteres
+    // -------------------------------------------------------------------------------
+    private boolean rellenar() throws IOException {
+        if (this.terminado) {
+            return false;
+        }
+        while (true) {
+            this.caracteres.clear();
+
+            if (!this.finEntrada) {
+                this.bytes.compact();
+                int leidos = this.entrada.read(this.bytes.array(), this.bytes.position(), this.bytes.remaining());
+                if (leidos == -1) {
+                    this.finEntrada = true;
+                } else {
+                    this.bytes.position(this.bytes.position() + leidos);
+                }
+                this.bytes.flip();
+            }
+
+            CoderResult resultado = this.utf8.decode(this.bytes, this.caracteres, this.finEntrada);
+            if (resultado.isError()) {
+                resultado.throwException();
+            }
+            if (this.finEntrada) {
+                this.utf8.flush(this.caracteres);
+            }
+            this.caracteres.flip();
+
+            if (this.caracteres.hasRemaining()) {
+                return true;
+            }
+            if (this.finEntrada) {
+                this.terminado = true;
+                return false;
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Crea la excepción de JSON mal formado
+    // -------------------------------------------------------------------------------
+    private IOException error(String motivo) {
+        return new IOException("JSON mal formado: " + motivo);
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
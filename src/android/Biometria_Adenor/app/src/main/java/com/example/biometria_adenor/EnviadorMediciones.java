@@ -0,0 +1,237 @@
+package com.example.biometria_adenor;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Future;
+
+// -----------------------------------------------------------------------------------
+// Enviador de lotes de mediciones usado por el PlanificadorSubidas
+// Cada lote sale en una sola petición POST al endpoint /api/mediciones/lote
+// (comprimida y firmada según el codificador) sobre una conexión persistente.
+// Cada medición lleva su instante de captura como "dt" respecto a la "base"
+// del lote, ya corregido con el desfase del reloj del móvil; la hora que
+// devuelve el servidor en cada respuesta sirve para estimar ese desfase
+// El JSON se escribe en un BufferJSON que se reutiliza de un lote a otro
+// Con usarColector el lote lleva el identificador del móvil para que el
+// servidor fusione las lecturas que suben varios colectores
+// Con una cola atrasada el planificador manda varios lotes a la vez por la
+// ventana de concurrencia del transporte (enviarAsincrono)
+// -----------------------------------------------------------------------------------
+public class EnviadorMediciones implements PlanificadorSubidas.EnviadorConcurrente {
+
+    // URL del endpoint donde se publican los lotes de mediciones
+    private final String urlDestino;
+
+    // Transporte con conexiones reutilizadas y ventana de concurrencia
+    private final TransportePersistente elTransporte;
+
+    // Comprime (si pasa del umbral) y firma cada cuerpo antes de enviarlo
+    private final CodificadorCuerpo elCodificador;
+
+    // Reloj de captura: desfase respecto al servidor y medida del viaje
+    private final RelojCaptura elReloj;
+
+    // Buffer donde se escribe el JSON de cada lote (se reutiliza)
+    private final BufferJSON elBuffer = new BufferJSON(64 + PlanificadorSubidas.MAXIMO_LOTE * 48);
+
+    // Identificador de este colector o null para no mandarlo
+    private volatile String elColector = null;
+
+    // -------------------------------------------------------------------------------
+    // Constructor (usa el transporte persistente compartido de PeticionarioREST)
+    // @param urlDestino - URL del endpoint POST de lotes de mediciones
+    // -------------------------------------------------------------------------------
+    public EnviadorMediciones(String urlDestino) {
+        this(urlDestino, PeticionarioREST.getTransportePorDefecto());
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param urlDestino - URL del endpoint POST de lotes de mediciones
+    // @param transporte - transporte persistente por el que se envía
+    // -------------------------------------------------------------------------------
+    public EnviadorMediciones(String urlDestino, TransportePersistente transporte) {
+        this(urlDestino, transporte, CodificadorCuerpo.SIN_CODIFICAR);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param urlDestino - URL del endpoint POST de lotes de mediciones
+    // @param transporte - transporte persistente por el que se envía
+    // @param codificador - compresión y firma de los cuerpos
+    // -------------------------------------------------------------------------------
+    public EnviadorMediciones(String urlDestino, TransportePersistente transporte,
+                              CodificadorCuerpo codificador) {
+        this(urlDestino, transporte, codificador,
+                new RelojCaptura(System::currentTimeMillis, System::nanoTime));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param urlDestino - URL del endpoint POST de lotes de mediciones
+    // @param transporte - transporte persistente por el que se envía
+    // @param codificador - compresión y firma de los cuerpos
+    // @param reloj - el mismo reloj con el que se fechan las mediciones
+    // -------------------------------------------------------------------------------
+    public EnviadorMediciones(String urlDestino, TransportePersistente transporte,
+                              CodificadorCuerpo codificador, RelojCaptura reloj) {
+        this.urlDestino = urlDestino;
+        this.elTransporte = transporte;
+        this.elCodificador = codificador;
+        this.elReloj = reloj;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Hace que los lotes lleven el identificador de este colector ("colector")
+    // @param colector - identificador (letras, números, '-' o '_', hasta 64) o null
+    // -------------------------------------------------------------------------------
+    public void usarColector(String colector) {
+        if (colector != null && !ResponsabilidadColector.esIdentificadorValido(colector)) {
+            throw new IllegalArgumentException("Identificador de colector inválido: " + colector);
+        }
+        this.elColector = colector;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Envía todas las mediciones del lote en una sola petición al endpoint de lotes
+    // El servidor las guarda en una transacción y contesta 201 si las guardó
+    // todas, 207 si rechazó algunas por datos inválidos (no tiene sentido
+    // reintentarlas) o un error si no guardó ninguna
+    // @param lote - mediciones a enviar
+    // @return código HTTP de la respuesta
+    // @throws IOException si no se pudo contactar con el servidor
+    // -------------------------------------------------------------------------------
+    @Override
+    public int enviar(List<Medicion> lote) throws IOException {
+        CuerpoPeticion cuerpo;
+        synchronized (this.elBuffer) {
+            escribirLote(lote, this.elReloj.getDesfaseMillis(), this.elColector, this.elBuffer.reiniciar());
+            cuerpo = this.elCodificador.codificar(this.elBuffer.getBytes(), this.elBuffer.getLongitud());
+        }
+
+        // De la respuesta solo interesan cuántas rechazó, cuántas ya tenía (por
+        // su clave de idempotencia) y la hora del servidor; se lee al vuelo sin
+        // guardar el cuerpo (que trae el estado de cada medición). Solo se
+        // decodifican las respuestas 2xx: las demás se clasifican por el código
+        final int[] rechazadas = {0};
+        final int[] duplicadas = {0};
+        final long[] horaServidor = {0};
+        LectorRespuesta lector = LectorRespuesta.json(new DecodificadorJSON.Manejador() {
+            private String claveActual = null;
+
+            @Override
+            public void clave(CharSequence nombre) {
+                this.claveActual = "rechazadas".contentEquals(nombre) ? "rechazadas"
+                        : "duplicadas".contentEquals(nombre) ? "duplicadas"
+                        : "hora_servidor".contentEquals(nombre) ? "hora_servidor" : null;
+            }
+
+            @Override
+            public void numero(double valor) {
+                if ("rechazadas".equals(this.claveActual)) {
+                    rechazadas[0] = (int) valor;
+                } else if ("duplicadas".equals(this.claveActual)) {
+                    duplicadas[0] = (int) valor;
+                } else if ("hora_servidor".equals(this.claveActual)) {
+                    horaServidor[0] = (long) valor;
+                }
+                this.claveActual = null;
+            }
+        });
+
+        long envioNanos = this.elReloj.ahoraNanos();
+        int codigo = this.elTransporte.enviar("POST", this.urlDestino, cuerpo, lector).getCodigo();
+        if (horaServidor[0] > 0) {
+            this.elReloj.anotarHoraServidor(horaServidor[0], envioNanos, this.elReloj.ahoraNanos());
+        }
+        Log.d("EnviadorMediciones", "enviar(): " + lote.size() + " mediciones, codigo = " + codigo
+                + ", rechazadas = " + rechazadas[0] + ", duplicadas = " + duplicadas[0] + ", desfase = " + this.elReloj.getDesfaseMillis() + " ms");
+        return codigo;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lotes que pueden estar en vuelo a la vez: la ventana del transporte
+    // -------------------------------------------------------------------------------
+    @Override
+    public int getVentana() {
+        return this.elTransporte.getVentana();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Envía el lote (como enviar) en un hilo de la ventana del transporte
+    // @param lote - mediciones a enviar (no se tocan hasta que termine el envío)
+    // @return Future con el código HTTP; falla con la IOException de enviar
+    // -------------------------------------------------------------------------------
+    @Override
+    public Future<Integer> enviarAsincrono(List<Medicion> lote) {
+        return this.elTransporte.enLaVentana(() -> enviar(lote));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Construye el cuerpo JSON del lote sin corregir el desfase
+    // -------------------------------------------------------------------------------
+    static String loteAJSON(List<Medicion> lote) {
+        return loteAJSON(lote, 0);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Construye el cuerpo JSON del lote:
+    //   {"base": 1700000000000, "mediciones": [{..., "dt": 0}, {..., "dt": 950}]}
+    // base es la hora (del servidor) de la primera medición con instante y dt lo
+    // que cada una se separa de ella; sin instantes queda {"mediciones": [...]}
+    // y el servidor les pone la hora de llegada
+    // @param lote - mediciones a incluir
+    // @param desfaseMillis - desfase del reloj del móvil respecto al servidor
+    // @return texto JSON
+    // -------------------------------------------------------------------------------
+    static String loteAJSON(List<Medicion> lote, long desfaseMillis) {
+        BufferJSON buffer = new BufferJSON(32 + lote.size() * 46);
+        escribirLote(lote, desfaseMillis, buffer);
+        return buffer.toString();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe el cuerpo JSON del lote (el de loteAJSON) en un buffer
+    // @param lote - mediciones a incluir
+    // @param desfaseMillis - desfase del reloj del móvil respecto al servidor
+    // @param destino - buffer donde se escribe (a continuación de lo que tenga)
+    // -------------------------------------------------------------------------------
+    static void escribirLote(List<Medicion> lote, long desfaseMillis, BufferJSON destino) {
+        escribirLote(lote, desfaseMillis, null, destino);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, con el colector delante de las mediciones:
+    //   {"base": ..., "colector": "3f0c...", "mediciones": [...]}
+    // @param colector - identificador del colector (ya validado) o null
+    // -------------------------------------------------------------------------------
+    static void escribirLote(List<Medicion> lote, long desfaseMillis, String colector, BufferJSON destino) {
+        long base = RelojCaptura.SIN_INSTANTE;
+        for (int i = 0; i < lote.size() && base == RelojCaptura.SIN_INSTANTE; i++) {
+            if (lote.get(i).tieneInstante()) {
+                base = lote.get(i).getInstanteMillis() + desfaseMillis;
+            }
+        }
+
+        destino.escribir('{');
+        if (base != RelojCaptura.SIN_INSTANTE) {
+            destino.escribir("\"base\": ").escribirEntero(base).escribir(", ");
+        }
+        if (colector != null) {
+            destino.escribir("\"colector\": \"").escribir(colector).escribir("\", ");
+        }
+        destino.escribir("\"mediciones\": [");
+        for (int i = 0; i < lote.size(); i++) {
+            if (i > 0) {
+                destino.escribir(", ");
+            }
+            lote.get(i).escribirJSON(destino, base, desfaseMillis);
+        }
+        destino.escribir("]}");
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
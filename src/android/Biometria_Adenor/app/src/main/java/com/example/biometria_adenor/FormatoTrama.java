@@ -0,0 +1,88 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Formatos de trama que puede emitir el Arduino y detección automática
+// Todos mantienen la estructura iBeacon (prefijo, UUID, major, minor, txPower);
+// los formatos nuevos van dentro de los 16 bytes del UUID, que empiezan por
+// la marca 'G' 'T' seguida del código de formato:
+//
+//   UUID[0..1]  'G' 'T'   marca de trama de este proyecto
+//   UUID[2]     formato   (CODIGO_MULTIVALOR, CODIGO_DELTAS)
+//   UUID[3..15] carga     depende del formato
+//
+// Cualquier otro UUID (por ejemplo el "EPSG-GTI-PROY-3A" de siempre) es una
+// trama iBeacon clásica con una sola medición en el minor
+// -----------------------------------------------------------------------------------
+public enum FormatoTrama {
+
+    // iBeacon clásico: tipo y contador en el major, valor en el minor
+    IBEACON,
+
+    // Varias mediciones con su tipo y un número de secuencia (TramaMultivalor)
+    MULTIVALOR,
+
+    // Varias muestras seguidas de un tipo, como diferencias (TramaDeltas)
+    DELTAS,
+
+    // No es una trama iBeacon (u otro anuncio BLE cualquiera)
+    DESCONOCIDO;
+
+    // Marca al principio del UUID de las tramas con formato propio
+    static final byte MARCA_0 = 'G';
+    static final byte MARCA_1 = 'T';
+
+    // Código de formato (UUID[2])
+    static final int CODIGO_MULTIVALOR = 0x01;
+    static final int CODIGO_DELTAS = 0x02;
+
+    // Posición del UUID en una trama que empieza por los flags (02 01 06)
+    static final int INICIO_UUID = 9;
+
+    // Longitud mínima de una trama iBeacon con flags (hasta el txPower)
+    static final int LONGITUD_IBEACON = 30;
+
+    // -------------------------------------------------------------------------------
+    // Devuelve dónde empieza la trama iBeacon dentro de los bytes del escaneo:
+    // 0 si traen los flags delante, -3 si no (como hace TramaIBeacon)
+    // -------------------------------------------------------------------------------
+    static int desplazamiento(byte[] bytes) {
+        boolean conFlags = bytes.length >= 3
+                && bytes[0] == 0x02 && bytes[1] == 0x01 && bytes[2] == 0x06;
+        return conFlags ? 0 : -3;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Detecta el formato de una trama sin copiar ni crear objetos
+    // @param bytes - bytes del anuncio (ScanRecord.getBytes())
+    // @return formato de la trama
+    // -------------------------------------------------------------------------------
+    public static FormatoTrama detectar(byte[] bytes) {
+        if (bytes == null) {
+            return DESCONOCIDO;
+        }
+        int d = desplazamiento(bytes);
+        if (bytes.length < LONGITUD_IBEACON + d) {
+            return DESCONOCIDO;
+        }
+        // Company ID de Apple (4C 00), tipo iBeacon (02) y longitud (15)
+        if (bytes[5 + d] != 0x4C || bytes[6 + d] != 0x00
+                || bytes[7 + d] != 0x02 || bytes[8 + d] != 0x15) {
+            return DESCONOCIDO;
+        }
+        int uuid = INICIO_UUID + d;
+        if (bytes[uuid] == MARCA_0 && bytes[uuid + 1] == MARCA_1) {
+            switch (bytes[uuid + 2] & 0xFF) {
+                case CODIGO_MULTIVALOR:
+                    return MULTIVALOR;
+                case CODIGO_DELTAS:
+                    return DELTAS;
+                default:
+                    break;
+            }
+        }
+        return IBEACON;
+    }
+
+} // enum
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,143 @@
+package com.example.biometria_adenor;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// -----------------------------------------------------------------------------------
+// Informa periódicamente al servidor de los sensores que oye este colector y
+// aplica la respuesta (los sensores que sube otro) a su ResponsabilidadColector
+//
+//   POST /api/colectores/{colector}/oidos
+//        {"colector": "3f0c...", "sensores": [{"sensor": "D4:...", "rssi": -71}, ...]}
+//   ->   {"ajenos": ["D4:...", ...], "validez_ms": 120000, ...}
+//
+// Se ejecuta en el ejecutor de subidas (scheduleWithFixedDelay con PERIODO_MS)
+// y usa el mismo transporte y la misma firma que los lotes. Si falla no pasa
+// nada: la lista anterior caduca y el colector vuelve a subirlo todo
+// -----------------------------------------------------------------------------------
+public class InformadorColector implements Runnable {
+
+    // Cada cuánto se informa (la validez que da el servidor es mayor)
+    public static final long PERIODO_MS = 30_000;
+
+    // URL completa del endpoint de este colector
+    private final String laUrl;
+
+    // Identificador de este colector
+    private final String elColector;
+
+    // Sensores oídos y lista de ajenos
+    private final ResponsabilidadColector laResponsabilidad;
+
+    // Transporte persistente (el de los lotes)
+    private final TransportePersistente elTransporte;
+
+    // Comprime y firma el cuerpo como los lotes
+    private final CodificadorCuerpo elCodificador;
+
+    // Buffer del JSON del informe (se reutiliza)
+    private final BufferJSON elBuffer = new BufferJSON(64 + 48 * 32);
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param urlColectores - URL base de los colectores, terminada en '/'
+    //                        (Logica.URL_COLECTORES)
+    // @param colector - identificador de este colector
+    // @param responsabilidad - la que filtra las mediciones del motor
+    // @param transporte - transporte por el que se envía
+    // @param codificador - compresión y firma de los cuerpos
+    // -------------------------------------------------------------------------------
+    public InformadorColector(String urlColectores, String colector, ResponsabilidadColector responsabilidad,
+                              TransportePersistente transporte, CodificadorCuerpo codificador) {
+        if (!ResponsabilidadColector.esIdentificadorValido(colector)) {
+            throw new IllegalArgumentException("Identificador de colector inválido: " + colector);
+        }
+        this.laUrl = urlColectores + colector + "/oidos";
+        this.elColector = colector;
+        this.laResponsabilidad = responsabilidad;
+        this.elTransporte = transporte;
+        this.elCodificador = codificador;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Tarea periódica: informa y se traga los errores (se reintenta en la
+    // siguiente vuelta)
+    // -------------------------------------------------------------------------------
+    @Override
+    public void run() {
+        try {
+            informar();
+        } catch (IOException | RuntimeException e) {
+            Log.w("InformadorColector", "run(): no se pudo informar: " + e.getMessage());
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Envía el informe y, si el servidor contesta 200 con la lista, la aplica
+    // @return código HTTP de la respuesta
+    // @throws IOException si no se pudo contactar con el servidor
+    // -------------------------------------------------------------------------------
+    public int informar() throws IOException {
+        CuerpoPeticion cuerpo;
+        int sensores;
+        synchronized (this.elBuffer) {
+            sensores = this.laResponsabilidad.escribirInforme(this.elColector, this.elBuffer.reiniciar());
+            cuerpo = this.elCodificador.codificar(this.elBuffer.getBytes(), this.elBuffer.getLongitud());
+        }
+
+        // De la respuesta solo interesan los ajenos y su validez
+        final List<String> ajenos = new ArrayList<>();
+        final long[] validez = {-1};
+        LectorRespuesta lector = LectorRespuesta.json(new DecodificadorJSON.Manejador() {
+            private String claveActual = null;
+            private boolean enAjenos = false;
+
+            @Override
+            public void clave(CharSequence nombre) {
+                this.claveActual = "ajenos".contentEquals(nombre) ? "ajenos"
+                        : "validez_ms".contentEquals(nombre) ? "validez_ms" : null;
+            }
+
+            @Override
+            public void inicioArray() {
+                this.enAjenos = "ajenos".equals(this.claveActual);
+                this.claveActual = null;
+            }
+
+            @Override
+            public void finArray() {
+                this.enAjenos = false;
+            }
+
+            @Override
+            public void texto(CharSequence valor) {
+                if (this.enAjenos) {
+                    ajenos.add(valor.toString());
+                }
+                this.claveActual = null;
+            }
+
+            @Override
+            public void numero(double valor) {
+                if ("validez_ms".equals(this.claveActual)) {
+                    validez[0] = (long) valor;
+                }
+                this.claveActual = null;
+            }
+        });
+
+        int codigo = this.elTransporte.enviar("POST", this.laUrl, cuerpo, lector).getCodigo();
+        if (codigo == 200 && validez[0] >= 0) {
+            this.laResponsabilidad.aplicar(ajenos, validez[0]);
+        }
+        Log.d("InformadorColector", "informar(): " + sensores + " sensores oídos, codigo = " + codigo
+                + ", ajenos = " + ajenos.size() + ", suprimidas = " + this.laResponsabilidad.getSuprimidas());
+        return codigo;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
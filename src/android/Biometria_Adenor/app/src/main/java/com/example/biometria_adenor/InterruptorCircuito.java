@@ -0,0 +1,102 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Interruptor de circuito (circuit breaker) para un endpoint REST
+// Tras varios fallos seguidos se "abre" y deja de permitir envíos durante un
+// tiempo, para no gastar radio ni batería contra un servidor caído.
+// Pasado ese tiempo deja pasar UN envío de prueba (semiabierto): si va bien
+// se cierra otra vez, si falla vuelve a abrirse
+// -----------------------------------------------------------------------------------
+public class InterruptorCircuito {
+
+    // -------------------------------------------------------------------------------
+    // Estados posibles del interruptor
+    // -------------------------------------------------------------------------------
+    public enum Estado {
+        CERRADO,     // funcionamiento normal, se permiten envíos
+        ABIERTO,     // demasiados fallos, no se permite enviar
+        SEMIABIERTO  // se permite un único envío de prueba
+    }
+
+    // Número de fallos consecutivos que abren el circuito
+    private final int umbralFallos;
+
+    // Milisegundos que el circuito permanece abierto antes de probar de nuevo
+    private final long tiempoAperturaMs;
+
+    // Estado actual del interruptor
+    private Estado estado = Estado.CERRADO;
+
+    // Fallos consecutivos acumulados desde el último éxito
+    private int fallosSeguidos = 0;
+
+    // Instante (ms) en que se abrió el circuito por última vez
+    private long instanteApertura = 0;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param umbralFallos - fallos consecutivos que abren el circuito
+    // @param tiempoAperturaMs - tiempo que permanece abierto antes de la prueba
+    // -------------------------------------------------------------------------------
+    public InterruptorCircuito(int umbralFallos, long tiempoAperturaMs) {
+        this.umbralFallos = umbralFallos;
+        this.tiempoAperturaMs = tiempoAperturaMs;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Indica si en este instante se puede intentar un envío
+    // Si el circuito está abierto y ya ha pasado el tiempo de apertura,
+    // pasa a semiabierto y permite el envío de prueba
+    // @param ahora - instante actual en ms
+    // @return true si se permite enviar
+    // -------------------------------------------------------------------------------
+    public synchronized boolean permiteEnvio(long ahora) {
+        if (this.estado == Estado.ABIERTO && ahora - this.instanteApertura >= this.tiempoAperturaMs) {
+            this.estado = Estado.SEMIABIERTO;
+        }
+        return this.estado != Estado.ABIERTO;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Milisegundos que faltan para que el circuito admita un envío de prueba
+    // @param ahora - instante actual en ms
+    // @return 0 si ya se puede enviar
+    // -------------------------------------------------------------------------------
+    public synchronized long esperaRestante(long ahora) {
+        if (this.estado != Estado.ABIERTO) {
+            return 0;
+        }
+        return Math.max(0, this.instanteApertura + this.tiempoAperturaMs - ahora);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Registra un envío correcto: cierra el circuito y reinicia los fallos
+    // -------------------------------------------------------------------------------
+    public synchronized void registrarExito() {
+        this.fallosSeguidos = 0;
+        this.estado = Estado.CERRADO;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Registra un envío fallido
+    // Si estaba semiabierto o se alcanza el umbral, abre el circuito
+    // @param ahora - instante actual en ms
+    // -------------------------------------------------------------------------------
+    public synchronized void registrarFallo(long ahora) {
+        this.fallosSeguidos++;
+        if (this.estado == Estado.SEMIABIERTO || this.fallosSeguidos >= this.umbralFallos) {
+            this.estado = Estado.ABIERTO;
+            this.instanteApertura = ahora;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el estado actual (para logs y pruebas)
+    // -------------------------------------------------------------------------------
+    public synchronized Estado getEstado() {
+        return this.estado;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
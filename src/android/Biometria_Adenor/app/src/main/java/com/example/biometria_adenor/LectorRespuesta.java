@@ -0,0 +1,152 @@
+package com.example.biometria_adenor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+// -----------------------------------------------------------------------------------
+// Estrategia para leer el cuerpo de una respuesta HTTP
+//
+// Casi siempre el cuerpo solo se escribe en el log, así que no merece la pena
+// leerlo entero a un String. Hay varios modos:
+//   - DESCARTAR: no se guarda nada
+//   - prefijo(n): se guardan como mucho los n primeros bytes (UTF-8)
+//   - json(manejador): se decodifica el JSON al vuelo avisando al manejador,
+//     sin construir el texto completo (solo en las respuestas 2xx: las de
+//     error pueden traer una página HTML del proxy y se descartan)
+//   - COMPLETA: se guarda el cuerpo entero (comportamiento antiguo)
+//
+// El lector puede dejar de leer cuando quiera: el transporte se encarga de
+// vaciar lo que quede y cerrar el stream para que la conexión se reutilice.
+// Los buffers son por hilo y se reutilizan entre peticiones.
+// -----------------------------------------------------------------------------------
+public abstract class LectorRespuesta {
+
+    // Tamaño del buffer de lectura reutilizable
+    private static final int TAMANYO_BUFFER = 2048;
+
+    // Buffer de bytes por hilo, compartido por todos los lectores
+    private static final ThreadLocal<byte[]> BUFFER =
+            ThreadLocal.withInitial(() -> new byte[TAMANYO_BUFFER]);
+
+    // -------------------------------------------------------------------------------
+    // Lee (todo o parte de) el cuerpo de la respuesta
+    // @param is - stream del cuerpo (no es null)
+    // @return el texto que se quiere conservar del cuerpo ("" si ninguno)
+    // @throws IOException si falla la lectura
+    // -------------------------------------------------------------------------------
+    public abstract String leer(InputStream is) throws IOException;
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el lector que hay que usar con una respuesta de este código
+    // (el transporte lo llama antes de leer). Por defecto, este mismo
+    // @param codigo - código HTTP de la respuesta
+    // @return el lector
+    // -------------------------------------------------------------------------------
+    public LectorRespuesta paraCodigo(int codigo) {
+        return this;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lector que no conserva nada del cuerpo
+    // -------------------------------------------------------------------------------
+    public static final LectorRespuesta DESCARTAR = new LectorRespuesta() {
+        @Override
+        public String leer(InputStream is) {
+            return "";
+        }
+    };
+
+    // -------------------------------------------------------------------------------
+    // Lector que conserva el cuerpo entero
+    // -------------------------------------------------------------------------------
+    public static final LectorRespuesta COMPLETA = prefijo(Integer.MAX_VALUE);
+
+    // -------------------------------------------------------------------------------
+    // Lector que conserva solo los primeros bytes del cuerpo
+    // @param maximoBytes - número máximo de bytes a conservar
+    // @return el lector
+    // -------------------------------------------------------------------------------
+    public static LectorRespuesta prefijo(final int maximoBytes) {
+        return new LectorRespuesta() {
+            @Override
+            public String leer(InputStream is) throws IOException {
+                return leerPrefijo(is, maximoBytes);
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lector que decodifica el cuerpo como JSON al vuelo
+    // Solo se decodifican las respuestas 2xx; el cuerpo de las demás se
+    // descarta (quien llama decide con el código) para que una página de error
+    // que no es JSON no se confunda con un fallo de red
+    // @param manejador - recibe los eventos del JSON (claves, valores, ...)
+    // @return el lector (conserva "" como texto del cuerpo)
+    // -------------------------------------------------------------------------------
+    public static LectorRespuesta json(final DecodificadorJSON.Manejador manejador) {
+        return new LectorRespuesta() {
+            @Override
+            public String leer(InputStream is) throws IOException {
+                DecodificadorJSON.delHilo().decodificar(is, manejador);
+                return "";
+            }
+
+            @Override
+            public LectorRespuesta paraCodigo(int codigo) {
+                return codigo >= 200 && codigo < 300 ? this : DESCARTAR;
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee como mucho maximoBytes del stream y los devuelve como texto UTF-8
+    // Si el límite corta un carácter multibyte, el trozo final se sustituye
+    // @param is - stream a leer
+    // @param maximoBytes - límite de bytes
+    // @return texto leído
+    // -------------------------------------------------------------------------------
+    static String leerPrefijo(InputStream is, int maximoBytes) throws IOException {
+        byte[] buffer = BUFFER.get();
+        byte[] acumulado = buffer;
+        int total = 0;
+        int leidos;
+        while (total < maximoBytes) {
+            if (total == acumulado.length) {
+                // Solo se reserva memoria nueva si el cuerpo no cabe en el buffer
+                int nuevo = (int) Math.min((long) acumulado.length * 2, maximoBytes);
+                byte[] mayor = new byte[nuevo];
+                System.arraycopy(acumulado, 0, mayor, 0, total);
+                acumulado = mayor;
+            }
+            leidos = is.read(acumulado, total, Math.min(acumulado.length, maximoBytes) - total);
+            if (leidos == -1) {
+                break;
+            }
+            total += leidos;
+        }
+        return total == 0 ? "" : new String(acumulado, 0, total, StandardCharsets.UTF_8);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee y tira lo que quede del stream, como mucho "limite" bytes
+    // @param is - stream a vaciar
+    // @param limite - máximo de bytes que merece la pena leer
+    // @return true si se llegó al final del stream (la conexión es reutilizable)
+    // -------------------------------------------------------------------------------
+    static boolean vaciar(InputStream is, long limite) throws IOException {
+        byte[] buffer = BUFFER.get();
+        long total = 0;
+        int leidos;
+        while ((leidos = is.read(buffer)) != -1) {
+            total += leidos;
+            if (total > limite) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
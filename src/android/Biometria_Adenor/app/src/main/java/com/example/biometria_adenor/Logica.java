@@ -2,62 +2,114 @@ package com.example.biometria_adenor;
 import android.util.Log;
 
 public class Logica {
+    // URL del endpoint del servidor donde se publican las mediciones
+    public static final String URL_MEDICIONES = "https://amburet.upv.edu.es/api/medicion";
+
+    // URL del endpoint que recibe varias mediciones en una sola petición
+    public static final String URL_LOTE_MEDICIONES = "https://amburet.upv.edu.es/api/mediciones/lote";
+
+    // URL base de los colectores (+ "{colector}/oidos"): sensores que oye cada
+    // móvil y cuáles sube otro
+    public static final String URL_COLECTORES = "https://amburet.upv.edu.es/api/colectores/";
+
+    // URL del registro de calibraciones de los sensores (ActualizadorCalibraciones)
+    public static final String URL_CALIBRACIONES = "https://amburet.upv.edu.es/api/calibraciones";
+
+    // Valor de gas a partir del cual la medición se considera una alarma
+    // y se envía sin esperar al siguiente lote
+    public static final int UMBRAL_ALARMA_GAS = 1000;
+
     // Variable que almacena el tipo de medida (11 para gas, 12 para temperatura)
     private int tipoMedida;
     
     // Variable que almacena el valor numérico de la medida tomada
     private int valorMedida;
+
+    // Hora local (ms desde 1970) en que se recibió el beacon
+    private long instanteMedida;
+
+    // Planificador que agrupa las mediciones y las sube al servidor
+    private PlanificadorSubidas elPlanificador;
     
     /**
      * Constructor de la clase Logica
      * @param tipo - el tipo de medida a guardar (11=gas, 12=temperatura)
      * @param valor - el valor numérico de la medida
+     * @param instante - hora local de la captura (RelojCaptura.aPared)
+     * @param planificador - planificador de subidas que enviará la medida
      */
-    public Logica(int tipo, int valor) {
+    public Logica(int tipo, int valor, long instante, PlanificadorSubidas planificador) {
         // Inicializa el tipo de medida con el parámetro recibido
         this.tipoMedida = tipo;
         // Inicializa el valor de medida con el parámetro recibido
         this.valorMedida = valor;
+        // Guarda cuándo se capturó, que viaja con la medida hasta el servidor
+        this.instanteMedida = instante;
+        // Guarda el planificador por el que saldrá la medida
+        this.elPlanificador = planificador;
     }
     
     /**
-     * Método que guarda la medición realizando una petición POST al servidor
+     * Método que guarda la medición dejándola en la cola del planificador,
+     * que la enviará al servidor (POST) junto con las demás pendientes
      */
     public void guardarMedcion(){
-        // Crea un objeto PeticionarioREST para hacer peticiones HTTP
-        PeticionarioREST elPeticionario = new PeticionarioREST();
-        
-        // Variable para almacenar el tipo de medida como texto
-        String tipoStr = "";
-        
-        // Si el tipo de medida es 11, corresponde a "gas"
-        if(this.tipoMedida == 11){
-            tipoStr = "gas";
-        // Si el tipo de medida es 12, corresponde a "temperatura"
-        } else if (this.tipoMedida == 12) {
-            tipoStr = "temperatura";
-        }
-        
+        // Una lectura de gas por encima del umbral es una alarma: no espera al lote
+        boolean urgente = esAlarma(this.tipoMedida, this.valorMedida);
+
+        // Crea la medición con el tipo y valor de la medida
+        Medicion medicion = new Medicion(this.tipoMedida, this.valorMedida, urgente, this.instanteMedida);
+
         // Registra en el log el tipo de medida convertido a texto (para depuración)
-        Log.d("PROBLEMA DE LA TEMPERATURA", "EL tipoStr = " + tipoStr);
-        
-        // Construye el cuerpo de la petición en formato JSON con el tipo y valor de la medida
-        String cuerpo =  "{\"tipo\": \"" + tipoStr + "\", \"valor\": " + this.valorMedida + "}";
-        
-        // Realiza una petición POST al servidor con los datos de la medición
-        elPeticionario.hacerPeticionREST("POST",  "https://amburet.upv.edu.es/api/medicion",
-                cuerpo, new PeticionarioREST.RespuestaREST () {
-                    /**
-                     * Método callback que se ejecuta cuando se recibe respuesta del servidor
-                     * @param codigo - el código de respuesta HTTP (ej: 200, 404, 500)
-                     * @param cuerpo - el contenido de la respuesta del servidor
-                     */
-                    @Override
-                    public void callback(int codigo, String cuerpo) {
-                        // Registra en el log la respuesta recibida del servidor (para depuración)
-                        Log.d( "pruebasPeticionario", "TENGO RESPUESTA:\ncodigo = " + codigo + "\ncuerpo: \n" + cuerpo);
-                    }
-                }
-        );
+        Log.d("PROBLEMA DE LA TEMPERATURA", "EL tipoStr = " + medicion.getTipoTexto());
+
+        // Deja la medición en la cola; el planificador decide cuándo enviarla
+        this.elPlanificador.encolar(medicion);
+    }
+
+    /**
+     * Indica si una medida es una alarma que no debe esperar al siguiente lote
+     * @param tipo - el tipo de medida (11=gas, 12=temperatura)
+     * @param valor - el valor numérico de la medida
+     * @return true si es gas por encima de UMBRAL_ALARMA_GAS
+     */
+    public static boolean esAlarma(int tipo, int valor) {
+        return tipo == 11 && valor >= UMBRAL_ALARMA_GAS;
+    }
+
+    /**
+     * Deja una medida en la cola del planificador con una medición sacada de
+     * la reserva. Es lo que se hace con cada trama del escaneo, así que no
+     * crea objetos ni escribe en el log (el planificador la devuelve a la
+     * reserva cuando ya la ha subido)
+     * La medición lleva la semilla de su clave de idempotencia
+     * (ClaveIdempotencia), que se calcula aquí sin crear objetos
+     * @param sensor - dirección del sensor que la envió
+     * @param tipo - el tipo de medida (11=gas, 12=temperatura)
+     * @param contador - contador de la lectura (MotorEscaneo.Destino)
+     * @param valor - el valor numérico de la medida
+     * @param rssi - RSSI filtrado del sensor (dBm)
+     * @param instante - hora local de la captura (RelojCaptura.aPared)
+     * @param planificador - planificador de subidas (con usarPool(pool))
+     * @param pool - reserva de mediciones
+     */
+    public static void encolarMedicion(String sensor, int tipo, int contador, int valor, int rssi, long instante,
+                                       PlanificadorSubidas planificador, PoolMediciones pool) {
+        planificador.encolar(pool.obtener(tipo, valor, esAlarma(tipo, valor), instante,
+                ClaveIdempotencia.semilla(sensor, tipo, contador), rssi));
+    }
+
+    /**
+     * Igual que encolarMedicion(...) sin calibraciones, pero la medición lleva
+     * además el valor en unidades de ingeniería con la curva del sensor
+     * (una búsqueda en el registro y un acceso a la tabla de la curva, sin
+     * crear objetos)
+     * @param calibraciones - registro de curvas de los sensores
+     */
+    public static void encolarMedicion(String sensor, int tipo, int contador, int valor, int rssi, long instante,
+                                       RegistroCalibraciones calibraciones,
+                                       PlanificadorSubidas planificador, PoolMediciones pool) {
+        planificador.encolar(pool.obtener(tipo, valor, calibraciones.convertir(sensor, tipo, valor),
+                esAlarma(tipo, valor), instante, ClaveIdempotencia.semilla(sensor, tipo, contador), rssi));
     }
 }
@@ -6,23 +6,40 @@ package com.example.biometria_adenor;
 import android.Manifest;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothManager;
 import android.bluetooth.le.BluetoothLeScanner;
 import android.bluetooth.le.ScanCallback;
 import android.bluetooth.le.ScanFilter;
 import android.bluetooth.le.ScanResult;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.ParcelUuid;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // ------------------------------------------------------------------
 // MainActivity: Actividad principal que gestiona el escaneo de
@@ -39,9 +56,12 @@ public class MainActivity extends AppCompatActivity {
     // El prefijo ">>>>" hace fácil buscar los logs de esta app
     private static final String ETIQUETA_LOG = ">>>>";
 
-    // Código único para identificar la solicitud de permisos
-    // Se usa en onRequestPermissionsResult() para saber qué respuesta procesar
-    private static final int CODIGO_PETICION_PERMISOS = 11223344;
+    // Permisos que hacen falta para escanear
+    private static final String[] PERMISOS_BLUETOOTH = {
+            Manifest.permission.BLUETOOTH_SCAN,      // Escanear BLE (Android 12+)
+            Manifest.permission.BLUETOOTH_CONNECT,   // Conectar BLE (Android 12+)
+            Manifest.permission.ACCESS_FINE_LOCATION // Ubicación (obligatorio para BLE)
+    };
 
     // --------------------------------------------------------------
     // VARIABLES DE INSTANCIA
@@ -56,10 +76,75 @@ public class MainActivity extends AppCompatActivity {
     // Se inicializa a null y se crea cuando se inicia un escaneo
     private ScanCallback callbackDelEscaneo = null;
 
-    // Almacena el último contador recibido del Arduino/beacon
-    // Se usa para evitar procesar mediciones duplicadas
-    // Cada nueva medición del Arduino tiene un contador incrementado
-    private int contadorAndroid = 0;
+    // Motor que procesa los anuncios de todos los sensores: cada sensor
+    // tiene su estado (contador, RSSI, agregados) en uno de sus hilos
+    // Descarta las tramas repetidas y entrega las mediciones nuevas
+    private MotorEscaneo elMotor;
+
+    // Cada cuántos anuncios se escriben las estadísticas del motor en el log
+    private static final int ANUNCIOS_ENTRE_ESTADISTICAS = 200;
+    private int anunciosDesdeEstadisticas = 0;
+
+    // Planificador del escaneo por ventanas: enciende y apaga el escáner y
+    // elige el modo para que ningún sensor pase más de OBJETIVO_FRESCURA_MS
+    // sin oírse, gastando la menor batería posible
+    // (null si no hay búsqueda en marcha)
+    private static final long OBJETIVO_FRESCURA_MS = PlanificadorEscaneo.OBJETIVO_POR_DEFECTO_MS;
+    private PlanificadorEscaneo elPlanificadorEscaneo = null;
+
+    // Temporizador del planificador de escaneo (en el hilo principal, como
+    // los callbacks del escaneo)
+    private final Handler manejadorEscaneo = new Handler(Looper.getMainLooper());
+    private final Runnable tickEscaneo = this::tickEscaneo;
+
+    // Planificador que agrupa las mediciones y las sube al servidor
+    // con reintentos, en lugar de hacer una petición por cada beacon
+    private PlanificadorSubidas elPlanificador;
+
+    // Hilo en segundo plano donde el planificador hace los envíos
+    private ScheduledExecutorService ejecutorSubidas;
+
+    // Reloj que pone fecha a cada medición al recibir el beacon
+    // Usa la misma base que ScanResult.getTimestampNanos() (nanos desde el arranque)
+    private RelojCaptura relojCaptura;
+
+    // Sensores que oye este móvil y los que sube otro colector (otro móvil o
+    // una pasarela que los oye mejor): las mediciones de esos no se suben
+    private ResponsabilidadColector laResponsabilidad;
+
+    // Preferencias donde se guarda el identificador de este colector
+    private static final String PREFERENCIAS = "biometria";
+    private static final String PREFERENCIA_COLECTOR = "colector";
+
+    // Tiempos del arranque (primer fotograma, listo, primera lectura) contados
+    // desde que se creó el proceso; el resumen sale en el log
+    private MedidorArranque medidorArranque;
+
+    // Hilo en el que se prepara lo que no hace falta para pintar la interfaz
+    // (motor, subidas, adaptador Bluetooth, calentamiento del motor), para que
+    // el primer fotograma no espere por ello
+    private ExecutorService ejecutorArranque;
+
+    // true cuando lo preparado en segundo plano ya se puede usar
+    // (solo se toca en el hilo principal)
+    private boolean listo = false;
+
+    // Se pone a true al empezar la primera búsqueda: el calentamiento del
+    // motor, si aún no ha terminado, se deja para no competir con el escaneo
+    private final AtomicBoolean escaneoEmpezado = new AtomicBoolean(false);
+
+    // Búsqueda pedida con un botón antes de tener escáner: se hace al tenerlo
+    private Runnable busquedaPendiente = null;
+
+    // Adaptador Bluetooth (se obtiene en segundo plano con BluetoothManager)
+    private BluetoothAdapter elAdaptador;
+
+    // Peticiones de permisos y de activar el Bluetooth (en lugar de
+    // requestPermissions y startActivityForResult, que están obsoletos)
+    private final ActivityResultLauncher<String[]> lanzadorPermisos = registerForActivityResult(
+            new ActivityResultContracts.RequestMultiplePermissions(), this::permisosRespondidos);
+    private final ActivityResultLauncher<Intent> lanzadorActivarBluetooth = registerForActivityResult(
+            new ActivityResultContracts.StartActivityForResult(), resultado -> obtenerEscaner());
 
     // --------------------------------------------------------------
     // MÉTODO: buscarTodosLosDispositivosBTLE()
@@ -69,6 +154,9 @@ public class MainActivity extends AppCompatActivity {
     private void buscarTodosLosDispositivosBTLE() {
         Log.d(ETIQUETA_LOG, " buscarTodosLosDispositivosBTL(): empieza ");
 
+        // Para la búsqueda que hubiera (y su planificador, si lo tiene)
+        this.detenerBusquedaDispositivosBTLE();
+
         Log.d(ETIQUETA_LOG, " buscarTodosLosDispositivosBTL(): instalamos scan callback ");
 
         // Creamos un callback anónimo que define qué hacer cuando se detecten dispositivos
@@ -208,6 +296,10 @@ public class MainActivity extends AppCompatActivity {
     private void buscarEsteDispositivoBTLE(final String dispositivoBuscado) {
         Log.d(ETIQUETA_LOG, " buscarEsteDispositivoBTLE(): empieza ");
 
+        // Si ya se estaba buscando (otra pulsación), se para antes: si no, el
+        // planificador anterior seguiría arrancando su escáner
+        this.detenerBusquedaDispositivosBTLE();
+
         Log.d(ETIQUETA_LOG, "  buscarEsteDispositivoBTLE(): instalamos scan callback ");
 
         // Creamos callback similar al anterior pero que también guarda mediciones
@@ -217,13 +309,11 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onScanResult( int callbackType, ScanResult resultado ) {
                 super.onScanResult(callbackType, resultado);
-                Log.d(ETIQUETA_LOG, "  buscarEsteDispositivoBTLE(): onScanResult() ");
 
-                // Muestra la información del beacon en el log
-                mostrarInformacionDispositivoBTLE( resultado );
-                
-                // IMPORTANTE: También guarda la medición en la base de datos
-                // Esto solo se hace en búsquedas filtradas (nuestro dispositivo)
+                // Guarda la medición (solo en búsquedas filtradas: nuestro
+                // dispositivo). Aquí no se escribe la trama en el log: se
+                // llama con cada anuncio y eso es trabajo en el camino de
+                // cada trama (para verla, "Buscar todos")
                 guardarMedicion( resultado );
             }
 
@@ -231,6 +321,9 @@ public class MainActivity extends AppCompatActivity {
             public void onBatchScanResults(List<ScanResult> results) {
                 super.onBatchScanResults(results);
                 Log.d(ETIQUETA_LOG, "  buscarEsteDispositivoBTLE(): onBatchScanResults() ");
+                for ( ScanResult resultado : results ) {
+                    guardarMedicion( resultado );
+                }
             }
 
             @Override
@@ -248,21 +341,64 @@ public class MainActivity extends AppCompatActivity {
         List<ScanFilter> filtros = new java.util.ArrayList<>();
         filtros.add(sf);
 
-        // Configura los parámetros del escaneo
-        // SCAN_MODE_LOW_LATENCY = escaneo rápido y frecuente
-        // Consume más batería pero detecta beacons más rápidamente
-        // Otras opciones: LOW_POWER (ahorra batería) o BALANCED (equilibrado)
-        android.bluetooth.le.ScanSettings settings =
-                new android.bluetooth.le.ScanSettings.Builder()
-                        .setScanMode(android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_LATENCY)
-                        .build();
+        // El escaneo no va seguido: el planificador lo arranca y lo para por
+        // ventanas, con el modo que toque (LOW_POWER, BALANCED o LOW_LATENCY)
+        final ScanCallback callback = this.callbackDelEscaneo;
+        this.elPlanificadorEscaneo = new PlanificadorEscaneo(new PlanificadorEscaneo.Radio() {
+            @Override
+            public void arrancar(PlanificadorEscaneo.Modo modo) {
+                android.bluetooth.le.ScanSettings settings =
+                        new android.bluetooth.le.ScanSettings.Builder()
+                                .setScanMode(modoAndroid(modo))
+                                .build();
+                elEscanner.startScan(filtros, settings, callback);
+            }
+
+            @Override
+            public void parar() {
+                elEscanner.stopScan(callback);
+            }
+        }, Reloj.SISTEMA, OBJETIVO_FRESCURA_MS);
 
         Log.d(ETIQUETA_LOG, "  buscarEsteDispositivoBTLE(): empezamos a escanear buscando: " + dispositivoBuscado );
 
-        // Inicia el escaneo con filtros y configuración personalizada
-        this.elEscanner.startScan(filtros, settings, this.callbackDelEscaneo );
+        // Inicia el escaneo (seguido hasta conocer el intervalo de anuncio)
+        programarTickEscaneo(this.elPlanificadorEscaneo.empezar());
     } // ()
 
+    // --------------------------------------------------------------
+    // MÉTODO: tickEscaneo()
+    // Lo llama el temporizador: el planificador arranca o para el
+    // escáner si toca y dice cuándo volver a llamarlo
+    // --------------------------------------------------------------
+    private void tickEscaneo() {
+        if ( this.elPlanificadorEscaneo == null ) {
+            return;
+        }
+        // Con más pérdidas en el enlace, ventanas más largas
+        this.elPlanificadorEscaneo.setCalidadEnlace(this.elMotor.getCalidadEnlace());
+        programarTickEscaneo(this.elPlanificadorEscaneo.tick());
+    }
+
+    private void programarTickEscaneo(long espera) {
+        this.manejadorEscaneo.removeCallbacks(this.tickEscaneo);
+        if ( espera != PlanificadorEscaneo.SIN_TRABAJO ) {
+            this.manejadorEscaneo.postDelayed(this.tickEscaneo, espera);
+        }
+    }
+
+    // Modo de escaneo de Android equivalente
+    private static int modoAndroid(PlanificadorEscaneo.Modo modo) {
+        switch ( modo ) {
+            case BAJO_CONSUMO:
+                return android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_POWER;
+            case EQUILIBRADO:
+                return android.bluetooth.le.ScanSettings.SCAN_MODE_BALANCED;
+            default:
+                return android.bluetooth.le.ScanSettings.SCAN_MODE_LOW_LATENCY;
+        }
+    }
+
     // --------------------------------------------------------------
     // MÉTODO: detenerBusquedaDispositivosBTLE()
     // Detiene el escaneo BLE actual (si hay uno activo)
@@ -276,7 +412,16 @@ public class MainActivity extends AppCompatActivity {
         }
 
         // Detiene el escaneo usando el callback que se usó para iniciarlo
-        this.elEscanner.stopScan( this.callbackDelEscaneo );
+        // (si es una búsqueda por ventanas, lo para su planificador)
+        if ( this.elPlanificadorEscaneo != null ) {
+            this.manejadorEscaneo.removeCallbacks(this.tickEscaneo);
+            Log.d(ETIQUETA_LOG, "Escaneo por ventanas: " + this.elPlanificadorEscaneo.getPlan()
+                    + ", escáner encendido " + Math.round(this.elPlanificadorEscaneo.getCicloEscaneo() * 100) + "%");
+            this.elPlanificadorEscaneo.terminar();
+            this.elPlanificadorEscaneo = null;
+        } else {
+            this.elEscanner.stopScan( this.callbackDelEscaneo );
+        }
         
         // Limpia el callback (lo pone a null)
         // Esto libera memoria e indica que no hay escaneo activo
@@ -286,53 +431,36 @@ public class MainActivity extends AppCompatActivity {
 
     // --------------------------------------------------------------
     // MÉTODO: guardarMedicion()
-    // Extrae los datos de medición del beacon y los guarda en BD
-    // Implementa lógica para evitar guardar mediciones duplicadas
+    // Pasa el anuncio del beacon al motor de escaneo, que lo decodifica
+    // (iBeacon clásico, multivalor o deltas), descarta los repetidos y
+    // deja las mediciones nuevas en la cola de subida
     // --------------------------------------------------------------
     private void guardarMedicion( ScanResult resultado){
 
         // Obtiene los bytes crudos del advertising packet
         byte[] bytes = resultado.getScanRecord().getBytes();
-        
-        // Parsea los bytes como trama iBeacon
-        TramaIBeacon tib = new TramaIBeacon(bytes);
 
-        // Extrae el major (2 bytes) que contiene info codificada
-        byte[] major = tib.getMajor();
-        
-        // Primer byte del major = TIPO DE MEDICIÓN
-        // Identifica qué sensor: temperatura, CO2, humedad, etc.
-        // & 0xFF convierte byte con signo a entero sin signo (0-255)
-        int tipoMedicion = major[0] & 0xFF ;
-        
-        // Segundo byte del major = CONTADOR
-        // Se incrementa con cada nueva medición del Arduino
-        // Permite detectar cuando llega una medición nueva vs. repetida
-        int contadorArduino = major[1] & 0xFF;
-
-        // Minor (2 bytes) = VALOR DE LA MEDICIÓN
-        // Contiene el dato del sensor (ej: 235 = 23.5°C)
-        int valorMedicion = Utilidades.bytesToInt(tib.getMinor());
-
-        // VERIFICACIÓN DE DUPLICADOS:
-        // Si el contador es igual al anterior, es la misma medición
-        // Los beacons transmiten continuamente, así que recibiremos
-        // el mismo paquete varias veces hasta que Arduino envíe uno nuevo
-        if ( contadorArduino == this.contadorAndroid ) {
-            Log.d(ETIQUETA_LOG, "Se repitio el contador no se envia este becon");
-            return; // Salir sin guardar (es duplicado)
+        // Instante en que el móvil recibió el beacon, pasado a hora de pared
+        // (no cuando se suba: el lote puede salir mucho más tarde)
+        long instanteCaptura = this.relojCaptura.aPared(resultado.getTimestampNanos());
+
+        // Cada beacon se identifica por su dirección y lleva su propio contador
+        String sensor = resultado.getDevice().getAddress();
+        if ( !this.elMotor.recibir( sensor, resultado.getRssi(), bytes, instanteCaptura ) ) {
+            Log.d(ETIQUETA_LOG, "Motor de escaneo saturado: se pierde un anuncio");
         }
 
-        // Si llegamos aquí, es una medición NUEVA
-        // Actualizamos nuestro contador local para futuras comparaciones
-        this.contadorAndroid = contadorArduino;
+        // Cada trama le dice al planificador del escaneo que el sensor se oye
+        // (y cada cuánto anuncia)
+        if ( this.elPlanificadorEscaneo != null ) {
+            this.elPlanificadorEscaneo.anotarTrama( sensor );
+        }
 
-        // Crea objeto de lógica de negocio con los datos extraídos
-        Logica logica = new Logica(tipoMedicion, valorMedicion);
-        
-        // Guarda la medición en la base de datos
-        // (Nota: hay un typo en el nombre del método original)
-        logica.guardarMedcion();
+        if ( ++this.anunciosDesdeEstadisticas >= ANUNCIOS_ENTRE_ESTADISTICAS ) {
+            this.anunciosDesdeEstadisticas = 0;
+            Log.d(ETIQUETA_LOG, "Enlace " + this.elMotor.getCalidadEnlace()
+                    + ": " + this.elMotor.getEstadisticas());
+        }
     }
 
     // --------------------------------------------------------------
@@ -343,7 +471,7 @@ public class MainActivity extends AppCompatActivity {
     // Busca cualquier dispositivo BLE sin filtros
     public void botonBuscarDispositivosBTLEPulsado( View v ) {
         Log.d(ETIQUETA_LOG, " boton buscar dispositivos BTLE Pulsado" );
-        this.buscarTodosLosDispositivosBTLE();
+        this.buscarCuandoSePueda( this::buscarTodosLosDispositivosBTLE );
     } // ()
 
     // --------------------------------------------------------------
@@ -358,7 +486,7 @@ public class MainActivity extends AppCompatActivity {
         // - Probaron con el nombre completo "EPSG-GTI-PROY-3A"
         // - Finalmente usan el nombre corto "GTI"
         
-        this.buscarEsteDispositivoBTLE( "GTI");
+        this.buscarCuandoSePueda( () -> this.buscarEsteDispositivoBTLE( "GTI") );
     } // ()
 
     // --------------------------------------------------------------
@@ -367,151 +495,312 @@ public class MainActivity extends AppCompatActivity {
     // --------------------------------------------------------------
     public void botonDetenerBusquedaDispositivosBTLEPulsado( View v ) {
         Log.d(ETIQUETA_LOG, " boton detener busqueda dispositivos BTLE Pulsado" );
+        this.busquedaPendiente = null;
         this.detenerBusquedaDispositivosBTLE();
     } // ()
 
     // --------------------------------------------------------------
-    // MÉTODO: inicializarBlueTooth()
-    // Configura todo lo necesario para usar Bluetooth en la app:
-    // - Obtiene el adaptador BT
-    // - Verifica/activa Bluetooth
-    // - Obtiene el escáner BLE
-    // - Solicita permisos necesarios
+    // MÉTODO: buscarCuandoSePueda()
+    // Hace la búsqueda ya si hay escáner; si la app todavía se está
+    // preparando (o falta el permiso o activar el Bluetooth), la deja
+    // pendiente y la hace obtenerEscaner()
     // --------------------------------------------------------------
-    private void inicializarBlueTooth() {
-        Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): obtenemos adaptador BT ");
-
-        // Obtiene el adaptador Bluetooth del dispositivo
-        // Representa el hardware Bluetooth del teléfono/tablet
-        BluetoothAdapter bta = BluetoothAdapter.getDefaultAdapter();
+    private void buscarCuandoSePueda( Runnable busqueda ) {
+        if ( this.elEscanner == null ) {
+            Log.d(ETIQUETA_LOG, " buscarCuandoSePueda(): todavía no hay escáner, se buscará al tenerlo");
+            this.busquedaPendiente = busqueda;
+            return;
+        }
+        this.medidorArranque.anotar(MedidorArranque.Hito.ESCANEO);
+        this.escaneoEmpezado.set(true);
+        busqueda.run();
+    } // ()
 
-        Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): habilitamos adaptador BT ");
+    // --------------------------------------------------------------
+    // MÉTODO: prepararBluetooth()
+    // Se llama en el hilo principal cuando ya se tiene el adaptador:
+    // - Pide los permisos que falten
+    // - Pide activar el Bluetooth si está desactivado
+    // - Obtiene el escáner BLE
+    // Cada paso sigue en la respuesta del anterior, sin bloquear la interfaz
+    // --------------------------------------------------------------
+    private void prepararBluetooth() {
+        if ( this.elAdaptador == null ) {
+            Log.d(ETIQUETA_LOG, " prepararBluetooth(): Socorro: este dispositivo no tiene Bluetooth !!!!");
+            return;
+        }
 
-        // Verifica si Bluetooth está activado
-        if (!bta.isEnabled()) {
-            Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): Bluetooth desactivado, solicitando activación...");
+        // SOLICITUD DE PERMISOS (Android 6.0+)
+        // Verifica si la app tiene los permisos necesarios
+        for ( String permiso : PERMISOS_BLUETOOTH ) {
+            if ( ContextCompat.checkSelfPermission(this, permiso) != PackageManager.PERMISSION_GRANTED ) {
+                // Si falta alguno, se piden todos; sigue en permisosRespondidos()
+                Log.d(ETIQUETA_LOG, " prepararBluetooth(): voy a pedir permisos !!!!");
+                this.lanzadorPermisos.launch(PERMISOS_BLUETOOTH);
+                return;
+            }
+        }
+        Log.d(ETIQUETA_LOG, " prepararBluetooth(): parece que YA tengo los permisos necesarios !!!!");
+        activarBluetooth();
+    } // ()
 
-            // Si está desactivado, muestra diálogo del sistema para activarlo
-            // El usuario puede aceptar o rechazar
-            Intent enableBtIntent = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
-            startActivityForResult(enableBtIntent, CODIGO_PETICION_PERMISOS);
+    // --------------------------------------------------------------
+    // CALLBACK: permisosRespondidos()
+    // El usuario ha respondido a la petición de permisos
+    // --------------------------------------------------------------
+    private void permisosRespondidos( Map<String, Boolean> concedidos ) {
+        if ( Boolean.TRUE.equals(concedidos.get(Manifest.permission.BLUETOOTH_SCAN)) ) {
+            // PERMISOS CONCEDIDOS: La app puede usar Bluetooth BLE
+            Log.d(ETIQUETA_LOG, " permisosRespondidos(): permisos concedidos  !!!!");
+            activarBluetooth();
         } else {
-            Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): Bluetooth ya está activado");
+            // PERMISOS DENEGADOS: La app NO puede usar BLE
+            Log.d(ETIQUETA_LOG, " permisosRespondidos(): Socorro: permisos NO concedidos  !!!!");
         }
+    } // ()
 
-        // Muestra estado actual del Bluetooth
-        Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): habilitado =  " + bta.isEnabled() );
-        Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): estado =  " + bta.getState() );
-
-        Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): obtenemos escaner btle ");
-
-        // Obtiene el escáner BLE del adaptador
-        // Este objeto permite buscar dispositivos BLE
-        this.elEscanner = bta.getBluetoothLeScanner();
+    // --------------------------------------------------------------
+    // MÉTODO: activarBluetooth()
+    // Si el Bluetooth está desactivado, muestra el diálogo del sistema
+    // para activarlo (sigue en obtenerEscaner() cuando el usuario responde)
+    // --------------------------------------------------------------
+    private void activarBluetooth() {
+        if ( !this.elAdaptador.isEnabled() ) {
+            Log.d(ETIQUETA_LOG, " activarBluetooth(): Bluetooth desactivado, solicitando activación...");
+            this.lanzadorActivarBluetooth.launch(new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE));
+            return;
+        }
+        Log.d(ETIQUETA_LOG, " activarBluetooth(): Bluetooth ya está activado");
+        obtenerEscaner();
+    } // ()
 
-        // Verifica que se obtuvo correctamente el escáner
+    // --------------------------------------------------------------
+    // MÉTODO: obtenerEscaner()
+    // Obtiene el escáner BLE del adaptador (null si el Bluetooth sigue
+    // desactivado) y hace la búsqueda que estuviera pendiente
+    // --------------------------------------------------------------
+    private void obtenerEscaner() {
+        this.elEscanner = this.elAdaptador.getBluetoothLeScanner();
         if ( this.elEscanner == null ) {
-            Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): Socorro: NO hemos obtenido escaner btle  !!!!");
-            // Si es null, Bluetooth no está disponible o activo
+            Log.d(ETIQUETA_LOG, " obtenerEscaner(): Socorro: NO hemos obtenido escaner btle  !!!!");
+            return;
         }
+        Log.d(ETIQUETA_LOG, " obtenerEscaner(): escáner listo");
 
-        Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): voy a perdir permisos (si no los tuviera) !!!!");
-
-        // SOLICITUD DE PERMISOS (Android 6.0+)
-        // Verifica si la app tiene los permisos necesarios
-        if (
-                // BLUETOOTH_SCAN: Permiso para escanear dispositivos BLE (Android 12+)
-                ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) != PackageManager.PERMISSION_GRANTED
-                        // BLUETOOTH_CONNECT: Permiso para conectarse a dispositivos (Android 12+)
-                        || ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) != PackageManager.PERMISSION_GRANTED
-                        // ACCESS_FINE_LOCATION: Requerido porque BLE puede revelar ubicación
-                        // Google lo requiere por privacidad, aunque no usemos GPS
-                        || ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED
-        )
-        {
-            // Si falta algún permiso, solicita todos los necesarios
-            ActivityCompat.requestPermissions(
-                    MainActivity.this,
-                    new String[]{
-                            Manifest.permission.BLUETOOTH_SCAN,      // Escanear BLE
-                            Manifest.permission.BLUETOOTH_CONNECT,   // Conectar BLE
-                            Manifest.permission.ACCESS_FINE_LOCATION // Ubicación (obligatorio para BLE)
-                    },
-                    CODIGO_PETICION_PERMISOS // Código para identificar esta solicitud
-            );
+        if ( this.busquedaPendiente != null ) {
+            Runnable busqueda = this.busquedaPendiente;
+            this.busquedaPendiente = null;
+            buscarCuandoSePueda( busqueda );
+        }
+    } // ()
 
+    // --------------------------------------------------------------
+    // MÉTODO: hayRed()
+    // Indica si el móvil tiene ahora mismo una red con Internet
+    // Lo consulta el planificador antes de cada envío
+    // --------------------------------------------------------------
+    private boolean hayRed() {
+        ConnectivityManager cm = (ConnectivityManager) getSystemService(CONNECTIVITY_SERVICE);
+        if (cm == null) {
+            return false;
         }
-        else {
-            // Si ya tiene todos los permisos, continúa normalmente
-            Log.d(ETIQUETA_LOG, " inicializarBlueTooth(): parece que YA tengo los permisos necesarios !!!!");
+        Network red = cm.getActiveNetwork();
+        if (red == null) {
+            return false;
         }
-    } // ()
+        NetworkCapabilities capacidades = cm.getNetworkCapabilities(red);
+        return capacidades != null
+                && capacidades.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
 
     // --------------------------------------------------------------
     // MÉTODO DEL CICLO DE VIDA: onCreate()
     // Primer método que se ejecuta cuando se crea la actividad
     // Es el punto de entrada de la aplicación
+    // Solo carga la interfaz: todo lo demás se prepara en segundo plano
+    // (prepararEnSegundoPlano) para que la pantalla salga cuanto antes
     // --------------------------------------------------------------
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         // Llama al onCreate de la clase padre (AppCompatActivity)
         // Ejecuta inicialización básica de Android
         super.onCreate(savedInstanceState);
-        
+
+        // Los tiempos del arranque se cuentan desde que se creó el proceso
+        this.medidorArranque = new MedidorArranque(SystemClock::elapsedRealtime,
+                Process.getStartElapsedRealtime());
+        this.medidorArranque.anotar(MedidorArranque.Hito.CREACION);
+
         // Establece el layout (interfaz visual) desde el XML
         // Carga botones, textos, y otros elementos visuales
         setContentView(R.layout.activity_main);
 
         Log.d(ETIQUETA_LOG, " onCreate(): empieza ");
 
-        // Inicializa Bluetooth: obtiene adaptador, escáner, pide permisos
-        // Es crucial hacerlo aquí para que todo esté listo antes de escanear
-        inicializarBlueTooth();
+        anotarPrimerFotograma();
+
+        // El resto (motor, subidas, Bluetooth) en otro hilo; al terminar
+        // sigue en preparacionTerminada(), en el hilo principal
+        this.ejecutorArranque = Executors.newSingleThreadExecutor();
+        this.ejecutorArranque.execute(this::prepararEnSegundoPlano);
 
         Log.d(ETIQUETA_LOG, " onCreate(): termina ");
 
     } // onCreate()
 
     // --------------------------------------------------------------
-    // CALLBACK: onRequestPermissionsResult()
-    // Se ejecuta automáticamente cuando el usuario responde a la
-    // solicitud de permisos (acepta o rechaza)
-    // --------------------------------------------------------------
-    public void onRequestPermissionsResult(int requestCode, String[] permissions,
-                                           int[] grantResults) {
-        // Llama al método del padre
-        super.onRequestPermissionsResult( requestCode, permissions, grantResults);
-
-        // Verifica qué solicitud de permisos es (usando el código)
-        switch (requestCode) {
-            case CODIGO_PETICION_PERMISOS:
-                
-                // Verifica si hay resultados y si el primer permiso fue concedido
-                // grantResults contiene PERMISSION_GRANTED o PERMISSION_DENIED
-                // para cada permiso solicitado
-                if (grantResults.length > 0 &&
-                        grantResults[0] == PackageManager.PERMISSION_GRANTED) {
-
-                    // PERMISOS CONCEDIDOS: La app puede usar Bluetooth BLE
-                    Log.d(ETIQUETA_LOG, " onRequestPermissionResult(): permisos concedidos  !!!!");
-                    
-                    // Aquí podría iniciarse el escaneo automáticamente
-                    // o mostrar mensaje de éxito al usuario
-                    
-                }  else {
-                    // PERMISOS DENEGADOS: La app NO puede usar BLE
-                    Log.d(ETIQUETA_LOG, " onRequestPermissionResult(): Socorro: permisos NO concedidos  !!!!");
-
-                    // LIMITACIÓN: El código actual solo registra el error
-                    // Debería mostrar un diálogo explicando por qué son necesarios
-                    // o desactivar funcionalidad BLE
-                }
-                return;
+    // MÉTODO: anotarPrimerFotograma()
+    // Anota en el medidor cuándo se dibuja la interfaz por primera vez
+    // (lo que se pone al principio de la cola del hilo principal justo
+    // antes de dibujar se ejecuta en cuanto termina el dibujo)
+    // --------------------------------------------------------------
+    private void anotarPrimerFotograma() {
+        final View raiz = findViewById(android.R.id.content);
+        raiz.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                raiz.getViewTreeObserver().removeOnPreDrawListener(this);
+                manejadorEscaneo.postAtFrontOfQueue(() ->
+                        medidorArranque.anotar(MedidorArranque.Hito.PRIMER_FOTOGRAMA));
+                return true;
+            }
+        });
+    } // ()
+
+    // --------------------------------------------------------------
+    // MÉTODO: prepararEnSegundoPlano()
+    // Crea lo que no hace falta para pintar la interfaz (se ejecuta en
+    // ejecutorArranque). Los campos que rellena solo se leen en el hilo
+    // principal después de preparacionTerminada()
+    // --------------------------------------------------------------
+    private void prepararEnSegundoPlano() {
+        Log.d(ETIQUETA_LOG, " prepararEnSegundoPlano(): empieza ");
+
+        // Crea el planificador de subidas y lo arranca en su propio hilo
+        // Los lotes se comprimen con gzip (si pasan del umbral) y se firman con
+        // la clave HMAC compartida con el servidor (vacía = sin firma)
+        // Cada medición lleva la hora de captura corregida con el desfase
+        // respecto al servidor, que se estima con las respuestas de los lotes
+        CodificadorCuerpo codificador = CodificadorCuerpo.conClave(
+                CodificadorCuerpo.Compresion.GZIP, BuildConfig.CLAVE_HMAC);
+        this.relojCaptura = new RelojCaptura(System::currentTimeMillis, SystemClock::elapsedRealtimeNanos);
+        // Cada lote lleva el identificador de este móvil como colector para
+        // que el servidor se quede con la copia del que mejor oye cada sensor
+        // (leer las preferencias toca el disco: mejor aquí que en onCreate)
+        String colector = obtenerIdentificadorColector();
+        EnviadorMediciones enviador = new EnviadorMediciones(Logica.URL_LOTE_MEDICIONES,
+                PeticionarioREST.getTransportePorDefecto(), codificador, this.relojCaptura);
+        enviador.usarColector(colector);
+        this.elPlanificador = new PlanificadorSubidas(enviador, Reloj.SISTEMA, this::hayRed);
+        this.ejecutorSubidas = Executors.newSingleThreadScheduledExecutor();
+        // Las mediciones subidas vuelven a la reserva para reutilizarlas
+        PoolMediciones pool = new PoolMediciones();
+        this.elPlanificador.usarPool(pool);
+        this.elPlanificador.arrancar(this.ejecutorSubidas);
+
+        // Cada PERIODO_MS se informa al servidor de los sensores que se oyen y
+        // se recibe la lista de los que ya sube otro colector
+        this.laResponsabilidad = new ResponsabilidadColector(Reloj.SISTEMA);
+        this.ejecutorSubidas.scheduleWithFixedDelay(
+                new InformadorColector(Logica.URL_COLECTORES, colector, this.laResponsabilidad,
+                        PeticionarioREST.getTransportePorDefecto(), codificador),
+                InformadorColector.PERIODO_MS / 6, InformadorColector.PERIODO_MS, TimeUnit.MILLISECONDS);
+
+        // Curvas de calibración de los sensores: las de fábrica (sus tablas se
+        // calculan aquí, fuera del hilo principal) y cada PERIODO_MS las que
+        // tenga el servidor para cada sensor
+        RegistroCalibraciones calibraciones = RegistroCalibraciones.conCurvasDeFabrica();
+        this.ejecutorSubidas.scheduleWithFixedDelay(
+                new ActualizadorCalibraciones(Logica.URL_CALIBRACIONES, calibraciones,
+                        PeticionarioREST.getTransportePorDefecto()),
+                0, ActualizadorCalibraciones.PERIODO_MS, TimeUnit.MILLISECONDS);
+
+        // Crea el motor de escaneo: las mediciones nuevas de los sensores que
+        // le tocan a este colector van a la cola del planificador (desde los
+        // hilos del motor) con su valor ya calibrado; la primera que sale se
+        // anota en el medidor
+        this.elMotor = new MotorEscaneo(MotorEscaneo.trabajadoresPorDefecto(),
+                this.medidorArranque.observar(this.laResponsabilidad.filtrar((sensor, tipo, contador, valor, rssi, instante) ->
+                        Logica.encolarMedicion(sensor, tipo, contador, valor, rssi, instante, calibraciones,
+                                this.elPlanificador, pool))),
+                Reloj.SISTEMA, MotorEscaneo.SIN_RSSI_MINIMO);
+
+        // Obtiene el adaptador Bluetooth del dispositivo
+        // (BluetoothAdapter.getDefaultAdapter() está obsoleto)
+        BluetoothManager gestor = getSystemService(BluetoothManager.class);
+        this.elAdaptador = gestor == null ? null : gestor.getAdapter();
+
+        this.manejadorEscaneo.post(this::preparacionTerminada);
+
+        // Mientras el usuario mira la pantalla (y concede los permisos), se
+        // pasan tramas de prueba por el camino de cada trama para que el JIT lo
+        // compile antes de escanear; si la búsqueda empieza antes, se deja
+        try {
+            MotorEscaneo.Estadisticas calentamiento = CalentadorEscaneo.calentar(
+                    CalentadorEscaneo.TRAMAS_POR_DEFECTO, this.escaneoEmpezado);
+            Log.d(ETIQUETA_LOG, " prepararEnSegundoPlano(): motor calentado: " + calentamiento);
+        } catch (Exception e) {
+            Log.w(ETIQUETA_LOG, " prepararEnSegundoPlano(): no se pudo calentar el motor: " + e.getMessage());
         }
-        // Si hubiera otras solicitudes de permisos, se procesarían aquí
-        // con más casos en el switch
     } // ()
 
+    // --------------------------------------------------------------
+    // MÉTODO: preparacionTerminada()
+    // Ya en el hilo principal: la app está lista y sigue con el Bluetooth
+    // (permisos, activarlo, escáner)
+    // --------------------------------------------------------------
+    private void preparacionTerminada() {
+        // Si la actividad se cerró mientras se preparaba, se libera aquí
+        if ( isDestroyed() ) {
+            liberar();
+            return;
+        }
+        this.listo = true;
+        this.medidorArranque.anotar(MedidorArranque.Hito.LISTO);
+        reportFullyDrawn();
+        Log.d(ETIQUETA_LOG, " preparacionTerminada(): " + this.medidorArranque.resumen());
+
+        prepararBluetooth();
+    } // ()
+
+    // --------------------------------------------------------------
+    // MÉTODO: obtenerIdentificadorColector()
+    // Identificador de este móvil como colector: un UUID aleatorio que se
+    // crea la primera vez y se guarda en las preferencias (no identifica al
+    // usuario ni al dispositivo fuera de este servidor)
+    // --------------------------------------------------------------
+    private String obtenerIdentificadorColector() {
+        SharedPreferences preferencias = getSharedPreferences(PREFERENCIAS, MODE_PRIVATE);
+        String colector = preferencias.getString(PREFERENCIA_COLECTOR, null);
+        if (!ResponsabilidadColector.esIdentificadorValido(colector)) {
+            colector = UUID.randomUUID().toString();
+            preferencias.edit().putString(PREFERENCIA_COLECTOR, colector).apply();
+        }
+        return colector;
+    }
+
+    // --------------------------------------------------------------
+    // MÉTODO DEL CICLO DE VIDA: onDestroy()
+    // Para el escaneo y el hilo de subidas al cerrar la actividad
+    // (si todavía se estaba preparando, lo libera preparacionTerminada())
+    // --------------------------------------------------------------
+    @Override
+    protected void onDestroy() {
+        this.ejecutorArranque.shutdown();
+        if ( this.listo ) {
+            liberar();
+        }
+        super.onDestroy();
+    } // onDestroy()
+
+    private void liberar() {
+        this.busquedaPendiente = null;
+        this.detenerBusquedaDispositivosBTLE();
+        this.elMotor.detener();
+        this.elPlanificador.detener();
+        this.ejecutorSubidas.shutdown();
+    }
+
 } // class MainActivity
 // --------------------------------------------------------------
 // FIN DE LA CLASE
@@ -0,0 +1,313 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Clase que representa una medición pendiente de subir al servidor
+// Contiene el tipo (11=gas, 12=temperatura), el valor crudo del minor, el
+// mismo valor en unidades de ingeniería (RegistroCalibraciones), cuándo se
+// capturó y si es una alarma que debe enviarse sin esperar al siguiente lote
+// Las que salen del escaneo vienen de un PoolMediciones y se reutilizan
+// (rellenar) cuando el planificador ha terminado con ellas, y llevan además la
+// semilla de su clave de idempotencia (ClaveIdempotencia) para que el servidor
+// descarte las repetidas
+// -----------------------------------------------------------------------------------
+public class Medicion {
+
+    // RSSI de las mediciones de las que no se sabe (no se manda)
+    public static final int SIN_RSSI = Integer.MIN_VALUE;
+
+    // Decimales con los que se manda el valor en unidades de ingeniería
+    public static final int DECIMALES_VALOR_INGENIERIA = 3;
+
+    // Tipo de medida tal y como llega en el major (11=gas, 12=temperatura)
+    private int tipo;
+
+    // Valor numérico de la medida (minor del beacon)
+    private int valor;
+
+    // Valor en unidades de ingeniería (ppm, ºC) según la calibración del
+    // sensor o RegistroCalibraciones.SIN_VALOR (no se manda)
+    private float valorIngenieria;
+
+    // Indica si la medición es una alarma que adelanta el envío
+    private boolean urgente;
+
+    // Hora local (ms desde 1970) en que se recibió el beacon, calculada con
+    // RelojCaptura; RelojCaptura.SIN_INSTANTE si no se sabe
+    private long instanteMillis;
+
+    // Semilla de la clave de idempotencia (ClaveIdempotencia.semilla) o
+    // ClaveIdempotencia.SIN_CLAVE; la clave se calcula al subirla, con la hora
+    // ya pasada al reloj del servidor
+    private long semillaClave;
+
+    // Hora del servidor con la que se calculó la clave la primera vez que se
+    // subió (RelojCaptura.SIN_INSTANTE si aún no): los reintentos mandan la
+    // misma clave aunque entretanto se haya vuelto a estimar el desfase
+    private long instanteClave;
+
+    // RSSI filtrado (dBm) del sensor al capturarla o SIN_RSSI; con él el
+    // servidor se queda con el colector que mejor oye el sensor
+    private int rssi;
+
+    // Indica si está guardada en un PoolMediciones (para no devolverla dos veces)
+    boolean enPool;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param valor - valor numérico de la medida
+    // @param urgente - true si la medición debe enviarse cuanto antes
+    // -------------------------------------------------------------------------------
+    public Medicion(int tipo, int valor, boolean urgente) {
+        this(tipo, valor, urgente, RelojCaptura.SIN_INSTANTE);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param valor - valor numérico de la medida
+    // @param urgente - true si la medición debe enviarse cuanto antes
+    // @param instanteMillis - hora local de la captura (RelojCaptura.aPared)
+    // -------------------------------------------------------------------------------
+    public Medicion(int tipo, int valor, boolean urgente, long instanteMillis) {
+        this(tipo, valor, urgente, instanteMillis, ClaveIdempotencia.SIN_CLAVE);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param valor - valor numérico de la medida
+    // @param urgente - true si la medición debe enviarse cuanto antes
+    // @param instanteMillis - hora local de la captura (RelojCaptura.aPared)
+    // @param semillaClave - semilla de la clave de idempotencia o SIN_CLAVE
+    // -------------------------------------------------------------------------------
+    public Medicion(int tipo, int valor, boolean urgente, long instanteMillis, long semillaClave) {
+        this(tipo, valor, urgente, instanteMillis, semillaClave, SIN_RSSI);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param valor - valor numérico de la medida
+    // @param urgente - true si la medición debe enviarse cuanto antes
+    // @param instanteMillis - hora local de la captura (RelojCaptura.aPared)
+    // @param semillaClave - semilla de la clave de idempotencia o SIN_CLAVE
+    // @param rssi - RSSI filtrado del sensor (dBm) o SIN_RSSI
+    // -------------------------------------------------------------------------------
+    public Medicion(int tipo, int valor, boolean urgente, long instanteMillis, long semillaClave, int rssi) {
+        this(tipo, valor, RegistroCalibraciones.SIN_VALOR, urgente, instanteMillis, semillaClave, rssi);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param valor - valor crudo de la medida
+    // @param valorIngenieria - valor en unidades de ingeniería o RegistroCalibraciones.SIN_VALOR
+    // @param urgente - true si la medición debe enviarse cuanto antes
+    // @param instanteMillis - hora local de la captura (RelojCaptura.aPared)
+    // @param semillaClave - semilla de la clave de idempotencia o SIN_CLAVE
+    // @param rssi - RSSI filtrado del sensor (dBm) o SIN_RSSI
+    // -------------------------------------------------------------------------------
+    public Medicion(int tipo, int valor, float valorIngenieria, boolean urgente, long instanteMillis,
+                    long semillaClave, int rssi) {
+        rellenar(tipo, valor, valorIngenieria, urgente, instanteMillis, semillaClave, rssi);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Vuelve a rellenar una medición reutilizada (solo PoolMediciones)
+    // -------------------------------------------------------------------------------
+    void rellenar(int tipo, int valor, float valorIngenieria, boolean urgente, long instanteMillis,
+                  long semillaClave, int rssi) {
+        this.tipo = tipo;
+        this.valor = valor;
+        this.valorIngenieria = valorIngenieria;
+        this.urgente = urgente;
+        this.instanteMillis = instanteMillis;
+        this.semillaClave = semillaClave;
+        this.instanteClave = RelojCaptura.SIN_INSTANTE;
+        this.rssi = rssi;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el tipo de medida numérico
+    // -------------------------------------------------------------------------------
+    public int getTipo() {
+        return tipo;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el valor de la medida
+    // -------------------------------------------------------------------------------
+    public int getValor() {
+        return valor;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el valor en unidades de ingeniería o RegistroCalibraciones.SIN_VALOR
+    // -------------------------------------------------------------------------------
+    public float getValorIngenieria() {
+        return valorIngenieria;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si la medición lleva el valor en unidades de ingeniería
+    // -------------------------------------------------------------------------------
+    public boolean tieneValorIngenieria() {
+        return !Float.isNaN(valorIngenieria) && !Float.isInfinite(valorIngenieria);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si la medición es una alarma
+    // -------------------------------------------------------------------------------
+    public boolean esUrgente() {
+        return urgente;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la hora local de la captura o RelojCaptura.SIN_INSTANTE
+    // -------------------------------------------------------------------------------
+    public long getInstanteMillis() {
+        return instanteMillis;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si se sabe cuándo se capturó la medición
+    // -------------------------------------------------------------------------------
+    public boolean tieneInstante() {
+        return instanteMillis != RelojCaptura.SIN_INSTANTE;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el RSSI filtrado del sensor al capturarla o SIN_RSSI
+    // -------------------------------------------------------------------------------
+    public int getRssi() {
+        return rssi;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si la medición lleva clave de idempotencia (hace falta la
+    // semilla y el instante de la captura)
+    // -------------------------------------------------------------------------------
+    public boolean tieneClave() {
+        return semillaClave != ClaveIdempotencia.SIN_CLAVE && tieneInstante();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la clave de idempotencia o ClaveIdempotencia.SIN_CLAVE
+    // La primera llamada fija la ventana de la clave con este desfase; las
+    // siguientes (reintentos del mismo lote) devuelven la misma clave
+    // @param desfaseMillis - desfase del reloj del móvil respecto al servidor
+    // -------------------------------------------------------------------------------
+    public long getClave(long desfaseMillis) {
+        if (!tieneClave()) {
+            return ClaveIdempotencia.SIN_CLAVE;
+        }
+        return ClaveIdempotencia.calcular(this.semillaClave, fijarInstanteClave(desfaseMillis));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la clave de la ventana de al lado (ClaveIdempotencia.vecina) o
+    // ClaveIdempotencia.SIN_CLAVE si no tiene clave o no está cerca del cambio
+    // @param desfaseMillis - desfase del reloj del móvil respecto al servidor
+    // -------------------------------------------------------------------------------
+    public long getClaveVecina(long desfaseMillis) {
+        if (!tieneClave()) {
+            return ClaveIdempotencia.SIN_CLAVE;
+        }
+        return ClaveIdempotencia.vecina(this.semillaClave, fijarInstanteClave(desfaseMillis));
+    }
+
+    // Hora del servidor de la clave: la de la primera vez que se pidió
+    private long fijarInstanteClave(long desfaseMillis) {
+        if (this.instanteClave == RelojCaptura.SIN_INSTANTE) {
+            this.instanteClave = this.instanteMillis + desfaseMillis;
+        }
+        return this.instanteClave;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Convierte el tipo numérico al texto que espera el servidor
+    // @return "gas", "temperatura" o "" si el tipo no es conocido
+    // -------------------------------------------------------------------------------
+    public String getTipoTexto() {
+        if (this.tipo == 11) {
+            return "gas";
+        } else if (this.tipo == 12) {
+            return "temperatura";
+        }
+        return "";
+    }
+
+    // -------------------------------------------------------------------------------
+    // Construye el cuerpo JSON que acepta POST /api/medicion
+    // @return texto JSON con el tipo, el valor y "valor_ing" si lo tiene
+    // -------------------------------------------------------------------------------
+    public String aJSON() {
+        return "{\"tipo\": \"" + getTipoTexto() + "\", \"valor\": " + this.valor + textoValorIngenieria() + "}";
+    }
+
+    // ", \"valor_ing\": ..." o "" si no tiene valor en unidades de ingeniería
+    private String textoValorIngenieria() {
+        if (!tieneValorIngenieria()) {
+            return "";
+        }
+        return ", \"valor_ing\": "
+                + new BufferJSON(24).escribirDecimal(this.valorIngenieria, DECIMALES_VALOR_INGENIERIA);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Construye la medición tal y como va dentro de un lote: con "dt", los
+    // milisegundos desde la "base" del lote (así cada fecha ocupa pocos dígitos),
+    // con "clave", la de idempotencia, si la tiene (y "clave_vecina" si está
+    // cerca del cambio de ventana), con "rssi" si se sabe y con "valor_ing", el
+    // valor en unidades de ingeniería, si lo tiene
+    // @param baseMillis - hora (del servidor) de la base del lote
+    // @param desfaseMillis - desfase del reloj del móvil respecto al servidor
+    // @return texto JSON con el tipo, el valor, valor_ing, dt (si se sabe el instante), clave y rssi
+    // -------------------------------------------------------------------------------
+    public String aJSON(long baseMillis, long desfaseMillis) {
+        if (!tieneInstante()) {
+            return aJSON();
+        }
+        return "{\"tipo\": \"" + getTipoTexto() + "\", \"valor\": " + this.valor
+                + textoValorIngenieria()
+                + ", \"dt\": " + (this.instanteMillis + desfaseMillis - baseMillis)
+                + (tieneClave() ? ", \"clave\": \"" + ClaveIdempotencia.aTexto(getClave(desfaseMillis)) + "\"" : "")
+                + (getClaveVecina(desfaseMillis) != ClaveIdempotencia.SIN_CLAVE
+                        ? ", \"clave_vecina\": \"" + ClaveIdempotencia.aTexto(getClaveVecina(desfaseMillis)) + "\"" : "")
+                + (this.rssi != SIN_RSSI ? ", \"rssi\": " + this.rssi : "")
+                + "}";
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe lo mismo que aJSON(baseMillis, desfaseMillis) en un buffer, sin
+    // crear textos intermedios
+    // @param destino - buffer donde se escribe
+    // @param baseMillis - hora (del servidor) de la base del lote
+    // @param desfaseMillis - desfase del reloj del móvil respecto al servidor
+    // -------------------------------------------------------------------------------
+    public void escribirJSON(BufferJSON destino, long baseMillis, long desfaseMillis) {
+        destino.escribir("{\"tipo\": \"").escribir(getTipoTexto())
+                .escribir("\", \"valor\": ").escribirEntero(this.valor);
+        if (tieneValorIngenieria()) {
+            destino.escribir(", \"valor_ing\": ").escribirDecimal(this.valorIngenieria, DECIMALES_VALOR_INGENIERIA);
+        }
+        if (tieneInstante()) {
+            destino.escribir(", \"dt\": ").escribirEntero(this.instanteMillis + desfaseMillis - baseMillis);
+        }
+        if (tieneClave()) {
+            destino.escribir(", \"clave\": \"").escribirHexadecimal(getClave(desfaseMillis)).escribir('"');
+            long vecina = getClaveVecina(desfaseMillis);
+            if (vecina != ClaveIdempotencia.SIN_CLAVE) {
+                destino.escribir(", \"clave_vecina\": \"").escribirHexadecimal(vecina).escribir('"');
+            }
+        }
+        if (this.rssi != SIN_RSSI) {
+            destino.escribir(", \"rssi\": ").escribirEntero(this.rssi);
+        }
+        destino.escribir('}');
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,159 @@
+package com.example.biometria_adenor;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// -----------------------------------------------------------------------------------
+// Mide el arranque de la app: cuánto tarda desde que se crea el proceso hasta
+// cada hito (primer fotograma en pantalla, Bluetooth listo, primera lectura)
+// Cada hito se anota solo la primera vez y desde cualquier hilo (la primera
+// lectura llega desde los hilos del motor). Cuando llega la primera lectura
+// se escribe el resumen en el log:
+//
+//   Arranque: fotograma=180ms listo=420ms escaneo=2300ms lectura=2950ms (650ms tras escanear)
+//
+// En la app el reloj es SystemClock::elapsedRealtime y el origen
+// Process.getStartElapsedRealtime(), así que el tiempo incluye crear el
+// proceso y la Application, no solo la actividad
+// -----------------------------------------------------------------------------------
+public class MedidorArranque {
+
+    // -------------------------------------------------------------------------------
+    // Hitos del arranque, en el orden en que suelen pasar
+    // -------------------------------------------------------------------------------
+    public enum Hito {
+        CREACION,          // onCreate() de la actividad
+        PRIMER_FOTOGRAMA,  // la interfaz ya se ha dibujado una vez
+        LISTO,             // motor, subidas y Bluetooth preparados (en segundo plano)
+        ESCANEO,           // primera búsqueda arrancada
+        PRIMERA_LECTURA    // primera medición que sale del motor
+    }
+
+    // Hito que todavía no ha pasado
+    public static final long SIN_MARCA = -1;
+
+    private static final String ETIQUETA_LOG = "MedidorArranque";
+
+    // Reloj con el que se anotan los hitos (el mismo que el origen)
+    private final Reloj elReloj;
+
+    // Instante en que empezó el proceso
+    private final long elOrigen;
+
+    // Milisegundos desde el origen de cada hito (SIN_MARCA si no ha pasado)
+    private final AtomicLongArray lasMarcas = new AtomicLongArray(Hito.values().length);
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param reloj - reloj monótono con el que se anotan los hitos
+    // @param origen - instante de ese reloj en que empezó el proceso
+    // -------------------------------------------------------------------------------
+    public MedidorArranque(Reloj reloj, long origen) {
+        this.elReloj = reloj;
+        this.elOrigen = origen;
+        for (int i = 0; i < this.lasMarcas.length(); i++) {
+            this.lasMarcas.set(i, SIN_MARCA);
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Anota un hito (solo cuenta la primera vez)
+    // @param hito - el que acaba de pasar
+    // @return true si era la primera vez
+    // -------------------------------------------------------------------------------
+    public boolean anotar(Hito hito) {
+        int i = hito.ordinal();
+        // Después de la primera vez basta con una lectura
+        if (this.lasMarcas.get(i) != SIN_MARCA) {
+            return false;
+        }
+        long transcurrido = Math.max(0, this.elReloj.ahoraMillis() - this.elOrigen);
+        if (!this.lasMarcas.compareAndSet(i, SIN_MARCA, transcurrido)) {
+            return false;
+        }
+        Log.d(ETIQUETA_LOG, "anotar(): " + hito + " a los " + transcurrido + " ms");
+        if (hito == Hito.PRIMERA_LECTURA) {
+            Log.i(ETIQUETA_LOG, resumen());
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Decorador del destino del motor: anota la primera lectura y pasa todas
+    // @param destino - el destino de verdad
+    // @return destino que se le da al motor
+    // -------------------------------------------------------------------------------
+    public MotorEscaneo.Destino observar(MotorEscaneo.Destino destino) {
+        final int primera = Hito.PRIMERA_LECTURA.ordinal();
+        return (sensor, tipo, contador, valor, rssi, instante) -> {
+            if (this.lasMarcas.get(primera) == SIN_MARCA) {
+                anotar(Hito.PRIMERA_LECTURA);
+            }
+            destino.entregar(sensor, tipo, contador, valor, rssi, instante);
+        };
+    }
+
+    // -------------------------------------------------------------------------------
+    // Milisegundos desde que empezó el proceso hasta un hito
+    // @param hito - el hito
+    // @return milisegundos (SIN_MARCA si todavía no ha pasado)
+    // -------------------------------------------------------------------------------
+    public long getMillis(Hito hito) {
+        return this.lasMarcas.get(hito.ordinal());
+    }
+
+    // -------------------------------------------------------------------------------
+    // Tiempo hasta el primer fotograma
+    // -------------------------------------------------------------------------------
+    public long getTiempoPrimerFotograma() {
+        return getMillis(Hito.PRIMER_FOTOGRAMA);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Tiempo hasta la primera lectura
+    // -------------------------------------------------------------------------------
+    public long getTiempoPrimeraLectura() {
+        return getMillis(Hito.PRIMERA_LECTURA);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Resumen de los hitos que han pasado, para el log
+    // -------------------------------------------------------------------------------
+    public String resumen() {
+        StringBuilder texto = new StringBuilder("Arranque:");
+        for (Hito hito : Hito.values()) {
+            if (hito == Hito.CREACION) {
+                continue;
+            }
+            long ms = getMillis(hito);
+            texto.append(' ').append(nombre(hito)).append('=').append(ms == SIN_MARCA ? "-" : ms + "ms");
+        }
+        // La primera lectura depende de cuándo se pulse buscar: también
+        // se da contada desde que empezó el escaneo
+        long escaneo = getMillis(Hito.ESCANEO);
+        long lectura = getMillis(Hito.PRIMERA_LECTURA);
+        if (escaneo != SIN_MARCA && lectura != SIN_MARCA) {
+            texto.append(" (").append(Math.max(0, lectura - escaneo)).append("ms tras escanear)");
+        }
+        return texto.toString();
+    }
+
+    private static String nombre(Hito hito) {
+        switch (hito) {
+            case PRIMER_FOTOGRAMA:
+                return "fotograma";
+            case LISTO:
+                return "listo";
+            case ESCANEO:
+                return "escaneo";
+            case PRIMERA_LECTURA:
+                return "lectura";
+            default:
+                return "creacion";
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,472 @@
+package com.example.biometria_adenor;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// -----------------------------------------------------------------------------------
+// Motor de escaneo para muchos sensores a la vez
+// Cada anuncio recibido se reparte por el hash de la dirección del sensor entre
+// unos pocos trabajadores de un solo hilo. Todo el estado de un sensor
+// (seguimiento del contador, filtro de RSSI, agregados por tipo) vive en su
+// trabajador y solo lo toca ese hilo, así que procesar una trama no necesita
+// cerrojos entre sensores y con más núcleos se procesan más tramas.
+// Como un sensor siempre cae en el mismo trabajador, sus tramas se procesan en
+// el orden en que llegaron.
+//
+// Las mediciones nuevas salen por el Destino (en la app, Logica y el
+// planificador de subidas), desde el hilo del trabajador
+//
+// Para no crear objetos por cada trama, cada trabajador tiene sus huecos
+// (Anuncio) creados de antemano: recibir() coge uno libre, lo rellena y lo
+// pone en la cola; el trabajador lo procesa y lo devuelve a los libres
+// -----------------------------------------------------------------------------------
+public class MotorEscaneo {
+
+    // -------------------------------------------------------------------------------
+    // Recibe las mediciones nuevas que salen del motor; "contador" identifica
+    // la lectura dentro del sensor (para ClaveIdempotencia) y "rssi" es el RSSI
+    // filtrado del sensor en dBm (para elegir el colector que mejor lo oye)
+    // -------------------------------------------------------------------------------
+    public interface Destino {
+        void entregar(String sensor, int tipo, int contador, int valor, int rssi, long instante);
+    }
+
+    // Tipos de medición que acepta el servidor (gas y temperatura)
+    static final int TIPO_GAS = 11;
+    static final int TIPO_TEMPERATURA = 12;
+
+    // Sin umbral de RSSI: se aceptan todos los sensores que se oigan
+    public static final int SIN_RSSI_MINIMO = Integer.MIN_VALUE;
+
+    // Peso de cada trama en el RSSI filtrado (media móvil exponencial)
+    static final double PESO_RSSI = 0.2;
+
+    // Tramas que pueden esperar en la cola de cada trabajador (huecos creados
+    // de antemano por trabajador)
+    static final int CAPACIDAD_COLA = 4096;
+
+    // -------------------------------------------------------------------------------
+    // Contadores de todo el motor (se leen sin parar a los trabajadores)
+    // -------------------------------------------------------------------------------
+    public static class Estadisticas {
+        public final int sensores;          // sensores distintos vistos
+        public final long tramas;           // tramas procesadas
+        public final long duplicadas;       // tramas repetidas descartadas
+        public final long descartadasRssi;  // tramas de sensores por debajo del RSSI mínimo
+        public final long descartadasCola;  // tramas tiradas con la cola llena
+        public final long entregadas;       // mediciones entregadas al destino
+
+        Estadisticas(int sensores, long tramas, long duplicadas, long descartadasRssi,
+                     long descartadasCola, long entregadas) {
+            this.sensores = sensores;
+            this.tramas = tramas;
+            this.duplicadas = duplicadas;
+            this.descartadasRssi = descartadasRssi;
+            this.descartadasCola = descartadasCola;
+            this.entregadas = entregadas;
+        }
+
+        @Override
+        public String toString() {
+            return "sensores=" + sensores + " tramas=" + tramas + " duplicadas=" + duplicadas
+                    + " descartadasRssi=" + descartadasRssi + " descartadasCola=" + descartadasCola
+                    + " entregadas=" + entregadas;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Resumen de un sensor: RSSI filtrado y agregados por tipo de medición
+    // -------------------------------------------------------------------------------
+    public static class ResumenSensor {
+        public final double rssiFiltrado;
+        public final long tramas;
+        public final long[] numero = new long[2];   // [0] gas, [1] temperatura
+        public final int[] minimo = new int[2];
+        public final int[] maximo = new int[2];
+        public final int[] ultimo = new int[2];
+        public final double[] media = new double[2];
+
+        ResumenSensor(EstadoSensor e) {
+            this.rssiFiltrado = e.rssiFiltrado;
+            this.tramas = e.tramas;
+            for (int i = 0; i < 2; i++) {
+                this.numero[i] = e.numero[i];
+                this.minimo[i] = e.minimo[i];
+                this.maximo[i] = e.maximo[i];
+                this.ultimo[i] = e.ultimo[i];
+                this.media[i] = e.numero[i] == 0 ? 0 : (double) e.suma[i] / e.numero[i];
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Estado de un sensor (solo lo toca el hilo de su trabajador)
+    // -------------------------------------------------------------------------------
+    private static class EstadoSensor {
+        double rssiFiltrado = Double.NaN;
+        long tramas;
+        final long[] numero = new long[2];
+        final long[] suma = new long[2];
+        final int[] minimo = {Integer.MAX_VALUE, Integer.MAX_VALUE};
+        final int[] maximo = {Integer.MIN_VALUE, Integer.MIN_VALUE};
+        final int[] ultimo = new int[2];
+
+        void anotarRssi(int rssi) {
+            this.rssiFiltrado = Double.isNaN(this.rssiFiltrado)
+                    ? rssi : this.rssiFiltrado + PESO_RSSI * (rssi - this.rssiFiltrado);
+        }
+
+        void anotarValor(int tipo, int valor) {
+            int i = tipo - TIPO_GAS;
+            this.numero[i]++;
+            this.suma[i] += valor;
+            this.minimo[i] = Math.min(this.minimo[i], valor);
+            this.maximo[i] = Math.max(this.maximo[i], valor);
+            this.ultimo[i] = valor;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Hueco de la cola de un trabajador: una trama recibida o, si lleva tarea,
+    // algo que hay que hacer en el hilo del trabajador (resumen de un sensor)
+    // Se reutiliza: vuelve a los libres en cuanto se ha procesado
+    // -------------------------------------------------------------------------------
+    private static class Anuncio {
+        String sensor;
+        int rssi;
+        byte[] bytes;
+        long instante;
+        Runnable tarea;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Trabajador: un hilo con su parte de los sensores y sus propios lectores
+    // de tramas (los lectores no se pueden compartir entre hilos)
+    // -------------------------------------------------------------------------------
+    private class Trabajador implements Runnable {
+        final Thread hilo;
+        final ArrayBlockingQueue<Anuncio> cola = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+        final ArrayBlockingQueue<Anuncio> libres = new ArrayBlockingQueue<>(CAPACIDAD_COLA);
+        final Map<String, EstadoSensor> sensores = new HashMap<>();
+        final SeguidorSecuencias seguidor;
+        final TramaMultivalor lectorMultivalor = new TramaMultivalor();
+        final TramaDeltas lectorDeltas = new TramaDeltas();
+        final int[] muestras = new int[TramaDeltas.MAXIMO_MUESTRAS];
+
+        // Un solo escritor (el hilo del trabajador): se pueden leer desde fuera
+        volatile int numeroSensores;
+        volatile long tramas, duplicadas, descartadasRssi, entregadas;
+
+        // Huecos procesados (solo lo escribe el hilo del trabajador)
+        volatile long terminados;
+        volatile boolean parado;
+
+        // Estos los escribe quien llama a recibir() (puede ser más de un hilo)
+        final AtomicLong descartadasCola = new AtomicLong();
+        final AtomicLong encolados = new AtomicLong();
+
+        Trabajador(int indice, Reloj reloj) {
+            this.seguidor = new SeguidorSecuencias(reloj);
+            for (int i = 0; i < CAPACIDAD_COLA; i++) {
+                this.libres.add(new Anuncio());
+            }
+            this.hilo = new Thread(this, "escaneo-" + indice);
+            this.hilo.setDaemon(true);
+            this.hilo.start();
+        }
+
+        // Bucle del hilo: saca huecos de la cola hasta que se detiene el motor
+        @Override
+        public void run() {
+            while (!this.parado) {
+                Anuncio a;
+                try {
+                    a = this.cola.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                try {
+                    if (a.tarea != null) {
+                        a.tarea.run();
+                    } else {
+                        procesar(a.sensor, a.rssi, a.bytes, a.instante);
+                    }
+                } catch (RuntimeException e) {
+                    // Un fallo del destino no puede parar el escaneo de los demás sensores
+                } finally {
+                    a.sensor = null;
+                    a.bytes = null;
+                    a.tarea = null;
+                    this.terminados++;
+                    this.libres.offer(a);
+                }
+            }
+        }
+
+        // Pone una tarea en la cola (espera a que haya un hueco libre)
+        void ejecutar(Runnable tarea, long esperaMaximaMs) throws Exception {
+            Anuncio a = this.libres.poll(esperaMaximaMs, TimeUnit.MILLISECONDS);
+            if (a == null) {
+                throw new java.util.concurrent.TimeoutException("cola del trabajador llena");
+            }
+            a.tarea = tarea;
+            this.encolados.incrementAndGet();
+            this.cola.offer(a);
+        }
+
+        // Procesa una trama de uno de sus sensores (en el hilo del trabajador)
+        void procesar(String sensor, int rssi, byte[] bytes, long instanteCaptura) {
+            EstadoSensor estado = this.sensores.get(sensor);
+            if (estado == null) {
+                estado = new EstadoSensor();
+                this.sensores.put(sensor, estado);
+                this.numeroSensores = this.sensores.size();
+            }
+            this.tramas++;
+            estado.tramas++;
+            estado.anotarRssi(rssi);
+            if (estado.rssiFiltrado < rssiMinimo) {
+                this.descartadasRssi++;
+                return;
+            }
+
+            switch (FormatoTrama.detectar(bytes)) {
+                case MULTIVALOR:
+                    procesarMultivalor(sensor, estado, bytes, instanteCaptura);
+                    break;
+                case DELTAS:
+                    procesarDeltas(sensor, estado, bytes, instanteCaptura);
+                    break;
+                case IBEACON:
+                    procesarIBeacon(sensor, estado, bytes, instanteCaptura);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // Trama iBeacon clásica: tipo y contador en el major, valor en el minor
+        private void procesarIBeacon(String sensor, EstadoSensor estado, byte[] bytes, long instante) {
+            int d = FormatoTrama.desplazamiento(bytes);
+            int tipo = bytes[25 + d] & 0xFF;
+            int contador = bytes[26 + d] & 0xFF;
+            int valor = ((bytes[27 + d] & 0xFF) << 8) | (bytes[28 + d] & 0xFF);
+            if (anotarContador(sensor, tipo, contador)) {
+                entregar(sensor, estado, tipo, contador, valor, instante);
+            }
+        }
+
+        // Trama multivalor: un contador para la trama entera (tipo 0); cada
+        // medición se identifica con la secuencia (16 bits) y su posición
+        private void procesarMultivalor(String sensor, EstadoSensor estado, byte[] bytes, long instante) {
+            if (!this.lectorMultivalor.envolver(bytes)
+                    || !anotarContador(sensor, 0, this.lectorMultivalor.getSecuencia() & 0xFF)) {
+                return;
+            }
+            int secuencia = this.lectorMultivalor.getSecuencia();
+            for (int i = 0; i < this.lectorMultivalor.getNumeroMediciones(); i++) {
+                entregar(sensor, estado, this.lectorMultivalor.getTipo(i), (secuencia << 2) | i,
+                        this.lectorMultivalor.getValor(i), instante);
+            }
+        }
+
+        // Trama de deltas: cada muestra con su contador y su instante hacia atrás
+        private void procesarDeltas(String sensor, EstadoSensor estado, byte[] bytes, long instante) {
+            if (!this.lectorDeltas.envolver(bytes)) {
+                return;
+            }
+            int tipo = this.lectorDeltas.getTipo();
+            // La misma trama otra vez: se descarta entera por su último contador
+            // (anotarContador la cuenta como repetida)
+            int ultimo = this.lectorDeltas.getContadorUltima();
+            if (this.seguidor.esElUltimo(sensor, tipo, ultimo)) {
+                anotarContador(sensor, tipo, ultimo);
+                return;
+            }
+            int numero = this.lectorDeltas.leerMuestras(this.muestras);
+            long periodoMillis = this.lectorDeltas.getSegundosEntreMuestras() * 1000L;
+            for (int i = 0; i < numero; i++) {
+                int contador = this.lectorDeltas.getContador(i);
+                if (anotarContador(sensor, tipo, contador)) {
+                    entregar(sensor, estado, tipo, contador, this.muestras[i], instante - (numero - 1 - i) * periodoMillis);
+                }
+            }
+        }
+
+        private boolean anotarContador(String sensor, int tipo, int contador) {
+            if (this.seguidor.anotar(sensor, tipo, contador).esNueva()) {
+                return true;
+            }
+            this.duplicadas++;
+            return false;
+        }
+
+        private void entregar(String sensor, EstadoSensor estado, int tipo, int contador, int valor, long instante) {
+            // El servidor solo acepta gas y temperatura
+            if (tipo != TIPO_GAS && tipo != TIPO_TEMPERATURA) {
+                return;
+            }
+            estado.anotarValor(tipo, valor);
+            this.entregadas++;
+            elDestino.entregar(sensor, tipo, contador, valor, (int) Math.round(estado.rssiFiltrado), instante);
+        }
+    }
+
+    private final Trabajador[] trabajadores;
+    private final Destino elDestino;
+    private final int rssiMinimo;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param numeroTrabajadores - hilos entre los que se reparten los sensores
+    // @param destino - recibe las mediciones nuevas (desde los hilos del motor)
+    // @param reloj - reloj monótono para el seguimiento de contadores
+    // @param rssiMinimo - RSSI filtrado (dBm) por debajo del cual se ignora un
+    //                     sensor (SIN_RSSI_MINIMO para no filtrar)
+    // -------------------------------------------------------------------------------
+    public MotorEscaneo(int numeroTrabajadores, Destino destino, Reloj reloj, int rssiMinimo) {
+        if (numeroTrabajadores < 1) {
+            throw new IllegalArgumentException("hace falta al menos un trabajador");
+        }
+        this.elDestino = destino;
+        this.rssiMinimo = rssiMinimo;
+        this.trabajadores = new Trabajador[numeroTrabajadores];
+        for (int i = 0; i < numeroTrabajadores; i++) {
+            this.trabajadores[i] = new Trabajador(i, reloj);
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Número de trabajadores razonable para este dispositivo: la mitad de los
+    // núcleos (el resto para la interfaz y las subidas), entre 1 y 4
+    // -------------------------------------------------------------------------------
+    public static int trabajadoresPorDefecto() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Entrega una trama recibida al trabajador de su sensor (no bloquea)
+    // @param sensor - dirección del sensor (BluetoothDevice.getAddress())
+    // @param rssi - RSSI de la trama (ScanResult.getRssi())
+    // @param bytes - bytes del anuncio (ScanRecord.getBytes())
+    // @param instanteCaptura - hora de pared de la captura (RelojCaptura.aPared)
+    // @return false si la cola del trabajador estaba llena y se ha tirado la trama
+    // -------------------------------------------------------------------------------
+    public boolean recibir(String sensor, int rssi, byte[] bytes, long instanteCaptura) {
+        Trabajador t = this.trabajadores[fragmento(sensor, this.trabajadores.length)];
+        Anuncio a = t.libres.poll();
+        if (a == null || t.parado) {
+            t.descartadasCola.incrementAndGet();
+            return false;
+        }
+        a.sensor = sensor;
+        a.rssi = rssi;
+        a.bytes = bytes;
+        a.instante = instanteCaptura;
+        t.encolados.incrementAndGet();
+        // Hay tantos huecos como sitio en la cola: offer() no puede fallar
+        t.cola.offer(a);
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Trabajador que lleva un sensor (siempre el mismo para la misma dirección)
+    // -------------------------------------------------------------------------------
+    static int fragmento(String sensor, int numeroTrabajadores) {
+        int h = sensor.hashCode();
+        h ^= (h >>> 16);
+        return (h & 0x7FFFFFFF) % numeroTrabajadores;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Espera a que los trabajadores terminen todo lo que tienen en cola
+    // @param esperaMaximaMs - tiempo máximo de espera
+    // @return false si no han terminado a tiempo
+    // -------------------------------------------------------------------------------
+    public boolean vaciar(long esperaMaximaMs) throws Exception {
+        long limite = System.nanoTime() + esperaMaximaMs * 1_000_000L;
+        for (Trabajador t : this.trabajadores) {
+            // Lo encolado hasta ahora está hecho cuando el trabajador ha
+            // terminado otros tantos huecos
+            long objetivo = t.encolados.get();
+            while (t.terminados < objetivo) {
+                if (t.parado || System.nanoTime() > limite) {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve los contadores de todo el motor
+    // Se leen de los campos volátiles de cada trabajador, sin pararlos
+    // -------------------------------------------------------------------------------
+    public Estadisticas getEstadisticas() {
+        int sensores = 0;
+        long tramas = 0, duplicadas = 0, descartadasRssi = 0, descartadasCola = 0, entregadas = 0;
+        for (Trabajador t : this.trabajadores) {
+            sensores += t.numeroSensores;
+            tramas += t.tramas;
+            duplicadas += t.duplicadas;
+            descartadasRssi += t.descartadasRssi;
+            descartadasCola += t.descartadasCola.get();
+            entregadas += t.entregadas;
+        }
+        return new Estadisticas(sensores, tramas, duplicadas, descartadasRssi, descartadasCola, entregadas);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el resumen de un sensor (null si no se ha visto)
+    // Se pide al hilo de su trabajador, así que espera a que procese lo que
+    // tenga en cola: para depurar y pruebas, no para el camino de cada trama
+    // -------------------------------------------------------------------------------
+    public ResumenSensor getResumen(String sensor) throws Exception {
+        Trabajador t = this.trabajadores[fragmento(sensor, this.trabajadores.length)];
+        FutureTask<ResumenSensor> resumen = new FutureTask<>(() -> {
+            EstadoSensor e = t.sensores.get(sensor);
+            return e == null ? null : new ResumenSensor(e);
+        });
+        t.ejecutar(resumen, 5_000);
+        return resumen.get(5, TimeUnit.SECONDS);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la calidad del enlace del peor trabajador (para el modo de escaneo)
+    // -------------------------------------------------------------------------------
+    public SeguidorSecuencias.CalidadEnlace getCalidadEnlace() {
+        SeguidorSecuencias.CalidadEnlace peor = SeguidorSecuencias.CalidadEnlace.DESCONOCIDA;
+        for (Trabajador t : this.trabajadores) {
+            SeguidorSecuencias.CalidadEnlace c = t.seguidor.getCalidadEnlace();
+            if (c.compareTo(peor) > 0) {
+                peor = c;
+            }
+        }
+        return peor;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el número de trabajadores
+    // -------------------------------------------------------------------------------
+    public int getNumeroTrabajadores() {
+        return this.trabajadores.length;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Para los hilos de los trabajadores (lo que quede en cola se descarta)
+    // -------------------------------------------------------------------------------
+    public void detener() {
+        for (Trabajador t : this.trabajadores) {
+            t.parado = true;
+            t.hilo.interrupt();
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
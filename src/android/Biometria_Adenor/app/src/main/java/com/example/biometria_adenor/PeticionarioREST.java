@@ -6,13 +6,7 @@ import android.util.Log;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 
 // ------------------------------------------------------------------------
@@ -42,11 +36,61 @@ public class PeticionarioREST extends AsyncTask<Void, Void, Boolean> {
     // Almacena el contenido/body de la respuesta del servidor
     private String cuerpoRespuesta = "";
 
+    // Transporte compartido por defecto: conexiones persistentes reutilizadas
+    // entre peticiones, para no pagar TCP + TLS en cada medición
+    private static final TransportePersistente TRANSPORTE_POR_DEFECTO = new TransportePersistente();
+
+    // Transporte que realmente abre las conexiones y hace la petición
+    private final TransporteHTTP elTransporte;
+
+    // Máximo de bytes del cuerpo de la respuesta que se guardan por defecto
+    // (el cuerpo solo se usa para el log; las páginas de error grandes se cortan)
+    public static final int LIMITE_CUERPO_POR_DEFECTO = 2048;
+
+    // Cómo se lee el cuerpo de la respuesta (descartar, prefijo, JSON al vuelo...)
+    private LectorRespuesta elLector = LectorRespuesta.prefijo(LIMITE_CUERPO_POR_DEFECTO);
+
+    // Compresión y firma del cuerpo de la petición (por defecto va tal cual)
+    private CodificadorCuerpo elCodificador = CodificadorCuerpo.SIN_CODIFICAR;
+
     // --------------------------------------------------------------------
-    // Constructor vacío de la clase
+    // Constructor vacío de la clase (usa el transporte persistente compartido)
     // --------------------------------------------------------------------
     public PeticionarioREST() {
+        this(TRANSPORTE_POR_DEFECTO);
+    }
+
+    // --------------------------------------------------------------------
+    // Constructor que permite elegir el transporte
+    // @param transporte - transporte HTTP a usar para las peticiones
+    // --------------------------------------------------------------------
+    public PeticionarioREST(TransporteHTTP transporte) {
         Log.d("clienterestandroid", "constructor()");
+        this.elTransporte = transporte;
+    }
+
+    // --------------------------------------------------------------------
+    // Cambia cómo se lee el cuerpo de la respuesta
+    // Por defecto se guardan solo los primeros LIMITE_CUERPO_POR_DEFECTO bytes
+    // @param lector - LectorRespuesta.DESCARTAR, prefijo(n), json(manejador)...
+    // --------------------------------------------------------------------
+    public void setLectorRespuesta(LectorRespuesta lector) {
+        this.elLector = lector;
+    }
+
+    // --------------------------------------------------------------------
+    // Cambia cómo se codifica el cuerpo de la petición (compresión y firma)
+    // @param codificador - p.ej. CodificadorCuerpo.conClave(GZIP, clave)
+    // --------------------------------------------------------------------
+    public void setCodificadorCuerpo(CodificadorCuerpo codificador) {
+        this.elCodificador = codificador;
+    }
+
+    // --------------------------------------------------------------------
+    // Devuelve el transporte persistente compartido por defecto
+    // --------------------------------------------------------------------
+    public static TransportePersistente getTransportePorDefecto() {
+        return TRANSPORTE_POR_DEFECTO;
     }
 
     // --------------------------------------------------------------------
@@ -84,107 +128,8 @@ public class PeticionarioREST extends AsyncTask<Void, Void, Boolean> {
 
         try {
 
-            // ---- ENVÍO LA PETICIÓN ----
-
-            Log.d("clienterestandroid", "doInBackground() me conecto a >" + urlDestino + "<");
-
-            // Crea un objeto URL con la dirección del servidor
-            URL url = new URL(urlDestino);
-
-            // Abre una conexión HTTP hacia esa URL
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            
-            // Establece el tipo de contenido como JSON con codificación UTF-8
-            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
-            
-            // Establece el método HTTP (GET, POST, etc.)
-            connection.setRequestMethod(this.elMetodo);
-
-            // Habilita la recepción de datos desde el servidor
-            connection.setDoInput(true);
-
-            // Si NO es GET y hay un cuerpo para enviar
-            if (!this.elMetodo.equals("GET") && this.elCuerpo != null) {
-                Log.d("clienterestandroid", "doInBackground(): no es get, pongo cuerpo");
-                
-                // Habilita el envío de datos hacia el servidor
-                connection.setDoOutput(true);
-                
-                // Crea un stream para escribir datos hacia el servidor
-                DataOutputStream dos = new DataOutputStream(connection.getOutputStream());
-                Log.d("clienterestandroid","doInBackground(): lo que se escribe: " + this.elCuerpo );
-
-                // Guarda el cuerpo en una variable temporal
-                String elCuerpoFormateado = this.elCuerpo;
-                
-                // Convierte el texto del cuerpo a bytes usando codificación UTF-8
-                byte[] postData = elCuerpoFormateado.getBytes(StandardCharsets.UTF_8);
-                
-                // Escribe los bytes en el stream (envía al servidor)
-                dos.write(postData);
-                
-                // Asegura que todos los datos se envíen inmediatamente
-                dos.flush();
-                
-                // Cierra el stream de salida
-                dos.close();
-
-            }
-
-            // ---- YA HE ENVIADO LA PETICIÓN ----
-            Log.d("clienterestandroid", "doInBackground(): peticin enviada ");
-
-            // ---- AHORA OBTENGO LA RESPUESTA ----
-
-            // Obtiene el código de respuesta HTTP (200, 404, 500, etc.)
-            int rc = connection.getResponseCode();
-            
-            // Obtiene el mensaje de respuesta HTTP ("OK", "Not Found", etc.)
-            String rm = connection.getResponseMessage();
-            
-            // Combina código y mensaje en una cadena para logging
-            String respuesta = "" + rc + " : " + rm;
-            Log.d("clienterestandroid", "doInBackground() recibo respuesta = " + respuesta);
-            
-            // Guarda el código de respuesta para devolverlo después
-            this.codigoRespuesta = rc;
-
-            try {
-
-                // Obtiene el stream de entrada con los datos de respuesta del servidor
-                InputStream is = connection.getInputStream();
-                
-                // Crea un lector de texto sobre el stream
-                BufferedReader br = new BufferedReader(new InputStreamReader(is));
-
-                Log.d("clienterestandroid", "leyendo cuerpo");
-                
-                // StringBuilder para ir acumulando las líneas de la respuesta
-                StringBuilder acumulador = new StringBuilder();
-                
-                // Variable temporal para cada línea leída
-                String linea;
-                
-                // Lee línea por línea hasta que no haya más (null)
-                while ((linea = br.readLine()) != null) {
-                    Log.d("clienterestandroid", linea);
-                    // Añade cada línea al acumulador
-                    acumulador.append(linea);
-                }
-                Log.d("clienterestandroid", "FIN leyendo cuerpo");
-
-                // Convierte todo el contenido acumulado a String y lo guarda
-                this.cuerpoRespuesta = acumulador.toString();
-                Log.d("clienterestandroid", "cuerpo recibido=" + this.cuerpoRespuesta);
-
-                // Cierra la conexión HTTP
-                connection.disconnect();
-
-            } catch (IOException ex) {
-                // Esta excepción ocurre cuando la respuesta no tiene cuerpo
-                // (por ejemplo, respuestas 204 No Content)
-                Log.d("clienterestandroid", "doInBackground() : parece que no hay cuerpo en la respuesta");
-            }
+            // Hace toda la petición en este hilo (ya estamos en segundo plano)
+            this.realizarPeticion();
 
             // Devuelve true indicando que todo el proceso terminó correctamente
             return true;
@@ -198,6 +143,58 @@ public class PeticionarioREST extends AsyncTask<Void, Void, Boolean> {
         return false;
     }
 
+    // --------------------------------------------------------------------
+    // Método público para hacer una petición REST de forma SÍNCRONA
+    // Bloquea el hilo que lo llama, así que NUNCA debe usarse desde el hilo
+    // principal. Lo usa el PlanificadorSubidas desde su propio hilo
+    // @param metodo - tipo de petición HTTP (GET, POST, etc.)
+    // @param urlDestino - URL del servidor a donde enviar la petición
+    // @param cuerpo - contenido JSON a enviar (puede ser null para GET)
+    // @return código HTTP de la respuesta
+    // @throws IOException si no se pudo completar la petición
+    // --------------------------------------------------------------------
+    public int hacerPeticionRESTSincrona(String metodo, String urlDestino, String cuerpo) throws IOException {
+        this.elMetodo = metodo;
+        this.urlDestino = urlDestino;
+        this.elCuerpo = cuerpo;
+
+        this.realizarPeticion();
+
+        return this.codigoRespuesta;
+    }
+
+    // --------------------------------------------------------------------
+    // Realiza la conexión HTTP, envía el cuerpo y lee la respuesta
+    // Deja el resultado en codigoRespuesta y cuerpoRespuesta
+    // @throws IOException si falla la conexión o el envío
+    // --------------------------------------------------------------------
+    private void realizarPeticion() throws IOException {
+
+        // ---- ENVÍO LA PETICIÓN ----
+
+        Log.d("clienterestandroid", "doInBackground() me conecto a >" + urlDestino + "<");
+
+        // Convierte el texto del cuerpo a bytes usando codificación UTF-8
+        // (los GET no llevan cuerpo)
+        CuerpoPeticion postData = null;
+        if (!this.elMetodo.equals("GET") && this.elCuerpo != null) {
+            Log.d("clienterestandroid","doInBackground(): lo que se escribe: " + this.elCuerpo );
+            // Se comprime (si pasa del umbral) y se firma según el codificador
+            postData = this.elCodificador.codificar(this.elCuerpo.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // El transporte abre (o reutiliza) la conexión, envía y lee la respuesta
+        RespuestaHTTP respuesta = this.elTransporte.enviar(this.elMetodo, this.urlDestino, postData, this.elLector);
+
+        // ---- YA TENGO LA RESPUESTA ----
+        Log.d("clienterestandroid", "doInBackground() recibo respuesta = " + respuesta.getCodigo());
+
+        // Guarda el código y el cuerpo de la respuesta para devolverlos después
+        this.codigoRespuesta = respuesta.getCodigo();
+        this.cuerpoRespuesta = respuesta.getCuerpo();
+        Log.d("clienterestandroid", "cuerpo recibido=" + this.cuerpoRespuesta);
+    }
+
     // --------------------------------------------------------------------
     // Método que se ejecuta automáticamente después de doInBackground()
     // Se ejecuta en el hilo principal (UI thread)
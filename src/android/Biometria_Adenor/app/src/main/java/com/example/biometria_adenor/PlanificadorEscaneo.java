@@ -0,0 +1,495 @@
+package com.example.biometria_adenor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+// -----------------------------------------------------------------------------------
+// Planificador del escaneo BLE por ventanas
+//
+// En lugar de escanear sin parar, enciende el escáner durante una ventana y
+// lo apaga hasta el siguiente periodo. Elige la ventana, el periodo y el modo
+// de escaneo de Android para que ningún sensor pase más de "objetivo" ms sin
+// oírse (lo desactualizado que puede estar su último dato) gastando la menor
+// radio posible:
+//   - cada ventana se cierra en cuanto se ha oído a todos los sensores, y
+//     como mucho dura lo que tardan en llegar varias tramas del sensor más
+//     lento (según el intervalo de anuncio que se ve en las tramas recibidas
+//     y la calidad del enlace: con más pérdidas, más tramas)
+//   - el periodo es el más largo que deja el peor hueco sin oír un sensor
+//     (oído al principio de una ventana y al final de la siguiente) por
+//     debajo del objetivo
+//   - si con ese periodo habría que arrancar el escaneo más de lo que deja
+//     Android (5 veces cada 30 s), se escanea seguido en el modo más barato
+//     que cumpla
+//
+// No sabe nada de Android: la Radio arranca y para el escáner de verdad y
+// tick() se llama con un temporizador, así que se puede probar con un reloj
+// virtual
+// -----------------------------------------------------------------------------------
+public class PlanificadorEscaneo {
+
+    // -------------------------------------------------------------------------------
+    // Modos de escaneo de Android con su ventana y su intervalo internos (ms):
+    // dentro de un escaneo la radio escucha "ventana" ms de cada "intervalo"
+    // (valores de AOSP; BAJA_LATENCIA escucha todo el tiempo)
+    // -------------------------------------------------------------------------------
+    public enum Modo {
+        BAJO_CONSUMO(512, 5120),
+        EQUILIBRADO(1024, 4096),
+        BAJA_LATENCIA(4096, 4096);
+
+        final long ventanaMs;
+        final long intervaloMs;
+
+        Modo(long ventanaMs, long intervaloMs) {
+            this.ventanaMs = ventanaMs;
+            this.intervaloMs = intervaloMs;
+        }
+
+        // Milisegundos de radio escuchando en los primeros "duracion" ms de un escaneo
+        long tiempoRadio(long duracion) {
+            return (duracion / this.intervaloMs) * this.ventanaMs
+                    + Math.min(duracion % this.intervaloMs, this.ventanaMs);
+        }
+
+        // Duración mínima de un escaneo para escuchar "radio" ms (acaba escuchando)
+        long duracionPara(long radio) {
+            long completas = (radio - 1) / this.ventanaMs;
+            return completas * this.intervaloMs + (radio - completas * this.ventanaMs);
+        }
+
+        // Mayor tiempo sin escuchar dentro de un escaneo
+        long huecoInterno() {
+            return this.intervaloMs - this.ventanaMs;
+        }
+
+        // Parte del tiempo que escucha la radio escaneando seguido
+        double fraccionRadio() {
+            return (double) this.ventanaMs / this.intervaloMs;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Quien arranca y para el escáner de verdad (BluetoothLeScanner en la app)
+    // -------------------------------------------------------------------------------
+    public interface Radio {
+        void arrancar(Modo modo);
+
+        void parar();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Plan de escaneo: modo, ventana encendida y periodo (ventana == periodo
+    // es escanear seguido)
+    // -------------------------------------------------------------------------------
+    public static class Plan {
+        public final Modo modo;
+        public final long ventanaMs;            // duración máxima de cada ventana
+        public final long periodoMs;
+        public final long intervaloAnuncioMs;   // del sensor más lento
+        public final double cicloRadio;         // parte del tiempo con la radio escuchando (como mucho)
+        public final long peorHuecoMs;          // lo más que puede pasar sin oír un sensor
+        public final boolean cumpleObjetivo;
+
+        Plan(Modo modo, long ventanaMs, long periodoMs, long intervaloAnuncioMs, double cicloRadio,
+             long peorHuecoMs, boolean cumpleObjetivo) {
+            this.modo = modo;
+            this.ventanaMs = ventanaMs;
+            this.periodoMs = periodoMs;
+            this.intervaloAnuncioMs = intervaloAnuncioMs;
+            this.cicloRadio = cicloRadio;
+            this.peorHuecoMs = peorHuecoMs;
+            this.cumpleObjetivo = cumpleObjetivo;
+        }
+
+        public boolean esContinuo() {
+            return this.ventanaMs >= this.periodoMs;
+        }
+
+        @Override
+        public String toString() {
+            return this.modo + (esContinuo() ? " seguido" : " " + this.ventanaMs + "/" + this.periodoMs + " ms")
+                    + String.format(java.util.Locale.ROOT, " (radio %.1f%%, peor hueco %d ms)",
+                    this.cicloRadio * 100, this.peorHuecoMs);
+        }
+    }
+
+    // Valor devuelto por tick() cuando el planificador está parado
+    public static final long SIN_TRABAJO = -1;
+
+    // Objetivo por defecto: no tiene sentido más fresco que el intervalo de subidas
+    public static final long OBJETIVO_POR_DEFECTO_MS = PlanificadorSubidas.INTERVALO_RADIO_MS;
+
+    // Android no deja arrancar el escaneo más de 5 veces en 30 s (si se pasa,
+    // el escaneo no empieza y no avisa)
+    static final int MAXIMO_ARRANQUES = 5;
+    static final long VENTANA_ARRANQUES_MS = 30_000;
+
+    // Periodo mínimo al ir por ventanas: deja un arranque libre cada 30 s
+    // para los cambios de modo
+    static final long PERIODO_MINIMO_MS = VENTANA_ARRANQUES_MS / (MAXIMO_ARRANQUES - 1);
+
+    // Parte del objetivo que se reserva para los retrasos del temporizador
+    static final double MARGEN_OBJETIVO = 0.1;
+
+    // Aprendizaje: se escanea seguido hasta tener estos huecos entre tramas
+    // (o hasta que pase este tiempo, y entonces se supone el intervalo por defecto)
+    static final int MINIMO_HUECOS = 5;
+    static final long APRENDIZAJE_MAXIMO_MS = 30_000;
+    static final long INTERVALO_ANUNCIO_POR_DEFECTO_MS = 1_000;
+
+    // Peso de cada hueco nuevo en el intervalo de anuncio (media móvil exponencial)
+    static final double PESO_INTERVALO = 0.1;
+
+    // Un sensor que no se oye en este tiempo deja de contar para el plan
+    static final long TIEMPO_OLVIDO_MS = 5 * 60_000;
+
+    // Cada cuánto se revisa el plan escaneando seguido (y aprendiendo)
+    static final long REVISION_CONTINUO_MS = 15_000;
+    static final long REVISION_APRENDIENDO_MS = 1_000;
+
+    // -------------------------------------------------------------------------------
+    // Lo que se sabe de cada sensor
+    // -------------------------------------------------------------------------------
+    private static class Sensor {
+        long ultimaTrama;
+        double intervaloAnuncio = Double.NaN;
+        int huecos;
+    }
+
+    private final Radio laRadio;
+    private final Reloj elReloj;
+    private final long objetivoMs;
+    private final Map<String, Sensor> sensores = new HashMap<>();
+
+    // Calidad del enlace (del SeguidorSecuencias): decide cuántas tramas por ventana
+    private SeguidorSecuencias.CalidadEnlace calidad = SeguidorSecuencias.CalidadEnlace.DESCONOCIDA;
+
+    // Estado del ciclo
+    private boolean activo = false;
+    private boolean escaneando = false;
+    private boolean aprendiendo = false;
+    private Modo modoActual = null;
+    private Plan elPlan = null;
+    private long inicioActivo;
+    private long inicioEscaneo;
+    private long proximoArranque;
+    private long proximaRevision;
+
+    // Últimos arranques (anillo) para no pasar del límite de Android
+    private final long[] arranques = new long[MAXIMO_ARRANQUES];
+    private int numeroArranques = 0;
+
+    // Contadores
+    private long tiempoEscaneandoMs = 0;
+    private long tiempoRadioMs = 0;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param radio - arranca y para el escáner
+    // @param reloj - reloj monótono (Reloj.SISTEMA en la app)
+    // @param objetivoMs - máximo tiempo sin oír cada sensor que se quiere
+    // -------------------------------------------------------------------------------
+    public PlanificadorEscaneo(Radio radio, Reloj reloj, long objetivoMs) {
+        this.laRadio = radio;
+        this.elReloj = reloj;
+        this.objetivoMs = objetivoMs;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Empieza a escanear (seguido, mientras aprende el intervalo de anuncio)
+    // @return ms hasta la próxima llamada a tick()
+    // -------------------------------------------------------------------------------
+    public synchronized long empezar() {
+        if (this.activo) {
+            return tick();
+        }
+        long ahora = this.elReloj.ahoraMillis();
+        this.activo = true;
+        this.aprendiendo = true;
+        this.inicioActivo = ahora;
+        this.elPlan = continuo(Modo.BAJA_LATENCIA, 2 * INTERVALO_ANUNCIO_POR_DEFECTO_MS, true);
+        this.proximoArranque = ahora;
+        return tick();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Para el escaneo (lo aprendido de los sensores se conserva)
+    // -------------------------------------------------------------------------------
+    public synchronized void terminar() {
+        if (this.escaneando) {
+            pararEscaneo(this.elReloj.ahoraMillis());
+        }
+        this.activo = false;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Anota una trama recibida de un sensor (cualquiera, también las repetidas:
+    // todas dicen que el sensor sigue ahí con su último dato)
+    // @param sensor - dirección del sensor
+    // -------------------------------------------------------------------------------
+    public synchronized void anotarTrama(String sensor) {
+        long ahora = this.elReloj.ahoraMillis();
+        Sensor s = this.sensores.get(sensor);
+        if (s == null) {
+            s = new Sensor();
+            s.ultimaTrama = ahora;
+            this.sensores.put(sensor, s);
+            return;
+        }
+        // Solo valen los huecos dentro de un mismo escaneo y sin pausas internas
+        // del modo por medio (si no, se mediría la pausa y no el anuncio)
+        long hueco = ahora - s.ultimaTrama;
+        boolean mismoEscaneo = this.escaneando && s.ultimaTrama >= this.inicioEscaneo;
+        if (mismoEscaneo && hueco > 0 && hueco <= this.modoActual.ventanaMs) {
+            s.intervaloAnuncio = Double.isNaN(s.intervaloAnuncio)
+                    ? hueco : s.intervaloAnuncio + PESO_INTERVALO * (hueco - s.intervaloAnuncio);
+            s.huecos++;
+        }
+        s.ultimaTrama = ahora;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Actualiza la calidad del enlace (con más pérdidas, ventanas más largas)
+    // -------------------------------------------------------------------------------
+    public synchronized void setCalidadEnlace(SeguidorSecuencias.CalidadEnlace calidad) {
+        this.calidad = calidad;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Arranca o para el escáner si toca
+    // @return ms hasta la próxima llamada, o SIN_TRABAJO si está parado
+    // -------------------------------------------------------------------------------
+    public synchronized long tick() {
+        if (!this.activo) {
+            return SIN_TRABAJO;
+        }
+        long ahora = this.elReloj.ahoraMillis();
+
+        if (this.escaneando) {
+            if (this.elPlan.esContinuo()) {
+                if (ahora < this.proximaRevision) {
+                    return this.proximaRevision - ahora;
+                }
+                // Revisión: quizá ya se puede ir por ventanas o conviene otro modo
+                replanificar(ahora);
+                if (this.elPlan.esContinuo() && this.elPlan.modo == this.modoActual) {
+                    this.proximaRevision = ahora + esperaRevision();
+                    return this.proximaRevision - ahora;
+                }
+                if (this.elPlan.esContinuo()) {
+                    // Otro modo: hay que parar y volver a arrancar (si se puede)
+                    if (!puedeArrancar(ahora)) {
+                        this.proximaRevision = ahora + esperaArranque(ahora);
+                        return this.proximaRevision - ahora;
+                    }
+                    pararEscaneo(ahora);
+                    return arrancarSiSePuede(ahora);
+                }
+                // Pasa a ir por ventanas: lo escaneado hasta ahora vale como ventana
+                pararEscaneo(ahora);
+                this.proximoArranque = ahora + this.elPlan.periodoMs - this.elPlan.ventanaMs;
+                return this.proximoArranque - ahora;
+            }
+            // La ventana sigue hasta oír a todos (o hasta su duración máxima);
+            // se mira cada intervalo de anuncio
+            long finVentana = this.inicioEscaneo + this.elPlan.ventanaMs;
+            if (ahora < finVentana && !todosOidos(ahora)) {
+                return Math.min(finVentana - ahora, this.elPlan.intervaloAnuncioMs);
+            }
+            pararEscaneo(ahora);
+            this.proximoArranque = this.inicioEscaneo + this.elPlan.periodoMs;
+        }
+
+        if (ahora < this.proximoArranque) {
+            return this.proximoArranque - ahora;
+        }
+        return arrancarSiSePuede(ahora);
+    }
+
+    // Arranca el escaneo con el plan al día, o espera a que Android lo permita
+    private long arrancarSiSePuede(long ahora) {
+        if (!puedeArrancar(ahora)) {
+            this.proximoArranque = ahora + esperaArranque(ahora);
+            return this.proximoArranque - ahora;
+        }
+        replanificar(ahora);
+        this.arranques[this.numeroArranques % MAXIMO_ARRANQUES] = ahora;
+        this.numeroArranques++;
+        this.escaneando = true;
+        this.inicioEscaneo = ahora;
+        this.modoActual = this.elPlan.modo;
+        this.laRadio.arrancar(this.modoActual);
+        if (this.elPlan.esContinuo()) {
+            this.proximaRevision = ahora + esperaRevision();
+            return this.proximaRevision - ahora;
+        }
+        return this.elPlan.ventanaMs;
+    }
+
+    // Mientras aprende revisa a menudo para empezar a ahorrar cuanto antes
+    private long esperaRevision() {
+        return this.aprendiendo ? REVISION_APRENDIENDO_MS : REVISION_CONTINUO_MS;
+    }
+
+    private void pararEscaneo(long ahora) {
+        this.laRadio.parar();
+        long duracion = ahora - this.inicioEscaneo;
+        this.tiempoEscaneandoMs += duracion;
+        this.tiempoRadioMs += this.modoActual.tiempoRadio(duracion);
+        this.escaneando = false;
+    }
+
+    // Mira si en esta ventana ya se ha oído a todos los sensores conocidos
+    private boolean todosOidos(long ahora) {
+        if (this.sensores.isEmpty()) {
+            return false;
+        }
+        for (Sensor s : this.sensores.values()) {
+            if (s.ultimaTrama < this.inicioEscaneo && ahora - s.ultimaTrama <= TIEMPO_OLVIDO_MS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Mira si arrancar ahora pasaría del límite de Android
+    private boolean puedeArrancar(long ahora) {
+        return esperaArranque(ahora) == 0;
+    }
+
+    // Cuánto falta para que el arranque más antiguo de los últimos salga de la ventana
+    private long esperaArranque(long ahora) {
+        if (this.numeroArranques < MAXIMO_ARRANQUES) {
+            return 0;
+        }
+        long masAntiguo = this.arranques[this.numeroArranques % MAXIMO_ARRANQUES];
+        return Math.max(0, masAntiguo + VENTANA_ARRANQUES_MS + 1 - ahora);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Recalcula el plan con lo aprendido de los sensores
+    // -------------------------------------------------------------------------------
+    private void replanificar(long ahora) {
+        double peorIntervalo = 0;
+        int huecos = 0;
+        Iterator<Sensor> it = this.sensores.values().iterator();
+        while (it.hasNext()) {
+            Sensor s = it.next();
+            if (ahora - s.ultimaTrama > TIEMPO_OLVIDO_MS) {
+                it.remove();
+            } else if (s.huecos > 0) {
+                peorIntervalo = Math.max(peorIntervalo, s.intervaloAnuncio);
+                huecos = Math.max(huecos, s.huecos);
+            }
+        }
+        if (this.aprendiendo) {
+            if (huecos < MINIMO_HUECOS && ahora - this.inicioActivo < APRENDIZAJE_MAXIMO_MS) {
+                return;
+            }
+            this.aprendiendo = false;
+        }
+        long intervalo = huecos == 0 ? INTERVALO_ANUNCIO_POR_DEFECTO_MS : (long) Math.ceil(peorIntervalo);
+        this.elPlan = planificar(this.objetivoMs, intervalo, tramasPorVentana(this.calidad));
+    }
+
+    // Intervalos de anuncio que se espera como mucho a oír a un sensor en una
+    // ventana (con más pérdidas, más: la ventana se cierra antes si ya se oyó)
+    static int tramasPorVentana(SeguidorSecuencias.CalidadEnlace calidad) {
+        switch (calidad) {
+            case BUENA:
+                return 4;
+            case MALA:
+                return 10;
+            default:
+                return 6;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Elige el plan que cumple el objetivo con menos radio
+    // El peor hueco sin oír un sensor es, por ventanas, el periodo más la
+    // ventana (oído nada más empezar una y al final de la siguiente); dentro
+    // de un escaneo, la pausa interna del modo más dos intervalos de anuncio
+    // @param objetivoMs - máximo tiempo sin oír cada sensor
+    // @param intervaloAnuncioMs - intervalo de anuncio del sensor más lento
+    // @param tramas - intervalos de anuncio que dura como mucho cada ventana
+    // @return el plan más barato (si ninguno cumple, escanear seguido y rápido)
+    // -------------------------------------------------------------------------------
+    static Plan planificar(long objetivoMs, long intervaloAnuncioMs, int tramas) {
+        long objetivo = (long) (objetivoMs * (1 - MARGEN_OBJETIVO));
+        long a = Math.max(1, intervaloAnuncioMs);
+        Plan mejor = null;
+        for (Modo modo : Modo.values()) {
+            // Con pausas internas, cada ventana del modo tiene que oír al menos dos tramas
+            if (modo != Modo.BAJA_LATENCIA && 2 * a > modo.ventanaMs) {
+                continue;
+            }
+            Plan plan;
+            long ventana = modo.duracionPara(tramas * a);
+            long periodo = objetivo - ventana;
+            long huecoContinuo = modo.huecoInterno() + 2 * a;
+            if (periodo >= PERIODO_MINIMO_MS && periodo > ventana) {
+                plan = new Plan(modo, ventana, periodo, a, (double) modo.tiempoRadio(ventana) / periodo,
+                        periodo + ventana, true);
+            } else if (huecoContinuo <= objetivo) {
+                plan = continuo(modo, a, true);
+            } else {
+                continue;
+            }
+            if (mejor == null || plan.cicloRadio < mejor.cicloRadio) {
+                mejor = plan;
+            }
+        }
+        return mejor != null ? mejor : continuo(Modo.BAJA_LATENCIA, a, false);
+    }
+
+    private static Plan continuo(Modo modo, long intervaloAnuncioMs, boolean cumple) {
+        return new Plan(modo, Long.MAX_VALUE, Long.MAX_VALUE, intervaloAnuncioMs, modo.fraccionRadio(),
+                modo.huecoInterno() + 2 * intervaloAnuncioMs, cumple);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Getters para depuración y pruebas
+    // -------------------------------------------------------------------------------
+    public synchronized Plan getPlan() {
+        return this.elPlan;
+    }
+
+    public synchronized boolean estaEscaneando() {
+        return this.escaneando;
+    }
+
+    public synchronized long getNumeroArranques() {
+        return this.numeroArranques;
+    }
+
+    // Intervalo de anuncio aprendido de un sensor (NaN si todavía no se sabe)
+    public synchronized double getIntervaloAnuncioMs(String sensor) {
+        Sensor s = this.sensores.get(sensor);
+        return s == null ? Double.NaN : s.intervaloAnuncio;
+    }
+
+    // Parte del tiempo (desde empezar) con el escáner encendido y con la radio escuchando
+    public synchronized double getCicloEscaneo() {
+        return fraccion(this.tiempoEscaneandoMs, false);
+    }
+
+    public synchronized double getCicloRadio() {
+        return fraccion(this.tiempoRadioMs, true);
+    }
+
+    private double fraccion(long acumulado, boolean radio) {
+        long ahora = this.elReloj.ahoraMillis();
+        long total = ahora - this.inicioActivo;
+        if (this.escaneando) {
+            long duracion = ahora - this.inicioEscaneo;
+            acumulado += radio ? this.modoActual.tiempoRadio(duracion) : duracion;
+        }
+        return total <= 0 ? 0 : (double) acumulado / total;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,572 @@
+package com.example.biometria_adenor;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// -----------------------------------------------------------------------------------
+// Planificador de subidas de mediciones a un endpoint REST
+//
+// En lugar de hacer una petición por cada beacon recibido, acumula las
+// mediciones pendientes y las envía juntas en momentos alineados a un
+// intervalo fijo (así la radio se despierta pocas veces y siempre a la vez).
+// Si un envío falla, reintenta con espera exponencial acotada más un
+// componente aleatorio (jitter) para que varios móviles no reintenten a la vez.
+// Un interruptor de circuito por endpoint corta los envíos si el servidor
+// está caído. Las mediciones urgentes (alarmas) adelantan el envío.
+//
+// La lógica (procesar) es independiente de hilos y del reloj real, de modo que
+// se puede probar con un reloj virtual. arrancar() la engancha a un ejecutor.
+//
+// Con un PoolMediciones (usarPool) las mediciones que ya se han enviado o
+// descartado vuelven a la reserva, y la lista del lote se reutiliza: en
+// marcha normal encolar y procesar no crean objetos.
+//
+// Si el enviador admite varios envíos en vuelo (EnviadorConcurrente) y la
+// cola se ha atrasado (p. ej. tras un rato sin red), en cada envío salen a la
+// vez tantos lotes como su ventana, en lugar de uno por intervalo de radio.
+// -----------------------------------------------------------------------------------
+public class PlanificadorSubidas {
+
+    // -------------------------------------------------------------------------------
+    // Interfaz de quien realmente envía un lote al servidor
+    // -------------------------------------------------------------------------------
+    public interface Enviador {
+        // Envía el lote y devuelve el código HTTP de la respuesta
+        // @param lote - mediciones a enviar (no vacío)
+        // @return código HTTP (200, 201, 500, ...)
+        // @throws IOException si no se pudo contactar con el servidor
+        int enviar(List<Medicion> lote) throws IOException;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Enviador que puede tener varios lotes en vuelo a la vez
+    // -------------------------------------------------------------------------------
+    public interface EnviadorConcurrente extends Enviador {
+        // Máximo de lotes en vuelo a la vez (>= 1)
+        int getVentana();
+
+        // Envía el lote sin esperar a la respuesta
+        // @param lote - mediciones a enviar (no vacío; no se tocan hasta que termine)
+        // @return Future con el código HTTP; falla con la IOException si no se
+        //         pudo contactar con el servidor
+        Future<Integer> enviarAsincrono(List<Medicion> lote);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Interfaz para consultar si hay red disponible
+    // Sin red no se intenta enviar (y no cuenta como fallo)
+    // -------------------------------------------------------------------------------
+    public interface EstadoRed {
+        boolean hayRed();
+    }
+
+    // Valor devuelto por procesar() cuando no queda nada pendiente
+    public static final long SIN_TRABAJO = -1;
+
+    // Valores por defecto de la configuración
+    public static final long INTERVALO_RADIO_MS = 30_000;
+    public static final long RETARDO_BASE_MS = 2_000;
+    public static final long RETARDO_MAXIMO_MS = 5 * 60_000;
+    public static final int MAXIMO_LOTE = 50;
+    public static final int MAXIMO_PENDIENTES = 2_000;
+
+    // Quién envía los lotes
+    private final Enviador elEnviador;
+
+    // Fuente de tiempo (real o virtual)
+    private final Reloj elReloj;
+
+    // Consulta del estado de la red
+    private final EstadoRed laRed;
+
+    // Interruptor de circuito del endpoint
+    private final InterruptorCircuito elInterruptor;
+
+    // Generador aleatorio para el jitter (inyectable para pruebas deterministas)
+    private final Random aleatorio;
+
+    // Configuración
+    private long intervaloRadioMs = INTERVALO_RADIO_MS;
+    private long retardoBaseMs = RETARDO_BASE_MS;
+    private long retardoMaximoMs = RETARDO_MAXIMO_MS;
+    private int maximoLote = MAXIMO_LOTE;
+    private int maximoPendientes = MAXIMO_PENDIENTES;
+
+    // Mediciones esperando a ser enviadas (la más antigua primero)
+    private final ArrayDeque<Medicion> pendientes = new ArrayDeque<>();
+
+    // Instante (ms) a partir del cual toca el próximo envío; -1 si no hay ninguno
+    private long proximoEnvio = -1;
+
+    // Número de envíos fallidos seguidos (para calcular el backoff)
+    private int intentosFallidos = 0;
+
+    // Indica si hay alguna medición urgente entre las pendientes
+    private boolean hayUrgente = false;
+
+    // Contadores para depuración y pruebas
+    private int lotesEnviados = 0;
+    private int medicionesDescartadas = 0;
+
+    // Reserva a la que vuelven las mediciones ya terminadas (null si no hay)
+    private PoolMediciones elPool = null;
+
+    // Lista del lote que se reutiliza entre envíos (null mientras está en uso)
+    private ArrayList<Medicion> loteLibre = new ArrayList<>();
+
+    // Ejecutor y tarea programada cuando se usa con hilos reales (arrancar)
+    private ScheduledExecutorService elEjecutor = null;
+    private ScheduledFuture<?> tareaProgramada = null;
+
+    // -------------------------------------------------------------------------------
+    // Constructor con los valores por defecto
+    // @param enviador - quien envía los lotes al servidor
+    // @param reloj - fuente de tiempo
+    // @param red - consulta del estado de la red
+    // -------------------------------------------------------------------------------
+    public PlanificadorSubidas(Enviador enviador, Reloj reloj, EstadoRed red) {
+        this(enviador, reloj, red, new InterruptorCircuito(5, 60_000), new Random());
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor completo (usado por las pruebas)
+    // @param enviador - quien envía los lotes al servidor
+    // @param reloj - fuente de tiempo
+    // @param red - consulta del estado de la red
+    // @param interruptor - interruptor de circuito del endpoint
+    // @param aleatorio - generador para el jitter
+    // -------------------------------------------------------------------------------
+    public PlanificadorSubidas(Enviador enviador, Reloj reloj, EstadoRed red,
+                               InterruptorCircuito interruptor, Random aleatorio) {
+        this.elEnviador = enviador;
+        this.elReloj = reloj;
+        this.laRed = red;
+        this.elInterruptor = interruptor;
+        this.aleatorio = aleatorio;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Cambia la configuración del planificador
+    // @param intervaloRadioMs - intervalo al que se alinean los envíos normales
+    // @param retardoBaseMs - primera espera tras un fallo
+    // @param retardoMaximoMs - espera máxima entre reintentos
+    // @param maximoLote - máximo de mediciones por envío
+    // @param maximoPendientes - máximo de mediciones en cola (se tiran las más viejas)
+    // -------------------------------------------------------------------------------
+    public synchronized void configurar(long intervaloRadioMs, long retardoBaseMs, long retardoMaximoMs,
+                                        int maximoLote, int maximoPendientes) {
+        this.intervaloRadioMs = intervaloRadioMs;
+        this.retardoBaseMs = retardoBaseMs;
+        this.retardoMaximoMs = retardoMaximoMs;
+        this.maximoLote = maximoLote;
+        this.maximoPendientes = maximoPendientes;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve a esta reserva las mediciones enviadas o descartadas
+    // Solo se debe usar si nadie más guarda referencias a las mediciones encoladas
+    // @param pool - reserva de mediciones (null para no devolverlas)
+    // -------------------------------------------------------------------------------
+    public synchronized void usarPool(PoolMediciones pool) {
+        this.elPool = pool;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Añade una medición a la cola de pendientes
+    // Si es urgente, adelanta el próximo envío a "ahora" aunque haya un
+    // backoff en curso (el interruptor de circuito se sigue respetando)
+    // @param medicion - la medición a subir
+    // -------------------------------------------------------------------------------
+    public void encolar(Medicion medicion) {
+        long retardo;
+        synchronized (this) {
+            // Si la cola está llena se descarta la medición más antigua
+            if (this.pendientes.size() >= this.maximoPendientes) {
+                liberar(this.pendientes.pollFirst());
+                this.medicionesDescartadas++;
+            }
+            this.pendientes.addLast(medicion);
+
+            long ahora = this.elReloj.ahoraMillis();
+            long anterior = this.proximoEnvio;
+            if (medicion.esUrgente()) {
+                // Una alarma no espera al siguiente intervalo de radio
+                this.hayUrgente = true;
+                this.proximoEnvio = ahora;
+            } else if (this.proximoEnvio < 0) {
+                // Primera medición tras estar en reposo: se alinea al intervalo
+                this.proximoEnvio = siguienteInstanteAlineado(ahora);
+            }
+            // Si el próximo envío no cambia ya está programado (o lo programará
+            // el procesar() en curso): no hace falta cancelar y crear otra tarea
+            if (this.proximoEnvio == anterior) {
+                return;
+            }
+            retardo = Math.max(0, this.proximoEnvio - ahora);
+        }
+        reprogramar(retardo);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Hace el trabajo que toque en este instante (enviar un lote, o varios con
+    // un EnviadorConcurrente, si corresponde)
+    // No debe llamarse desde el hilo principal: el envío es bloqueante
+    // @return milisegundos hasta la próxima vez que hay que llamar a procesar(),
+    //         o SIN_TRABAJO si no queda nada pendiente
+    // -------------------------------------------------------------------------------
+    public long procesar() {
+        ArrayList<Medicion> lote;
+        List<ArrayList<Medicion>> lotes = null;
+        long ahora;
+
+        synchronized (this) {
+            ahora = this.elReloj.ahoraMillis();
+
+            if (this.pendientes.isEmpty()) {
+                this.proximoEnvio = -1;
+                this.hayUrgente = false;
+                return SIN_TRABAJO;
+            }
+
+            // Todavía no toca
+            if (ahora < this.proximoEnvio) {
+                return this.proximoEnvio - ahora;
+            }
+
+            // Sin red no se intenta: se vuelve a mirar en el siguiente intervalo
+            if (!this.laRed.hayRed()) {
+                this.proximoEnvio = siguienteInstanteAlineado(ahora);
+                return this.proximoEnvio - ahora;
+            }
+
+            // Circuito abierto: se espera a que admita la prueba
+            if (!this.elInterruptor.permiteEnvio(ahora)) {
+                this.proximoEnvio = ahora + this.elInterruptor.esperaRestante(ahora);
+                return this.proximoEnvio - ahora;
+            }
+
+            // Saca el lote de la cola (se devuelve si el envío falla)
+            lote = sacarLote(this.loteLibre);
+            this.loteLibre = null;
+
+            // Cola atrasada: salen a la vez tantos lotes como admita el enviador
+            int aLaVez = lotesALaVez();
+            if (aLaVez > 1 && !this.pendientes.isEmpty()) {
+                lotes = new ArrayList<>(aLaVez);
+                lotes.add(lote);
+                while (lotes.size() < aLaVez && !this.pendientes.isEmpty()) {
+                    lotes.add(sacarLote(null));
+                }
+            }
+        }
+
+        if (lotes != null) {
+            return procesarVarios(lotes);
+        }
+
+        // El envío se hace fuera del cerrojo para no bloquear encolar()
+        int codigo;
+        try {
+            codigo = this.elEnviador.enviar(lote);
+        } catch (IOException ex) {
+            codigo = -1;
+        }
+
+        synchronized (this) {
+            ahora = this.elReloj.ahoraMillis();
+
+            if (esExito(codigo)) {
+                // Envío correcto
+                this.elInterruptor.registrarExito();
+                this.intentosFallidos = 0;
+                this.lotesEnviados++;
+                liberar(lote);
+                recalcularUrgente();
+                this.proximoEnvio = this.pendientes.isEmpty() ? -1
+                        : (this.hayUrgente ? ahora : siguienteInstanteAlineado(ahora));
+            } else if (esRechazo(codigo)) {
+                // El servidor rechaza los datos: reintentar no sirve de nada
+                this.elInterruptor.registrarExito();
+                this.intentosFallidos = 0;
+                this.medicionesDescartadas += lote.size();
+                liberar(lote);
+                recalcularUrgente();
+                this.proximoEnvio = this.pendientes.isEmpty() ? -1 : siguienteInstanteAlineado(ahora);
+            } else {
+                // Fallo de red, 5xx, 408 o 429: se devuelve el lote y se espera
+                devolverACola(lote);
+                anotarFallo(ahora);
+            }
+            lote.clear();
+            this.loteLibre = lote;
+
+            return this.proximoEnvio < 0 ? SIN_TRABAJO : Math.max(0, this.proximoEnvio - ahora);
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Envía varios lotes a la vez por el EnviadorConcurrente y anota el resultado
+    // Los que se guardan o se rechazan terminan; los que fallan vuelven a la
+    // cola en su orden y, si falla alguno, se espera como con un solo lote
+    // @param lotes - lotes ya sacados de la cola (el primero, el más antiguo)
+    // @return lo mismo que procesar()
+    // -------------------------------------------------------------------------------
+    private long procesarVarios(List<ArrayList<Medicion>> lotes) {
+        EnviadorConcurrente enviador = (EnviadorConcurrente) this.elEnviador;
+        List<Future<Integer>> enVuelo = new ArrayList<>(lotes.size());
+        for (int i = 0; i < lotes.size(); i++) {
+            enVuelo.add(enviador.enviarAsincrono(lotes.get(i)));
+        }
+        int[] codigos = new int[lotes.size()];
+        for (int i = 0; i < codigos.length; i++) {
+            codigos[i] = esperarCodigo(enVuelo.get(i));
+        }
+
+        synchronized (this) {
+            long ahora = this.elReloj.ahoraMillis();
+            boolean algunoEnviado = false;
+            boolean algunoFallido = false;
+
+            // Del último al primero, para que los devueltos queden en su orden
+            for (int i = lotes.size() - 1; i >= 0; i--) {
+                ArrayList<Medicion> lote = lotes.get(i);
+                if (esExito(codigos[i])) {
+                    this.lotesEnviados++;
+                    liberar(lote);
+                    algunoEnviado = true;
+                } else if (esRechazo(codigos[i])) {
+                    this.medicionesDescartadas += lote.size();
+                    liberar(lote);
+                } else {
+                    devolverACola(lote);
+                    algunoFallido = true;
+                }
+            }
+
+            if (algunoFallido) {
+                anotarFallo(ahora);
+            } else {
+                this.elInterruptor.registrarExito();
+                this.intentosFallidos = 0;
+                recalcularUrgente();
+                this.proximoEnvio = this.pendientes.isEmpty() ? -1
+                        : (algunoEnviado && this.hayUrgente ? ahora : siguienteInstanteAlineado(ahora));
+            }
+            ArrayList<Medicion> primero = lotes.get(0);
+            primero.clear();
+            this.loteLibre = primero;
+
+            return this.proximoEnvio < 0 ? SIN_TRABAJO : Math.max(0, this.proximoEnvio - ahora);
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Espera a que termine un envío en vuelo
+    // @return código HTTP o -1 si no se pudo contactar con el servidor
+    // -------------------------------------------------------------------------------
+    private static int esperarCodigo(Future<Integer> envio) {
+        try {
+            return envio.get();
+        } catch (ExecutionException ex) {
+            return -1;
+        } catch (InterruptedException ex) {
+            // Se reintentará: si el envío llega a salir, el servidor reconoce
+            // las mediciones repetidas por su clave de idempotencia
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Cuántos lotes pueden salir en este envío: la ventana del enviador si la
+    // tiene, y uno solo mientras el circuito no esté cerrado (la prueba del
+    // semiabierto es un único envío)
+    // -------------------------------------------------------------------------------
+    private int lotesALaVez() {
+        if (!(this.elEnviador instanceof EnviadorConcurrente)
+                || this.elInterruptor.getEstado() != InterruptorCircuito.Estado.CERRADO) {
+            return 1;
+        }
+        return Math.max(1, ((EnviadorConcurrente) this.elEnviador).getVentana());
+    }
+
+    // -------------------------------------------------------------------------------
+    // Saca de la cola las mediciones del siguiente lote
+    // @param lista - lista vacía donde ponerlas (null para crear una)
+    // -------------------------------------------------------------------------------
+    private ArrayList<Medicion> sacarLote(ArrayList<Medicion> lista) {
+        int n = Math.min(this.maximoLote, this.pendientes.size());
+        ArrayList<Medicion> lote = lista != null ? lista : new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            lote.add(this.pendientes.pollFirst());
+        }
+        return lote;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Vuelve a poner un lote al principio de la cola, en su orden
+    // -------------------------------------------------------------------------------
+    private void devolverACola(List<Medicion> lote) {
+        for (int i = lote.size() - 1; i >= 0; i--) {
+            this.pendientes.addFirst(lote.get(i));
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Anota un envío fallido: recorta la cola y programa el reintento con backoff
+    // -------------------------------------------------------------------------------
+    private void anotarFallo(long ahora) {
+        // Mientras se enviaba han seguido llegando mediciones: la cola
+        // no puede pasar de maximoPendientes (se tiran las más viejas,
+        // como en encolar())
+        if (this.pendientes.size() > this.maximoPendientes) {
+            while (this.pendientes.size() > this.maximoPendientes) {
+                liberar(this.pendientes.pollFirst());
+                this.medicionesDescartadas++;
+            }
+            recalcularUrgente();
+        }
+        this.elInterruptor.registrarFallo(ahora);
+        this.intentosFallidos++;
+        this.proximoEnvio = ahora + calcularRetardoReintento(this.intentosFallidos);
+    }
+
+    // Respuesta 2xx: el servidor guardó el lote
+    private static boolean esExito(int codigo) {
+        return codigo >= 200 && codigo < 300;
+    }
+
+    // 4xx salvo 408 y 429: el servidor rechaza los datos
+    private static boolean esRechazo(int codigo) {
+        return codigo >= 400 && codigo < 500 && codigo != 408 && codigo != 429;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Calcula la espera antes del reintento n-ésimo
+    // Exponencial acotada (base * 2^(n-1), como mucho retardoMaximo) con
+    // "equal jitter": la mitad fija y la otra mitad aleatoria
+    // @param intento - número de fallos seguidos (>= 1)
+    // @return milisegundos de espera
+    // -------------------------------------------------------------------------------
+    long calcularRetardoReintento(int intento) {
+        long techo = this.retardoBaseMs;
+        for (int i = 1; i < intento && techo < this.retardoMaximoMs; i++) {
+            techo *= 2;
+        }
+        techo = Math.min(techo, this.retardoMaximoMs);
+        long mitad = techo / 2;
+        return mitad + (long) (this.aleatorio.nextDouble() * (techo - mitad));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Siguiente múltiplo del intervalo de radio posterior a "ahora"
+    // -------------------------------------------------------------------------------
+    private long siguienteInstanteAlineado(long ahora) {
+        return (ahora / this.intervaloRadioMs + 1) * this.intervaloRadioMs;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve a la reserva las mediciones terminadas (si hay reserva)
+    // -------------------------------------------------------------------------------
+    private void liberar(Medicion medicion) {
+        if (this.elPool != null && medicion != null) {
+            this.elPool.devolver(medicion);
+        }
+    }
+
+    private void liberar(List<Medicion> lote) {
+        if (this.elPool != null) {
+            for (int i = 0; i < lote.size(); i++) {
+                this.elPool.devolver(lote.get(i));
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Vuelve a mirar si queda alguna medición urgente en la cola
+    // -------------------------------------------------------------------------------
+    private void recalcularUrgente() {
+        // Solo encolar() marca urgencias: si no había ninguna no hace falta mirar
+        if (!this.hayUrgente) {
+            return;
+        }
+        this.hayUrgente = false;
+        for (Medicion m : this.pendientes) {
+            if (m.esUrgente()) {
+                this.hayUrgente = true;
+                return;
+            }
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Engancha el planificador a un ejecutor para que procesar() se llame solo
+    // @param ejecutor - ejecutor de un hilo donde se harán los envíos
+    // -------------------------------------------------------------------------------
+    public void arrancar(ScheduledExecutorService ejecutor) {
+        synchronized (this) {
+            this.elEjecutor = ejecutor;
+        }
+        reprogramar(0);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Desengancha el planificador del ejecutor (las pendientes se conservan)
+    // -------------------------------------------------------------------------------
+    public synchronized void detener() {
+        if (this.tareaProgramada != null) {
+            this.tareaProgramada.cancel(false);
+            this.tareaProgramada = null;
+        }
+        this.elEjecutor = null;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Programa la próxima llamada a procesar() dentro de "retardo" ms
+    // Sustituye a la que hubiera programada (así una alarma adelanta el envío)
+    // -------------------------------------------------------------------------------
+    private synchronized void reprogramar(long retardo) {
+        if (this.elEjecutor == null) {
+            return;
+        }
+        if (this.tareaProgramada != null) {
+            this.tareaProgramada.cancel(false);
+        }
+        this.tareaProgramada = this.elEjecutor.schedule(() -> {
+            long siguiente = procesar();
+            if (siguiente != SIN_TRABAJO) {
+                reprogramar(siguiente);
+            }
+        }, retardo, TimeUnit.MILLISECONDS);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Getters para depuración y pruebas
+    // -------------------------------------------------------------------------------
+    public synchronized int getNumeroPendientes() {
+        return this.pendientes.size();
+    }
+
+    public synchronized int getLotesEnviados() {
+        return this.lotesEnviados;
+    }
+
+    public synchronized int getMedicionesDescartadas() {
+        return this.medicionesDescartadas;
+    }
+
+    public InterruptorCircuito getInterruptor() {
+        return this.elInterruptor;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,133 @@
+package com.example.biometria_adenor;
+
+import java.util.ArrayDeque;
+
+// -----------------------------------------------------------------------------------
+// Reserva acotada de objetos Medicion para reutilizarlos
+// Con muchos sensores el escaneo crea miles de mediciones por minuto que
+// viven solo hasta que se suben; en lugar de dejarlas al recolector, el
+// planificador devuelve aquí las que ya ha enviado (o descartado) y el
+// escaneo las vuelve a rellenar. Si la reserva está vacía se crea una nueva;
+// si está llena, la devuelta se deja al recolector (nunca crece sin límite)
+// -----------------------------------------------------------------------------------
+public class PoolMediciones {
+
+    // Lo justo para que quepa toda la cola del planificador y un lote en vuelo
+    public static final int CAPACIDAD_POR_DEFECTO =
+            PlanificadorSubidas.MAXIMO_PENDIENTES + PlanificadorSubidas.MAXIMO_LOTE;
+
+    // Mediciones libres (el array se reserva de una vez y no vuelve a crecer)
+    private final ArrayDeque<Medicion> libres;
+    private final int capacidad;
+
+    // Contadores para depuración y pruebas
+    private long creadas = 0;
+    private long reutilizadas = 0;
+    private long tiradas = 0;
+
+    // -------------------------------------------------------------------------------
+    // Constructor con la capacidad por defecto
+    // -------------------------------------------------------------------------------
+    public PoolMediciones() {
+        this(CAPACIDAD_POR_DEFECTO);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param capacidad - máximo de mediciones libres que se guardan
+    // -------------------------------------------------------------------------------
+    public PoolMediciones(int capacidad) {
+        this.capacidad = capacidad;
+        this.libres = new ArrayDeque<>(capacidad);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve una medición con estos datos: una libre si la hay o una nueva
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param valor - valor numérico de la medida
+    // @param urgente - true si la medición debe enviarse cuanto antes
+    // @param instanteMillis - hora local de la captura (RelojCaptura.aPared)
+    // -------------------------------------------------------------------------------
+    public Medicion obtener(int tipo, int valor, boolean urgente, long instanteMillis) {
+        return obtener(tipo, valor, urgente, instanteMillis, ClaveIdempotencia.SIN_CLAVE);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que obtener(tipo, valor, urgente, instanteMillis), con la semilla de
+    // la clave de idempotencia
+    // @param semillaClave - ClaveIdempotencia.semilla(...) o SIN_CLAVE
+    // -------------------------------------------------------------------------------
+    public Medicion obtener(int tipo, int valor, boolean urgente, long instanteMillis, long semillaClave) {
+        return obtener(tipo, valor, urgente, instanteMillis, semillaClave, Medicion.SIN_RSSI);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, con el RSSI filtrado del sensor
+    // @param rssi - RSSI en dBm o Medicion.SIN_RSSI
+    // -------------------------------------------------------------------------------
+    public Medicion obtener(int tipo, int valor, boolean urgente, long instanteMillis, long semillaClave, int rssi) {
+        return obtener(tipo, valor, RegistroCalibraciones.SIN_VALOR, urgente, instanteMillis, semillaClave, rssi);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, con el valor en unidades de ingeniería
+    // @param valorIngenieria - valor convertido o RegistroCalibraciones.SIN_VALOR
+    // -------------------------------------------------------------------------------
+    public Medicion obtener(int tipo, int valor, float valorIngenieria, boolean urgente, long instanteMillis,
+                            long semillaClave, int rssi) {
+        Medicion m;
+        synchronized (this) {
+            m = this.libres.pollLast();
+            if (m == null) {
+                this.creadas++;
+            } else {
+                this.reutilizadas++;
+                m.enPool = false;
+            }
+        }
+        if (m == null) {
+            return new Medicion(tipo, valor, valorIngenieria, urgente, instanteMillis, semillaClave, rssi);
+        }
+        m.rellenar(tipo, valor, valorIngenieria, urgente, instanteMillis, semillaClave, rssi);
+        return m;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Guarda una medición que ya nadie usa para volver a rellenarla
+    // Devolver la misma dos veces no hace nada
+    // @param medicion - la medición (no se puede seguir usando después)
+    // -------------------------------------------------------------------------------
+    public synchronized void devolver(Medicion medicion) {
+        if (medicion.enPool) {
+            return;
+        }
+        if (this.libres.size() >= this.capacidad) {
+            this.tiradas++;
+            return;
+        }
+        medicion.enPool = true;
+        this.libres.addLast(medicion);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Getters para depuración y pruebas
+    // -------------------------------------------------------------------------------
+    public synchronized int getNumeroLibres() {
+        return this.libres.size();
+    }
+
+    public synchronized long getCreadas() {
+        return this.creadas;
+    }
+
+    public synchronized long getReutilizadas() {
+        return this.reutilizadas;
+    }
+
+    public synchronized long getTiradas() {
+        return this.tiradas;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,179 @@
+package com.example.biometria_adenor;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+// -----------------------------------------------------------------------------------
+// Curvas de calibración de cada sensor y tipo de medida
+//
+// Cada medición que sale del motor se convierte con convertir(): se busca la
+// curva del sensor para ese tipo (la que manda el servidor, ver
+// ActualizadorCalibraciones) o, si no tiene, la de fábrica del tipo, y se mira
+// el crudo en su tabla (CurvaCalibracion). Así el valor en unidades de
+// ingeniería sale de una búsqueda en un HashMap y una interpolación entre dos
+// nodos de un array, sin crear objetos en los hilos del motor
+//
+// Las curvas se guardan en una foto que no se modifica: al cambiar se hace
+// una nueva y se sustituye entera, así que los hilos del motor la leen sin
+// bloquearse
+// -----------------------------------------------------------------------------------
+public class RegistroCalibraciones {
+
+    // Valor de las mediciones que no tienen curva (no se manda)
+    public static final float SIN_VALOR = Float.NaN;
+
+    // Tipos posibles (el tipo va en el byte alto del major)
+    private static final int TIPOS = 256;
+
+    // -------------------------------------------------------------------------------
+    // Calibración de un sensor para un tipo de medida
+    // -------------------------------------------------------------------------------
+    public static class Calibracion {
+        public final String sensor;
+        public final int tipo;
+        public final CurvaCalibracion curva;
+
+        public Calibracion(String sensor, int tipo, CurvaCalibracion curva) {
+            this.sensor = sensor;
+            this.tipo = tipo;
+            this.curva = curva;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Foto de las curvas (no se modifica después de publicarla)
+    // -------------------------------------------------------------------------------
+    private static class Foto {
+        // Curva de fábrica de cada tipo (null si no tiene)
+        final CurvaCalibracion[] porDefecto;
+        // Curvas propias de cada sensor, indexadas por tipo
+        final Map<String, CurvaCalibracion[]> porSensor;
+        // Curvas distintas de porSensor (cada una es su propia clave), para
+        // encontrar la igual a una nueva sin recorrer todos los sensores
+        final Map<CurvaCalibracion, CurvaCalibracion> deLosSensores;
+
+        Foto(CurvaCalibracion[] porDefecto, Map<String, CurvaCalibracion[]> porSensor,
+             Map<CurvaCalibracion, CurvaCalibracion> deLosSensores) {
+            this.porDefecto = porDefecto;
+            this.porSensor = porSensor;
+            this.deLosSensores = deLosSensores;
+        }
+    }
+
+    private volatile Foto laFoto = new Foto(new CurvaCalibracion[TIPOS], new HashMap<>(), new HashMap<>());
+
+    // -------------------------------------------------------------------------------
+    // Registro con las curvas de fábrica: el gas llega del firmware en ppm y la
+    // temperatura en ºC como entero con signo de 16 bits
+    // -------------------------------------------------------------------------------
+    public static RegistroCalibraciones conCurvasDeFabrica() {
+        RegistroCalibraciones registro = new RegistroCalibraciones();
+        registro.ponerPorDefecto(MotorEscaneo.TIPO_GAS, CurvaCalibracion.identidad());
+        registro.ponerPorDefecto(MotorEscaneo.TIPO_TEMPERATURA, CurvaCalibracion.enteroConSigno());
+        return registro;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Convierte el tipo en texto del servidor al número del major
+    // @return 11 (gas), 12 (temperatura) o -1 si no es conocido
+    // -------------------------------------------------------------------------------
+    public static int tipoDeTexto(String tipo) {
+        if ("gas".equals(tipo)) {
+            return MotorEscaneo.TIPO_GAS;
+        } else if ("temperatura".equals(tipo)) {
+            return MotorEscaneo.TIPO_TEMPERATURA;
+        }
+        return -1;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Convierte una lectura a unidades de ingeniería (se llama desde los hilos
+    // del motor con cada medición)
+    // @param sensor - dirección del sensor
+    // @param tipo - tipo de medida (11=gas, 12=temperatura)
+    // @param crudo - minor del beacon
+    // @return el valor o SIN_VALOR si el tipo no tiene curva
+    // -------------------------------------------------------------------------------
+    public float convertir(String sensor, int tipo, int crudo) {
+        Foto foto = this.laFoto;
+        int t = tipo & (TIPOS - 1);
+        CurvaCalibracion curva = null;
+        CurvaCalibracion[] delSensor = foto.porSensor.get(sensor);
+        if (delSensor != null) {
+            curva = delSensor[t];
+        }
+        if (curva == null) {
+            curva = foto.porDefecto[t];
+            if (curva == null) {
+                return SIN_VALOR;
+            }
+        }
+        return curva.convertir(crudo);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Pone la curva de fábrica de un tipo (la de los sensores que no tienen la suya)
+    // @param tipo - tipo de medida
+    // @param curva - curva o null para quitarla
+    // -------------------------------------------------------------------------------
+    public synchronized void ponerPorDefecto(int tipo, CurvaCalibracion curva) {
+        Foto actual = this.laFoto;
+        CurvaCalibracion[] porDefecto = actual.porDefecto.clone();
+        porDefecto[tipo & (TIPOS - 1)] = curva == null ? null : reutilizar(curva, actual);
+        this.laFoto = new Foto(porDefecto, actual.porSensor, actual.deLosSensores);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Sustituye todas las curvas propias de los sensores por estas (las de
+    // fábrica se quedan). Las tablas se calculan aquí, en el hilo que llama,
+    // y las curvas que ya estaban se reutilizan con la tabla que tenían
+    // @param calibraciones - curvas de cada sensor y tipo
+    // -------------------------------------------------------------------------------
+    public synchronized void aplicar(Collection<Calibracion> calibraciones) {
+        Foto actual = this.laFoto;
+        Map<String, CurvaCalibracion[]> porSensor = new HashMap<>();
+        Map<CurvaCalibracion, CurvaCalibracion> nuevas = new HashMap<>();
+        for (Calibracion c : calibraciones) {
+            CurvaCalibracion curva = nuevas.get(c.curva);
+            if (curva == null) {
+                curva = reutilizar(c.curva, actual);
+                nuevas.put(curva, curva);
+            }
+            CurvaCalibracion[] delSensor = porSensor.get(c.sensor);
+            if (delSensor == null) {
+                delSensor = new CurvaCalibracion[TIPOS];
+                porSensor.put(c.sensor, delSensor);
+            }
+            delSensor[c.tipo & (TIPOS - 1)] = curva;
+        }
+        this.laFoto = new Foto(actual.porDefecto, porSensor, nuevas);
+    }
+
+    // Devuelve la curva igual que ya haya en la foto (con su tabla) o la
+    // nueva con la tabla ya calculada (las de fábrica son pocas y se
+    // recorren; las de los sensores se buscan en el HashMap)
+    private static CurvaCalibracion reutilizar(CurvaCalibracion curva, Foto foto) {
+        for (CurvaCalibracion c : foto.porDefecto) {
+            if (curva.equals(c)) {
+                return c;
+            }
+        }
+        CurvaCalibracion c = foto.deLosSensores.get(curva);
+        if (c != null) {
+            return c;
+        }
+        curva.preparar();
+        return curva;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve cuántos sensores tienen curvas propias
+    // -------------------------------------------------------------------------------
+    public int getNumeroSensores() {
+        return this.laFoto.porSensor.size();
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
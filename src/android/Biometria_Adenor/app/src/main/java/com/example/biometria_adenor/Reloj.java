@@ -0,0 +1,23 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Interfaz que abstrae la fuente de tiempo usada por los planificadores
+// En la app se usa el reloj monótono del sistema; en las pruebas se sustituye
+// por un reloj virtual que avanza a mano
+// -----------------------------------------------------------------------------------
+public interface Reloj {
+
+    // -------------------------------------------------------------------------------
+    // Reloj monótono del sistema (no salta si el usuario cambia la hora del móvil)
+    // -------------------------------------------------------------------------------
+    Reloj SISTEMA = () -> System.nanoTime() / 1_000_000L;
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el instante actual en milisegundos
+    // Solo tiene sentido comparar valores del mismo reloj entre sí
+    // -------------------------------------------------------------------------------
+    long ahoraMillis();
+
+} // interface
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
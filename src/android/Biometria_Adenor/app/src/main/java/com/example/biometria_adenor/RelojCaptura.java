@@ -0,0 +1,121 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Reloj con el que se pone fecha a cada medición en el momento de capturarla
+// ScanResult.getTimestampNanos() da el instante en que se recibió el anuncio
+// en nanosegundos desde el arranque del móvil (SystemClock.elapsedRealtimeNanos,
+// monótono, sigue contando en reposo). Este reloj lo pasa a hora de pared:
+//   - Se toma UNA vez la pareja (hora de pared, nanos desde el arranque) y a
+//     partir de ahí todo se calcula con el reloj monótono, así que la fecha no
+//     salta aunque el usuario o la red cambien la hora del móvil.
+//   - La hora del móvil puede estar desfasada respecto a la del servidor:
+//     cada respuesta del servidor trae su hora y con el tiempo de ida y vuelta
+//     se estima el desfase (como NTP, quedándose con la muestra de menor
+//     ida y vuelta de las últimas, que es la de menos error).
+// -----------------------------------------------------------------------------------
+public class RelojCaptura {
+
+    // -------------------------------------------------------------------------------
+    // Fuente de nanosegundos monótonos (SystemClock::elapsedRealtimeNanos en la app)
+    // -------------------------------------------------------------------------------
+    public interface FuenteNanos {
+        long ahoraNanos();
+    }
+
+    // Instante de las mediciones de las que no se sabe cuándo se capturaron
+    public static final long SIN_INSTANTE = Long.MIN_VALUE;
+
+    // Muestras de desfase que se guardan (las más recientes)
+    static final int MUESTRAS_DESFASE = 8;
+
+    // Reloj monótono con el que se miden los instantes
+    private final FuenteNanos elTranscurrido;
+
+    // Pareja tomada al crear el reloj: hora de pared y nanos del monótono
+    private final long paredBaseMillis;
+    private final long nanosBase;
+
+    // Últimas muestras de desfase: desfase (ms) y tiempo de ida y vuelta (ns)
+    private final long[] desfases = new long[MUESTRAS_DESFASE];
+    private final long[] idasYVueltas = new long[MUESTRAS_DESFASE];
+    private int muestras = 0;
+
+    // Desfase elegido (hora del servidor - hora local), en ms
+    private volatile long desfaseMillis = 0;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param pared - hora de pared del móvil (System::currentTimeMillis)
+    // @param transcurrido - reloj monótono con la misma base que los ScanResult
+    // -------------------------------------------------------------------------------
+    public RelojCaptura(Reloj pared, FuenteNanos transcurrido) {
+        this.elTranscurrido = transcurrido;
+        this.nanosBase = transcurrido.ahoraNanos();
+        this.paredBaseMillis = pared.ahoraMillis();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el instante actual del reloj monótono (ns)
+    // -------------------------------------------------------------------------------
+    public long ahoraNanos() {
+        return this.elTranscurrido.ahoraNanos();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Pasa un instante del reloj monótono a hora local de pared
+    // @param nanos - instante del reloj monótono (p. ej. ScanResult.getTimestampNanos())
+    // @return milisegundos desde 1970 según la hora del móvil al crear el reloj
+    // -------------------------------------------------------------------------------
+    public long aPared(long nanos) {
+        return this.paredBaseMillis + Math.floorDiv(nanos - this.nanosBase, 1_000_000L);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Corrige una hora local con el desfase estimado respecto al servidor
+    // @param paredMillis - hora local (de aPared)
+    // @return la misma hora según el reloj del servidor
+    // -------------------------------------------------------------------------------
+    public long aHoraServidor(long paredMillis) {
+        return paredMillis + this.desfaseMillis;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Anota la hora que dio el servidor en una respuesta
+    // Se supone que el servidor la tomó a mitad del viaje de ida y vuelta: el
+    // error de la estimación es como mucho la mitad de ese viaje
+    // @param horaServidorMillis - hora del servidor (ms desde 1970)
+    // @param envioNanos - instante del reloj monótono al enviar la petición
+    // @param respuestaNanos - instante del reloj monótono al recibir la respuesta
+    // -------------------------------------------------------------------------------
+    public synchronized void anotarHoraServidor(long horaServidorMillis, long envioNanos, long respuestaNanos) {
+        long idaYVuelta = respuestaNanos - envioNanos;
+        if (idaYVuelta < 0) {
+            return;
+        }
+        long mitad = envioNanos + idaYVuelta / 2;
+        int posicion = this.muestras % MUESTRAS_DESFASE;
+        this.desfases[posicion] = horaServidorMillis - aPared(mitad);
+        this.idasYVueltas[posicion] = idaYVuelta;
+        this.muestras++;
+
+        // Se usa la muestra con el viaje más corto de las guardadas
+        int guardadas = Math.min(this.muestras, MUESTRAS_DESFASE);
+        int mejor = 0;
+        for (int i = 1; i < guardadas; i++) {
+            if (this.idasYVueltas[i] < this.idasYVueltas[mejor]) {
+                mejor = i;
+            }
+        }
+        this.desfaseMillis = this.desfases[mejor];
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el desfase estimado (hora del servidor - hora local), en ms
+    // -------------------------------------------------------------------------------
+    public long getDesfaseMillis() {
+        return this.desfaseMillis;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
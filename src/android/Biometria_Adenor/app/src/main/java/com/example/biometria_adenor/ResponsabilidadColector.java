@@ -0,0 +1,203 @@
+package com.example.biometria_adenor;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// -----------------------------------------------------------------------------------
+// Qué sensores sube este móvil cuando hay varios colectores (móviles o
+// pasarelas) oyendo los mismos sensores
+//
+// Cada colector informa al servidor de los sensores que oye y con qué RSSI
+// (InformadorColector); el servidor elige para cada sensor el colector que
+// mejor lo oye y le contesta a cada uno con los sensores "ajenos", los que
+// ya sube otro. El motor entrega las mediciones a través de filtrar(), que
+// anota el RSSI de cada sensor y se salta las de los ajenos: en lugar de
+// subir N copias de cada lectura (una por colector) se sube casi siempre una
+//
+// La lista caduca (validez que manda el servidor): si no se ha podido
+// renovar se vuelve a subir todo, para no perder lecturas si el servidor o el
+// colector responsable dejan de funcionar. Las copias que se suban de más
+// las descarta el servidor por su clave de idempotencia
+// -----------------------------------------------------------------------------------
+public class ResponsabilidadColector {
+
+    // Un sensor que no se oye en este tiempo deja de informarse
+    public static final long OLVIDO_MS = 90_000;
+
+    // Sensores como mucho en cada informe (los más recientes no se ordenan:
+    // con más sensores que esto se informa de una parte en cada vuelta)
+    public static final int MAXIMO_INFORME = 512;
+
+    // Longitud máxima del identificador de un colector
+    public static final int LONGITUD_MAXIMA_COLECTOR = 64;
+
+    // -------------------------------------------------------------------------------
+    // Lo último que se sabe de un sensor oído (lo escriben los hilos del motor)
+    // -------------------------------------------------------------------------------
+    private static class Oido {
+        volatile int rssi;
+        volatile long ultimaVez;
+    }
+
+    // Reloj con el que se mide la caducidad de la lista y de los sensores
+    private final Reloj elReloj;
+
+    // Sensores oídos por este colector
+    private final ConcurrentHashMap<String, Oido> losOidos = new ConcurrentHashMap<>();
+
+    // Sensores que sube otro colector (no se modifica: se sustituye entera)
+    private volatile Set<String> losAjenos = Collections.emptySet();
+
+    // Instante (elReloj) hasta el que vale losAjenos
+    private volatile long validoHasta = 0;
+
+    // Mediciones que han pasado el filtro y que se han saltado
+    private final AtomicLong subidas = new AtomicLong();
+    private final AtomicLong suprimidas = new AtomicLong();
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param reloj - reloj monótono (Reloj.SISTEMA en la app)
+    // -------------------------------------------------------------------------------
+    public ResponsabilidadColector(Reloj reloj) {
+        this.elReloj = reloj;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si el identificador se puede usar como colector (letras,
+    // números, '-' o '_'; así va tal cual en el JSON y en la URL)
+    // -------------------------------------------------------------------------------
+    public static boolean esIdentificadorValido(String colector) {
+        if (colector == null || colector.isEmpty() || colector.length() > LONGITUD_MAXIMA_COLECTOR) {
+            return false;
+        }
+        for (int i = 0; i < colector.length(); i++) {
+            char c = colector.charAt(i);
+            boolean valido = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || c == '-' || c == '_';
+            if (!valido) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Envuelve el destino del motor: todas las mediciones anotan el RSSI de su
+    // sensor, y solo llegan al destino las de los sensores que toca subir
+    // @param destino - destino real (el que encola en el planificador)
+    // @return destino para el MotorEscaneo
+    // -------------------------------------------------------------------------------
+    public MotorEscaneo.Destino filtrar(final MotorEscaneo.Destino destino) {
+        return (sensor, tipo, contador, valor, rssi, instante) -> {
+            anotar(sensor, rssi);
+            if (debeSubir(sensor)) {
+                this.subidas.incrementAndGet();
+                destino.entregar(sensor, tipo, contador, valor, rssi, instante);
+            } else {
+                this.suprimidas.incrementAndGet();
+            }
+        };
+    }
+
+    // -------------------------------------------------------------------------------
+    // Anota que se ha oído un sensor (sin crear objetos si ya se conocía)
+    // @param sensor - dirección del sensor
+    // @param rssi - RSSI filtrado (dBm)
+    // -------------------------------------------------------------------------------
+    public void anotar(String sensor, int rssi) {
+        Oido oido = this.losOidos.get(sensor);
+        if (oido == null) {
+            oido = this.losOidos.computeIfAbsent(sensor, s -> new Oido());
+        }
+        oido.rssi = rssi;
+        oido.ultimaVez = this.elReloj.ahoraMillis();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si este colector tiene que subir las mediciones del sensor:
+    // no lo sube otro o la lista del servidor ha caducado
+    // -------------------------------------------------------------------------------
+    public boolean debeSubir(String sensor) {
+        return this.elReloj.ahoraMillis() >= this.validoHasta || !this.losAjenos.contains(sensor);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Aplica la respuesta del servidor
+    // @param ajenos - sensores que sube otro colector
+    // @param validezMs - durante cuánto tiempo vale la lista
+    // -------------------------------------------------------------------------------
+    public void aplicar(Collection<String> ajenos, long validezMs) {
+        this.losAjenos = Collections.unmodifiableSet(new HashSet<>(ajenos));
+        this.validoHasta = this.elReloj.ahoraMillis() + Math.max(0, validezMs);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe el informe de sensores oídos y olvida los que hace OLVIDO_MS que
+    // no se oyen:
+    //   {"colector": "3f0c...", "sensores": [{"sensor": "D4:...", "rssi": -71}, ...]}
+    // @param colector - identificador de este colector (ya validado)
+    // @param destino - buffer donde se escribe
+    // @return número de sensores informados
+    // -------------------------------------------------------------------------------
+    public int escribirInforme(String colector, BufferJSON destino) {
+        long ahora = this.elReloj.ahoraMillis();
+        destino.escribir("{\"colector\": \"").escribir(colector).escribir("\", \"sensores\": [");
+        int escritos = 0;
+        Iterator<Map.Entry<String, Oido>> it = this.losOidos.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Oido> e = it.next();
+            Oido oido = e.getValue();
+            if (ahora - oido.ultimaVez > OLVIDO_MS) {
+                it.remove();
+                continue;
+            }
+            if (escritos == MAXIMO_INFORME) {
+                continue;
+            }
+            if (escritos > 0) {
+                destino.escribir(", ");
+            }
+            destino.escribir("{\"sensor\": \"").escribir(e.getKey()).escribir("\", \"rssi\": ")
+                    .escribirEntero(oido.rssi).escribir('}');
+            escritos++;
+        }
+        destino.escribir("]}");
+        return escritos;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve true si la lista de ajenos sigue valiendo
+    // -------------------------------------------------------------------------------
+    public boolean tieneListaVigente() {
+        return this.elReloj.ahoraMillis() < this.validoHasta;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Getters de los contadores
+    // -------------------------------------------------------------------------------
+    public int getNumeroAjenos() {
+        return this.losAjenos.size();
+    }
+
+    public int getNumeroOidos() {
+        return this.losOidos.size();
+    }
+
+    public long getSubidas() {
+        return this.subidas.get();
+    }
+
+    public long getSuprimidas() {
+        return this.suprimidas.get();
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,48 @@
+package com.example.biometria_adenor;
+
+// -----------------------------------------------------------------------------------
+// Resultado de una petición hecha por un TransporteHTTP
+// Guarda el código HTTP y el cuerpo de la respuesta
+// -----------------------------------------------------------------------------------
+public class RespuestaHTTP {
+
+    // Código de estado HTTP (200, 404, 500, etc.)
+    private final int codigo;
+
+    // Cuerpo de la respuesta ("" si no había)
+    private final String cuerpo;
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param codigo - código de estado HTTP
+    // @param cuerpo - cuerpo de la respuesta
+    // -------------------------------------------------------------------------------
+    public RespuestaHTTP(int codigo, String cuerpo) {
+        this.codigo = codigo;
+        this.cuerpo = cuerpo;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el código de estado HTTP
+    // -------------------------------------------------------------------------------
+    public int getCodigo() {
+        return codigo;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el cuerpo de la respuesta
+    // -------------------------------------------------------------------------------
+    public String getCuerpo() {
+        return cuerpo;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Indica si el código es de éxito (2xx)
+    // -------------------------------------------------------------------------------
+    public boolean esExito() {
+        return codigo >= 200 && codigo < 300;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,389 @@
+package com.example.biometria_adenor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// -----------------------------------------------------------------------------------
+// Seguimiento del contador de 8 bits que cada sensor manda en major[1]
+// Por cada sensor (y tipo de medición) guarda el último contador y una ventana
+// de los 64 últimos recibidos, y con eso clasifica cada trama:
+//   - NUEVA:      el contador avanza 1..127 (si avanza más de 1, los de en
+//                 medio se cuentan como perdidos)
+//   - DUPLICADA:  el mismo contador otra vez (el beacon repite cada trama
+//                 hasta que mide de nuevo) o uno anterior ya recibido
+//   - REORDENADA: un contador anterior que faltaba y llega tarde (deja de
+//                 contar como perdido)
+//   - REINICIO:   el contador retrocede pasado el tiempo en que una trama
+//                 puede llegar desordenada: el sensor se ha reiniciado
+// Con eso lleva la tasa de pérdidas total y una reciente (media móvil) por
+// sensor, que da una medida continua de la calidad del enlace para ajustar el
+// modo de escaneo y la frecuencia de anuncio
+// -----------------------------------------------------------------------------------
+public class SeguidorSecuencias {
+
+    // -------------------------------------------------------------------------------
+    // Clasificación de una trama según su contador
+    // -------------------------------------------------------------------------------
+    public enum Resultado {
+        NUEVA, DUPLICADA, REORDENADA, REINICIO;
+
+        // true si la trama trae datos que no se habían guardado
+        public boolean esNueva() {
+            return this != DUPLICADA;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Calidad del enlace según la tasa reciente de pérdidas del peor sensor
+    // -------------------------------------------------------------------------------
+    public enum CalidadEnlace {
+        DESCONOCIDA, BUENA, REGULAR, MALA
+    }
+
+    // Un contador que retrocede como mucho esto puede ser una trama desordenada
+    // (o una muestra de una trama de deltas ya vista: cada una abarca hasta
+    // MAXIMO_MUESTRAS contadores)
+    static final int VENTANA_REORDEN = 2 * TramaDeltas.MAXIMO_MUESTRAS;
+
+    // ... y solo si llega antes de este tiempo desde que se vio el último contador
+    static final long TIEMPO_REORDEN_MS = 5_000;
+
+    // Avance máximo que se toma como pérdidas (más sería ir hacia atrás)
+    static final int AVANCE_MAXIMO = 127;
+
+    // Peso de cada contador en la tasa reciente de pérdidas (media móvil exponencial)
+    static final double PESO_RECIENTE = 0.05;
+
+    // Contadores esperados antes de juzgar la calidad de un sensor
+    static final int MINIMO_PARA_CALIDAD = 20;
+
+    // Umbrales de la tasa reciente de pérdidas, con histéresis para que el
+    // modo de escaneo no vaya y venga
+    static final double SUBIR_A_REGULAR = 0.10;
+    static final double SUBIR_A_MALA = 0.25;
+    static final double BAJAR_A_REGULAR = 0.15;
+    static final double BAJAR_A_BUENA = 0.05;
+
+    // Los mismos umbrales en orden: por cada uno se cuenta cuántos sensores
+    // (con datos suficientes) lo superan, y así la calidad se actualiza sin
+    // recorrer todos los sensores en cada trama
+    private static final double[] UMBRALES = {BAJAR_A_BUENA, SUBIR_A_REGULAR, BAJAR_A_REGULAR, SUBIR_A_MALA};
+    private static final int U_BAJAR_A_BUENA = 0;
+    private static final int U_SUBIR_A_REGULAR = 1;
+    private static final int U_BAJAR_A_REGULAR = 2;
+    private static final int U_SUBIR_A_MALA = 3;
+
+    // -------------------------------------------------------------------------------
+    // Estadísticas de un sensor (o de todos sumados)
+    // -------------------------------------------------------------------------------
+    public static class Estadisticas {
+        public final long recibidas;      // tramas nuevas, reordenadas o tras reinicio
+        public final long duplicadas;     // tramas repetidas descartadas
+        public final long perdidas;       // contadores que no han llegado
+        public final long reordenadas;    // contadores que llegaron tarde
+        public final long reinicios;      // veces que el contador volvió a empezar
+        public final long esperadas;      // contadores que deberían haber llegado
+        public final double tasaPerdidasReciente;
+
+        Estadisticas(long recibidas, long duplicadas, long perdidas, long reordenadas,
+                     long reinicios, long esperadas, double tasaPerdidasReciente) {
+            this.recibidas = recibidas;
+            this.duplicadas = duplicadas;
+            this.perdidas = perdidas;
+            this.reordenadas = reordenadas;
+            this.reinicios = reinicios;
+            this.esperadas = esperadas;
+            this.tasaPerdidasReciente = tasaPerdidasReciente;
+        }
+
+        // Fracción de contadores perdidos desde el principio
+        public double getTasaPerdidas() {
+            return this.esperadas == 0 ? 0 : (double) this.perdidas / this.esperadas;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT,
+                    "recibidas=%d duplicadas=%d perdidas=%d (%.1f%%, reciente %.1f%%) reordenadas=%d reinicios=%d",
+                    this.recibidas, this.duplicadas, this.perdidas, 100 * getTasaPerdidas(),
+                    100 * this.tasaPerdidasReciente, this.reordenadas, this.reinicios);
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Estado de la secuencia de un sensor
+    // -------------------------------------------------------------------------------
+    private static class Secuencia {
+        int ultimo;            // último contador (el más adelantado)
+        long ventana;          // bit k: se recibió el contador (ultimo - k)
+        long instanteUltimo;   // cuándo se vio por primera vez el último contador
+        long recibidas, duplicadas, perdidas, reordenadas, reinicios, esperadas;
+        double tasaReciente;
+        int umbralesSuperados;  // bit i: tasaReciente >= UMBRALES[i] (si cuenta para la calidad)
+
+        Secuencia(int contador, long ahora) {
+            empezar(contador, ahora);
+            this.recibidas = 1;
+            this.esperadas = 1;
+        }
+
+        void empezar(int contador, long ahora) {
+            this.ultimo = contador;
+            this.ventana = 1;
+            this.instanteUltimo = ahora;
+        }
+
+        // Cuenta un contador esperado (perdido o no) en la tasa reciente
+        void anotarEsperado(boolean perdido) {
+            this.esperadas++;
+            this.tasaReciente += PESO_RECIENTE * ((perdido ? 1 : 0) - this.tasaReciente);
+        }
+    }
+
+    // Reloj con el que se mide el tiempo entre tramas
+    private final Reloj elReloj;
+
+    // -------------------------------------------------------------------------------
+    // Secuencias de un sensor, una por tipo. Cada sensor manda muy pocos tipos,
+    // así que se buscan recorriendo el array; así no hace falta montar una
+    // clave "sensor/tipo" (un String nuevo) por cada trama
+    // -------------------------------------------------------------------------------
+    private static class SecuenciasSensor {
+        int[] tipos = new int[2];
+        Secuencia[] secuencias = new Secuencia[2];
+        int numero;
+
+        Secuencia buscar(int tipo) {
+            for (int i = 0; i < this.numero; i++) {
+                if (this.tipos[i] == tipo) {
+                    return this.secuencias[i];
+                }
+            }
+            return null;
+        }
+
+        void anadir(int tipo, Secuencia s) {
+            if (this.numero == this.tipos.length) {
+                this.tipos = Arrays.copyOf(this.tipos, this.numero * 2);
+                this.secuencias = Arrays.copyOf(this.secuencias, this.numero * 2);
+            }
+            this.tipos[this.numero] = tipo;
+            this.secuencias[this.numero] = s;
+            this.numero++;
+        }
+    }
+
+    // Secuencias de cada sensor, por dirección
+    private final Map<String, SecuenciasSensor> sensores = new HashMap<>();
+
+    // Cuántas secuencias (sensor y tipo) se siguen en total
+    private int numeroSecuencias;
+
+    // Calidad actual del enlace (cambia con histéresis)
+    private CalidadEnlace calidad = CalidadEnlace.DESCONOCIDA;
+
+    // Cuántos sensores con datos suficientes superan cada umbral
+    private final int[] superanUmbral = new int[UMBRALES.length];
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param reloj - reloj monótono (Reloj.SISTEMA en la app)
+    // -------------------------------------------------------------------------------
+    public SeguidorSecuencias(Reloj reloj) {
+        this.elReloj = reloj;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Anota una trama recibida y la clasifica
+    // @param sensor - identificador del sensor (dirección MAC del beacon)
+    // @param tipo - tipo de medición (cada tipo lleva su propia secuencia)
+    // @param contador - contador de la trama (major[1], 0..255)
+    // @return clasificación de la trama
+    // -------------------------------------------------------------------------------
+    public synchronized Resultado anotar(String sensor, int tipo, int contador) {
+        long ahora = this.elReloj.ahoraMillis();
+        contador &= 0xFF;
+        SecuenciasSensor delSensor = this.sensores.get(sensor);
+        if (delSensor == null) {
+            delSensor = new SecuenciasSensor();
+            this.sensores.put(sensor, delSensor);
+        }
+        Secuencia s = delSensor.buscar(tipo);
+        if (s == null) {
+            s = new Secuencia(contador, ahora);
+            delSensor.anadir(tipo, s);
+            this.numeroSecuencias++;
+            actualizarCalidad(s);
+            return Resultado.NUEVA;
+        }
+
+        int avance = (contador - s.ultimo) & 0xFF;
+        Resultado resultado;
+        if (avance == 0) {
+            s.duplicadas++;
+            resultado = Resultado.DUPLICADA;
+        } else if (avance <= AVANCE_MAXIMO) {
+            // Avanza: los contadores de en medio se han perdido
+            for (int k = 1; k < avance; k++) {
+                s.anotarEsperado(true);
+            }
+            s.anotarEsperado(false);
+            s.perdidas += avance - 1;
+            s.recibidas++;
+            s.ventana = avance >= Long.SIZE ? 1 : (s.ventana << avance) | 1;
+            s.ultimo = contador;
+            s.instanteUltimo = ahora;
+            resultado = Resultado.NUEVA;
+        } else {
+            // Retrocede: trama desordenada, repetida o el sensor se ha reiniciado
+            int retroceso = 256 - avance;
+            boolean aTiempo = ahora - s.instanteUltimo <= TIEMPO_REORDEN_MS;
+            long bit = 1L << retroceso;
+            if (retroceso <= VENTANA_REORDEN && aTiempo) {
+                if ((s.ventana & bit) != 0) {
+                    s.duplicadas++;
+                    resultado = Resultado.DUPLICADA;
+                } else {
+                    s.ventana |= bit;
+                    s.perdidas--;
+                    s.reordenadas++;
+                    s.recibidas++;
+                    // Se había contado como perdida en la tasa reciente
+                    s.tasaReciente = Math.max(0, s.tasaReciente - PESO_RECIENTE);
+                    resultado = Resultado.REORDENADA;
+                }
+            } else {
+                s.reinicios++;
+                s.recibidas++;
+                s.anotarEsperado(false);
+                s.empezar(contador, ahora);
+                resultado = Resultado.REINICIO;
+            }
+        }
+        actualizarCalidad(s);
+        return resultado;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Mira, sin anotarlo, si un contador es el último que se recibió del sensor
+    // (el beacon repite su trama hasta que mide de nuevo). Sirve para descartar
+    // entera una trama de deltas repetida antes de mirar sus muestras: la
+    // primera retrocede hasta MAXIMO_MUESTRAS - 1 y, si la repetición llega
+    // pasado TIEMPO_REORDEN_MS, anotar() la tomaría por un reinicio
+    // @param sensor - identificador del sensor
+    // @param tipo - tipo de medición
+    // @param contador - contador de la trama (0..255)
+    // @return true si la secuencia existe y su último contador es este
+    // -------------------------------------------------------------------------------
+    public synchronized boolean esElUltimo(String sensor, int tipo, int contador) {
+        SecuenciasSensor delSensor = this.sensores.get(sensor);
+        Secuencia s = delSensor == null ? null : delSensor.buscar(tipo);
+        return s != null && s.ultimo == (contador & 0xFF);
+    }
+
+    // Actualiza la calidad del enlace tras cambiar la tasa de un sensor
+    // La calidad depende del peor sensor con datos suficientes: "el peor supera
+    // el umbral i" es lo mismo que "algún sensor lo supera"
+    private void actualizarCalidad(Secuencia s) {
+        if (s.esperadas < MINIMO_PARA_CALIDAD) {
+            return;
+        }
+        int superados = 0;
+        for (int i = 0; i < UMBRALES.length; i++) {
+            if (s.tasaReciente >= UMBRALES[i]) {
+                superados |= 1 << i;
+            }
+        }
+        int cambios = superados ^ s.umbralesSuperados;
+        for (int i = 0; i < UMBRALES.length; i++) {
+            if ((cambios & (1 << i)) != 0) {
+                this.superanUmbral[i] += (superados & (1 << i)) != 0 ? 1 : -1;
+            }
+        }
+        s.umbralesSuperados = superados;
+
+        boolean mala = this.superanUmbral[U_SUBIR_A_MALA] > 0;
+        boolean regular = this.superanUmbral[U_SUBIR_A_REGULAR] > 0;
+        boolean bajaABuena = this.superanUmbral[U_BAJAR_A_BUENA] == 0;
+        boolean bajaARegular = this.superanUmbral[U_BAJAR_A_REGULAR] == 0;
+        switch (this.calidad) {
+            case DESCONOCIDA:
+                this.calidad = mala ? CalidadEnlace.MALA : regular ? CalidadEnlace.REGULAR : CalidadEnlace.BUENA;
+                break;
+            case BUENA:
+                if (mala) {
+                    this.calidad = CalidadEnlace.MALA;
+                } else if (regular) {
+                    this.calidad = CalidadEnlace.REGULAR;
+                }
+                break;
+            case REGULAR:
+                if (mala) {
+                    this.calidad = CalidadEnlace.MALA;
+                } else if (bajaABuena) {
+                    this.calidad = CalidadEnlace.BUENA;
+                }
+                break;
+            case MALA:
+                if (bajaABuena) {
+                    this.calidad = CalidadEnlace.BUENA;
+                } else if (bajaARegular) {
+                    this.calidad = CalidadEnlace.REGULAR;
+                }
+                break;
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve la calidad actual del enlace (DESCONOCIDA hasta tener datos)
+    // -------------------------------------------------------------------------------
+    public synchronized CalidadEnlace getCalidadEnlace() {
+        return this.calidad;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve las estadísticas de un sensor y tipo (null si no se ha visto)
+    // -------------------------------------------------------------------------------
+    public synchronized Estadisticas getEstadisticas(String sensor, int tipo) {
+        SecuenciasSensor delSensor = this.sensores.get(sensor);
+        Secuencia s = delSensor == null ? null : delSensor.buscar(tipo);
+        if (s == null) {
+            return null;
+        }
+        return new Estadisticas(s.recibidas, s.duplicadas, s.perdidas, s.reordenadas,
+                s.reinicios, s.esperadas, s.tasaReciente);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve las estadísticas de todos los sensores sumadas
+    // (la tasa reciente es la del peor sensor)
+    // -------------------------------------------------------------------------------
+    public synchronized Estadisticas getEstadisticas() {
+        long recibidas = 0, duplicadas = 0, perdidas = 0, reordenadas = 0, reinicios = 0, esperadas = 0;
+        double peor = 0;
+        for (SecuenciasSensor delSensor : this.sensores.values()) {
+            for (int i = 0; i < delSensor.numero; i++) {
+                Secuencia s = delSensor.secuencias[i];
+                recibidas += s.recibidas;
+                duplicadas += s.duplicadas;
+                perdidas += s.perdidas;
+                reordenadas += s.reordenadas;
+                reinicios += s.reinicios;
+                esperadas += s.esperadas;
+                peor = Math.max(peor, s.tasaReciente);
+            }
+        }
+        return new Estadisticas(recibidas, duplicadas, perdidas, reordenadas, reinicios, esperadas, peor);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve cuántos sensores (y tipos) se están siguiendo
+    // -------------------------------------------------------------------------------
+    public synchronized int getNumeroSecuencias() {
+        return this.numeroSecuencias;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,213 @@
+package com.example.biometria_adenor;
+
+import java.util.Arrays;
+
+// -----------------------------------------------------------------------------------
+// Lector de tramas de deltas: varias muestras seguidas de un mismo tipo de
+// medición en un solo anuncio. La primera va entera y las demás como
+// diferencia con la anterior (zig-zag + varint), así que si la medición cambia
+// poco caben hasta MAXIMO_MUESTRAS en los 16 bytes del UUID.
+// Como TramaMultivalor, lee directamente sobre los bytes del escaneo y no crea
+// objetos: un mismo lector sirve para todos los anuncios con envolver().
+//
+// Contenido del UUID (ver FormatoTrama):
+//   UUID[0..1]   'G' 'T'
+//   UUID[2]      0x02 (FormatoTrama.CODIGO_DELTAS)
+//   UUID[3]      número de muestras (1..MAXIMO_MUESTRAS)
+//   UUID[4]      segundos entre muestras (0 = no se sabe)
+//   UUID[5..6]   primera muestra (int16 big-endian)
+//   UUID[7..15]  diferencias con la muestra anterior, zig-zag + varint
+//
+// major = tipo (1 byte) + contador de la ÚLTIMA muestra (1 byte)
+// minor = valor de la última muestra (lo que sigue leyendo una app antigua)
+// La muestra i lleva el contador (contador - (número - 1 - i)) & 0xFF
+// -----------------------------------------------------------------------------------
+public class TramaDeltas {
+
+    // Máximo de muestras en una trama (la primera + 9 diferencias de 1 byte)
+    public static final int MAXIMO_MUESTRAS = 10;
+
+    // Posiciones dentro del UUID
+    static final int POS_NUMERO = 3;
+    static final int POS_PERIODO = 4;
+    static final int POS_BASE = 5;
+    static final int POS_DELTAS = 7;
+    static final int LONGITUD_UUID = 16;
+
+    // Una diferencia entre dos int16 ocupa 17 bits: como mucho 3 bytes de varint
+    static final int MAXIMO_BYTES_VARINT = 3;
+
+    // Bytes del anuncio y posición del UUID dentro de ellos
+    private byte[] losBytes;
+    private int inicioUUID;
+
+    // -------------------------------------------------------------------------------
+    // Apunta el lector a los bytes de un anuncio y comprueba que las
+    // diferencias se pueden decodificar enteras
+    // @param bytes - bytes del anuncio (ScanRecord.getBytes())
+    // @return true si es una trama de deltas válida
+    // -------------------------------------------------------------------------------
+    public boolean envolver(byte[] bytes) {
+        this.losBytes = null;
+        if (FormatoTrama.detectar(bytes) != FormatoTrama.DELTAS) {
+            return false;
+        }
+        int inicio = FormatoTrama.INICIO_UUID + FormatoTrama.desplazamiento(bytes);
+        int numero = bytes[inicio + POS_NUMERO] & 0xFF;
+        if (numero < 1 || numero > MAXIMO_MUESTRAS) {
+            return false;
+        }
+        // Recorre las diferencias sin guardarlas: tienen que caber en el UUID
+        // y dar siempre valores de 16 bits
+        int valor = base(bytes, inicio);
+        int p = inicio + POS_DELTAS;
+        int fin = inicio + LONGITUD_UUID;
+        for (int i = 1; i < numero; i++) {
+            int zigzag = 0;
+            int leidos = 0;
+            int b;
+            do {
+                if (p >= fin || leidos == MAXIMO_BYTES_VARINT) {
+                    return false;
+                }
+                b = bytes[p++] & 0xFF;
+                zigzag |= (b & 0x7F) << (7 * leidos);
+                leidos++;
+            } while ((b & 0x80) != 0);
+            valor += deZigzag(zigzag);
+            if (valor < Short.MIN_VALUE || valor > Short.MAX_VALUE) {
+                return false;
+            }
+        }
+        this.losBytes = bytes;
+        this.inicioUUID = inicio;
+        return true;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el tipo de medición de todas las muestras (major[0])
+    // -------------------------------------------------------------------------------
+    public int getTipo() {
+        return this.losBytes[this.inicioUUID + LONGITUD_UUID] & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el contador de la última muestra (major[1])
+    // -------------------------------------------------------------------------------
+    public int getContadorUltima() {
+        return this.losBytes[this.inicioUUID + LONGITUD_UUID + 1] & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve cuántas muestras lleva la trama
+    // -------------------------------------------------------------------------------
+    public int getNumeroMuestras() {
+        return this.losBytes[this.inicioUUID + POS_NUMERO] & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve los segundos entre muestras (0 si el Arduino no lo sabe)
+    // -------------------------------------------------------------------------------
+    public int getSegundosEntreMuestras() {
+        return this.losBytes[this.inicioUUID + POS_PERIODO] & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el contador (0..255) de la muestra i; la última es la de major[1]
+    // -------------------------------------------------------------------------------
+    public int getContador(int i) {
+        int numero = getNumeroMuestras();
+        if (i < 0 || i >= numero) {
+            throw new IndexOutOfBoundsException("muestra " + i + " de " + numero);
+        }
+        return (getContadorUltima() - (numero - 1 - i)) & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Reconstruye las muestras en orden (la más antigua primero)
+    // No crea objetos: escribe en un array del llamante que se puede reutilizar
+    // @param valores - array con sitio para getNumeroMuestras() valores
+    //                  (MAXIMO_MUESTRAS basta para cualquier trama)
+    // @return número de muestras escritas
+    // -------------------------------------------------------------------------------
+    public int leerMuestras(int[] valores) {
+        int numero = getNumeroMuestras();
+        int valor = base(this.losBytes, this.inicioUUID);
+        valores[0] = valor;
+        int p = this.inicioUUID + POS_DELTAS;
+        for (int i = 1; i < numero; i++) {
+            int zigzag = 0;
+            int desplazamiento = 0;
+            int b;
+            do {
+                b = this.losBytes[p++] & 0xFF;
+                zigzag |= (b & 0x7F) << desplazamiento;
+                desplazamiento += 7;
+            } while ((b & 0x80) != 0);
+            valor += deZigzag(zigzag);
+            valores[i] = valor;
+        }
+        return numero;
+    }
+
+    // Primera muestra (int16 big-endian)
+    private static int base(byte[] bytes, int inicio) {
+        return (short) (((bytes[inicio + POS_BASE] & 0xFF) << 8) | (bytes[inicio + POS_BASE + 1] & 0xFF));
+    }
+
+    // 0, 1, 2, 3, 4 ... -> 0, -1, 1, -2, 2 ...
+    static int deZigzag(int zigzag) {
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+
+    // 0, -1, 1, -2, 2 ... -> 0, 1, 2, 3, 4 ...
+    static int aZigzag(int delta) {
+        return (delta << 1) ^ (delta >> 31);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe el UUID de una trama de deltas con las muestras que quepan
+    // (lo mismo que Publicador::codificarDeltas() en el Arduino); se usa en las pruebas
+    // @param uuid - array de 16 bytes donde escribir
+    // @param segundosEntreMuestras - periodo de muestreo (0..255)
+    // @param muestras - valores en orden, de 16 bits con signo
+    // @param numero - cuántos valores de muestras usar
+    // @return cuántas muestras han cabido
+    // -------------------------------------------------------------------------------
+    static int escribirUUID(byte[] uuid, int segundosEntreMuestras, int[] muestras, int numero) {
+        Arrays.fill(uuid, 0, LONGITUD_UUID, (byte) 0);
+        uuid[0] = FormatoTrama.MARCA_0;
+        uuid[1] = FormatoTrama.MARCA_1;
+        uuid[2] = FormatoTrama.CODIGO_DELTAS;
+        uuid[POS_PERIODO] = (byte) segundosEntreMuestras;
+        if (numero == 0) {
+            return 0;
+        }
+        uuid[POS_BASE] = (byte) (muestras[0] >> 8);
+        uuid[POS_BASE + 1] = (byte) muestras[0];
+
+        int p = POS_DELTAS;
+        int metidas = 1;
+        byte[] varint = new byte[MAXIMO_BYTES_VARINT];
+        while (metidas < numero && metidas < MAXIMO_MUESTRAS) {
+            int zigzag = aZigzag(muestras[metidas] - muestras[metidas - 1]);
+            int bytes = 0;
+            do {
+                int b = zigzag & 0x7F;
+                zigzag >>>= 7;
+                varint[bytes++] = (byte) (zigzag != 0 ? (b | 0x80) : b);
+            } while (zigzag != 0);
+            if (p + bytes > LONGITUD_UUID) {
+                break; // No cabe: iría en la trama siguiente
+            }
+            System.arraycopy(varint, 0, uuid, p, bytes);
+            p += bytes;
+            metidas++;
+        }
+        uuid[POS_NUMERO] = (byte) metidas;
+        return metidas;
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
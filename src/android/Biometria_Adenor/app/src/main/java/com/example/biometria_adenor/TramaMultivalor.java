@@ -0,0 +1,122 @@
+package com.example.biometria_adenor;
+
+import java.util.Arrays;
+
+// -----------------------------------------------------------------------------------
+// Lector de tramas multivalor: varias mediciones con su tipo en un solo anuncio
+// Lee directamente sobre los bytes del escaneo (no copia nada ni crea objetos),
+// así que un mismo lector se puede reutilizar para todos los anuncios con
+// envolver(). Los datos solo valen mientras no se cambie el array.
+//
+// Contenido del UUID (ver FormatoTrama):
+//   UUID[0..1]   'G' 'T'
+//   UUID[2]      0x01 (FormatoTrama.CODIGO_MULTIVALOR)
+//   UUID[3..4]   número de secuencia (16 bits, big-endian)
+//   UUID[5]      número de mediciones (0..3)
+//   UUID[6..14]  mediciones: tipo (1 byte) + valor (int16 big-endian)
+//   UUID[15]     libre
+//
+// El major y el minor llevan la primera medición como en el formato clásico
+// (tipo y contador en el major, valor en el minor), así que una app antigua
+// sigue leyendo al menos esa
+// -----------------------------------------------------------------------------------
+public class TramaMultivalor {
+
+    // Máximo de mediciones que caben en una trama
+    public static final int MAXIMO_MEDICIONES = 3;
+
+    // Bytes de cada medición (tipo + valor)
+    static final int BYTES_MEDICION = 3;
+
+    // Posiciones dentro del UUID
+    static final int POS_SECUENCIA = 3;
+    static final int POS_NUMERO = 5;
+    static final int POS_MEDICIONES = 6;
+
+    // Bytes del anuncio y posición del UUID dentro de ellos
+    private byte[] losBytes;
+    private int inicioUUID;
+
+    // -------------------------------------------------------------------------------
+    // Apunta el lector a los bytes de un anuncio
+    // @param bytes - bytes del anuncio (ScanRecord.getBytes())
+    // @return true si es una trama multivalor válida
+    // -------------------------------------------------------------------------------
+    public boolean envolver(byte[] bytes) {
+        if (FormatoTrama.detectar(bytes) != FormatoTrama.MULTIVALOR) {
+            this.losBytes = null;
+            return false;
+        }
+        this.losBytes = bytes;
+        this.inicioUUID = FormatoTrama.INICIO_UUID + FormatoTrama.desplazamiento(bytes);
+        return getNumeroMediciones() <= MAXIMO_MEDICIONES;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el número de secuencia de la trama (0..65535, da la vuelta)
+    // -------------------------------------------------------------------------------
+    public int getSecuencia() {
+        return ((this.losBytes[this.inicioUUID + POS_SECUENCIA] & 0xFF) << 8)
+                | (this.losBytes[this.inicioUUID + POS_SECUENCIA + 1] & 0xFF);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve cuántas mediciones lleva la trama
+    // -------------------------------------------------------------------------------
+    public int getNumeroMediciones() {
+        return this.losBytes[this.inicioUUID + POS_NUMERO] & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el tipo de la medición i (11=gas, 12=temperatura, 13=ruido)
+    // -------------------------------------------------------------------------------
+    public int getTipo(int i) {
+        return this.losBytes[posicion(i)] & 0xFF;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el valor de la medición i (entero de 16 bits con signo)
+    // -------------------------------------------------------------------------------
+    public int getValor(int i) {
+        int p = posicion(i);
+        return (short) (((this.losBytes[p + 1] & 0xFF) << 8) | (this.losBytes[p + 2] & 0xFF));
+    }
+
+    // Posición en losBytes de la medición i
+    private int posicion(int i) {
+        if (i < 0 || i >= getNumeroMediciones()) {
+            throw new IndexOutOfBoundsException("medición " + i + " de " + getNumeroMediciones());
+        }
+        return this.inicioUUID + POS_MEDICIONES + i * BYTES_MEDICION;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Escribe el UUID de una trama multivalor (lo mismo que hace el Arduino);
+    // se usa en las pruebas
+    // @param uuid - array de 16 bytes donde escribir
+    // @param secuencia - número de secuencia (se guardan los 16 bits bajos)
+    // @param tipos - tipo de cada medición
+    // @param valores - valor de cada medición (16 bits con signo)
+    // -------------------------------------------------------------------------------
+    static void escribirUUID(byte[] uuid, int secuencia, int[] tipos, int[] valores) {
+        if (tipos.length > MAXIMO_MEDICIONES || tipos.length != valores.length) {
+            throw new IllegalArgumentException("como mucho " + MAXIMO_MEDICIONES + " mediciones");
+        }
+        Arrays.fill(uuid, (byte) 0);
+        uuid[0] = FormatoTrama.MARCA_0;
+        uuid[1] = FormatoTrama.MARCA_1;
+        uuid[2] = FormatoTrama.CODIGO_MULTIVALOR;
+        uuid[POS_SECUENCIA] = (byte) (secuencia >> 8);
+        uuid[POS_SECUENCIA + 1] = (byte) secuencia;
+        uuid[POS_NUMERO] = (byte) tipos.length;
+        for (int i = 0; i < tipos.length; i++) {
+            int p = POS_MEDICIONES + i * BYTES_MEDICION;
+            uuid[p] = (byte) tipos[i];
+            uuid[p + 1] = (byte) (valores[i] >> 8);
+            uuid[p + 2] = (byte) valores[i];
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,61 @@
+package com.example.biometria_adenor;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+// -----------------------------------------------------------------------------------
+// Transporte que abre una conexión nueva para cada petición y la cierra con
+// disconnect() al terminar. Es el comportamiento original de PeticionarioREST:
+// cada petición paga el establecimiento TCP y TLS completo.
+// Se conserva como referencia para comparar con TransportePersistente
+// -----------------------------------------------------------------------------------
+public class TransporteConexionNueva implements TransporteHTTP {
+
+    // -------------------------------------------------------------------------------
+    // Hace la petición en una conexión recién abierta y la cierra al final
+    // @param metodo - método HTTP
+    // @param url - URL de destino
+    // @param cuerpo - cuerpo ya codificado (null si no hay)
+    // @param lector - cómo leer el cuerpo de la respuesta
+    // @return respuesta con el código y el cuerpo
+    // @throws IOException si falla la conexión
+    // -------------------------------------------------------------------------------
+    @Override
+    public RespuestaHTTP enviar(String metodo, String url, CuerpoPeticion cuerpo, LectorRespuesta lector) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+            connection.setRequestMethod(metodo);
+            connection.setDoInput(true);
+
+            if (!metodo.equals("GET") && cuerpo != null) {
+                connection.setDoOutput(true);
+                TransportePersistente.ponerCabecerasCuerpo(connection, cuerpo);
+                DataOutputStream dos = new DataOutputStream(connection.getOutputStream());
+                dos.write(cuerpo.getBytes());
+                dos.flush();
+                dos.close();
+            }
+
+            int codigo = connection.getResponseCode();
+
+            String texto = "";
+            try {
+                // El stream no se cierra: disconnect() cierra el socket entero
+                texto = lector.paraCodigo(codigo).leer(connection.getInputStream());
+            } catch (IOException ex) {
+                // Respuesta sin cuerpo o con código de error
+            }
+
+            return new RespuestaHTTP(codigo, texto);
+        } finally {
+            // Cierra el socket: la siguiente petición tendrá que conectar de nuevo
+            connection.disconnect();
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,40 @@
+package com.example.biometria_adenor;
+
+import java.io.IOException;
+
+// -----------------------------------------------------------------------------------
+// Interfaz del transporte que usa PeticionarioREST para hablar con el servidor
+// Permite cambiar cómo se gestionan las conexiones (una nueva por petición,
+// conexiones persistentes reutilizadas, ...) sin tocar a quien hace peticiones
+// -----------------------------------------------------------------------------------
+public interface TransporteHTTP {
+
+    // -------------------------------------------------------------------------------
+    // Hace una petición HTTP y espera la respuesta (bloqueante)
+    // @param metodo - método HTTP (GET, POST, ...)
+    // @param url - URL de destino
+    // @param cuerpo - cuerpo ya codificado (comprimido y/o firmado), null si no hay
+    // @param lector - cómo leer el cuerpo de la respuesta (descartar, prefijo, JSON...)
+    // @return respuesta con el código y lo que el lector conservó del cuerpo
+    // @throws IOException si falla la conexión
+    // -------------------------------------------------------------------------------
+    RespuestaHTTP enviar(String metodo, String url, CuerpoPeticion cuerpo, LectorRespuesta lector) throws IOException;
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, con el cuerpo JSON sin comprimir ni firmar
+    // @param cuerpo - bytes del cuerpo en JSON UTF-8 (null si no hay)
+    // -------------------------------------------------------------------------------
+    default RespuestaHTTP enviar(String metodo, String url, byte[] cuerpo, LectorRespuesta lector) throws IOException {
+        return enviar(metodo, url, CuerpoPeticion.sinCodificar(cuerpo), lector);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, pero conservando el cuerpo completo de la respuesta
+    // -------------------------------------------------------------------------------
+    default RespuestaHTTP enviar(String metodo, String url, byte[] cuerpo) throws IOException {
+        return enviar(metodo, url, cuerpo, LectorRespuesta.COMPLETA);
+    }
+
+} // interface
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
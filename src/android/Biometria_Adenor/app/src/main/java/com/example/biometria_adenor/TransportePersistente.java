@@ -0,0 +1,199 @@
+package com.example.biometria_adenor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// -----------------------------------------------------------------------------------
+// Transporte con conexiones persistentes (HTTP/1.1 keep-alive)
+//
+// HttpURLConnection guarda en un pool las conexiones cuyo cuerpo de respuesta
+// se ha leído entero y cerrado, y las reutiliza para el mismo servidor.
+// Para que eso funcione NO se llama a disconnect() y SIEMPRE se vacía el
+// stream de respuesta (también el de error en respuestas 4xx/5xx).
+// Así solo las primeras peticiones pagan el handshake TCP + TLS.
+//
+// Además permite tener varias peticiones en vuelo a la vez (ventana de
+// concurrencia): cada hilo del ejecutor usa su propia conexión del pool.
+// El PlanificadorSubidas la usa (a través del EnviadorMediciones) para
+// vaciar una cola atrasada con varios lotes en vuelo.
+// La ventana no debería superar el número de conexiones inactivas que el
+// pool guarda por servidor (5 por defecto en Android y en la JVM).
+// -----------------------------------------------------------------------------------
+public class TransportePersistente implements TransporteHTTP {
+
+    // Ventana de concurrencia por defecto (peticiones en vuelo a la vez)
+    public static final int VENTANA_POR_DEFECTO = 4;
+
+    // Tiempo máximo para conectar y para leer (ms)
+    private static final int TIMEOUT_MS = 15_000;
+
+    // Máximo de bytes sobrantes que se leen para poder reutilizar la conexión
+    // Si la respuesta es más grande, sale más barato cerrarla y abrir otra
+    private static final long LIMITE_VACIADO = 64 * 1024;
+
+    // Hilos que hacen las peticiones en paralelo (tantos como la ventana)
+    private final ExecutorService ejecutor;
+
+    // Número de peticiones que pueden estar en vuelo a la vez
+    private final int ventana;
+
+    // -------------------------------------------------------------------------------
+    // Constructor con la ventana por defecto
+    // -------------------------------------------------------------------------------
+    public TransportePersistente() {
+        this(VENTANA_POR_DEFECTO);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Constructor
+    // @param ventana - máximo de peticiones en vuelo a la vez (>= 1)
+    // -------------------------------------------------------------------------------
+    public TransportePersistente(int ventana) {
+        this.ventana = Math.max(1, ventana);
+        this.ejecutor = Executors.newFixedThreadPool(this.ventana);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Devuelve el tamaño de la ventana de concurrencia
+    // -------------------------------------------------------------------------------
+    public int getVentana() {
+        return ventana;
+    }
+
+    // -------------------------------------------------------------------------------
+    // Hace la petición en el hilo que llama, reutilizando conexión si hay una libre
+    // @param metodo - método HTTP
+    // @param url - URL de destino
+    // @param cuerpo - cuerpo ya codificado (null si no hay)
+    // @param lector - cómo leer el cuerpo de la respuesta
+    // @return respuesta con el código y lo que el lector conservó del cuerpo
+    // @throws IOException si falla la conexión
+    // -------------------------------------------------------------------------------
+    @Override
+    public RespuestaHTTP enviar(String metodo, String url, CuerpoPeticion cuerpo, LectorRespuesta lector) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MS);
+        connection.setReadTimeout(TIMEOUT_MS);
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setRequestMethod(metodo);
+        connection.setDoInput(true);
+
+        if (!metodo.equals("GET") && cuerpo != null) {
+            connection.setDoOutput(true);
+            ponerCabecerasCuerpo(connection, cuerpo);
+            // Sin modo streaming: cabeceras y cuerpo (pequeño) salen en un solo
+            // envío, evitando la espera de Nagle + ACK retardado entre ambos
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(cuerpo.getBytes());
+            }
+        }
+
+        int codigo;
+        try {
+            codigo = connection.getResponseCode();
+        } catch (IOException ex) {
+            // Si la conexión reutilizada estaba muerta, no se puede devolver al pool
+            connection.disconnect();
+            throw ex;
+        }
+
+        // Las respuestas de error traen su cuerpo en el error stream
+        InputStream is = codigo >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        return new RespuestaHTTP(codigo, leerYCerrar(connection, is, lector.paraCodigo(codigo)));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lanza la petición en la ventana de concurrencia sin esperar a la respuesta
+    // Si ya hay "ventana" peticiones en vuelo, esta espera turno en la cola
+    // @param metodo - método HTTP
+    // @param url - URL de destino
+    // @param cuerpo - cuerpo ya codificado (null si no hay)
+    // @param lector - cómo leer el cuerpo de la respuesta
+    // @return Future con la respuesta
+    // -------------------------------------------------------------------------------
+    public Future<RespuestaHTTP> enviarAsincrono(String metodo, String url, CuerpoPeticion cuerpo, LectorRespuesta lector) {
+        return enLaVentana(() -> enviar(metodo, url, cuerpo, lector));
+    }
+
+    // -------------------------------------------------------------------------------
+    // Ejecuta en la ventana de concurrencia una tarea que hace peticiones por
+    // este transporte (p. ej. codificar un lote, enviarlo y leer la respuesta)
+    // @param tarea - lo que hay que hacer
+    // @return Future con el resultado de la tarea
+    // -------------------------------------------------------------------------------
+    public <T> Future<T> enLaVentana(Callable<T> tarea) {
+        return this.ejecutor.submit(tarea);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, con el cuerpo JSON sin comprimir ni firmar
+    // -------------------------------------------------------------------------------
+    public Future<RespuestaHTTP> enviarAsincrono(String metodo, String url, byte[] cuerpo, LectorRespuesta lector) {
+        return enviarAsincrono(metodo, url, CuerpoPeticion.sinCodificar(cuerpo), lector);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Igual que el anterior, pero conservando el cuerpo completo de la respuesta
+    // -------------------------------------------------------------------------------
+    public Future<RespuestaHTTP> enviarAsincrono(String metodo, String url, byte[] cuerpo) {
+        return enviarAsincrono(metodo, url, cuerpo, LectorRespuesta.COMPLETA);
+    }
+
+    // -------------------------------------------------------------------------------
+    // Para los hilos de la ventana (las conexiones inactivas las cierra el pool)
+    // -------------------------------------------------------------------------------
+    public void cerrar() {
+        this.ejecutor.shutdown();
+    }
+
+    // -------------------------------------------------------------------------------
+    // Pone las cabeceras que dependen de cómo se codificó el cuerpo
+    // @param connection - conexión aún sin abrir
+    // @param cuerpo - cuerpo codificado
+    // -------------------------------------------------------------------------------
+    static void ponerCabecerasCuerpo(HttpURLConnection connection, CuerpoPeticion cuerpo) {
+        if (cuerpo.getCodificacion() != null) {
+            connection.setRequestProperty("Content-Encoding", cuerpo.getCodificacion());
+        }
+        if (cuerpo.getFirma() != null) {
+            connection.setRequestProperty(CodificadorCuerpo.CABECERA_FIRMA, cuerpo.getFirma());
+        }
+    }
+
+    // -------------------------------------------------------------------------------
+    // Lee el cuerpo con el lector, vacía lo que sobre y cierra el stream
+    // Si lo que sobra es demasiado grande (o el lector falla) se cierra la
+    // conexión en lugar de leerlo todo solo para poder reutilizarla
+    // @param connection - conexión de la respuesta
+    // @param is - stream de la respuesta (puede ser null si no hay cuerpo)
+    // @param lector - cómo leer el cuerpo
+    // @return lo que el lector conservó del cuerpo ("" si no había)
+    // -------------------------------------------------------------------------------
+    private static String leerYCerrar(HttpURLConnection connection, InputStream is,
+                                      LectorRespuesta lector) throws IOException {
+        if (is == null) {
+            return "";
+        }
+        boolean reutilizable = false;
+        try {
+            String texto = lector.leer(is);
+            reutilizable = LectorRespuesta.vaciar(is, LIMITE_VACIADO);
+            return texto;
+        } finally {
+            if (!reutilizable) {
+                connection.disconnect();
+            }
+            is.close();
+        }
+    }
+
+} // class
+// -----------------------------------------------------------------------------------
+// -----------------------------------------------------------------------------------
@@ -0,0 +1,21 @@
+package com.example.biometria_adenor;
+
+import org.junit.Assume;
+
+/**
+ * Las pruebas de rendimiento no van en la ejecución normal de las pruebas
+ * unitarias: se saltan salvo que se pidan con -Pbenchmarks=true (que llega
+ * como la propiedad del sistema "benchmarks", ver app/build.gradle.kts).
+ */
+final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Salta la prueba que lo llama si no se han pedido los benchmarks.
+     */
+    static void soloSiSePiden() {
+        Assume.assumeTrue("benchmark: se ejecuta con -Pbenchmarks=true", Boolean.getBoolean("benchmarks"));
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Calibración: las tablas de las curvas dan lo mismo que las fórmulas de
+ * referencia en los 65536 crudos (los polinomios, salvo el error de
+ * interpolar entre nodos), el registro elige la curva del sensor o la de
+ * fábrica y el valor convertido viaja en el lote como "valor_ing".
+ */
+public class CalibracionTest {
+
+    private static final String SENSOR = "D4:36:39:A1:02:01";
+    private static final String OTRO = "D4:36:39:A1:02:02";
+
+    // Error admitido: el de guardar el valor en float (24 bits de mantisa)
+    // más el de interpolar dentro del segmento
+    private static void assertCerca(double esperado, float obtenido, int crudo, double interpolacion) {
+        double tolerancia = Math.max(1e-6, Math.abs(esperado) * 1e-6) + interpolacion;
+        assertEquals("crudo " + crudo, esperado, obtenido, tolerancia);
+    }
+
+    @Test
+    public void elPolinomioCoincideConLaFormula() {
+        // Curva de un sensor de gas: ppm = 5.2 + 0.91·x + 1.8e-5·x²
+        CurvaCalibracion curva = CurvaCalibracion.polinomio(5.2, 0.91, 1.8e-5);
+        // Error de interpolar: ancho² / 8 por la segunda derivada (2·1.8e-5)
+        double interpolacion = Math.pow(CurvaCalibracion.ANCHO_SEGMENTO, 2) / 8 * 2 * 1.8e-5;
+        for (int x = 0; x <= CurvaCalibracion.MAXIMO_CRUDO; x++) {
+            assertCerca(5.2 + 0.91 * x + 1.8e-5 * x * x, curva.convertir(x), x, interpolacion);
+        }
+        // En los nodos no hay error de interpolación
+        assertEquals(5.2 + 0.91 * 1600 + 1.8e-5 * 1600 * 1600, curva.convertir(1600), 1e-3);
+        // Solo cuentan los 16 bits del minor
+        assertEquals(curva.convertir(400), curva.convertir(0x10000 + 400), 0);
+    }
+
+    @Test
+    public void losTramosCoincidenConLaInterpolacion() {
+        // Termistor: -40 ºC con 0, 125 ºC con 4095 y dos puntos en medio
+        int[] xs = {0, 1000, 2500, 4095};
+        double[] ys = {-40, -10, 25, 125};
+        CurvaCalibracion curva = CurvaCalibracion.tramos(xs, ys);
+        for (int x = 0; x <= CurvaCalibracion.MAXIMO_CRUDO; x++) {
+            double esperado;
+            if (x >= 4095) {
+                esperado = 125;
+            } else {
+                int i = x < 1000 ? 0 : x < 2500 ? 1 : 2;
+                esperado = ys[i] + (ys[i + 1] - ys[i]) * (x - xs[i]) / (xs[i + 1] - xs[i]);
+            }
+            assertCerca(esperado, curva.convertir(x), x, 0);
+            assertEquals(esperado, curva.referencia(x), 1e-9);
+        }
+    }
+
+    @Test
+    public void laTemperaturaDeFabricaEsUnEnteroConSigno() {
+        CurvaCalibracion curva = CurvaCalibracion.enteroConSigno();
+        for (int x = 0; x <= CurvaCalibracion.MAXIMO_CRUDO; x++) {
+            assertEquals("crudo " + x, (short) x, curva.convertir(x), 0);
+        }
+        assertEquals(-12, curva.convertir(65524), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void losTramosTienenQueIrEnOrden() {
+        CurvaCalibracion.tramos(new int[]{100, 50}, new double[]{1, 2});
+    }
+
+    @Test
+    public void elRegistroUsaLaCurvaDelSensorOLaDeFabrica() {
+        RegistroCalibraciones registro = RegistroCalibraciones.conCurvasDeFabrica();
+        assertEquals(400, registro.convertir(SENSOR, 11, 400), 0);
+        assertEquals(-5, registro.convertir(SENSOR, 12, 65531), 0);
+        assertTrue(Float.isNaN(registro.convertir(SENSOR, 13, 400)));
+
+        registro.aplicar(Arrays.asList(
+                new RegistroCalibraciones.Calibracion(SENSOR, 11, CurvaCalibracion.polinomio(-20, 1.1)),
+                new RegistroCalibraciones.Calibracion(OTRO, 11, CurvaCalibracion.polinomio(-20, 1.1))));
+        assertEquals(2, registro.getNumeroSensores());
+        assertEquals(420, registro.convertir(SENSOR, 11, 400), 1e-3);
+        // La temperatura del sensor sigue con la de fábrica
+        assertEquals(21, registro.convertir(SENSOR, 12, 21), 0);
+
+        // Las curvas iguales comparten la tabla, también al volver a aplicarlas
+        CurvaCalibracion otraVez = CurvaCalibracion.polinomio(-20, 1.1);
+        registro.aplicar(Arrays.asList(new RegistroCalibraciones.Calibracion(SENSOR, 11, otraVez)));
+        assertEquals(1, registro.getNumeroSensores());
+        assertEquals(400, registro.convertir(OTRO, 11, 400), 0);
+        assertEquals(420, registro.convertir(SENSOR, 11, 400), 1e-3);
+    }
+
+    @Test
+    public void elLoteLlevaElValorDeIngenieria() {
+        PoolMediciones pool = new PoolMediciones(4);
+        Medicion m = pool.obtener(12, 65524, -12.0f, false, 5_000, ClaveIdempotencia.SIN_CLAVE, -70);
+        BufferJSON buffer = new BufferJSON(16);
+        m.escribirJSON(buffer, 4_000, 0);
+        assertEquals("{\"tipo\": \"temperatura\", \"valor\": 65524, \"valor_ing\": -12, \"dt\": 1000, \"rssi\": -70}",
+                buffer.toString());
+        assertEquals(buffer.toString(), m.aJSON(4_000, 0));
+
+        // Sin calibración no se manda
+        assertFalse(new Medicion(11, 400, false, 5_000).aJSON(4_000, 0).contains("valor_ing"));
+
+        assertEquals("21.5", new BufferJSON(8).escribirDecimal(21.5, 3).toString());
+        assertEquals("-0.125", new BufferJSON(8).escribirDecimal(-0.125, 3).toString());
+        assertEquals("0.002", new BufferJSON(8).escribirDecimal(0.0015, 3).toString());
+        assertEquals("1000", new BufferJSON(8).escribirDecimal(999.9999, 3).toString());
+    }
+
+    @Test
+    public void elActualizadorAplicaElRegistroDelServidor() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            servidor.responder(200, "{\"success\": true, \"calibraciones\": ["
+                    + "{\"sensor\": \"" + SENSOR + "\", \"tipo\": \"gas\", \"polinomio\": [-20, 1.1]},"
+                    + "{\"sensor\": \"" + SENSOR + "\", \"tipo\": \"temperatura\", \"crudos\": [0, 4095], \"valores\": [-40, 125]},"
+                    + "{\"sensor\": \"" + OTRO + "\", \"tipo\": \"humedad\", \"polinomio\": [0, 1]},"
+                    + "{\"sensor\": \"" + OTRO + "\", \"tipo\": \"gas\", \"crudos\": [10, 5], \"valores\": [0, 1]}"
+                    + "], \"total\": 4}");
+            RegistroCalibraciones registro = RegistroCalibraciones.conCurvasDeFabrica();
+            TransportePersistente transporte = new TransportePersistente(1);
+            ActualizadorCalibraciones actualizador = new ActualizadorCalibraciones(
+                    servidor.url("/api/calibraciones"), registro, transporte);
+
+            assertEquals(200, actualizador.actualizar());
+            // Las dos que no valen se saltan
+            assertEquals(1, registro.getNumeroSensores());
+            assertEquals(420, registro.convertir(SENSOR, 11, 400), 1e-3);
+            assertEquals(125, registro.convertir(SENSOR, 12, 4095), 1e-4);
+            assertEquals(400, registro.convertir(OTRO, 11, 400), 0);
+
+            // Una respuesta de error no toca el registro
+            servidor.responder(503, "{\"success\": false}");
+            assertEquals(503, actualizador.actualizar());
+            assertEquals(1, registro.getNumeroSensores());
+            transporte.cerrar();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Clave de idempotencia: la misma lectura da la misma clave en dos móviles
+ * con el reloj distinto (o la vecina, si cae justo en el cambio de ventana) y
+ * en los reintentos, lecturas distintas dan claves distintas y la clave viaja
+ * en el JSON del lote.
+ */
+public class ClaveIdempotenciaTest {
+
+    private static final String SENSOR = "D4:36:39:A1:02:7F";
+
+    @Test
+    public void dosMovilesConElRelojDistintoDanLaMismaClave() {
+        long captura = 1_700_000_012_345L; // hora del servidor
+        // Móvil A adelantado 3 s, móvil B atrasado 1,5 s: cada uno corrige con su desfase
+        Medicion enA = new Medicion(11, 400, false, captura + 3_000, ClaveIdempotencia.semilla(SENSOR, 11, 42));
+        Medicion enB = new Medicion(11, 400, false, captura - 1_500, ClaveIdempotencia.semilla(SENSOR, 11, 42));
+        assertEquals(enA.getClave(-3_000), enB.getClave(1_500));
+        assertNotEquals(ClaveIdempotencia.SIN_CLAVE, enA.getClave(-3_000));
+    }
+
+    @Test
+    public void lecturasDistintasDanClavesDistintas() {
+        long semilla = ClaveIdempotencia.semilla(SENSOR, 11, 42);
+        long t = 1_699_999_980_000L; // principio de una ventana
+        long clave = ClaveIdempotencia.calcular(semilla, t);
+        assertEquals(clave, ClaveIdempotencia.calcular(semilla, t + ClaveIdempotencia.VENTANA_MS - 1));
+        assertNotEquals(clave, ClaveIdempotencia.calcular(semilla, t + ClaveIdempotencia.VENTANA_MS));
+        assertNotEquals(clave, ClaveIdempotencia.calcular(ClaveIdempotencia.semilla(SENSOR, 11, 43), t));
+        assertNotEquals(clave, ClaveIdempotencia.calcular(ClaveIdempotencia.semilla(SENSOR, 12, 42), t));
+        assertNotEquals(clave, ClaveIdempotencia.calcular(ClaveIdempotencia.semilla("D4:36:39:A1:02:80", 11, 42), t));
+
+        // Un día de 50 sensores que miden cada 5 s: ninguna colisión
+        Set<Long> claves = new HashSet<>();
+        int lecturas = 0;
+        for (int s = 0; s < 50; s++) {
+            String sensor = String.format("D4:36:39:A1:02:%02X", s);
+            for (int i = 0; i < 24 * 3600 / 5; i++) {
+                claves.add(ClaveIdempotencia.calcular(ClaveIdempotencia.semilla(sensor, 11, i & 0xFF), t + i * 5_000L));
+                lecturas++;
+            }
+        }
+        assertEquals(lecturas, claves.size());
+    }
+
+    @Test
+    public void laClaveViajaEnElJSONDelLote() {
+        long semilla = ClaveIdempotencia.semilla(SENSOR, 12, 7);
+        Medicion m = new Medicion(12, 21, false, 30_000, semilla);
+        String clave = ClaveIdempotencia.aTexto(ClaveIdempotencia.calcular(semilla, 30_250));
+        assertEquals(16, clave.length());
+        assertEquals("{\"tipo\": \"temperatura\", \"valor\": 21, \"dt\": 250, \"clave\": \"" + clave + "\"}",
+                m.aJSON(30_000, 250));
+
+        BufferJSON buffer = new BufferJSON(16);
+        m.escribirJSON(buffer, 30_000, 250);
+        assertEquals(m.aJSON(30_000, 250), buffer.toString());
+
+        // Sin semilla o sin instante no hay clave
+        assertFalse(new Medicion(12, 21, false, 5_000).aJSON(5_000, 0).contains("clave"));
+        assertFalse(new Medicion(12, 21, false, RelojCaptura.SIN_INSTANTE, semilla).tieneClave());
+    }
+
+    @Test
+    public void losReintentosMandanLaMismaClave() {
+        // Entre el primer envío y el reintento se vuelve a estimar el desfase
+        // y la hora corregida pasa a la ventana siguiente: la clave no cambia
+        long semilla = ClaveIdempotencia.semilla(SENSOR, 11, 9);
+        Medicion m = new Medicion(11, 400, false, 1_699_999_979_000L, semilla);
+        long primera = m.getClave(500);
+        assertEquals(ClaveIdempotencia.calcular(semilla, 1_699_999_979_500L), primera);
+        assertEquals(primera, m.getClave(1_500));
+        assertTrue(m.aJSON(0, 1_500).contains(ClaveIdempotencia.aTexto(primera)));
+    }
+
+    @Test
+    public void enElCambioDeVentanaLlevaLaClaveVecina() {
+        long semilla = ClaveIdempotencia.semilla(SENSOR, 11, 42);
+        long cambio = 1_700_000_040_000L; // principio de una ventana
+        // Móvil A corrige a 30 ms antes del cambio y B a 20 ms después: sus
+        // claves son distintas, pero la vecina de cada uno es la del otro
+        Medicion enA = new Medicion(11, 400, false, cambio - 30, semilla);
+        Medicion enB = new Medicion(11, 400, false, cambio + 20, semilla);
+        assertNotEquals(enA.getClave(0), enB.getClave(0));
+        assertEquals(enA.getClave(0), enB.getClaveVecina(0));
+        assertEquals(enB.getClave(0), enA.getClaveVecina(0));
+
+        // En medio de la ventana no hace falta
+        assertEquals(ClaveIdempotencia.SIN_CLAVE,
+                ClaveIdempotencia.vecina(semilla, cambio + ClaveIdempotencia.VENTANA_MS / 2));
+        assertEquals(ClaveIdempotencia.SIN_CLAVE, ClaveIdempotencia.vecina(semilla, cambio + ClaveIdempotencia.MARGEN_VECINA_MS));
+        assertNotEquals(ClaveIdempotencia.SIN_CLAVE, ClaveIdempotencia.vecina(semilla, cambio - ClaveIdempotencia.MARGEN_VECINA_MS));
+
+        // Y viaja en el lote detrás de la clave
+        String json = enA.aJSON(cambio, 0);
+        assertTrue(json, json.endsWith("\"clave\": \"" + ClaveIdempotencia.aTexto(enA.getClave(0))
+                + "\", \"clave_vecina\": \"" + ClaveIdempotencia.aTexto(enB.getClave(0)) + "\"}"));
+        BufferJSON buffer = new BufferJSON(16);
+        enA.escribirJSON(buffer, cambio, 0);
+        assertEquals(json, buffer.toString());
+    }
+
+    @Test
+    public void unaMedicionReutilizadaNoConservaLaClave() {
+        PoolMediciones pool = new PoolMediciones(1);
+        Medicion m = pool.obtener(11, 400, false, 1_000, ClaveIdempotencia.semilla(SENSOR, 11, 1));
+        assertTrue(m.tieneClave());
+        pool.devolver(m);
+        Medicion otra = pool.obtener(11, 401, false, 2_000);
+        assertSame(m, otra);
+        assertFalse(otra.tieneClave());
+    }
+
+    @Test
+    public void escribeLosHexadecimalesConCeros() {
+        BufferJSON buffer = new BufferJSON(4);
+        buffer.escribirHexadecimal(0xABL).escribir(' ').escribirHexadecimal(-1L);
+        assertEquals("00000000000000ab ffffffffffffffff", buffer.toString());
+        assertEquals("00000000000000ab", ClaveIdempotencia.aTexto(0xABL));
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de la compresión y la firma de los cuerpos de las peticiones.
+ */
+public class CodificadorCuerpoTest {
+
+    private static final byte[] CLAVE = "clave-de-prueba".getBytes(StandardCharsets.UTF_8);
+
+    /** Lote JSON como los que sube la app: {"tipo": ..., "valor": ...} repetido. */
+    static byte[] lote(int mediciones) {
+        StringBuilder sb = new StringBuilder("[");
+        int gas = 130;
+        for (int i = 0; i < mediciones; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            gas += (i * 7919) % 5 - 2;
+            Medicion m = i % 2 == 0 ? new Medicion(11, gas, false) : new Medicion(12, 20 + (i % 3), false);
+            sb.append(m.aJSON());
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] leerTodo(InputStream is) throws IOException {
+        try (InputStream in = is) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    public void gzipSeDescomprimeConLaLibreriaEstandar() throws IOException {
+        byte[] json = lote(50);
+        CuerpoPeticion cuerpo = new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 0, null).codificar(json);
+        assertEquals("gzip", cuerpo.getCodificacion());
+        assertTrue(cuerpo.getBytes().length < json.length / 3);
+        assertArrayEquals(json, leerTodo(new GZIPInputStream(new ByteArrayInputStream(cuerpo.getBytes()))));
+        assertNull(cuerpo.getFirma());
+    }
+
+    @Test
+    public void codificaIgualDesdeUnBufferReutilizado() {
+        // Lo mismo que con el array justo, leyendo solo el principio de uno más grande
+        byte[] json = lote(50);
+        byte[] grande = java.util.Arrays.copyOf(json, json.length + 300);
+        java.util.Arrays.fill(grande, json.length, grande.length, (byte) 'x');
+        for (CodificadorCuerpo.Compresion c : CodificadorCuerpo.Compresion.values()) {
+            CodificadorCuerpo codificador = new CodificadorCuerpo(c, 0, CLAVE);
+            CuerpoPeticion esperado = codificador.codificar(json);
+            CuerpoPeticion cuerpo = codificador.codificar(grande, json.length);
+            assertArrayEquals(c.name(), esperado.getBytes(), cuerpo.getBytes());
+            assertEquals(esperado.getCodificacion(), cuerpo.getCodificacion());
+            assertEquals(esperado.getFirma(), cuerpo.getFirma());
+        }
+    }
+
+    @Test
+    public void deflateSeDescomprimeConLaLibreriaEstandar() throws IOException {
+        byte[] json = lote(50);
+        CuerpoPeticion cuerpo = new CodificadorCuerpo(CodificadorCuerpo.Compresion.DEFLATE, 0, null).codificar(json);
+        assertEquals("deflate", cuerpo.getCodificacion());
+        assertArrayEquals(json, leerTodo(new InflaterInputStream(new ByteArrayInputStream(cuerpo.getBytes()))));
+    }
+
+    @Test
+    public void elBufferReutilizadoNoMezclaCuerpos() throws IOException {
+        CodificadorCuerpo codificador = new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 0, null);
+        // Uno grande (hace crecer el buffer) y luego uno pequeño
+        byte[] grande = lote(5000);
+        byte[] pequeno = lote(10);
+        CuerpoPeticion a = codificador.codificar(grande);
+        CuerpoPeticion b = codificador.codificar(pequeno);
+        assertArrayEquals(grande, leerTodo(new GZIPInputStream(new ByteArrayInputStream(a.getBytes()))));
+        assertArrayEquals(pequeno, leerTodo(new GZIPInputStream(new ByteArrayInputStream(b.getBytes()))));
+    }
+
+    @Test
+    public void porDebajoDelUmbralVaSinComprimir() {
+        byte[] json = new Medicion(11, 133, false).aJSON().getBytes(StandardCharsets.UTF_8);
+        CuerpoPeticion cuerpo = new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP,
+                CodificadorCuerpo.UMBRAL_POR_DEFECTO, null).codificar(json);
+        assertNull(cuerpo.getCodificacion());
+        assertSame(json, cuerpo.getBytes());
+    }
+
+    @Test
+    public void siComprimidoNoEsMenorVaSinComprimir() {
+        byte[] json = "{\"a\":1}".getBytes(StandardCharsets.UTF_8);
+        CuerpoPeticion cuerpo = new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 0, null).codificar(json);
+        assertNull(cuerpo.getCodificacion());
+        assertSame(json, cuerpo.getBytes());
+    }
+
+    @Test
+    public void laFirmaCoincideConElVectorDelRFC4231() {
+        // RFC 4231, caso 2
+        CodificadorCuerpo codificador = CodificadorCuerpo.conClave(CodificadorCuerpo.Compresion.NINGUNA, "Jefe");
+        assertEquals("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843",
+                codificador.firmar("what do ya want for nothing?".getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void seFirmanLosBytesComprimidos() {
+        CodificadorCuerpo codificador = new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 0, CLAVE);
+        CuerpoPeticion cuerpo = codificador.codificar(lote(50));
+        assertEquals(codificador.firmar(cuerpo.getBytes()), cuerpo.getFirma());
+        assertEquals(64, cuerpo.getFirma().length());
+    }
+
+    @Test
+    public void elTransporteEnviaLasCabecerasDeCodificacionYFirma() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            TransportePersistente persistente = new TransportePersistente(1);
+            CodificadorCuerpo codificador = new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 0, CLAVE);
+            CuerpoPeticion cuerpo = codificador.codificar(lote(50));
+            assertEquals(201, persistente.enviar("POST", servidor.url("/api/mediciones"), cuerpo,
+                    LectorRespuesta.DESCARTAR).getCodigo());
+
+            String cabeceras = servidor.getUltimasCabeceras().toLowerCase();
+            assertTrue(cabeceras.contains("content-encoding: gzip"));
+            assertTrue(cabeceras.contains("x-firma: " + cuerpo.getFirma()));
+            assertArrayEquals(cuerpo.getBytes(), servidor.getUltimoCuerpo());
+            persistente.cerrar();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bytes que salen por la red y CPU por lote con y sin compresión/firma,
+ * para varios tamaños de lote. Es un benchmark: solo corre con
+ * -Pbenchmarks=true.
+ */
+public class CompresionBenchmarkTest {
+
+    private static final int[] TAMANYOS = {1, 10, 50, 200, 1000};
+    private static final int REPETICIONES = 2000;
+    private static final byte[] CLAVE = "clave-de-prueba".getBytes(java.nio.charset.StandardCharsets.UTF_8);
+
+    @Test
+    public void bytesYCpuPorLote() {
+        Benchmarks.soloSiSePiden();
+        CodificadorCuerpo[] codificadores = {
+                new CodificadorCuerpo(CodificadorCuerpo.Compresion.NINGUNA, 0, CLAVE),
+                new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 0, CLAVE),
+                new CodificadorCuerpo(CodificadorCuerpo.Compresion.DEFLATE, 0, CLAVE),
+                new CodificadorCuerpo(CodificadorCuerpo.Compresion.GZIP, 6, 0, CLAVE),
+        };
+        String[] nombres = {"sin comprimir + hmac", "gzip(1) + hmac", "deflate(1) + hmac", "gzip(6) + hmac"};
+
+        double[] microsLote = new double[codificadores.length];
+        for (int tamanyo : TAMANYOS) {
+            byte[] json = CodificadorCuerpoTest.lote(tamanyo);
+            for (int c = 0; c < codificadores.length; c++) {
+                CodificadorCuerpo codificador = codificadores[c];
+                // Calentamiento para que el JIT no cuente en la medida
+                for (int i = 0; i < REPETICIONES / 4; i++) {
+                    codificador.codificar(json);
+                }
+                int repeticiones = Math.max(50, REPETICIONES * 10 / (tamanyo + 10));
+                int bytesRed = 0;
+                long inicio = System.nanoTime();
+                for (int i = 0; i < repeticiones; i++) {
+                    bytesRed = codificador.codificar(json).getBytes().length;
+                }
+                microsLote[c] = (System.nanoTime() - inicio) / 1000.0 / repeticiones;
+                assertTrue(nombres[c] + " con " + tamanyo, bytesRed <= json.length);
+                // Desde 50 mediciones comprimir deja menos de un tercio
+                if (c > 0 && tamanyo >= 50) {
+                    assertTrue(nombres[c] + " con " + tamanyo + ": " + bytesRed + " de " + json.length,
+                            bytesRed < json.length / 3);
+                }
+            }
+        }
+
+        // Con los lotes grandes el nivel 1 gasta menos CPU que el 6 (por eso es
+        // el de la app)
+        assertTrue("gzip(1) " + microsLote[1] + " us, gzip(6) " + microsLote[3] + " us",
+                microsLote[1] <= microsLote[3]);
+
+        // Un lote de 50 mediciones tiene que quedarse en menos de un tercio comprimido
+        byte[] lote50 = CodificadorCuerpoTest.lote(50);
+        assertTrue(codificadores[1].codificar(lote50).getBytes().length < lote50.length / 3);
+    }
+}
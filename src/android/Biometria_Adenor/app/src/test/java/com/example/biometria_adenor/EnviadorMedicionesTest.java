@@ -0,0 +1,112 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * El enviador sube cada lote en una sola petición al endpoint de lotes.
+ */
+public class EnviadorMedicionesTest {
+
+    private static List<Medicion> lote(int n) {
+        List<Medicion> lote = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            lote.add(new Medicion(i % 2 == 0 ? 11 : 12, 100 + i, false));
+        }
+        return lote;
+    }
+
+    @Test
+    public void elLoteSaleEnUnaSolaPeticion() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            TransportePersistente transporte = new TransportePersistente(1);
+            EnviadorMediciones enviador = new EnviadorMediciones(servidor.url("/api/mediciones/lote"), transporte);
+
+            assertEquals(201, enviador.enviar(lote(50)));
+            assertEquals(1, servidor.getPeticiones());
+
+            String cuerpo = new String(servidor.getUltimoCuerpo(), StandardCharsets.UTF_8);
+            assertTrue(cuerpo.startsWith("{\"mediciones\": [{\"tipo\": \"gas\", \"valor\": 100}, "));
+            assertTrue(cuerpo.endsWith("{\"tipo\": \"temperatura\", \"valor\": 149}]}"));
+            transporte.cerrar();
+        }
+    }
+
+    @Test
+    public void unLoteConRechazadasSeDaPorEnviado() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            servidor.responder(207, "{\"success\": true, \"guardadas\": 9, \"rechazadas\": 1, \"resultados\": []}");
+            TransportePersistente transporte = new TransportePersistente(1);
+            EnviadorMediciones enviador = new EnviadorMediciones(servidor.url("/api/mediciones/lote"), transporte);
+
+            // 207 es 2xx: el planificador no lo reintenta
+            assertEquals(207, enviador.enviar(lote(10)));
+            transporte.cerrar();
+        }
+    }
+
+    @Test
+    public void unaPaginaDeErrorNoSeConfundeConUnFalloDeRed() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            TransportePersistente transporte = new TransportePersistente(1);
+            EnviadorMediciones enviador = new EnviadorMediciones(servidor.url("/api/mediciones/lote"), transporte);
+
+            // El cuerpo de los errores no se decodifica: decide el código
+            servidor.responder(502, "<html><body><h1>502 Bad Gateway</h1></body></html>");
+            assertEquals(502, enviador.enviar(lote(10)));
+            servidor.responder(400, "<html>Bad Request</html>");
+            assertEquals(400, enviador.enviar(lote(10)));
+
+            // Y la conexión sigue valiendo para el siguiente lote
+            servidor.responder(201, "{\"success\": true}");
+            assertEquals(201, enviador.enviar(lote(10)));
+            transporte.cerrar();
+        }
+    }
+
+    @Test
+    public void unLoteGrandeSeComprimeYSeFirma() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            TransportePersistente transporte = new TransportePersistente(1);
+            CodificadorCuerpo codificador = CodificadorCuerpo.conClave(CodificadorCuerpo.Compresion.GZIP, "k");
+            EnviadorMediciones enviador = new EnviadorMediciones(servidor.url("/api/mediciones/lote"),
+                    transporte, codificador);
+
+            assertEquals(201, enviador.enviar(lote(50)));
+            String cabeceras = servidor.getUltimasCabeceras().toLowerCase();
+            assertTrue(cabeceras.contains("content-encoding: gzip"));
+            assertTrue(cabeceras.contains("x-firma: " + codificador.firmar(servidor.getUltimoCuerpo())));
+            transporte.cerrar();
+        }
+    }
+
+    @Test
+    public void elPlanificadorVaciaUnaColaAtrasadaPorLaVentana() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            TransportePersistente transporte = new TransportePersistente(4);
+            EnviadorMediciones enviador = new EnviadorMediciones(servidor.url("/api/mediciones/lote"), transporte);
+            RelojVirtual reloj = new RelojVirtual(1_000);
+            PlanificadorSubidas planificador = new PlanificadorSubidas(enviador, reloj, () -> true,
+                    new InterruptorCircuito(3, 60_000), new Random(42));
+            for (Medicion m : lote(450)) {
+                planificador.encolar(m);
+            }
+
+            // Dos intervalos de radio: 4 lotes de 50 en cada uno, por 4 conexiones como mucho
+            reloj.avanzar(29_000);
+            planificador.procesar();
+            reloj.avanzar(30_000);
+            planificador.procesar();
+            assertEquals(8, servidor.getPeticiones());
+            assertEquals(50, planificador.getNumeroPendientes());
+            assertTrue("conexiones = " + servidor.getConexiones(), servidor.getConexiones() <= 4);
+            transporte.cerrar();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.biometria_adenor;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Cuenta los bytes que se reservan en el camino de cada trama, desde que
+ * llega al motor de escaneo hasta que su medición sale en un lote: con la
+ * reserva de mediciones y los huecos del motor, en marcha normal no debería
+ * crearse casi nada (solo lo que pide esperar en una cola vacía). Es un
+ * benchmark: solo corre con -Pbenchmarks=true.
+ */
+public class IngestaSinAsignacionesTest {
+
+    private static final int SENSORES = 200;
+    private static final int RONDAS_CALENTAMIENTO = 400;
+    private static final int RONDAS = 500;
+
+    // Bytes reservados de media por trama que se admiten
+    private static final double MAXIMO_BYTES_POR_TRAMA = 8;
+
+    private static com.sun.management.ThreadMXBean medidor() {
+        java.lang.management.ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(hilos instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean medidor = (com.sun.management.ThreadMXBean) hilos;
+        Assume.assumeTrue(medidor.isThreadAllocatedMemorySupported());
+        medidor.setThreadAllocatedMemoryEnabled(true);
+        return medidor;
+    }
+
+    // Enviador que escribe cada lote en su buffer, como EnviadorMediciones
+    static class EnviadorEnBuffer implements PlanificadorSubidas.Enviador {
+        final BufferJSON buffer = new BufferJSON(4096);
+        long bytes = 0;
+        long mediciones = 0;
+
+        @Override
+        public int enviar(List<Medicion> lote) {
+            EnviadorMediciones.escribirLote(lote, 250, this.buffer.reiniciar());
+            this.bytes += this.buffer.getLongitud();
+            this.mediciones += lote.size();
+            return 201;
+        }
+    }
+
+    private static volatile long hiloTrabajador = -1;
+
+    @Test
+    public void delEscaneoALaColaDeSubidasCasiSinReservar() throws Exception {
+        Benchmarks.soloSiSePiden();
+        com.sun.management.ThreadMXBean medidor = medidor();
+
+        RelojVirtual reloj = new RelojVirtual(1_000);
+        EnviadorEnBuffer enviador = new EnviadorEnBuffer();
+        PlanificadorSubidas planificador = new PlanificadorSubidas(enviador, reloj, () -> true,
+                new InterruptorCircuito(3, 60_000), new Random(3));
+        planificador.configurar(1_000, 1_000, 16_000, PlanificadorSubidas.MAXIMO_LOTE,
+                PlanificadorSubidas.MAXIMO_PENDIENTES);
+        PoolMediciones pool = new PoolMediciones();
+        planificador.usarPool(pool);
+
+        MotorEscaneo motor = new MotorEscaneo(1, (sensor, tipo, contador, valor, rssi, instante) -> {
+            hiloTrabajador = Thread.currentThread().getId();
+            Logica.encolarMedicion(sensor, tipo, contador, valor, rssi, instante, planificador, pool);
+        }, reloj, MotorEscaneo.SIN_RSSI_MINIMO);
+
+        // Tramas y direcciones ya construidas: lo que crea Android al recibir
+        // (ScanRecord, getAddress) no depende de nosotros
+        String[] sensores = new String[SENSORES];
+        for (int s = 0; s < SENSORES; s++) {
+            sensores[s] = MotorEscaneoTest.sensor(s);
+        }
+        byte[][] tramas = new byte[256][];
+        for (int c = 0; c < 256; c++) {
+            tramas[c] = MotorEscaneoTest.clasica(c % 2 == 0 ? 11 : 12, c, 400 + c);
+        }
+
+        ronda(motor, planificador, reloj, sensores, tramas, 0, RONDAS_CALENTAMIENTO);
+        long hilo = Thread.currentThread().getId();
+        long trabajador = hiloTrabajador;
+        long antesProductor = medidor.getThreadAllocatedBytes(hilo);
+        long antesTrabajador = medidor.getThreadAllocatedBytes(trabajador);
+        long entregadasAntes = enviador.mediciones;
+
+        ronda(motor, planificador, reloj, sensores, tramas, RONDAS_CALENTAMIENTO, RONDAS);
+
+        long productor = medidor.getThreadAllocatedBytes(hilo) - antesProductor;
+        long delTrabajador = medidor.getThreadAllocatedBytes(trabajador) - antesTrabajador;
+        motor.detener();
+
+        long tramasMedidas = (long) SENSORES * RONDAS;
+        double porTrama = (double) (productor + delTrabajador) / tramasMedidas;
+
+        assertEquals(tramasMedidas, enviador.mediciones - entregadasAntes);
+        assertTrue("bytes por trama: " + porTrama + " (productor " + productor
+                + ", trabajador " + delTrabajador + ")", porTrama < MAXIMO_BYTES_POR_TRAMA);
+        // La reserva solo crea mediciones al principio, luego se reutilizan
+        assertTrue("creadas: " + pool.getCreadas(), pool.getCreadas() <= PoolMediciones.CAPACIDAD_POR_DEFECTO);
+        assertTrue(pool.getReutilizadas() >= tramasMedidas);
+    }
+
+    // Cada ronda: una trama nueva por sensor y luego se sube todo lo pendiente
+    private static void ronda(MotorEscaneo motor, PlanificadorSubidas planificador, RelojVirtual reloj,
+                              String[] sensores, byte[][] tramas, int primera, int rondas) throws Exception {
+        for (int r = primera; r < primera + rondas; r++) {
+            byte[] trama = tramas[r & 0xFF];
+            for (String sensor : sensores) {
+                while (!motor.recibir(sensor, -60, trama, r)) {
+                    Thread.yield();
+                }
+            }
+            assertTrue(motor.vaciar(10_000));
+            while (planificador.getNumeroPendientes() > 0) {
+                reloj.avanzar(1_000);
+                planificador.procesar();
+            }
+        }
+    }
+}
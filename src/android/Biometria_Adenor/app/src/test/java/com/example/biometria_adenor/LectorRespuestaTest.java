@@ -0,0 +1,130 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas de los lectores de respuesta y del decodificador JSON al vuelo.
+ */
+public class LectorRespuestaTest {
+
+    private static final byte[] CUERPO = "{\"tipo\": \"gas\", \"valor\": 133}".getBytes(StandardCharsets.UTF_8);
+
+    /** Stream que entrega de uno en uno los bytes, para cortar caracteres UTF-8 por la mitad. */
+    private static InputStream aGotas(String texto) {
+        return new ByteArrayInputStream(texto.getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+    }
+
+    /** Manejador que escribe los eventos en un texto para compararlo. */
+    private static class Traza implements DecodificadorJSON.Manejador {
+        final StringBuilder sb = new StringBuilder();
+        public void inicioObjeto() { sb.append('{'); }
+        public void finObjeto() { sb.append('}'); }
+        public void inicioArray() { sb.append('['); }
+        public void finArray() { sb.append(']'); }
+        public void clave(CharSequence nombre) { sb.append(nombre).append(':'); }
+        public void texto(CharSequence valor) { sb.append('"').append(valor).append("\" "); }
+        public void numero(double valor) { sb.append(valor).append(' '); }
+        public void booleano(boolean valor) { sb.append(valor).append(' '); }
+        public void nulo() { sb.append("null "); }
+    }
+
+    @Test
+    public void elDecodificadorAvisaDeTodosLosEventos() throws IOException {
+        Traza traza = new Traza();
+        String json = "{\"success\": true, \"id\": 42, \"v\": -1.5e2, \"x\": null,"
+                + " \"l\": [1, \"a\\n\\\"b\\u00e1\"], \"o\": {}}";
+        DecodificadorJSON.delHilo().decodificar(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), traza);
+        assertEquals("{success:true id:42.0 v:-150.0 x:null l:[1.0 \"a\n\"bá\" ]o:{}}", traza.sb.toString());
+    }
+
+    @Test
+    public void losCaracteresMultibyteSobrevivenAlCorteDelBuffer() throws IOException {
+        Traza traza = new Traza();
+        DecodificadorJSON.delHilo().decodificar(aGotas("{\"error\": \"Medición inválida 🌡\"}"), traza);
+        assertEquals("{error:\"Medición inválida 🌡\" }", traza.sb.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void unJSONMalFormadoLanzaExcepcion() throws IOException {
+        DecodificadorJSON.delHilo().decodificar(
+                new ByteArrayInputStream("{\"a\" 1}".getBytes(StandardCharsets.UTF_8)), new Traza());
+    }
+
+    @Test
+    public void elPrefijoNoPasaDelLimite() throws IOException {
+        StringBuilder largo = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            largo.append('x');
+        }
+        InputStream is = aGotas(largo.toString());
+        assertEquals(100, LectorRespuesta.prefijo(100).leer(is).length());
+        assertEquals(10_000, LectorRespuesta.COMPLETA.leer(aGotas(largo.toString())).length());
+        assertEquals("", LectorRespuesta.DESCARTAR.leer(aGotas(largo.toString())));
+    }
+
+    @Test
+    public void laConexionSeReutilizaTrasLeerSoloElPrincipio() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            // 8 KB: se lee el prefijo y el resto se vacía para reutilizar la conexión
+            servidor.responder(500, "{\"error\": \"" + "x".repeat(8 * 1024) + "\"}");
+            TransportePersistente persistente = new TransportePersistente(1);
+            for (int i = 0; i < 20; i++) {
+                RespuestaHTTP r = persistente.enviar("POST", servidor.url("/api/medicion"), CUERPO,
+                        LectorRespuesta.prefijo(16));
+                assertEquals(500, r.getCodigo());
+                assertEquals("{\"error\": \"xxxxx", r.getCuerpo());
+            }
+            assertTrue("conexiones = " + servidor.getConexiones(), servidor.getConexiones() <= 2);
+            persistente.cerrar();
+        }
+    }
+
+    @Test
+    public void unaRespuestaEnormeCierraLaConexionEnVezDeLeerla() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            servidor.responder(200, "[" + "1,".repeat(512 * 1024) + "1]");
+            TransportePersistente persistente = new TransportePersistente(1);
+            for (int i = 0; i < 3; i++) {
+                RespuestaHTTP r = persistente.enviar("GET", servidor.url("/api/mediciones"), (CuerpoPeticion) null,
+                        LectorRespuesta.DESCARTAR);
+                assertEquals(200, r.getCodigo());
+            }
+            // Cada respuesta de 1 MB supera el límite de vaciado: una conexión por petición
+            assertEquals(3, servidor.getConexiones());
+            persistente.cerrar();
+        }
+    }
+
+    @Test
+    public void elLectorJSONNoConstruyeElCuerpo() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            servidor.responder(201, "{\"success\": true, \"id\": 7}");
+            TransportePersistente persistente = new TransportePersistente(1);
+            final double[] id = {0};
+            RespuestaHTTP r = persistente.enviar("POST", servidor.url("/api/medicion"), CUERPO,
+                    LectorRespuesta.json(new DecodificadorJSON.Manejador() {
+                        @Override
+                        public void numero(double valor) {
+                            id[0] = valor;
+                        }
+                    }));
+            assertEquals(201, r.getCodigo());
+            assertEquals("", r.getCuerpo());
+            assertEquals(7.0, id[0], 0.0);
+            persistente.cerrar();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Arranque: cada hito se anota una sola vez contado desde el inicio del
+ * proceso, la primera lectura la marca el destino del motor y el
+ * calentamiento pasa los tres formatos sin entregar nada (y se deja si
+ * empieza el escaneo).
+ */
+public class MedidorArranqueTest {
+
+    @Test
+    public void cadaHitoSeAnotaUnaVez() {
+        RelojVirtual reloj = new RelojVirtual(10_000);
+        MedidorArranque medidor = new MedidorArranque(reloj, 9_900);
+
+        assertEquals(MedidorArranque.SIN_MARCA, medidor.getTiempoPrimerFotograma());
+        reloj.avanzar(150);
+        assertTrue(medidor.anotar(MedidorArranque.Hito.PRIMER_FOTOGRAMA));
+        reloj.avanzar(500);
+        assertFalse(medidor.anotar(MedidorArranque.Hito.PRIMER_FOTOGRAMA));
+        assertEquals(250, medidor.getTiempoPrimerFotograma());
+        assertEquals("Arranque: fotograma=250ms listo=- escaneo=- lectura=-", medidor.resumen());
+    }
+
+    @Test
+    public void laPrimeraLecturaLaMarcaElDestino() {
+        RelojVirtual reloj = new RelojVirtual(1_000);
+        MedidorArranque medidor = new MedidorArranque(reloj, 1_000);
+        List<Integer> entregados = new ArrayList<>();
+        MotorEscaneo.Destino destino = medidor.observar((s, t, c, v, r, i) -> entregados.add(v));
+
+        reloj.avanzar(2_000);
+        medidor.anotar(MedidorArranque.Hito.ESCANEO);
+        reloj.avanzar(700);
+        destino.entregar("D4:36:39:A1:02:01", 11, 1, 400, -70, 0);
+        reloj.avanzar(1_000);
+        destino.entregar("D4:36:39:A1:02:01", 11, 2, 410, -70, 0);
+
+        assertEquals(2, entregados.size());
+        assertEquals(2_700, medidor.getTiempoPrimeraLectura());
+        assertTrue(medidor.resumen().endsWith("escaneo=2000ms lectura=2700ms (700ms tras escanear)"));
+    }
+
+    @Test
+    public void elCalentamientoPasaLosTresFormatos() throws Exception {
+        MotorEscaneo.Estadisticas estadisticas = CalentadorEscaneo.calentar(200);
+        assertEquals(CalentadorEscaneo.SENSORES, estadisticas.sensores);
+        assertEquals(3 * 200, estadisticas.tramas);
+        assertEquals(0, estadisticas.descartadasCola);
+        // Gas de la clásica, gas y temperatura de la multivalor y las muestras de deltas
+        assertTrue(estadisticas.entregadas > 3 * 200);
+    }
+
+    @Test
+    public void elCalentamientoSeDejaSiEmpiezaElEscaneo() throws Exception {
+        MotorEscaneo.Estadisticas estadisticas = CalentadorEscaneo.calentar(200, new AtomicBoolean(true));
+        assertEquals(0, estadisticas.tramas);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tramas por segundo que procesa el motor de escaneo con 10, 100 y 1000
+ * sensores simulados y distinto número de trabajadores. Cada sensor manda
+ * tramas clásicas, multivalor y de deltas, cada una repetida varias veces
+ * (como hace el beacon mientras anuncia). Es un benchmark: solo corre con
+ * -Pbenchmarks=true y el mínimo de tramas por segundo es holgado.
+ */
+public class MotorEscaneoBenchmarkTest {
+
+    private static final int[] SENSORES = {10, 100, 1000};
+    private static final int TRAMAS = 400_000;
+    private static final int REPETICIONES_TRAMA = 4;
+
+    // Tramas por segundo por debajo de las cuales algo va mal (un móvil recibe
+    // unos cientos por segundo)
+    private static final double MINIMO_TRAMAS_POR_SEGUNDO = 10_000;
+
+    // Tramas ya construidas para no medir su creación
+    private static byte[][] tramasDe(int sensor, int rondas) {
+        byte[][] tramas = new byte[rondas][];
+        int[] metidas = new int[1];
+        for (int r = 0; r < rondas; r++) {
+            int contador = (r + 1) & 0xFF;
+            switch (r % 3) {
+                case 0:
+                    tramas[r] = MotorEscaneoTest.clasica(11, contador, 400 + sensor % 50 + r % 7);
+                    break;
+                case 1:
+                    tramas[r] = TramaMultivalorTest.anuncioMultivalor(r + 1, new int[]{11, 12}, new int[]{400 + r % 9, 210});
+                    break;
+                default:
+                    tramas[r] = TramaDeltasTest.anuncioDeltas(12, contador, 30,
+                            new int[]{210, 211, 211, 212, 210, 209}, metidas);
+                    break;
+            }
+        }
+        return tramas;
+    }
+
+    @Test
+    public void tramasPorSegundo() throws Exception {
+        Benchmarks.soloSiSePiden();
+        int[] trabajadores = {1, 2, 4};
+
+        for (int sensores : SENSORES) {
+            int rondas = Math.max(3, TRAMAS / (sensores * REPETICIONES_TRAMA));
+            String[] direcciones = new String[sensores];
+            byte[][][] tramas = new byte[sensores][][];
+            for (int s = 0; s < sensores; s++) {
+                direcciones[s] = MotorEscaneoTest.sensor(s);
+                tramas[s] = tramasDe(s, rondas);
+            }
+            int total = sensores * rondas * REPETICIONES_TRAMA;
+
+            for (int n : trabajadores) {
+                AtomicLong entregadas = new AtomicLong();
+                MotorEscaneo motor = new MotorEscaneo(n, (s, t, c, v, r, i) -> entregadas.incrementAndGet(),
+                        new RelojVirtual(0), MotorEscaneo.SIN_RSSI_MINIMO);
+
+                // Calentamiento con otros sensores para que el JIT no cuente
+                for (int i = 0; i < 20_000; i++) {
+                    while (!motor.recibir("calentamiento-" + (i % 64), -60, tramas[0][i % rondas], 0)) {
+                        Thread.yield();
+                    }
+                }
+                assertTrue(motor.vaciar(30_000));
+                long entregadasAntes = entregadas.get();
+                long duplicadasAntes = motor.getEstadisticas().duplicadas;
+
+                long inicio = System.nanoTime();
+                for (int r = 0; r < rondas; r++) {
+                    for (int s = 0; s < sensores; s++) {
+                        for (int k = 0; k < REPETICIONES_TRAMA; k++) {
+                            // Si la cola está llena se reintenta: aquí se mide cuánto aguanta el motor
+                            while (!motor.recibir(direcciones[s], -60, tramas[s][r], r)) {
+                                Thread.yield();
+                            }
+                        }
+                    }
+                }
+                assertTrue(motor.vaciar(60_000));
+                double segundos = (System.nanoTime() - inicio) / 1e9;
+                MotorEscaneo.Estadisticas est = motor.getEstadisticas();
+                motor.detener();
+
+                long entregadasAhora = entregadas.get() - entregadasAntes;
+                long duplicadas = est.duplicadas - duplicadasAntes;
+                String caso = sensores + " sensores, " + n + " trabajadores";
+
+                // Todas las tramas procesadas y las repetidas descartadas
+                assertTrue(caso + ": " + (total / segundos) + " tramas/s",
+                        total / segundos >= MINIMO_TRAMAS_POR_SEGUNDO);
+                assertTrue(caso, entregadasAhora > 0);
+                assertTrue(caso + ": " + duplicadas + " duplicadas", duplicadas >= (long) sensores * rondas * (REPETICIONES_TRAMA - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Motor de escaneo: reparto de sensores entre trabajadores, duplicados,
+ * orden por sensor, filtro de RSSI, agregados y los tres formatos de trama.
+ */
+public class MotorEscaneoTest {
+
+    private static final byte[] UUID_CLASICO = "EPSG-GTI-PROY-3A".getBytes();
+
+    // Medición entregada por el motor
+    static final class Entrega {
+        final String sensor;
+        final int tipo, valor;
+        final long instante;
+        final String hilo;
+
+        Entrega(String sensor, int tipo, int valor, long instante) {
+            this.sensor = sensor;
+            this.tipo = tipo;
+            this.valor = valor;
+            this.instante = instante;
+            this.hilo = Thread.currentThread().getName();
+        }
+    }
+
+    static byte[] clasica(int tipo, int contador, int valor) {
+        return TramaMultivalorTest.anuncio(UUID_CLASICO, (tipo << 8) | contador, valor);
+    }
+
+    static String sensor(int i) {
+        return String.format("C0:FF:EE:%02X:%02X:%02X", (i >> 16) & 0xFF, (i >> 8) & 0xFF, i & 0xFF);
+    }
+
+    @Test
+    public void cadaSensorCaeSiempreEnElMismoTrabajador() {
+        int[] porTrabajador = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            int f = MotorEscaneo.fragmento(sensor(i), 4);
+            assertEquals(f, MotorEscaneo.fragmento(sensor(i), 4));
+            porTrabajador[f]++;
+        }
+        // Reparto razonable: ningún trabajador con menos de la mitad de lo justo
+        for (int n : porTrabajador) {
+            assertTrue("reparto " + java.util.Arrays.toString(porTrabajador), n > 125);
+        }
+    }
+
+    @Test
+    public void entregaUnaVezCadaMedicionYEnOrdenPorSensor() throws Exception {
+        ConcurrentLinkedQueue<Entrega> entregas = new ConcurrentLinkedQueue<>();
+        MotorEscaneo motor = new MotorEscaneo(4, (s, t, c, v, r, i) -> entregas.add(new Entrega(s, t, v, i)),
+                new RelojVirtual(0), MotorEscaneo.SIN_RSSI_MINIMO);
+        int sensores = 200;
+        int rondas = 20;
+        for (int r = 1; r <= rondas; r++) {
+            for (int s = 0; s < sensores; s++) {
+                byte[] trama = clasica(11, r, s * 100 + r);
+                motor.recibir(sensor(s), -60, trama, r);
+                motor.recibir(sensor(s), -60, trama, r); // repetida
+            }
+        }
+        assertTrue(motor.vaciar(10_000));
+
+        assertEquals(sensores * rondas, entregas.size());
+        ConcurrentHashMap<String, Integer> ultimo = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, String> hiloDe = new ConcurrentHashMap<>();
+        for (Entrega e : entregas) {
+            int anterior = ultimo.getOrDefault(e.sensor, 0);
+            assertTrue("orden de " + e.sensor, e.valor % 100 > anterior);
+            ultimo.put(e.sensor, e.valor % 100);
+            // Un sensor siempre lo procesa el mismo hilo
+            assertEquals(e.hilo, hiloDe.computeIfAbsent(e.sensor, k -> e.hilo));
+        }
+        MotorEscaneo.Estadisticas est = motor.getEstadisticas();
+        assertEquals(sensores, est.sensores);
+        assertEquals(2L * sensores * rondas, est.tramas);
+        assertEquals((long) sensores * rondas, est.duplicadas);
+        assertEquals((long) sensores * rondas, est.entregadas);
+        motor.detener();
+    }
+
+    @Test
+    public void variosHilosRecibiendoALaVez() throws Exception {
+        AtomicInteger entregadas = new AtomicInteger();
+        MotorEscaneo motor = new MotorEscaneo(3, (s, t, c, v, r, i) -> entregadas.incrementAndGet(),
+                new RelojVirtual(0), MotorEscaneo.SIN_RSSI_MINIMO);
+        // Cada productor lleva sus propios sensores (como distintas radios)
+        List<Thread> productores = new ArrayList<>();
+        for (int p = 0; p < 4; p++) {
+            final int base = p * 50;
+            Thread hilo = new Thread(() -> {
+                for (int r = 1; r <= 50; r++) {
+                    for (int s = base; s < base + 50; s++) {
+                        while (!motor.recibir(sensor(s), -70, clasica(12, r, r), r)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            productores.add(hilo);
+            hilo.start();
+        }
+        for (Thread hilo : productores) {
+            hilo.join();
+        }
+        assertTrue(motor.vaciar(10_000));
+        assertEquals(4 * 50 * 50, entregadas.get());
+        motor.detener();
+    }
+
+    @Test
+    public void filtraPorRssiYLlevaAgregados() throws Exception {
+        List<Entrega> entregas = Collections.synchronizedList(new ArrayList<>());
+        MotorEscaneo motor = new MotorEscaneo(2, (s, t, c, v, r, i) -> entregas.add(new Entrega(s, t, v, i)),
+                new RelojVirtual(0), -85);
+        String cerca = sensor(1);
+        String lejos = sensor(2);
+        int[] valores = {400, 420, 380, 410};
+        for (int r = 0; r < valores.length; r++) {
+            motor.recibir(cerca, -60, clasica(11, r + 1, valores[r]), r);
+            motor.recibir(lejos, -95, clasica(11, r + 1, valores[r]), r);
+        }
+        // Un pico suelto de RSSI no basta: el filtro lo suaviza
+        motor.recibir(lejos, -60, clasica(11, 9, 999), 9);
+        assertTrue(motor.vaciar(5_000));
+
+        assertEquals(valores.length, entregas.size());
+        for (Entrega e : entregas) {
+            assertEquals(cerca, e.sensor);
+        }
+        MotorEscaneo.ResumenSensor r = motor.getResumen(cerca);
+        assertEquals(4, r.numero[0]);
+        assertEquals(380, r.minimo[0]);
+        assertEquals(420, r.maximo[0]);
+        assertEquals(410, r.ultimo[0]);
+        assertEquals(402.5, r.media[0], 1e-9);
+        assertEquals(-60, r.rssiFiltrado, 1e-9);
+        assertTrue(motor.getResumen(lejos).rssiFiltrado < -85);
+        assertEquals(5, motor.getEstadisticas().descartadasRssi);
+        assertNull(motor.getResumen(sensor(3)));
+        motor.detener();
+    }
+
+    @Test
+    public void entiendeLasTramasMultivalorYDeDeltas() throws Exception {
+        List<Entrega> entregas = Collections.synchronizedList(new ArrayList<>());
+        MotorEscaneo motor = new MotorEscaneo(2, (s, t, c, v, r, i) -> entregas.add(new Entrega(s, t, v, i)),
+                new RelojVirtual(0), MotorEscaneo.SIN_RSSI_MINIMO);
+
+        // Multivalor: gas y temperatura (el ruido, 13, no lo acepta el servidor)
+        byte[] multivalor = TramaMultivalorTest.anuncioMultivalor(5, new int[]{11, 12, 13}, new int[]{450, 215, 70});
+        motor.recibir(sensor(1), -60, multivalor, 1000);
+        motor.recibir(sensor(1), -60, multivalor, 1000);
+
+        // Deltas: 3 muestras cada 30 s, la última capturada en 100000
+        int[] metidas = new int[1];
+        byte[] deltas = TramaDeltasTest.anuncioDeltas(12, 7, 30, new int[]{200, 201, 203}, metidas);
+        motor.recibir(sensor(2), -60, deltas, 100_000);
+        motor.recibir(sensor(2), -60, deltas, 100_500);
+        assertTrue(motor.vaciar(5_000));
+
+        assertEquals(5, entregas.size());
+        List<String> multivalorVisto = new ArrayList<>();
+        List<Long> instantesDeltas = new ArrayList<>();
+        for (Entrega e : entregas) {
+            if (e.sensor.equals(sensor(1))) {
+                multivalorVisto.add(e.tipo + "=" + e.valor);
+            } else {
+                assertEquals(12, e.tipo);
+                instantesDeltas.add(e.instante);
+            }
+        }
+        assertEquals(List.of("11=450", "12=215"), multivalorVisto);
+        assertEquals(List.of(40_000L, 70_000L, 100_000L), instantesDeltas);
+        motor.detener();
+    }
+
+    @Test
+    public void unaTramaDeDiezMuestrasRepetidaSeEntregaUnaVez() throws Exception {
+        List<Entrega> entregas = Collections.synchronizedList(new ArrayList<>());
+        RelojVirtual reloj = new RelojVirtual(0);
+        MotorEscaneo motor = new MotorEscaneo(1, (s, t, c, v, r, i) -> entregas.add(new Entrega(s, t, v, i)),
+                reloj, MotorEscaneo.SIN_RSSI_MINIMO);
+
+        // El beacon repite la trama hasta que mide de nuevo: unas veces seguido
+        // y otras pasado el tiempo de desorden del seguidor
+        int[] metidas = new int[1];
+        byte[] deltas = TramaDeltasTest.anuncioDeltas(12, 40, 30,
+                new int[]{200, 201, 203, 202, 204, 205, 205, 206, 204, 203}, metidas);
+        assertEquals(TramaDeltas.MAXIMO_MUESTRAS, metidas[0]);
+        long[] esperas = {0, 100, 6_000, 30_000, 100};
+        for (long espera : esperas) {
+            reloj.avanzar(espera);
+            motor.recibir(sensor(3), -60, deltas, 300_000);
+            assertTrue(motor.vaciar(5_000));
+        }
+
+        assertEquals(TramaDeltas.MAXIMO_MUESTRAS, entregas.size());
+        assertEquals(esperas.length - 1, motor.getEstadisticas().duplicadas);
+        motor.detener();
+    }
+}
@@ -0,0 +1,267 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+import static com.example.biometria_adenor.PlanificadorEscaneo.Modo;
+import static com.example.biometria_adenor.PlanificadorEscaneo.Plan;
+
+/**
+ * Planificador del escaneo por ventanas, probado con una simulación en reloj
+ * virtual: varios beacons anunciando cada cierto intervalo (con el retardo
+ * aleatorio de BLE y pérdidas) y un escáner que solo oye cuando está
+ * encendido y dentro de las ventanas internas de su modo, como Android.
+ * La tabla completa de objetivos e intervalos (peor tiempo sin oír cada
+ * sensor y ciclo de trabajo) es un benchmark: solo corre con
+ * -Pbenchmarks=true.
+ */
+public class PlanificadorEscaneoTest {
+
+    private static final long CALENTAMIENTO_MS = 2 * 60_000;
+
+    /**
+     * Escáner simulado: oye un anuncio si está encendido y el instante cae en
+     * una ventana interna del modo. Como Android, ignora los arranques que
+     * pasan de 5 en 30 s.
+     */
+    static class EscanerSimulado implements PlanificadorEscaneo.Radio {
+        final RelojVirtual reloj;
+        boolean encendido;
+        Modo modo;
+        long inicio;
+        long tiempoEncendidoMs, tiempoRadioMs;
+        long desde = CALENTAMIENTO_MS;  // desde cuándo se cuenta el ciclo
+        int rechazados;
+        int maximoArranques30s;
+        final ArrayDeque<Long> arranques = new ArrayDeque<>();
+
+        EscanerSimulado(RelojVirtual reloj) {
+            this.reloj = reloj;
+        }
+
+        @Override
+        public void arrancar(Modo modo) {
+            long ahora = reloj.ahoraMillis();
+            while (!arranques.isEmpty() && arranques.peekFirst() <= ahora - 30_000) {
+                arranques.pollFirst();
+            }
+            if (arranques.size() >= 5) {
+                rechazados++;
+                return;
+            }
+            arranques.addLast(ahora);
+            maximoArranques30s = Math.max(maximoArranques30s, arranques.size());
+            this.encendido = true;
+            this.modo = modo;
+            this.inicio = ahora;
+        }
+
+        @Override
+        public void parar() {
+            if (encendido) {
+                anotarTiempo(reloj.ahoraMillis());
+            }
+            encendido = false;
+        }
+
+        // Suma lo encendido desde "desde" (solo cuenta tras el calentamiento)
+        void anotarTiempo(long ahora) {
+            long desdeAqui = Math.max(inicio, desde);
+            if (ahora > desdeAqui) {
+                tiempoEncendidoMs += ahora - desdeAqui;
+                tiempoRadioMs += modo.tiempoRadio(ahora - inicio) - modo.tiempoRadio(desdeAqui - inicio);
+            }
+        }
+
+        boolean oye(long t) {
+            return encendido && (t - inicio) % modo.intervaloMs < modo.ventanaMs;
+        }
+    }
+
+    static class Baliza {
+        final String sensor;
+        long intervaloMs;
+        long proximo;
+        long ultimaOida = -1;
+
+        Baliza(String sensor, long intervaloMs, long primero) {
+            this.sensor = sensor;
+            this.intervaloMs = intervaloMs;
+            this.proximo = primero;
+        }
+    }
+
+    static class Resultado {
+        Plan plan;
+        long huecoMaximo;
+        long huecoP99;
+        double cicloEscaneo;
+        double cicloRadio;
+        EscanerSimulado escaner;
+        PlanificadorEscaneo planificador;
+    }
+
+    /** Simula "duracion" ms; si cambio > 0, a partir de ahí las balizas anuncian cada intervaloNuevo. */
+    static Resultado simular(long objetivo, long intervalo, double perdidas, int numeroBalizas,
+                             SeguidorSecuencias.CalidadEnlace calidad, long duracion,
+                             long cambio, long intervaloNuevo, long semilla) {
+        // SplittableRandom: con Random, el retardo y la pérdida de anuncios
+        // seguidos salen correlacionados y aparecen rachas de pérdidas irreales
+        SplittableRandom azar = new SplittableRandom(semilla);
+        RelojVirtual reloj = new RelojVirtual(0);
+        EscanerSimulado escaner = new EscanerSimulado(reloj);
+        PlanificadorEscaneo planificador = new PlanificadorEscaneo(escaner, reloj, objetivo);
+        planificador.setCalidadEnlace(calidad);
+
+        List<Baliza> balizas = new ArrayList<>();
+        for (int i = 0; i < numeroBalizas; i++) {
+            balizas.add(new Baliza(MotorEscaneoTest.sensor(i), intervalo, azar.nextInt((int) intervalo)));
+        }
+        List<Long> huecos = new ArrayList<>();
+
+        long proximoTick = planificador.empezar();
+        boolean cambiado = false;
+        while (reloj.ahoraMillis() < duracion) {
+            Baliza siguiente = balizas.get(0);
+            for (Baliza b : balizas) {
+                if (b.proximo < siguiente.proximo) {
+                    siguiente = b;
+                }
+            }
+            long t = Math.min(proximoTick, siguiente.proximo);
+            reloj.avanzar(t - reloj.ahoraMillis());
+            if (cambio > 0 && !cambiado && t >= cambio) {
+                cambiado = true;
+                for (Baliza b : balizas) {
+                    b.intervaloMs = intervaloNuevo;
+                }
+            }
+
+            if (t == proximoTick) {
+                long espera = planificador.tick();
+                proximoTick = t + Math.max(1, espera);
+                continue;
+            }
+
+            if (escaner.oye(t) && azar.nextDouble() >= perdidas) {
+                if (siguiente.ultimaOida >= CALENTAMIENTO_MS) {
+                    huecos.add(t - siguiente.ultimaOida);
+                }
+                siguiente.ultimaOida = t;
+                planificador.anotarTrama(siguiente.sensor);
+            }
+            // Retardo aleatorio de BLE entre anuncios: 0..10 ms
+            siguiente.proximo = t + siguiente.intervaloMs + azar.nextInt(11);
+        }
+        // Lo que lleva cada sensor sin oírse al final también cuenta
+        for (Baliza b : balizas) {
+            huecos.add(duracion - b.ultimaOida);
+        }
+        if (escaner.encendido) {
+            escaner.anotarTiempo(duracion);
+        }
+
+        Collections.sort(huecos);
+        Resultado r = new Resultado();
+        r.plan = planificador.getPlan();
+        r.huecoMaximo = huecos.get(huecos.size() - 1);
+        r.huecoP99 = huecos.get((int) (huecos.size() * 0.99));
+        double medido = duracion - CALENTAMIENTO_MS;
+        r.cicloEscaneo = escaner.tiempoEncendidoMs / medido;
+        r.cicloRadio = escaner.tiempoRadioMs / medido;
+        r.escaner = escaner;
+        r.planificador = planificador;
+        return r;
+    }
+
+    @Test
+    public void informeDeFrescuraYCicloDeTrabajo() {
+        Benchmarks.soloSiSePiden();
+        long[] objetivos = {5_000, 10_000, 30_000, 60_000};
+        long[] intervalos = {63, 250, 1_000};
+        for (long intervalo : intervalos) {
+            double cicloAnterior = Double.MAX_VALUE;
+            for (long objetivo : objetivos) {
+                Resultado r = simular(objetivo, intervalo, 0.05, 5, SeguidorSecuencias.CalidadEnlace.BUENA,
+                        30 * 60_000, 0, 0, objetivo + intervalo);
+                String caso = "objetivo " + objetivo + ", anuncio " + intervalo + ": " + r.plan;
+
+                // Nunca se pasa del límite de arranques de Android
+                assertEquals(caso, 0, r.escaner.rechazados);
+                assertTrue(caso, r.escaner.maximoArranques30s <= 5);
+                // Se cumple el objetivo (también el p99) y, cuanto más holgado, menos radio
+                assertTrue(caso, r.plan.cumpleObjetivo);
+                assertTrue(caso + ": peor hueco " + r.huecoMaximo, r.huecoMaximo <= objetivo);
+                assertTrue(caso + ": p99 " + r.huecoP99, r.huecoP99 <= r.huecoMaximo);
+                assertTrue(caso + ": radio " + r.cicloRadio, r.cicloRadio <= cicloAnterior + 1e-9);
+                assertTrue(caso, r.cicloRadio <= r.cicloEscaneo + 1e-9);
+                cicloAnterior = r.cicloRadio;
+            }
+        }
+    }
+
+    @Test
+    public void conObjetivosHolgadosCasiNoEscanea() {
+        Resultado r = simular(30_000, 63, 0.05, 5, SeguidorSecuencias.CalidadEnlace.BUENA,
+                30 * 60_000, 0, 0, 1);
+        assertFalse(r.plan.esContinuo());
+        assertTrue("radio " + r.cicloRadio, r.cicloRadio < 0.02);
+        assertEquals(63, r.planificador.getIntervaloAnuncioMs(MotorEscaneoTest.sensor(0)), 10);
+    }
+
+    @Test
+    public void seAdaptaCuandoCambiaElIntervaloDeAnuncio() {
+        // Los beacons pasan de anunciar cada segundo a cada 63 ms: la ventana se acorta
+        Resultado antes = simular(30_000, 1_000, 0.05, 3, SeguidorSecuencias.CalidadEnlace.BUENA,
+                15 * 60_000, 0, 0, 7);
+        Resultado despues = simular(30_000, 1_000, 0.05, 3, SeguidorSecuencias.CalidadEnlace.BUENA,
+                45 * 60_000, 15 * 60_000, 63, 7);
+        assertTrue(despues.plan.ventanaMs < antes.plan.ventanaMs / 4);
+        assertTrue(despues.huecoMaximo <= 30_000);
+        assertEquals(0, despues.escaner.rechazados);
+    }
+
+    @Test
+    public void eligeElModoMasBaratoQueCumple() {
+        // 5 s con anuncios rápidos: por ventanas habría que arrancar demasiado,
+        // y seguido en bajo consumo la pausa interna es demasiado larga
+        Plan p = PlanificadorEscaneo.planificar(5_000, 63, 3);
+        assertTrue(p.esContinuo());
+        assertEquals(Modo.EQUILIBRADO, p.modo);
+        assertEquals(0.25, p.cicloRadio, 1e-9);
+
+        // 30 s: ventanas cortas y mucho apagado
+        p = PlanificadorEscaneo.planificar(30_000, 63, 3);
+        assertFalse(p.esContinuo());
+        assertTrue(p.ventanaMs < 1_000);
+        assertTrue(p.periodoMs >= PlanificadorEscaneo.PERIODO_MINIMO_MS);
+        assertTrue(p.peorHuecoMs <= 30_000);
+
+        // Imposible (300 ms con anuncios cada segundo): se escanea a tope y se avisa
+        p = PlanificadorEscaneo.planificar(300, 1_000, 3);
+        assertFalse(p.cumpleObjetivo);
+        assertEquals(Modo.BAJA_LATENCIA, p.modo);
+        assertTrue(p.esContinuo());
+    }
+
+    @Test
+    public void conPeorEnlaceVentanasMasLargas() {
+        Plan buena = PlanificadorEscaneo.planificar(30_000, 250,
+                PlanificadorEscaneo.tramasPorVentana(SeguidorSecuencias.CalidadEnlace.BUENA));
+        Plan mala = PlanificadorEscaneo.planificar(30_000, 250,
+                PlanificadorEscaneo.tramasPorVentana(SeguidorSecuencias.CalidadEnlace.MALA));
+        assertTrue(mala.ventanaMs > buena.ventanaMs);
+        assertTrue(mala.cicloRadio > buena.cicloRadio);
+
+        // Con un enlace malo y pérdidas altas se sigue cumpliendo
+        Resultado r = simular(30_000, 250, 0.3, 5, SeguidorSecuencias.CalidadEnlace.MALA,
+                30 * 60_000, 0, 0, 5);
+        assertTrue("peor hueco " + r.huecoMaximo, r.huecoMaximo <= 30_000);
+    }
+}
@@ -0,0 +1,339 @@
+package com.example.biometria_adenor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+
+/**
+ * Pruebas del PlanificadorSubidas con reloj virtual y un servidor simulado
+ * al que se le pueden inyectar fallos.
+ */
+public class PlanificadorSubidasTest {
+
+    /**
+     * Servidor simulado: responde con los códigos de la lista (uno por envío)
+     * y, cuando se acaban, con 201. Un código -1 simula un fallo de red.
+     */
+    static class ServidorSimulado implements PlanificadorSubidas.Enviador {
+        final List<Integer> respuestas = new ArrayList<>();
+        final List<Long> instantesEnvio = new ArrayList<>();
+        final List<Integer> tamanyosLote = new ArrayList<>();
+        final List<Integer> primerosValores = new ArrayList<>();
+        int recibidas = 0;
+        private final Reloj reloj;
+
+        ServidorSimulado(Reloj reloj) {
+            this.reloj = reloj;
+        }
+
+        @Override
+        public int enviar(List<Medicion> lote) throws IOException {
+            instantesEnvio.add(reloj.ahoraMillis());
+            tamanyosLote.add(lote.size());
+            primerosValores.add(lote.get(0).getValor());
+            int codigo = respuestas.isEmpty() ? 201 : respuestas.remove(0);
+            if (codigo == -1) {
+                throw new IOException("fallo de red simulado");
+            }
+            if (codigo >= 200 && codigo < 300) {
+                recibidas += lote.size();
+            }
+            return codigo;
+        }
+    }
+
+    /**
+     * Servidor simulado que admite varios lotes en vuelo. Cada envío se hace
+     * al lanzarlo, en orden, así que las respuestas se reparten como en
+     * ServidorSimulado.
+     */
+    static class ServidorConVentana extends ServidorSimulado implements PlanificadorSubidas.EnviadorConcurrente {
+        private final int ventana;
+
+        ServidorConVentana(Reloj reloj, int ventana) {
+            super(reloj);
+            this.ventana = ventana;
+        }
+
+        @Override
+        public int getVentana() {
+            return ventana;
+        }
+
+        @Override
+        public Future<Integer> enviarAsincrono(List<Medicion> lote) {
+            FutureTask<Integer> envio = new FutureTask<>(() -> enviar(lote));
+            envio.run();
+            return envio;
+        }
+    }
+
+    private RelojVirtual reloj;
+    private ServidorSimulado servidor;
+    private boolean hayRed;
+    private PlanificadorSubidas planificador;
+
+    @Before
+    public void preparar() {
+        reloj = new RelojVirtual(1_000);
+        servidor = new ServidorSimulado(reloj);
+        hayRed = true;
+        planificador = new PlanificadorSubidas(servidor, reloj, () -> hayRed,
+                new InterruptorCircuito(3, 60_000), new Random(42));
+        planificador.configurar(30_000, 1_000, 16_000, 50, 100);
+    }
+
+    // Avanza el reloj virtual hasta que el planificador no tenga trabajo o se pase el límite
+    private void ejecutarHasta(long limite) {
+        while (reloj.ahoraMillis() < limite) {
+            long espera = planificador.procesar();
+            if (espera == PlanificadorSubidas.SIN_TRABAJO) {
+                return;
+            }
+            reloj.avanzar(Math.max(1, Math.min(espera, limite - reloj.ahoraMillis())));
+        }
+    }
+
+    @Test
+    public void agrupaLasMedicionesEnUnSoloEnvioAlineado() {
+        for (int i = 0; i < 10; i++) {
+            planificador.encolar(new Medicion(12, 20 + i, false));
+            reloj.avanzar(100);
+        }
+        ejecutarHasta(100_000);
+
+        assertEquals(1, servidor.instantesEnvio.size());
+        assertEquals(10, (int) servidor.tamanyosLote.get(0));
+        assertEquals(0, servidor.instantesEnvio.get(0) % 30_000);
+        assertEquals(0, planificador.getNumeroPendientes());
+    }
+
+    @Test
+    public void respetaElTamanyoMaximoDeLote() {
+        planificador.configurar(30_000, 1_000, 16_000, 4, 100);
+        for (int i = 0; i < 10; i++) {
+            planificador.encolar(new Medicion(12, i, false));
+        }
+        ejecutarHasta(200_000);
+
+        assertEquals(10, servidor.recibidas);
+        for (int tamanyo : servidor.tamanyosLote) {
+            assertTrue(tamanyo <= 4);
+        }
+    }
+
+    @Test
+    public void reintentaConEsperaExponencialAcotadaYJitter() {
+        servidor.respuestas.add(503);
+        servidor.respuestas.add(-1);
+        planificador.encolar(new Medicion(11, 100, false));
+        ejecutarHasta(200_000);
+
+        assertEquals(3, servidor.instantesEnvio.size());
+        assertEquals(1, servidor.recibidas);
+        long primeraEspera = servidor.instantesEnvio.get(1) - servidor.instantesEnvio.get(0);
+        long segundaEspera = servidor.instantesEnvio.get(2) - servidor.instantesEnvio.get(1);
+        assertTrue(primeraEspera >= 500 && primeraEspera <= 1_000);
+        assertTrue(segundaEspera >= 1_000 && segundaEspera <= 2_000);
+    }
+
+    @Test
+    public void elRetardoNoSuperaElMaximo() {
+        for (int intento = 1; intento < 40; intento++) {
+            long retardo = planificador.calcularRetardoReintento(intento);
+            assertTrue(retardo >= 500);
+            assertTrue(retardo <= 16_000);
+        }
+    }
+
+    @Test
+    public void descartaLoteRechazadoPorElServidor() {
+        servidor.respuestas.add(400);
+        planificador.encolar(new Medicion(11, 100, false));
+        ejecutarHasta(200_000);
+
+        assertEquals(1, servidor.instantesEnvio.size());
+        assertEquals(1, planificador.getMedicionesDescartadas());
+        assertEquals(0, planificador.getNumeroPendientes());
+    }
+
+    @Test
+    public void elCircuitoAbiertoCortaLosEnvios() {
+        for (int i = 0; i < 3; i++) {
+            servidor.respuestas.add(500);
+        }
+        planificador.encolar(new Medicion(11, 100, false));
+        ejecutarHasta(40_000);
+
+        assertEquals(InterruptorCircuito.Estado.ABIERTO, planificador.getInterruptor().getEstado());
+        int enviosAlAbrir = servidor.instantesEnvio.size();
+        assertEquals(3, enviosAlAbrir);
+
+        // Mientras está abierto no se envía nada aunque pasen los reintentos
+        long apertura = servidor.instantesEnvio.get(2);
+        ejecutarHasta(apertura + 59_000);
+        assertEquals(enviosAlAbrir, servidor.instantesEnvio.size());
+
+        // Pasado el tiempo de apertura se prueba una vez y se cierra
+        ejecutarHasta(apertura + 120_000);
+        assertEquals(4, servidor.instantesEnvio.size());
+        assertTrue(servidor.instantesEnvio.get(3) >= apertura + 60_000);
+        assertEquals(InterruptorCircuito.Estado.CERRADO, planificador.getInterruptor().getEstado());
+        assertEquals(1, servidor.recibidas);
+    }
+
+    @Test
+    public void unaAlarmaAdelantaElEnvio() {
+        planificador.encolar(new Medicion(12, 20, false));
+        reloj.avanzar(500);
+        planificador.encolar(new Medicion(11, 5000, true));
+        long enviadoEn = reloj.ahoraMillis();
+        ejecutarHasta(100_000);
+
+        assertEquals(1, servidor.instantesEnvio.size());
+        assertEquals(enviadoEn, (long) servidor.instantesEnvio.get(0));
+        assertEquals(2, (int) servidor.tamanyosLote.get(0));
+    }
+
+    @Test
+    public void unaAlarmaSeSaltaElBackoff() {
+        servidor.respuestas.add(500);
+        planificador.encolar(new Medicion(12, 20, false));
+        ejecutarHasta(30_001);
+        assertEquals(1, servidor.instantesEnvio.size());
+
+        planificador.encolar(new Medicion(11, 5000, true));
+        planificador.procesar();
+        assertEquals(2, servidor.instantesEnvio.size());
+        assertEquals(2, servidor.recibidas);
+    }
+
+    @Test
+    public void sinRedNoSeEnviaNiCuentaComoFallo() {
+        hayRed = false;
+        planificador.encolar(new Medicion(12, 20, false));
+        ejecutarHasta(200_000);
+        assertEquals(0, servidor.instantesEnvio.size());
+        assertEquals(InterruptorCircuito.Estado.CERRADO, planificador.getInterruptor().getEstado());
+
+        hayRed = true;
+        ejecutarHasta(400_000);
+        assertEquals(1, servidor.recibidas);
+    }
+
+    @Test
+    public void laColaLlenaDescartaLasMasAntiguas() {
+        planificador.configurar(30_000, 1_000, 16_000, 50, 5);
+        for (int i = 0; i < 8; i++) {
+            planificador.encolar(new Medicion(12, i, false));
+        }
+        assertEquals(5, planificador.getNumeroPendientes());
+        assertEquals(3, planificador.getMedicionesDescartadas());
+    }
+
+    @Test
+    public void elLoteDevueltoNoPasaDelMaximoDePendientes() {
+        // Mientras se envía (y falla) el lote siguen llegando mediciones
+        final PlanificadorSubidas[] p = new PlanificadorSubidas[1];
+        p[0] = new PlanificadorSubidas(lote -> {
+            for (int i = 0; i < 4; i++) {
+                p[0].encolar(new Medicion(12, 100 + i, false));
+            }
+            return 503;
+        }, reloj, () -> true, new InterruptorCircuito(3, 60_000), new Random(42));
+        p[0].configurar(30_000, 1_000, 16_000, 50, 5);
+        for (int i = 0; i < 5; i++) {
+            p[0].encolar(new Medicion(12, i, false));
+        }
+        reloj.avanzar(30_000);
+        p[0].procesar();
+
+        assertEquals(5, p[0].getNumeroPendientes());
+        assertEquals(4, p[0].getMedicionesDescartadas());
+    }
+
+    private PlanificadorSubidas conVentana(ServidorConVentana conVentana, int mediciones) {
+        PlanificadorSubidas p = new PlanificadorSubidas(conVentana, reloj, () -> true,
+                new InterruptorCircuito(3, 60_000), new Random(42));
+        p.configurar(30_000, 1_000, 16_000, 50, 500);
+        for (int i = 0; i < mediciones; i++) {
+            p.encolar(new Medicion(12, i, false));
+        }
+        return p;
+    }
+
+    @Test
+    public void unaColaAtrasadaSaleEnVariosLotesALaVez() {
+        ServidorConVentana conVentana = new ServidorConVentana(reloj, 4);
+        PlanificadorSubidas p = conVentana(conVentana, 260);
+        reloj.avanzar(29_000);
+
+        // Salen 4 lotes (la ventana) en el mismo instante; el resto, en el siguiente intervalo
+        assertEquals(30_000, p.procesar());
+        assertEquals(Arrays.asList(50, 50, 50, 50), conVentana.tamanyosLote);
+        assertEquals(Arrays.asList(30_000L, 30_000L, 30_000L, 30_000L), conVentana.instantesEnvio);
+        assertEquals(60, p.getNumeroPendientes());
+
+        reloj.avanzar(30_000);
+        assertEquals(PlanificadorSubidas.SIN_TRABAJO, p.procesar());
+        assertEquals(Arrays.asList(50, 50, 50, 50, 50, 10), conVentana.tamanyosLote);
+        assertEquals(260, conVentana.recibidas);
+        assertEquals(6, p.getLotesEnviados());
+    }
+
+    @Test
+    public void unLoteFallidoDeLaVentanaVuelveALaColaEnSuOrden() {
+        ServidorConVentana conVentana = new ServidorConVentana(reloj, 4);
+        conVentana.respuestas.addAll(Arrays.asList(201, -1, 201, 500));
+        PlanificadorSubidas p = conVentana(conVentana, 180);
+        reloj.avanzar(29_000);
+
+        long espera = p.procesar();
+        assertEquals(100, conVentana.recibidas);
+        assertEquals(80, p.getNumeroPendientes());
+        // Un solo fallo para el interruptor y un backoff como con un lote
+        assertTrue(espera >= 500 && espera <= 1_000);
+        assertEquals(InterruptorCircuito.Estado.CERRADO, p.getInterruptor().getEstado());
+
+        reloj.avanzar(espera);
+        assertEquals(PlanificadorSubidas.SIN_TRABAJO, p.procesar());
+        assertEquals(Arrays.asList(0, 50, 100, 150, 50, 150), conVentana.primerosValores);
+        assertEquals(Arrays.asList(50, 50, 50, 30, 50, 30), conVentana.tamanyosLote);
+        assertEquals(180, conVentana.recibidas);
+    }
+
+    @Test
+    public void conElCircuitoSinCerrarSaleUnSoloLote() {
+        ServidorConVentana conVentana = new ServidorConVentana(reloj, 4);
+        // Tres intentos de 4 lotes fallidos abren el circuito
+        for (int i = 0; i < 12; i++) {
+            conVentana.respuestas.add(-1);
+        }
+        PlanificadorSubidas p = conVentana(conVentana, 180);
+        reloj.avanzar(29_000);
+        while (conVentana.tamanyosLote.size() < 12) {
+            reloj.avanzar(Math.max(1, p.procesar()));
+        }
+        assertEquals(InterruptorCircuito.Estado.ABIERTO, p.getInterruptor().getEstado());
+
+        // La prueba del semiabierto es un único lote; al cerrarse vuelve la ventana
+        reloj.avanzar(p.procesar());
+        p.procesar();
+        assertEquals(13, conVentana.tamanyosLote.size());
+        assertEquals(130, p.getNumeroPendientes());
+
+        reloj.avanzar(30_000);
+        assertEquals(PlanificadorSubidas.SIN_TRABAJO, p.procesar());
+        assertEquals(Arrays.asList(50, 50, 30), conVentana.tamanyosLote.subList(13, 16));
+        assertEquals(180, conVentana.recibidas);
+    }
+}
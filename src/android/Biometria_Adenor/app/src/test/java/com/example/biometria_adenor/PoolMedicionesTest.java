@@ -0,0 +1,119 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reserva de mediciones: reutilización, límite, devolución desde el
+ * planificador y el JSON escrito en el buffer reutilizado.
+ */
+public class PoolMedicionesTest {
+
+    @Test
+    public void reutilizaLasDevueltasYNoCreceSinLimite() {
+        PoolMediciones pool = new PoolMediciones(2);
+        Medicion a = pool.obtener(11, 400, false, 1000);
+        Medicion b = pool.obtener(12, 21, false, 2000);
+        Medicion c = pool.obtener(11, 1200, true, 3000);
+        assertEquals(3, pool.getCreadas());
+
+        pool.devolver(a);
+        pool.devolver(a); // devolverla otra vez no hace nada
+        pool.devolver(b);
+        pool.devolver(c); // ya no cabe
+        assertEquals(2, pool.getNumeroLibres());
+        assertEquals(1, pool.getTiradas());
+
+        Medicion d = pool.obtener(12, 19, true, 4000);
+        assertTrue(d == a || d == b);
+        assertEquals(12, d.getTipo());
+        assertEquals(19, d.getValor());
+        assertTrue(d.esUrgente());
+        assertEquals(4000, d.getInstanteMillis());
+        assertEquals(1, pool.getReutilizadas());
+        assertEquals(3, pool.getCreadas());
+    }
+
+    @Test
+    public void elPlanificadorDevuelveLasEnviadasYLasDescartadas() {
+        RelojVirtual reloj = new RelojVirtual(1_000);
+        PlanificadorSubidasTest.ServidorSimulado servidor = new PlanificadorSubidasTest.ServidorSimulado(reloj);
+        PlanificadorSubidas planificador = new PlanificadorSubidas(servidor, reloj, () -> true,
+                new InterruptorCircuito(3, 60_000), new Random(1));
+        planificador.configurar(1_000, 1_000, 16_000, 5, 8);
+        PoolMediciones pool = new PoolMediciones(100);
+        planificador.usarPool(pool);
+
+        // 10 en una cola de 8: las 2 más viejas se tiran y vuelven a la reserva
+        // (la primera que vuelve ya sirve para la décima)
+        for (int i = 0; i < 10; i++) {
+            planificador.encolar(pool.obtener(12, 20 + i, false, reloj.ahoraMillis()));
+        }
+        assertEquals(9, pool.getCreadas());
+        assertEquals(1, pool.getNumeroLibres());
+
+        // Un fallo no devuelve nada: el lote sigue pendiente
+        servidor.respuestas.add(500);
+        reloj.avanzar(1_000);
+        planificador.procesar();
+        assertEquals(1, pool.getNumeroLibres());
+        assertEquals(8, planificador.getNumeroPendientes());
+
+        // Un lote rechazado (400) y otro enviado: todo vuelve
+        servidor.respuestas.add(400);
+        reloj.avanzar(20_000);
+        planificador.procesar();
+        assertEquals(6, pool.getNumeroLibres());
+        reloj.avanzar(1_000);
+        planificador.procesar();
+        assertEquals(9, pool.getNumeroLibres());
+        assertEquals(0, planificador.getNumeroPendientes());
+        assertEquals(3, servidor.recibidas);
+    }
+
+    @Test
+    public void elBufferEscribeLoMismoQueLasCadenas() {
+        Random azar = new Random(39);
+        BufferJSON buffer = new BufferJSON(16);
+        for (int prueba = 0; prueba < 200; prueba++) {
+            List<Medicion> lote = new ArrayList<>();
+            int n = 1 + azar.nextInt(60);
+            for (int i = 0; i < n; i++) {
+                long instante = azar.nextInt(4) == 0 ? RelojCaptura.SIN_INSTANTE
+                        : 1_700_000_000_000L + azar.nextInt(1_000_000);
+                lote.add(new Medicion(11 + azar.nextInt(3), azar.nextInt(70_000) - 5_000, false, instante));
+            }
+            long desfase = azar.nextInt(20_000) - 10_000;
+
+            // Lo que se construía antes con Strings
+            StringBuilder esperado = new StringBuilder("{");
+            long base = RelojCaptura.SIN_INSTANTE;
+            for (Medicion m : lote) {
+                if (m.tieneInstante()) {
+                    base = m.getInstanteMillis() + desfase;
+                    break;
+                }
+            }
+            if (base != RelojCaptura.SIN_INSTANTE) {
+                esperado.append("\"base\": ").append(base).append(", ");
+            }
+            esperado.append("\"mediciones\": [");
+            for (int i = 0; i < lote.size(); i++) {
+                esperado.append(i > 0 ? ", " : "").append(lote.get(i).aJSON(base, desfase));
+            }
+            esperado.append("]}");
+
+            EnviadorMediciones.escribirLote(lote, desfase, buffer.reiniciar());
+            assertEquals(esperado.toString(), buffer.toString());
+        }
+
+        for (long v : new long[]{0, 7, -7, 10, -10, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(Long.toString(v), buffer.reiniciar().escribirEntero(v).toString());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * El reloj de captura pasa los instantes del reloj monótono a hora de pared
+ * y estima el desfase con el servidor.
+ */
+public class RelojCapturaTest {
+
+    private static final long PARED = 1_700_000_000_000L;
+
+    // Reloj monótono que solo avanza cuando la prueba lo pide
+    private final long[] nanos = {5_000_000_000L};
+
+    private RelojCaptura reloj() {
+        return new RelojCaptura(() -> PARED, () -> nanos[0]);
+    }
+
+    @Test
+    public void pasaLosNanosDelEscaneoAHoraDePared() {
+        RelojCaptura reloj = reloj();
+        // Un beacon recibido 1,5 s después de crear el reloj
+        assertEquals(PARED + 1500, reloj.aPared(nanos[0] + 1_500_000_000L));
+        // Y uno recibido antes (ScanResult de un lote de escaneo atrasado)
+        assertEquals(PARED - 250, reloj.aPared(nanos[0] - 250_000_000L));
+    }
+
+    @Test
+    public void noSaltaSiCambiaLaHoraDelMovil() {
+        long[] pared = {PARED};
+        RelojCaptura reloj = new RelojCaptura(() -> pared[0], () -> nanos[0]);
+        long antes = reloj.aPared(nanos[0] + 1_000_000_000L);
+        pared[0] -= 3_600_000L; // el usuario atrasa una hora el móvil
+        assertEquals(antes, reloj.aPared(nanos[0] + 1_000_000_000L));
+    }
+
+    @Test
+    public void estimaElDesfaseConLaMitadDelViaje() {
+        RelojCaptura reloj = reloj();
+        // El servidor va 2 s adelantado; la petición tarda 100 ms ida y vuelta
+        long envio = nanos[0];
+        long respuesta = envio + 100_000_000L;
+        reloj.anotarHoraServidor(reloj.aPared(envio + 50_000_000L) + 2000, envio, respuesta);
+        assertEquals(2000, reloj.getDesfaseMillis());
+        assertEquals(PARED + 2000, reloj.aHoraServidor(PARED));
+    }
+
+    @Test
+    public void seQuedaConLaMuestraDeViajeMasCorto() {
+        RelojCaptura reloj = reloj();
+        // Muestra buena: 10 ms de viaje, desfase real de 500 ms
+        reloj.anotarHoraServidor(reloj.aPared(nanos[0] + 5_000_000L) + 500, nanos[0], nanos[0] + 10_000_000L);
+        // Muestra mala: 2 s de viaje y el servidor respondió al final (+1 s de error)
+        long envio = nanos[0] + 1_000_000_000L;
+        reloj.anotarHoraServidor(reloj.aPared(envio + 2_000_000_000L) + 500, envio, envio + 2_000_000_000L);
+        assertEquals(500, reloj.getDesfaseMillis());
+    }
+
+    @Test
+    public void elLoteLlevaBaseYDeltasCorregidos() {
+        List<Medicion> lote = new ArrayList<>();
+        lote.add(new Medicion(11, 100, false, PARED));
+        lote.add(new Medicion(12, 21, false, PARED + 950));
+        lote.add(new Medicion(11, 101, false));
+        lote.add(new Medicion(11, 102, false, PARED - 40));
+
+        String json = EnviadorMediciones.loteAJSON(lote, 2000);
+        assertEquals("{\"base\": " + (PARED + 2000) + ", \"mediciones\": ["
+                + "{\"tipo\": \"gas\", \"valor\": 100, \"dt\": 0}, "
+                + "{\"tipo\": \"temperatura\", \"valor\": 21, \"dt\": 950}, "
+                + "{\"tipo\": \"gas\", \"valor\": 101}, "
+                + "{\"tipo\": \"gas\", \"valor\": 102, \"dt\": -40}]}", json);
+    }
+
+    @Test
+    public void elEnviadorAprendeElDesfaseDeLaRespuesta() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            RelojCaptura reloj = new RelojCaptura(System::currentTimeMillis, System::nanoTime);
+            long horaServidor = System.currentTimeMillis() + 60_000;
+            servidor.responder(201, "{\"success\": true, \"guardadas\": 1, \"rechazadas\": 0, "
+                    + "\"hora_servidor\": " + horaServidor + "}");
+            TransportePersistente transporte = new TransportePersistente(1);
+            EnviadorMediciones enviador = new EnviadorMediciones(servidor.url("/api/mediciones/lote"),
+                    transporte, CodificadorCuerpo.SIN_CODIFICAR, reloj);
+
+            List<Medicion> lote = new ArrayList<>();
+            lote.add(new Medicion(11, 100, false, reloj.aPared(reloj.ahoraNanos())));
+            assertEquals(201, enviador.enviar(lote));
+
+            // Un minuto de desfase, con el error de un viaje local (pocos ms)
+            assertEquals(60_000, reloj.getDesfaseMillis(), 1000);
+            transporte.cerrar();
+        }
+    }
+}
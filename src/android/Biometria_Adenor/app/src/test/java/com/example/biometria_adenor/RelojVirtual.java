@@ -0,0 +1,22 @@
+package com.example.biometria_adenor;
+
+/**
+ * Reloj para las pruebas: el tiempo solo avanza cuando la prueba lo pide.
+ */
+public class RelojVirtual implements Reloj {
+
+    private long ahora;
+
+    public RelojVirtual(long inicio) {
+        this.ahora = inicio;
+    }
+
+    @Override
+    public long ahoraMillis() {
+        return ahora;
+    }
+
+    public void avanzar(long ms) {
+        ahora += ms;
+    }
+}
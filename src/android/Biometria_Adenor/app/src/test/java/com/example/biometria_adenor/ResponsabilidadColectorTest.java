@@ -0,0 +1,119 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Responsabilidad de cada colector: se saltan las mediciones de los sensores
+ * que sube otro mientras la lista del servidor vale, se informa de los
+ * sensores oídos con su RSSI y los lotes llevan el colector y el RSSI.
+ */
+public class ResponsabilidadColectorTest {
+
+    private static final String PROPIO = "D4:36:39:A1:02:01";
+    private static final String AJENO = "D4:36:39:A1:02:02";
+
+    @Test
+    public void seSaltanLosAjenosMientrasLaListaVale() {
+        RelojVirtual reloj = new RelojVirtual(1_000);
+        ResponsabilidadColector responsabilidad = new ResponsabilidadColector(reloj);
+        List<String> entregados = new ArrayList<>();
+        MotorEscaneo.Destino destino = responsabilidad.filtrar((s, t, c, v, r, i) -> entregados.add(s));
+
+        // Sin lista se sube todo
+        destino.entregar(AJENO, 11, 1, 400, -80, 0);
+        assertEquals(Arrays.asList(AJENO), entregados);
+
+        responsabilidad.aplicar(Arrays.asList(AJENO), 60_000);
+        destino.entregar(PROPIO, 11, 2, 400, -60, 0);
+        destino.entregar(AJENO, 11, 3, 400, -80, 0);
+        assertEquals(Arrays.asList(AJENO, PROPIO), entregados);
+        assertEquals(1, responsabilidad.getSuprimidas());
+        assertEquals(2, responsabilidad.getSubidas());
+
+        // Si no se renueva, la lista caduca y se vuelve a subir todo
+        reloj.avanzar(60_000);
+        assertFalse(responsabilidad.tieneListaVigente());
+        destino.entregar(AJENO, 11, 4, 400, -80, 0);
+        assertEquals(Arrays.asList(AJENO, PROPIO, AJENO), entregados);
+    }
+
+    @Test
+    public void elInformeLlevaLosOidosRecientes() {
+        RelojVirtual reloj = new RelojVirtual(1_000);
+        ResponsabilidadColector responsabilidad = new ResponsabilidadColector(reloj);
+        responsabilidad.anotar(AJENO, -80);
+        reloj.avanzar(ResponsabilidadColector.OLVIDO_MS);
+        responsabilidad.anotar(PROPIO, -60);
+        responsabilidad.anotar(PROPIO, -62);
+
+        BufferJSON buffer = new BufferJSON(16);
+        assertEquals(2, responsabilidad.escribirInforme("movil-1", buffer));
+
+        // El que lleva más de OLVIDO_MS sin oírse se olvida
+        reloj.avanzar(1);
+        assertEquals(1, responsabilidad.escribirInforme("movil-1", buffer.reiniciar()));
+        assertEquals("{\"colector\": \"movil-1\", \"sensores\": [{\"sensor\": \"" + PROPIO + "\", \"rssi\": -62}]}",
+                buffer.toString());
+        assertEquals(1, responsabilidad.getNumeroOidos());
+    }
+
+    @Test
+    public void elInformadorAplicaLaRespuestaDelServidor() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            servidor.responder(200, "{\"success\": true, \"responsable\": [\"" + PROPIO + "\"], "
+                    + "\"ajenos\": [\"" + AJENO + "\"], \"validez_ms\": 120000}");
+            RelojVirtual reloj = new RelojVirtual(1_000);
+            ResponsabilidadColector responsabilidad = new ResponsabilidadColector(reloj);
+            responsabilidad.anotar(PROPIO, -60);
+            TransportePersistente transporte = new TransportePersistente(1);
+            InformadorColector informador = new InformadorColector(servidor.url("/api/colectores/"), "movil-1",
+                    responsabilidad, transporte, CodificadorCuerpo.SIN_CODIFICAR);
+
+            assertEquals(200, informador.informar());
+            String cuerpo = new String(servidor.getUltimoCuerpo(), StandardCharsets.UTF_8);
+            assertTrue(cuerpo.contains("\"sensor\": \"" + PROPIO + "\", \"rssi\": -60"));
+            assertTrue(responsabilidad.tieneListaVigente());
+            assertEquals(1, responsabilidad.getNumeroAjenos());
+            assertFalse(responsabilidad.debeSubir(AJENO));
+            assertTrue(responsabilidad.debeSubir(PROPIO));
+
+            // Una respuesta de error no toca la lista
+            servidor.responder(503, "{\"success\": false}");
+            assertEquals(503, informador.informar());
+            assertEquals(1, responsabilidad.getNumeroAjenos());
+            transporte.cerrar();
+        }
+    }
+
+    @Test
+    public void elLoteLlevaElColectorYElRssi() {
+        List<Medicion> lote = Arrays.asList(
+                new Medicion(11, 400, false, 5_000, ClaveIdempotencia.SIN_CLAVE, -71),
+                new Medicion(12, 21, false, 5_100));
+        BufferJSON buffer = new BufferJSON(16);
+        EnviadorMediciones.escribirLote(lote, 0, "movil-1", buffer);
+        assertEquals("{\"base\": 5000, \"colector\": \"movil-1\", \"mediciones\": ["
+                + "{\"tipo\": \"gas\", \"valor\": 400, \"dt\": 0, \"rssi\": -71}, "
+                + "{\"tipo\": \"temperatura\", \"valor\": 21, \"dt\": 100}]}", buffer.toString());
+        assertEquals(lote.get(0).aJSON(5_000, 0), "{\"tipo\": \"gas\", \"valor\": 400, \"dt\": 0, \"rssi\": -71}");
+
+        // Identificadores que no pueden ir tal cual en el JSON ni en la URL
+        assertFalse(ResponsabilidadColector.esIdentificadorValido("a\"b"));
+        assertFalse(ResponsabilidadColector.esIdentificadorValido("a/b"));
+        assertFalse(ResponsabilidadColector.esIdentificadorValido(""));
+        assertTrue(ResponsabilidadColector.esIdentificadorValido("3f0c9a2e-8b1d-4c55-9e0f-2a6b7c8d9e01"));
+        try {
+            new EnviadorMediciones("http://localhost/").usarColector("a b");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // esperado
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static com.example.biometria_adenor.SeguidorSecuencias.CalidadEnlace;
+import static com.example.biometria_adenor.SeguidorSecuencias.Resultado;
+
+/**
+ * Seguimiento del contador de 8 bits: duplicados, huecos, vuelta del
+ * contador, desorden, reinicios y calidad del enlace.
+ */
+public class SeguidorSecuenciasTest {
+
+    private static final String SENSOR = "AA:BB:CC:DD:EE:FF";
+
+    @Test
+    public void descartaRepetidasYCuentaHuecos() {
+        RelojVirtual reloj = new RelojVirtual(0);
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(reloj);
+
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 1));
+        assertEquals(Resultado.DUPLICADA, seguidor.anotar(SENSOR, 11, 1));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 2));
+        reloj.avanzar(30_000);
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 5)); // faltan 3 y 4
+
+        SeguidorSecuencias.Estadisticas e = seguidor.getEstadisticas(SENSOR, 11);
+        assertEquals(3, e.recibidas);
+        assertEquals(1, e.duplicadas);
+        assertEquals(2, e.perdidas);
+        assertEquals(5, e.esperadas);
+        assertEquals(0.4, e.getTasaPerdidas(), 1e-9);
+    }
+
+    @Test
+    public void cadaSensorYTipoLlevaSuContador() {
+        // El Arduino manda CO2 y temperatura con el mismo contador
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(new RelojVirtual(0));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 7));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 12, 7));
+        assertEquals(Resultado.NUEVA, seguidor.anotar("11:22:33:44:55:66", 11, 7));
+        assertEquals(3, seguidor.getNumeroSecuencias());
+    }
+
+    @Test
+    public void elContadorDaLaVuelta() {
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(new RelojVirtual(0));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 254));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 255));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 0));
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 2)); // falta el 1
+        assertEquals(1, seguidor.getEstadisticas(SENSOR, 11).perdidas);
+        assertEquals(0, seguidor.getEstadisticas(SENSOR, 11).reinicios);
+    }
+
+    @Test
+    public void unaTramaQueLlegaTardeDejaDeContarComoPerdida() {
+        RelojVirtual reloj = new RelojVirtual(0);
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(reloj);
+        seguidor.anotar(SENSOR, 11, 10);
+        seguidor.anotar(SENSOR, 11, 12);
+        reloj.avanzar(200);
+        assertEquals(Resultado.REORDENADA, seguidor.anotar(SENSOR, 11, 11));
+        assertEquals(Resultado.DUPLICADA, seguidor.anotar(SENSOR, 11, 11));
+        assertEquals(Resultado.DUPLICADA, seguidor.anotar(SENSOR, 11, 10));
+
+        SeguidorSecuencias.Estadisticas e = seguidor.getEstadisticas(SENSOR, 11);
+        assertEquals(0, e.perdidas);
+        assertEquals(1, e.reordenadas);
+        assertEquals(3, e.recibidas);
+    }
+
+    @Test
+    public void lasMuestrasDeUnaTramaDeDeltasCabenEnLaVentana() {
+        // Una trama de deltas anota MAXIMO_MUESTRAS contadores seguidos; si se
+        // vuelven a anotar (otra trama que se solapa) son repetidas, no un reinicio
+        RelojVirtual reloj = new RelojVirtual(0);
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(reloj);
+        for (int c = 0; c < TramaDeltas.MAXIMO_MUESTRAS; c++) {
+            assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 12, 100 + c));
+        }
+        reloj.avanzar(500);
+        for (int c = 0; c < TramaDeltas.MAXIMO_MUESTRAS; c++) {
+            assertEquals(Resultado.DUPLICADA, seguidor.anotar(SENSOR, 12, 100 + c));
+        }
+        int ultimo = 100 + TramaDeltas.MAXIMO_MUESTRAS - 1;
+        assertTrue(seguidor.esElUltimo(SENSOR, 12, ultimo));
+        assertFalse(seguidor.esElUltimo(SENSOR, 12, ultimo - 1));
+        assertFalse(seguidor.esElUltimo(SENSOR, 11, ultimo));
+
+        SeguidorSecuencias.Estadisticas e = seguidor.getEstadisticas(SENSOR, 12);
+        assertEquals(0, e.reinicios);
+        assertEquals(TramaDeltas.MAXIMO_MUESTRAS, e.duplicadas);
+    }
+
+    @Test
+    public void detectaElReinicioDelSensor() {
+        RelojVirtual reloj = new RelojVirtual(0);
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(reloj);
+        for (int c = 1; c <= 40; c++) {
+            seguidor.anotar(SENSOR, 11, c);
+            reloj.avanzar(27_000);
+        }
+        // El Arduino arranca otra vez desde 1: retrocede pasado el tiempo de desorden
+        assertEquals(Resultado.REINICIO, seguidor.anotar(SENSOR, 11, 1));
+        reloj.avanzar(27_000);
+        assertEquals(Resultado.NUEVA, seguidor.anotar(SENSOR, 11, 2));
+        assertEquals(Resultado.DUPLICADA, seguidor.anotar(SENSOR, 11, 2));
+
+        SeguidorSecuencias.Estadisticas e = seguidor.getEstadisticas(SENSOR, 11);
+        assertEquals(1, e.reinicios);
+        assertEquals(0, e.perdidas);
+    }
+
+    @Test
+    public void lasEstadisticasCuadranConUnEnlaceSimulado() {
+        // Tramas con pérdidas al azar, repetidas y alguna desordenada
+        Random azar = new Random(37);
+        RelojVirtual reloj = new RelojVirtual(0);
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(reloj);
+        int enviadas = 2000;
+        int perdidas = 0;
+        int reordenadas = 0;
+        Integer retenida = null;
+        for (int c = 0; c < enviadas; c++) {
+            reloj.avanzar(1000);
+            double r = azar.nextDouble();
+            if (c > 0 && r < 0.1) {
+                perdidas++;
+                continue;
+            }
+            if (c > 0 && r < 0.13 && retenida == null) {
+                retenida = c; // llega después de la siguiente
+                continue;
+            }
+            seguidor.anotar(SENSOR, 11, c);
+            seguidor.anotar(SENSOR, 11, c); // el beacon repite la trama
+            if (retenida != null) {
+                assertEquals(Resultado.REORDENADA, seguidor.anotar(SENSOR, 11, retenida));
+                reordenadas++;
+                retenida = null;
+            }
+        }
+        SeguidorSecuencias.Estadisticas e = seguidor.getEstadisticas(SENSOR, 11);
+        assertEquals(enviadas, e.esperadas);
+        assertEquals(perdidas, e.perdidas);
+        assertEquals(reordenadas, e.reordenadas);
+        assertEquals(enviadas - perdidas, e.recibidas);
+        assertEquals(0, e.reinicios);
+        assertEquals(0.1, e.getTasaPerdidas(), 0.03);
+    }
+
+    @Test
+    public void laCalidadCambiaConHisteresis() {
+        RelojVirtual reloj = new RelojVirtual(0);
+        SeguidorSecuencias seguidor = new SeguidorSecuencias(reloj);
+        int c = 0;
+        assertEquals(CalidadEnlace.DESCONOCIDA, seguidor.getCalidadEnlace());
+
+        // Sin pérdidas
+        for (int i = 0; i < 40; i++) {
+            seguidor.anotar(SENSOR, 11, c++ & 0xFF);
+        }
+        assertEquals(CalidadEnlace.BUENA, seguidor.getCalidadEnlace());
+
+        // Se pierde una de cada dos
+        for (int i = 0; i < 30; i++) {
+            c++;
+            seguidor.anotar(SENSOR, 11, c++ & 0xFF);
+        }
+        assertEquals(CalidadEnlace.MALA, seguidor.getCalidadEnlace());
+
+        // Vuelve a ir bien: baja poco a poco, no de golpe
+        seguidor.anotar(SENSOR, 11, c++ & 0xFF);
+        assertEquals(CalidadEnlace.MALA, seguidor.getCalidadEnlace());
+        for (int i = 0; i < 200; i++) {
+            seguidor.anotar(SENSOR, 11, c++ & 0xFF);
+        }
+        assertEquals(CalidadEnlace.BUENA, seguidor.getCalidadEnlace());
+    }
+}
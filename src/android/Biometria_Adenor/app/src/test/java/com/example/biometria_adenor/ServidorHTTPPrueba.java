@@ -0,0 +1,192 @@
+package com.example.biometria_adenor;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+
+/**
+ * Servidor HTTP/1.1 mínimo para las pruebas de transporte.
+ * Atiende keep-alive y cuenta las conexiones TCP aceptadas. Con conTLS()
+ * atiende HTTPS con el certificado de prueba (servidor-prueba.p12, para
+ * 127.0.0.1) y cuenta también los handshakes TLS completados.
+ */
+public class ServidorHTTPPrueba implements AutoCloseable {
+
+    private static final String ALMACEN = "/servidor-prueba.p12";
+    private static final char[] CLAVE_ALMACEN = "prueba".toCharArray();
+
+    private final ServerSocket socket;
+    private final boolean tls;
+    private final ExecutorService hilos = Executors.newCachedThreadPool();
+    private final AtomicInteger conexiones = new AtomicInteger();
+    private final AtomicInteger handshakes = new AtomicInteger();
+    private final AtomicInteger peticiones = new AtomicInteger();
+    private volatile int codigo = 201;
+    private volatile byte[] cuerpoRespuesta = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+    private volatile byte[] ultimoCuerpo = new byte[0];
+    private volatile String ultimasCabeceras = "";
+
+    public ServidorHTTPPrueba() throws IOException {
+        this(null);
+    }
+
+    private ServidorHTTPPrueba(SSLContext contexto) throws IOException {
+        tls = contexto != null;
+        socket = tls
+                ? contexto.getServerSocketFactory().createServerSocket(0, 100, InetAddress.getLoopbackAddress())
+                : new ServerSocket(0, 100, InetAddress.getLoopbackAddress());
+        hilos.execute(this::aceptar);
+    }
+
+    /**
+     * Servidor HTTPS. Los HttpsURLConnection que se abran después confían en
+     * su certificado (se cambia la fábrica de sockets por defecto, que solo
+     * usan las conexiones HTTPS).
+     */
+    public static ServidorHTTPPrueba conTLS() throws IOException {
+        SSLContext contexto = contextoTLS();
+        HttpsURLConnection.setDefaultSSLSocketFactory(contexto.getSocketFactory());
+        return new ServidorHTTPPrueba(contexto);
+    }
+
+    // Contexto con la clave del servidor y que confía en su propio certificado
+    private static SSLContext contextoTLS() throws IOException {
+        try (InputStream in = ServidorHTTPPrueba.class.getResourceAsStream(ALMACEN)) {
+            if (in == null) {
+                throw new IOException("No está " + ALMACEN + " en el classpath de las pruebas");
+            }
+            KeyStore almacen = KeyStore.getInstance("PKCS12");
+            almacen.load(in, CLAVE_ALMACEN);
+            KeyManagerFactory claves = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            claves.init(almacen, CLAVE_ALMACEN);
+            TrustManagerFactory confianza = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            confianza.init(almacen);
+            SSLContext contexto = SSLContext.getInstance("TLS");
+            contexto.init(claves.getKeyManagers(), confianza.getTrustManagers(), null);
+            return contexto;
+        } catch (GeneralSecurityException ex) {
+            throw new IOException("No se pudo preparar el TLS de prueba", ex);
+        }
+    }
+
+    public String url(String ruta) {
+        return (tls ? "https" : "http") + "://127.0.0.1:" + socket.getLocalPort() + ruta;
+    }
+
+    public int getConexiones() {
+        return conexiones.get();
+    }
+
+    /**
+     * Handshakes TLS completados (0 si el servidor no es conTLS()).
+     */
+    public int getHandshakes() {
+        return handshakes.get();
+    }
+
+    public int getPeticiones() {
+        return peticiones.get();
+    }
+
+    public byte[] getUltimoCuerpo() {
+        return ultimoCuerpo;
+    }
+
+    public String getUltimasCabeceras() {
+        return ultimasCabeceras;
+    }
+
+    public void responder(int codigo, String cuerpo) {
+        this.codigo = codigo;
+        this.cuerpoRespuesta = cuerpo.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void aceptar() {
+        while (!socket.isClosed()) {
+            try {
+                Socket s = socket.accept();
+                conexiones.incrementAndGet();
+                if (s instanceof SSLSocket) {
+                    ((SSLSocket) s).addHandshakeCompletedListener(evento -> handshakes.incrementAndGet());
+                }
+                hilos.execute(() -> atender(s));
+            } catch (IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void atender(Socket s) {
+        try (Socket cliente = s) {
+            cliente.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(cliente.getInputStream());
+            OutputStream out = cliente.getOutputStream();
+            while (true) {
+                String cabeceras = leerCabeceras(in);
+                if (cabeceras == null) {
+                    return;
+                }
+                int longitud = 0;
+                for (String linea : cabeceras.split("\r\n")) {
+                    if (linea.toLowerCase().startsWith("content-length:")) {
+                        longitud = Integer.parseInt(linea.substring(15).trim());
+                    }
+                }
+                byte[] cuerpo = in.readNBytes(longitud);
+                ultimasCabeceras = cabeceras;
+                ultimoCuerpo = cuerpo;
+                peticiones.incrementAndGet();
+
+                byte[] respuesta = cuerpoRespuesta;
+                String cabecera = "HTTP/1.1 " + codigo + " X\r\n"
+                        + "Content-Type: application/json; charset=utf-8\r\n"
+                        + "Content-Length: " + respuesta.length + "\r\n\r\n";
+                ByteArrayOutputStream completa = new ByteArrayOutputStream();
+                completa.write(cabecera.getBytes(StandardCharsets.US_ASCII));
+                completa.write(respuesta);
+                out.write(completa.toByteArray());
+                out.flush();
+            }
+        } catch (IOException ex) {
+            // el cliente cerró la conexión
+        }
+    }
+
+    private static String leerCabeceras(InputStream in) throws IOException {
+        ByteArrayOutputStream acumulador = new ByteArrayOutputStream();
+        int estado = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            acumulador.write(b);
+            estado = (b == '\r' && (estado == 0 || estado == 2)) || (b == '\n' && (estado == 1 || estado == 3))
+                    ? estado + 1 : 0;
+            if (estado == 4) {
+                return acumulador.toString("US-ASCII");
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+        hilos.shutdownNow();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.biometria_adenor;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tramas de deltas: ida y vuelta codificar/decodificar con series aleatorias,
+ * contadores de cada muestra, tramas mal formadas y lectura sin crear objetos.
+ */
+public class TramaDeltasTest {
+
+    // Anuncio de deltas tal como lo emite Publicador::publicarDeltas()
+    // @return el anuncio; en metidas[0] cuántas muestras han cabido
+    static byte[] anuncioDeltas(int tipo, int contadorPrimera, int segundos, int[] muestras, int[] metidas) {
+        byte[] uuid = new byte[16];
+        int n = TramaDeltas.escribirUUID(uuid, segundos, muestras, muestras.length);
+        metidas[0] = n;
+        int contadorUltima = (contadorPrimera + n - 1) & 0xFF;
+        return TramaMultivalorTest.anuncio(uuid, (tipo << 8) | contadorUltima, muestras[n - 1] & 0xFFFF);
+    }
+
+    // Serie aleatoria: un paseo con pasos pequeños y de vez en cuando un salto
+    // de cualquier tamaño (incluidos los extremos de 16 bits)
+    private static int[] serieAleatoria(Random azar, int longitud) {
+        int[] serie = new int[longitud];
+        int valor = azar.nextInt(65536) - 32768;
+        for (int i = 0; i < longitud; i++) {
+            int r = azar.nextInt(10);
+            if (r == 0) {
+                valor = azar.nextBoolean() ? Short.MIN_VALUE : Short.MAX_VALUE;
+            } else if (r == 1) {
+                valor = azar.nextInt(65536) - 32768;
+            } else {
+                valor = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, valor + azar.nextInt(41) - 20));
+            }
+            serie[i] = valor;
+        }
+        return serie;
+    }
+
+    @Test
+    public void idaYVueltaConSeriesAleatorias() {
+        Random azar = new Random(20240036L);
+        TramaDeltas trama = new TramaDeltas();
+        int[] leidas = new int[TramaDeltas.MAXIMO_MUESTRAS];
+        int[] metidas = new int[1];
+
+        for (int caso = 0; caso < 20000; caso++) {
+            int[] serie = serieAleatoria(azar, 1 + azar.nextInt(14));
+            int contadorPrimera = azar.nextInt(256);
+            int tipo = 11 + azar.nextInt(3);
+            byte[] bytes = anuncioDeltas(tipo, contadorPrimera, 30, serie, metidas);
+            if (azar.nextBoolean()) {
+                bytes = Arrays.copyOfRange(bytes, 3, bytes.length); // sin flags
+            }
+
+            assertEquals(FormatoTrama.DELTAS, FormatoTrama.detectar(bytes));
+            assertTrue("caso " + caso, trama.envolver(bytes));
+            int n = trama.leerMuestras(leidas);
+
+            // Caben al menos una y nunca más de las que había
+            assertTrue(n >= 1 && n <= Math.min(serie.length, TramaDeltas.MAXIMO_MUESTRAS));
+            assertEquals(metidas[0], n);
+            assertArrayEquals("caso " + caso, Arrays.copyOf(serie, n), Arrays.copyOf(leidas, n));
+            assertEquals(tipo, trama.getTipo());
+            assertEquals(30, trama.getSegundosEntreMuestras());
+            for (int i = 0; i < n; i++) {
+                assertEquals((contadorPrimera + i) & 0xFF, trama.getContador(i));
+            }
+        }
+    }
+
+    @Test
+    public void seriesTranquilasLlenanLaTrama() {
+        // Con cambios de -63..63 cada diferencia es 1 byte: caben las 10
+        int[] serie = {450, 451, 449, 449, 500, 437, 437, 438, 440, 441, 442};
+        int[] metidas = new int[1];
+        TramaDeltas trama = new TramaDeltas();
+        assertTrue(trama.envolver(anuncioDeltas(11, 0, 27, serie, metidas)));
+        assertEquals(TramaDeltas.MAXIMO_MUESTRAS, trama.getNumeroMuestras());
+
+        // Una app antigua lee la última muestra publicada en el minor
+        TramaIBeacon tib = new TramaIBeacon(anuncioDeltas(11, 0, 27, serie, metidas));
+        assertEquals(441, Utilidades.bytesToInt(tib.getMinor()));
+        assertEquals(9, tib.getMajor()[1] & 0xFF);
+    }
+
+    @Test
+    public void losContadoresDanLaVuelta() {
+        int[] metidas = new int[1];
+        TramaDeltas trama = new TramaDeltas();
+        assertTrue(trama.envolver(anuncioDeltas(12, 254, 0, new int[]{1, 2, 3, 4}, metidas)));
+        assertEquals(1, trama.getContadorUltima());
+        assertEquals(254, trama.getContador(0));
+        assertEquals(255, trama.getContador(1));
+        assertEquals(0, trama.getContador(2));
+        assertEquals(1, trama.getContador(3));
+    }
+
+    @Test
+    public void zigzagEsBiyectivo() {
+        assertEquals(0, TramaDeltas.aZigzag(0));
+        assertEquals(1, TramaDeltas.aZigzag(-1));
+        assertEquals(2, TramaDeltas.aZigzag(1));
+        for (int d = -65535; d <= 65535; d++) {
+            assertEquals(d, TramaDeltas.deZigzag(TramaDeltas.aZigzag(d)));
+        }
+    }
+
+    @Test
+    public void rechazaTramasMalFormadas() {
+        int[] metidas = new int[1];
+        TramaDeltas trama = new TramaDeltas();
+        int inicio = FormatoTrama.INICIO_UUID;
+
+        // Cero muestras o más de las que caben
+        byte[] bytes = anuncioDeltas(11, 0, 0, new int[]{1, 2}, metidas);
+        bytes[inicio + TramaDeltas.POS_NUMERO] = 0;
+        assertFalse(trama.envolver(bytes));
+        bytes[inicio + TramaDeltas.POS_NUMERO] = (byte) (TramaDeltas.MAXIMO_MUESTRAS + 1);
+        assertFalse(trama.envolver(bytes));
+
+        // Un varint que no termina dentro del UUID
+        bytes = anuncioDeltas(11, 0, 0, new int[]{1, 2}, metidas);
+        Arrays.fill(bytes, inicio + TramaDeltas.POS_DELTAS, inicio + 16, (byte) 0x80);
+        bytes[inicio + TramaDeltas.POS_NUMERO] = 4;
+        assertFalse(trama.envolver(bytes));
+
+        // Una diferencia que se sale de 16 bits
+        bytes = anuncioDeltas(11, 0, 0, new int[]{Short.MAX_VALUE, Short.MAX_VALUE}, metidas);
+        bytes[inicio + TramaDeltas.POS_DELTAS] = 2; // +1
+        assertFalse(trama.envolver(bytes));
+
+        // Otros formatos
+        assertFalse(trama.envolver(TramaMultivalorTest.anuncioMultivalor(1, new int[]{11}, new int[]{5})));
+        assertFalse(trama.envolver(null));
+    }
+
+    @Test
+    public void decodificarNoCreaObjetos() {
+        java.lang.management.ThreadMXBean hilos = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(hilos instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean medidor = (com.sun.management.ThreadMXBean) hilos;
+        Assume.assumeTrue(medidor.isThreadAllocatedMemorySupported());
+
+        int[] metidas = new int[1];
+        byte[] bytes = anuncioDeltas(11, 0, 30, new int[]{450, 460, 440, 300, 2000, 2001, 1999}, metidas);
+        TramaDeltas trama = new TramaDeltas();
+        int[] leidas = new int[TramaDeltas.MAXIMO_MUESTRAS];
+        long suma = 0;
+
+        // Calentamiento (el JIT también reserva memoria)
+        for (int i = 0; i < 50000; i++) {
+            trama.envolver(bytes);
+            suma += trama.leerMuestras(leidas) + trama.getContador(0);
+        }
+        long hilo = Thread.currentThread().getId();
+        long antes = medidor.getThreadAllocatedBytes(hilo);
+        for (int i = 0; i < 100000; i++) {
+            trama.envolver(bytes);
+            suma += trama.leerMuestras(leidas) + trama.getContador(0);
+        }
+        long reservados = medidor.getThreadAllocatedBytes(hilo) - antes;
+
+        assertTrue(suma > 0);
+        // 100000 tramas: cualquier objeto por trama daría megas
+        assertTrue("bytes reservados: " + reservados, reservados < 64 * 1024);
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tramas multivalor: detección del formato, lectura sin copias y
+ * compatibilidad con el formato iBeacon clásico.
+ */
+public class TramaMultivalorTest {
+
+    // UUID de siempre del proyecto: "EPSG-GTI-PROY-3A"
+    private static final byte[] UUID_CLASICO = "EPSG-GTI-PROY-3A".getBytes();
+
+    // Anuncio iBeacon completo (con flags) como los que da ScanRecord.getBytes()
+    static byte[] anuncio(byte[] uuid, int major, int minor) {
+        byte[] b = new byte[30];
+        byte[] prefijo = {0x02, 0x01, 0x06, 0x1A, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15};
+        System.arraycopy(prefijo, 0, b, 0, prefijo.length);
+        System.arraycopy(uuid, 0, b, 9, 16);
+        b[25] = (byte) (major >> 8);
+        b[26] = (byte) major;
+        b[27] = (byte) (minor >> 8);
+        b[28] = (byte) minor;
+        b[29] = (byte) -53;
+        return b;
+    }
+
+    // Anuncio multivalor con la primera medición repetida en major/minor
+    static byte[] anuncioMultivalor(int secuencia, int[] tipos, int[] valores) {
+        byte[] uuid = new byte[16];
+        TramaMultivalor.escribirUUID(uuid, secuencia, tipos, valores);
+        return anuncio(uuid, (tipos[0] << 8) | (secuencia & 0xFF), valores[0] & 0xFFFF);
+    }
+
+    @Test
+    public void detectaCadaFormato() {
+        assertEquals(FormatoTrama.IBEACON, FormatoTrama.detectar(anuncio(UUID_CLASICO, (11 << 8) | 3, 450)));
+        assertEquals(FormatoTrama.MULTIVALOR,
+                FormatoTrama.detectar(anuncioMultivalor(1, new int[]{11, 12}, new int[]{450, 215})));
+
+        // Otro fabricante, trama corta o null: no es un iBeacon
+        byte[] otro = anuncio(UUID_CLASICO, 0, 0);
+        otro[5] = 0x59;
+        assertEquals(FormatoTrama.DESCONOCIDO, FormatoTrama.detectar(otro));
+        assertEquals(FormatoTrama.DESCONOCIDO, FormatoTrama.detectar(new byte[10]));
+        assertEquals(FormatoTrama.DESCONOCIDO, FormatoTrama.detectar(null));
+    }
+
+    @Test
+    public void leeTodasLasMediciones() {
+        byte[] bytes = anuncioMultivalor(0xBEEF, new int[]{11, 12, 13}, new int[]{1450, -35, 70});
+        TramaMultivalor trama = new TramaMultivalor();
+
+        assertTrue(trama.envolver(bytes));
+        assertEquals(0xBEEF, trama.getSecuencia());
+        assertEquals(3, trama.getNumeroMediciones());
+        assertEquals(11, trama.getTipo(0));
+        assertEquals(1450, trama.getValor(0));
+        assertEquals(12, trama.getTipo(1));
+        assertEquals(-35, trama.getValor(1));
+        assertEquals(13, trama.getTipo(2));
+        assertEquals(70, trama.getValor(2));
+    }
+
+    @Test
+    public void funcionaSinLosFlagsDelante() {
+        byte[] conFlags = anuncioMultivalor(7, new int[]{12}, new int[]{230});
+        byte[] sinFlags = Arrays.copyOfRange(conFlags, 3, conFlags.length);
+        TramaMultivalor trama = new TramaMultivalor();
+
+        assertTrue(trama.envolver(sinFlags));
+        assertEquals(7, trama.getSecuencia());
+        assertEquals(230, trama.getValor(0));
+    }
+
+    @Test
+    public void elLectorSeReutilizaSinCopiar() {
+        TramaMultivalor trama = new TramaMultivalor();
+        byte[] bytes = anuncioMultivalor(1, new int[]{11}, new int[]{100});
+        assertTrue(trama.envolver(bytes));
+        // Lee sobre el mismo array: si cambia el array cambia lo leído
+        bytes[9 + TramaMultivalor.POS_MEDICIONES + 2] = 101;
+        assertEquals(101, trama.getValor(0));
+
+        assertFalse(trama.envolver(anuncio(UUID_CLASICO, 0, 0)));
+    }
+
+    @Test
+    public void unaAppAntiguaLeeLaPrimeraMedicion() {
+        // TramaIBeacon (lo que usaba la app hasta ahora) sigue leyendo tipo,
+        // contador y valor de la primera medición en major/minor
+        TramaIBeacon tib = new TramaIBeacon(anuncioMultivalor(0x0105, new int[]{11, 12}, new int[]{1450, 215}));
+        assertEquals(11, tib.getMajor()[0] & 0xFF);
+        assertEquals(0x05, tib.getMajor()[1] & 0xFF);
+        assertEquals(1450, Utilidades.bytesToInt(tib.getMinor()));
+    }
+
+    @Test
+    public void rechazaMasMedicionesDeLasQueCaben() {
+        byte[] bytes = anuncioMultivalor(1, new int[]{11}, new int[]{100});
+        bytes[9 + TramaMultivalor.POS_NUMERO] = 5;
+        assertFalse(new TramaMultivalor().envolver(bytes));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.biometria_adenor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compara el transporte original (conexión nueva por petición) con el
+ * persistente sobre un servidor HTTPS local: handshakes TLS por cada 1000
+ * mediciones y latencias p50 y p99. Las comparaciones son benchmarks
+ * (solo con -Pbenchmarks=true); que se reutiliza la conexión y que la
+ * ventana limita las conexiones se comprueba siempre, con menos peticiones.
+ */
+public class TransportesBenchmarkTest {
+
+    private static final int MEDICIONES = 1000;
+    private static final int PETICIONES_SIN_BENCHMARK = 100;
+    private static final byte[] CUERPO = "{\"tipo\": \"gas\", \"valor\": 133}".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void elTransportePersistenteReutilizaConexiones() throws Exception {
+        Benchmarks.soloSiSePiden();
+        long[] nueva;
+        int handshakesNueva;
+        try (ServidorHTTPPrueba servidor = ServidorHTTPPrueba.conTLS()) {
+            nueva = medirSecuencial(new TransporteConexionNueva(), servidor.url("/api/medicion"));
+            assertEquals(MEDICIONES, servidor.getConexiones());
+            handshakesNueva = servidor.getHandshakes();
+        }
+
+        try (ServidorHTTPPrueba servidor = ServidorHTTPPrueba.conTLS()) {
+            TransportePersistente persistente = new TransportePersistente(1);
+            long[] reutilizada = medirSecuencial(persistente, servidor.url("/api/medicion"));
+            int handshakes = servidor.getHandshakes();
+            persistente.cerrar();
+
+            System.out.printf("transportes TLS, %d mediciones: conexión nueva %d handshakes, p50 %.2f ms, p99 %.2f ms;"
+                            + " persistente %d handshakes, p50 %.2f ms, p99 %.2f ms%n",
+                    MEDICIONES, handshakesNueva, ms(percentil(nueva, 50)), ms(percentil(nueva, 99)),
+                    handshakes, ms(percentil(reutilizada, 50)), ms(percentil(reutilizada, 99)));
+
+            assertTrue("handshakes = " + handshakes, handshakes <= 2);
+            // Sin el handshake de cada petición no puede ir más lento, ni en la mediana ni en la cola
+            for (int p : new int[]{50, 99}) {
+                assertTrue("p" + p + " persistente " + percentil(reutilizada, p) + " ns, conexión nueva "
+                                + percentil(nueva, p) + " ns",
+                        percentil(reutilizada, p) <= percentil(nueva, p));
+            }
+        }
+    }
+
+    @Test
+    public void sucesivasPeticionesUsanElMismoHandshake() throws Exception {
+        try (ServidorHTTPPrueba servidor = ServidorHTTPPrueba.conTLS()) {
+            TransportePersistente persistente = new TransportePersistente(1);
+            for (int i = 0; i < PETICIONES_SIN_BENCHMARK; i++) {
+                assertEquals(201, persistente.enviar("POST", servidor.url("/api/medicion"), CUERPO).getCodigo());
+            }
+            assertEquals(PETICIONES_SIN_BENCHMARK, servidor.getPeticiones());
+            assertTrue("handshakes = " + servidor.getHandshakes(), servidor.getHandshakes() <= 2);
+            persistente.cerrar();
+        }
+    }
+
+    @Test
+    public void laVentanaLimitaLasConexionesEnVuelo() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            TransportePersistente persistente = new TransportePersistente(4);
+            List<Future<RespuestaHTTP>> enVuelo = new ArrayList<>();
+            for (int i = 0; i < 2 * PETICIONES_SIN_BENCHMARK; i++) {
+                enVuelo.add(persistente.enviarAsincrono("POST", servidor.url("/api/medicion"), CUERPO));
+            }
+            for (Future<RespuestaHTTP> f : enVuelo) {
+                assertEquals(201, f.get().getCodigo());
+            }
+            assertEquals(2 * PETICIONES_SIN_BENCHMARK, servidor.getPeticiones());
+            assertTrue("conexiones = " + servidor.getConexiones(), servidor.getConexiones() <= 4 + 1);
+            persistente.cerrar();
+        }
+    }
+
+    @Test
+    public void unaRespuestaDeErrorNoRompeLaReutilizacion() throws Exception {
+        try (ServidorHTTPPrueba servidor = new ServidorHTTPPrueba()) {
+            servidor.responder(500, "{\"success\":false,\"error\":\"x\"}");
+            TransportePersistente persistente = new TransportePersistente(1);
+            for (int i = 0; i < 20; i++) {
+                RespuestaHTTP r = persistente.enviar("POST", servidor.url("/api/medicion"), CUERPO);
+                assertEquals(500, r.getCodigo());
+                assertTrue(r.getCuerpo().contains("error"));
+            }
+            assertTrue(servidor.getConexiones() <= 2);
+            persistente.cerrar();
+        }
+    }
+
+    private static long[] medirSecuencial(TransporteHTTP transporte, String url) throws Exception {
+        long[] latencias = new long[MEDICIONES];
+        for (int i = 0; i < MEDICIONES; i++) {
+            long t0 = System.nanoTime();
+            RespuestaHTTP r = transporte.enviar("POST", url, CUERPO);
+            latencias[i] = System.nanoTime() - t0;
+            assertEquals(201, r.getCodigo());
+        }
+        return latencias;
+    }
+
+    // Percentil por el método del rango más cercano
+    private static long percentil(long[] latencias, int p) {
+        long[] ordenadas = latencias.clone();
+        Arrays.sort(ordenadas);
+        int rango = (int) Math.ceil(p / 100.0 * ordenadas.length);
+        return ordenadas[Math.max(rango, 1) - 1];
+    }
+
+    private static double ms(long ns) {
+        return ns / 1e6;
+    }
+}
@@ -173,6 +173,76 @@ inline void lucecitas() {
 // "cont" es un contador de cuántas veces se ha ejecutado el loop
 namespace Loop {
   uint8_t cont = 0;  // Contador (número sin signo de 8 bits: 0-255)
+
+  // Número de trama multivalor (16 bits: tarda mucho más en dar la vuelta)
+  uint16_t secuencia = 0;
+
+  // Formato de los anuncios:
+  //   TRAMA_CLASICA: un anuncio iBeacon clásico por medición (formato antiguo)
+  //   TRAMA_MULTIVALOR: CO2 y temperatura juntas en un anuncio
+  //   TRAMA_DELTAS: se guardan MUESTRAS_POR_TRAMA muestras de cada tipo y se
+  //                 publican de golpe (muchos menos anuncios)
+  enum ModoTrama { TRAMA_CLASICA, TRAMA_MULTIVALOR, TRAMA_DELTAS };
+  const ModoTrama MODO_TRAMA = TRAMA_MULTIVALOR;
+
+  // Muestras que se juntan antes de publicar en modo TRAMA_DELTAS
+  const uint8_t MUESTRAS_POR_TRAMA = 6;
+
+  // Muestras de un tipo pendientes de publicar en modo TRAMA_DELTAS
+  struct SerieMuestras {
+    int16_t valores[ Publicador::MAXIMO_MUESTRAS_DELTAS ];
+    unsigned long instantes[ Publicador::MAXIMO_MUESTRAS_DELTAS ];  // millis()
+    uint8_t numero = 0;
+    uint8_t contadorPrimera = 0;
+  };
+  SerieMuestras serieCO2;
+  SerieMuestras serieTemperatura;
+
+  // Añade una muestra a la serie (si está llena se pierde la más antigua)
+  void anotarMuestra( SerieMuestras & serie, int valor, uint8_t contador ) {
+    if ( serie.numero == Publicador::MAXIMO_MUESTRAS_DELTAS ) {
+      for ( uint8_t i = 1; i < serie.numero; i++ ) {
+        serie.valores[i - 1] = serie.valores[i];
+        serie.instantes[i - 1] = serie.instantes[i];
+      }
+      serie.numero--;
+      serie.contadorPrimera++;
+    }
+    if ( serie.numero == 0 ) {
+      serie.contadorPrimera = contador;
+    }
+    serie.valores[ serie.numero ] = (int16_t) valor;
+    serie.instantes[ serie.numero ] = millis();
+    serie.numero++;
+  }
+
+  // Periodo medio de muestreo de la serie, en segundos (0 si no se sabe)
+  uint8_t segundosEntreMuestras( const SerieMuestras & serie ) {
+    if ( serie.numero < 2 ) {
+      return 0;
+    }
+    unsigned long periodo = ( serie.instantes[ serie.numero - 1 ] - serie.instantes[0] )
+                            / ( serie.numero - 1 );
+    unsigned long segundos = ( periodo + 500 ) / 1000;
+    return segundos > 255 ? 255 : (uint8_t) segundos;
+  }
+
+  // Publica las muestras de la serie que quepan en un anuncio y las quita
+  void publicarSerie( Publicador::MedicionesID tipo, SerieMuestras & serie ) {
+    uint8_t metidas = Globales::elPublicador.publicarDeltas( tipo,
+                                                             serie.valores,
+                                                             serie.numero,
+                                                             serie.contadorPrimera,
+                                                             segundosEntreMuestras( serie ),
+                                                             1000 // intervalo de emisión
+                                                           );
+    for ( uint8_t i = metidas; i < serie.numero; i++ ) {
+      serie.valores[i - metidas] = serie.valores[i];
+      serie.instantes[i - metidas] = serie.instantes[i];
+    }
+    serie.numero -= metidas;
+    serie.contadorPrimera += metidas;
+  }
 };
 
 // ..................................................................
@@ -201,11 +271,42 @@ void loop () {
   lucecitas();
 
   // ................................................................
-  // LEER Y PUBLICAR VALOR DE CO2
+  // LEER Y PUBLICAR LAS DOS MEDICIONES EN UN SOLO ANUNCIO
   // ................................................................
   
   // Leer el valor del sensor de CO2
   int valorCO2 = elMedidor.medirCO2();
+
+  if ( MODO_TRAMA == TRAMA_DELTAS ) {
+    // Leer el valor del sensor de temperatura
+    int valorTemperatura = elMedidor.medirTemperatura();
+
+    // Solo se anuncia cuando hay MUESTRAS_POR_TRAMA muestras de cada tipo
+    anotarMuestra( serieCO2, valorCO2, cont );
+    anotarMuestra( serieTemperatura, valorTemperatura, cont );
+    if ( serieCO2.numero >= MUESTRAS_POR_TRAMA ) {
+      publicarSerie( Publicador::CO2, serieCO2 );
+    }
+    if ( serieTemperatura.numero >= MUESTRAS_POR_TRAMA ) {
+      publicarSerie( Publicador::TEMPERATURA, serieTemperatura );
+    }
+  } else if ( MODO_TRAMA == TRAMA_MULTIVALOR ) {
+    // Leer el valor del sensor de temperatura
+    int valorTemperatura = elMedidor.medirTemperatura();
+
+    Publicador::Lectura lecturas[2] = {
+      { Publicador::CO2, (int16_t) valorCO2 },
+      { Publicador::TEMPERATURA, (int16_t) valorTemperatura }
+    };
+    secuencia++;
+    elPublicador.publicarMultivalor( lecturas, 2, secuencia,
+                                     1000 // intervalo de emisión
+                                   );
+  } else {
+
+  // ................................................................
+  // LEER Y PUBLICAR VALOR DE CO2 (formato antiguo)
+  // ................................................................
   
   // Publicar el valor de CO2 por Bluetooth
   // Parámetros:
@@ -234,6 +335,8 @@ void loop () {
                                     1000 // intervalo de emisión
                                   );
 
+  } // fin del formato antiguo
+
   // ................................................................
   // CÓDIGO COMENTADO - PRUEBA DE IBEACON CON DATOS PERSONALIZADOS
   // ................................................................
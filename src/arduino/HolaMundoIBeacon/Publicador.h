@@ -65,6 +65,113 @@ public:
     RUIDO = 13          // Identificador para mediciones de ruido
   };
 
+  // ====================================================================
+  // TRAMA MULTIVALOR
+  // ====================================================================
+  // Varias mediciones (con su tipo) y un número de secuencia en un solo
+  // anuncio, dentro de los 16 bytes del UUID:
+  //
+  //   UUID[0..1]   'G' 'T'      marca de trama propia del proyecto
+  //   UUID[2]      0x01         formato multivalor
+  //   UUID[3..4]   secuencia    16 bits, byte alto primero
+  //   UUID[5]      número de mediciones (como mucho 3)
+  //   UUID[6..14]  mediciones   tipo (1 byte) + valor (2 bytes, alto primero)
+  //   UUID[15]     libre
+  //
+  // El major y el minor llevan la primera medición igual que en
+  // publicarCO2(), así una app antigua sigue leyendo esa medición
+  // (la app nueva lo decodifica con TramaMultivalor.java)
+  // ====================================================================
+  static const uint8_t FORMATO_MULTIVALOR = 0x01;
+  static const uint8_t MAXIMO_MEDICIONES_TRAMA = 3;
+
+  // Una medición dentro de la trama multivalor
+  struct Lectura {
+    uint8_t tipo;    // MedicionesID
+    int16_t valor;   // Valor medido
+  };
+
+  // ====================================================================
+  // TRAMA DE DELTAS
+  // ====================================================================
+  // Varias muestras seguidas de UN tipo de medición: la primera entera y
+  // las demás como diferencia con la anterior (las mediciones cambian
+  // poco, así que casi todas las diferencias ocupan 1 byte)
+  //
+  //   UUID[0..1]   'G' 'T'      marca de trama propia del proyecto
+  //   UUID[2]      0x02         formato de deltas
+  //   UUID[3]      número de muestras (1..MAXIMO_MUESTRAS_DELTAS)
+  //   UUID[4]      segundos entre muestras (0 = no se sabe)
+  //   UUID[5..6]   primera muestra (16 bits con signo, alto primero)
+  //   UUID[7..15]  diferencias en zig-zag + varint (1 a 3 bytes cada una)
+  //
+  //   major = tipo << 8 + contador de la ÚLTIMA muestra
+  //   minor = valor de la última muestra (lo que lee una app antigua)
+  //
+  // La muestra i lleva el contador (contador - (número - 1 - i)) & 0xFF
+  // (la app nueva lo decodifica con TramaDeltas.java)
+  // ====================================================================
+  static const uint8_t FORMATO_DELTAS = 0x02;
+  static const uint8_t MAXIMO_MUESTRAS_DELTAS = 10;
+
+  // ====================================================================
+  // MÉTODO: codificarDeltas()
+  // ====================================================================
+  // Escribe en el UUID las muestras que quepan, empezando por la primera
+  //
+  // Parámetros:
+  //   uuid: Array de 16 bytes donde escribir
+  //   muestras: Valores en orden (la más antigua primero)
+  //   numero: Cuántas muestras hay
+  //
+  // Retorna: cuántas muestras han cabido (al menos 1 si numero > 0)
+  // ====================================================================
+  static uint8_t codificarDeltas( uint8_t * uuid,
+                                  const int16_t * muestras,
+                                  uint8_t numero ) {
+
+    for ( uint8_t i = 0; i < 16; i++ ) {
+      uuid[i] = 0;
+    }
+    uuid[0] = 'G';
+    uuid[1] = 'T';
+    uuid[2] = FORMATO_DELTAS;
+    if ( numero == 0 ) {
+      return 0;
+    }
+    uuid[5] = (uint8_t) ( ( (uint16_t) muestras[0] ) >> 8 );
+    uuid[6] = (uint8_t) ( ( (uint16_t) muestras[0] ) & 0xFF );
+
+    uint8_t pos = 7;
+    uint8_t metidas = 1;
+    while ( metidas < numero && metidas < MAXIMO_MUESTRAS_DELTAS ) {
+      // Diferencia con la anterior (cabe en 17 bits) pasada a zig-zag:
+      // 0, -1, 1, -2, 2 ... -> 0, 1, 2, 3, 4 ... (pequeña si el cambio es pequeño)
+      int32_t delta = (int32_t) muestras[metidas] - (int32_t) muestras[metidas - 1];
+      uint32_t zigzag = ( (uint32_t) delta << 1 ) ^ (uint32_t) ( delta >> 31 );
+
+      // Varint: 7 bits por byte, el bit alto dice si sigue otro byte
+      uint8_t varint[3];
+      uint8_t bytes = 0;
+      do {
+        uint8_t b = zigzag & 0x7F;
+        zigzag >>= 7;
+        varint[bytes++] = zigzag != 0 ? ( b | 0x80 ) : b;
+      } while ( zigzag != 0 );
+
+      if ( pos + bytes > 16 ) {
+        break; // No cabe: irá en la trama siguiente
+      }
+      for ( uint8_t k = 0; k < bytes; k++ ) {
+        uuid[pos++] = varint[k];
+      }
+      metidas++;
+    }
+
+    uuid[3] = metidas;
+    return metidas;
+  }
+
   // ====================================================================
   // CONSTRUCTOR
   // ====================================================================
@@ -159,6 +266,134 @@ public:
     (*this).laEmisora.detenerAnuncio();
   }
 
+  // ====================================================================
+  // MÉTODO: publicarMultivalor()
+  // ====================================================================
+  // Publica varias mediciones en un solo anuncio (ver TRAMA MULTIVALOR)
+  // En lugar de alternar un anuncio de CO2 y otro de temperatura, las dos
+  // salen juntas: la mitad de anuncios y de escaneo en el móvil
+  //
+  // Parámetros:
+  //   lecturas: Mediciones a enviar (tipo + valor)
+  //   numero: Cuántas hay en lecturas (1..MAXIMO_MEDICIONES_TRAMA)
+  //   secuencia: Número de trama (el móvil descarta las repetidas)
+  //   tiempoEspera: Milisegundos durante los cuales mantener la emisión
+  // ====================================================================
+  void publicarMultivalor( const Lectura * lecturas,  // Mediciones a enviar
+                           uint8_t numero,            // Cuántas mediciones
+                           uint16_t secuencia,        // Número de trama
+                           long tiempoEspera ) {      // Tiempo de emisión en ms
+
+    if ( numero == 0 ) {
+      return;
+    }
+    if ( numero > MAXIMO_MEDICIONES_TRAMA ) {
+      numero = MAXIMO_MEDICIONES_TRAMA;
+    }
+
+    // ================================================================
+    // CONSTRUIR EL UUID CON LAS MEDICIONES
+    // ================================================================
+    uint8_t uuid[16] = { 0 };
+    uuid[0] = 'G';
+    uuid[1] = 'T';
+    uuid[2] = FORMATO_MULTIVALOR;
+    uuid[3] = (uint8_t) ( secuencia >> 8 );
+    uuid[4] = (uint8_t) ( secuencia & 0xFF );
+    uuid[5] = numero;
+    for ( uint8_t i = 0; i < numero; i++ ) {
+      uint8_t p = 6 + i * 3;
+      uuid[p] = lecturas[i].tipo;
+      uuid[p + 1] = (uint8_t) ( ( (uint16_t) lecturas[i].valor ) >> 8 );
+      uuid[p + 2] = (uint8_t) ( ( (uint16_t) lecturas[i].valor ) & 0xFF );
+    }
+
+    // ================================================================
+    // MAJOR Y MINOR COMPATIBLES: LA PRIMERA MEDICIÓN
+    // ================================================================
+    uint16_t major = ( lecturas[0].tipo << 8 ) + ( secuencia & 0xFF );
+
+    (*this).laEmisora.emitirAnuncioIBeacon( uuid,
+                                            major,
+                                            lecturas[0].valor,  // Primera medición como "minor"
+                                            (*this).RSSI        // Potencia de señal
+                                          );
+
+    // Mostrar en el puerto serie los datos que se están enviando
+    Globales::elPuerto.escribir( "   publicarMultivalor(): secuencia=" );
+    Globales::elPuerto.escribir( secuencia );
+    for ( uint8_t i = 0; i < numero; i++ ) {
+      Globales::elPuerto.escribir( "   tipo=" );
+      Globales::elPuerto.escribir( lecturas[i].tipo );
+      Globales::elPuerto.escribir( " valor=" );
+      Globales::elPuerto.escribir( lecturas[i].valor );
+    }
+    Globales::elPuerto.escribir( "\n" );
+
+    esperar( tiempoEspera );
+
+    (*this).laEmisora.detenerAnuncio();
+  }
+
+  // ====================================================================
+  // MÉTODO: publicarDeltas()
+  // ====================================================================
+  // Publica varias muestras de un tipo de medición en un solo anuncio
+  // (ver TRAMA DE DELTAS). Con 6-10 muestras por anuncio se puede
+  // anunciar muchas menos veces y gastar menos batería
+  //
+  // Parámetros:
+  //   tipo: Tipo de medición de todas las muestras
+  //   muestras: Valores en orden (la más antigua primero)
+  //   numero: Cuántas muestras hay
+  //   contadorPrimera: Contador de muestras[0] (las demás lo incrementan)
+  //   segundosEntreMuestras: Periodo de muestreo (0 si no se sabe)
+  //   tiempoEspera: Milisegundos durante los cuales mantener la emisión
+  //
+  // Retorna: cuántas muestras se han publicado (las demás, en otro anuncio)
+  // ====================================================================
+  uint8_t publicarDeltas( MedicionesID tipo,
+                          const int16_t * muestras,
+                          uint8_t numero,
+                          uint8_t contadorPrimera,
+                          uint8_t segundosEntreMuestras,
+                          long tiempoEspera ) {
+
+    uint8_t uuid[16];
+    uint8_t metidas = codificarDeltas( uuid, muestras, numero );
+    if ( metidas == 0 ) {
+      return 0;
+    }
+    uuid[4] = segundosEntreMuestras;
+
+    // El major lleva el contador de la última muestra publicada
+    uint8_t contadorUltima = contadorPrimera + metidas - 1;
+    uint16_t major = ( tipo << 8 ) + contadorUltima;
+
+    (*this).laEmisora.emitirAnuncioIBeacon( uuid,
+                                            major,
+                                            muestras[metidas - 1],  // Última muestra como "minor"
+                                            (*this).RSSI
+                                          );
+
+    // Mostrar en el puerto serie los datos que se están enviando
+    Globales::elPuerto.escribir( "   publicarDeltas(): tipo=" );
+    Globales::elPuerto.escribir( (uint8_t) tipo );
+    Globales::elPuerto.escribir( " muestras=" );
+    Globales::elPuerto.escribir( metidas );
+    Globales::elPuerto.escribir( " de " );
+    Globales::elPuerto.escribir( numero );
+    Globales::elPuerto.escribir( " contador=" );
+    Globales::elPuerto.escribir( contadorUltima );
+    Globales::elPuerto.escribir( "\n" );
+
+    esperar( tiempoEspera );
+
+    (*this).laEmisora.detenerAnuncio();
+
+    return metidas;
+  }
+
   // ====================================================================
   // MÉTODO: publicarTemperatura()
   // ====================================================================
@@ -1,87 +1,207 @@
-// ============================================================================
-// Logica.js
-// Clase que maneja la lógica de negocio para obtener mediciones del servidor
-// ============================================================================
-class Logica {
-    // ------------------------------------------------------------------------
-    // Constructor vacío de la clase
-    // ------------------------------------------------------------------------
-    constructor() {
-    }
-    
-    // ------------------------------------------------------------------------
-    // Método asíncrono que obtiene la última medición del servidor y la formatea
-    // @return objeto con formato: 
-    //   - Si éxito: { success: true, medicion: { tipo, tipoRaw, valor } }
-    //   - Si error: { success: false, error: mensaje_de_error }
-    // ------------------------------------------------------------------------
-    async getMedicion() {
-        // URL del endpoint de la API para obtener mediciones
-        const url = 'https://amburet.upv.edu.es/api/medicion'
-        
-        try {
-            // Hacer petición HTTP GET al servidor
-            const response = await fetch(url, {
-                // Especifica que es una petición GET
-                method: 'GET',
-                // Configura las cabeceras HTTP
-                headers: {
-                    // Indica que estamos enviando datos JSON
-                    'Content-Type': 'application/json',
-                    // Indica que esperamos recibir datos JSON
-                    'Accept': 'application/json'
-                }
-            });
-            
-            // Convierte la respuesta del servidor de JSON a objeto JavaScript
-            const datos = await response.json();
-            
-            // Verifica si la respuesta HTTP fue exitosa (código 200-299)
-            if (!response.ok) {
-                // Si no fue exitosa, lanza un error con el mensaje del servidor
-                // o un mensaje genérico con el código HTTP
-                throw new Error(datos.error || `Error HTTP: ${response.status}`);
-            }
-    
-            // Extrae los datos de la medición del objeto respuesta
-            const m = datos.data;
-            
-            // Verifica que los datos de medición existan y tengan los campos requeridos
-            if (!m || m.tipo === undefined || m.valor === undefined) {
-                return { success: false, error: 'Datos incompletos' };
-            }
-            
-            // Formatea el tipo de medición para mostrar:
-            // - 'temperatura' → 'Temperatura'
-            // - 'gas' → 'Gas'
-            // - cualquier otro → se deja como está
-            const tipo = m.tipo === 'temperatura' ? 'Temperatura' : 
-                        m.tipo === 'gas' ? 'Gas' : 
-                        m.tipo;
-            
-            // Formatea el valor de la medición según su tipo:
-            // - Si es temperatura: añade "°C" y redondea a 2 decimales
-            // - Si es gas: añade "ppm" y redondea a 2 decimales
-            // - Otro tipo: solo redondea a 2 decimales sin unidad
-            // Math.round(m.valor*100)/100 redondea a 2 decimales
-            const valor = m.tipo === 'temperatura' ? `${Math.round(m.valor*100)/100} °C` :
-                         m.tipo === 'gas' ? `${Math.round(m.valor*100)/100} ppm` :
-                         `${Math.round(m.valor*100)/100}`;
-            
-            // Devuelve objeto exitoso con la medición formateada
-            return { 
-                success: true, 
-                medicion: { 
-                    tipo,              // Tipo formateado para mostrar
-                    tipoRaw: m.tipo,   // Tipo original sin formatear
-                    valor              // Valor con unidad formateada
-                } 
-            };
-            
-        } catch (err) {
-            // Si ocurre cualquier error (red, JSON inválido, etc.)
-            // devuelve objeto de error con el mensaje
-            return { success: false, error: err.message };
-        }
-    }
-}
+// ============================================================================
+// Logica.js
+// Clase que maneja la lógica de negocio para obtener mediciones del servidor
+// ============================================================================
+class Logica {
+    // ------------------------------------------------------------------------
+    // Constructor vacío de la clase
+    // ------------------------------------------------------------------------
+    constructor() {
+        // Conexión del directo (EventSource) mientras haya una suscripción
+        this.fuenteDirecto = null;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Formatea una medición tal y como llega del servidor para mostrarla
+    // @param m - objeto con { tipo, valor, valor_ing } (más id, dispositivo_id,
+    //            timestamp)
+    // @return objeto con { tipo, tipoRaw, valor, original } (original es la
+    //         medición tal y como llegó, para guardarla en la tabla y la gráfica)
+    // ------------------------------------------------------------------------
+    formatearMedicion(m) {
+        // Formatea el tipo de medición para mostrar:
+        // - 'temperatura' → 'Temperatura'
+        // - 'gas' → 'Gas'
+        // - cualquier otro → se deja como está
+        const tipo = m.tipo === 'temperatura' ? 'Temperatura' : 
+                    m.tipo === 'gas' ? 'Gas' : 
+                    m.tipo;
+        
+        // El valor en unidades es el calibrado (valor_ing) si lo trae: entonces
+        // "valor" es el crudo del sensor (-12 °C llega como 65524)
+        const medido = m.valor_ing === undefined || m.valor_ing === null ? m.valor : m.valor_ing;
+        
+        // Formatea el valor de la medición según su tipo:
+        // - Si es temperatura: añade "°C" y redondea a 2 decimales
+        // - Si es gas: añade "ppm" y redondea a 2 decimales
+        // - Otro tipo: solo redondea a 2 decimales sin unidad
+        // Math.round(medido*100)/100 redondea a 2 decimales
+        const valor = m.tipo === 'temperatura' ? `${Math.round(medido*100)/100} °C` :
+                     m.tipo === 'gas' ? `${Math.round(medido*100)/100} ppm` :
+                     `${Math.round(medido*100)/100}`;
+        
+        return { 
+            tipo,              // Tipo formateado para mostrar
+            tipoRaw: m.tipo,   // Tipo original sin formatear
+            valor,             // Valor con unidad formateada
+            original: m        // Medición sin formatear
+        };
+    }
+    
+    // ------------------------------------------------------------------------
+    // Se suscribe a las mediciones en directo (Server-Sent Events): el servidor
+    // envía cada medición nueva en cuanto se guarda, sin tener que preguntar
+    // cada pocos segundos. Si se corta la conexión el navegador reconecta solo.
+    // @param alRecibir - función que recibe cada medición formateada
+    // @param filtros - { tipos: ['gas', ...], sensores: [1, ...] } (opcional)
+    // @return false si el navegador no soporta EventSource (usar getMedicion)
+    // ------------------------------------------------------------------------
+    suscribirse(alRecibir, { tipos = [], sensores = [] } = {}) {
+        if (typeof EventSource === 'undefined') {
+            return false;
+        }
+        this.cancelarSuscripcion();
+        
+        // URL del endpoint del directo con los filtros como listas separadas por comas
+        const params = new URLSearchParams();
+        if (tipos.length > 0) params.set('tipo', tipos.join(','));
+        if (sensores.length > 0) params.set('id_sensor', sensores.join(','));
+        const consulta = params.toString();
+        const url = 'https://amburet.upv.edu.es/api/mediciones/directo' + (consulta ? `?${consulta}` : '');
+        
+        this.fuenteDirecto = new EventSource(url);
+        // Cada evento "medicion" trae una medición en JSON
+        this.fuenteDirecto.addEventListener('medicion', (evento) => {
+            const m = JSON.parse(evento.data);
+            if (m && m.tipo !== undefined && m.valor !== undefined) {
+                alRecibir(this.formatearMedicion(m));
+            }
+        });
+        return true;
+    }
+    
+    // ------------------------------------------------------------------------
+    // Cierra la conexión del directo (si la hay)
+    // ------------------------------------------------------------------------
+    cancelarSuscripcion() {
+        if (this.fuenteDirecto) {
+            this.fuenteDirecto.close();
+            this.fuenteDirecto = null;
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Obtiene una página del histórico (de la más reciente a la más antigua)
+    // para llenar la tabla al cargar; lo que llega después viene del directo
+    // @param opciones - { limite (1-1000), cursor (el "siguiente" de la página
+    //                   anterior), tipo, sensor } (todas opcionales)
+    // @return objeto con formato:
+    //   - Si éxito: { success: true, mediciones: [{ id, dispositivo_id, tipo,
+    //               valor, valor_ing, timestamp }, ...], siguiente }
+    //   - Si error: { success: false, error: mensaje_de_error }
+    // ------------------------------------------------------------------------
+    async getHistorico({ limite = 1000, cursor, tipo, sensor } = {}) {
+        const params = new URLSearchParams({ limite: String(limite) });
+        if (cursor) params.set('cursor', cursor);
+        if (tipo) params.set('tipo', tipo);
+        if (sensor !== undefined) params.set('id_sensor', String(sensor));
+        const url = 'https://amburet.upv.edu.es/api/mediciones/historico?' + params.toString();
+        
+        try {
+            const response = await fetch(url, { method: 'GET', headers: { 'Accept': 'application/json' } });
+            const datos = await response.json();
+            if (!response.ok) {
+                throw new Error(datos.error || `Error HTTP: ${response.status}`);
+            }
+            return { success: true, mediciones: datos.data, siguiente: datos.siguiente };
+        } catch (err) {
+            return { success: false, error: err.message };
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Obtiene la serie de un tipo de medición en un rango para la gráfica, ya
+    // reducida en el servidor a como mucho "puntos" puntos que conservan la
+    // forma (LTTB): no hace falta descargar ni dibujar más puntos que píxeles
+    // @param opciones - { tipo, desde, hasta (Date), puntos, metodo ('lttb' o
+    //                   'minmax'), sensor (opcional) }
+    // @return objeto con formato:
+    //   - Si éxito: { success: true, puntos: [[instante ms, valor], ...], bytes }
+    //   - Si error: { success: false, error: mensaje_de_error }
+    // ------------------------------------------------------------------------
+    async getSerie({ tipo, desde, hasta, puntos, metodo = 'lttb', sensor }) {
+        const params = new URLSearchParams({
+            tipo,
+            desde: desde.toISOString(),
+            hasta: hasta.toISOString(),
+            puntos: String(puntos),
+            metodo
+        });
+        if (sensor !== undefined) params.set('id_sensor', String(sensor));
+        const url = 'https://amburet.upv.edu.es/api/mediciones/serie?' + params.toString();
+        
+        try {
+            const response = await fetch(url, { method: 'GET', headers: { 'Accept': 'application/json' } });
+            const texto = await response.text();
+            const datos = JSON.parse(texto);
+            if (!response.ok) {
+                throw new Error(datos.error || `Error HTTP: ${response.status}`);
+            }
+            return { success: true, puntos: datos.data, bytes: texto.length };
+        } catch (err) {
+            return { success: false, error: err.message };
+        }
+    }
+    
+    // ------------------------------------------------------------------------
+    // Método asíncrono que obtiene la última medición del servidor y la formatea
+    // @return objeto con formato: 
+    //   - Si éxito: { success: true, medicion: { tipo, tipoRaw, valor } }
+    //   - Si error: { success: false, error: mensaje_de_error }
+    // ------------------------------------------------------------------------
+    async getMedicion() {
+        // URL del endpoint de la API para obtener mediciones
+        const url = 'https://amburet.upv.edu.es/api/medicion'
+        
+        try {
+            // Hacer petición HTTP GET al servidor
+            const response = await fetch(url, {
+                // Especifica que es una petición GET
+                method: 'GET',
+                // Configura las cabeceras HTTP
+                headers: {
+                    // Indica que estamos enviando datos JSON
+                    'Content-Type': 'application/json',
+                    // Indica que esperamos recibir datos JSON
+                    'Accept': 'application/json'
+                }
+            });
+            
+            // Convierte la respuesta del servidor de JSON a objeto JavaScript
+            const datos = await response.json();
+            
+            // Verifica si la respuesta HTTP fue exitosa (código 200-299)
+            if (!response.ok) {
+                // Si no fue exitosa, lanza un error con el mensaje del servidor
+                // o un mensaje genérico con el código HTTP
+                throw new Error(datos.error || `Error HTTP: ${response.status}`);
+            }
+    
+            // Extrae los datos de la medición del objeto respuesta
+            const m = datos.data;
+            
+            // Verifica que los datos de medición existan y tengan los campos requeridos
+            if (!m || m.tipo === undefined || m.valor === undefined) {
+                return { success: false, error: 'Datos incompletos' };
+            }
+            
+            // Devuelve objeto exitoso con la medición formateada
+            return { success: true, medicion: this.formatearMedicion(m) };
+            
+        } catch (err) {
+            // Si ocurre cualquier error (red, JSON inválido, etc.)
+            // devuelve objeto de error con el mensaje
+            return { success: false, error: err.message };
+        }
+    }
+}
@@ -0,0 +1,366 @@
+// ============================================================================
+// Vista.js
+// Piezas para mostrar muchas mediciones sin que la página se atasque:
+//   - AnilloMediciones: las mediciones en arrays tipados de tamaño fijo (un
+//     anillo: al llenarse, cada nueva pisa la más antigua). Añadir una es
+//     escribir unos números, sin crear objetos ni tocar el DOM.
+//   - PlanificadorFotogramas: junta todos los cambios que llegan entre dos
+//     fotogramas en un solo dibujo (requestAnimationFrame).
+//   - TablaVirtual: solo están en el DOM las filas que se ven (más unas pocas
+//     de margen); al desplazarse se reutilizan cambiando su texto.
+//   - GraficaAnillo: dibuja en el canvas la serie guardada en un anillo,
+//     con un mínimo, un máximo, un primero y un último por columna de
+//     píxeles, así que el dibujo no crece con el número de mediciones.
+// ============================================================================
+
+// Tipos de medición como números (para guardarlos en un Uint8Array)
+const TIPOS_MEDICION = ['gas', 'temperatura'];
+const TIPO_DESCONOCIDO = 255;
+
+class AnilloMediciones {
+    // ------------------------------------------------------------------------
+    // @param capacidad - mediciones que caben (al pasarse se pierden las más antiguas)
+    // ------------------------------------------------------------------------
+    constructor(capacidad) {
+        this.capacidad = capacidad;
+        this.ids = new Float64Array(capacidad);
+        this.instantes = new Float64Array(capacidad); // ms desde 1970
+        this.valores = new Float32Array(capacidad);
+        this.tipos = new Uint8Array(capacidad);
+        this.sensores = new Int32Array(capacidad);
+        this.inicio = 0;      // Posición de la más antigua
+        this.longitud = 0;    // Mediciones guardadas
+        this.escritas = 0;    // Mediciones añadidas desde el principio (no baja al vaciar)
+    }
+
+    // ------------------------------------------------------------------------
+    // Añade una medición al final (la más reciente)
+    // ------------------------------------------------------------------------
+    anadir(id, instante, valor, tipo, sensor) {
+        let p;
+        if (this.longitud < this.capacidad) {
+            p = (this.inicio + this.longitud) % this.capacidad;
+            this.longitud++;
+        } else {
+            // Lleno: la nueva ocupa el sitio de la más antigua
+            p = this.inicio;
+            this.inicio = (this.inicio + 1) % this.capacidad;
+        }
+        this.ids[p] = id;
+        this.instantes[p] = instante;
+        this.valores[p] = valor;
+        const codigo = TIPOS_MEDICION.indexOf(tipo);
+        this.tipos[p] = codigo < 0 ? TIPO_DESCONOCIDO : codigo;
+        this.sensores[p] = sensor;
+        this.escritas++;
+    }
+
+    // ------------------------------------------------------------------------
+    // Añade una medición tal y como llega del servidor (con el valor
+    // calibrado, valor_ing, si lo trae: entonces "valor" es el crudo)
+    // @param m - { id, dispositivo_id, tipo, valor, valor_ing, timestamp }
+    // ------------------------------------------------------------------------
+    anadirMedicion(m) {
+        const instante = typeof m.timestamp === 'number' ? m.timestamp : Date.parse(m.timestamp);
+        const valor = m.valor_ing === undefined || m.valor_ing === null ? m.valor : m.valor_ing;
+        this.anadir(Number(m.id) || 0, Number.isFinite(instante) ? instante : Date.now(),
+            Number(valor), m.tipo, Number(m.dispositivo_id) || 0);
+    }
+
+    // Posición en los arrays de la i-ésima medición, contando desde la más antigua
+    posicion(i) {
+        return (this.inicio + i) % this.capacidad;
+    }
+
+    // Posición de la i-ésima medición contando desde la más reciente
+    posicionReciente(i) {
+        return (this.inicio + this.longitud - 1 - i) % this.capacidad;
+    }
+
+    // Nombre del tipo guardado en una posición
+    tipoEn(p) {
+        return TIPOS_MEDICION[this.tipos[p]] || '?';
+    }
+
+    vaciar() {
+        this.inicio = 0;
+        this.longitud = 0;
+    }
+}
+
+class PlanificadorFotogramas {
+    // ------------------------------------------------------------------------
+    // @param dibujar - función que dibuja (se llama como mucho una vez por fotograma)
+    // @param pedirFotograma - requestAnimationFrame (se puede cambiar en las pruebas)
+    // ------------------------------------------------------------------------
+    constructor(dibujar, pedirFotograma = (f) => requestAnimationFrame(f)) {
+        this.dibujar = dibujar;
+        this.pedirFotograma = pedirFotograma;
+        this.pedido = false;
+        this.fotogramas = 0;
+    }
+
+    // Pide que se dibuje en el próximo fotograma (si ya estaba pedido, nada)
+    pedir() {
+        if (this.pedido) {
+            return;
+        }
+        this.pedido = true;
+        this.pedirFotograma((instante) => {
+            this.pedido = false;
+            this.fotogramas++;
+            this.dibujar(instante);
+        });
+    }
+}
+
+class TablaVirtual {
+    // ------------------------------------------------------------------------
+    // @param contenedor - elemento con altura fija y overflow-y: auto
+    // @param anillo - AnilloMediciones con las filas (se muestran de la más
+    //                 reciente a la más antigua)
+    // @param opciones - { altoFila: px, margen: filas de más arriba y abajo,
+    //                     formatear: (anillo, posicion) => [textos de las celdas],
+    //                     pedirFotograma }
+    // ------------------------------------------------------------------------
+    constructor(contenedor, anillo, { altoFila = 24, margen = 8, formatear, pedirFotograma } = {}) {
+        this.contenedor = contenedor;
+        this.anillo = anillo;
+        this.altoFila = altoFila;
+        this.margen = margen;
+        this.formatear = formatear;
+        this.planificador = new PlanificadorFotogramas(() => this.dibujar(), pedirFotograma);
+
+        // Elemento tan alto como todas las filas juntas, para que la barra de
+        // desplazamiento sea la de la tabla entera
+        this.espaciador = document.createElement('div');
+        this.espaciador.style.position = 'relative';
+        this.contenedor.appendChild(this.espaciador);
+
+        // Filas creadas (se reutilizan), con la medición que muestra cada una
+        this.filas = [];
+        this.escritasDibujadas = anillo.escritas;
+
+        this.contenedor.addEventListener('scroll', () => this.planificador.pedir());
+        this.planificador.pedir();
+    }
+
+    // Avisa de que el anillo ha cambiado (se dibuja en el próximo fotograma)
+    actualizar() {
+        this.planificador.pedir();
+    }
+
+    // ------------------------------------------------------------------------
+    // Pone en el DOM las filas visibles
+    // ------------------------------------------------------------------------
+    dibujar() {
+        const total = this.anillo.longitud;
+        this.espaciador.style.height = `${total * this.altoFila}px`;
+
+        // Las nuevas entran por arriba: si el usuario está mirando más abajo,
+        // se baja lo mismo para que no se le muevan las filas
+        const nuevas = this.anillo.escritas - this.escritasDibujadas;
+        this.escritasDibujadas = this.anillo.escritas;
+        if (nuevas > 0 && this.contenedor.scrollTop > 0) {
+            this.contenedor.scrollTop += nuevas * this.altoFila;
+        }
+
+        const primera = Math.max(0, Math.floor(this.contenedor.scrollTop / this.altoFila) - this.margen);
+        const visibles = Math.ceil(this.contenedor.clientHeight / this.altoFila) + 2 * this.margen;
+        const ultima = Math.min(total, primera + visibles);
+
+        // Crea las filas que falten (solo la primera vez o si crece la tabla)
+        while (this.filas.length < ultima - primera) {
+            const elemento = document.createElement('div');
+            elemento.style.position = 'absolute';
+            elemento.style.left = '0';
+            elemento.style.right = '0';
+            elemento.style.height = `${this.altoFila}px`;
+            elemento.style.display = 'flex';
+            this.espaciador.appendChild(elemento);
+            this.filas.push({ elemento, celdas: [], numero: -1, top: -1 });
+        }
+
+        for (let k = 0; k < this.filas.length; k++) {
+            const fila = this.filas[k];
+            const i = primera + k;
+            if (i >= ultima) {
+                fila.elemento.style.display = 'none';
+                fila.numero = -1;
+                continue;
+            }
+            fila.elemento.style.display = 'flex';
+            const p = this.anillo.posicionReciente(i);
+            const top = i * this.altoFila;
+            if (fila.top !== top) {
+                fila.elemento.style.transform = `translateY(${top}px)`;
+                fila.top = top;
+            }
+            // Solo se reescribe el texto si la fila muestra otra medición
+            // (cada medición tiene su número de escritura, que no se repite)
+            const numero = this.anillo.escritas - 1 - i;
+            if (fila.numero !== numero) {
+                this.escribirFila(fila, this.formatear(this.anillo, p));
+                fila.numero = numero;
+            }
+        }
+    }
+
+    escribirFila(fila, textos) {
+        while (fila.celdas.length < textos.length) {
+            const celda = document.createElement('span');
+            celda.style.flex = '1';
+            fila.elemento.appendChild(celda);
+            fila.celdas.push(celda);
+        }
+        for (let c = 0; c < textos.length; c++) {
+            fila.celdas[c].textContent = textos[c];
+        }
+    }
+
+    // Filas que hay ahora en el DOM (para el estado y el benchmark)
+    getFilasEnDOM() {
+        return this.filas.length;
+    }
+}
+
+class GraficaAnillo {
+    // ------------------------------------------------------------------------
+    // @param canvas - lienzo donde se dibuja
+    // @param anillo - AnilloMediciones con la serie en orden de tiempo
+    // @param pedirFotograma - requestAnimationFrame (se puede cambiar en las pruebas)
+    // ------------------------------------------------------------------------
+    constructor(canvas, anillo, pedirFotograma) {
+        this.canvas = canvas;
+        this.anillo = anillo;
+        this.color = '#2980b9';
+        this.desde = 0;
+        this.hasta = 0;
+        this.deslizar = false;
+        this.planificador = new PlanificadorFotogramas(() => this.dibujar(), pedirFotograma);
+        this.columnas = null;
+        this.ultimoDibujo = { puntos: 0, minimo: NaN, maximo: NaN, ms: 0 };
+    }
+
+    // ------------------------------------------------------------------------
+    // Elige el rango que se ve (se aplica en el próximo dibujo)
+    // @param desde, hasta - ms desde 1970
+    // @param deslizar - si true, el rango avanza con la hora (mismo ancho
+    //                   hasta ahora) en cada dibujo, para el directo
+    // ------------------------------------------------------------------------
+    setRango(desde, hasta, deslizar = false) {
+        this.desde = desde;
+        this.hasta = hasta;
+        this.deslizar = deslizar;
+    }
+
+    // Avisa de que el anillo ha cambiado (se dibuja en el próximo fotograma)
+    actualizar() {
+        this.planificador.pedir();
+    }
+
+    // ------------------------------------------------------------------------
+    // Dibuja la serie: por cada columna de píxeles se guardan el primero, el
+    // mínimo, el máximo y el último valor y se dibuja una línea que pasa por
+    // los cuatro, que se ve igual que la línea con todos los puntos
+    // ------------------------------------------------------------------------
+    dibujar() {
+        const inicio = performance.now();
+        const ancho = this.canvas.width;
+        const alto = this.canvas.height;
+        if (this.deslizar) {
+            const rango = this.hasta - this.desde;
+            this.hasta = Date.now();
+            this.desde = this.hasta - rango;
+        }
+        if (this.columnas === null || this.columnas.primero.length !== ancho) {
+            this.columnas = {
+                primero: new Float32Array(ancho),
+                minimo: new Float32Array(ancho),
+                maximo: new Float32Array(ancho),
+                ultimo: new Float32Array(ancho),
+                usada: new Uint8Array(ancho)
+            };
+        }
+        const { primero, minimo, maximo, ultimo, usada } = this.columnas;
+        const { puntos, minimoSerie, maximoSerie } = this.agrupar(ancho);
+
+        const ctx = this.canvas.getContext('2d');
+        ctx.clearRect(0, 0, ancho, alto);
+        if (puntos > 0) {
+            const escalaY = maximoSerie > minimoSerie ? (alto - 1) / (maximoSerie - minimoSerie) : 0;
+            const y = (v) => (alto - 1) - (v - minimoSerie) * escalaY;
+            ctx.strokeStyle = this.color;
+            ctx.lineWidth = (typeof window !== 'undefined' && window.devicePixelRatio) || 1;
+            ctx.beginPath();
+            let empezada = false;
+            for (let x = 0; x < ancho; x++) {
+                if (usada[x] === 0) {
+                    continue;
+                }
+                if (!empezada) {
+                    ctx.moveTo(x, y(primero[x]));
+                    empezada = true;
+                } else {
+                    ctx.lineTo(x, y(primero[x]));
+                }
+                if (maximo[x] > minimo[x]) {
+                    ctx.lineTo(x, y(minimo[x]));
+                    ctx.lineTo(x, y(maximo[x]));
+                }
+                ctx.lineTo(x, y(ultimo[x]));
+            }
+            ctx.stroke();
+        }
+        this.ultimoDibujo = {
+            puntos,
+            minimo: minimoSerie,
+            maximo: maximoSerie,
+            ms: performance.now() - inicio
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // Reparte las mediciones del rango entre las columnas (primero, mínimo,
+    // máximo y último de cada una). Va en su propio método para que el bucle,
+    // que es lo que cuesta, se optimice solo y no lo deshaga el código del canvas
+    // @return { puntos, minimoSerie, maximoSerie } del rango
+    // ------------------------------------------------------------------------
+    agrupar(ancho) {
+        const { primero, minimo, maximo, ultimo, usada } = this.columnas;
+        usada.fill(0);
+        const { instantes, valores, capacidad, inicio, longitud } = this.anillo;
+        const desde = this.desde;
+        const hasta = this.hasta;
+        const escalaX = ancho / (hasta - desde);
+        let minimoSerie = Infinity;
+        let maximoSerie = -Infinity;
+        let puntos = 0;
+        let p = inicio;
+        for (let i = 0; i < longitud; i++, p++) {
+            if (p === capacidad) {
+                p = 0;
+            }
+            const t = instantes[p];
+            if (t < desde || t > hasta) {
+                continue;
+            }
+            const v = valores[p];
+            const x = Math.min(ancho - 1, Math.floor((t - desde) * escalaX));
+            if (usada[x] === 0) {
+                usada[x] = 1;
+                primero[x] = v;
+                minimo[x] = v;
+                maximo[x] = v;
+            } else {
+                if (v < minimo[x]) minimo[x] = v;
+                if (v > maximo[x]) maximo[x] = v;
+            }
+            ultimo[x] = v;
+            if (v < minimoSerie) minimoSerie = v;
+            if (v > maximoSerie) maximoSerie = v;
+            puntos++;
+        }
+        return { puntos, minimoSerie, maximoSerie };
+    }
+}
@@ -1,139 +1,281 @@
-// ============================================================================
-// app.js
-// Archivo principal que maneja la interfaz de usuario y la interacción
-// ============================================================================
-
-// Variable global que almacena la instancia de la clase Logica
-// Se usa para acceder a los métodos de lógica de negocio desde toda la aplicación
-let logicaNegocio;
-
-// Objeto global que almacena referencias a los elementos HTML del DOM
-// Evita buscar elementos repetidamente con getElementById
-let elementos = {};
-
-// ============================================================================
-// INICIALIZACIÓN
-// ============================================================================
-
-// Event listener que se ejecuta cuando el HTML ha cargado completamente
-// Es el punto de entrada de la aplicación
-document.addEventListener('DOMContentLoaded', function() {
-    // Crea una nueva instancia de la clase Logica
-    logicaNegocio = new Logica();
-    
-    // Busca y guarda referencias a todos los elementos HTML necesarios
-    inicializarElementos();
-    
-    // Configura los event listeners (clicks, etc.) en los elementos
-    configurarEventListeners();
-    
-    // Obtiene y muestra la primera medición al cargar la página
-    actualizarMedicion();
-});
-
-// ============================================================================
-// CONFIGURACIÓN INICIAL
-// ============================================================================
-
-// Función que busca y guarda referencias a todos los elementos HTML del DOM
-// Almacena las referencias en el objeto 'elementos' para acceso rápido
-function inicializarElementos() {
-    elementos = {
-        // Contenedor principal donde se muestra la medición
-        medicionContainer: document.getElementById('medicion-container'),
-        
-        // Elemento que muestra el tipo de medición (Temperatura/Gas)
-        tipoValor: document.getElementById('tipo-valor'),
-        
-        // Elemento que muestra el valor de la medición con unidad
-        medicionValor: document.getElementById('medicion-valor'),
-        
-        // Elemento que se muestra cuando no hay datos disponibles
-        sinDatos: document.getElementById('sin-datos'),
-        
-        // Botón para actualizar/recargar la medición
-        btnActualizar: document.getElementById('btn-actualizar')
-    };
-}
-
-// Función que configura los event listeners (manejadores de eventos)
-// Asocia acciones del usuario con funciones
-function configurarEventListeners() {
-    // Cuando se hace click en el botón actualizar, ejecuta la función actualizarMedicion
-    elementos.btnActualizar.addEventListener('click', actualizarMedicion);
-}
-
-// ============================================================================
-// ACTUALIZACIÓN DE MEDICIONES
-// ============================================================================
-
-// Función asíncrona que obtiene la última medición del servidor y actualiza la UI
-// Se ejecuta al cargar la página y cada vez que se pulsa el botón actualizar
-async function actualizarMedicion() {
-    // Deshabilita el botón para evitar múltiples clicks mientras carga
-    elementos.btnActualizar.disabled = true;
-    
-    // Cambia el texto del botón para indicar que está cargando
-    elementos.btnActualizar.textContent = 'Actualizando...';
-    
-    try {
-        // Llama al método getMedicion de la lógica de negocio
-        // Espera (await) a que termine la petición al servidor
-        const resultado = await logicaNegocio.getMedicion();
-        
-        // Verifica si la petición fue exitosa
-        if (resultado.success) {
-            // Si hay datos, los muestra en la interfaz
-            mostrarMedicion(resultado.medicion);
-        } else {
-            // Si no hay datos o hubo error, muestra mensaje de sin datos
-            mostrarSinDatos();
-        }
-    } catch (error) {
-        // Si ocurre algún error no capturado, muestra mensaje de sin datos
-        mostrarSinDatos();
-    } finally {
-        // Este bloque SIEMPRE se ejecuta al final (haya error o no)
-        
-        // Vuelve a habilitar el botón
-        elementos.btnActualizar.disabled = false;
-        
-        // Restaura el texto original del botón
-        elementos.btnActualizar.textContent = 'Obtener dato más reciente';
-    }
-}
-
-// Función que muestra una medición en la interfaz
-// @param medicion - objeto con { tipo, tipoRaw, valor }
-function mostrarMedicion(medicion) {
-    // Oculta el mensaje de "sin datos"
-    elementos.sinDatos.style.display = 'none';
-    
-    // Muestra el contenedor de la medición
-    elementos.medicionContainer.style.display = 'block';
-    
-    // Actualiza el texto del tipo de medición (Temperatura/Gas)
-    elementos.tipoValor.textContent = medicion.tipo;
-    
-    // Actualiza el texto del valor con su unidad (ej: "25.5 °C")
-    elementos.medicionValor.textContent = medicion.valor;
-    
-    // Cambia el color del valor según el tipo de medición
-    if (medicion.tipoRaw === 'temperatura') {
-        // Rojo para temperatura
-        elementos.medicionValor.style.color = '#e74c3c';
-    } else if (medicion.tipoRaw === 'gas') {
-        // Azul para gas
-        elementos.medicionValor.style.color = '#2980b9';
-    }
-}
-
-// Función que muestra el mensaje de "sin datos disponibles"
-// Se ejecuta cuando no hay mediciones o hay un error
-function mostrarSinDatos() {
-    // Oculta el contenedor de medición
-    elementos.medicionContainer.style.display = 'none';
-    
-    // Muestra el mensaje de sin datos
-    elementos.sinDatos.style.display = 'block';
-}
+// ============================================================================
+// app.js
+// Archivo principal que maneja la interfaz de usuario y la interacción
+// ============================================================================
+
+// Variable global que almacena la instancia de la clase Logica
+// Se usa para acceder a los métodos de lógica de negocio desde toda la aplicación
+let logicaNegocio;
+
+// Objeto global que almacena referencias a los elementos HTML del DOM
+// Evita buscar elementos repetidamente con getElementById
+let elementos = {};
+
+// Mediciones de la tabla (las últimas que han llegado) y de la gráfica
+// (la serie del rango elegido más las que llegan del directo), en anillos
+// de arrays tipados: cada medición nueva se añade sin rehacer nada
+const CAPACIDAD_TABLA = 131072;
+const CAPACIDAD_GRAFICA = 65536;
+const anilloTabla = new AnilloMediciones(CAPACIDAD_TABLA);
+const anilloGrafica = new AnilloMediciones(CAPACIDAD_GRAFICA);
+
+// Tabla virtual y gráfica (se crean al cargar la página)
+let tabla;
+let grafica;
+
+// ============================================================================
+// INICIALIZACIÓN
+// ============================================================================
+
+// Event listener que se ejecuta cuando el HTML ha cargado completamente
+// Es el punto de entrada de la aplicación
+document.addEventListener('DOMContentLoaded', function() {
+    // Crea una nueva instancia de la clase Logica
+    logicaNegocio = new Logica();
+    
+    // Busca y guarda referencias a todos los elementos HTML necesarios
+    inicializarElementos();
+    
+    // Configura los event listeners (clicks, etc.) en los elementos
+    configurarEventListeners();
+    
+    // Tabla y gráfica que se dibujan desde los anillos, una vez por fotograma
+    tabla = new TablaVirtual(elementos.tabla, anilloTabla, { altoFila: 24, formatear: formatearFila });
+    grafica = new GraficaAnillo(elementos.grafica, anilloGrafica);
+    
+    // Obtiene y muestra la primera medición al cargar la página
+    actualizarMedicion();
+    
+    // Dibuja la gráfica del rango elegido (por defecto, gas de la última semana)
+    actualizarGrafica();
+    
+    // Llena la tabla con las últimas mediciones guardadas
+    cargarTabla();
+    
+    // A partir de ahí las mediciones nuevas llegan solas del servidor (directo)
+    // El botón actualizar se mantiene por si el directo no está disponible
+    logicaNegocio.suscribirse(recibirMedicion);
+});
+
+// ============================================================================
+// CONFIGURACIÓN INICIAL
+// ============================================================================
+
+// Función que busca y guarda referencias a todos los elementos HTML del DOM
+// Almacena las referencias en el objeto 'elementos' para acceso rápido
+function inicializarElementos() {
+    elementos = {
+        // Contenedor principal donde se muestra la medición
+        medicionContainer: document.getElementById('medicion-container'),
+        
+        // Elemento que muestra el tipo de medición (Temperatura/Gas)
+        tipoValor: document.getElementById('tipo-valor'),
+        
+        // Elemento que muestra el valor de la medición con unidad
+        medicionValor: document.getElementById('medicion-valor'),
+        
+        // Elemento que se muestra cuando no hay datos disponibles
+        sinDatos: document.getElementById('sin-datos'),
+        
+        // Botón para actualizar/recargar la medición
+        btnActualizar: document.getElementById('btn-actualizar'),
+        
+        // Gráfica: lienzo, selectores de tipo y rango y texto de estado
+        grafica: document.getElementById('grafica'),
+        graficaTipo: document.getElementById('grafica-tipo'),
+        graficaRango: document.getElementById('grafica-rango'),
+        graficaEstado: document.getElementById('grafica-estado'),
+        
+        // Tabla de mediciones recibidas: contenedor con scroll y texto de estado
+        tabla: document.getElementById('tabla-mediciones'),
+        tablaEstado: document.getElementById('tabla-estado')
+    };
+}
+
+// Función que configura los event listeners (manejadores de eventos)
+// Asocia acciones del usuario con funciones
+function configurarEventListeners() {
+    // Cuando se hace click en el botón actualizar, ejecuta la función actualizarMedicion
+    elementos.btnActualizar.addEventListener('click', actualizarMedicion);
+    
+    // Al cambiar el tipo o el rango se vuelve a pedir la serie
+    elementos.graficaTipo.addEventListener('change', actualizarGrafica);
+    elementos.graficaRango.addEventListener('change', actualizarGrafica);
+}
+
+// ============================================================================
+// ACTUALIZACIÓN DE MEDICIONES
+// ============================================================================
+
+// Función asíncrona que obtiene la última medición del servidor y actualiza la UI
+// Se ejecuta al cargar la página y cada vez que se pulsa el botón actualizar
+async function actualizarMedicion() {
+    // Deshabilita el botón para evitar múltiples clicks mientras carga
+    elementos.btnActualizar.disabled = true;
+    
+    // Cambia el texto del botón para indicar que está cargando
+    elementos.btnActualizar.textContent = 'Actualizando...';
+    
+    try {
+        // Llama al método getMedicion de la lógica de negocio
+        // Espera (await) a que termine la petición al servidor
+        const resultado = await logicaNegocio.getMedicion();
+        
+        // Verifica si la petición fue exitosa
+        if (resultado.success) {
+            // Si hay datos, los muestra en la interfaz
+            mostrarMedicion(resultado.medicion);
+        } else {
+            // Si no hay datos o hubo error, muestra mensaje de sin datos
+            mostrarSinDatos();
+        }
+    } catch (error) {
+        // Si ocurre algún error no capturado, muestra mensaje de sin datos
+        mostrarSinDatos();
+    } finally {
+        // Este bloque SIEMPRE se ejecuta al final (haya error o no)
+        
+        // Vuelve a habilitar el botón
+        elementos.btnActualizar.disabled = false;
+        
+        // Restaura el texto original del botón
+        elementos.btnActualizar.textContent = 'Obtener dato más reciente';
+    }
+}
+
+// Función que muestra una medición en la interfaz
+// @param medicion - objeto con { tipo, tipoRaw, valor }
+function mostrarMedicion(medicion) {
+    // Oculta el mensaje de "sin datos"
+    elementos.sinDatos.style.display = 'none';
+    
+    // Muestra el contenedor de la medición
+    elementos.medicionContainer.style.display = 'block';
+    
+    // Actualiza el texto del tipo de medición (Temperatura/Gas)
+    elementos.tipoValor.textContent = medicion.tipo;
+    
+    // Actualiza el texto del valor con su unidad (ej: "25.5 °C")
+    elementos.medicionValor.textContent = medicion.valor;
+    
+    // Cambia el color del valor según el tipo de medición
+    if (medicion.tipoRaw === 'temperatura') {
+        // Rojo para temperatura
+        elementos.medicionValor.style.color = '#e74c3c';
+    } else if (medicion.tipoRaw === 'gas') {
+        // Azul para gas
+        elementos.medicionValor.style.color = '#2980b9';
+    }
+}
+
+// Función que recibe cada medición del directo: la muestra como la última y
+// la añade a la tabla y (si es del tipo de la gráfica) a la gráfica. Solo se
+// añade la nueva: el dibujo se hace en el próximo fotograma, una vez aunque
+// lleguen muchas seguidas
+// @param medicion - objeto con { tipo, tipoRaw, valor, original }
+function recibirMedicion(medicion) {
+    mostrarMedicion(medicion);
+    
+    anilloTabla.anadirMedicion(medicion.original);
+    tabla.actualizar();
+    actualizarEstadoTabla();
+    
+    if (medicion.tipoRaw === elementos.graficaTipo.value) {
+        anilloGrafica.anadirMedicion(medicion.original);
+        grafica.actualizar();
+    }
+}
+
+// Función que muestra el mensaje de "sin datos disponibles"
+// Se ejecuta cuando no hay mediciones o hay un error
+function mostrarSinDatos() {
+    // Oculta el contenedor de medición
+    elementos.medicionContainer.style.display = 'none';
+    
+    // Muestra el mensaje de sin datos
+    elementos.sinDatos.style.display = 'block';
+}
+
+// ============================================================================
+// GRÁFICA
+// ============================================================================
+
+// Pide la serie del tipo y rango elegidos y la dibuja en el canvas
+// Se piden tantos puntos como píxeles de ancho tiene el canvas: el servidor
+// la reduce (LTTB) y la gráfica se ve igual que con todas las mediciones
+// La serie va al anillo de la gráfica; las mediciones que lleguen después
+// del directo se le añaden y el rango avanza con la hora
+async function actualizarGrafica() {
+    const inicio = performance.now();
+    const canvas = elementos.grafica;
+    
+    // Píxeles reales del canvas (en pantallas de alta densidad hay más)
+    const escala = window.devicePixelRatio || 1;
+    canvas.width = Math.round(canvas.clientWidth * escala);
+    canvas.height = Math.round(canvas.clientHeight * escala);
+    
+    const hasta = new Date();
+    const desde = new Date(hasta.getTime() - Number(elementos.graficaRango.value) * 24 * 3600 * 1000);
+    const tipo = elementos.graficaTipo.value;
+    elementos.graficaEstado.textContent = 'Cargando...';
+    
+    const resultado = await logicaNegocio.getSerie({ tipo, desde, hasta, puntos: canvas.width });
+    if (!resultado.success) {
+        elementos.graficaEstado.textContent = 'No se pudo cargar la gráfica';
+        return;
+    }
+    
+    anilloGrafica.vaciar();
+    for (const [instante, valor] of resultado.puntos) {
+        anilloGrafica.anadir(0, instante, valor, tipo, 0);
+    }
+    grafica.color = tipo === 'temperatura' ? '#e74c3c' : '#2980b9';
+    grafica.setRango(desde.getTime(), hasta.getTime(), true);
+    grafica.dibujar();
+    const { minimo, maximo } = grafica.ultimoDibujo;
+    
+    // Latencia de extremo a extremo: petición, descarga y dibujo
+    const ms = Math.round(performance.now() - inicio);
+    elementos.graficaEstado.textContent = resultado.puntos.length === 0 ? 'Sin mediciones en el rango' :
+        `${resultado.puntos.length} puntos (${Math.round(resultado.bytes / 1024)} KB), ` +
+        `de ${Math.round(minimo * 100) / 100} a ${Math.round(maximo * 100) / 100}, ${ms} ms`;
+}
+
+// ============================================================================
+// TABLA DE MEDICIONES
+// ============================================================================
+
+// Llena la tabla con la última página del histórico (lo demás llega del directo)
+async function cargarTabla() {
+    elementos.tablaEstado.textContent = 'Cargando...';
+    const resultado = await logicaNegocio.getHistorico({ limite: 1000 });
+    if (!resultado.success) {
+        elementos.tablaEstado.textContent = 'No se pudieron cargar las mediciones';
+        return;
+    }
+    // Llegan de la más reciente a la más antigua y el anillo va al revés
+    for (let i = resultado.mediciones.length - 1; i >= 0; i--) {
+        anilloTabla.anadirMedicion(resultado.mediciones[i]);
+    }
+    tabla.actualizar();
+    actualizarEstadoTabla();
+}
+
+// Textos de las celdas de una fila: hora, sensor, tipo y valor
+// @param anillo - anillo de la tabla
+// @param p - posición de la medición en el anillo
+function formatearFila(anillo, p) {
+    const tipo = anillo.tipoEn(p);
+    const unidad = tipo === 'temperatura' ? ' °C' : tipo === 'gas' ? ' ppm' : '';
+    return [
+        new Date(anillo.instantes[p]).toLocaleString(),
+        String(anillo.sensores[p]),
+        tipo,
+        `${Math.round(anillo.valores[p] * 100) / 100}${unidad}`
+    ];
+}
+
+function actualizarEstadoTabla() {
+    elementos.tablaEstado.textContent = `${anilloTabla.longitud} mediciones` +
+        (anilloTabla.longitud === CAPACIDAD_TABLA ? ' (se guardan las más recientes)' : '');
+}
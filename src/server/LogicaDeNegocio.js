@@ -1,10 +1,95 @@
 // Importa la clase Database que maneja la conexión y operaciones con la base de datos
 const { Database } = require('./database');
 
-// Importa el módulo logger para registro de mensajes en archivo local
-// Útil porque los console.log normales pueden no guardarse en todos los entornos
-require('./logger');
+// Importa la caché en memoria de las últimas mediciones de cada sensor
+const { CacheUltimasMediciones } = require('./cacheUltimas');
 
+// Importa el filtro de Bloom de las claves de idempotencia recientes
+const { FiltroClaves, FORMATO_CLAVE } = require('./filtroClaves');
+
+// Importa los submuestreos (LTTB y mínimo/máximo) para las series de las gráficas
+const { METODOS_SUBMUESTREO, MINIMO_PUNTOS } = require('./submuestreo');
+
+// Importa el logger para registro de mensajes en archivo local (mi_log.txt)
+// Los mensajes de cada petición van en nivel debug (desactivado por defecto)
+const { logger } = require('./logger');
+
+
+// Máximo de filas por cada INSERT multi-fila del lote
+// 500 filas x 7 columnas = 3500 parámetros, lejos del límite de 65535 de MySQL
+// y con un paquete bastante más pequeño que max_allowed_packet
+const TAMANYO_TROZO_LOTE = 500;
+
+// Máximo de mediciones que se aceptan en un único lote
+const MAXIMO_MEDICIONES_LOTE = 5000;
+
+// Identificador de un colector (móvil o pasarela): va tal cual en la URL
+const FORMATO_COLECTOR = /^[A-Za-z0-9_-]{1,64}$/;
+
+// Rango admitido del RSSI (dBm) que acompaña a cada medición
+const RSSI_MINIMO = -127;
+const RSSI_MAXIMO = 20;
+
+// Formas de las curvas de calibración (tabla calibraciones) y sus límites
+// (los mismos que CurvaCalibracion en el Android)
+const FORMAS_CURVA = ['polinomio', 'tramos'];
+const MAXIMO_COEFICIENTES = 6;
+const MAXIMO_PUNTOS_CURVA = 64;
+const MAXIMO_CRUDO = 65535;
+
+// Tablas de agregados (rollups) por sensor, tipo e intervalo de tiempo
+// Ordenadas de la más gruesa a la más fina: las consultas por rango usan la
+// más gruesa cuyo intervalo divide la resolución pedida
+// (esquema en sql/001_indices_y_agregados.sql)
+const NIVELES_AGREGADOS = [
+    { tabla: 'mediciones_dia', segundos: 86400, formato: '%Y-%m-%d 00:00:00' },
+    { tabla: 'mediciones_hora', segundos: 3600, formato: '%Y-%m-%d %H:00:00' },
+    { tabla: 'mediciones_minuto', segundos: 60, formato: '%Y-%m-%d %H:%i:00' }
+];
+
+// Máximo de puntos que puede devolver una serie agregada
+const MAXIMO_PUNTOS_SERIE = 10000;
+
+// Máximo de últimas mediciones por sensor y tipo que se pueden pedir
+const MAXIMO_ULTIMAS = 100;
+
+// Mediciones por página en getMedicionesPagina (por defecto y máximo)
+const LIMITE_PAGINA_POR_DEFECTO = 100;
+const MAXIMO_LIMITE_PAGINA = 1000;
+
+// Filas que se leen de la BD en cada viaje al recorrer un rango entero
+// (exportación): la memoria que se usa depende de esto, no del rango
+const FILAS_POR_LECTURA = 2000;
+
+// Una serie submuestreada se lee de una tabla de agregados si a cada cubeta
+// le tocan al menos estos intervalos de la tabla (si no, de mediciones)
+const INTERVALOS_POR_CUBETA = 4;
+
+// Cuánto puede estar en el futuro la fecha de captura de una medición (el
+// reloj del móvil ya viene corregido; esto solo cubre el error que quede)
+const MAXIMO_ADELANTO_FECHA_MS = 5 * 60 * 1000;
+
+// Valor de una medición en unidades de ingeniería: el calibrado si lo trae
+// (entonces "valor" es el crudo de 16 bits del minor, -12 ºC llega como 65524)
+// o, si no, el que se mandó. Es lo que se agrega, se dibuja y se promedia
+const SQL_VALOR = 'COALESCE(valor_ing, valor)';
+
+// Suma a cada tabla de agregados las mediciones con id en [?, ?]
+// Se agrupa sobre la propia tabla mediciones, así el intervalo se calcula con
+// la misma fecha que guardó MySQL (sin problemas de zona horaria)
+const SQL_ACTUALIZAR_AGREGADOS = NIVELES_AGREGADOS.map(nivel => `
+    INSERT INTO ${nivel.tabla} (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+    SELECT id_sensor, tipo, DATE_FORMAT(fecha, '${nivel.formato}'), COUNT(*),
+           SUM(${SQL_VALOR}), MIN(${SQL_VALOR}), MAX(${SQL_VALOR})
+    FROM mediciones
+    WHERE id BETWEEN ? AND ?
+    GROUP BY id_sensor, tipo, DATE_FORMAT(fecha, '${nivel.formato}')
+    ON DUPLICATE KEY UPDATE
+        n = n + VALUES(n),
+        suma = suma + VALUES(suma),
+        minimo = LEAST(minimo, VALUES(minimo)),
+        maximo = GREATEST(maximo, VALUES(maximo))
+`);
 
 // ============================================================================
 // Clase principal que contiene toda la lógica de negocio del servidor
@@ -13,10 +98,44 @@ require('./logger');
 class LogicaDeNegocio {
     // ------------------------------------------------------------------------
     // Constructor: inicializa la conexión a la base de datos
+    // @param opciones - { cacheUltimas: opciones de CacheUltimasMediciones,
+    //                     o false para no usar caché,
+    //                     filtroClaves: opciones de FiltroClaves, o false para
+    //                     confirmar todas las claves con el índice único }
     // ------------------------------------------------------------------------
-    constructor() {
+    constructor({ cacheUltimas = {}, filtroClaves = {} } = {}) {
         // Crea una instancia de Database para ejecutar queries SQL
         this.database = new Database();
+
+        // SQL de los INSERT multi-fila ya construidos, por número de filas
+        // (así el texto es idéntico y MySQL reutiliza la sentencia preparada)
+        this.sqlInsertLote = new Map();
+
+        // Últimas mediciones de cada sensor y tipo en memoria (se actualiza al
+        // guardar); cada TTL se liberan los sensores que nadie ha consultado
+        this.cacheUltimas = cacheUltimas === false ? null : new CacheUltimasMediciones(cacheUltimas);
+        if (this.cacheUltimas) {
+            this.purgaCache = setInterval(() => this.cacheUltimas.purgar(), this.cacheUltimas.ttlMs);
+            this.purgaCache.unref();
+        }
+        // Lecturas de la BD para llenar la caché que están en marcha (para no
+        // repetirlas cuando llegan varias consultas a la vez)
+        this.cargasEnCurso = new Map();
+        this.cargaTodasEnCurso = null;
+
+        // Claves de idempotencia de las últimas mediciones guardadas y
+        // contadores de la deduplicación (ver guardarMedicionesLote)
+        this.filtroClaves = filtroClaves === false ? null : new FiltroClaves(filtroClaves);
+        this.deduplicacion = {
+            con_clave: 0,          // Mediciones recibidas con clave
+            duplicadas: 0,         // De ellas, las que ya estaban (no se insertan)
+            repetidas_lote: 0,     // Duplicadas dentro del mismo lote
+            confirmadas_filtro: 0, // Duplicadas que el filtro señaló y MySQL confirmó
+            falsos_positivos: 0,   // Señaladas por el filtro que resultaron nuevas
+            por_indice: 0,         // Duplicadas que el filtro no vio y paró el índice único
+            por_vecina: 0,         // Duplicadas encontradas por su clave_vecina
+            consultas: 0           // Viajes a MySQL para confirmar claves
+        };
     }
 
     // ================================
@@ -27,7 +146,7 @@ class LogicaDeNegocio {
     // ================================
     async guardarMedicion(datos) {
         try {
-            console.log('🔄 Iniciando guardado de medición:', datos);
+            logger.debug('🔄 Iniciando guardado de medición:', datos);
 
             // Valida que los datos tengan la estructura correcta (tipo y valor presentes)
             this.validarDatosEntrada(datos);
@@ -41,22 +160,33 @@ class LogicaDeNegocio {
             // Prepara los datos añadiendo campos adicionales (dispositivo_id, timestamp)
             const datosParaDB = this.prepararDatosParaDB(datos);
 
-            // Ejecuta el INSERT en la base de datos
-            const resultado = await this.database.ejecutarQuery(
-                `INSERT INTO mediciones (id_sensor, tipo, valor, fecha) 
-                 VALUES (?, ?, ?, ?)`,
-                [
-                    datosParaDB.dispositivo_id,   // ID del sensor/dispositivo
-                    datosParaDB.tipo,              // 'temperatura' o 'gas'
-                    datosParaDB.valor,             // Valor numérico de la medición
-                    datosParaDB.timestamp          // Fecha y hora de la medición
-                ]
-            );
+            // Ejecuta el INSERT y actualiza los agregados en una misma transacción
+            const conn = await this.database.iniciarTransaccion();
+            let resultado;
+            try {
+                [resultado] = await conn.execute(
+                    `INSERT INTO mediciones (id_sensor, tipo, valor, fecha) 
+                     VALUES (?, ?, ?, ?)`,
+                    [
+                        datosParaDB.dispositivo_id,   // ID del sensor/dispositivo
+                        datosParaDB.tipo,              // 'temperatura' o 'gas'
+                        datosParaDB.valor,             // Valor numérico de la medición
+                        datosParaDB.timestamp          // Fecha y hora de la medición
+                    ]
+                );
+                await this.actualizarAgregados(conn, resultado.insertId, resultado.insertId);
+                await conn.commit();
+            } catch (error) {
+                await conn.rollback();
+                throw error;
+            } finally {
+                conn.release();
+            }
 
-            console.log('✅ Medición guardada exitosamente - ID:', resultado.insertId);
+            logger.debug('✅ Medición guardada exitosamente - ID:', resultado.insertId);
 
-            // Retorna un objeto con todos los datos de la medición guardada
-            return {
+            // Objeto con todos los datos de la medición guardada
+            const medicion = {
                 id: resultado.insertId,                    // ID autoincremental asignado por la BD
                 dispositivo_id: datosParaDB.dispositivo_id,
                 tipo: datosParaDB.tipo,
@@ -64,8 +194,14 @@ class LogicaDeNegocio {
                 timestamp: datosParaDB.timestamp
             };
 
+            // Escritura directa en la caché (ya está confirmada en la BD)
+            if (this.cacheUltimas) {
+                this.cacheUltimas.anotar(medicion);
+            }
+            return medicion;
+
         } catch (error) {
-            console.error('❌ Error en guardarMedicion:', error);
+            logger.error('❌ Error en guardarMedicion:', error);
             // Re-lanza el error para que sea manejado por el controlador
             throw error;
         }
@@ -74,12 +210,14 @@ class LogicaDeNegocio {
     // ================================
     // MÉTODO 2: getMediciones
     // Obtiene mediciones con filtros opcionales (tipo, fechas, dispositivo, etc.)
+    // Carga todo el resultado en memoria: para rangos grandes usar
+    // getMedicionesPagina o recorrerMediciones
     // @param filtros - objeto opcional con criterios de búsqueda
     // @return array de mediciones que cumplen los filtros
     // ================================
     async getMediciones(filtros = {}) {
         try {
-            console.log('🔍 Consultando mediciones con filtros:', filtros);
+            logger.debug('🔍 Consultando mediciones con filtros:', filtros);
 
             // Construye la query SQL y parámetros según los filtros recibidos
             const { query, params } = this.construirQueryConFiltros(filtros);
@@ -87,13 +225,13 @@ class LogicaDeNegocio {
             // Ejecuta la consulta en la base de datos
             const mediciones = await this.database.ejecutarQuery(query, params);
 
-            console.log(`✅ Encontradas ${mediciones.length} mediciones`);
+            logger.debug(`✅ Encontradas ${mediciones.length} mediciones`);
 
             // Formatea cada medición (convierte tipos, asegura consistencia)
             return mediciones.map(medicion => this.formatearMedicion(medicion));
 
         } catch (error) {
-            console.error('❌ Error en getMediciones:', error);
+            logger.error('❌ Error en getMediciones:', error);
             throw new Error('Error al consultar mediciones: ' + error.message);
         }
     }
@@ -106,7 +244,7 @@ class LogicaDeNegocio {
     // ================================
     async getMedicionesRecientes(limite = 50) {
         try {
-            console.log(`📊 Consultando ${limite} mediciones más recientes`);
+            logger.debug(`📊 Consultando ${limite} mediciones más recientes`);
 
             // Valida que el límite sea un número entero válido
             if (!Number.isInteger(limite) || limite < 1 || limite > 1000) {
@@ -114,8 +252,9 @@ class LogicaDeNegocio {
             }
 
             // Query optimizada que selecciona las últimas N mediciones
+            // (lee el índice por fecha hacia atrás y se para a las N primeras)
             const query = `
-                SELECT id, dispositivo_id, tipo, valor, fecha 
+                SELECT id, id_sensor AS dispositivo_id, tipo, valor, valor_ing, fecha AS timestamp
                 FROM mediciones 
                 ORDER BY fecha DESC 
                 LIMIT ?
@@ -124,17 +263,630 @@ class LogicaDeNegocio {
             // Ejecuta la consulta pasando el límite como parámetro
             const medicionesRecientes = await this.database.ejecutarQuery(query, [limite]);
 
-            console.log(`✅ Obtenidas ${medicionesRecientes.length} mediciones recientes`);
+            logger.debug(`✅ Obtenidas ${medicionesRecientes.length} mediciones recientes`);
 
             // Formatea y retorna las mediciones
             return medicionesRecientes.map(medicion => this.formatearMedicion(medicion));
 
         } catch (error) {
-            console.error('❌ Error en getMedicionesRecientes:', error);
+            logger.error('❌ Error en getMedicionesRecientes:', error);
             throw new Error('Error al consultar mediciones recientes: ' + error.message);
         }
     }
 
+    // ================================
+    // MÉTODO 4: guardarMedicionesLote
+    // Guarda de una vez un lote de mediciones enviado por el Android
+    // Valida todas las mediciones en una sola pasada: las inválidas se marcan
+    // como rechazadas y las válidas se insertan con INSERT multi-fila
+    // (trozos de TAMANYO_TROZO_LOTE) dentro de una única transacción.
+    // Si la base de datos falla no se guarda ninguna (el Android reintenta el lote)
+    // Las mediciones con "clave" (idempotencia, ver filtroClaves.js) que ya
+    // están guardadas no se insertan otra vez: salen como duplicadas con
+    // ok: true, así que reenviar un lote o que dos móviles suban la misma
+    // lectura no crea filas repetidas. Una lectura capturada justo en el cambio
+    // de minuto puede llevar en cada móvil la clave de un minuto distinto: por
+    // eso trae también "clave_vecina" (la del otro minuto) y se da por
+    // repetida si cualquiera de las dos ya está; se guarda solo "clave"
+    // @param lista - array de objetos { tipo, valor, timestamp o dt (opcionales),
+    //                clave (opcional, 16 caracteres hexadecimales), clave_vecina
+    //                (opcional, igual), valor_ing (opcional, el valor ya
+    //                calibrado por el Android) }
+    // @param base - hora de captura (ms desde 1970) a la que se suma el "dt" de
+    //               cada medición (el Android manda así las fechas del lote)
+    // @param colector - identificador del móvil o pasarela que subió el lote
+    //                   (opcional; una medición puede traer el suyo, como las
+    //                   que junta FusionColectores)
+    // @return objeto con { guardadas, rechazadas, duplicadas, resultados,
+    //         mediciones, claves } donde resultados tiene, por cada posición
+    //         del array, { indice, ok, id | error, duplicada }, mediciones las
+    //         guardadas (con su id) para difundirlas y claves las nuevas
+    // ================================
+    async guardarMedicionesLote(lista, base, colector = null) {
+        // Valida la forma del lote antes de mirar cada medición
+        if (!Array.isArray(lista) || lista.length === 0) {
+            throw new Error('El lote de mediciones debe ser un array con al menos una medición');
+        }
+        if (lista.length > MAXIMO_MEDICIONES_LOTE) {
+            throw new Error(`El lote supera el máximo de ${MAXIMO_MEDICIONES_LOTE} mediciones`);
+        }
+
+        // Una sola fecha para todas las mediciones del lote que no traen la suya
+        const ahora = new Date();
+        const resultados = new Array(lista.length);
+        let filas = [];      // Filas válidas: [id_sensor, tipo, valor, fecha, clave, colector, rssi, valor_ing]
+        let indices = [];    // Posición en el lote de cada fila válida
+        const vecinas = [];  // clave_vecina de cada fila válida (o null)
+        const guardadas = []; // Mediciones guardadas, como las devuelve guardarMedicion
+        const claves = [];   // Claves de las guardadas (para el filtro)
+        const primeras = new Map(); // Clave -> posición de su primera aparición en el lote
+        let duplicadas = 0;
+
+        // PASADA ÚNICA DE VALIDACIÓN (y claves repetidas dentro del lote)
+        for (let i = 0; i < lista.length; i++) {
+            try {
+                const fila = this.prepararFilaLote(lista[i], ahora, base, colector);
+                const clave = fila[4];
+                const vecina = clave === null ? null : this.validarClave(lista[i].clave_vecina);
+                if (clave !== null) {
+                    this.deduplicacion.con_clave++;
+                    const primera = primeras.has(clave) ? primeras.get(clave) : primeras.get(vecina);
+                    if (primera !== undefined) {
+                        // Su id se pone al final, cuando se sepa el de la primera
+                        resultados[i] = { indice: i, ok: true, duplicada: true, primera };
+                        this.deduplicacion.repetidas_lote++;
+                        duplicadas++;
+                        continue;
+                    }
+                    primeras.set(clave, i);
+                }
+                filas.push(fila);
+                indices.push(i);
+                vecinas.push(vecina);
+            } catch (error) {
+                resultados[i] = { indice: i, ok: false, error: error.message };
+            }
+        }
+
+        // CLAVES YA GUARDADAS: solo se pregunta a MySQL por las que el filtro
+        // no descarta (una consulta para todo el lote)
+        const existentes = await this.buscarClavesGuardadas(filas, vecinas);
+        if (existentes.size > 0) {
+            const nuevas = [];
+            const indicesNuevas = [];
+            for (let k = 0; k < filas.length; k++) {
+                let id = existentes.get(filas[k][4]);
+                if (id === undefined && vecinas[k] !== null) {
+                    id = existentes.get(vecinas[k]);
+                    if (id !== undefined) {
+                        this.deduplicacion.por_vecina++;
+                    }
+                }
+                if (id === undefined) {
+                    nuevas.push(filas[k]);
+                    indicesNuevas.push(indices[k]);
+                } else {
+                    resultados[indices[k]] = { indice: indices[k], ok: true, duplicada: true, id };
+                    duplicadas++;
+                }
+            }
+            filas = nuevas;
+            indices = indicesNuevas;
+        }
+
+        // INSERCIÓN POR TROZOS DENTRO DE UNA TRANSACCIÓN
+        if (filas.length > 0) {
+            const conn = await this.database.iniciarTransaccion();
+            try {
+                for (let inicio = 0; inicio < filas.length; inicio += TAMANYO_TROZO_LOTE) {
+                    const trozo = filas.slice(inicio, inicio + TAMANYO_TROZO_LOTE);
+                    const [resultado] = await conn.execute(this.getSqlInsertLote(trozo.length), trozo.flat());
+                    const ids = await this.idsInsertados(conn, trozo, resultado);
+
+                    // Los agregados se actualizan con el rango de ids de este trozo
+                    if (resultado.affectedRows > 0) {
+                        const insertados = ids.filter(id => id !== null);
+                        await this.actualizarAgregados(conn, insertados[0], insertados[insertados.length - 1]);
+                    }
+
+                    for (let k = 0; k < trozo.length; k++) {
+                        const indice = indices[inicio + k];
+                        const [dispositivo_id, tipo, valor, timestamp, clave, , , valor_ing] = trozo[k];
+                        if (ids[k] === null) {
+                            // El índice único la paró: la guardó otro a la vez o
+                            // el filtro ya la había olvidado
+                            resultados[indice] = { indice, ok: true, duplicada: true };
+                            this.deduplicacion.por_indice++;
+                            duplicadas++;
+                            continue;
+                        }
+                        resultados[indice] = { indice, ok: true, id: ids[k] };
+                        guardadas.push({ id: ids[k], dispositivo_id, tipo, valor, valor_ing, timestamp });
+                        if (clave !== null) {
+                            claves.push(clave);
+                        }
+                    }
+                }
+                await conn.commit();
+            } catch (error) {
+                await conn.rollback();
+                logger.error('❌ Error en guardarMedicionesLote:', error);
+                throw error;
+            } finally {
+                conn.release();
+            }
+        }
+
+        // Escritura directa en la caché y en el filtro (como con las de otro
+        // proceso), solo después del commit
+        this.anotarMedicionesExternas(guardadas, claves);
+
+        // Las repetidas dentro del lote llevan el id de su primera aparición
+        for (const resultado of resultados) {
+            if (resultado && resultado.primera !== undefined) {
+                const id = resultados[resultado.primera].id;
+                if (id !== undefined) {
+                    resultado.id = id;
+                }
+                delete resultado.primera;
+            }
+        }
+        this.deduplicacion.duplicadas += duplicadas;
+
+        // Un solo mensaje por lote (no uno por medición)
+        const rechazadas = lista.length - guardadas.length - duplicadas;
+        logger.debug(`✅ Lote guardado: ${guardadas.length} mediciones, ${duplicadas} duplicadas, ${rechazadas} rechazadas`);
+
+        return { guardadas: guardadas.length, rechazadas, duplicadas, resultados, mediciones: guardadas, claves };
+    }
+
+    // Busca en la base de datos las claves del lote (y sus vecinas) que el
+    // filtro dice que puede haber visto (sin filtro, todas)
+    // @param filas - filas del lote ([..., clave] con clave null si no trae)
+    // @param vecinas - clave_vecina de cada fila o null (opcional)
+    // @return Map clave -> id de las que ya estaban guardadas
+    async buscarClavesGuardadas(filas, vecinas = []) {
+        const sospechosas = [];
+        const anotar = (clave) => {
+            if (clave !== null && clave !== undefined && (!this.filtroClaves || this.filtroClaves.contiene(clave))) {
+                sospechosas.push(clave);
+            }
+        };
+        for (let k = 0; k < filas.length; k++) {
+            anotar(filas[k][4]);
+            anotar(vecinas[k]);
+        }
+        const existentes = new Map();
+        if (sospechosas.length === 0) {
+            return existentes;
+        }
+        this.deduplicacion.consultas++;
+        const encontradas = await this.database.ejecutarQuery(
+            `SELECT id, LOWER(HEX(clave)) AS clave FROM mediciones
+             WHERE clave IN (${sospechosas.map(() => 'UNHEX(?)').join(', ')})`,
+            sospechosas
+        );
+        for (const fila of encontradas) {
+            existentes.set(fila.clave, fila.id);
+        }
+        if (this.filtroClaves) {
+            this.deduplicacion.confirmadas_filtro += existentes.size;
+            this.deduplicacion.falsos_positivos += sospechosas.length - existentes.size;
+        }
+        return existentes;
+    }
+
+    // Ids que recibió cada fila de un trozo insertado con INSERT IGNORE
+    // Un INSERT multi-fila es un "simple insert" para InnoDB: reserva tantos
+    // ids consecutivos como filas, así que si entraron todas son insertId + k.
+    // Si el índice único paró alguna, su id queda como hueco e insertId es el
+    // de la primera que entró: se leen los ids que de verdad se insertaron
+    // (los affectedRows primeros desde insertId, que son de este INSERT)
+    // @return array con el id de cada fila o null si no se insertó
+    async idsInsertados(conn, trozo, resultado) {
+        if (resultado.affectedRows === trozo.length) {
+            return trozo.map((_, k) => resultado.insertId + k);
+        }
+        if (resultado.affectedRows === 0) {
+            return trozo.map(() => null);
+        }
+        const [insertadas] = await conn.execute(
+            `SELECT id, LOWER(HEX(clave)) AS clave FROM mediciones
+             WHERE id >= ? ORDER BY id LIMIT ?`,
+            [resultado.insertId, resultado.affectedRows]
+        );
+        const clavesInsertadas = new Set(insertadas.map(fila => fila.clave));
+        let siguiente = 0;
+        // Las filas sin clave entran siempre; las que tienen, si aparece su clave
+        return trozo.map(([, , , , clave]) =>
+            clave === null || clavesInsertadas.has(clave) ? insertadas[siguiente++].id : null);
+    }
+
+    // ================================
+    // MÉTODO 5: getSerieAgregada
+    // Devuelve una serie temporal agregada (media, mínimo, máximo) por intervalos
+    // Usa la tabla de agregados más gruesa cuyo intervalo divide la resolución
+    // pedida (día, hora o minuto); si ninguna sirve, agrega sobre mediciones
+    // @param filtros - objeto con { tipo, id_sensor (opcional), desde, hasta,
+    //                  resolucion (segundos por punto, por defecto 3600) }
+    // @return objeto con { tabla, resolucion, puntos: [{ inicio, tipo, n, media, minimo, maximo }] }
+    // ================================
+    async getSerieAgregada(filtros = {}) {
+        try {
+            const { tipo, id_sensor } = filtros;
+            const resolucion = filtros.resolucion === undefined ? 3600 : Number(filtros.resolucion);
+            const desde = new Date(filtros.desde);
+            const hasta = new Date(filtros.hasta);
+
+            // Validación de los parámetros
+            if (isNaN(desde.getTime()) || isNaN(hasta.getTime()) || desde >= hasta) {
+                throw new Error('Los parámetros "desde" y "hasta" deben ser fechas válidas con desde < hasta');
+            }
+            if (!Number.isInteger(resolucion) || resolucion < 1) {
+                throw new Error('El parámetro "resolucion" debe ser un número entero de segundos');
+            }
+            if ((hasta - desde) / 1000 / resolucion > MAXIMO_PUNTOS_SERIE) {
+                throw new Error(`El parámetro "resolucion" es demasiado fino: más de ${MAXIMO_PUNTOS_SERIE} puntos`);
+            }
+            if (tipo !== undefined && !['temperatura', 'gas'].includes(tipo)) {
+                throw new Error('El parámetro "tipo" debe ser temperatura o gas');
+            }
+
+            // Elige la tabla: la más gruesa cuyo intervalo divide la resolución
+            const nivel = NIVELES_AGREGADOS.find(n => resolucion % n.segundos === 0);
+            const { query, params } = nivel
+                ? this.construirQuerySerie(nivel.tabla, 'intervalo', nivel.segundos, resolucion,
+                    'SUM(n)', 'SUM(suma) / SUM(n)', 'MIN(minimo)', 'MAX(maximo)', { tipo, id_sensor, desde, hasta })
+                : this.construirQuerySerie('mediciones', 'fecha', 0, resolucion,
+                    'COUNT(*)', `AVG(${SQL_VALOR})`, `MIN(${SQL_VALOR})`, `MAX(${SQL_VALOR})`,
+                    { tipo, id_sensor, desde, hasta });
+
+            const filas = await this.database.ejecutarQuery(query, params);
+            logger.debug(`📈 Serie de ${filas.length} puntos desde ${nivel ? nivel.tabla : 'mediciones'}`);
+
+            return {
+                tabla: nivel ? nivel.tabla : 'mediciones',
+                resolucion,
+                puntos: filas.map(fila => ({
+                    inicio: fila.inicio,
+                    tipo: fila.tipo,
+                    n: Number(fila.n),
+                    media: parseFloat(fila.media),
+                    minimo: parseFloat(fila.minimo),
+                    maximo: parseFloat(fila.maximo)
+                }))
+            };
+
+        } catch (error) {
+            logger.error('❌ Error en getSerieAgregada:', error);
+            throw error;
+        }
+    }
+
+    // ================================
+    // MÉTODO 6: getUltimasMediciones
+    // Valor actual (las n últimas mediciones) de cada sensor y tipo
+    // Se sirve de la caché en memoria; si no está (o caducó) se lee de la
+    // base de datos y se deja en la caché para las siguientes consultas
+    // @param filtros - objeto con { id_sensor (opcional), tipo (opcional),
+    //                  n (últimas por sensor y tipo, 1-100, default: 1) }
+    // @return objeto con { origen: 'cache' | 'bd', mediciones }
+    // ================================
+    async getUltimasMediciones(filtros = {}) {
+        const n = filtros.n === undefined ? 1 : filtros.n;
+        if (!Number.isInteger(n) || n < 1 || n > MAXIMO_ULTIMAS) {
+            throw new Error(`El parámetro n debe ser un número entero entre 1 y ${MAXIMO_ULTIMAS}`);
+        }
+        const idSensor = filtros.id_sensor === undefined ? undefined : Number(filtros.id_sensor);
+        if (idSensor !== undefined && !Number.isInteger(idSensor)) {
+            throw new Error('El parámetro id_sensor debe ser un número entero');
+        }
+        const tipo = filtros.tipo === undefined ? undefined : String(filtros.tipo).toLowerCase().trim();
+        if (tipo !== undefined) {
+            this.validarTipoMedicion(tipo);
+        }
+        const cache = this.cacheUltimas;
+
+        // Un sensor y un tipo concretos: un solo anillo
+        if (idSensor !== undefined && tipo !== undefined) {
+            const enCache = cache ? cache.leer(idSensor, tipo, n) : null;
+            if (enCache) {
+                return { origen: 'cache', mediciones: enCache };
+            }
+            if (!cache || n > cache.porClave) {
+                return { origen: 'bd', mediciones: await this.leerUltimasDeBD(idSensor, tipo, n) };
+            }
+            // Se leen las que caben en el anillo aunque se pidan menos; si ya
+            // hay una lectura de esta clave en curso se espera a esa
+            const clave = CacheUltimasMediciones.clave(idSensor, tipo);
+            let carga = this.cargasEnCurso.get(clave);
+            if (!carga) {
+                cache.iniciarCarga(idSensor, tipo);
+                carga = this.leerUltimasDeBD(idSensor, tipo, cache.porClave)
+                    .then((filas) => {
+                        cache.cargar(idSensor, tipo, filas);
+                        return filas;
+                    }, (error) => {
+                        cache.cancelarCarga(idSensor, tipo);
+                        throw error;
+                    })
+                    .finally(() => this.cargasEnCurso.delete(clave));
+                this.cargasEnCurso.set(clave, carga);
+            }
+            const filas = await carga;
+            return { origen: 'bd', mediciones: filas.slice(0, n) };
+        }
+
+        // Todos los sensores y tipos (filtrando después si se pidió uno)
+        const filtrar = (mediciones) => mediciones.filter(m =>
+            (idSensor === undefined || Number(m.dispositivo_id) === idSensor) &&
+            (tipo === undefined || m.tipo === tipo));
+
+        const enCache = cache ? cache.leerTodas(n) : null;
+        if (enCache) {
+            return { origen: 'cache', mediciones: filtrar(enCache) };
+        }
+        try {
+            let porClave;
+            if (!cache || n > cache.porClave) {
+                porClave = await this.leerTodasUltimasDeBD(n);
+            } else {
+                // Una sola lectura de todas las claves aunque lleguen muchas
+                // consultas a la vez con la caché vacía
+                if (!this.cargaTodasEnCurso) {
+                    cache.iniciarCargaTodas();
+                    this.cargaTodasEnCurso = this.leerTodasUltimasDeBD(cache.porClave)
+                        .then((leidas) => {
+                            cache.cargarTodas(leidas.flat());
+                            return leidas;
+                        }, (error) => {
+                            cache.cancelarCargaTodas();
+                            throw error;
+                        })
+                        .finally(() => { this.cargaTodasEnCurso = null; });
+                }
+                porClave = await this.cargaTodasEnCurso;
+            }
+            return { origen: 'bd', mediciones: filtrar(porClave.flatMap(filas => filas.slice(0, n))) };
+        } catch (error) {
+            logger.error('❌ Error en getUltimasMediciones:', error);
+            throw new Error('Error al consultar las últimas mediciones: ' + error.message);
+        }
+    }
+
+    // Lee de la base de datos las n últimas de cada sensor y tipo
+    // @return array con un array de mediciones por cada (sensor, tipo)
+    async leerTodasUltimasDeBD(n) {
+        // Las claves (sensor, tipo) que existen salen de la tabla de agregados
+        // por día, mucho más pequeña que mediciones
+        const claves = await this.database.ejecutarQuery(
+            'SELECT DISTINCT id_sensor, tipo FROM mediciones_dia'
+        );
+        return Promise.all(claves.map(c => this.leerUltimasDeBD(c.id_sensor, c.tipo, n)));
+    }
+
+    // Lee de la base de datos las n últimas mediciones de un sensor y tipo
+    // (usa el índice (id_sensor, fecha) leyéndolo hacia atrás)
+    async leerUltimasDeBD(idSensor, tipo, n) {
+        const filas = await this.database.ejecutarQuery(`
+            SELECT id, id_sensor AS dispositivo_id, tipo, valor, valor_ing, fecha AS timestamp
+            FROM mediciones
+            WHERE id_sensor = ? AND tipo = ?
+            ORDER BY fecha DESC
+            LIMIT ?
+        `, [idSensor, tipo, n]);
+        return filas.map(medicion => this.formatearMedicion(medicion));
+    }
+
+    // Anota en la caché y en el filtro de claves mediciones que ha guardado
+    // otro proceso (en modo clúster cada trabajador tiene su caché y su filtro
+    // y se entera por cluster.js)
+    // @param mediciones - mediciones guardadas (con su id)
+    // @param claves - claves de idempotencia de las que traían
+    anotarMedicionesExternas(mediciones, claves = []) {
+        if (this.cacheUltimas) {
+            for (const medicion of mediciones) {
+                this.cacheUltimas.anotar(medicion);
+            }
+        }
+        if (this.filtroClaves) {
+            for (const clave of claves) {
+                this.filtroClaves.anotar(clave);
+            }
+        }
+    }
+
+    // Métricas de la caché de últimas mediciones (null si no hay caché)
+    getEstadisticasCache() {
+        return this.cacheUltimas ? this.cacheUltimas.getEstadisticas() : null;
+    }
+
+    // Métricas de la deduplicación por clave de idempotencia: cuántas
+    // llegaron con clave, qué parte eran duplicadas y quién las paró
+    getEstadisticasDeduplicacion() {
+        const d = this.deduplicacion;
+        return {
+            ...d,
+            tasa_duplicadas: d.con_clave === 0 ? null : d.duplicadas / d.con_clave,
+            filtro: this.filtroClaves ? this.filtroClaves.getEstadisticas() : null
+        };
+    }
+
+    // ================================
+    // MÉTODO 7: getMedicionesPagina
+    // Una página de mediciones (de la más reciente a la más antigua) con los
+    // mismos filtros que getMediciones, paginando por cursor sobre (fecha, id):
+    // cada página empieza justo después de la última fila de la anterior, así
+    // que pedir la página 1000 cuesta lo mismo que la primera (con OFFSET
+    // MySQL tendría que leer y tirar todas las anteriores) y no se saltan ni
+    // repiten filas aunque entren mediciones nuevas mientras se pagina
+    // @param filtros - { dispositivo_id, tipo, fecha_inicio, fecha_fin,
+    //                  limite (1-1000, default: 100), cursor (el "siguiente"
+    //                  de la página anterior; sin él, la primera página) }
+    // @return objeto con { mediciones, siguiente: cursor o null si no hay más }
+    // ================================
+    async getMedicionesPagina(filtros = {}) {
+        const limite = filtros.limite === undefined ? LIMITE_PAGINA_POR_DEFECTO : Number(filtros.limite);
+        if (!Number.isInteger(limite) || limite < 1 || limite > MAXIMO_LIMITE_PAGINA) {
+            throw new Error(`El parámetro limite debe ser un número entero entre 1 y ${MAXIMO_LIMITE_PAGINA}`);
+        }
+        const cursor = filtros.cursor ? this.decodificarCursor(filtros.cursor) : null;
+
+        try {
+            // Se pide una fila de más para saber si hay otra página
+            const { query, params } = this.construirQueryConFiltros(filtros, { cursor, filas: limite + 1 });
+            const filas = await this.database.ejecutarQuery(query, params);
+            const hayMas = filas.length > limite;
+            if (hayMas) {
+                filas.pop();
+            }
+            return {
+                mediciones: filas.map(medicion => this.formatearMedicion(medicion)),
+                siguiente: hayMas ? this.codificarCursor(filas[filas.length - 1]) : null
+            };
+        } catch (error) {
+            logger.error('❌ Error en getMedicionesPagina:', error);
+            throw new Error('Error al consultar mediciones: ' + error.message);
+        }
+    }
+
+    // ================================
+    // MÉTODO 8: recorrerMediciones
+    // Recorre TODAS las mediciones que cumplen los filtros (de la más reciente a
+    // la más antigua) leyendo de FILAS_POR_LECTURA en FILAS_POR_LECTURA con el
+    // mismo cursor que getMedicionesPagina. Es un generador asíncrono: no lee
+    // el siguiente trozo hasta que se ha consumido el anterior, así que la
+    // memoria no depende del tamaño del rango y, si quien lo consume va lento
+    // (un cliente descargando), la conexión a la BD vuelve al pool entre trozos
+    // @param filtros - los de getMediciones (sin limite)
+    // @param opciones - { filasPorLectura, ascendente (de la más antigua a la
+    //                   más reciente, para las series) }
+    // @return generador de arrays de filas tal cual salen de la BD
+    //         ({ id, dispositivo_id, tipo, valor, timestamp })
+    // ================================
+    async *recorrerMediciones(filtros = {}, { filasPorLectura = FILAS_POR_LECTURA, ascendente = false } = {}) {
+        let cursor = null;
+        for (;;) {
+            const { query, params } = this.construirQueryConFiltros(filtros,
+                { cursor, filas: filasPorLectura, ascendente });
+            const filas = await this.database.ejecutarQuery(query, params);
+            if (filas.length === 0) {
+                return;
+            }
+            const ultima = filas[filas.length - 1];
+            yield filas;
+            if (filas.length < filasPorLectura) {
+                return;
+            }
+            cursor = { fecha: ultima.timestamp, id: ultima.id };
+        }
+    }
+
+    // ================================
+    // MÉTODO 9: getSerieSubmuestreada
+    // Serie de un tipo de medición en un rango reducida a como mucho "puntos"
+    // puntos que conservan su forma (para las gráficas: no tiene sentido mandar
+    // más puntos que píxeles). Se calcula en una sola pasada según se leen las
+    // filas (submuestreo.js), de mediciones o, si las cubetas son bastante más
+    // anchas que un intervalo de agregados, de la tabla de agregados más
+    // gruesa que sirva (su mínimo y su máximo: con la media se perderían los
+    // picos de una sola medición)
+    // @param filtros - objeto con { tipo, id_sensor (opcional), desde, hasta,
+    //                  puntos (4-10000), metodo ('lttb' por defecto o 'minmax') }
+    // @return objeto con { metodo, tabla, leidas, puntos: [[instante ms, valor], ...] }
+    // ================================
+    async getSerieSubmuestreada(filtros = {}) {
+        try {
+            const { tipo, id_sensor } = filtros;
+            const metodo = filtros.metodo === undefined ? 'lttb' : filtros.metodo;
+            const puntos = Number(filtros.puntos);
+            const desde = new Date(filtros.desde);
+            const hasta = new Date(filtros.hasta);
+
+            // Validación de los parámetros
+            if (isNaN(desde.getTime()) || isNaN(hasta.getTime()) || desde >= hasta) {
+                throw new Error('Los parámetros "desde" y "hasta" deben ser fechas válidas con desde < hasta');
+            }
+            if (!Number.isInteger(puntos) || puntos < MINIMO_PUNTOS || puntos > MAXIMO_PUNTOS_SERIE) {
+                throw new Error(`El parámetro "puntos" debe ser un número entero entre ${MINIMO_PUNTOS} y ${MAXIMO_PUNTOS_SERIE}`);
+            }
+            if (!METODOS_SUBMUESTREO[metodo]) {
+                throw new Error(`El parámetro "metodo" debe ser uno de: ${Object.keys(METODOS_SUBMUESTREO).join(', ')}`);
+            }
+            if (!['temperatura', 'gas'].includes(tipo)) {
+                throw new Error('El parámetro "tipo" debe ser temperatura o gas');
+            }
+
+            const submuestreo = new METODOS_SUBMUESTREO[metodo](desde.getTime(), hasta.getTime(), puntos);
+
+            // Tabla de agregados más gruesa con varios intervalos por cubeta
+            const anchoCubetaS = submuestreo.anchoMs / 1000;
+            const nivel = NIVELES_AGREGADOS.find(n => n.segundos * INTERVALOS_POR_CUBETA <= anchoCubetaS);
+            if (nivel) {
+                // Cada intervalo son dos puntos (mínimo y máximo) en su centro
+                const mitadMs = nivel.segundos * 500;
+                for await (const filas of this.recorrerAgregados(nivel.tabla, { tipo, id_sensor, desde, hasta })) {
+                    for (const fila of filas) {
+                        const t = new Date(fila.intervalo).getTime() + mitadMs;
+                        submuestreo.anotar(t, parseFloat(fila.minimo));
+                        submuestreo.anotar(t, parseFloat(fila.maximo));
+                    }
+                }
+            } else {
+                const filtrosMediciones = { dispositivo_id: id_sensor, tipo, fecha_inicio: desde, fecha_fin: hasta };
+                for await (const filas of this.recorrerMediciones(filtrosMediciones, { ascendente: true })) {
+                    for (const fila of filas) {
+                        submuestreo.anotar(new Date(fila.timestamp).getTime(), this.valorMedido(fila));
+                    }
+                }
+            }
+
+            const resultado = submuestreo.terminar();
+            logger.debug(`📉 Serie ${metodo}: ${submuestreo.leidos} puntos de ${nivel ? nivel.tabla : 'mediciones'} → ${resultado.length}`);
+            return { metodo, tabla: nivel ? nivel.tabla : 'mediciones', leidas: submuestreo.leidos, puntos: resultado };
+
+        } catch (error) {
+            logger.error('❌ Error en getSerieSubmuestreada:', error);
+            throw error;
+        }
+    }
+
+    // Recorre una tabla de agregados en orden de intervalo, de FILAS_POR_LECTURA
+    // en FILAS_POR_LECTURA (cursor sobre el intervalo, que es único por grupo)
+    // Sin sensor se juntan todos los sensores de cada intervalo
+    // @return generador de arrays de { intervalo, minimo, maximo }
+    async *recorrerAgregados(tabla, { tipo, id_sensor, desde, hasta }) {
+        let cursor = desde;
+        let condicionCursor = 'intervalo >= ?';
+        for (;;) {
+            const params = [tipo];
+            let query = `
+                SELECT intervalo, MIN(minimo) AS minimo, MAX(maximo) AS maximo
+                FROM ${tabla}
+                WHERE tipo = ?`;
+            if (id_sensor !== undefined) {
+                query += ' AND id_sensor = ?';
+                params.push(id_sensor);
+            }
+            query += ` AND ${condicionCursor} AND intervalo <= ?
+                GROUP BY intervalo
+                ORDER BY intervalo
+                LIMIT ?`;
+            params.push(cursor, hasta, FILAS_POR_LECTURA);
+
+            const filas = await this.database.ejecutarQuery(query, params);
+            if (filas.length === 0) {
+                return;
+            }
+            yield filas;
+            if (filas.length < FILAS_POR_LECTURA) {
+                return;
+            }
+            cursor = filas[filas.length - 1].intervalo;
+            condicionCursor = 'intervalo > ?';
+        }
+    }
+
     // ================================
     // MÉTODOS DE VALIDACIÓN
     // Comprueban que los datos sean correctos antes de guardarlos
@@ -169,6 +921,69 @@ class LogicaDeNegocio {
         }
     }
 
+    // Valida la clave de idempotencia (opcional) de una medición del lote
+    // @return la clave en minúsculas o null si no trae
+    validarClave(clave) {
+        if (clave === undefined || clave === null) {
+            return null;
+        }
+        if (typeof clave !== 'string' || !FORMATO_CLAVE.test(clave)) {
+            throw new Error('La clave de la medición debe tener 16 caracteres hexadecimales');
+        }
+        return clave.toLowerCase();
+    }
+
+    // Valida el identificador del colector (opcional) que subió una medición
+    // @return el identificador o null si no trae
+    validarColector(colector) {
+        if (colector === undefined || colector === null) {
+            return null;
+        }
+        if (typeof colector !== 'string' || !FORMATO_COLECTOR.test(colector)) {
+            throw new Error('El colector debe tener de 1 a 64 letras, números, "-" o "_"');
+        }
+        return colector;
+    }
+
+    // Valida el RSSI (opcional, dBm) con el que el colector oyó la medición
+    // @return el RSSI entero o null si no trae
+    validarRssi(rssi) {
+        if (rssi === undefined || rssi === null) {
+            return null;
+        }
+        if (!Number.isInteger(rssi) || rssi < RSSI_MINIMO || rssi > RSSI_MAXIMO) {
+            throw new Error(`El rssi de la medición debe ser un entero entre ${RSSI_MINIMO} y ${RSSI_MAXIMO}`);
+        }
+        return rssi;
+    }
+
+    // Valida el valor en unidades de ingeniería (opcional) que calcula el
+    // Android con la curva de calibración del sensor
+    // @return el número o null si no trae
+    validarValorIngenieria(valorIng) {
+        if (valorIng === undefined || valorIng === null) {
+            return null;
+        }
+        if (typeof valorIng !== 'number' || !Number.isFinite(valorIng)) {
+            throw new Error('El valor_ing de la medición debe ser un número');
+        }
+        // Mismo rango que el valor de una medición sin calibrar
+        return this.validarValorMedicion(valorIng);
+    }
+
+    // Valida el valor crudo (el minor del iBeacon) de una medición que trae
+    // valor_ing: es un entero sin signo de 16 bits, así que una temperatura
+    // negativa llega como 65524 (-12 ºC) y no cabe en el rango de
+    // validarValorMedicion
+    // @return el número o lanza error si no es un entero entre 0 y MAXIMO_CRUDO
+    validarValorCrudo(valor) {
+        const valorNumerico = Number(valor);
+        if (!Number.isInteger(valorNumerico) || valorNumerico < 0 || valorNumerico > MAXIMO_CRUDO) {
+            throw new Error(`El valor crudo de la medición debe ser un entero entre 0 y ${MAXIMO_CRUDO}`);
+        }
+        return valorNumerico;
+    }
+
     // Valida que el valor sea numérico y esté en un rango razonable
     validarValorMedicion(valor) {
         // Convierte el valor a número (por si viene como string)
@@ -207,22 +1022,169 @@ class LogicaDeNegocio {
             // Valida y convierte el valor a número
             valor: this.validarValorMedicion(datos.valor),
             
-            // Usa el timestamp recibido o genera uno nuevo con la fecha actual
-            timestamp: datos.timestamp || new Date().toISOString()
+            // Fecha de captura recibida o, si no la trae, la fecha actual
+            timestamp: this.resolverFecha(datos, undefined, new Date())
         };
     }
 
+    // Fecha de captura de una medición:
+    //   - "dt": milisegundos respecto a la "base" del lote (lo que manda el Android)
+    //   - "timestamp": fecha absoluta (ISO o milisegundos desde 1970)
+    //   - si no trae ninguna, "ahora" (la hora de llegada al servidor)
+    // @return Date (lanza error si la fecha no es válida o está en el futuro)
+    resolverFecha(datos, base, ahora) {
+        let fecha;
+        if (datos.dt !== undefined) {
+            if (!Number.isFinite(base) || !Number.isInteger(datos.dt)) {
+                throw new Error('La fecha de la medición no es válida: "dt" necesita una "base" numérica');
+            }
+            fecha = new Date(base + datos.dt);
+        } else if (datos.timestamp !== undefined && datos.timestamp !== null && datos.timestamp !== '') {
+            fecha = new Date(datos.timestamp);
+        } else {
+            return ahora;
+        }
+        if (isNaN(fecha.getTime())) {
+            throw new Error('La fecha de la medición no es válida');
+        }
+        if (fecha.getTime() > ahora.getTime() + MAXIMO_ADELANTO_FECHA_MS) {
+            throw new Error('La fecha de la medición está en el futuro');
+        }
+        return fecha;
+    }
+
+    // Valida una medición del lote y la convierte en la fila a insertar
+    // @param datos - medición recibida
+    // @param ahora - fecha a usar si la medición no trae la suya
+    // @param base - base del lote para las mediciones que traen "dt"
+    // @param colector - colector del lote (si la medición no trae el suyo)
+    // @return array [id_sensor, tipo, valor, fecha, clave, colector, rssi, valor_ing]
+    //         (lanza error si no es válida)
+    prepararFilaLote(datos, ahora, base, colector = null) {
+        this.validarDatosEntrada(datos);
+
+        // En un lote puede venir cualquier cosa: se evita el TypeError de toLowerCase
+        if (typeof datos.tipo !== 'string') {
+            throw new Error('El tipo de medición debe ser un texto');
+        }
+        this.validarTipoMedicion(datos.tipo);
+
+        // Si trae valor_ing, "valor" es el crudo de 16 bits y el rango de la
+        // medición se comprueba en el valor calibrado
+        const conValorIngenieria = datos.valor_ing !== undefined && datos.valor_ing !== null;
+
+        return [
+            1,                                      // Dispositivo por defecto (como en prepararDatosParaDB)
+            datos.tipo.toLowerCase().trim(),        // 'temperatura' o 'gas'
+            conValorIngenieria                      // Valor ya convertido a número
+                ? this.validarValorCrudo(datos.valor)
+                : this.validarValorMedicion(datos.valor),
+            this.resolverFecha(datos, base, ahora), // Fecha de captura o la de llegada
+            this.validarClave(datos.clave),         // Clave de idempotencia o null
+            this.validarColector(datos.colector ?? colector), // Quién la subió o null
+            this.validarRssi(datos.rssi),           // Con qué RSSI la oyó o null
+            this.validarValorIngenieria(datos.valor_ing) // Valor calibrado o null
+        ];
+    }
+
+    // Comprueba una medición de lote con las mismas reglas que
+    // guardarMedicionesLote (lanza el mismo error si la rechazaría). La usa
+    // FusionColectores para que una copia mal formada no sustituya a otra
+    // buena de la misma lectura
+    // @param datos - medición con la fecha ya absoluta (sin "dt")
+    // @param ahora - fecha a usar si la medición no trae la suya
+    comprobarMedicionLote(datos, ahora = new Date()) {
+        const fila = this.prepararFilaLote(datos, ahora, undefined);
+        if (fila[4] !== null) {
+            this.validarClave(datos.clave_vecina);
+        }
+    }
+
+    // Suma a las tablas de agregados (minuto, hora, día) las mediciones recién
+    // insertadas, dentro de la transacción de la inserción
+    // @param conn - conexión con la transacción abierta
+    // @param idDesde - primer id insertado
+    // @param idHasta - último id insertado
+    async actualizarAgregados(conn, idDesde, idHasta) {
+        for (const sql of SQL_ACTUALIZAR_AGREGADOS) {
+            await conn.execute(sql, [idDesde, idHasta]);
+        }
+    }
+
+    // Construye la query de una serie agregada sobre una tabla
+    // @param tabla - tabla de agregados o 'mediciones'
+    // @param columnaFecha - 'intervalo' en los agregados, 'fecha' en mediciones
+    // @param segundosTabla - intervalo de la tabla (0 para mediciones)
+    // @param resolucion - segundos por punto de la serie
+    // @param n, media, minimo, maximo - expresiones SQL de cada campo del punto
+    // @param filtros - { tipo, id_sensor, desde, hasta }
+    // @return objeto con { query, params }
+    construirQuerySerie(tabla, columnaFecha, segundosTabla, resolucion, n, media, minimo, maximo, filtros) {
+        const params = [];
+
+        // Si la resolución coincide con el intervalo de la tabla, cada fila ya es un punto
+        let inicio = columnaFecha;
+        if (resolucion !== segundosTabla) {
+            inicio = `FROM_UNIXTIME(FLOOR(UNIX_TIMESTAMP(${columnaFecha}) / ?) * ?)`;
+            params.push(resolucion, resolucion);
+        }
+
+        // Condiciones en el orden de los índices: (tipo, fecha) o (id_sensor, ...)
+        const condiciones = [];
+        if (filtros.id_sensor !== undefined) {
+            condiciones.push('id_sensor = ?');
+            params.push(filtros.id_sensor);
+        }
+        if (filtros.tipo !== undefined) {
+            condiciones.push('tipo = ?');
+            params.push(filtros.tipo);
+        }
+        condiciones.push(`${columnaFecha} >= ?`, `${columnaFecha} < ?`);
+        params.push(filtros.desde, filtros.hasta);
+
+        const query = `
+            SELECT ${inicio} AS inicio, tipo, ${n} AS n, ${media} AS media,
+                   ${minimo} AS minimo, ${maximo} AS maximo
+            FROM ${tabla}
+            WHERE ${condiciones.join(' AND ')}
+            GROUP BY inicio, tipo
+            ORDER BY inicio
+        `;
+        return { query, params };
+    }
+
+    // Devuelve el INSERT multi-fila para un número de filas (lo guarda para reutilizarlo)
+    // @param numeroFilas - número de filas del trozo
+    // IGNORE: las filas cuya clave ya está en el índice único no se insertan
+    // (y no hacen fallar al resto); UNHEX(NULL) es NULL y NULL no choca
+    // @return SQL con numeroFilas grupos de (?, ?, ?, ?, UNHEX(?), ?, ?, ?)
+    getSqlInsertLote(numeroFilas) {
+        let sql = this.sqlInsertLote.get(numeroFilas);
+        if (!sql) {
+            sql = 'INSERT IGNORE INTO mediciones (id_sensor, tipo, valor, fecha, clave, colector, rssi, valor_ing) VALUES '
+                + new Array(numeroFilas).fill('(?, ?, ?, ?, UNHEX(?), ?, ?, ?)').join(', ');
+            this.sqlInsertLote.set(numeroFilas, sql);
+        }
+        return sql;
+    }
+
     // Construye dinámicamente una query SQL según los filtros proporcionados
+    // @param pagina - opcional, { cursor: { fecha, id } o null, filas, ascendente }:
+    //                 solo las filas que van después del cursor y como mucho
+    //                 "filas" (en lugar de filtros.limite); con ascendente, de
+    //                 la más antigua a la más reciente
     // @return objeto con { query: string SQL, params: array de parámetros }
-    construirQueryConFiltros(filtros) {
+    construirQueryConFiltros(filtros, pagina = null) {
         // Query base que selecciona todos los campos de mediciones
-        let query = 'SELECT id, id_sensor, tipo, valor, fecha FROM mediciones';
+        // (con los alias que espera formatearMedicion)
+        let query = 'SELECT id, id_sensor AS dispositivo_id, tipo, valor, valor_ing, fecha AS timestamp FROM mediciones';
         let condiciones = [];  // Array para acumular condiciones WHERE
         let params = [];       // Array para parámetros de la query (evita SQL injection)
 
         // Si hay filtro por dispositivo, añade condición WHERE
+        // (la columna es id_sensor: así se usa el índice (id_sensor, fecha))
         if (filtros.dispositivo_id) {
-            condiciones.push('dispositivo_id = ?');
+            condiciones.push('id_sensor = ?');
             params.push(filtros.dispositivo_id);
         }
 
@@ -237,26 +1199,40 @@ class LogicaDeNegocio {
 
         // Si hay filtro de fecha de inicio (desde cuándo)
         if (filtros.fecha_inicio) {
-            condiciones.push('timestamp >= ?');
+            condiciones.push('fecha >= ?');
             params.push(filtros.fecha_inicio);
         }
 
         // Si hay filtro de fecha fin (hasta cuándo)
         if (filtros.fecha_fin) {
-            condiciones.push('timestamp <= ?');
+            condiciones.push('fecha <= ?');
             params.push(filtros.fecha_fin);
         }
 
+        // Cursor: las filas que van después de la última ya devuelta en el orden
+        // (fecha, id), descendente o ascendente. Escrito con OR y no como (fecha, id) < (?, ?)
+        // para que MySQL lo use como rango sobre los índices por fecha
+        const ascendente = pagina !== null && pagina.ascendente === true;
+        if (pagina && pagina.cursor) {
+            condiciones.push(ascendente ? '(fecha > ? OR (fecha = ? AND id > ?))' : '(fecha < ? OR (fecha = ? AND id < ?))');
+            params.push(pagina.cursor.fecha, pagina.cursor.fecha, pagina.cursor.id);
+        }
+
         // Si hay condiciones, las une con AND y las añade a la query
         if (condiciones.length > 0) {
             query += ' WHERE ' + condiciones.join(' AND ');
         }
 
-        // Siempre ordena por fecha descendente (más recientes primero)
-        query += ' ORDER BY fecha DESC';
+        // Ordena por fecha descendente (más recientes primero), salvo en los
+        // recorridos ascendentes. El id desempata las mediciones del mismo segundo (y los índices por
+        // fecha ya lo llevan al final, así que no hace falta ordenar aparte)
+        query += ascendente ? ' ORDER BY fecha, id' : ' ORDER BY fecha DESC, id DESC';
 
-        // Si se especifica un límite de resultados
-        if (filtros.limite) {
+        if (pagina) {
+            query += ' LIMIT ?';
+            params.push(pagina.filas);
+        } else if (filtros.limite) {
+            // Si se especifica un límite de resultados
             const limite = parseInt(filtros.limite);
             // Valida que el límite sea razonable (1-1000)
             if (limite > 0 && limite <= 1000) {
@@ -268,6 +1244,24 @@ class LogicaDeNegocio {
         return { query, params };
     }
 
+    // Cursor de paginación de una fila: su fecha (ms) y su id en base64url
+    // (opaco para el cliente, que solo lo devuelve tal cual)
+    codificarCursor(fila) {
+        return Buffer.from(`${new Date(fila.timestamp).getTime()}:${fila.id}`).toString('base64url');
+    }
+
+    // Lo contrario de codificarCursor
+    // @return { fecha: Date, id } o lanza un error si el cursor no es válido
+    decodificarCursor(texto) {
+        const partes = Buffer.from(String(texto), 'base64url').toString().split(':');
+        const ms = Number(partes[0]);
+        const id = Number(partes[1]);
+        if (partes.length !== 2 || !Number.isInteger(ms) || !Number.isInteger(id)) {
+            throw new Error('El parámetro cursor no es válido');
+        }
+        return { fecha: new Date(ms), id };
+    }
+
     // Formatea una medición para asegurar tipos de datos consistentes
     formatearMedicion(medicion) {
         return {
@@ -276,10 +1270,82 @@ class LogicaDeNegocio {
             tipo: medicion.tipo,
             // Asegura que el valor sea un número (puede venir como string de la BD)
             valor: parseFloat(medicion.valor),
+            // Valor calibrado por el Android (null en las que no lo traían)
+            valor_ing: medicion.valor_ing === undefined || medicion.valor_ing === null
+                ? null : parseFloat(medicion.valor_ing),
             timestamp: medicion.timestamp
         };
     }
 
+    // Valor de una fila de mediciones en unidades de ingeniería (como
+    // SQL_VALOR: el calibrado si lo trae y si no el que se mandó)
+    valorMedido(fila) {
+        return parseFloat(fila.valor_ing === undefined || fila.valor_ing === null ? fila.valor : fila.valor_ing);
+    }
+
+    // ================================
+    // MÉTODO: getCalibraciones
+    // Registro de calibraciones de los sensores (tabla calibraciones, ver
+    // sql/004_calibraciones.sql): la curva con la que el Android pasa el
+    // valor crudo de cada sensor y tipo a unidades de ingeniería
+    // Las filas cuya curva no es válida se saltan (y se avisa en el log)
+    // @return array de { sensor, tipo, polinomio: [c0, c1, ...] } o
+    //         { sensor, tipo, crudos: [...], valores: [...] }
+    // ================================
+    async getCalibraciones() {
+        try {
+            const filas = await this.database.ejecutarQuery(
+                'SELECT sensor, tipo, forma, puntos FROM calibraciones ORDER BY sensor, tipo'
+            );
+            const calibraciones = [];
+            for (const fila of filas) {
+                try {
+                    calibraciones.push(this.formatearCalibracion(fila));
+                } catch (error) {
+                    logger.warn(`⚠️ Calibración de ${fila.sensor} (${fila.tipo}) saltada: ${error.message}`);
+                }
+            }
+            return calibraciones;
+        } catch (error) {
+            logger.error('❌ Error en getCalibraciones:', error);
+            throw new Error('Error al obtener las calibraciones: ' + error.message);
+        }
+    }
+
+    // Convierte una fila de calibraciones en lo que recibe el Android
+    // "puntos" es JSON: los coeficientes del polinomio (de menor a mayor
+    // grado) o los pares [crudo, valor] de los tramos
+    // @return objeto de la calibración (lanza error si la curva no es válida)
+    formatearCalibracion(fila) {
+        if (!FORMAS_CURVA.includes(fila.forma)) {
+            throw new Error(`Forma de curva desconocida: ${fila.forma}`);
+        }
+        const puntos = typeof fila.puntos === 'string' ? JSON.parse(fila.puntos) : fila.puntos;
+        const base = { sensor: fila.sensor, tipo: fila.tipo };
+        if (fila.forma === 'polinomio') {
+            if (!Array.isArray(puntos) || puntos.length < 1 || puntos.length > MAXIMO_COEFICIENTES
+                || !puntos.every(Number.isFinite)) {
+                throw new Error(`El polinomio debe tener de 1 a ${MAXIMO_COEFICIENTES} coeficientes numéricos`);
+            }
+            return { ...base, polinomio: puntos };
+        }
+        if (!Array.isArray(puntos) || puntos.length < 2 || puntos.length > MAXIMO_PUNTOS_CURVA) {
+            throw new Error(`La curva por tramos debe tener de 2 a ${MAXIMO_PUNTOS_CURVA} puntos`);
+        }
+        const crudos = [];
+        const valores = [];
+        for (const punto of puntos) {
+            const [crudo, valor] = Array.isArray(punto) ? punto : [];
+            const anterior = crudos.length > 0 ? crudos[crudos.length - 1] : -1;
+            if (!Number.isInteger(crudo) || crudo <= anterior || crudo > MAXIMO_CRUDO || !Number.isFinite(valor)) {
+                throw new Error(`Los tramos deben ser pares [crudo, valor] con crudos crecientes de 0 a ${MAXIMO_CRUDO}`);
+            }
+            crudos.push(crudo);
+            valores.push(valor);
+        }
+        return { ...base, crudos, valores };
+    }
+
     // ================================
     // MÉTODO AUXILIAR PARA VERIFICACIÓN
     // ================================
@@ -288,16 +1354,16 @@ class LogicaDeNegocio {
     // @return true si la conexión es exitosa
     async verificarConexion() {
         try {
-            console.log('🔄 Verificando conexión a base de datos...');
+            logger.info('🔄 Verificando conexión a base de datos...');
             
             // Ejecuta una query simple de prueba (SELECT 1)
             await this.database.ejecutarQuery('SELECT 1 as test');
             
-            console.log('✅ Conexión a base de datos verificada exitosamente');
+            logger.info('✅ Conexión a base de datos verificada exitosamente');
             return true;
             
         } catch (error) {
-            console.error('❌ Error de conexión a base de datos:', error);
+            logger.error('❌ Error de conexión a base de datos:', error);
             throw new Error('No se puede conectar a la base de datos: ' + error.message);
         }
     }
@@ -313,4 +1379,33 @@ class LogicaDeNegocio {
             // Query que calcula múltiples estadísticas en una sola consulta
             const stats = await this.database.ejecutarQuery(`
                 SELECT 
-                    COUNT(*) as total_medicione
+                    COUNT(*) as total_mediciones,
+                    SUM(tipo = 'temperatura') as total_temperatura,
+                    SUM(tipo = 'gas') as total_gas,
+                    AVG(CASE WHEN tipo = 'temperatura' THEN ${SQL_VALOR} END) as promedio_temperatura,
+                    AVG(CASE WHEN tipo = 'gas' THEN ${SQL_VALOR} END) as promedio_gas,
+                    MAX(fecha) as ultima_fecha
+                FROM mediciones
+            `);
+
+            // La query devuelve una sola fila con todas las estadísticas
+            const fila = stats[0];
+            return {
+                total_mediciones: Number(fila.total_mediciones),
+                total_temperatura: Number(fila.total_temperatura || 0),
+                total_gas: Number(fila.total_gas || 0),
+                promedio_temperatura: fila.promedio_temperatura === null ? null : parseFloat(fila.promedio_temperatura),
+                promedio_gas: fila.promedio_gas === null ? null : parseFloat(fila.promedio_gas),
+                ultima_fecha: fila.ultima_fecha
+            };
+
+        } catch (error) {
+            logger.error('❌ Error en obtenerEstadisticas:', error);
+            throw new Error('Error al obtener estadísticas: ' + error.message);
+        }
+    }
+}
+
+// Exporta la clase para que api.js la pueda usar (con el tamaño máximo de un
+// lote y el formato de los colectores, que usan FusionColectores y api.js)
+module.exports = { LogicaDeNegocio, MAXIMO_MEDICIONES_LOTE, FORMATO_COLECTOR };
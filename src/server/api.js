@@ -5,12 +5,33 @@ const cors = require('cors');
 // Importar dotenv para leer variables de entorno del archivo .env
 const dotenv = require('dotenv');
 // Importar la clase LogicaDeNegocio que contiene la lógica principal
-const { LogicaDeNegocio } = require('./LogicaDeNegocio');
-// Cargar el módulo de logger para guardar logs en archivos
-require('./logger');
+const { LogicaDeNegocio, FORMATO_COLECTOR } = require('./LogicaDeNegocio');
+// Importar el difusor que envía las mediciones nuevas a los clientes web (SSE)
+const { DifusorMediciones } = require('./difusorMediciones');
+// Importar el middleware que verifica la firma y descomprime los cuerpos
+const { crearMiddlewareCuerpo } = require('./middlewareCuerpo');
+// Importar la fusión de las copias que suben varios colectores y el asignador
+// que le dice a cada colector qué sensores le toca subir
+const { FusionColectores } = require('./fusionColectores');
+const { AsignadorColectores } = require('./asignadorColectores');
+// Importar el exportador que escribe las mediciones de un rango en streaming
+const { exportarMediciones } = require('./exportadorMediciones');
+// Importar el pool de hilos para decodificar los cuerpos grandes (opcional)
+const { PoolHilos } = require('./poolHilos');
+// Cargar el logger (niveles, escritura por lotes en mi_log.txt con rotación)
+const { logger } = require('./logger');
+// Importar cluster para saber si este proceso es un trabajador de cluster.js
+const cluster = require('cluster');
 
 // Cargar las variables de entorno desde el archivo .env
 dotenv.config();
+// El nivel y el archivo del log se pueden cambiar desde el .env
+logger.configurarDesdeEntorno();
+// En modo clúster solo el proceso principal escribe mi_log.txt: cada volcado
+// del trabajador se le pasa por IPC (y él lo repite en la consola)
+if (cluster.isWorker) {
+    logger.configurar({ archivo: null, consola: false, salida: (texto) => process.send({ tipo: 'log', texto }) });
+}
 
 // Crear la instancia principal de Express (el servidor web)
 const app = express();
@@ -18,7 +39,73 @@ const app = express();
 const PORT = process.env.PORT || 3000;
 
 // Crear una instancia de la clase LogicaDeNegocio para acceder a sus métodos
-const logicaNegocio = new LogicaDeNegocio();
+// La caché de últimas mediciones se puede ajustar desde el .env
+const logicaNegocio = new LogicaDeNegocio({
+    cacheUltimas: process.env.CACHE_ULTIMAS === 'no' ? false : {
+        porClave: parseInt(process.env.CACHE_ULTIMAS_POR_SENSOR) || 10, // Mediciones por sensor y tipo
+        ttlMs: parseInt(process.env.CACHE_ULTIMAS_TTL_MS) || 5 * 60 * 1000, // 5 minutos
+        maximoBytes: parseInt(process.env.CACHE_ULTIMAS_MAXIMO_BYTES) || 16 * 1024 * 1024 // 16MB
+    }
+});
+
+// Crear el difusor de mediciones en directo (una sola instancia para todos)
+const difusor = new DifusorMediciones();
+
+// Los lotes con "colector" se juntan durante FUSION_VENTANA_MS (ms) y de
+// cada lectura se guarda la copia válida con mejor RSSI, en una sola transacción
+const fusion = new FusionColectores({
+    guardar: (lista, base) => logicaNegocio.guardarMedicionesLote(lista, base),
+    validar: (datos) => logicaNegocio.comprobarMedicionLote(datos),
+    ventanaMs: parseInt(process.env.FUSION_VENTANA_MS) || 1000
+});
+
+// Sensores que oye cada colector y quién es el responsable de cada sensor
+// (ASIGNADOR_REDUNDANCIA responsables por sensor, 1 por defecto)
+const asignador = new AsignadorColectores({
+    redundancia: parseInt(process.env.ASIGNADOR_REDUNDANCIA) || 1
+});
+setInterval(() => asignador.purgar(), 60 * 1000).unref();
+
+// Hilos para verificar, descomprimir y parsear los cuerpos grandes fuera del
+// bucle de eventos (HILOS_CUERPO en el .env; 0 o sin poner = no se usan)
+const hilosCuerpo = parseInt(process.env.HILOS_CUERPO) || 0;
+const poolHilos = hilosCuerpo > 0 ? new PoolHilos({ hilos: hilosCuerpo }) : null;
+
+// ================================
+// MODO CLÚSTER (node cluster.js)
+// Cada trabajador tiene su caché y sus suscriptores del directo: las
+// mediciones que guarda uno se pasan al proceso principal, que las reenvía a
+// los demás para que las anoten y las difundan a sus suscriptores
+// ================================
+
+// Difunde las mediciones recién guardadas (y las pasa a los otros trabajadores,
+// con sus claves de idempotencia para que las anoten en su filtro)
+function publicarMediciones(mediciones, claves = []) {
+    difusor.publicar(mediciones);
+    if (cluster.isWorker && mediciones.length > 0) {
+        process.send({ tipo: 'mediciones', mediciones, claves });
+    }
+}
+
+// Anota el informe de un colector (y lo pasa a los otros trabajadores, para
+// que todos asignen los sensores igual)
+function anotarOidos(colector, sensores) {
+    asignador.informar(colector, sensores);
+    if (cluster.isWorker) {
+        process.send({ tipo: 'oidos', colector, sensores });
+    }
+}
+
+if (cluster.isWorker) {
+    process.on('message', (mensaje) => {
+        if (mensaje.tipo === 'mediciones') {
+            logicaNegocio.anotarMedicionesExternas(mensaje.mediciones, mensaje.claves);
+            difusor.publicar(mensaje.mediciones);
+        } else if (mensaje.tipo === 'oidos') {
+            asignador.informar(mensaje.colector, mensaje.sensores);
+        }
+    });
+}
 
 // ================================
 // MIDDLEWARE - Configuraciones que procesan las peticiones antes de llegar a las rutas
@@ -31,7 +118,20 @@ app.use(cors({
     credentials: true // Permitir credenciales (cookies, tokens, etc)
 }));
 
+// Middleware para los cuerpos de la app: comprueba la firma HMAC (cabecera X-Firma)
+// sobre los bytes recibidos y, si es válida, descomprime (gzip/deflate) y parsea
+// Si no hay CLAVE_HMAC en el .env la firma no se exige (útil en desarrollo)
+if (!process.env.CLAVE_HMAC) {
+    logger.warn('⚠️  CLAVE_HMAC no configurada: no se exige firma en los cuerpos');
+}
+app.use(crearMiddlewareCuerpo({
+    clave: process.env.CLAVE_HMAC, // Clave compartida con la app Android
+    limite: 5 * 1024 * 1024, // Máximo 5MB, comprimido o descomprimido
+    pool: poolHilos // Los cuerpos grandes se decodifican en un hilo (si hay)
+}));
+
 // Middleware para convertir JSON en el body de las peticiones a objetos JavaScript
+// (los cuerpos JSON ya los deja parseados el middleware anterior)
 app.use(express.json({ limit: '5mb' })); // Máximo 5MB de datos
 
 // Middleware para convertir datos URL-encoded a objetos JavaScript
@@ -39,10 +139,8 @@ app.use(express.urlencoded({ extended: true }));
 
 // Middleware personalizado: Registra cada petición que llega al servidor
 app.use((req, res, next) => {
-    // Obtener la hora actual en formato ISO
-    const timestamp = new Date().toISOString();
-    // Mostrar en consola: hora, método HTTP, URL e IP del cliente
-    console.log(`[${timestamp}] ${req.method} ${req.url} - IP: ${req.ip}`);
+    // Registrar método HTTP, URL e IP del cliente (la hora la pone el logger)
+    logger.info(`${req.method} ${req.url} - IP: ${req.ip}`);
     // Permitir que la petición continúe al siguiente middleware/ruta
     next();
 });
@@ -57,24 +155,31 @@ app.get('/api/health', (req, res) => {
     res.status(200).json({
         success: true, // Indica que fue exitoso
         message: 'API IoT funcionando correctamente',
-        timestamp: new Date().toISOString() // Hora en la que se consulta
+        timestamp: new Date().toISOString(), // Hora en la que se consulta
+        directo: difusor.getEstadisticas(), // Suscriptores del directo, expulsados, etc.
+        cache_ultimas: logicaNegocio.getEstadisticasCache(), // Tasa de aciertos y memoria de la caché
+        deduplicacion: logicaNegocio.getEstadisticasDeduplicacion(), // Tasa de duplicadas por clave de idempotencia
+        colectores: { ...asignador.getEstadisticas(), fusion: fusion.getEstadisticas() }, // Colectores vivos, copias fusionadas...
+        registro: logger.getEstadisticas(), // Líneas de log escritas, descartadas, rotaciones...
+        trabajador: cluster.isWorker ? cluster.worker.id : null, // Trabajador del clúster que responde
+        hilos_cuerpo: poolHilos ? poolHilos.getEstadisticas() : null // Pool de hilos para cuerpos grandes
     });
 });
 
 // ================================
 // RUTA 2: Guardar nueva medición (POST)
-// Recibe datos del Android con: { tipo: "temperatura" | "gas", valor: number }
+// Recibe datos del Android con: { tipo: "temperatura" | "gas", valor: number, timestamp?: fecha de captura }
 // ================================
 app.post('/api/mediciones', async (req, res) => {
 	
 	// Mostrar los headers (encabezados) recibidos en la petición
-    console.log('Headers recibidos:', req.headers);
+    logger.debug('Headers recibidos:', req.headers);
     // Mostrar el body (contenido) recibido de la petición
-    console.log('Body recibido:', req.body);
+    logger.debug('Body recibido:', req.body);
     // Verificar que el body sea un objeto
-    console.log('Body es objeto?', typeof req.body);
+    logger.debug('Body es objeto?', typeof req.body);
     // Verificar si existe la propiedad 'tipo' en el body
-    console.log('Body tiene tipo?', req.body?.tipo);
+    logger.debug('Body tiene tipo?', req.body?.tipo);
     try {
         // Validación: Verificar que sí llegaron datos en el cuerpo de la petición
         if (!req.body) {
@@ -87,16 +192,19 @@ app.post('/api/mediciones', async (req, res) => {
         // Guardar los datos recibidos en una variable
         const datosMedicion = req.body;
 		// Mostrar los datos en consola para debugging
-		console.log("AQUI ABAJO ESTA EL REQ BODY?????")
-		console.log(Object.entries(req.body)); // Convertir el objeto a pares clave-valor
-		console.log(datosMedicion);
+		logger.debug("AQUI ABAJO ESTA EL REQ BODY?????")
+		logger.debug(Object.entries(req.body)); // Convertir el objeto a pares clave-valor
+		logger.debug(datosMedicion);
         
-        // Log informativo mostrando los datos en formato JSON
-        console.log('📥 Datos recibidos del Android:', JSON.stringify(datosMedicion));
+        // Log informativo mostrando los datos en formato JSON (el stringify
+        // solo si el nivel debug está activo)
+        if (logger.activo('debug')) {
+            logger.debug('📥 Datos recibidos del Android:', JSON.stringify(datosMedicion));
+        }
 		
         // VALIDACIÓN 1: Verificar que exista el campo "tipo"
         if (!datosMedicion.tipo) {
-			console.log( 'El campo "tipo" es requerido')
+			logger.debug( 'El campo "tipo" es requerido')
             return res.status(400).json({
                 success: false,
                 error: 'El campo "tipo" es requerido'
@@ -105,7 +213,7 @@ app.post('/api/mediciones', async (req, res) => {
 
         // VALIDACIÓN 2: Verificar que exista el campo "valor" y no sea null/undefined
         if (datosMedicion.valor === undefined || datosMedicion.valor === null) {
-			console.log('El campo "valor" es requerido')
+			logger.debug('El campo "valor" es requerido')
             return res.status(400).json({
                 success: false,
                 error: 'El campo "valor" es requerido'
@@ -115,7 +223,7 @@ app.post('/api/mediciones', async (req, res) => {
         // VALIDACIÓN 3: Verificar que "tipo" sea solo "temperatura" o "gas"
         const tiposValidos = ['temperatura', 'gas']; // Array con tipos permitidos
         if (!tiposValidos.includes(datosMedicion.tipo.toLowerCase())) {
-			console.log( `El tipo debe ser "temperatura" o "gas". Recibido: "${datosMedicion.tipo}"`)
+			logger.debug( `El tipo debe ser "temperatura" o "gas". Recibido: "${datosMedicion.tipo}"`)
             return res.status(400).json({
                 success: false,
                 error: `El tipo debe ser "temperatura" o "gas". Recibido: "${datosMedicion.tipo}"`
@@ -124,6 +232,9 @@ app.post('/api/mediciones', async (req, res) => {
 
         // Llamar al método guardarMedicion de logicaNegocio para guardar en la BD
         const resultado = await logicaNegocio.guardarMedicion(datosMedicion);
+
+        // Envía la medición a los clientes web suscritos al directo
+        publicarMediciones([resultado]);
 		
         // Si todo fue bien, responder con estado 201 (Creado)
         res.status(201).json({
@@ -140,13 +251,14 @@ app.post('/api/mediciones', async (req, res) => {
 
     } catch (error) {
         // Si ocurre un error, mostrarlo en consola
-        console.error('❌ Error en POST /api/mediciones:', error);		
+        logger.error('❌ Error en POST /api/mediciones:', error);		
         
         // MANEJO DE ERRORES: Errores de validación de datos
         if (error.message.includes('tipo') || 
             error.message.includes('valor') || 
             error.message.includes('rango') || 
-            error.message.includes('numérico')) {
+            error.message.includes('numérico') ||
+            error.message.includes('fecha')) {
 			// Responder con estado 400 (Petición inválida)
             return res.status(400).json({
                 success: false,
@@ -181,7 +293,7 @@ app.post('/api/mediciones', async (req, res) => {
 app.get('/api/mediciones', async (req, res) => {
     try {
         // Log informativo
-        console.log('🔍 Obteniendo última medición');
+        logger.debug('🔍 Obteniendo última medición');
 
         // Llamar al método que obtiene las mediciones recientes (solicitamos solo 1)
         const ultimaMedicion = await logicaNegocio.getMedicionesRecientes(1);
@@ -203,7 +315,7 @@ app.get('/api/mediciones', async (req, res) => {
 
     } catch (error) {
         // Mostrar error en consola
-        console.error('❌ Error en GET /api/mediciones:', error);
+        logger.error('❌ Error en GET /api/mediciones:', error);
         
         // MANEJO DE ERRORES: Problemas con la conexión a BD
         if (error.message.includes('base de datos') || 
@@ -248,7 +360,7 @@ app.get('/api/mediciones/recientes', async (req, res) => {
         }
 
         // Log informativo mostrando cuántas mediciones se van a obtener
-        console.log(`📊 Obteniendo ${limite} mediciones recientes`);
+        logger.debug(`📊 Obteniendo ${limite} mediciones recientes`);
 
         // Llamar al método para obtener las mediciones recientes
         const medicionesRecientes = await logicaNegocio.getMedicionesRecientes(limite);
@@ -263,7 +375,7 @@ app.get('/api/mediciones/recientes', async (req, res) => {
 
     } catch (error) {
         // Mostrar error en consola
-        console.error('❌ Error en GET /api/mediciones/recientes:', error);
+        logger.error('❌ Error en GET /api/mediciones/recientes:', error);
         
         // MANEJO DE ERRORES: Problemas con la conexión a BD
         if (error.message.includes('base de datos') || 
@@ -284,6 +396,445 @@ app.get('/api/mediciones/recientes', async (req, res) => {
     }
 });
 
+// ================================
+// RUTA 5: Guardar un lote de mediciones (POST)
+// Recibe del Android: { base?, colector?, mediciones: [ {tipo, valor, dt?, clave?, rssi?}, ... ] }
+// donde la fecha de captura de cada medición es base + dt (ms desde 1970);
+// también se acepta "timestamp" en cada medición o directamente el array.
+// Las que traen una "clave" de idempotencia ya guardada (o una "clave_vecina",
+// la del minuto de al lado, ya guardada) no se repiten: salen como duplicadas
+// (ok) en "resultados".
+// Los lotes con "colector" pasan por la fusión (fusionColectores.js): se
+// espera ~1 s a las copias de otros colectores y se guarda la de mejor RSSI;
+// las demás salen como duplicadas con "fusionada".
+// La respuesta lleva "hora_servidor" para que el móvil corrija su reloj
+// Responde 201 si se guardaron todas, 207 si algunas se rechazaron y 400 si
+// no se pudo guardar ninguna. En "resultados" va el estado de cada medición
+// ================================
+app.post('/api/mediciones/lote', async (req, res) => {
+    try {
+        // El lote puede venir envuelto en { mediciones: [...] } o como array
+        const lista = Array.isArray(req.body) ? req.body : req.body?.mediciones;
+
+        // Validación: tiene que ser un array con al menos una medición
+        if (!Array.isArray(lista) || lista.length === 0) {
+            return res.status(400).json({
+                success: false,
+                error: 'El campo "mediciones" debe ser un array con al menos una medición'
+            });
+        }
+
+        // El colector (opcional) tiene que ser un identificador válido
+        const colector = Array.isArray(req.body) ? undefined : req.body?.colector;
+        if (colector !== undefined && (typeof colector !== 'string' || !FORMATO_COLECTOR.test(colector))) {
+            return res.status(400).json({
+                success: false,
+                error: 'El campo "colector" debe tener de 1 a 64 letras, números, "-" o "_"'
+            });
+        }
+
+        // Valida y guarda todas las mediciones en una sola transacción (las de
+        // un colector, junto con las copias de los demás que lleguen a la vez)
+        const resultado = colector !== undefined
+            ? await fusion.recibir(colector, lista, req.body.base)
+            : await logicaNegocio.guardarMedicionesLote(lista, req.body?.base);
+
+        // Envía las mediciones guardadas a los clientes web suscritos al directo
+        publicarMediciones(resultado.mediciones, resultado.claves);
+
+        // 201 si todo bien, 207 (Multi-Status) si hay rechazadas, 400 si ninguna valía
+        // (las duplicadas cuentan como bien: ya estaban guardadas)
+        const aceptadas = resultado.guardadas + resultado.duplicadas;
+        const codigo = resultado.rechazadas === 0 ? 201
+            : aceptadas > 0 ? 207 : 400;
+        res.status(codigo).json({
+            success: aceptadas > 0,
+            guardadas: resultado.guardadas, // Número de mediciones insertadas
+            rechazadas: resultado.rechazadas, // Número de mediciones con datos inválidos
+            duplicadas: resultado.duplicadas, // Número de mediciones que ya estaban (misma clave)
+            fusionadas: resultado.fusionadas || 0, // De ellas, copias de otro colector que lo oía mejor
+            resultados: resultado.resultados, // Estado de cada medición: {indice, ok, id | error, duplicada}
+            hora_servidor: Date.now() // Hora del servidor (ms) para estimar el desfase del móvil
+        });
+
+    } catch (error) {
+        // Mostrar error en consola
+        logger.error('❌ Error en POST /api/mediciones/lote:', error);
+
+        // MANEJO DE ERRORES: Lote demasiado grande
+        if (error.message.includes('máximo')) {
+            return res.status(413).json({
+                success: false,
+                error: error.message
+            });
+        }
+
+        // MANEJO DE ERRORES: Problemas con la conexión a BD
+        if (error.message.includes('base de datos') ||
+            error.message.includes('conexión') ||
+            error.code === 'ECONNREFUSED') {
+            return res.status(503).json({
+                success: false,
+                error: 'Error de conexión con la base de datos'
+            });
+        }
+
+        // MANEJO DE ERRORES: Error genérico (el lote entero se deshizo)
+        res.status(500).json({
+            success: false,
+            error: 'Error interno del servidor',
+            detalle: process.env.NODE_ENV === 'development' ? error.message : undefined
+        });
+    }
+});
+
+// ================================
+// RUTA 6: Serie temporal agregada (GET)
+// Parámetros: ?desde=ISO&hasta=ISO&resolucion=3600&tipo=gas&id_sensor=1
+// (tipo e id_sensor opcionales; resolucion en segundos por punto)
+// Se sirve desde la tabla de agregados más gruesa que valga (día/hora/minuto)
+// Con ?puntos=N (en lugar de resolucion; tipo obligatorio) devuelve la serie
+// reducida a como mucho N puntos que conservan su forma, para las gráficas:
+// &metodo=lttb (por defecto) o &metodo=minmax (mínimo y máximo por intervalo)
+// ================================
+app.get('/api/mediciones/serie', async (req, res) => {
+    try {
+        // Serie submuestreada: data es un array de [instante ms, valor]
+        // (pares en lugar de objetos: la mitad de bytes con miles de puntos)
+        if (req.query.puntos !== undefined) {
+            const serie = await logicaNegocio.getSerieSubmuestreada({
+                desde: req.query.desde,
+                hasta: req.query.hasta,
+                puntos: parseInt(req.query.puntos),
+                metodo: req.query.metodo,
+                tipo: req.query.tipo,
+                id_sensor: req.query.id_sensor === undefined ? undefined : parseInt(req.query.id_sensor)
+            });
+            return res.status(200).json({
+                success: true,
+                metodo: serie.metodo, // 'lttb' o 'minmax'
+                tabla: serie.tabla, // Tabla de la que salió la serie (para depurar)
+                leidas: serie.leidas, // Puntos de entrada que se leyeron
+                total: serie.puntos.length,
+                data: serie.puntos
+            });
+        }
+
+        // Los parámetros de la URL llegan como texto
+        const filtros = {
+            desde: req.query.desde,
+            hasta: req.query.hasta,
+            resolucion: req.query.resolucion === undefined ? undefined : parseInt(req.query.resolucion),
+            tipo: req.query.tipo,
+            id_sensor: req.query.id_sensor === undefined ? undefined : parseInt(req.query.id_sensor)
+        };
+
+        // Calcula la serie con la tabla de agregados adecuada
+        const serie = await logicaNegocio.getSerieAgregada(filtros);
+
+        res.status(200).json({
+            success: true,
+            tabla: serie.tabla, // Tabla de la que salió la serie (para depurar)
+            resolucion: serie.resolucion, // Segundos por punto
+            total: serie.puntos.length,
+            data: serie.puntos // Array de { inicio, tipo, n, media, minimo, maximo }
+        });
+
+    } catch (error) {
+        // Mostrar error en consola
+        logger.error('❌ Error en GET /api/mediciones/serie:', error);
+
+        // MANEJO DE ERRORES: Parámetros inválidos
+        if (error.message.includes('parámetro')) {
+            return res.status(400).json({
+                success: false,
+                error: error.message
+            });
+        }
+
+        // MANEJO DE ERRORES: Problemas con la conexión a BD
+        if (error.message.includes('base de datos') ||
+            error.message.includes('conexión') ||
+            error.code === 'ECONNREFUSED') {
+            return res.status(503).json({
+                success: false,
+                error: 'Error de conexión con la base de datos'
+            });
+        }
+
+        // MANEJO DE ERRORES: Error genérico
+        res.status(500).json({
+            success: false,
+            error: 'Error interno del servidor',
+            detalle: process.env.NODE_ENV === 'development' ? error.message : undefined
+        });
+    }
+});
+
+// ================================
+// RUTA 7: Mediciones en directo (GET, Server-Sent Events)
+// Parámetros opcionales: ?tipo=gas,temperatura&id_sensor=1,2
+// La conexión queda abierta y llega un evento "medicion" por cada medición
+// nueva que cumpla los filtros (sin tener que volver a preguntar a la API)
+// ================================
+app.get('/api/mediciones/directo', (req, res) => {
+    // Los filtros llegan como listas separadas por comas
+    const lista = (texto) => texto ? String(texto).split(',').map(t => t.trim()).filter(t => t) : null;
+    const filtros = {
+        tipos: lista(req.query.tipo),
+        sensores: lista(req.query.id_sensor)
+    };
+
+    // Si no caben más suscriptores se responde 503 y el navegador reintentará
+    if (!difusor.suscribir(req, res, filtros)) {
+        return res.status(503).json({
+            success: false,
+            error: 'Demasiados clientes conectados al directo'
+        });
+    }
+    logger.info(`📡 Nuevo suscriptor al directo (${difusor.getEstadisticas().suscriptores} en total)`);
+});
+
+// ================================
+// RUTA 8: Últimas mediciones de cada sensor y tipo (GET)
+// Parámetros opcionales: ?id_sensor=1&tipo=gas&n=1 (n últimas, 1-100)
+// Se sirve desde la caché en memoria; "origen" dice si salió de la caché o de la BD
+// ================================
+app.get('/api/mediciones/ultimas', async (req, res) => {
+    try {
+        // Los parámetros de la URL llegan como texto
+        const filtros = {
+            id_sensor: req.query.id_sensor,
+            tipo: req.query.tipo,
+            n: req.query.n === undefined ? undefined : Number(req.query.n)
+        };
+
+        const resultado = await logicaNegocio.getUltimasMediciones(filtros);
+
+        res.status(200).json({
+            success: true,
+            origen: resultado.origen, // 'cache' o 'bd'
+            total: resultado.mediciones.length,
+            data: resultado.mediciones // Array de { id, dispositivo_id, tipo, valor, timestamp }
+        });
+
+    } catch (error) {
+        // Mostrar error en consola
+        logger.error('❌ Error en GET /api/mediciones/ultimas:', error);
+
+        // MANEJO DE ERRORES: Parámetros inválidos
+        if (error.message.includes('parámetro') || error.message.includes('Tipo de medición')) {
+            return res.status(400).json({
+                success: false,
+                error: error.message
+            });
+        }
+
+        // MANEJO DE ERRORES: Problemas con la conexión a BD
+        if (error.message.includes('base de datos') ||
+            error.message.includes('conexión') ||
+            error.code === 'ECONNREFUSED') {
+            return res.status(503).json({
+                success: false,
+                error: 'Error de conexión con la base de datos'
+            });
+        }
+
+        // MANEJO DE ERRORES: Error genérico
+        res.status(500).json({
+            success: false,
+            error: 'Error interno del servidor',
+            detalle: process.env.NODE_ENV === 'development' ? error.message : undefined
+        });
+    }
+});
+
+// Filtros comunes del histórico y la exportación desde los parámetros de la URL
+// (?id_sensor=1&tipo=gas&desde=ISO&hasta=ISO, todos opcionales)
+function filtrosHistorico(query) {
+    const fecha = (texto, nombre) => {
+        if (texto === undefined) return undefined;
+        const fecha = new Date(texto);
+        if (isNaN(fecha.getTime())) {
+            throw new Error(`El parámetro "${nombre}" debe ser una fecha válida`);
+        }
+        return fecha;
+    };
+    return {
+        dispositivo_id: query.id_sensor,
+        tipo: query.tipo,
+        fecha_inicio: fecha(query.desde, 'desde'),
+        fecha_fin: fecha(query.hasta, 'hasta')
+    };
+}
+
+// ================================
+// RUTA 9: Histórico de mediciones paginado (GET)
+// Parámetros opcionales: ?id_sensor=1&tipo=gas&desde=ISO&hasta=ISO&limite=100&cursor=...
+// De la más reciente a la más antigua; para la página siguiente se pasa como
+// "cursor" el "siguiente" de la respuesta (null cuando ya no hay más)
+// ================================
+app.get('/api/mediciones/historico', async (req, res) => {
+    try {
+        const filtros = filtrosHistorico(req.query);
+        filtros.limite = req.query.limite === undefined ? undefined : Number(req.query.limite);
+        filtros.cursor = req.query.cursor;
+
+        const pagina = await logicaNegocio.getMedicionesPagina(filtros);
+
+        res.status(200).json({
+            success: true,
+            total: pagina.mediciones.length,
+            siguiente: pagina.siguiente, // Cursor de la página siguiente o null
+            data: pagina.mediciones // Array de { id, dispositivo_id, tipo, valor, timestamp }
+        });
+
+    } catch (error) {
+        // Mostrar error en consola
+        logger.error('❌ Error en GET /api/mediciones/historico:', error);
+
+        // MANEJO DE ERRORES: Parámetros inválidos
+        if (error.message.includes('parámetro')) {
+            return res.status(400).json({
+                success: false,
+                error: error.message
+            });
+        }
+
+        // MANEJO DE ERRORES: Problemas con la conexión a BD
+        if (error.message.includes('base de datos') ||
+            error.message.includes('conexión') ||
+            error.code === 'ECONNREFUSED') {
+            return res.status(503).json({
+                success: false,
+                error: 'Error de conexión con la base de datos'
+            });
+        }
+
+        // MANEJO DE ERRORES: Error genérico
+        res.status(500).json({
+            success: false,
+            error: 'Error interno del servidor',
+            detalle: process.env.NODE_ENV === 'development' ? error.message : undefined
+        });
+    }
+});
+
+// ================================
+// RUTA 10: Exportar mediciones (GET, NDJSON o CSV en streaming)
+// Parámetros opcionales: ?formato=ndjson|csv&id_sensor=1&tipo=gas&desde=ISO&hasta=ISO
+// Se escriben según se leen de la BD (memoria constante para cualquier rango)
+// ================================
+app.get('/api/mediciones/exportar', async (req, res) => {
+    try {
+        const inicio = Date.now();
+        const escritas = await exportarMediciones(logicaNegocio, filtrosHistorico(req.query), req.query.formato, res);
+        logger.info(`📦 Exportadas ${escritas} mediciones en ${Date.now() - inicio} ms`);
+
+    } catch (error) {
+        // Mostrar error en consola
+        logger.error('❌ Error en GET /api/mediciones/exportar:', error);
+
+        // Si ya se empezó a enviar solo se puede cortar la conexión
+        if (res.headersSent) {
+            return res.destroy(error);
+        }
+
+        // MANEJO DE ERRORES: Parámetros inválidos
+        if (error.message.includes('parámetro')) {
+            return res.status(400).json({
+                success: false,
+                error: error.message
+            });
+        }
+
+        // MANEJO DE ERRORES: Problemas con la conexión a BD
+        if (error.message.includes('base de datos') ||
+            error.message.includes('conexión') ||
+            error.code === 'ECONNREFUSED') {
+            return res.status(503).json({
+                success: false,
+                error: 'Error de conexión con la base de datos'
+            });
+        }
+
+        // MANEJO DE ERRORES: Error genérico
+        res.status(500).json({
+            success: false,
+            error: 'Error interno del servidor',
+            detalle: process.env.NODE_ENV === 'development' ? error.message : undefined
+        });
+    }
+});
+
+// ================================
+// RUTA 11: Informe de un colector (POST)
+// Recibe de cada móvil o pasarela, cada ~30 s:
+//   { sensores: [ {sensor: "D4:36:...", rssi: -71}, ... ] }
+// y responde con los sensores que le toca subir ("responsable") y los que
+// sube otro colector que los oye mejor ("ajenos"), válidos durante validez_ms
+// ================================
+app.post('/api/colectores/:id/oidos', (req, res) => {
+    const colector = req.params.id;
+    if (!FORMATO_COLECTOR.test(colector)) {
+        return res.status(400).json({
+            success: false,
+            error: 'El colector debe tener de 1 a 64 letras, números, "-" o "_"'
+        });
+    }
+    try {
+        anotarOidos(colector, req.body?.sensores);
+    } catch (error) {
+        return res.status(400).json({
+            success: false,
+            error: error.message
+        });
+    }
+    const { responsable, ajenos, validez_ms } = asignador.responsabilidad(colector);
+    res.status(200).json({ success: true, colector, responsable, ajenos, validez_ms });
+});
+
+// ================================
+// RUTA 12: Sensores de los que es responsable un colector (GET)
+// Lo mismo que responde el informe, sin mandar uno nuevo
+// ================================
+app.get('/api/colectores/:id/responsabilidad', (req, res) => {
+    const colector = req.params.id;
+    if (!FORMATO_COLECTOR.test(colector)) {
+        return res.status(400).json({
+            success: false,
+            error: 'El colector debe tener de 1 a 64 letras, números, "-" o "_"'
+        });
+    }
+    const { responsable, ajenos, validez_ms } = asignador.responsabilidad(colector);
+    res.status(200).json({ success: true, colector, responsable, ajenos, validez_ms });
+});
+
+// ================================
+// RUTA 13: Registro de calibraciones de los sensores (GET)
+// Lo descarga el Android cada 10 minutos para pasar el valor crudo de cada
+// lectura a unidades de ingeniería y subirlo en "valor_ing":
+//   { calibraciones: [ {sensor, tipo, polinomio: [...]} o
+//                      {sensor, tipo, crudos: [...], valores: [...]}, ... ] }
+// ================================
+app.get('/api/calibraciones', async (req, res) => {
+    try {
+        const calibraciones = await logicaNegocio.getCalibraciones();
+        res.status(200).json({
+            success: true,
+            calibraciones,
+            total: calibraciones.length
+        });
+    } catch (error) {
+        logger.error('❌ Error en GET /api/calibraciones:', error);
+        res.status(500).json({
+            success: false,
+            error: 'Error interno del servidor',
+            detalle: process.env.NODE_ENV === 'development' ? error.message : undefined
+        });
+    }
+});
+
 // ================================
 // RUTA COMODÍN: Manejo de rutas no encontradas (404)
 // ================================
@@ -297,7 +848,14 @@ app.use('*', (req, res) => {
             'GET  /api/health',
             'POST /api/mediciones (body: {tipo: "temperatura|gas", valor: number})', 
             'GET  /api/mediciones (retorna la última medición)',
-            'GET  /api/mediciones/recientes (params: ?limite=50)'
+            'GET  /api/mediciones/recientes (params: ?limite=50)',
+            'POST /api/mediciones/lote (body: {mediciones: [{tipo, valor}, ...]})',
+            'GET  /api/mediciones/serie (params: ?desde&hasta&resolucion=3600&tipo&id_sensor, o &puntos=N&metodo=lttb|minmax)',
+            'GET  /api/mediciones/directo (SSE, params: ?tipo=gas,temperatura&id_sensor=1,2)',
+            'GET  /api/mediciones/ultimas (params: ?id_sensor=1&tipo=gas&n=1)',
+            'GET  /api/mediciones/historico (params: ?id_sensor&tipo&desde&hasta&limite=100&cursor)',
+            'GET  /api/mediciones/exportar (params: ?formato=ndjson|csv&id_sensor&tipo&desde&hasta)',
+            'GET  /api/calibraciones (curvas de calibración de cada sensor y tipo)'
         ]
     });
 });
@@ -308,7 +866,7 @@ app.use('*', (req, res) => {
 // ================================
 app.use((err, req, res, next) => {
     // Mostrar el error en consola
-    console.error('💥 Error no manejado:', err);
+    logger.error('💥 Error no manejado:', err);
     
     // Responder con estado 500 (Error interno del servidor)
     res.status(500).json({
@@ -328,59 +886,92 @@ app.use((err, req, res, next) => {
 async function iniciarServidor() {
     try {
         // Mostrar que se va a verificar la conexión a BD
-        console.log('🔄 Verificando conexión a base de datos...');
+        logger.info('🔄 Verificando conexión a base de datos...');
         // Llamar al método verificarConexion de logicaNegocio
         await logicaNegocio.verificarConexion();
         // Si no hay error, la conexión fue exitosa
-        console.log('✅ Conexión a base de datos exitosa');
+        logger.info('✅ Conexión a base de datos exitosa');
         
         // Iniciar el servidor en el puerto especificado
         app.listen(PORT, () => {
             // Mostrar mensajes de bienvenida y información
-            console.log(`\n🚀 ============================================`);
-            console.log(`   Servidor IoT iniciado exitosamente`);
-            console.log(`============================================`);
-            console.log(`📡 Puerto: ${PORT}`);
-            console.log(`🌐 URL Local: http://localhost:${PORT}`);
-            console.log(`📋 Health Check: http://localhost:${PORT}/api/health`);
-            console.log(`\n📊 Endpoints Disponibles:`);
-            console.log(`   POST /api/mediciones`);
-            console.log(`        Body: {tipo: "temperatura|gas", valor: number}`);
-            console.log(`   GET  /api/mediciones`);
-            console.log(`        Retorna la última medición registrada`);
-            console.log(`   GET  /api/mediciones/recientes`);
-            console.log(`        Params: ?limite=50`);
-            console.log(`============================================`);
-            console.log(`⏰ Servidor listo para recibir peticiones...\n`);
+            logger.info(`\n🚀 ============================================`);
+            logger.info(`   Servidor IoT iniciado exitosamente`);
+            logger.info(`============================================`);
+            logger.info(`📡 Puerto: ${PORT}`);
+            logger.info(`🌐 URL Local: http://localhost:${PORT}`);
+            logger.info(`📋 Health Check: http://localhost:${PORT}/api/health`);
+            logger.info(`\n📊 Endpoints Disponibles:`);
+            logger.info(`   POST /api/mediciones`);
+            logger.info(`        Body: {tipo: "temperatura|gas", valor: number}`);
+            logger.info(`   GET  /api/mediciones`);
+            logger.info(`        Retorna la última medición registrada`);
+            logger.info(`   GET  /api/mediciones/recientes`);
+            logger.info(`        Params: ?limite=50`);
+            logger.info(`   POST /api/mediciones/lote`);
+            logger.info(`        Body: {colector?, mediciones: [{tipo, valor, rssi?}, ...]}`);
+            logger.info(`   GET  /api/mediciones/serie`);
+            logger.info(`        Params: ?desde&hasta&resolucion=3600&tipo&id_sensor`);
+            logger.info(`        o ?desde&hasta&tipo&puntos=1000&metodo=lttb|minmax (submuestreada)`);
+            logger.info(`   GET  /api/mediciones/directo (Server-Sent Events)`);
+            logger.info(`        Params: ?tipo=gas,temperatura&id_sensor=1,2`);
+            logger.info(`   GET  /api/mediciones/ultimas`);
+            logger.info(`        Params: ?id_sensor=1&tipo=gas&n=1`);
+            logger.info(`   GET  /api/mediciones/historico`);
+            logger.info(`        Params: ?id_sensor&tipo&desde&hasta&limite=100&cursor`);
+            logger.info(`   GET  /api/mediciones/exportar (NDJSON o CSV en streaming)`);
+            logger.info(`        Params: ?formato=ndjson|csv&id_sensor&tipo&desde&hasta`);
+            logger.info(`   POST /api/colectores/:id/oidos`);
+            logger.info(`        Body: {sensores: [{sensor, rssi}, ...]} -> {responsable, ajenos}`);
+            logger.info(`   GET  /api/colectores/:id/responsabilidad`);
+            logger.info(`   GET  /api/calibraciones (curvas de los sensores para el Android)`);
+            logger.info(`============================================`);
+            logger.info(`⏰ Servidor listo para recibir peticiones...\n`);
         });
         
     } catch (error) {
         // Si hay un error al iniciar el servidor, mostrarlo
-        console.error('\n❌ ============================================');
-        console.error('   Error al iniciar servidor');
-        console.error('============================================');
-        console.error('Error:', error.message);
-        console.error('\n💡 Posibles soluciones:');
-        console.error('   1. Verifique la configuración en el archivo .env');
-        console.error('   2. Asegúrese que MySQL esté ejecutándose');
-        console.error('   3. Verifique las credenciales de base de datos');
-        console.error('   4. Verifique que la tabla "mediciones" exista');
-        console.error('============================================\n');
+        logger.error('\n❌ ============================================');
+        logger.error('   Error al iniciar servidor');
+        logger.error('============================================');
+        logger.error('Error:', error.message);
+        logger.error('\n💡 Posibles soluciones:');
+        logger.error('   1. Verifique la configuración en el archivo .env');
+        logger.error('   2. Asegúrese que MySQL esté ejecutándose');
+        logger.error('   3. Verifique las credenciales de base de datos');
+        logger.error('   4. Verifique que la tabla "mediciones" exista');
+        logger.error('============================================\n');
         // Cerrar el proceso con código de error
         process.exit(1);
     }
 }
 
+// Cierra las conexiones abiertas del directo y termina el proceso
+// En un trabajador, antes pasa el log pendiente al proceso principal
+// (con Ctrl+C llegan dos señales: la del terminal y la que reenvía cluster.js)
+let terminando = false;
+function terminar() {
+    if (terminando) return;
+    terminando = true;
+    difusor.cerrar();
+    if (cluster.isWorker && process.connected) {
+        logger.volcar();
+        process.send({ tipo: 'fin' }, () => process.exit(0));
+    } else {
+        process.exit(0);
+    }
+}
+
 // Manejador de señal SIGTERM: Cierra el servidor de forma segura cuando se termina el proceso
 process.on('SIGTERM', () => {
-    console.log('\n🔄 Cerrando servidor graciosamente...');
-    process.exit(0);
+    logger.info('\n🔄 Cerrando servidor graciosamente...');
+    terminar();
 });
 
 // Manejador de señal SIGINT: Cierra el servidor cuando el usuario presiona Ctrl+C
 process.on('SIGINT', () => {
-    console.log('\n🔄 Servidor interrumpido por usuario...');
-    process.exit(0);
+    logger.info('\n🔄 Servidor interrumpido por usuario...');
+    terminar();
 });
 
 // Llamar a la función para iniciar el servidor
@@ -0,0 +1,227 @@
+// ================================
+// ASIGNADOR DE SENSORES A COLECTORES
+// Cada colector (móvil o pasarela) informa cada ~30 s de los sensores que oye
+// y con qué RSSI (POST /api/colectores/:id/oidos). Para cada sensor se elige
+// como responsable el colector vivo que mejor lo oye (media móvil del RSSI) y
+// a cada colector se le contesta con los sensores que le tocan y los "ajenos"
+// (los que sube otro), para que no suba esos: el tráfico pasa de N copias de
+// cada lectura (una por colector) a casi una.
+//   - Redundancia: con redundancia > 1 cada sensor tiene ese número de
+//     responsables (los que mejor lo oyen): si uno pierde una trama la sube
+//     otro, y las copias de más las funde fusionColectores.js o las para la
+//     clave de idempotencia. Con 1 se sube una copia, pero se pierden las
+//     tramas que el responsable no oye aunque las oiga otro.
+//   - Histéresis: un responsable solo se cambia si otro lo oye claramente
+//     mejor (histeresisDb), para que dos colectores parecidos no se turnen.
+//   - Caducidad: un colector que no informa en caducidadMs deja de contar y
+//     sus sensores pasan a otro. La lista que recibe cada colector vale
+//     validezMs: si deja de renovarla, el colector vuelve a subirlo todo.
+// Todo está en memoria: tras reiniciar el servidor, hasta el siguiente
+// informe nadie tiene ajenos y todos suben todo (como sin asignador).
+// ================================
+
+// Un colector que no informa en este tiempo se da por desaparecido
+const CADUCIDAD_POR_DEFECTO_MS = 90 * 1000;
+
+// Validez de la lista de ajenos que se da a cada colector
+const VALIDEZ_POR_DEFECTO_MS = 120 * 1000;
+
+// dB que tiene que ganar otro colector para quitarle un sensor al responsable
+const HISTERESIS_POR_DEFECTO_DB = 6;
+
+// Peso de cada informe nuevo en la media móvil del RSSI
+const PESO_RSSI = 0.3;
+
+// Responsables por sensor
+const REDUNDANCIA_POR_DEFECTO = 1;
+
+// Máximo de sensores que se aceptan en un informe
+const MAXIMO_SENSORES_INFORME = 2000;
+
+class AsignadorColectores {
+    // ------------------------------------------------------------------------
+    // @param opciones - { caducidadMs, validezMs, histeresisDb, redundancia,
+    //                     reloj: función que devuelve la hora en ms }
+    // ------------------------------------------------------------------------
+    constructor({ caducidadMs = CADUCIDAD_POR_DEFECTO_MS, validezMs = VALIDEZ_POR_DEFECTO_MS,
+                  histeresisDb = HISTERESIS_POR_DEFECTO_DB, redundancia = REDUNDANCIA_POR_DEFECTO,
+                  reloj = Date.now } = {}) {
+        this.caducidadMs = caducidadMs;
+        this.validezMs = validezMs;
+        this.histeresisDb = histeresisDb;
+        this.redundancia = Math.max(1, redundancia);
+        this.reloj = reloj;
+
+        // sensor -> { oyentes: Map colector -> { rssi, ultimaVez }, responsables: Set }
+        this.sensores = new Map();
+        // colector -> { ultimaVez, sensores: Set de los que oye }
+        this.colectores = new Map();
+
+        this.informes = 0;
+        this.reasignaciones = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    // Anota el informe de un colector (sustituye al anterior: los sensores que
+    // ya no aparecen es que ha dejado de oírlos)
+    // @param colector - identificador (ya validado)
+    // @param oidos - [{ sensor: texto, rssi: entero dBm }, ...]
+    // ------------------------------------------------------------------------
+    informar(colector, oidos) {
+        if (!Array.isArray(oidos) || oidos.length > MAXIMO_SENSORES_INFORME) {
+            throw new Error(`"sensores" debe ser un array de como mucho ${MAXIMO_SENSORES_INFORME} sensores`);
+        }
+        for (const oido of oidos) {
+            if (!oido || typeof oido.sensor !== 'string' || oido.sensor.length === 0 || oido.sensor.length > 64 ||
+                !Number.isInteger(oido.rssi) || oido.rssi < -127 || oido.rssi > 20) {
+                throw new Error('Cada sensor oído debe ser { sensor: texto, rssi: entero entre -127 y 20 }');
+            }
+        }
+
+        const ahora = this.reloj();
+        this.informes++;
+        let estado = this.colectores.get(colector);
+        if (!estado) {
+            estado = { ultimaVez: ahora, sensores: new Set() };
+            this.colectores.set(colector, estado);
+        }
+        estado.ultimaVez = ahora;
+
+        // Los que ya no oye
+        const actuales = new Set(oidos.map(oido => oido.sensor));
+        for (const sensor of estado.sensores) {
+            if (!actuales.has(sensor)) {
+                const s = this.sensores.get(sensor);
+                if (s) {
+                    s.oyentes.delete(colector);
+                    this.elegir(sensor, s, ahora);
+                }
+            }
+        }
+        estado.sensores = actuales;
+
+        // Los que oye, con su RSSI suavizado
+        for (const { sensor, rssi } of oidos) {
+            let s = this.sensores.get(sensor);
+            if (!s) {
+                s = { oyentes: new Map(), responsables: new Set() };
+                this.sensores.set(sensor, s);
+            }
+            const oyente = s.oyentes.get(colector);
+            if (oyente) {
+                oyente.rssi += PESO_RSSI * (rssi - oyente.rssi);
+                oyente.ultimaVez = ahora;
+            } else {
+                s.oyentes.set(colector, { rssi, ultimaVez: ahora });
+            }
+            this.elegir(sensor, s, ahora);
+        }
+    }
+
+    // Elige los responsables de un sensor entre sus oyentes vivos: se quedan
+    // los que siguen vivos, se completan con los mejores y uno de fuera solo
+    // entra si oye el sensor histeresisDb mejor que el peor de dentro
+    elegir(sensor, s, ahora) {
+        const vivos = [];
+        for (const [colector, oyente] of s.oyentes) {
+            if (ahora - oyente.ultimaVez > this.caducidadMs) {
+                s.oyentes.delete(colector);
+            } else {
+                vivos.push([colector, oyente.rssi]);
+            }
+        }
+        if (vivos.length === 0) {
+            this.sensores.delete(sensor);
+            return;
+        }
+        vivos.sort((a, b) => b[1] - a[1]);
+
+        const antes = s.responsables;
+        const dentro = vivos.filter(([colector]) => antes.has(colector)).slice(0, this.redundancia);
+        const fuera = vivos.filter(([colector]) => !dentro.some(([d]) => d === colector));
+        while (dentro.length < this.redundancia && fuera.length > 0) {
+            dentro.push(fuera.shift());
+        }
+        dentro.sort((a, b) => b[1] - a[1]);
+        while (fuera.length > 0 && fuera[0][1] >= dentro[dentro.length - 1][1] + this.histeresisDb) {
+            fuera.push(dentro.pop());
+            dentro.push(fuera.shift());
+            fuera.sort((a, b) => b[1] - a[1]);
+            dentro.sort((a, b) => b[1] - a[1]);
+        }
+
+        const despues = new Set(dentro.map(([colector]) => colector));
+        for (const colector of antes) {
+            if (!despues.has(colector)) {
+                this.reasignaciones++;
+            }
+        }
+        s.responsables = despues;
+    }
+
+    // ------------------------------------------------------------------------
+    // Sensores que le tocan a un colector y los que sube otro
+    // @param colector - identificador
+    // @return { responsable: [sensores], ajenos: [sensores], validez_ms }
+    // ------------------------------------------------------------------------
+    responsabilidad(colector) {
+        const ahora = this.reloj();
+        const responsable = [];
+        const ajenos = [];
+        const estado = this.colectores.get(colector);
+        for (const sensor of estado ? estado.sensores : []) {
+            const s = this.sensores.get(sensor);
+            if (!s) {
+                continue;
+            }
+            this.elegir(sensor, s, ahora);
+            if (!this.sensores.has(sensor)) {
+                continue;
+            }
+            if (s.responsables.has(colector)) {
+                responsable.push(sensor);
+            } else {
+                ajenos.push(sensor);
+            }
+        }
+        return { responsable, ajenos, validez_ms: this.validezMs };
+    }
+
+    // ------------------------------------------------------------------------
+    // Olvida los colectores que no informan y los sensores que nadie oye
+    // (se llama de vez en cuando; las consultas ya ignoran a los caducados)
+    // ------------------------------------------------------------------------
+    purgar() {
+        const ahora = this.reloj();
+        for (const [colector, estado] of this.colectores) {
+            if (ahora - estado.ultimaVez > this.caducidadMs) {
+                this.colectores.delete(colector);
+            }
+        }
+        for (const [sensor, s] of this.sensores) {
+            this.elegir(sensor, s, ahora);
+        }
+    }
+
+    getEstadisticas() {
+        const ahora = this.reloj();
+        let vivos = 0;
+        for (const estado of this.colectores.values()) {
+            vivos += ahora - estado.ultimaVez <= this.caducidadMs ? 1 : 0;
+        }
+        let oidosPorVarios = 0;
+        for (const s of this.sensores.values()) {
+            oidosPorVarios += s.oyentes.size > 1 ? 1 : 0;
+        }
+        return {
+            colectores: vivos,
+            sensores: this.sensores.size,
+            sensores_compartidos: oidosPorVarios, // Oídos por más de un colector
+            informes: this.informes,
+            reasignaciones: this.reasignaciones
+        };
+    }
+}
+
+// Exportar la clase para que api.js la pueda usar
+module.exports = { AsignadorColectores };
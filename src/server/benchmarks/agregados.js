@@ -0,0 +1,238 @@
+// ================================
+// BENCHMARK: consultas por rango sobre mediciones vs tablas de agregados
+// Llena una base de datos de pruebas con N mediciones (10 millones por
+// defecto) repartidas entre varios sensores durante un año, crea los índices y
+// los agregados de sql/001_indices_y_agregados.sql y mide cuánto tardan:
+//   - las últimas 50 mediciones (getMedicionesRecientes)
+//   - series de 1 día, 1 semana, 1 mes y 1 año leyendo mediciones en crudo
+//   - las mismas series a través de getSerieAgregada (tabla más gruesa)
+// Al final aplica las migraciones 002 a 005 y comprueba que un lote de
+// temperaturas negativas calibradas (crudo 65524, valor_ing -12) llega a los
+// agregados de minuto, hora y día con su valor en ºC y no con el crudo
+//
+// Uso: node benchmarks/agregados.js [--filas=10000000] [--sensores=20]
+// (con --filas=0 solo se hace la comprobación)
+// Necesita MySQL y el .env con DB_NAME apuntando a una base de datos de
+// PRUEBAS: borra y vuelve a crear las tablas mediciones y mediciones_*
+// ================================
+const fs = require('fs');
+const path = require('path');
+const { logger } = require('../logger');
+const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const FILAS = parseInt(argumentos.filas || 10000000);
+const SENSORES = parseInt(argumentos.sensores || 20);
+const REPETICIONES = 5;
+
+// Fin del año simulado: las mediciones van de FIN - 365 días a FIN
+const FIN = new Date('2025-01-01T00:00:00Z');
+const DIA_MS = 24 * 3600 * 1000;
+
+// Escribe una línea en la salida estándar (no en el log)
+function escribir(texto) {
+    process.stdout.write(texto + '\n');
+}
+
+// Mide la mediana de varias ejecuciones de una función asíncrona (ms)
+async function medir(funcion) {
+    const tiempos = [];
+    for (let i = 0; i < REPETICIONES; i++) {
+        const inicio = process.hrtime.bigint();
+        await funcion();
+        tiempos.push(Number(process.hrtime.bigint() - inicio) / 1e6);
+    }
+    tiempos.sort((a, b) => a - b);
+    return tiempos[Math.floor(tiempos.length / 2)];
+}
+
+// Borra las tablas y crea mediciones vacía, sin índices (los pone la migración)
+async function crearEsquema(db) {
+    for (const tabla of ['mediciones_minuto', 'mediciones_hora', 'mediciones_dia', 'mediciones']) {
+        await db.ejecutarQuery(`DROP TABLE IF EXISTS ${tabla}`);
+    }
+    await db.ejecutarQuery(`
+        CREATE TABLE mediciones (
+            id INT AUTO_INCREMENT PRIMARY KEY,
+            id_sensor INT NOT NULL,
+            tipo VARCHAR(20) NOT NULL,
+            valor DOUBLE NOT NULL,
+            fecha DATETIME NOT NULL
+        ) ENGINE = InnoDB
+    `);
+}
+
+// Llena mediciones con FILAS filas generadas en MySQL (sin pasar por Node)
+// Cada fila cae en un instante al azar del año y en un sensor al azar
+async function llenar(db) {
+    const trozo = 100000;
+    const segundosAnyo = 365 * 24 * 3600;
+    // Tabla de números 0..99999 para generar filas con INSERT ... SELECT
+    await db.ejecutarQuery('DROP TABLE IF EXISTS numeros_benchmark');
+    await db.ejecutarQuery('CREATE TABLE numeros_benchmark (n INT PRIMARY KEY)');
+    await db.ejecutarQuery(`
+        INSERT INTO numeros_benchmark (n)
+        SELECT a.d + 10 * b.d + 100 * c.d + 1000 * d.d + 10000 * e.d
+        FROM (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+              UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) a,
+             (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+              UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) b,
+             (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+              UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) c,
+             (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+              UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) d,
+             (SELECT 0 d UNION ALL SELECT 1 UNION ALL SELECT 2 UNION ALL SELECT 3 UNION ALL SELECT 4
+              UNION ALL SELECT 5 UNION ALL SELECT 6 UNION ALL SELECT 7 UNION ALL SELECT 8 UNION ALL SELECT 9) e
+    `);
+
+    const fin = FIN.toISOString().slice(0, 19).replace('T', ' ');
+    for (let hechas = 0; hechas < FILAS; hechas += trozo) {
+        const cuantas = Math.min(trozo, FILAS - hechas);
+        await db.ejecutarQuery(`
+            INSERT INTO mediciones (id_sensor, tipo, valor, fecha)
+            SELECT 1 + FLOOR(RAND() * ?),
+                   IF(RAND() < 0.5, 'gas', 'temperatura'),
+                   ROUND(RAND() * 200, 1),
+                   ? - INTERVAL FLOOR(RAND() * ?) SECOND
+            FROM numeros_benchmark WHERE n < ?
+        `, [SENSORES, fin, segundosAnyo, cuantas]);
+        if ((hechas / trozo) % 10 === 0) {
+            escribir(`  ${hechas + cuantas} filas...`);
+        }
+    }
+    await db.ejecutarQuery('DROP TABLE numeros_benchmark');
+}
+
+// Ejecuta cada sentencia de un fichero de migración (índices, agregados, relleno)
+async function aplicarMigracion(db, fichero = '001_indices_y_agregados.sql') {
+    const sql = fs.readFileSync(path.join(__dirname, '..', 'sql', fichero), 'utf8');
+    const sentencias = sql.replace(/--.*$/gm, '').split(';').map(s => s.trim()).filter(s => s.length > 0);
+    for (const sentencia of sentencias) {
+        // Muestra solo el principio de cada sentencia
+        escribir(`  ${sentencia.split('\n')[0].slice(0, 70)}`);
+        await db.ejecutarQuery(sentencia);
+    }
+}
+
+async function main() {
+    const logica = new LogicaDeNegocio();
+    const db = logica.database;
+
+    // Los mensajes de LogicaDeNegocio se descartan durante las medidas
+    logger.configurar({ archivo: null, consola: false });
+
+    escribir(`Creando ${FILAS} mediciones de ${SENSORES} sensores...`);
+    await crearEsquema(db);
+    let inicio = Date.now();
+    await llenar(db);
+    escribir(`  llenado en ${((Date.now() - inicio) / 1000).toFixed(1)} s`);
+
+    // Series leyendo mediciones en crudo SIN índices (como estaba antes)
+    const rangos = [['1 día', 1, 300], ['1 semana', 7, 3600], ['1 mes', 30, 3600], ['1 año', 365, 86400]];
+    const crudoSinIndices = {};
+    for (const [nombre, dias, resolucion] of rangos) {
+        crudoSinIndices[nombre] = await medir(() => consultaCruda(db, dias, resolucion));
+    }
+    const recientesSinIndices = await medir(() => logica.getMedicionesRecientes(50));
+
+    escribir('Aplicando sql/001_indices_y_agregados.sql...');
+    inicio = Date.now();
+    await aplicarMigracion(db);
+    escribir(`  migración en ${((Date.now() - inicio) / 1000).toFixed(1)} s`);
+
+    escribir('');
+    escribir('consulta                          | sin índices | con índices | agregados | tabla');
+    escribir(`últimas 50                        | ${recientesSinIndices.toFixed(1).padStart(8)} ms | ` +
+        `${(await medir(() => logica.getMedicionesRecientes(50))).toFixed(1).padStart(8)} ms |           |`);
+    for (const [nombre, dias, resolucion] of rangos) {
+        const conIndices = await medir(() => consultaCruda(db, dias, resolucion));
+        let tabla = '';
+        const agregada = await medir(async () => {
+            const serie = await logica.getSerieAgregada({
+                tipo: 'gas', id_sensor: 1,
+                desde: new Date(FIN.getTime() - dias * DIA_MS), hasta: FIN, resolucion
+            });
+            tabla = serie.tabla;
+        });
+        escribir(`gas sensor 1, ${nombre.padEnd(8)} cada ${String(resolucion).padStart(5)} s | ` +
+            `${crudoSinIndices[nombre].toFixed(1).padStart(8)} ms | ${conIndices.toFixed(1).padStart(8)} ms | ` +
+            `${agregada.toFixed(1).padStart(6)} ms | ${tabla}`);
+    }
+
+    escribir('');
+    escribir('Comprobando los agregados de mediciones calibradas...');
+    for (const fichero of ['002_clave_idempotencia.sql', '003_colector_y_rssi.sql', '004_calibraciones.sql']) {
+        await aplicarMigracion(db, fichero);
+    }
+    await comprobarCalibradas(logica, db);
+
+    await db.cerrarConexion();
+}
+
+// Guarda un lote de temperaturas en un día sin más mediciones (el año
+// simulado acaba en FIN), dos de ellas bajo cero, y comprueba que los
+// agregados de los tres niveles, la serie sobre mediciones y la
+// submuestreada usan valor_ing; después rehace los agregados con la
+// migración 005 y vuelve a comprobarlos
+async function comprobarCalibradas(logica, db) {
+    const dia = new Date(FIN.getTime() + 30 * DIA_MS);
+    const minuto = new Date(dia.getTime() + 10 * 3600 * 1000);
+    const lote = [
+        { tipo: 'temperatura', valor: 65524, valor_ing: -12, timestamp: new Date(minuto.getTime() + 5000) },
+        { tipo: 'temperatura', valor: 65531, valor_ing: -5, timestamp: new Date(minuto.getTime() + 20000) },
+        { tipo: 'temperatura', valor: 20, valor_ing: 20, timestamp: new Date(minuto.getTime() + 40000) }
+    ];
+    const guardado = await logica.guardarMedicionesLote(lote);
+    if (guardado.guardadas !== lote.length) {
+        throw new Error(`Se esperaban ${lote.length} mediciones guardadas y hay ${guardado.guardadas}`);
+    }
+
+    // Rango holgado: los intervalos de los agregados van en la hora local de MySQL
+    const desde = new Date(dia.getTime() - DIA_MS);
+    const hasta = new Date(dia.getTime() + 2 * DIA_MS);
+    const comprobar = async (cuando) => {
+        for (const [resolucion, tabla] of [[90, 'mediciones'], [60, 'mediciones_minuto'],
+            [3600, 'mediciones_hora'], [86400, 'mediciones_dia']]) {
+            const serie = await logica.getSerieAgregada({ tipo: 'temperatura', id_sensor: 1, desde, hasta, resolucion });
+            const [punto] = serie.puntos;
+            if (serie.tabla !== tabla || serie.puntos.length !== 1 || punto.n !== 3
+                || punto.minimo !== -12 || punto.maximo !== 20 || Math.abs(punto.media - 1) > 1e-9) {
+                throw new Error(`${cuando}: ${tabla} no tiene el valor calibrado: ${JSON.stringify(serie)}`);
+            }
+            escribir(`  ${cuando}, ${tabla.padEnd(17)}: n = ${punto.n}, media = ${punto.media}, ` +
+                `mínimo = ${punto.minimo}, máximo = ${punto.maximo}`);
+        }
+    };
+    await comprobar('al guardar');
+
+    const submuestreada = await logica.getSerieSubmuestreada({
+        tipo: 'temperatura', id_sensor: 1, desde: minuto, hasta: new Date(minuto.getTime() + 60000), puntos: 10
+    });
+    const valores = submuestreada.puntos.map(([, valor]) => valor);
+    if (Math.min(...valores) !== -12 || Math.max(...valores) !== 20) {
+        throw new Error(`La serie submuestreada no usa el valor calibrado: ${JSON.stringify(valores)}`);
+    }
+
+    await aplicarMigracion(db, '005_agregados_valor_ing.sql');
+    await comprobar('rehechos con 005');
+}
+
+// La misma serie que getSerieAgregada pero agregando sobre mediciones
+function consultaCruda(db, dias, resolucion) {
+    return db.ejecutarQuery(`
+        SELECT FROM_UNIXTIME(FLOOR(UNIX_TIMESTAMP(fecha) / ?) * ?) AS inicio,
+               COUNT(*) AS n, AVG(valor) AS media, MIN(valor) AS minimo, MAX(valor) AS maximo
+        FROM mediciones
+        WHERE id_sensor = ? AND tipo = ? AND fecha >= ? AND fecha < ?
+        GROUP BY inicio ORDER BY inicio
+    `, [resolucion, resolucion, 1, 'gas', new Date(FIN.getTime() - dias * DIA_MS), FIN]);
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
@@ -0,0 +1,133 @@
+// ================================
+// BASE DE DATOS SIMULADA
+// Imita el pool de mysql2: número limitado de conexiones y un coste fijo por
+// viaje (red + parseo) más un coste pequeño por fila insertada o leída.
+// Los SELECT devuelven lo que diga la función "responder(sql, params)"
+// (array de filas); sin ella devuelven un array vacío
+// Las claves de idempotencia se tratan como el índice único de MySQL: el
+// INSERT IGNORE se salta las filas con una clave ya guardada (dejando el hueco
+// en los ids) y las consultas por clave o por id de guardarMedicionesLote se
+// contestan con lo insertado
+// ================================
+class BaseDatosSimulada {
+    constructor({ latenciaMs = 1, conexiones = 10, costeFilaMs = 0.002, responder = null } = {}) {
+        this.latenciaMs = latenciaMs;
+        this.costeFilaMs = costeFilaMs;
+        this.responder = responder;
+        this.libres = conexiones;
+        this.esperando = [];
+        this.filasInsertadas = 0;
+        this.viajes = 0;
+        this.siguienteId = 1;
+        this.idPorClave = new Map();
+        this.clavePorId = new Map();
+        this.huecos = new Set();
+    }
+
+    // Espera a que haya una conexión libre en el pool
+    async coger() {
+        if (this.libres > 0) {
+            this.libres--;
+            return;
+        }
+        await new Promise((resolve) => this.esperando.push(resolve));
+    }
+
+    // Devuelve la conexión al pool (o se la pasa al siguiente que espera)
+    soltar() {
+        const siguiente = this.esperando.shift();
+        if (siguiente) {
+            siguiente();
+        } else {
+            this.libres++;
+        }
+    }
+
+    // Un viaje a la base de datos: latencia + coste por fila
+    async viaje(sql, params) {
+        this.viajes++;
+        if (/^\s*SELECT/i.test(sql)) {
+            const filas = this.consultaClaves(sql, params) || (this.responder ? this.responder(sql, params) : []);
+            await new Promise((resolve) => setTimeout(resolve, this.latenciaMs + filas.length * this.costeFilaMs));
+            return [filas];
+        }
+        // Solo los INSERT en mediciones añaden filas (los de agregados no cuentan)
+        // (las columnas y la posición de la clave salen de la lista del INSERT)
+        const insercion = /^INSERT (IGNORE )?INTO mediciones \(([^)]*)\)/.exec(sql);
+        const nombres = insercion ? insercion[2].split(',').map(c => c.trim()) : [];
+        const columnas = nombres.length;
+        const posicionClave = nombres.indexOf('clave');
+        const filas = insercion ? params.length / columnas : 0;
+        await new Promise((resolve) => setTimeout(resolve, this.latenciaMs + filas * this.costeFilaMs));
+        // Ids consecutivos para todo el INSERT; las ignoradas dejan su hueco
+        const primerId = this.siguienteId;
+        this.siguienteId += filas;
+        let insertId = 0;
+        let insertadas = 0;
+        for (let k = 0; k < filas; k++) {
+            const clave = posicionClave >= 0 ? params[k * columnas + posicionClave] : null;
+            if (clave !== null && this.idPorClave.has(clave)) {
+                if (!insercion[1]) {
+                    throw new Error(`Duplicate entry '${clave}' for key 'uq_mediciones_clave'`);
+                }
+                this.huecos.add(primerId + k);
+                continue;
+            }
+            if (clave !== null) {
+                this.idPorClave.set(clave, primerId + k);
+                this.clavePorId.set(primerId + k, clave);
+            }
+            insertId = insertId || primerId + k;
+            insertadas++;
+        }
+        this.filasInsertadas += insertadas;
+        return [{ insertId, affectedRows: insertadas }];
+    }
+
+    // Las dos consultas de guardarMedicionesLote sobre las claves: las que ya
+    // están (WHERE clave IN) y los ids que entraron en un INSERT IGNORE
+    // @return filas o null si la consulta es otra
+    consultaClaves(sql, params) {
+        if (/WHERE clave IN/.test(sql)) {
+            return params.filter(clave => this.idPorClave.has(clave))
+                .map(clave => ({ id: this.idPorClave.get(clave), clave }));
+        }
+        if (/AS clave FROM mediciones\s+WHERE id >= \?/.test(sql)) {
+            const [desde, limite] = params;
+            const filas = [];
+            for (let id = desde; id < this.siguienteId && filas.length < limite; id++) {
+                if (!this.huecos.has(id)) {
+                    filas.push({ id, clave: this.clavePorId.get(id) || null });
+                }
+            }
+            return filas;
+        }
+        return null;
+    }
+
+    // Igual que Database.ejecutarQuery: coge conexión, ejecuta y la suelta
+    async ejecutarQuery(sql, params = []) {
+        await this.coger();
+        try {
+            const [rows] = await this.viaje(sql, params);
+            return rows;
+        } finally {
+            this.soltar();
+        }
+    }
+
+    // Igual que Database.iniciarTransaccion: la conexión queda reservada
+    async iniciarTransaccion() {
+        await this.coger();
+        await this.viaje('BEGIN', []);
+        return {
+            execute: (sql, params) => this.viaje(sql, params),
+            commit: () => this.viaje('COMMIT', []),
+            rollback: () => this.viaje('ROLLBACK', []),
+            release: () => this.soltar()
+        };
+    }
+}
+
+// Exportar la clase para las pruebas de carga
+module.exports = { BaseDatosSimulada };
@@ -0,0 +1,131 @@
+// ================================
+// BENCHMARK: latencia de las últimas mediciones con y sin caché en memoria
+// Lanza muchas consultas de getUltimasMediciones (lo que hace la ruta
+// GET /api/mediciones/ultimas) desde varios clientes a la vez, mezcladas con
+// mediciones nuevas que se guardan mientras tanto, y compara la latencia
+// (p50/p95/p99) y las consultas por segundo con la caché y sin ella.
+//
+// Uso: node benchmarks/cacheUltimas.js [--consultas=20000] [--clientes=50]
+//          [--sensores=50] [--latencia=1]
+// Usa la base de datos simulada de baseDatosSimulada.js (pool de 10
+// conexiones y "latencia" ms por viaje), no hace falta MySQL
+// ================================
+const path = require('path');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+const { logger } = require('../logger');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const CONSULTAS = parseInt(argumentos.consultas || 20000);
+const CLIENTES = parseInt(argumentos.clientes || 50);
+const SENSORES = parseInt(argumentos.sensores || 50);
+const LATENCIA_MS = parseFloat(argumentos.latencia || 1);
+
+// Una de cada ESCRITURA_CADA consultas es una medición nueva que se guarda
+const ESCRITURA_CADA = 20;
+
+const TIPOS = ['gas', 'temperatura'];
+
+// Filas que devuelve la base de datos simulada a los SELECT de LogicaDeNegocio
+function responder(sql, params) {
+    if (sql.includes('SELECT DISTINCT id_sensor, tipo')) {
+        const claves = [];
+        for (let s = 1; s <= SENSORES; s++) {
+            for (const tipo of TIPOS) claves.push({ id_sensor: s, tipo });
+        }
+        return claves;
+    }
+    // leerUltimasDeBD: [idSensor, tipo, n]
+    const [idSensor, tipo, n] = params;
+    const ahora = Date.now();
+    return Array.from({ length: n }, (_, k) => ({
+        id: k + 1, dispositivo_id: idSensor, tipo, valor: String(20 + k), timestamp: new Date(ahora - k * 1000)
+    }));
+}
+
+// Carga LogicaDeNegocio con database.js sustituido
+function cargarLogica(opciones) {
+    const fijar = (modulo, exportaciones) => {
+        const ruta = require.resolve(path.join('..', modulo));
+        require.cache[ruta] = { id: ruta, filename: ruta, loaded: true, exports: exportaciones };
+    };
+    fijar('database', { Database: function () { return new BaseDatosSimulada({ latenciaMs: LATENCIA_MS, responder }); } });
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    return new LogicaDeNegocio(opciones);
+}
+
+// Los mensajes de LogicaDeNegocio se registran como en producción (nivel
+// info, los de depuración ni se formatean) pero no se escriben
+function silenciarConsola() {
+    logger.configurar({ nivel: 'info', archivo: null, consola: false });
+}
+
+// Consulta i-ésima: 2/3 piden el valor actual de todos los sensores, el resto
+// las 5 últimas de un sensor y tipo concretos
+function consulta(logica, i) {
+    if (i % 3 !== 2) {
+        return logica.getUltimasMediciones({ n: 1 });
+    }
+    return logica.getUltimasMediciones({ id_sensor: 1 + (i % SENSORES), tipo: TIPOS[i % 2], n: 5 });
+}
+
+// Ejecuta todas las consultas con CLIENTES en paralelo y devuelve las latencias (ms)
+async function ejecutar(logica) {
+    const latencias = new Float64Array(CONSULTAS);
+    let siguiente = 0;
+    const cliente = async () => {
+        while (siguiente < CONSULTAS) {
+            const i = siguiente++;
+            const inicio = process.hrtime.bigint();
+            if (i % ESCRITURA_CADA === 0) {
+                await logica.guardarMedicion({ tipo: TIPOS[i % 2], valor: 20 + (i % 10) });
+            } else {
+                await consulta(logica, i);
+            }
+            latencias[i] = Number(process.hrtime.bigint() - inicio) / 1e6;
+        }
+    };
+    const inicio = process.hrtime.bigint();
+    await Promise.all(Array.from({ length: CLIENTES }, cliente));
+    const totalMs = Number(process.hrtime.bigint() - inicio) / 1e6;
+    // Solo las consultas de lectura cuentan para la latencia
+    const lecturas = Array.from(latencias).filter((_, i) => i % ESCRITURA_CADA !== 0).sort((a, b) => a - b);
+    return { lecturas, totalMs };
+}
+
+function percentil(ordenadas, p) {
+    return ordenadas[Math.min(ordenadas.length - 1, Math.floor(ordenadas.length * p))];
+}
+
+function informar(nombre, { lecturas, totalMs }, viajes) {
+    process.stdout.write(
+        `${nombre.padEnd(10)} | p50 ${percentil(lecturas, 0.5).toFixed(2).padStart(7)} ms | ` +
+        `p95 ${percentil(lecturas, 0.95).toFixed(2).padStart(7)} ms | p99 ${percentil(lecturas, 0.99).toFixed(2).padStart(7)} ms | ` +
+        `${Math.round(CONSULTAS / (totalMs / 1000)).toString().padStart(7)} consultas/s | ${viajes} viajes a la BD\n`
+    );
+}
+
+async function main() {
+    process.stdout.write(`${CONSULTAS} consultas, ${CLIENTES} clientes, ${SENSORES} sensores x ${TIPOS.length} tipos, ` +
+        `BD simulada con latencia ${LATENCIA_MS} ms\n`);
+
+    const sinCache = cargarLogica({ cacheUltimas: false });
+    const conCache = cargarLogica();
+    silenciarConsola();
+
+    informar('sin caché', await ejecutar(sinCache), sinCache.database.viajes);
+    informar('con caché', await ejecutar(conCache), conCache.database.viajes);
+
+    const estadisticas = conCache.getEstadisticasCache();
+    process.stdout.write(`caché: ${(estadisticas.tasa_aciertos * 100).toFixed(1)} % de aciertos, ` +
+        `${estadisticas.claves} claves, ${estadisticas.mediciones} mediciones, ` +
+        `~${Math.round(estadisticas.bytes_estimados / 1024)} KB\n`);
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
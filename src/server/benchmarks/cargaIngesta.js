@@ -0,0 +1,124 @@
+// ================================
+// PRUEBA DE CARGA: ingesta de mediciones una a una vs por lotes
+// Compara filas/segundo de LogicaDeNegocio.guardarMedicion (una transacción
+// con su INSERT y los agregados por cada medición) con guardarMedicionesLote
+// (INSERT multi-fila por trozos dentro de una sola transacción).
+//
+// Uso:
+//   node benchmarks/cargaIngesta.js [--filas=20000] [--clientes=20] [--latencia=1]
+//       Usa una base de datos simulada en memoria: cada viaje a la base de
+//       datos cuesta "latencia" ms y el pool tiene 10 conexiones, como database.js
+//   node benchmarks/cargaIngesta.js --mysql [--filas=20000]
+//       Usa el MySQL real del .env (¡inserta filas en la tabla mediciones!
+//       usar con DB_NAME apuntando a una base de datos de pruebas)
+// ================================
+const path = require('path');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+const { logger } = require('../logger');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const FILAS = parseInt(argumentos.filas || 20000);
+const CLIENTES = parseInt(argumentos.clientes || 20);
+const LATENCIA_MS = parseFloat(argumentos.latencia || 1);
+const TAMANYOS_LOTE = [50, 500];
+
+// ================================
+// PREPARACIÓN
+// ================================
+
+// Los mensajes de LogicaDeNegocio se registran como en producción (nivel
+// info, los de depuración ni se formatean) pero no se escriben
+function silenciarConsola() {
+    logger.configurar({ nivel: 'info', archivo: null, consola: false });
+}
+
+// Carga LogicaDeNegocio; en modo simulado sustituye database.js
+function cargarLogica() {
+    if (!argumentos.mysql) {
+        const fijar = (modulo, exportaciones) => {
+            const ruta = require.resolve(path.join('..', modulo));
+            require.cache[ruta] = { id: ruta, filename: ruta, loaded: true, exports: exportaciones };
+        };
+        const simulada = new BaseDatosSimulada({ latenciaMs: LATENCIA_MS });
+        fijar('database', { Database: function () { return simulada; } });
+    }
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    return new LogicaDeNegocio();
+}
+
+// Genera una medición como las del Android
+function crearMedicion(i) {
+    return i % 2 === 0 ? { tipo: 'gas', valor: 120 + (i % 40) } : { tipo: 'temperatura', valor: 18 + (i % 8) };
+}
+
+// Ejecuta "trabajos" con CLIENTES peticiones en paralelo, como varios
+// dispositivos subiendo a la vez
+async function ejecutarConClientes(numeroTrabajos, trabajo) {
+    let siguiente = 0;
+    const cliente = async () => {
+        while (siguiente < numeroTrabajos) {
+            await trabajo(siguiente++);
+        }
+    };
+    await Promise.all(Array.from({ length: CLIENTES }, cliente));
+}
+
+// Escribe una línea de resultado sin pasar por el console silenciado
+function informar(nombre, filas, ms, viajes) {
+    process.stdout.write(
+        `${nombre.padEnd(22)} | ${String(filas).padStart(7)} filas | ${ms.toFixed(0).padStart(6)} ms | ` +
+        `${Math.round(filas / (ms / 1000)).toString().padStart(8)} filas/s` +
+        (viajes === undefined ? '' : ` | ${viajes} viajes a la BD`) + '\n'
+    );
+}
+
+// ================================
+// PRUEBA
+// ================================
+async function main() {
+    const logica = cargarLogica();
+    const bd = logica.database;
+    silenciarConsola();
+
+    process.stdout.write(`Base de datos: ${argumentos.mysql ? 'MySQL real (.env)' : `simulada, latencia ${LATENCIA_MS} ms`}` +
+        `, ${CLIENTES} clientes en paralelo\n`);
+
+    // Camino antiguo: una petición (y un INSERT) por medición
+    let viajesAntes = bd.viajes;
+    let inicio = process.hrtime.bigint();
+    await ejecutarConClientes(FILAS, (i) => logica.guardarMedicion(crearMedicion(i)));
+    let ms = Number(process.hrtime.bigint() - inicio) / 1e6;
+    informar('una a una', FILAS, ms, bd.viajes === undefined ? undefined : bd.viajes - viajesAntes);
+
+    // Camino nuevo: lotes como los que sube el planificador del Android
+    for (const tamanyo of TAMANYOS_LOTE) {
+        const numeroLotes = Math.ceil(FILAS / tamanyo);
+        viajesAntes = bd.viajes;
+        inicio = process.hrtime.bigint();
+        await ejecutarConClientes(numeroLotes, async (l) => {
+            const lote = [];
+            for (let i = l * tamanyo; i < Math.min(FILAS, (l + 1) * tamanyo); i++) {
+                lote.push(crearMedicion(i));
+            }
+            const resultado = await logica.guardarMedicionesLote(lote);
+            if (resultado.rechazadas !== 0) {
+                throw new Error('el lote de prueba no debería tener rechazadas');
+            }
+        });
+        ms = Number(process.hrtime.bigint() - inicio) / 1e6;
+        informar(`lotes de ${tamanyo}`, FILAS, ms, bd.viajes === undefined ? undefined : bd.viajes - viajesAntes);
+    }
+
+    if (argumentos.mysql) {
+        await bd.cerrarConexion();
+    }
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en la prueba de carga: ${err.stack}\n`);
+    process.exit(1);
+});
@@ -0,0 +1,232 @@
+// ================================
+// PRUEBA DE CARGA: modo clúster con 1, 2, ... N trabajadores
+// Arranca el clúster de cluster.js (ClusterApi, con el reparto de conexiones
+// a MySQL y el reenvío de log y mediciones de verdad) con cada número de
+// trabajadores y lo carga con una mezcla de peticiones:
+//   - 80 %: GET /api/mediciones/recientes?limite=50
+//   - 20 %: POST /api/mediciones/lote con 100 mediciones (JSON por
+//     middlewareCuerpo.js, validación y los INSERT de guardarMedicionesLote)
+// La carga la generan varios procesos aparte (--generadores) para que el
+// cliente no sea el cuello de botella. Escribe peticiones/s, p50/p99 y la
+// mejora sobre 1 trabajador.
+//
+// Uso:
+//   node benchmarks/cluster.js [--trabajadores=1,2,4] [--segundos=5] [--conexiones=64]
+//                              [--generadores=2] [--conexiones-bd=20] [--latencia=1] [--hilos=0]
+//       Cada trabajador sirve las dos rutas como api.js sobre la base de datos
+//       simulada (baseDatosSimulada.js) con su parte de --conexiones-bd
+//   node benchmarks/cluster.js --api [...]
+//       Los trabajadores son el api.js real contra el MySQL del .env (hace
+//       falta npm install; ¡inserta filas en la tabla mediciones!)
+// Con --hilos=N cada trabajador decodifica los lotes en un pool de N hilos
+// (umbral 0 para que pasen todos por él).
+// Los trabajadores, los generadores y la base de datos comparten la máquina:
+// la mejora tiene como techo el número de núcleos libres.
+// ================================
+const cluster = require('cluster');
+const { fork } = require('child_process');
+const http = require('http');
+const os = require('os');
+const path = require('path');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const SEGUNDOS = parseFloat(argumentos.segundos || 5);
+const CONEXIONES = parseInt(argumentos.conexiones || 64);
+const GENERADORES = parseInt(argumentos.generadores || 2);
+const CONEXIONES_BD = parseInt(argumentos['conexiones-bd'] || 20);
+const MEDICIONES_LOTE = 100;
+const CALENTAMIENTO_MS = 1000;
+
+// 1, 2, 4... hasta los núcleos de la máquina
+function trabajadoresPorDefecto() {
+    const lista = [];
+    for (let n = 1; n < os.availableParallelism(); n *= 2) lista.push(n);
+    lista.push(os.availableParallelism());
+    return lista;
+}
+
+// ================================
+// TRABAJADOR DEL CLÚSTER (modo simulado): las dos rutas como en api.js
+// ================================
+function servidorTrabajador() {
+    const ruta = require.resolve('../database');
+    const { BaseDatosSimulada } = require('./baseDatosSimulada');
+    const { logger } = require('../logger');
+    const { crearMiddlewareCuerpo } = require('../middlewareCuerpo');
+    const { PoolHilos } = require('../poolHilos');
+
+    // Lo mismo que hace api.js en un trabajador
+    logger.configurar({ archivo: null, consola: false, salida: (texto) => process.send({ tipo: 'log', texto }) });
+
+    // El pool de la BD simulada tiene las conexiones que tocan a este trabajador
+    const ultimas = Array.from({ length: 50 }, (_, i) => ({
+        id: i + 1, dispositivo_id: 1 + i % 5, tipo: 'gas', valor: 400 + i, timestamp: new Date(Date.now() - i * 1000)
+    }));
+    const simulada = new BaseDatosSimulada({
+        latenciaMs: parseFloat(process.env.BENCH_LATENCIA),
+        conexiones: parseInt(process.env.DB_CONEXIONES),
+        responder: (sql, params) => ultimas.slice(0, params[params.length - 1])
+    });
+    require.cache[ruta] = { id: ruta, filename: ruta, loaded: true, exports: { Database: function () { return simulada; } } };
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    const logicaNegocio = new LogicaDeNegocio({ cacheUltimas: false });
+
+    const hilos = parseInt(process.env.BENCH_HILOS);
+    const pool = hilos > 0 ? new PoolHilos({ hilos }) : null;
+    const cuerpo = crearMiddlewareCuerpo({ pool, umbralHilo: 0 });
+
+    // Lo justo de Express para el middleware y las respuestas
+    const responder = (res, codigo, objeto) => {
+        res.writeHead(codigo, { 'Content-Type': 'application/json' });
+        res.end(JSON.stringify(objeto));
+    };
+    const servidor = http.createServer((req, res) => {
+        logger.info(`${req.method} ${req.url} - IP: ${req.socket.remoteAddress}`);
+        req.is = (tipo) => (req.headers['content-type'] || '').includes(tipo.split('/')[1]);
+        res.status = (codigo) => ({ json: (objeto) => responder(res, codigo, objeto) });
+        if (req.method === 'POST') {
+            cuerpo(req, res, async () => {
+                try {
+                    const resultado = await logicaNegocio.guardarMedicionesLote(req.body.mediciones, req.body.base);
+                    process.send({ tipo: 'mediciones', mediciones: resultado.mediciones, claves: resultado.claves });
+                    responder(res, 201, { success: true, guardadas: resultado.guardadas, resultados: resultado.resultados });
+                } catch (error) {
+                    responder(res, 500, { success: false, error: error.message });
+                }
+            });
+        } else {
+            logicaNegocio.getMedicionesRecientes(50)
+                .then((data) => responder(res, 200, { success: true, total: data.length, data }))
+                .catch((error) => responder(res, 500, { success: false, error: error.message }));
+        }
+    });
+    process.on('message', (mensaje) => {
+        if (mensaje.tipo === 'mediciones') {
+            logicaNegocio.anotarMedicionesExternas(mensaje.mediciones, mensaje.claves);
+        }
+    });
+    process.on('SIGTERM', () => {
+        logger.volcar();
+        process.send({ tipo: 'fin' }, () => process.exit(0));
+    });
+    servidor.listen(parseInt(process.env.PORT));
+}
+
+// ================================
+// GENERADOR DE CARGA (proceso aparte)
+// ================================
+async function generador(puerto, conexiones, ms) {
+    const agente = new http.Agent({ keepAlive: true, maxSockets: conexiones });
+    const lote = JSON.stringify({
+        base: Date.now(),
+        mediciones: Array.from({ length: MEDICIONES_LOTE }, (_, i) => ({ tipo: i % 2 ? 'gas' : 'temperatura', valor: 20 + i % 10, dt: -i * 1000 }))
+    });
+    const latencias = [];
+    let errores = 0;
+    let n = 0;
+    const pedir = () => new Promise((resolve) => {
+        const escribir = n++ % 5 === 0;
+        const inicio = process.hrtime.bigint();
+        const req = http.request({
+            port: puerto,
+            method: escribir ? 'POST' : 'GET',
+            path: escribir ? '/api/mediciones/lote' : '/api/mediciones/recientes?limite=50',
+            headers: escribir ? { 'Content-Type': 'application/json' } : {},
+            agent: agente
+        }, (res) => {
+            res.resume();
+            res.on('end', () => {
+                if (res.statusCode < 300) {
+                    latencias.push(Number(process.hrtime.bigint() - inicio) / 1e6);
+                } else {
+                    errores++;
+                }
+                resolve();
+            });
+        });
+        req.on('error', () => { errores++; resolve(); });
+        req.end(escribir ? lote : undefined);
+    });
+    const fin = Date.now() + ms;
+    await Promise.all(Array.from({ length: conexiones }, async () => {
+        while (Date.now() < fin) await pedir();
+    }));
+    agente.destroy();
+    return { latencias, errores };
+}
+
+// ================================
+// PROCESO PRINCIPAL
+// ================================
+
+// Carga desde todos los generadores a la vez; junta sus latencias
+async function cargar(puerto, ms) {
+    const resultados = await Promise.all(Array.from({ length: GENERADORES }, () => new Promise((resolve, reject) => {
+        const hijo = fork(__filename, ['--generador', `--puerto=${puerto}`, `--conexiones=${Math.ceil(CONEXIONES / GENERADORES)}`, `--ms=${ms}`]);
+        hijo.once('message', resolve);
+        hijo.once('error', reject);
+    })));
+    return {
+        latencias: resultados.flatMap(r => r.latencias).sort((a, b) => a - b),
+        errores: resultados.reduce((suma, r) => suma + r.errores, 0)
+    };
+}
+
+function percentil(ordenadas, p) {
+    return ordenadas[Math.min(ordenadas.length - 1, Math.floor(ordenadas.length * p))] || 0;
+}
+
+async function main() {
+    const { ClusterApi } = require('../cluster');
+    const { logger } = require('../logger');
+    logger.configurar({ archivo: null, consola: false });
+
+    const lista = argumentos.trabajadores ? String(argumentos.trabajadores).split(',').map(Number) : trabajadoresPorDefecto();
+    const puerto = 20000 + process.pid % 10000;
+    process.stdout.write(`${os.availableParallelism()} núcleos, ${GENERADORES} generadores con ${CONEXIONES} conexiones, ` +
+        `${SEGUNDOS} s por caso, ${CONEXIONES_BD} conexiones a la BD en total, ` +
+        `${argumentos.api ? 'api.js y MySQL del .env' : `BD simulada con latencia ${argumentos.latencia || 1} ms`}` +
+        `${argumentos.hilos ? `, ${argumentos.hilos} hilos por trabajador` : ''}\n`);
+
+    let base = null;
+    for (const trabajadores of lista) {
+        const clusterApi = new ClusterApi({
+            exec: argumentos.api ? path.join(__dirname, '..', 'api.js') : __filename,
+            trabajadores,
+            conexionesTotales: CONEXIONES_BD,
+            entorno: {
+                PORT: String(puerto),
+                BENCH_LATENCIA: String(argumentos.latencia || 1),
+                BENCH_HILOS: String(argumentos.hilos || 0),
+                HILOS_CUERPO: String(argumentos.hilos || 0)
+            }
+        });
+        await clusterApi.iniciar();
+        await cargar(puerto, CALENTAMIENTO_MS);
+        const { latencias, errores } = await cargar(puerto, SEGUNDOS * 1000);
+        await clusterApi.cerrar();
+
+        const porSegundo = latencias.length / SEGUNDOS;
+        base = base || porSegundo;
+        process.stdout.write(`${String(trabajadores).padStart(2)} trabajadores (BD ${clusterApi.conexiones.join('+').padEnd(11)}) | ` +
+            `${Math.round(porSegundo).toString().padStart(6)} req/s | x${(porSegundo / base).toFixed(2)} | ` +
+            `p50 ${percentil(latencias, 0.5).toFixed(1).padStart(6)} ms | p99 ${percentil(latencias, 0.99).toFixed(1).padStart(6)} ms` +
+            `${errores ? ` | ${errores} errores` : ''}\n`);
+    }
+}
+
+if (cluster.isWorker) {
+    servidorTrabajador();
+} else if (argumentos.generador) {
+    generador(parseInt(argumentos.puerto), parseInt(argumentos.conexiones), parseInt(argumentos.ms))
+        .then((resultado) => process.send(resultado, () => process.exit(0)));
+} else {
+    main().catch((err) => {
+        process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+        process.exit(1);
+    });
+}
@@ -0,0 +1,260 @@
+// ================================
+// BENCHMARK: varios colectores oyendo los mismos sensores
+// Simula un sitio con varios móviles o pasarelas (colectores) que oyen cada
+// sensor con un RSSI distinto (fijo por pareja sensor-colector más ruido) y
+// suben cada 30 s lo que han oído, como PlanificadorSubidas (cada uno con su
+// fase). Compara sobre la BD simulada:
+//   - todos:      cada colector sube todo, sin "colector" (solo la clave de
+//                 idempotencia evita las filas repetidas)
+//   - fusión:     lotes con "colector" a través de fusionColectores.js (las
+//                 copias que llegan en la misma ventana se quedan en la de
+//                 mejor RSSI)
+//   - asignación: además cada colector informa de lo que oye cada 30 s y no
+//                 sube los sensores "ajenos" (asignadorColectores.js y
+//                 ResponsabilidadColector.java)
+// y escribe peticiones, mediciones subidas, filas, lecturas perdidas (que
+// algún colector oyó pero no se guardaron), viajes a la BD, qué parte de las
+// filas es del colector que mejor oye su sensor y tiempo.
+// La fusión usa una ventana de pocos ms reales: los lotes que en la
+// simulación llegan a menos de --ventana ms se mandan a la vez.
+//
+// Uso: node benchmarks/colectores.js [--sensores=50] [--colectores=4] [--horas=1]
+//          [--cobertura=0.8] [--perdidas=0.1] [--ventana=1000] [--redundancia=1]
+//          [--alineados] [--latencia=1]
+// Con --alineados todos suben en el mismo instante (pasarelas con NTP)
+// No hace falta MySQL
+// ================================
+const crypto = require('crypto');
+const path = require('path');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+const { logger } = require('../logger');
+const { FusionColectores } = require('../fusionColectores');
+const { AsignadorColectores } = require('../asignadorColectores');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const SENSORES = parseInt(argumentos.sensores || 50);
+const COLECTORES = parseInt(argumentos.colectores || 4);
+const HORAS = parseFloat(argumentos.horas || 1);
+const COBERTURA = parseFloat(argumentos.cobertura || 0.8); // Probabilidad de que un colector oiga un sensor
+const PERDIDAS = parseFloat(argumentos.perdidas || 0.1);    // Lecturas que no le llegan a un colector que oye el sensor
+const VENTANA_MS = parseFloat(argumentos.ventana || 1000);
+const REDUNDANCIA = parseInt(argumentos.redundancia || 1);
+const ALINEADOS = argumentos.alineados === true;
+const LATENCIA_MS = parseFloat(argumentos.latencia || 1);
+
+// Como en la app: una lectura cada 5-7 s por sensor, subidas e informes cada 30 s
+const PERIODO_MIN_MS = 5000;
+const PERIODO_MAX_MS = 7000;
+const INTERVALO_SUBIDA_MS = 30000;
+
+// Generador pseudoaleatorio con semilla (mismos datos en los tres casos)
+function aleatorio(semilla) {
+    let estado = semilla >>> 0;
+    return () => {
+        estado = (Math.imul(estado, 1664525) + 1013904223) >>> 0;
+        return estado / 4294967296;
+    };
+}
+
+// Clave de una lectura (como en deduplicacion.js: solo importa que coincida)
+function clave(sensor, tipo, contador, t) {
+    return crypto.createHash('sha1').update(`${sensor}|${tipo}|${contador}|${Math.floor(t / 60000)}`)
+        .digest('hex').slice(0, 16);
+}
+
+// Sitio: qué colectores oyen cada sensor y con qué RSSI medio, y las
+// lecturas de cada sensor con el RSSI con que le llega a cada colector
+function generarSitio() {
+    const azar = aleatorio(4242);
+    const inicio = Date.now() - HORAS * 3600 * 1000;
+    const sensores = [];
+    for (let s = 0; s < SENSORES; s++) {
+        const nombre = `D4:36:39:A1:03:${s.toString(16).padStart(2, '0').toUpperCase()}`;
+        const oyentes = [];
+        for (let c = 0; c < COLECTORES; c++) {
+            if (azar() < COBERTURA || (c === COLECTORES - 1 && oyentes.length === 0)) {
+                oyentes.push({ colector: c, rssiMedio: -95 + Math.round(azar() * 45) });
+            }
+        }
+        const mejor = oyentes.reduce((a, b) => (b.rssiMedio > a.rssiMedio ? b : a)).colector;
+        const tipo = s % 2 ? 'gas' : 'temperatura';
+        const lecturas = [];
+        let t = inicio + azar() * PERIODO_MAX_MS;
+        for (let contador = 0; t < inicio + HORAS * 3600 * 1000; contador++) {
+            const copias = oyentes.filter(() => azar() >= PERDIDAS).map(o => ({
+                colector: o.colector,
+                rssi: Math.max(-127, Math.min(20, Math.round(o.rssiMedio + (azar() * 2 - 1) * 4)))
+            }));
+            lecturas.push({ t: Math.round(t), tipo, valor: 20 + contador % 10, clave: clave(nombre, tipo, contador & 0xFF, t), copias });
+            t += PERIODO_MIN_MS + azar() * (PERIODO_MAX_MS - PERIODO_MIN_MS);
+        }
+        sensores.push({ nombre, oyentes, mejor, lecturas });
+    }
+    const fases = Array.from({ length: COLECTORES }, () => (ALINEADOS ? 0 : Math.round(azar() * INTERVALO_SUBIDA_MS)));
+    return { inicio, sensores, fases };
+}
+
+// Carga LogicaDeNegocio con database.js sustituido (una BD nueva por instancia)
+function cargarLogica() {
+    const ruta = require.resolve(path.join('..', 'database'));
+    require.cache[ruta] = {
+        id: ruta, filename: ruta, loaded: true,
+        exports: { Database: function () { return new BaseDatosSimulada({ latenciaMs: LATENCIA_MS, conexiones: 10 }); } }
+    };
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    return new LogicaDeNegocio({ cacheUltimas: false });
+}
+
+// Recorre la simulación por rondas de 30 s: en cada ronda cada colector (en
+// el orden de su fase) informa, si hay asignador, y sube lo que ha oído desde
+// su subida anterior; los que caen en la misma ventana de fusión van a la vez
+async function simular({ inicio, sensores, fases }, { fusion, asignador, logica }) {
+    const cuenta = { peticiones: 0, subidas: 0, informes: 0, filasMejor: 0 };
+    const idColector = (c) => `colector-${c}`;
+    const orden = fases.map((fase, c) => ({ fase, c })).sort((a, b) => a.fase - b.fase);
+    const fin = inicio + HORAS * 3600 * 1000 + INTERVALO_SUBIDA_MS;
+    const siguiente = sensores.map(() => new Array(COLECTORES).fill(0)); // Próxima lectura por sensor y colector
+    let ahoraVirtual = inicio;
+    if (asignador) {
+        asignador.reloj = () => ahoraVirtual;
+    }
+    const ajenos = Array.from({ length: COLECTORES }, () => new Set());
+    const oidos = Array.from({ length: COLECTORES }, () => new Map());
+
+    for (let ronda = inicio; ronda < fin; ronda += INTERVALO_SUBIDA_MS) {
+        // Grupos de colectores cuyas subidas caen en la misma ventana
+        const grupos = [];
+        for (const { fase, c } of orden) {
+            const ultimo = grupos[grupos.length - 1];
+            if (ultimo && fase - ultimo.fase < VENTANA_MS) {
+                ultimo.colectores.push(c);
+            } else {
+                grupos.push({ fase, colectores: [c] });
+            }
+        }
+        for (const grupo of grupos) {
+            ahoraVirtual = ronda + grupo.fase;
+            await Promise.all(grupo.colectores.map(async (c) => {
+                const lote = [];
+                for (let s = 0; s < sensores.length; s++) {
+                    const lecturas = sensores[s].lecturas;
+                    let k = siguiente[s][c];
+                    for (; k < lecturas.length && lecturas[k].t <= ahoraVirtual; k++) {
+                        const copia = lecturas[k].copias.find(o => o.colector === c);
+                        if (!copia) {
+                            continue;
+                        }
+                        oidos[c].set(sensores[s].nombre, copia.rssi);
+                        if (!ajenos[c].has(sensores[s].nombre)) {
+                            const { tipo, valor, clave: cl, t } = lecturas[k];
+                            lote.push({ tipo, valor, timestamp: t, clave: cl, rssi: copia.rssi });
+                        }
+                    }
+                    siguiente[s][c] = k;
+                }
+                if (asignador) {
+                    asignador.informar(idColector(c), [...oidos[c]].map(([sensor, rssi]) => ({ sensor, rssi })));
+                    ajenos[c] = new Set(asignador.responsabilidad(idColector(c)).ajenos);
+                    oidos[c].clear();
+                    cuenta.informes++;
+                }
+                if (lote.length === 0) {
+                    return;
+                }
+                cuenta.peticiones++;
+                cuenta.subidas += lote.length;
+                if (fusion) {
+                    await fusion.recibir(idColector(c), lote);
+                } else {
+                    await logica.guardarMedicionesLote(lote.map(({ rssi: _, ...resto }) => resto));
+                }
+            }));
+        }
+    }
+    return cuenta;
+}
+
+// Qué parte de las filas guardadas es del colector que mejor oye su sensor
+// (se mira en los INSERT de la BD simulada)
+function vigilarInserciones(bd, sensores) {
+    const mejorPorClave = new Map();
+    for (const s of sensores) {
+        for (const lectura of s.lecturas) {
+            mejorPorClave.set(lectura.clave, `colector-${s.mejor}`);
+        }
+    }
+    const resultado = { conColector: 0, delMejor: 0 };
+    const viaje = bd.viaje.bind(bd);
+    bd.viaje = (sql, params) => {
+        const columnas = /^INSERT IGNORE INTO mediciones \(([^)]*)\)/.exec(sql);
+        if (columnas) {
+            const nombres = columnas[1].split(',').map(c => c.trim());
+            const pClave = nombres.indexOf('clave');
+            const pColector = nombres.indexOf('colector');
+            for (let k = 0; k < params.length; k += nombres.length) {
+                if (pColector >= 0 && params[k + pColector] !== null && !bd.idPorClave.has(params[k + pClave])) {
+                    resultado.conColector++;
+                    resultado.delMejor += mejorPorClave.get(params[k + pClave]) === params[k + pColector] ? 1 : 0;
+                }
+            }
+        }
+        return viaje(sql, params);
+    };
+    return resultado;
+}
+
+async function caso(nombre, sitio, lecturas, { conFusion, conAsignador }) {
+    const logica = cargarLogica();
+    const vigilancia = vigilarInserciones(logica.database, sitio.sensores);
+    const fusion = conFusion ? new FusionColectores({
+        guardar: (lista, base) => logica.guardarMedicionesLote(lista, base),
+        validar: (datos) => logica.comprobarMedicionLote(datos),
+        ventanaMs: 5
+    }) : null;
+    const asignador = conAsignador ? new AsignadorColectores({ redundancia: REDUNDANCIA }) : null;
+
+    const inicio = process.hrtime.bigint();
+    const cuenta = await simular(sitio, { fusion, asignador, logica });
+    const ms = Number(process.hrtime.bigint() - inicio) / 1e6;
+
+    const bd = logica.database;
+    const mejor = vigilancia.conColector === 0 ? '   -  '
+        : `${(100 * vigilancia.delMejor / vigilancia.conColector).toFixed(1).padStart(5)} %`;
+    process.stdout.write(`${nombre.padEnd(10)} | ${String(cuenta.peticiones).padStart(5)} lotes | ` +
+        `${String(cuenta.subidas).padStart(7)} subidas | ${String(bd.filasInsertadas).padStart(6)} filas | ` +
+        `${String(lecturas - bd.filasInsertadas).padStart(5)} perdidas | ` +
+        `${String(bd.viajes).padStart(6)} viajes | del mejor colector ${mejor} | ` +
+        `${String(cuenta.informes).padStart(4)} informes | ${Math.round(ms).toString().padStart(5)} ms\n`);
+    return { cuenta, fusion, asignador };
+}
+
+async function main() {
+    const sitio = generarSitio();
+    const lecturas = sitio.sensores.reduce((n, s) => n + s.lecturas.filter(l => l.copias.length > 0).length, 0);
+    const oyentes = sitio.sensores.reduce((n, s) => n + s.oyentes.length, 0) / SENSORES;
+    process.stdout.write(`${SENSORES} sensores, ${COLECTORES} colectores (cada sensor lo oyen ${oyentes.toFixed(1)} de media), ` +
+        `${HORAS} h, ${lecturas} lecturas oídas (cada colector pierde el ${Math.round(PERDIDAS * 100)} %), subidas ${ALINEADOS ? 'alineadas' : 'con fases distintas'}, ` +
+        `ventana de fusión ${VENTANA_MS} ms, ${REDUNDANCIA} responsable(s) por sensor, ` +
+        `BD simulada con latencia ${LATENCIA_MS} ms\n`);
+    logger.configurar({ nivel: 'info', archivo: null, consola: false });
+
+    const todos = await caso('todos', sitio, lecturas, { conFusion: false, conAsignador: false });
+    await caso('fusión', sitio, lecturas, { conFusion: true, conAsignador: false });
+    const conAsignacion = await caso('asignación', sitio, lecturas, { conFusion: true, conAsignador: true });
+
+    const a = conAsignacion.asignador.getEstadisticas();
+    const f = conAsignacion.fusion.getEstadisticas();
+    process.stdout.write(`asignación: ${(todos.cuenta.subidas / conAsignacion.cuenta.subidas).toFixed(2)}x menos ` +
+        `mediciones subidas que "todos" (${(conAsignacion.cuenta.subidas / lecturas).toFixed(2)} copias por lectura), ` +
+        `${a.sensores_compartidos} sensores compartidos, ${a.reasignaciones} reasignaciones, ` +
+        `${f.fusionadas} copias fusionadas\n`);
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
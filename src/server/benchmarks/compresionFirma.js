@@ -0,0 +1,87 @@
+// ================================
+// BENCHMARK: compresión y firma de los lotes de mediciones
+// Para varios tamaños de lote mide los bytes que viajan por la red y la CPU
+// que gasta el servidor en verificar la firma, descomprimir y parsear.
+// También mide cuánto cuesta rechazar un lote falso (solo la firma).
+//
+// Uso: node benchmarks/compresionFirma.js
+// (no necesita base de datos ni dependencias externas)
+// ================================
+const zlib = require('zlib');
+const { calcularFirma, verificarFirma, descomprimir } = require('../middlewareCuerpo');
+
+const CLAVE = 'clave-de-benchmark';
+const TAMANYOS = [1, 10, 50, 200, 1000];
+
+/**
+ * Crea un lote JSON como los que envía la app Android
+ * @param {number} mediciones - número de mediciones del lote
+ * @returns {Buffer} - JSON en UTF-8
+ */
+function crearLote(mediciones) {
+    const lote = [];
+    let gas = 130;
+    for (let i = 0; i < mediciones; i++) {
+        gas += (i * 7919) % 5 - 2;
+        lote.push(i % 2 === 0 ? { tipo: 'gas', valor: gas } : { tipo: 'temperatura', valor: 20 + (i % 3) });
+    }
+    return Buffer.from(JSON.stringify(lote), 'utf8');
+}
+
+/**
+ * Mide la CPU (usuario + sistema) media por iteración en microsegundos
+ * Se usa process.cpuUsage porque la descompresión asíncrona corre en el pool
+ * de libuv y no se vería con un simple cronómetro del hilo principal
+ */
+async function medirCpu(iteraciones, funcion) {
+    const inicio = process.cpuUsage();
+    for (let i = 0; i < iteraciones; i++) {
+        await funcion();
+    }
+    const uso = process.cpuUsage(inicio);
+    return (uso.user + uso.system) / iteraciones;
+}
+
+async function main() {
+    const codificaciones = {
+        identity: (b) => b,
+        gzip: (b) => zlib.gzipSync(b, { level: 1 }),
+        deflate: (b) => zlib.deflateSync(b, { level: 1 })
+    };
+
+    console.log('mediciones | codificacion | bytes json | bytes red | ratio | us CPU aceptar | us CPU rechazar');
+    for (const tamanyo of TAMANYOS) {
+        const json = crearLote(tamanyo);
+        const iteraciones = Math.max(200, Math.floor(50000 / tamanyo));
+        for (const [nombre, comprimir] of Object.entries(codificaciones)) {
+            const red = comprimir(json);
+            const firma = calcularFirma(red, CLAVE);
+            const firmaFalsa = 'f'.repeat(64);
+
+            // Camino completo: firma + descompresión + JSON.parse
+            const aceptar = async () => {
+                if (!verificarFirma(red, firma, CLAVE)) throw new Error('firma');
+                const cuerpo = await descomprimir(red, nombre);
+                JSON.parse(cuerpo.toString('utf8'));
+            };
+            // Lote falso: se rechaza en la firma, sin descomprimir ni parsear
+            const rechazar = async () => {
+                if (verificarFirma(red, firmaFalsa, CLAVE)) throw new Error('firma');
+            };
+
+            await medirCpu(iteraciones / 4, aceptar); // calentamiento
+            const usAceptar = await medirCpu(iteraciones, aceptar);
+            const usRechazar = await medirCpu(iteraciones, rechazar);
+            console.log(
+                `${String(tamanyo).padStart(10)} | ${nombre.padEnd(12)} | ${String(json.length).padStart(10)} | ` +
+                `${String(red.length).padStart(9)} | ${(red.length / json.length).toFixed(2).padStart(5)} | ` +
+                `${usAceptar.toFixed(1).padStart(14)} | ${usRechazar.toFixed(1).padStart(15)}`
+            );
+        }
+    }
+}
+
+main().catch((err) => {
+    console.error('❌ Error en el benchmark:', err);
+    process.exit(1);
+});
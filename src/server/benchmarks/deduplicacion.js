@@ -0,0 +1,202 @@
+// ================================
+// BENCHMARK: deduplicación por clave de idempotencia
+// Simula varios móviles que oyen los mismos sensores y suben sus lotes a
+// guardarMedicionesLote a la vez; una parte de los lotes se reenvía entero
+// (la respuesta "se perdió"). Cada lectura lleva la clave que calcula
+// ClaveIdempotencia.java (sensor, tipo, contador de 8 bits y ventana de 60 s
+// de la hora corregida) y, a menos de MARGEN_VECINA_MS del cambio de
+// ventana, la "clave_vecina" de la ventana de al lado; la hora corregida de
+// cada móvil tiene un error de unos pocos ms, como el desfase estimado por
+// RelojCaptura.
+// Compara tres casos sobre la BD simulada (con el índice único emulado):
+//   - sin clave:  lo de antes, cada copia es una fila más
+//   - sin filtro: con clave, cada lote pregunta a la BD por todas sus claves
+//   - con filtro: con clave y el filtro de Bloom (filtroClaves.js)
+// y escribe filas guardadas, duplicadas paradas, lecturas repetidas que se
+// colaron (claves distintas por caer a cada lado del cambio de ventana; con
+// la clave vecina no debería colarse ninguna, --sin-vecina para verlas),
+// viajes a la BD, tiempo y memoria/falsos positivos del filtro.
+//
+// Uso: node benchmarks/deduplicacion.js [--sensores=50] [--horas=2] [--moviles=3]
+//          [--cobertura=0.7] [--reintentos=0.05] [--error-reloj=20] [--capacidad=1000000]
+//          [--latencia=1] [--sin-vecina]
+// No hace falta MySQL
+// ================================
+const crypto = require('crypto');
+const path = require('path');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+const { logger } = require('../logger');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const SENSORES = parseInt(argumentos.sensores || 50);
+const HORAS = parseFloat(argumentos.horas || 2);
+const MOVILES = parseInt(argumentos.moviles || 3);
+const COBERTURA = parseFloat(argumentos.cobertura || 0.7);   // Probabilidad de que un móvil oiga una lectura
+const REINTENTOS = parseFloat(argumentos.reintentos || 0.05); // Lotes que se suben dos veces
+const ERROR_RELOJ_MS = parseFloat(argumentos['error-reloj'] || 20);
+const CAPACIDAD = parseInt(argumentos.capacidad || 1000000);
+const LATENCIA_MS = parseFloat(argumentos.latencia || 1);
+const CON_VECINA = !argumentos['sin-vecina'];
+
+// Como en la app: una lectura cada 5-7 s por sensor, lotes de 100
+const PERIODO_MIN_MS = 5000;
+const PERIODO_MAX_MS = 7000;
+const MEDICIONES_LOTE = 100;
+const VENTANA_MS = 60000;
+const MARGEN_VECINA_MS = 2000;
+
+// Generador pseudoaleatorio con semilla (mismos datos en los tres casos)
+function aleatorio(semilla) {
+    let estado = semilla >>> 0;
+    return () => {
+        estado = (Math.imul(estado, 1664525) + 1013904223) >>> 0;
+        return estado / 4294967296;
+    };
+}
+
+// Clave de una lectura: los mismos datos que ClaveIdempotencia.java (aquí
+// con SHA-1; para el benchmark solo importa que coincida entre móviles)
+function clave(sensor, tipo, contador, instanteCorregido) {
+    return claveVentana(sensor, tipo, contador, Math.floor(instanteCorregido / VENTANA_MS));
+}
+
+function claveVentana(sensor, tipo, contador, ventana) {
+    return crypto.createHash('sha1').update(`${sensor}|${tipo}|${contador}|${ventana}`).digest('hex').slice(0, 16);
+}
+
+// Clave de la ventana de al lado si la captura está cerca del cambio (como
+// ClaveIdempotencia.vecina) o undefined
+function claveVecina(sensor, tipo, contador, instanteCorregido) {
+    const ventana = Math.floor(instanteCorregido / VENTANA_MS);
+    const dentro = instanteCorregido - ventana * VENTANA_MS;
+    if (dentro < MARGEN_VECINA_MS) {
+        return claveVentana(sensor, tipo, contador, ventana - 1);
+    } else if (dentro >= VENTANA_MS - MARGEN_VECINA_MS) {
+        return claveVentana(sensor, tipo, contador, ventana + 1);
+    }
+    return undefined;
+}
+
+// Lecturas de todos los sensores y los lotes que sube cada móvil
+function generarLotes() {
+    const azar = aleatorio(12345);
+    const inicio = Date.now() - HORAS * 3600 * 1000;
+    const porMovil = Array.from({ length: MOVILES }, () => []);
+    let lecturas = 0; // Lecturas que oyó al menos un móvil
+    for (let s = 0; s < SENSORES; s++) {
+        const sensor = `D4:36:39:A1:02:${s.toString(16).padStart(2, '0').toUpperCase()}`;
+        const tipo = s % 2 ? 'gas' : 'temperatura';
+        let t = inicio + azar() * PERIODO_MAX_MS;
+        for (let contador = 0; t < inicio + HORAS * 3600 * 1000; contador++) {
+            let oida = false;
+            for (let m = 0; m < MOVILES; m++) {
+                if (azar() < COBERTURA) {
+                    oida = true;
+                    // Hora de la captura corregida por el móvil (con su error)
+                    const corregida = Math.round(t + (azar() * 2 - 1) * ERROR_RELOJ_MS);
+                    porMovil[m].push({
+                        t: corregida, tipo, valor: 20 + contador % 10,
+                        clave: clave(sensor, tipo, contador & 0xFF, corregida),
+                        clave_vecina: CON_VECINA ? claveVecina(sensor, tipo, contador & 0xFF, corregida) : undefined
+                    });
+                }
+            }
+            lecturas += oida ? 1 : 0;
+            t += PERIODO_MIN_MS + azar() * (PERIODO_MAX_MS - PERIODO_MIN_MS);
+        }
+    }
+    // Cada móvil sube sus lecturas en orden de captura, de 100 en 100
+    const lotes = porMovil.map((lista) => {
+        lista.sort((a, b) => a.t - b.t);
+        const propios = [];
+        for (let i = 0; i < lista.length; i += MEDICIONES_LOTE) {
+            const trozo = lista.slice(i, i + MEDICIONES_LOTE);
+            const base = trozo[0].t;
+            const lote = {
+                base,
+                mediciones: trozo.map(m => ({ tipo: m.tipo, valor: m.valor, dt: m.t - base, clave: m.clave, clave_vecina: m.clave_vecina }))
+            };
+            propios.push(lote);
+            if (azar() < REINTENTOS) {
+                propios.push(lote);
+            }
+        }
+        return propios;
+    });
+    return { lecturas, lotes };
+}
+
+// Carga LogicaDeNegocio con database.js sustituido (una BD nueva por instancia)
+function cargarLogica(opciones) {
+    const ruta = require.resolve(path.join('..', 'database'));
+    require.cache[ruta] = {
+        id: ruta, filename: ruta, loaded: true,
+        exports: { Database: function () { return new BaseDatosSimulada({ latenciaMs: LATENCIA_MS, conexiones: 10 }); } }
+    };
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    return new LogicaDeNegocio({ cacheUltimas: false, ...opciones });
+}
+
+// Los mensajes de LogicaDeNegocio se registran como en producción (nivel
+// info, los de depuración ni se formatean) pero no se escriben
+function silenciarConsola() {
+    logger.configurar({ nivel: 'info', archivo: null, consola: false });
+}
+
+// Todos los móviles a la vez, cada uno con sus lotes en orden
+async function subir(logica, lotes, conClave) {
+    const inicio = process.hrtime.bigint();
+    let recibidas = 0;
+    await Promise.all(lotes.map(async (propios) => {
+        for (const lote of propios) {
+            const mediciones = conClave ? lote.mediciones
+                : lote.mediciones.map(({ clave: _, clave_vecina: __, ...resto }) => resto);
+            recibidas += mediciones.length;
+            await logica.guardarMedicionesLote(mediciones, lote.base);
+        }
+    }));
+    return { recibidas, ms: Number(process.hrtime.bigint() - inicio) / 1e6 };
+}
+
+function informar(nombre, logica, lecturas, { recibidas, ms }) {
+    const bd = logica.database;
+    const d = logica.getEstadisticasDeduplicacion();
+    process.stdout.write(`${nombre.padEnd(10)} | ${String(recibidas).padStart(7)} recibidas | ` +
+        `${String(bd.filasInsertadas).padStart(7)} filas | ${String(d.duplicadas).padStart(7)} duplicadas ` +
+        `(${(100 * (d.tasa_duplicadas || 0)).toFixed(1).padStart(4)} %) | ` +
+        `${String(bd.filasInsertadas - lecturas).padStart(6)} lecturas repetidas | ` +
+        `${String(bd.viajes).padStart(6)} viajes | ${Math.round(ms).toString().padStart(6)} ms\n`);
+    return d;
+}
+
+async function main() {
+    const { lecturas, lotes } = generarLotes();
+    process.stdout.write(`${SENSORES} sensores, ${HORAS} h, ${lecturas} lecturas oídas, ${MOVILES} móviles ` +
+        `(cada uno oye el ${Math.round(COBERTURA * 100)} %), ${Math.round(REINTENTOS * 100)} % de lotes reenviados, ` +
+        `error del reloj ±${ERROR_RELOJ_MS} ms, BD simulada con latencia ${LATENCIA_MS} ms\n`);
+
+    const sinClave = cargarLogica({ filtroClaves: false });
+    const sinFiltro = cargarLogica({ filtroClaves: false });
+    const conFiltro = cargarLogica({ filtroClaves: { capacidad: CAPACIDAD } });
+    silenciarConsola();
+
+    informar('sin clave', sinClave, lecturas, await subir(sinClave, lotes, false));
+    informar('sin filtro', sinFiltro, lecturas, await subir(sinFiltro, lotes, true));
+    const d = informar('con filtro', conFiltro, lecturas, await subir(conFiltro, lotes, true));
+
+    process.stdout.write(`con filtro: ${d.consultas} consultas de confirmación, ${d.confirmadas_filtro} confirmadas, ` +
+        `${d.falsos_positivos} falsos positivos, ${d.por_indice} paradas por el índice, ` +
+        `${d.por_vecina} por la clave vecina, ` +
+        `${d.repetidas_lote} repetidas en el mismo lote | filtro ${Math.round(d.filtro.bytes / 1024)} KB, ` +
+        `${d.filtro.claves_recientes} claves, ${d.filtro.rotaciones} rotaciones, ` +
+        `falsos positivos estimados ${(d.filtro.tasa_falsos_estimada * 100).toFixed(3)} %\n`);
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
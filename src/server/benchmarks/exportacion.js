@@ -0,0 +1,247 @@
+// ================================
+// BENCHMARK: exportar un rango enorme de mediciones por HTTP
+// Compara, sirviendo por un servidor HTTP local y descargando con un cliente:
+//   - "todo en memoria": getMediciones del rango entero y JSON.stringify de
+//     la respuesta (lo que haría una ruta que devolviera el array)
+//   - "streaming ndjson" y "streaming csv": exportadorMediciones.js, que lee
+//     por cursor (fecha, id) de FILAS_POR_LECTURA en FILAS_POR_LECTURA
+// y mide tiempo, filas/s y el pico de memoria (heap y RSS) sobre la de antes.
+// Con --lento el cliente lee despacio: el servidor no debe acumular nada.
+//
+// Uso:
+//   node --expose-gc benchmarks/exportacion.js [--filas=3000000] [--latencia=1] [--lento] [--sin-todo]
+//       Base de datos simulada con una tabla de "filas" mediciones en memoria
+//       (arrays tipados, fuera del heap) que responde a las consultas por cursor
+//   node --expose-gc benchmarks/exportacion.js --mysql
+//       MySQL real del .env: exporta la tabla mediciones que haya (por ejemplo
+//       la de 10 millones que deja benchmarks/agregados.js) y además compara
+//       una página profunda por cursor con la misma página con OFFSET
+// ================================
+const http = require('http');
+const path = require('path');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+const { logger } = require('../logger');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const FILAS = parseInt(argumentos.filas || 3000000);
+const LATENCIA_MS = parseFloat(argumentos.latencia || 1);
+const SENSORES = 20;
+const TIPOS = ['gas', 'temperatura'];
+
+// Fin del rango simulado; varias mediciones por segundo (empates en fecha)
+const FIN_S = Math.floor(new Date('2025-01-01T00:00:00Z').getTime() / 1000);
+const MEDICIONES_POR_SEGUNDO = 4;
+
+// ================================
+// PREPARACIÓN
+// ================================
+
+// Tabla mediciones simulada: la fila i tiene id i + 1 y la fecha crece con el
+// id, así que el orden (fecha, id) descendente es el de id descendente
+const tabla = argumentos.mysql ? null : {
+    sensor: new Uint8Array(FILAS).map((_, i) => 1 + (i * 7919) % SENSORES),
+    valor: new Float64Array(FILAS).map((_, i) => Math.round((20 + (i * 31) % 1800 / 10) * 10) / 10),
+    fecha: (i) => FIN_S - Math.floor((FILAS - 1 - i) / MEDICIONES_POR_SEGUNDO)
+};
+
+// Fila i de la tabla simulada como la devuelve mysql2
+function filaSimulada(i) {
+    return {
+        id: i + 1,
+        dispositivo_id: tabla.sensor[i],
+        tipo: TIPOS[i % 2],
+        valor: tabla.valor[i],
+        timestamp: new Date(tabla.fecha(i) * 1000)
+    };
+}
+
+// Respuestas de la BD simulada a las consultas de construirQueryConFiltros
+// (solo con filtros de fecha): [desde, hasta, (fecha, fecha, id del cursor), limite]
+function responder(sql, params) {
+    const conCursor = sql.includes('id < ?');
+    const conLimite = /LIMIT \?\s*$/.test(sql);
+    const [desde, hasta] = params;
+    const desdeS = desde.getTime() / 1000;
+    const hastaS = hasta.getTime() / 1000;
+    // Primera fila (la más reciente) que cumple el cursor y el rango
+    let i = FILAS - 1;
+    if (conCursor) {
+        i = params[4] - 2;
+    }
+    while (i >= 0 && tabla.fecha(i) > hastaS) i--;
+    const limite = conLimite ? params[params.length - 1] : Infinity;
+    const filas = [];
+    for (; i >= 0 && filas.length < limite && tabla.fecha(i) >= desdeS; i--) {
+        filas.push(filaSimulada(i));
+    }
+    return filas;
+}
+
+// Carga LogicaDeNegocio; en modo simulado sustituye database.js
+function cargarLogica() {
+    if (!argumentos.mysql) {
+        const fijar = (modulo, exportaciones) => {
+            const ruta = require.resolve(path.join('..', modulo));
+            require.cache[ruta] = { id: ruta, filename: ruta, loaded: true, exports: exportaciones };
+        };
+        const simulada = new BaseDatosSimulada({ latenciaMs: LATENCIA_MS, costeFilaMs: 0.0005, responder });
+        fijar('database', { Database: function () { return simulada; } });
+    }
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    return new LogicaDeNegocio({ cacheUltimas: false });
+}
+
+// Los mensajes de LogicaDeNegocio se registran como en producción (nivel
+// info, los de depuración ni se formatean) pero no se escriben
+function silenciarConsola() {
+    logger.configurar({ nivel: 'info', archivo: null, consola: false });
+}
+
+// Pico de memoria mientras dura "funcion": muestrea cada 10 ms
+async function conPicoMemoria(funcion) {
+    if (global.gc) global.gc();
+    const antes = process.memoryUsage();
+    let picoHeap = antes.heapUsed;
+    let picoRss = antes.rss;
+    const muestreo = setInterval(() => {
+        const m = process.memoryUsage();
+        picoHeap = Math.max(picoHeap, m.heapUsed);
+        picoRss = Math.max(picoRss, m.rss);
+    }, 10);
+    try {
+        const resultado = await funcion();
+        return { ...resultado, heapMB: (picoHeap - antes.heapUsed) / 1048576, rssMB: (picoRss - antes.rss) / 1048576 };
+    } finally {
+        clearInterval(muestreo);
+    }
+}
+
+// Descarga una URL del servidor local contando bytes y líneas
+// Con "lento" se pausa 1 ms cada 64 KB (un cliente en una red lenta)
+function descargar(puerto, ruta, lento) {
+    return new Promise((resolve, reject) => {
+        http.get({ port: puerto, path: ruta }, (res) => {
+            let bytes = 0;
+            let lineas = 0;
+            let desdePausa = 0;
+            res.on('data', (trozo) => {
+                bytes += trozo.length;
+                for (let k = trozo.indexOf(10); k !== -1; k = trozo.indexOf(10, k + 1)) lineas++;
+                desdePausa += trozo.length;
+                if (lento && desdePausa >= 65536) {
+                    desdePausa = 0;
+                    res.pause();
+                    setTimeout(() => res.resume(), 1);
+                }
+            });
+            res.on('end', () => resolve({ estado: res.statusCode, bytes, lineas }));
+            res.on('error', reject);
+        }).on('error', reject);
+    });
+}
+
+function informar(nombre, filas, { ms, bytes, heapMB, rssMB }) {
+    process.stdout.write(
+        `${nombre.padEnd(18)} | ${String(filas).padStart(9)} filas | ${(ms / 1000).toFixed(1).padStart(6)} s | ` +
+        `${Math.round(filas / (ms / 1000)).toString().padStart(8)} filas/s | ${(bytes / 1048576).toFixed(0).padStart(5)} MB | ` +
+        `heap +${heapMB.toFixed(0).padStart(5)} MB | RSS +${rssMB.toFixed(0).padStart(5)} MB\n`
+    );
+}
+
+// ================================
+// PRUEBA
+// ================================
+async function main() {
+    const logica = cargarLogica();
+    const { exportarMediciones } = require('../exportadorMediciones');
+    silenciarConsola();
+
+    // Rango: todo lo que haya
+    const filtros = { fecha_inicio: new Date(0), fecha_fin: new Date('2100-01-01T00:00:00Z') };
+    const total = argumentos.mysql
+        ? Number((await logica.database.ejecutarQuery('SELECT COUNT(*) AS n FROM mediciones'))[0].n)
+        : FILAS;
+
+    // Servidor con las dos formas de devolver el rango
+    const servidor = http.createServer(async (req, res) => {
+        try {
+            const url = new URL(req.url, 'http://localhost');
+            if (url.pathname === '/todo') {
+                const mediciones = await logica.getMediciones(filtros);
+                res.writeHead(200, { 'Content-Type': 'application/json' });
+                res.end(JSON.stringify({ success: true, total: mediciones.length, data: mediciones }));
+            } else {
+                await exportarMediciones(logica, filtros, url.searchParams.get('formato'), res);
+            }
+        } catch (error) {
+            process.stderr.write(`❌ ${error.stack}\n`);
+            res.destroy();
+        }
+    });
+    await new Promise((resolve) => servidor.listen(0, resolve));
+    const puerto = servidor.address().port;
+
+    process.stdout.write(`Base de datos: ${argumentos.mysql ? 'MySQL real (.env)' : `simulada, latencia ${LATENCIA_MS} ms`}` +
+        `, ${total} mediciones${argumentos.lento ? ', cliente lento' : ''}` +
+        `${global.gc ? '' : ' (sin --expose-gc la memoria de base es menos fiable)'}\n`);
+
+    const casos = [['streaming ndjson', '/exportar?formato=ndjson'], ['streaming csv', '/exportar?formato=csv']];
+    // Cargar todo en memoria solo si cabe (con millones de filas puede tumbar el proceso)
+    if (!argumentos['sin-todo']) {
+        casos.push(['todo en memoria', '/todo']);
+    }
+    for (const [nombre, ruta] of casos) {
+        const r = await conPicoMemoria(async () => {
+            const inicio = process.hrtime.bigint();
+            const descarga = await descargar(puerto, ruta, argumentos.lento);
+            return { ...descarga, ms: Number(process.hrtime.bigint() - inicio) / 1e6 };
+        });
+        if (r.estado !== 200) {
+            throw new Error(`${nombre}: respuesta ${r.estado}`);
+        }
+        // ndjson: una línea por fila; csv: más la cabecera; todo: una línea
+        const filas = ruta.includes('csv') ? r.lineas - 1 : ruta.includes('ndjson') ? r.lineas : total;
+        if (filas !== total) {
+            throw new Error(`${nombre}: ${filas} filas exportadas de ${total}`);
+        }
+        informar(nombre, filas, r);
+    }
+
+    // Página profunda: cursor contra OFFSET (solo tiene sentido en MySQL real)
+    if (argumentos.mysql) {
+        const profundidad = Math.floor(total / 2);
+        let siguiente = null;
+        let pedidas = 0;
+        const inicio = process.hrtime.bigint();
+        const primera = await logica.getMedicionesPagina({ ...filtros, limite: 1000 });
+        const msPrimera = Number(process.hrtime.bigint() - inicio) / 1e6;
+        // El cursor de la fila "profundidad" sale de recorrer hasta ella
+        for await (const filas of logica.recorrerMediciones(filtros, { filasPorLectura: 10000 })) {
+            pedidas += filas.length;
+            if (pedidas >= profundidad) {
+                siguiente = logica.codificarCursor(filas[filas.length - 1 - (pedidas - profundidad)]);
+                break;
+            }
+        }
+        let t = process.hrtime.bigint();
+        await logica.getMedicionesPagina({ ...filtros, limite: 1000, cursor: siguiente });
+        const msCursor = Number(process.hrtime.bigint() - t) / 1e6;
+        const { query, params } = logica.construirQueryConFiltros(filtros, { cursor: null, filas: 1000 });
+        t = process.hrtime.bigint();
+        await logica.database.ejecutarQuery(query + ' OFFSET ' + profundidad, params);
+        const msOffset = Number(process.hrtime.bigint() - t) / 1e6;
+        process.stdout.write(`página de 1000: primera ${msPrimera.toFixed(1)} ms, en la fila ${profundidad} ` +
+            `con cursor ${msCursor.toFixed(1)} ms, con OFFSET ${msOffset.toFixed(1)} ms (${primera.mediciones.length} filas)\n`);
+        await logica.database.cerrarConexion();
+    }
+    servidor.close();
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
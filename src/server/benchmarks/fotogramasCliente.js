@@ -0,0 +1,269 @@
+// ================================
+// BENCHMARK: tiempo por fotograma de la tabla y la gráfica del cliente
+// Con 10k y 100k mediciones ya cargadas y llegando más del directo en cada
+// fotograma (mientras el usuario desplaza la tabla), compara:
+//   - "virtual": lo que hace cliente/app.js ahora. Las mediciones están en
+//     los anillos de arrays tipados de Vista.js, la tabla solo tiene en el
+//     DOM las filas que se ven (TablaVirtual) y la gráfica dibuja como mucho
+//     4 puntos por columna de píxeles (GraficaAnillo)
+//   - "completa": rehacer en cada actualización la tabla con todas las
+//     filas y la línea con todos los puntos
+// Mide en cada fotograma el tiempo de JS (añadir las nuevas y dibujar) y el
+// intervalo entre fotogramas (requestAnimationFrame), que en el navegador
+// incluye también el estilo, la maquetación y el pintado.
+//
+// Uso: node benchmarks/fotogramasCliente.js [--mediciones=10000,100000]
+//      [--fotogramas=120] [--por-fotograma=20] [--sin-navegador]
+// Si está instalado puppeteer (npm install puppeteer) se mide en un Chrome
+// sin ventana; si no (o con --sin-navegador), en Node con un DOM de mentira
+// que no maqueta ni pinta: entonces solo vale el tiempo de JS
+// ================================
+const fs = require('fs');
+const path = require('path');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const MEDICIONES = String(argumentos.mediciones || '10000,100000').split(',').map(Number);
+const FOTOGRAMAS = parseInt(argumentos.fotogramas || 120);
+const POR_FOTOGRAMA = parseInt(argumentos['por-fotograma'] || 20);
+
+// Rehacer 100k filas tarda segundos por fotograma: con "completa" se miden menos
+const FOTOGRAMAS_COMPLETA = 10;
+
+const ANCHO = 1000;
+const ALTO = 240;
+const ALTO_TABLA = 320;
+
+const VISTA = fs.readFileSync(path.join(__dirname, '..', '..', 'cliente', 'Vista.js'), 'utf8');
+
+// ================================
+// MEDICIÓN (se ejecuta tal cual en la página o en el contexto de Node)
+// ================================
+
+// Llena los datos con "mediciones" lecturas de gas a 1 Hz y durante
+// "fotogramas" fotogramas añade "porFotograma" más, baja la tabla y redibuja
+// @return Promise con { js: [ms], intervalos: [ms], filas: filas en el DOM }
+function medirEnPagina({ mediciones, fotogramas, porFotograma, modo, ancho, alto }) {
+    const contenedor = document.getElementById('tabla');
+    const canvas = document.getElementById('grafica');
+    canvas.width = ancho;
+    canvas.height = alto;
+    const fin = Date.UTC(2025, 0, 1);
+    let siguiente = 0;
+    const lectura = () => {
+        const i = siguiente++;
+        return { id: i + 1, dispositivo_id: 1 + (i % 8), tipo: 'gas', valor: 400 + 80 * Math.sin(i / 3600) + (i % 7),
+            timestamp: fin + i * 1000 };
+    };
+    const desde = fin;
+    const hasta = () => fin + siguiente * 1000;
+    const textos = (m) => [new Date(m.timestamp).toISOString(), String(m.dispositivo_id), m.tipo, m.valor.toFixed(2)];
+
+    let actualizar;
+    if (modo === 'virtual') {
+        const anillo = new AnilloMediciones(Math.max(131072, mediciones + fotogramas * porFotograma));
+        for (let i = 0; i < mediciones; i++) {
+            anillo.anadirMedicion(lectura());
+        }
+        // Los dibujos se llaman a mano en cada fotograma (sin sus planificadores)
+        const nada = () => {};
+        const tabla = new TablaVirtual(contenedor, anillo, {
+            altoFila: 24,
+            formatear: (a, p) => [new Date(a.instantes[p]).toISOString(), String(a.sensores[p]), a.tipoEn(p), a.valores[p].toFixed(2)],
+            pedirFotograma: nada
+        });
+        const grafica = new GraficaAnillo(canvas, anillo, nada);
+        actualizar = (nuevas) => {
+            for (const m of nuevas) {
+                anillo.anadirMedicion(m);
+            }
+            grafica.setRango(desde, hasta());
+            tabla.dibujar();
+            grafica.dibujar();
+            return tabla.getFilasEnDOM();
+        };
+    } else {
+        const todas = [];
+        for (let i = 0; i < mediciones; i++) {
+            todas.push(lectura());
+        }
+        actualizar = (nuevas) => {
+            todas.push(...nuevas);
+            // Tabla entera, de la más reciente a la más antigua
+            contenedor.replaceChildren();
+            for (let i = todas.length - 1; i >= 0; i--) {
+                const fila = document.createElement('div');
+                fila.style.display = 'flex';
+                for (const texto of textos(todas[i])) {
+                    const celda = document.createElement('span');
+                    celda.style.flex = '1';
+                    celda.textContent = texto;
+                    fila.appendChild(celda);
+                }
+                contenedor.appendChild(fila);
+            }
+            // Línea con todos los puntos
+            let minimo = Infinity;
+            let maximo = -Infinity;
+            for (const m of todas) {
+                minimo = Math.min(minimo, m.valor);
+                maximo = Math.max(maximo, m.valor);
+            }
+            const escalaX = canvas.width / (hasta() - desde);
+            const escalaY = (canvas.height - 1) / (maximo - minimo);
+            const ctx = canvas.getContext('2d');
+            ctx.clearRect(0, 0, canvas.width, canvas.height);
+            ctx.beginPath();
+            for (let i = 0; i < todas.length; i++) {
+                const x = (todas[i].timestamp - desde) * escalaX;
+                const y = (canvas.height - 1) - (todas[i].valor - minimo) * escalaY;
+                if (i === 0) ctx.moveTo(x, y); else ctx.lineTo(x, y);
+            }
+            ctx.stroke();
+            return todas.length;
+        };
+    }
+
+    return new Promise((resolve) => {
+        const js = [];
+        const intervalos = [];
+        let anterior = null;
+        let filas = 0;
+        let hechos = 0;
+        const fotograma = (instante) => {
+            if (anterior !== null) {
+                intervalos.push(instante - anterior);
+            }
+            anterior = instante;
+            if (hechos === fotogramas) {
+                resolve({ js, intervalos, filas });
+                return;
+            }
+            const inicio = performance.now();
+            const nuevas = [];
+            for (let k = 0; k < porFotograma; k++) {
+                nuevas.push(lectura());
+            }
+            // El usuario va bajando por la tabla
+            contenedor.scrollTop += 37;
+            filas = actualizar(nuevas);
+            js.push(performance.now() - inicio);
+            hechos++;
+            requestAnimationFrame(fotograma);
+        };
+        requestAnimationFrame(fotograma);
+    });
+}
+
+// ================================
+// ENTORNOS
+// ================================
+
+// Chrome sin ventana con puppeteer (null si no está instalado)
+async function abrirNavegador() {
+    let puppeteer;
+    try {
+        puppeteer = require('puppeteer');
+    } catch (err) {
+        return null;
+    }
+    const navegador = await puppeteer.launch({ headless: true });
+    return {
+        nombre: 'Chrome sin ventana (puppeteer)',
+        async medir(opciones) {
+            const pagina = await navegador.newPage();
+            await pagina.setViewport({ width: 1200, height: 900 });
+            await pagina.setContent(`<!DOCTYPE html><html><body>
+                <div id="tabla" style="height: ${ALTO_TABLA}px; overflow-y: auto;"></div>
+                <canvas id="grafica" style="width: ${ANCHO}px; height: ${ALTO}px;"></canvas>
+                <script>${VISTA}</script></body></html>`);
+            const resultado = await pagina.evaluate(`(${medirEnPagina.toString()})(${JSON.stringify(opciones)})`);
+            await pagina.close();
+            return resultado;
+        },
+        cerrar: () => navegador.close()
+    };
+}
+
+// Node con un DOM de mentira: los elementos guardan sus hijos y su texto, el
+// canvas no dibuja y requestAnimationFrame es setImmediate
+function abrirNodeSinNavegador() {
+    return {
+        nombre: 'Node sin navegador (DOM de mentira: solo cuenta el tiempo de JS)',
+        async medir(opciones) {
+            class Elemento {
+                constructor() {
+                    this.style = {};
+                    this.hijos = [];
+                    this.textContent = '';
+                    this.scrollTop = 0;
+                    this.clientHeight = ALTO_TABLA;
+                }
+                appendChild(hijo) {
+                    this.hijos.push(hijo);
+                    return hijo;
+                }
+                replaceChildren() {
+                    this.hijos = [];
+                }
+                addEventListener() {}
+            }
+            const nada = () => {};
+            const contexto = { clearRect: nada, beginPath: nada, moveTo: nada, lineTo: nada, stroke: nada };
+            const elementos = { tabla: new Elemento(), grafica: Object.assign(new Elemento(), { getContext: () => contexto }) };
+            const documento = {
+                createElement: () => new Elemento(),
+                getElementById: (id) => elementos[id]
+            };
+            // Con new Function y no con vm: en un contexto de vm cada acceso a
+            // un global (Math, por ejemplo) es mucho más lento que en el navegador
+            const pedirFotograma = (f) => setImmediate(() => f(performance.now()));
+            const pagina = new Function('document', 'requestAnimationFrame', 'opciones',
+                `${VISTA}\nreturn (${medirEnPagina.toString()})(opciones);`);
+            return pagina(documento, pedirFotograma, opciones);
+        },
+        cerrar: async () => {}
+    };
+}
+
+// Percentil de una lista de tiempos
+function percentil(tiempos, p) {
+    if (tiempos.length === 0) return NaN;
+    const ordenados = [...tiempos].sort((a, b) => a - b);
+    return ordenados[Math.min(ordenados.length - 1, Math.floor(p * ordenados.length))];
+}
+
+// ================================
+// PRUEBA
+// ================================
+async function main() {
+    const entorno = (!argumentos['sin-navegador'] && await abrirNavegador()) || abrirNodeSinNavegador();
+
+    process.stdout.write(`${entorno.nombre}; ${POR_FOTOGRAMA} mediciones nuevas por fotograma, ` +
+        `tabla de ${ALTO_TABLA} px y gráfica de ${ANCHO} px\n`);
+    process.stdout.write('mediciones | modo     | fotogramas | filas DOM |   JS p50 |   JS p95 | fotograma p50 | fotograma p95\n');
+    try {
+        for (const mediciones of MEDICIONES) {
+            for (const modo of ['virtual', 'completa']) {
+                const fotogramas = modo === 'completa' ? Math.min(FOTOGRAMAS, FOTOGRAMAS_COMPLETA) : FOTOGRAMAS;
+                const { js, intervalos, filas } = await entorno.medir({
+                    mediciones, fotogramas, porFotograma: POR_FOTOGRAMA, modo, ancho: ANCHO, alto: ALTO
+                });
+                process.stdout.write(`${String(mediciones).padStart(10)} | ${modo.padEnd(8)} | ${String(fotogramas).padStart(10)} | ` +
+                    `${String(filas).padStart(9)} | ${percentil(js, 0.5).toFixed(2).padStart(5)} ms | ` +
+                    `${percentil(js, 0.95).toFixed(2).padStart(5)} ms | ${percentil(intervalos, 0.5).toFixed(1).padStart(10)} ms | ` +
+                    `${percentil(intervalos, 0.95).toFixed(1).padStart(10)} ms\n`);
+            }
+        }
+    } finally {
+        await entorno.cerrar();
+    }
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
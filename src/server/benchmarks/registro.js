@@ -0,0 +1,217 @@
+// ================================
+// PRUEBA DE CARGA: coste del log por petición
+// Peticiones por segundo de GET /api/mediciones (la última medición) con:
+//   - "antiguo": el logger.js de antes (sobrescribe console.log/error/warn y
+//     escribe cada línea en el archivo con su propio write) y todos los
+//     mensajes de api.js y LogicaDeNegocio como console.log
+//   - "nuevo info": logger.js actual con LOG_NIVEL=info (el de producción)
+//   - "nuevo debug": logger.js actual con todos los mensajes
+//   - "nuevo error": logger.js actual solo con errores
+// Cada modo corre en un proceso hijo con un servidor HTTP que hace lo mismo
+// que api.js para esta ruta (middleware que registra la petición + la ruta),
+// sobre la base de datos simulada sin latencia, para que el log pese lo que
+// pesa de verdad. El log va a un archivo temporal y la salida normal a
+// /dev/null (como con pm2/Plesk redirigida a archivo).
+//
+// Uso: node benchmarks/registro.js [--segundos=5] [--conexiones=50]
+// ================================
+const { fork } = require('child_process');
+const fs = require('fs');
+const http = require('http');
+const os = require('os');
+const path = require('path');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const SEGUNDOS = parseFloat(argumentos.segundos || 5);
+const CONEXIONES = parseInt(argumentos.conexiones || 50);
+const CALENTAMIENTO_MS = 1000;
+
+const MODOS = [
+    ['antiguo', 'antiguo'],
+    ['nuevo info', 'info'],
+    ['nuevo debug', 'debug'],
+    ['nuevo error', 'error']
+];
+
+// ================================
+// PROCESO HIJO: el servidor
+// ================================
+
+// El logger.js de antes, tal cual, pero escribiendo en "archivo"
+function instalarLoggerAntiguo(archivo) {
+    const logStream = fs.createWriteStream(archivo, { flags: 'a' });
+    const originalLog = console.log;
+    const originalError = console.error;
+    const originalWarn = console.warn;
+    console.log = function (...args) {
+        const msg = `[LOG] ${new Date().toISOString()} - ${args.join(' ')}\n`;
+        logStream.write(msg);
+        originalLog.apply(console, args);
+    };
+    console.error = function (...args) {
+        const msg = `[ERROR] ${new Date().toISOString()} - ${args.join(' ')}\n`;
+        logStream.write(msg);
+        originalError.apply(console, args);
+    };
+    console.warn = function (...args) {
+        const msg = `[WARN] ${new Date().toISOString()} - ${args.join(' ')}\n`;
+        logStream.write(msg);
+        originalWarn.apply(console, args);
+    };
+}
+
+async function servidorHijo(modo, archivo) {
+    const { logger } = require('../logger');
+    if (modo === 'antiguo') {
+        instalarLoggerAntiguo(archivo);
+        // Antes todo salía por console.log / console.error
+        logger.configurar({ archivo: null, consola: false });
+        logger.info = logger.debug = (...args) => console.log(...args);
+        logger.warn = (...args) => console.warn(...args);
+        logger.error = (...args) => console.error(...args);
+    } else {
+        // Sin rotar, para poder contar los bytes escritos
+        logger.configurar({ nivel: modo, archivo, consola: true, tamanyoMaximo: Infinity });
+    }
+
+    // LogicaDeNegocio sobre la base de datos simulada
+    const ruta = require.resolve('../database');
+    const ultima = [{ id: 1, dispositivo_id: 1, tipo: 'gas', valor: 412.5, timestamp: new Date('2025-01-01T00:00:00Z') }];
+    const simulada = new BaseDatosSimulada({ latenciaMs: 0, conexiones: 100, responder: () => ultima });
+    require.cache[ruta] = { id: ruta, filename: ruta, loaded: true, exports: { Database: function () { return simulada; } } };
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    const logicaNegocio = new LogicaDeNegocio({ cacheUltimas: false });
+
+    // Lo mismo que el middleware de registro y la RUTA 3 de api.js
+    const servidor = http.createServer(async (req, res) => {
+        logger.info(`${req.method} ${req.url} - IP: ${req.socket.remoteAddress}`);
+        try {
+            logger.debug('🔍 Obteniendo última medición');
+            const ultimaMedicion = await logicaNegocio.getMedicionesRecientes(1);
+            res.writeHead(200, { 'Content-Type': 'application/json' });
+            res.end(JSON.stringify({ success: true, data: ultimaMedicion[0] }));
+        } catch (error) {
+            logger.error('❌ Error en GET /api/mediciones:', error);
+            res.writeHead(500);
+            res.end();
+        }
+    });
+    servidor.keepAliveTimeout = 60000;
+    await new Promise((resolve) => servidor.listen(0, '127.0.0.1', resolve));
+
+    process.on('message', (mensaje) => {
+        if (mensaje === 'cpu') {
+            process.send({ cpu: process.cpuUsage(), memoria: process.memoryUsage().rss });
+        } else if (mensaje === 'salir') {
+            servidor.close();
+            process.exit(0);
+        }
+    });
+    process.send({ puerto: servidor.address().port });
+}
+
+// ================================
+// PROCESO PADRE: la carga
+// ================================
+
+// Respuesta del hijo al siguiente mensaje
+function esperarMensaje(hijo) {
+    return new Promise((resolve) => hijo.once('message', resolve));
+}
+
+// CONEXIONES clientes con keep-alive pidiendo sin pausa durante "ms";
+// devuelve las latencias (ms) de las peticiones terminadas
+async function cargar(puerto, ms) {
+    const agente = new http.Agent({ keepAlive: true, maxSockets: CONEXIONES });
+    const latencias = [];
+    const fin = Date.now() + ms;
+    let errores = 0;
+    const pedir = () => new Promise((resolve) => {
+        const inicio = process.hrtime.bigint();
+        http.get({ host: '127.0.0.1', port: puerto, path: '/api/mediciones', agent: agente }, (res) => {
+            res.resume();
+            res.on('end', () => {
+                if (res.statusCode === 200) {
+                    latencias.push(Number(process.hrtime.bigint() - inicio) / 1e6);
+                } else {
+                    errores++;
+                }
+                resolve();
+            });
+        }).on('error', () => { errores++; resolve(); });
+    });
+    await Promise.all(Array.from({ length: CONEXIONES }, async () => {
+        while (Date.now() < fin) {
+            await pedir();
+        }
+    }));
+    agente.destroy();
+    if (errores > 0) {
+        throw new Error(`${errores} peticiones fallidas`);
+    }
+    return latencias;
+}
+
+function percentil(ordenadas, p) {
+    return ordenadas[Math.min(ordenadas.length - 1, Math.floor(ordenadas.length * p))];
+}
+
+async function medirModo(nombre, modo) {
+    const archivo = path.join(os.tmpdir(), `registro-${process.pid}-${modo}.log`);
+    fs.rmSync(archivo, { force: true });
+    const hijo = fork(__filename, ['--hijo=' + modo, '--archivo=' + archivo], { stdio: ['ignore', 'ignore', 'inherit', 'ipc'] });
+    try {
+        const { puerto } = await esperarMensaje(hijo);
+        await cargar(puerto, CALENTAMIENTO_MS);
+
+        hijo.send('cpu');
+        const antes = await esperarMensaje(hijo);
+        const bytesAntes = fs.existsSync(archivo) ? fs.statSync(archivo).size : 0;
+        const inicio = Date.now();
+        const latencias = await cargar(puerto, SEGUNDOS * 1000);
+        const segundos = (Date.now() - inicio) / 1000;
+        hijo.send('cpu');
+        const despues = await esperarMensaje(hijo);
+        // Lo que quede pendiente llega al archivo en menos de un volcado
+        await new Promise((resolve) => setTimeout(resolve, 500));
+        const bytes = (fs.existsSync(archivo) ? fs.statSync(archivo).size : 0) - bytesAntes;
+
+        latencias.sort((a, b) => a - b);
+        const cpuUs = (despues.cpu.user + despues.cpu.system) - (antes.cpu.user + antes.cpu.system);
+        process.stdout.write(
+            `${nombre.padEnd(11)} | ${Math.round(latencias.length / segundos).toString().padStart(7)} req/s | ` +
+            `p50 ${percentil(latencias, 0.5).toFixed(2).padStart(6)} ms | p99 ${percentil(latencias, 0.99).toFixed(2).padStart(6)} ms | ` +
+            `${(cpuUs / latencias.length).toFixed(0).padStart(4)} us CPU/petición | ` +
+            `${(bytes / latencias.length).toFixed(0).padStart(4)} B de log/petición | RSS ${(despues.memoria / 1048576).toFixed(0)} MB\n`
+        );
+    } finally {
+        hijo.send('salir');
+        await new Promise((resolve) => hijo.once('exit', resolve));
+        fs.rmSync(archivo, { force: true });
+    }
+}
+
+async function main() {
+    process.stdout.write(`GET /api/mediciones, ${CONEXIONES} conexiones keep-alive, ${SEGUNDOS} s por modo ` +
+        `(${os.cpus().length} CPUs, el generador de carga comparte máquina)\n`);
+    for (const [nombre, modo] of MODOS) {
+        await medirModo(nombre, modo);
+    }
+}
+
+if (argumentos.hijo) {
+    servidorHijo(argumentos.hijo, argumentos.archivo).catch((err) => {
+        process.stderr.write(`❌ Error en el servidor: ${err.stack}\n`);
+        process.exit(1);
+    });
+} else {
+    main().catch((err) => {
+        process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+        process.exit(1);
+    });
+}
@@ -0,0 +1,213 @@
+// ================================
+// BENCHMARK: series para la gráfica con y sin submuestreo
+// Un sensor de gas a 1 Hz (ruido, deriva lenta y algún pico de una sola
+// muestra) y la gráfica de 1 día y de 1 semana con 1000 píxeles de ancho:
+//   - "todas": getMediciones del rango (lo que tendría que dibujar el cliente)
+//   - "lttb" y "minmax": getSerieSubmuestreada con puntos = 1000 (de
+//     mediciones en el día; de mediciones_minuto en la semana)
+// Mide el tiempo en el servidor (consulta + JSON), los bytes de la respuesta
+// (y comprimida con gzip), el tiempo del cliente (JSON.parse, meter la serie
+// en el anillo y recorrerla por columnas de píxeles con GraficaAnillo de
+// cliente/Vista.js, lo mismo que hace la gráfica) y si los picos siguen en
+// la serie reducida.
+//
+// Uso: node benchmarks/submuestreo.js [--latencia=1] [--pixeles=1000]
+// Usa la base de datos simulada de baseDatosSimulada.js, no hace falta MySQL.
+// El dibujo en el canvas no se mide aquí (depende del navegador; el contexto
+// es uno que no hace nada): la gráfica dibuja como mucho 4 puntos por columna
+// ================================
+const fs = require('fs');
+const path = require('path');
+const vm = require('vm');
+const zlib = require('zlib');
+const { BaseDatosSimulada } = require('./baseDatosSimulada');
+const { logger } = require('../logger');
+
+// Lee los parámetros --nombre=valor de la línea de comandos
+const argumentos = Object.fromEntries(process.argv.slice(2).map((a) => {
+    const [nombre, valor] = a.replace(/^--/, '').split('=');
+    return [nombre, valor === undefined ? true : valor];
+}));
+const LATENCIA_MS = parseFloat(argumentos.latencia || 1);
+const PIXELES = parseInt(argumentos.pixeles || 1000);
+const ALTO = 240;
+const REPETICIONES = 3;
+
+// Una semana a 1 Hz que termina en FIN
+const FIN = new Date('2025-01-01T00:00:00Z').getTime();
+const SEGUNDOS = 7 * 24 * 3600;
+const INICIO = FIN - SEGUNDOS * 1000;
+const DIA_MS = 24 * 3600 * 1000;
+
+// ================================
+// PREPARACIÓN
+// ================================
+
+// Valores de la serie: ruido, ciclo diario y picos sueltos cada ~5 horas
+const valores = new Float64Array(SEGUNDOS);
+const picos = [];
+{
+    let semilla = 42;
+    const azar = () => ((semilla = (semilla * 1103515245 + 12345) % 2147483648) / 2147483648);
+    for (let i = 0; i < SEGUNDOS; i++) {
+        valores[i] = Math.round((400 + 80 * Math.sin(i / 86400 * 2 * Math.PI) + 10 * (azar() - 0.5)) * 10) / 10;
+    }
+    for (let i = 9000; i < SEGUNDOS; i += 18000 + Math.floor(azar() * 1000)) {
+        valores[i] = 900 + Math.round(azar() * 100);
+        picos.push(i);
+    }
+}
+
+// Agregados por minuto (como mediciones_minuto)
+const minutos = [];
+for (let m = 0; m < SEGUNDOS / 60; m++) {
+    let suma = 0;
+    let minimo = Infinity;
+    let maximo = -Infinity;
+    for (let i = m * 60; i < m * 60 + 60; i++) {
+        suma += valores[i];
+        minimo = Math.min(minimo, valores[i]);
+        maximo = Math.max(maximo, valores[i]);
+    }
+    minutos.push({ intervalo: new Date(INICIO + m * 60000), media: suma / 60, minimo, maximo });
+}
+
+// Fila i como la devuelve mysql2 (id i + 1, un segundo después de la anterior)
+function fila(i) {
+    return { id: i + 1, dispositivo_id: 1, tipo: 'gas', valor: valores[i], timestamp: new Date(INICIO + i * 1000) };
+}
+
+// Respuestas de la BD simulada a las consultas de LogicaDeNegocio
+function responder(sql, params) {
+    if (sql.includes('FROM mediciones_minuto')) {
+        // recorrerAgregados: [tipo, cursor, hasta, limite]
+        const [, cursor, hasta, limite] = params;
+        const estricto = sql.includes('intervalo > ?');
+        const filas = [];
+        for (const m of minutos) {
+            if (filas.length >= limite || m.intervalo > hasta) break;
+            if (estricto ? m.intervalo > cursor : m.intervalo >= cursor) filas.push(m);
+        }
+        return filas;
+    }
+    // construirQueryConFiltros: [tipo, desde, hasta, (fecha, fecha, id del cursor), limite]
+    const desde = Math.max(0, Math.ceil((params[1].getTime() - INICIO) / 1000));
+    const hasta = Math.min(SEGUNDOS - 1, Math.floor((params[2].getTime() - INICIO) / 1000));
+    const filas = [];
+    if (/ORDER BY fecha, id/.test(sql)) {
+        const limite = params[params.length - 1];
+        const primera = sql.includes('id > ?') ? params[5] : desde;
+        for (let i = primera; i <= hasta && filas.length < limite; i++) filas.push(fila(i));
+    } else {
+        for (let i = hasta; i >= desde; i--) filas.push(fila(i));
+    }
+    return filas;
+}
+
+// Carga LogicaDeNegocio con database.js sustituido
+function cargarLogica() {
+    const fijar = (modulo, exportaciones) => {
+        const ruta = require.resolve(path.join('..', modulo));
+        require.cache[ruta] = { id: ruta, filename: ruta, loaded: true, exports: exportaciones };
+    };
+    const simulada = new BaseDatosSimulada({ latenciaMs: LATENCIA_MS, costeFilaMs: 0.0005, responder });
+    fijar('database', { Database: function () { return simulada; } });
+    const { LogicaDeNegocio } = require('../LogicaDeNegocio');
+    return new LogicaDeNegocio({ cacheUltimas: false });
+}
+
+// La gráfica del cliente (Vista.js es un script de navegador, no un módulo)
+// sobre un canvas cuyo contexto no dibuja nada
+function cargarGraficaCliente() {
+    const codigo = fs.readFileSync(path.join(__dirname, '..', '..', 'cliente', 'Vista.js'), 'utf8');
+    const { AnilloMediciones, GraficaAnillo } = vm.runInNewContext(codigo + '\n({ AnilloMediciones, GraficaAnillo });',
+        { performance, requestAnimationFrame: () => {} });
+    const nada = () => {};
+    const contexto = { clearRect: nada, beginPath: nada, moveTo: nada, lineTo: nada, stroke: nada };
+    const canvas = { width: PIXELES, height: ALTO, getContext: () => contexto };
+    const anillo = new AnilloMediciones(SEGUNDOS);
+    return { anillo, grafica: new GraficaAnillo(canvas, anillo) };
+}
+
+// Los mensajes de LogicaDeNegocio se registran como en producción (nivel
+// info, los de depuración ni se formatean) pero no se escriben
+function silenciarConsola() {
+    logger.configurar({ nivel: 'info', archivo: null, consola: false });
+}
+
+// Mediana de varias ejecuciones; devuelve { ms, resultado } (el de la última)
+async function medir(funcion) {
+    const tiempos = [];
+    let resultado;
+    for (let i = 0; i < REPETICIONES; i++) {
+        const inicio = process.hrtime.bigint();
+        resultado = await funcion();
+        tiempos.push(Number(process.hrtime.bigint() - inicio) / 1e6);
+    }
+    tiempos.sort((a, b) => a - b);
+    return { ms: tiempos[Math.floor(tiempos.length / 2)], resultado };
+}
+
+// ================================
+// PRUEBA
+// ================================
+async function main() {
+    const logica = cargarLogica();
+    const cliente = cargarGraficaCliente();
+    silenciarConsola();
+
+    process.stdout.write(`Gas a 1 Hz, ${picos.length} picos de una muestra, gráfica de ${PIXELES} px, ` +
+        `BD simulada con latencia ${LATENCIA_MS} ms\n`);
+    process.stdout.write('rango    | serie  | tabla             |  puntos | servidor  |    JSON   |    gzip  | cliente  | picos\n');
+
+    for (const [nombre, dias] of [['1 día', 1], ['1 semana', 7]]) {
+        const hasta = new Date(FIN - 1000);
+        const desde = new Date(FIN - dias * DIA_MS);
+        const casos = [
+            // Antes: todas las mediciones del rango, como las devuelve getMediciones
+            ['todas', async () => {
+                const mediciones = await logica.getMediciones({ tipo: 'gas', fecha_inicio: desde, fecha_fin: hasta });
+                return { tabla: 'mediciones', texto: JSON.stringify({ success: true, total: mediciones.length, data: mediciones }) };
+            }, (datos) => datos.data.map(m => [new Date(m.timestamp).getTime(), m.valor]).reverse()],
+            ...['lttb', 'minmax'].map(metodo => [metodo, async () => {
+                const serie = await logica.getSerieSubmuestreada({ tipo: 'gas', desde, hasta, puntos: PIXELES, metodo });
+                return {
+                    tabla: serie.tabla,
+                    texto: JSON.stringify({ success: true, metodo, tabla: serie.tabla, leidas: serie.leidas, total: serie.puntos.length, data: serie.puntos })
+                };
+            }, (datos) => datos.data])
+        ];
+
+        for (const [serie, servidor, aPuntos] of casos) {
+            const enServidor = await medir(servidor);
+            const { tabla, texto } = enServidor.resultado;
+            const comprimido = zlib.gzipSync(texto).length;
+            const enCliente = await medir(async () => {
+                const puntos = aPuntos(JSON.parse(texto));
+                cliente.anillo.vaciar();
+                for (const [instante, valor] of puntos) {
+                    cliente.anillo.anadir(0, instante, valor, 'gas', 0);
+                }
+                cliente.grafica.setRango(desde.getTime(), hasta.getTime());
+                cliente.grafica.dibujar();
+                return { puntos };
+            });
+            const { puntos } = enCliente.resultado;
+
+            // Picos del rango que siguen en la serie (su valor exacto)
+            const valoresSerie = new Set(puntos.map(p => p[1]));
+            const picosRango = picos.filter(i => INICIO + i * 1000 >= desde.getTime());
+            const conservados = picosRango.filter(i => valoresSerie.has(valores[i])).length;
+
+            process.stdout.write(`${nombre.padEnd(8)} | ${serie.padEnd(6)} | ${tabla.padEnd(17)} | ${String(puntos.length).padStart(7)} | ` +
+                `${enServidor.ms.toFixed(1).padStart(6)} ms | ${(texto.length / 1024).toFixed(0).padStart(6)} KB | ` +
+                `${(comprimido / 1024).toFixed(0).padStart(5)} KB | ${enCliente.ms.toFixed(1).padStart(5)} ms | ` +
+                `${conservados}/${picosRango.length}\n`);
+        }
+    }
+}
+
+main().catch((err) => {
+    process.stderr.write(`❌ Error en el benchmark: ${err.stack}\n`);
+    process.exit(1);
+});
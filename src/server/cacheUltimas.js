@@ -0,0 +1,372 @@
+// ================================
+// CACHÉ DE ÚLTIMAS MEDICIONES POR SENSOR
+// La consulta más habitual es "valor actual de cada sensor y tipo". Esta caché
+// guarda en memoria las últimas N mediciones de cada (sensor, tipo) en un
+// anillo de tamaño fijo:
+//   - Escritura directa (write-through): LogicaDeNegocio la actualiza al
+//     guardar cada medición, así que lo que está en la caché está al día.
+//   - TTL: cada anillo se vuelve a leer de la base de datos cuando pasa
+//     "ttlMs" desde que se cargó (acota lo desfasado si otro proceso escribe)
+//     y los sensores que nadie consulta se liberan.
+//   - Tope de memoria: si la estimación pasa de "maximoBytes" se echan los
+//     anillos usados hace más tiempo (LRU).
+// ================================
+
+// Mediciones que se guardan por cada (sensor, tipo)
+const MEDICIONES_POR_CLAVE_POR_DEFECTO = 10;
+
+// Tiempo de vida de un anillo desde que se cargó de la base de datos (ms)
+const TTL_POR_DEFECTO_MS = 5 * 60 * 1000;
+
+// Memoria máxima estimada de la caché (bytes)
+const MAXIMO_BYTES_POR_DEFECTO = 16 * 1024 * 1024;
+
+// Estimación del tamaño en memoria (V8) de una medición guardada y de un
+// anillo vacío (objeto, array, clave del Map). No es exacta, sirve para el tope
+const BYTES_POR_MEDICION = 160;
+const BYTES_POR_CLAVE = 200;
+
+// ------------------------------------------------------------------------
+// Anillo con las últimas mediciones de una clave, de la más nueva a la más vieja
+// ------------------------------------------------------------------------
+class AnilloMediciones {
+    constructor(capacidad, cargadoEn) {
+        this.valores = new Array(capacidad);
+        this.instantes = new Float64Array(capacidad); // Fecha (ms) de cada medición
+        this.inicio = 0;   // Posición de la más nueva
+        this.cuenta = 0;   // Mediciones guardadas
+        this.cargadoEn = cargadoEn;
+    }
+
+    // Posición en el array de la k-ésima más nueva (k = 0 es la más nueva)
+    posicion(k) {
+        const capacidad = this.valores.length;
+        return (this.inicio - k + capacidad) % capacidad;
+    }
+
+    // Añade una medición manteniendo el orden por fecha
+    // @return 1 si el anillo creció, 0 si sustituyó o descartó una
+    anotar(medicion, instante) {
+        const capacidad = this.valores.length;
+        const lleno = this.cuenta === capacidad;
+
+        // Caso habitual: la medición es la más nueva
+        if (this.cuenta === 0 || instante >= this.instantes[this.inicio]) {
+            this.inicio = (this.inicio + 1) % capacidad;
+            this.valores[this.inicio] = medicion;
+            this.instantes[this.inicio] = instante;
+            if (lleno) return 0;
+            this.cuenta++;
+            return 1;
+        }
+
+        // Llega fuera de orden (un lote atrasado): si es más vieja que todas y
+        // el anillo está lleno no entra
+        if (lleno && instante < this.instantes[this.posicion(this.cuenta - 1)]) {
+            return 0;
+        }
+        // Se desplazan una posición hacia atrás las más viejas que ella (si el
+        // anillo está lleno la más vieja de todas se pierde)
+        let k = lleno ? this.cuenta - 1 : this.cuenta;
+        while (k > 0 && this.instantes[this.posicion(k - 1)] < instante) {
+            const destino = this.posicion(k);
+            const origen = this.posicion(k - 1);
+            this.valores[destino] = this.valores[origen];
+            this.instantes[destino] = this.instantes[origen];
+            k--;
+        }
+        this.valores[this.posicion(k)] = medicion;
+        this.instantes[this.posicion(k)] = instante;
+        if (lleno) return 0;
+        this.cuenta++;
+        return 1;
+    }
+
+    // Devuelve las n más nuevas (o todas si hay menos)
+    ultimas(n) {
+        const total = Math.min(n, this.cuenta);
+        const resultado = new Array(total);
+        for (let k = 0; k < total; k++) {
+            resultado[k] = this.valores[this.posicion(k)];
+        }
+        return resultado;
+    }
+}
+
+class CacheUltimasMediciones {
+    // ------------------------------------------------------------------------
+    // Constructor
+    // @param opciones - { porClave, ttlMs, maximoBytes, reloj }
+    //   reloj: función que devuelve la hora en ms (Date.now; se cambia en pruebas)
+    // ------------------------------------------------------------------------
+    constructor({
+        porClave = MEDICIONES_POR_CLAVE_POR_DEFECTO,
+        ttlMs = TTL_POR_DEFECTO_MS,
+        maximoBytes = MAXIMO_BYTES_POR_DEFECTO,
+        reloj = Date.now
+    } = {}) {
+        this.porClave = porClave;
+        this.ttlMs = ttlMs;
+        this.maximoBytes = maximoBytes;
+        this.reloj = reloj;
+
+        // "sensor|tipo" -> AnilloMediciones. El orden del Map es el de uso
+        // (se reinserta al consultar), así el primero es el menos usado
+        this.anillos = new Map();
+        this.mediciones = 0;
+
+        // Hasta cuándo la caché tiene TODAS las claves que hay en la base de
+        // datos (después de cargarlas todas juntas); 0 = no se sabe
+        this.catalogoHasta = 0;
+
+        // Mediciones guardadas mientras se lee de la base de datos una clave
+        // ("sensor|tipo" -> array) o todas (array): se añaden a lo leído al
+        // cargar, porque la lectura pudo empezar antes de que se guardaran
+        this.cargando = new Map();
+        this.cargandoTodas = null;
+
+        // Contadores para las métricas
+        this.aciertos = 0;
+        this.fallos = 0;
+        this.caducadas = 0;
+        this.expulsadas = 0;
+    }
+
+    // Clave del Map para un sensor y un tipo
+    static clave(idSensor, tipo) {
+        return `${Number(idSensor)}|${tipo}`;
+    }
+
+    // ------------------------------------------------------------------------
+    // Escritura directa: anota una medición recién guardada
+    // Solo se anota en anillos que ya existen o si el catálogo está completo;
+    // un anillo nuevo con una sola medición haría creer que el sensor no
+    // tiene más historia
+    // @param medicion - { id, dispositivo_id, tipo, valor, timestamp }
+    // ------------------------------------------------------------------------
+    anotar(medicion) {
+        const clave = CacheUltimasMediciones.clave(medicion.dispositivo_id, medicion.tipo);
+        const pendientes = this.cargando.get(clave);
+        if (pendientes) pendientes.push(medicion);
+        if (this.cargandoTodas) this.cargandoTodas.push(medicion);
+
+        let anillo = this.anillos.get(clave);
+        if (!anillo) {
+            // Sensor o tipo nuevo: con el catálogo completo se sabe que no tenía
+            // mediciones anteriores, sin catálogo se carga al consultarlo
+            if (!this.catalogoVigente()) {
+                return;
+            }
+            anillo = new AnilloMediciones(this.porClave, this.reloj());
+            this.anillos.set(clave, anillo);
+        }
+        this.mediciones += anillo.anotar(medicion, new Date(medicion.timestamp).getTime());
+        this.ajustarMemoria();
+    }
+
+    // ------------------------------------------------------------------------
+    // Devuelve las n últimas mediciones de un sensor y tipo, o null si no están
+    // (fallo: hay que ir a la base de datos y llamar a cargar)
+    // ------------------------------------------------------------------------
+    leer(idSensor, tipo, n) {
+        const clave = CacheUltimasMediciones.clave(idSensor, tipo);
+        const anillo = n <= this.porClave ? this.vigente(clave) : null;
+        if (!anillo) {
+            this.fallos++;
+            return null;
+        }
+        // Reinsertar lo pone al final del Map (el más recientemente usado)
+        this.anillos.delete(clave);
+        this.anillos.set(clave, anillo);
+        this.aciertos++;
+        return anillo.ultimas(n);
+    }
+
+    // ------------------------------------------------------------------------
+    // Devuelve las n últimas de TODOS los sensores y tipos, o null si la caché
+    // no tiene el catálogo completo (hay que llamar a cargarTodas)
+    // ------------------------------------------------------------------------
+    leerTodas(n) {
+        if (n > this.porClave || !this.catalogoVigente()) {
+            this.fallos++;
+            return null;
+        }
+        const resultado = [];
+        for (const [clave, anillo] of this.anillos) {
+            // Un anillo caducado hace que el conjunto ya no valga
+            if (this.caducado(anillo)) {
+                this.quitar(clave, anillo);
+                this.caducadas++;
+                this.catalogoHasta = 0;
+                this.fallos++;
+                return null;
+            }
+            for (const medicion of anillo.ultimas(n)) {
+                resultado.push(medicion);
+            }
+        }
+        this.aciertos++;
+        return resultado;
+    }
+
+    // ------------------------------------------------------------------------
+    // Avisa de que se va a leer una clave de la base de datos (antes de la
+    // consulta) para no perder lo que se guarde mientras tanto
+    // ------------------------------------------------------------------------
+    iniciarCarga(idSensor, tipo) {
+        const clave = CacheUltimasMediciones.clave(idSensor, tipo);
+        if (!this.cargando.has(clave)) {
+            this.cargando.set(clave, []);
+        }
+    }
+
+    // Lo mismo para la lectura de todas las claves
+    iniciarCargaTodas() {
+        if (!this.cargandoTodas) {
+            this.cargandoTodas = [];
+        }
+    }
+
+    // Si la lectura falla se deja de apuntar lo que se guarda
+    cancelarCarga(idSensor, tipo) {
+        this.cargando.delete(CacheUltimasMediciones.clave(idSensor, tipo));
+    }
+
+    cancelarCargaTodas() {
+        this.cargandoTodas = null;
+    }
+
+    // ------------------------------------------------------------------------
+    // Guarda lo leído de la base de datos para un sensor y tipo
+    // @param mediciones - últimas mediciones de esa clave (cualquier orden)
+    // ------------------------------------------------------------------------
+    cargar(idSensor, tipo, mediciones) {
+        const clave = CacheUltimasMediciones.clave(idSensor, tipo);
+        const anterior = this.anillos.get(clave);
+        if (anterior) {
+            this.quitar(clave, anterior);
+        }
+        const pendientes = this.cargando.get(clave) || [];
+        this.cargando.delete(clave);
+
+        const anillo = new AnilloMediciones(this.porClave, this.reloj());
+        for (const medicion of mediciones) {
+            this.mediciones += anillo.anotar(medicion, new Date(medicion.timestamp).getTime());
+        }
+        // Las guardadas durante la lectura (si ya venían en ella no se repiten)
+        const leidas = new Set(mediciones.map(m => m.id));
+        for (const medicion of pendientes) {
+            if (!leidas.has(medicion.id)) {
+                this.mediciones += anillo.anotar(medicion, new Date(medicion.timestamp).getTime());
+            }
+        }
+        this.anillos.set(clave, anillo);
+        this.ajustarMemoria();
+    }
+
+    // ------------------------------------------------------------------------
+    // Sustituye toda la caché por lo leído de la base de datos y marca el
+    // catálogo como completo hasta que pase el TTL
+    // @param mediciones - últimas mediciones de cada sensor y tipo
+    // ------------------------------------------------------------------------
+    cargarTodas(mediciones) {
+        this.anillos.clear();
+        this.mediciones = 0;
+        const ahora = this.reloj();
+
+        // Las guardadas durante la lectura (si ya venían en ella no se repiten)
+        const leidas = new Set(mediciones.map(m => m.id));
+        const pendientes = (this.cargandoTodas || []).filter(m => !leidas.has(m.id));
+        this.cargandoTodas = null;
+
+        for (const medicion of mediciones.concat(pendientes)) {
+            const clave = CacheUltimasMediciones.clave(medicion.dispositivo_id, medicion.tipo);
+            let anillo = this.anillos.get(clave);
+            if (!anillo) {
+                anillo = new AnilloMediciones(this.porClave, ahora);
+                this.anillos.set(clave, anillo);
+            }
+            this.mediciones += anillo.anotar(medicion, new Date(medicion.timestamp).getTime());
+        }
+        this.catalogoHasta = ahora + this.ttlMs;
+        this.ajustarMemoria();
+    }
+
+    // Anillo de la clave si existe y no ha caducado (si caducó lo quita)
+    vigente(clave) {
+        const anillo = this.anillos.get(clave);
+        if (anillo && this.caducado(anillo)) {
+            this.quitar(clave, anillo);
+            this.caducadas++;
+            return null;
+        }
+        return anillo || null;
+    }
+
+    caducado(anillo) {
+        return this.reloj() - anillo.cargadoEn >= this.ttlMs;
+    }
+
+    catalogoVigente() {
+        return this.reloj() < this.catalogoHasta;
+    }
+
+    quitar(clave, anillo) {
+        this.anillos.delete(clave);
+        this.mediciones -= anillo.cuenta;
+    }
+
+    // Memoria estimada de la caché (bytes)
+    bytesEstimados() {
+        return this.anillos.size * BYTES_POR_CLAVE + this.mediciones * BYTES_POR_MEDICION;
+    }
+
+    // Echa los anillos menos usados hasta quedar por debajo del tope
+    ajustarMemoria() {
+        if (this.bytesEstimados() <= this.maximoBytes) {
+            return;
+        }
+        for (const [clave, anillo] of this.anillos) {
+            if (this.bytesEstimados() <= this.maximoBytes) break;
+            this.quitar(clave, anillo);
+            this.expulsadas++;
+            // Sin ese anillo la caché ya no tiene todas las claves
+            this.catalogoHasta = 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Quita los anillos caducados (sensores que ya nadie consulta)
+    // ------------------------------------------------------------------------
+    purgar() {
+        for (const [clave, anillo] of this.anillos) {
+            if (this.caducado(anillo)) {
+                this.quitar(clave, anillo);
+                this.caducadas++;
+                this.catalogoHasta = 0;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Métricas de la caché
+    // @return objeto con aciertos, fallos, tasa de aciertos y memoria estimada
+    // ------------------------------------------------------------------------
+    getEstadisticas() {
+        const consultas = this.aciertos + this.fallos;
+        return {
+            claves: this.anillos.size,
+            mediciones: this.mediciones,
+            bytes_estimados: this.bytesEstimados(),
+            maximo_bytes: this.maximoBytes,
+            aciertos: this.aciertos,
+            fallos: this.fallos,
+            tasa_aciertos: consultas === 0 ? null : this.aciertos / consultas,
+            caducadas: this.caducadas,
+            expulsadas: this.expulsadas
+        };
+    }
+}
+
+// Exportar la caché para LogicaDeNegocio (y el anillo para los benchmarks)
+module.exports = { CacheUltimasMediciones, AnilloMediciones };
@@ -0,0 +1,184 @@
+// ================================
+// MODO CLÚSTER: api.js en varios procesos
+// "node cluster.js" arranca un proceso principal que crea un trabajador por
+// núcleo (o CLUSTER_TRABAJADORES). Cada trabajador es un api.js completo con
+// su bucle de eventos; todos escuchan en el mismo puerto y el sistema reparte
+// las conexiones entre ellos. "node api.js" sigue funcionando como antes.
+//
+//   - Conexiones a MySQL: DB_CONEXIONES_TOTALES (por defecto 20) es el total
+//     para todo el servidor y se reparte entre los trabajadores; cada uno
+//     recibe su parte en DB_CONEXIONES (database.js la usa como connectionLimit).
+//     Así añadir núcleos no multiplica las conexiones contra MySQL.
+//   - Log: solo el principal escribe (y rota) mi_log.txt; los trabajadores le
+//     pasan sus volcados por IPC (ver logger.js).
+//   - Mediciones nuevas: el trabajador que las guarda se las pasa al principal,
+//     que las reenvía a los demás para su caché de últimas y su directo (SSE).
+//     Los informes de los colectores (sensores que oye cada uno) se reenvían
+//     igual, para que todos los trabajadores asignen los sensores lo mismo.
+//     La fusión de copias (fusionColectores.js) es de cada trabajador: las
+//     copias que caen en otro las para la clave de idempotencia.
+//   - Un trabajador que muere se vuelve a crear con la misma parte de
+//     conexiones; si muere nada más arrancar, la espera se va doblando.
+//   - SIGTERM / SIGINT se reenvían a los trabajadores, que cierran como api.js.
+// ================================
+const cluster = require('cluster');
+const os = require('os');
+const path = require('path');
+const { logger } = require('./logger');
+
+// Conexiones a MySQL para todo el servidor si no se dice otra cosa
+const CONEXIONES_TOTALES_POR_DEFECTO = 20;
+
+// Espera antes de volver a crear un trabajador que ha muerto (se dobla si
+// no llegó a vivir VIDA_MINIMA_MS, hasta MAXIMA_ESPERA_REINICIO_MS)
+const ESPERA_REINICIO_MS = 1000;
+const MAXIMA_ESPERA_REINICIO_MS = 30000;
+const VIDA_MINIMA_MS = 10000;
+
+// Tiempo que se da a un trabajador para cerrar antes de matarlo
+const ESPERA_CIERRE_MS = 10000;
+
+// ------------------------------------------------------------------------
+// Reparte "total" conexiones entre "trabajadores" (lo que sobra, a los primeros)
+// @return array con las conexiones de cada trabajador
+// ------------------------------------------------------------------------
+function repartirConexiones(total, trabajadores) {
+    const base = Math.floor(total / trabajadores);
+    const resto = total % trabajadores;
+    return Array.from({ length: trabajadores }, (_, i) => base + (i < resto ? 1 : 0));
+}
+
+class ClusterApi {
+    // ------------------------------------------------------------------------
+    // @param opciones - { exec: script de los trabajadores (api.js),
+    //                     trabajadores, conexionesTotales,
+    //                     entorno: variables de entorno extra para los trabajadores }
+    // ------------------------------------------------------------------------
+    constructor({ exec = path.join(__dirname, 'api.js'), trabajadores = os.availableParallelism(),
+        conexionesTotales = CONEXIONES_TOTALES_POR_DEFECTO, entorno = {} } = {}) {
+        // Cada trabajador necesita al menos una conexión
+        if (trabajadores > conexionesTotales) {
+            logger.warn(`⚠️ ${trabajadores} trabajadores con ${conexionesTotales} conexiones a MySQL: ` +
+                `se crean solo ${conexionesTotales}`);
+            trabajadores = conexionesTotales;
+        }
+        this.exec = exec;
+        this.entorno = entorno;
+        this.conexiones = repartirConexiones(conexionesTotales, trabajadores);
+        // Trabajador vivo de cada posición y su espera de reinicio
+        this.trabajadores = new Array(trabajadores).fill(null);
+        this.esperas = new Array(trabajadores).fill(ESPERA_REINICIO_MS);
+        this.cerrando = false;
+        this.reinicios = 0;
+        this.alEscuchar = () => {};
+    }
+
+    // Crea los trabajadores; la promesa se cumple cuando hay uno escuchando en
+    // cada posición (aunque sea el que sustituyó a otro que murió al arrancar)
+    iniciar() {
+        // Copia estructurada por IPC: las fechas de las mediciones siguen siendo Date
+        cluster.setupPrimary({ exec: this.exec, serialization: 'advanced' });
+        const escuchando = new Set();
+        return new Promise((resolve) => {
+            this.alEscuchar = (indice) => {
+                escuchando.add(indice);
+                if (escuchando.size === this.trabajadores.length) {
+                    resolve();
+                }
+            };
+            this.trabajadores.forEach((_, indice) => this.crearTrabajador(indice));
+        });
+    }
+
+    // Crea el trabajador de la posición "indice"
+    crearTrabajador(indice) {
+        const trabajador = cluster.fork({ ...this.entorno, DB_CONEXIONES: String(this.conexiones[indice]) });
+        const creado = Date.now();
+        this.trabajadores[indice] = trabajador;
+
+        trabajador.on('message', (mensaje) => this.alMensaje(trabajador, mensaje));
+        trabajador.on('exit', (codigo, senyal) => {
+            this.trabajadores[indice] = null;
+            if (this.cerrando) {
+                return;
+            }
+            // Murió pronto: probablemente vuelva a morir, esperar más cada vez
+            this.esperas[indice] = Date.now() - creado < VIDA_MINIMA_MS
+                ? Math.min(MAXIMA_ESPERA_REINICIO_MS, this.esperas[indice] * 2)
+                : ESPERA_REINICIO_MS;
+            logger.error(`💥 Trabajador ${trabajador.id} terminó (${senyal || codigo}), ` +
+                `se crea otro en ${this.esperas[indice]} ms`);
+            setTimeout(() => {
+                if (!this.cerrando) {
+                    this.reinicios++;
+                    this.crearTrabajador(indice);
+                }
+            }, this.esperas[indice]);
+        });
+        trabajador.once('listening', () => this.alEscuchar(indice));
+    }
+
+    alMensaje(origen, mensaje) {
+        if (mensaje.tipo === 'log') {
+            logger.anotarTexto(mensaje.texto);
+        } else if (mensaje.tipo === 'mediciones' || mensaje.tipo === 'oidos') {
+            // A todos los demás trabajadores
+            for (const trabajador of this.trabajadores) {
+                if (trabajador && trabajador !== origen && trabajador.isConnected()) {
+                    trabajador.send(mensaje);
+                }
+            }
+        }
+    }
+
+    // Pide a los trabajadores que cierren y espera a que terminen
+    async cerrar() {
+        this.cerrando = true;
+        await Promise.all(this.trabajadores.filter(t => t !== null).map((trabajador) => new Promise((resolve) => {
+            if (trabajador.isDead()) {
+                return resolve();
+            }
+            const matar = setTimeout(() => trabajador.process.kill('SIGKILL'), ESPERA_CIERRE_MS);
+            trabajador.once('exit', () => {
+                clearTimeout(matar);
+                resolve();
+            });
+            trabajador.process.kill('SIGTERM');
+        })));
+    }
+
+    getEstadisticas() {
+        return {
+            trabajadores: this.trabajadores.filter(t => t !== null).length,
+            conexiones: this.conexiones,
+            reinicios: this.reinicios
+        };
+    }
+}
+
+// ================================
+// ARRANQUE (node cluster.js)
+// ================================
+if (require.main === module) {
+    require('dotenv').config();
+    logger.configurarDesdeEntorno();
+
+    const clusterApi = new ClusterApi({
+        trabajadores: parseInt(process.env.CLUSTER_TRABAJADORES) || os.availableParallelism(),
+        conexionesTotales: parseInt(process.env.DB_CONEXIONES_TOTALES) || CONEXIONES_TOTALES_POR_DEFECTO
+    });
+    const { conexiones } = clusterApi.getEstadisticas();
+    logger.info(`🧩 Modo clúster: ${conexiones.length} trabajadores, conexiones a MySQL ${conexiones.join(' + ')}`);
+    clusterApi.iniciar().then(() => logger.info('✅ Todos los trabajadores escuchando'));
+
+    const parar = () => {
+        if (clusterApi.cerrando) return;
+        logger.info('🔄 Cerrando los trabajadores...');
+        clusterApi.cerrar().then(() => process.exit(0));
+    };
+    process.on('SIGTERM', parar);
+    process.on('SIGINT', parar);
+}
+
+// Exportar la clase para los benchmarks
+module.exports = { ClusterApi, repartirConexiones };
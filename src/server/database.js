@@ -2,8 +2,8 @@
 const mysql = require('mysql2/promise');
 // Importar dotenv para leer variables de entorno del archivo .env
 const dotenv = require('dotenv');
-// Cargar el módulo de logger para guardar logs en archivos
-require('./logger');
+// Cargar el logger para guardar logs en archivos
+const { logger } = require('./logger');
 // Cargar las variables de entorno desde el archivo .env
 dotenv.config();
 
@@ -26,8 +26,10 @@ class Database {
             port: process.env.DB_PORT || 3306,
             // Si true, espera a que haya una conexión disponible antes de ejecutar un query
             waitForConnections: true,
-            // Máximo número de conexiones simultáneas en el pool (10 conexiones)
-            connectionLimit: 10,
+            // Máximo número de conexiones simultáneas en el pool (10 por defecto)
+            // En modo clúster cluster.js reparte DB_CONEXIONES_TOTALES entre los
+            // trabajadores y pasa a cada uno su parte en DB_CONEXIONES
+            connectionLimit: parseInt(process.env.DB_CONEXIONES) || 10,
             // Máximo número de queries en espera de conexión (0 = sin límite)
             queueLimit: 0,
             // Tiempo máximo (en milisegundos) para establecer la conexión (10 segundos)
@@ -38,13 +40,13 @@ class Database {
         this.pool.getConnection()
             .then(conn => {
                 // Si la conexión es exitosa, mostrar mensaje positivo
-                console.log('✅ Conexión a MySQL establecida');
+                logger.info('✅ Conexión a MySQL establecida');
                 // Liberar la conexión para que otros queries la puedan usar
                 conn.release();
             })
             .catch(err => {
                 // Si hay error en la conexión, mostrar el mensaje de error
-                console.error('❌ Error conectando a MySQL:', err.message);
+                logger.error('❌ Error conectando a MySQL:', err.message);
             });
     }
     
@@ -63,7 +65,7 @@ class Database {
             return rows;
         } catch (err) {
             // Si ocurre un error, mostrarlo en consola
-            console.error('❌ Error en ejecutarQuery:', err.message);
+            logger.error('❌ Error en ejecutarQuery:', err.message);
             // Lanzar el error para que se maneje en otro lado del código
             throw err;
         }
@@ -93,10 +95,10 @@ class Database {
             // Cerrar todas las conexiones del pool
             await this.pool.end();
             // Mostrar mensaje indicando que se cerró correctamente
-            console.log('🔒 Conexión MySQL cerrada correctamente');
+            logger.info('🔒 Conexión MySQL cerrada correctamente');
         } catch (err) {
             // Si hay error al cerrar, mostrarlo en consola
-            console.error('❌ Error cerrando conexión MySQL:', err.message);
+            logger.error('❌ Error cerrando conexión MySQL:', err.message);
         }
     }
 }
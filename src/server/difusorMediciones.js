@@ -0,0 +1,177 @@
+// ================================
+// DIFUSOR DE MEDICIONES EN DIRECTO (Server-Sent Events)
+// Cuando se guarda una medición se envía a todos los clientes web suscritos,
+// en lugar de que cada cliente pregunte a la API (y a la base de datos) cada
+// pocos segundos. Cada suscriptor puede filtrar por tipo y por sensor.
+//
+// Cada medición se serializa UNA vez y el mismo texto se escribe a todos.
+// Si un cliente no lee (red lenta, pestaña dormida) lo que no ha salido se
+// acumula en memoria del servidor: cuando pasa de "limiteBytes" se le
+// desconecta. El navegador (EventSource) se reconecta solo más tarde.
+// ================================
+const { logger } = require('./logger');
+
+// Bytes pendientes de enviar a partir de los cuales se expulsa a un suscriptor
+const LIMITE_BYTES_POR_DEFECTO = 64 * 1024;
+
+// Máximo de suscriptores a la vez (cada uno es una conexión abierta)
+const MAXIMO_SUSCRIPTORES_POR_DEFECTO = 500;
+
+// Cada cuánto se manda un comentario vacío para que los proxies no cierren
+// la conexión por inactividad (ms)
+const INTERVALO_LATIDO_MS = 25000;
+
+// Tiempo que el navegador espera antes de reconectar (ms)
+const REINTENTO_MS = 3000;
+
+class DifusorMediciones {
+    // ------------------------------------------------------------------------
+    // Constructor
+    // @param opciones - { limiteBytes, maximoSuscriptores }
+    // ------------------------------------------------------------------------
+    constructor({ limiteBytes = LIMITE_BYTES_POR_DEFECTO, maximoSuscriptores = MAXIMO_SUSCRIPTORES_POR_DEFECTO } = {}) {
+        this.limiteBytes = limiteBytes;
+        this.maximoSuscriptores = maximoSuscriptores;
+
+        // Suscriptores activos: { res, tipos, sensores }
+        this.suscriptores = new Set();
+
+        // Contadores para las estadísticas
+        this.medicionesPublicadas = 0;
+        this.escriturasEnviadas = 0;
+        this.suscriptoresExpulsados = 0;
+
+        // Latido periódico (unref: no impide que el proceso termine)
+        this.latido = setInterval(() => this.enviarATodos(': latido\n\n'), INTERVALO_LATIDO_MS);
+        this.latido.unref();
+    }
+
+    // ------------------------------------------------------------------------
+    // Da de alta un cliente: deja abierta la respuesta HTTP como flujo SSE
+    // @param req - petición (para saber cuándo se cierra)
+    // @param res - respuesta que queda abierta
+    // @param filtros - { tipos: array|null, sensores: array|null } (null = todos)
+    // @return true si se suscribió, false si no caben más suscriptores
+    // ------------------------------------------------------------------------
+    suscribir(req, res, { tipos = null, sensores = null } = {}) {
+        if (this.suscriptores.size >= this.maximoSuscriptores) {
+            return false;
+        }
+
+        res.writeHead(200, {
+            'Content-Type': 'text/event-stream; charset=utf-8',
+            'Cache-Control': 'no-cache, no-transform',
+            'Connection': 'keep-alive',
+            // Evita que nginx (Plesk) guarde los eventos en su buffer
+            'X-Accel-Buffering': 'no'
+        });
+        res.write(`retry: ${REINTENTO_MS}\n\n`);
+
+        const suscriptor = {
+            res,
+            tipos: tipos && tipos.length > 0 ? new Set(tipos) : null,
+            sensores: sensores && sensores.length > 0 ? new Set(sensores.map(Number)) : null
+        };
+        this.suscriptores.add(suscriptor);
+
+        // Al cerrar el navegador (o expulsarlo) se da de baja
+        req.on('close', () => this.suscriptores.delete(suscriptor));
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    // Envía a los suscriptores interesados una o varias mediciones recién guardadas
+    // Cada medición se serializa una sola vez; a cada suscriptor le llega UNA
+    // escritura con todas las que le interesan
+    // @param mediciones - array de { id, dispositivo_id, tipo, valor, timestamp }
+    // ------------------------------------------------------------------------
+    publicar(mediciones) {
+        if (this.suscriptores.size === 0 || mediciones.length === 0) {
+            return;
+        }
+        this.medicionesPublicadas += mediciones.length;
+
+        // Texto SSE de cada medición (id para que el navegador sepa la última)
+        const eventos = mediciones.map(m =>
+            `id: ${m.id}\nevent: medicion\ndata: ${JSON.stringify(m)}\n\n`);
+
+        // Caso habitual (sin filtros): el mismo texto para todos
+        const todo = eventos.join('');
+
+        for (const suscriptor of this.suscriptores) {
+            let texto = todo;
+            if (suscriptor.tipos || suscriptor.sensores) {
+                texto = '';
+                for (let i = 0; i < mediciones.length; i++) {
+                    if (this.leInteresa(suscriptor, mediciones[i])) {
+                        texto += eventos[i];
+                    }
+                }
+            }
+            if (texto.length > 0) {
+                this.escribir(suscriptor, texto);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Comprueba los filtros de un suscriptor
+    // ------------------------------------------------------------------------
+    leInteresa(suscriptor, medicion) {
+        return (!suscriptor.tipos || suscriptor.tipos.has(medicion.tipo)) &&
+            (!suscriptor.sensores || suscriptor.sensores.has(Number(medicion.dispositivo_id)));
+    }
+
+    // ------------------------------------------------------------------------
+    // Escribe en un suscriptor o lo expulsa si ya tiene demasiado pendiente
+    // ------------------------------------------------------------------------
+    escribir(suscriptor, texto) {
+        // writableLength: bytes que Node tiene en memoria sin haber podido enviar
+        if (suscriptor.res.writableLength + Buffer.byteLength(texto) > this.limiteBytes) {
+            this.suscriptoresExpulsados++;
+            this.suscriptores.delete(suscriptor);
+            logger.warn(`🐢 Suscriptor expulsado: ${suscriptor.res.writableLength} bytes sin leer`);
+            // destroy() y no end(): end() esperaría a enviar lo pendiente
+            suscriptor.res.destroy();
+            return;
+        }
+        suscriptor.res.write(texto);
+        this.escriturasEnviadas++;
+    }
+
+    // ------------------------------------------------------------------------
+    // Escribe el mismo texto a todos los suscriptores (latido)
+    // ------------------------------------------------------------------------
+    enviarATodos(texto) {
+        for (const suscriptor of this.suscriptores) {
+            this.escribir(suscriptor, texto);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Estadísticas del difusor
+    // @return objeto con suscriptores, mediciones publicadas, escrituras y expulsados
+    // ------------------------------------------------------------------------
+    getEstadisticas() {
+        return {
+            suscriptores: this.suscriptores.size,
+            mediciones_publicadas: this.medicionesPublicadas,
+            escrituras_enviadas: this.escriturasEnviadas,
+            suscriptores_expulsados: this.suscriptoresExpulsados
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // Cierra todas las conexiones y para el latido (al apagar el servidor)
+    // ------------------------------------------------------------------------
+    cerrar() {
+        clearInterval(this.latido);
+        for (const suscriptor of this.suscriptores) {
+            suscriptor.res.end();
+        }
+        this.suscriptores.clear();
+    }
+}
+
+// Exportar la clase para que api.js la pueda usar
+module.exports = { DifusorMediciones };
@@ -0,0 +1,132 @@
+// ================================
+// EXPORTADOR DE MEDICIONES (NDJSON o CSV en streaming)
+// Escribe en la respuesta HTTP todas las mediciones de un rango según se van
+// leyendo de la base de datos (LogicaDeNegocio.recorrerMediciones), sin
+// juntarlas antes en un array: un mes entero de mediciones se descarga con la
+// misma memoria que una hora.
+//
+// Cada trozo leído de la BD se convierte en UN texto (una línea por medición)
+// y no se lee el siguiente hasta que la respuesta ha admitido el anterior
+// (pipeline respeta la contrapresión del socket). Si el cliente corta la
+// descarga se deja de leer de la BD.
+//
+// Si la base de datos falla antes de empezar se lanza el error (la ruta
+// responde 500/503 con JSON); si falla a mitad la respuesta ya está enviada
+// con 200 y se corta la conexión: el cliente ve la descarga incompleta.
+// ================================
+const { Readable } = require('stream');
+const { pipeline } = require('stream/promises');
+const { logger } = require('./logger');
+
+// Columnas del CSV (mismas claves que formatearMedicion)
+const COLUMNAS_CSV = ['id', 'dispositivo_id', 'tipo', 'valor', 'valor_ing', 'timestamp'];
+
+// Fecha de una fila en ISO 8601 (mysql2 la devuelve como Date)
+function fechaISO(fecha) {
+    return fecha instanceof Date ? fecha.toISOString() : String(fecha);
+}
+
+// Valor calibrado de una fila como número (null si no lo tiene)
+function valorIngenieria(fila) {
+    return fila.valor_ing === undefined || fila.valor_ing === null ? null : parseFloat(fila.valor_ing);
+}
+
+// Un campo de texto del CSV: entre comillas solo si hace falta (RFC 4180)
+function campoCSV(valor) {
+    const texto = String(valor);
+    return /[",\r\n]/.test(texto) ? '"' + texto.replace(/"/g, '""') + '"' : texto;
+}
+
+// Formatos disponibles: cabeceras HTTP, primera línea y cómo se escribe un trozo
+const FORMATOS = {
+    ndjson: {
+        tipoContenido: 'application/x-ndjson; charset=utf-8',
+        extension: 'ndjson',
+        cabecera: '',
+        // Una medición JSON por línea, igual que las de getMediciones
+        trozo(filas) {
+            let texto = '';
+            for (const fila of filas) {
+                texto += '{"id":' + fila.id +
+                    ',"dispositivo_id":' + JSON.stringify(fila.dispositivo_id) +
+                    ',"tipo":' + JSON.stringify(fila.tipo) +
+                    ',"valor":' + JSON.stringify(parseFloat(fila.valor)) +
+                    ',"valor_ing":' + JSON.stringify(valorIngenieria(fila)) +
+                    ',"timestamp":"' + fechaISO(fila.timestamp) + '"}\n';
+            }
+            return texto;
+        }
+    },
+    csv: {
+        tipoContenido: 'text/csv; charset=utf-8',
+        extension: 'csv',
+        cabecera: COLUMNAS_CSV.join(',') + '\r\n',
+        trozo(filas) {
+            let texto = '';
+            for (const fila of filas) {
+                texto += fila.id + ',' + campoCSV(fila.dispositivo_id) + ',' + campoCSV(fila.tipo) + ',' +
+                    parseFloat(fila.valor) + ',' + (valorIngenieria(fila) ?? '') + ',' + fechaISO(fila.timestamp) + '\r\n';
+            }
+            return texto;
+        }
+    }
+};
+
+// ------------------------------------------------------------------------
+// Exporta las mediciones que cumplen los filtros escribiéndolas en "res"
+// @param logica - instancia de LogicaDeNegocio
+// @param filtros - los de getMediciones (dispositivo_id, tipo, fecha_inicio, fecha_fin)
+// @param formato - 'ndjson' (por defecto) o 'csv'
+// @param res - respuesta HTTP (http.ServerResponse o la de Express)
+// @return número de mediciones escritas
+// ------------------------------------------------------------------------
+async function exportarMediciones(logica, filtros, formato, res) {
+    const elegido = FORMATOS[formato || 'ndjson'];
+    if (!elegido) {
+        throw new Error(`El parámetro formato debe ser uno de: ${Object.keys(FORMATOS).join(', ')}`);
+    }
+
+    // El primer trozo se lee antes de mandar las cabeceras: si la BD no
+    // responde todavía se puede contestar con un error normal
+    const trozos = logica.recorrerMediciones(filtros);
+    const primero = await trozos.next();
+
+    res.writeHead(200, {
+        'Content-Type': elegido.tipoContenido,
+        'Content-Disposition': `attachment; filename="mediciones.${elegido.extension}"`,
+        'Cache-Control': 'no-store',
+        // Que nginx (Plesk) no guarde la descarga entera en su buffer
+        'X-Accel-Buffering': 'no'
+    });
+
+    let escritas = 0;
+    async function* texto() {
+        try {
+            if (elegido.cabecera) {
+                yield elegido.cabecera;
+            }
+            for (let actual = primero; !actual.done; actual = await trozos.next()) {
+                escritas += actual.value.length;
+                yield elegido.trozo(actual.value);
+            }
+        } finally {
+            // Si el cliente cortó, se cierra también el recorrido de la BD
+            await trozos.return();
+        }
+    }
+
+    try {
+        await pipeline(Readable.from(texto(), { objectMode: false }), res);
+    } catch (error) {
+        // El cliente cerró la conexión: no es un error del servidor
+        if (error.code === 'ERR_STREAM_PREMATURE_CLOSE') {
+            logger.info(`⚠️ Exportación cortada por el cliente tras ${escritas} mediciones`);
+            return escritas;
+        }
+        throw error;
+    }
+    return escritas;
+}
+
+// Exportar la función para que api.js la pueda usar
+module.exports = { exportarMediciones, FORMATOS };
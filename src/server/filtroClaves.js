@@ -0,0 +1,108 @@
+// ================================
+// FILTRO DE CLAVES DE IDEMPOTENCIA RECIENTES
+// Cada medición del Android trae una clave de 64 bits (16 caracteres
+// hexadecimales, ver ClaveIdempotencia.java) que es la misma para la misma
+// lectura aunque la suban dos móviles o se reenvíe el lote. Este filtro de
+// Bloom recuerda las claves de las últimas mediciones guardadas:
+//   - "no está" es seguro: la medición es nueva y se inserta sin preguntar a
+//     MySQL (el caso habitual, sin viajes de más).
+//   - "puede estar" se confirma con una consulta al índice único de la columna
+//     clave; los falsos positivos (tasaFalsos) siguen su camino y se insertan.
+// La memoria es fija: dos generaciones de "capacidad" claves cada una; cuando
+// la actual se llena, la anterior se vacía y pasa a ser la actual, así que
+// siempre se recuerdan entre "capacidad" y el doble de claves recientes.
+// Las que se olvidan no se pierden: el índice único (INSERT IGNORE) las para.
+// ================================
+
+// Claves por generación (con 2 generaciones, ~4 MB de memoria)
+const CAPACIDAD_POR_DEFECTO = 1000000;
+
+// Probabilidad de falso positivo buscada con una generación llena
+const TASA_FALSOS_POR_DEFECTO = 0.001;
+
+// Formato de una clave válida
+const FORMATO_CLAVE = /^[0-9a-fA-F]{16}$/;
+
+class FiltroClaves {
+    // ------------------------------------------------------------------------
+    // @param opciones - { capacidad: claves por generación,
+    //                     tasaFalsos: probabilidad de falso positivo buscada }
+    // ------------------------------------------------------------------------
+    constructor({ capacidad = CAPACIDAD_POR_DEFECTO, tasaFalsos = TASA_FALSOS_POR_DEFECTO } = {}) {
+        this.capacidad = capacidad;
+        // Bits óptimos m = -n ln(p) / ln(2)^2, redondeados a potencia de 2 para
+        // calcular las posiciones con una máscara; funciones hash k = m/n ln(2)
+        const bitsOptimos = Math.ceil(-capacidad * Math.log(tasaFalsos) / (Math.LN2 * Math.LN2));
+        this.bits = 2 ** Math.max(5, Math.ceil(Math.log2(bitsOptimos)));
+        this.mascara = this.bits - 1;
+        this.funciones = Math.max(1, Math.round(bitsOptimos / capacidad * Math.LN2));
+        this.actual = new Uint32Array(this.bits / 32);
+        this.anterior = new Uint32Array(this.bits / 32);
+        this.enActual = 0;
+        this.rotaciones = 0;
+    }
+
+    // Las dos mitades de la clave son los dos hash de partida (la clave ya es
+    // un hash); el resto de posiciones salen de h1 + i*h2 (doble hash)
+    posiciones(clave, callback) {
+        const h1 = parseInt(clave.slice(0, 8), 16) >>> 0;
+        const h2 = (parseInt(clave.slice(8, 16), 16) | 1) >>> 0;
+        for (let i = 0; i < this.funciones; i++) {
+            if (callback((h1 + Math.imul(i, h2)) & this.mascara) === false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    // @param clave - 16 caracteres hexadecimales
+    // @return false si la clave seguro que no se ha visto; true si puede que sí
+    // ------------------------------------------------------------------------
+    contiene(clave) {
+        const enGeneracion = (bits) => this.posiciones(clave, (p) => (bits[p >>> 5] & (1 << (p & 31))) !== 0);
+        return enGeneracion(this.actual) || enGeneracion(this.anterior);
+    }
+
+    // ------------------------------------------------------------------------
+    // Anota una clave guardada en la base de datos
+    // @param clave - 16 caracteres hexadecimales
+    // ------------------------------------------------------------------------
+    anotar(clave) {
+        if (this.enActual >= this.capacidad) {
+            // La actual está llena: la anterior se olvida y se reutiliza
+            const vacia = this.anterior.fill(0);
+            this.anterior = this.actual;
+            this.actual = vacia;
+            this.enActual = 0;
+            this.rotaciones++;
+        }
+        const bits = this.actual;
+        this.posiciones(clave, (p) => {
+            bits[p >>> 5] |= 1 << (p & 31);
+        });
+        this.enActual++;
+    }
+
+    // Probabilidad de falso positivo con lo que hay ahora, (1 - e^(-kn/m))^k
+    // por generación; una consulta mira las dos
+    tasaFalsosEstimada() {
+        const tasa = (n) => (1 - Math.exp(-this.funciones * n / this.bits)) ** this.funciones;
+        const anterior = this.rotaciones > 0 ? tasa(this.capacidad) : 0;
+        return 1 - (1 - tasa(this.enActual)) * (1 - anterior);
+    }
+
+    getEstadisticas() {
+        return {
+            claves_recientes: this.enActual + (this.rotaciones > 0 ? this.capacidad : 0),
+            capacidad: this.capacidad,
+            funciones_hash: this.funciones,
+            bytes: this.actual.byteLength + this.anterior.byteLength,
+            rotaciones: this.rotaciones,
+            tasa_falsos_estimada: this.tasaFalsosEstimada()
+        };
+    }
+}
+
+// Exportar la clase y el formato de las claves (lo usa LogicaDeNegocio)
+module.exports = { FiltroClaves, FORMATO_CLAVE };
@@ -0,0 +1,235 @@
+// ================================
+// FUSIÓN DE LAS MEDICIONES DE VARIOS COLECTORES
+// Cuando varios móviles o pasarelas (colectores) oyen el mismo sensor, cada
+// uno sube su copia de cada lectura. Los lotes que traen "colector" no se
+// guardan en cuanto llegan: se juntan durante una ventana corta (ventanaMs)
+// y las copias de la misma lectura (misma clave de idempotencia, o la clave
+// de una es la clave_vecina de la otra porque cayeron a cada lado del cambio
+// de minuto) se funden en una, la del colector que la oyó con mejor RSSI, que
+// es la que se guarda
+// (con su colector y su RSSI). Una copia que no pasa la validación de
+// guardarMedicionesLote (opción "validar") no sustituye a otra buena: se
+// guarda la mejor copia válida y la mal formada sale rechazada con su error. Al cerrar la ventana todo lo recibido se
+// guarda con un único guardarMedicionesLote, así que N lotes de N colectores
+// cuestan una transacción en lugar de N.
+// Cada petición recibe el resultado de sus mediciones como si se hubieran
+// guardado solas: las copias que perdieron la fusión salen como duplicadas
+// (ok, con "fusionada" y el id de la que se guardó).
+// Las copias que llegan después de cerrarse la ventana de su lectura las
+// para la clave de idempotencia (como cualquier duplicada); con las listas de
+// asignadorColectores cada colector sube solo sus sensores y esto es raro.
+// ================================
+
+// Ventana de fusión por defecto (lo que se retrasa la respuesta de un lote)
+const VENTANA_POR_DEFECTO_MS = 1000;
+
+class FusionColectores {
+    // ------------------------------------------------------------------------
+    // @param opciones - { guardar: (lista, base) => Promise con el resultado
+    //                     de guardarMedicionesLote,
+    //                     validar: (datos) => lanza error si guardarMedicionesLote
+    //                     rechazaría la medición (opcional),
+    //                     ventanaMs: cuánto se esperan las otras copias,
+    //                     maximoPendientes: mediciones a partir de las cuales
+    //                     se guarda sin esperar al final de la ventana }
+    // ------------------------------------------------------------------------
+    constructor({ guardar, validar = null, ventanaMs = VENTANA_POR_DEFECTO_MS, maximoPendientes = 5000 }) {
+        this.guardar = guardar;
+        this.validar = validar;
+        this.ventanaMs = ventanaMs;
+        this.maximoPendientes = maximoPendientes;
+
+        // Ventana abierta: lecturas por clave, las que no traen clave y las
+        // peticiones que esperan su resultado
+        this.porClave = new Map();
+        this.entradas = [];
+        this.peticiones = [];
+        this.temporizador = null;
+
+        this.estadisticas = {
+            peticiones: 0,  // Lotes recibidos con colector
+            recibidas: 0,   // Mediciones recibidas en esos lotes
+            fusionadas: 0,  // Copias que se juntaron con otra de la misma lectura
+            mejoradas: 0,   // Veces que una copia posterior tenía mejor RSSI
+            invalidas: 0,   // Copias mal formadas que perdieron frente a una válida
+            volcados: 0     // Ventanas guardadas (transacciones)
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // Recibe el lote de un colector
+    // @param colector - identificador (ya validado)
+    // @param lista - mediciones del lote ({tipo, valor, dt?, clave?, rssi?})
+    // @param base - base del lote para las que traen "dt"
+    // @return Promise con { guardadas, rechazadas, duplicadas, fusionadas,
+    //         resultados, mediciones, claves } de este lote (como
+    //         guardarMedicionesLote)
+    // ------------------------------------------------------------------------
+    recibir(colector, lista, base) {
+        // Un lote que no cabe en una ventana se guarda solo (y si es más
+        // grande que el máximo de guardarMedicionesLote, falla igual)
+        if (lista.length > this.maximoPendientes) {
+            return this.guardar(lista.map(datos => this.aAbsoluta(datos, base, colector)), undefined);
+        }
+        if (this.entradas.length + lista.length > this.maximoPendientes) {
+            this.volcar();
+        }
+
+        return new Promise((resolve, reject) => {
+            const peticion = { resolve, reject, resultados: new Array(lista.length) };
+            this.peticiones.push(peticion);
+            this.estadisticas.peticiones++;
+            this.estadisticas.recibidas += lista.length;
+
+            for (let i = 0; i < lista.length; i++) {
+                const datos = this.aAbsoluta(lista[i], base, colector);
+                const receptor = { peticion, indice: i, error: this.errorDe(datos) };
+                const clave = typeof datos?.clave === 'string' ? datos.clave.toLowerCase() : null;
+                const vecina = clave !== null && typeof datos.clave_vecina === 'string'
+                    ? datos.clave_vecina.toLowerCase() : null;
+                const entrada = clave === null ? undefined
+                    : this.porClave.get(clave) ?? (vecina === null ? undefined : this.porClave.get(vecina));
+                if (entrada === undefined) {
+                    const nueva = { datos, ganador: receptor, receptores: [receptor] };
+                    this.entradas.push(nueva);
+                    if (clave !== null) {
+                        this.porClave.set(clave, nueva);
+                    }
+                    continue;
+                }
+                // Otra copia de una lectura ya recibida: se queda la válida de
+                // mejor RSSI (una válida gana siempre a una mal formada)
+                entrada.receptores.push(receptor);
+                this.estadisticas.fusionadas++;
+                if (receptor.error !== null) {
+                    this.estadisticas.invalidas++;
+                } else if (entrada.ganador.error !== null) {
+                    entrada.datos = datos;
+                    entrada.ganador = receptor;
+                    this.estadisticas.invalidas++;
+                } else if (rssiDe(datos) > rssiDe(entrada.datos)) {
+                    entrada.datos = datos;
+                    entrada.ganador = receptor;
+                    this.estadisticas.mejoradas++;
+                }
+            }
+
+            if (this.temporizador === null) {
+                this.temporizador = setTimeout(() => this.volcar(), this.ventanaMs);
+            }
+        });
+    }
+
+    // Error con el que guardarMedicionesLote rechazaría una medición (null si
+    // es válida o no hay "validar")
+    errorDe(datos) {
+        if (this.validar === null) {
+            return null;
+        }
+        try {
+            this.validar(datos);
+            return null;
+        } catch (error) {
+            return error.message;
+        }
+    }
+
+    // Copia de la medición con la fecha absoluta ("dt" + base del lote pasa a
+    // "timestamp", porque en la ventana se mezclan lotes con bases distintas)
+    // y el colector del lote si no trae el suyo
+    aAbsoluta(datos, base, colector) {
+        if (datos === null || typeof datos !== 'object') {
+            return datos;
+        }
+        const copia = { ...datos, colector: datos.colector ?? colector };
+        if (datos.dt !== undefined && Number.isFinite(base) && Number.isInteger(datos.dt)) {
+            delete copia.dt;
+            copia.timestamp = base + datos.dt;
+        }
+        // Un "dt" sin base válida se deja: guardarMedicionesLote lo rechaza
+        return copia;
+    }
+
+    // ------------------------------------------------------------------------
+    // Cierra la ventana: guarda todo lo recibido en un solo lote y reparte el
+    // resultado entre las peticiones
+    // ------------------------------------------------------------------------
+    volcar() {
+        clearTimeout(this.temporizador);
+        this.temporizador = null;
+        const entradas = this.entradas;
+        const peticiones = this.peticiones;
+        this.entradas = [];
+        this.peticiones = [];
+        this.porClave = new Map();
+        if (entradas.length === 0) {
+            return;
+        }
+        this.estadisticas.volcados++;
+
+        this.guardar(entradas.map(entrada => entrada.datos), undefined).then((resultado) => {
+            // Mediciones guardadas por id (para dárselas a la petición ganadora)
+            const porId = new Map(resultado.mediciones.map(medicion => [medicion.id, medicion]));
+            const parciales = new Map(peticiones.map(peticion => [peticion, {
+                guardadas: 0, rechazadas: 0, duplicadas: 0, fusionadas: 0,
+                resultados: peticion.resultados, mediciones: [], claves: []
+            }]));
+
+            for (let k = 0; k < entradas.length; k++) {
+                const { datos, ganador, receptores } = entradas[k];
+                const r = resultado.resultados[k];
+                for (const receptor of receptores) {
+                    const parcial = parciales.get(receptor.peticion);
+                    const indice = receptor.indice;
+                    if (!r.ok || (receptor !== ganador && receptor.error !== null)) {
+                        // Rechazada o copia mal formada de una lectura que se guardó con otra
+                        parcial.resultados[indice] = { indice, ok: false, error: r.ok ? receptor.error : r.error };
+                        parcial.rechazadas++;
+                    } else if (receptor !== ganador) {
+                        parcial.resultados[indice] = { indice, ok: true, duplicada: true, fusionada: true, id: r.id };
+                        parcial.duplicadas++;
+                        parcial.fusionadas++;
+                    } else if (r.duplicada) {
+                        parcial.resultados[indice] = { ...r, indice };
+                        parcial.duplicadas++;
+                    } else {
+                        parcial.resultados[indice] = { ...r, indice };
+                        parcial.guardadas++;
+                        parcial.mediciones.push(porId.get(r.id));
+                        if (typeof datos?.clave === 'string') {
+                            parcial.claves.push(datos.clave.toLowerCase());
+                        }
+                    }
+                }
+            }
+            for (const [peticion, parcial] of parciales) {
+                peticion.resolve(parcial);
+            }
+        }, (error) => {
+            // La transacción se deshizo: fallan todas (los colectores reintentan)
+            for (const peticion of peticiones) {
+                peticion.reject(error);
+            }
+        });
+    }
+
+    getEstadisticas() {
+        const e = this.estadisticas;
+        return {
+            ...e,
+            ventana_ms: this.ventanaMs,
+            pendientes: this.entradas.length,
+            tasa_fusionadas: e.recibidas === 0 ? null : e.fusionadas / e.recibidas
+        };
+    }
+}
+
+// RSSI de una medición para compararlas (las que no lo traen, o lo traen
+// fuera del rango que admite guardarMedicionesLote, pierden)
+function rssiDe(datos) {
+    const rssi = datos?.rssi;
+    return Number.isInteger(rssi) && rssi >= -127 && rssi <= 20 ? rssi : -Infinity;
+}
+
+// Exportar la clase para que api.js la pueda usar
+module.exports = { FusionColectores };
@@ -1,35 +1,347 @@
-// logger.js
+// ================================
+// LOGGER CON NIVELES, POR LOTES Y ASÍNCRONO
+// Sustituye a sobrescribir console.log/error/warn: cada módulo usa
+// logger.error/warn/info/debug y el texto va a mi_log.txt (y a la salida
+// normal si "consola" está activo).
+//
+//   - Los niveles desactivados son una función vacía: no formatean nada
+//     (si un argumento cuesta calcularlo, comprobar antes logger.activo(nivel))
+//   - Las líneas se juntan en memoria y se escriben de golpe, sin bloquear:
+//     al juntar BYTES_POR_VOLCADO o como mucho cada INTERVALO_VOLCADO_MS,
+//     con una sola escritura en marcha a la vez
+//   - Cuando el archivo pasa de "tamanyoMaximo" se rota: mi_log.txt pasa a
+//     mi_log.1.txt, mi_log.1.txt a mi_log.2.txt... (se guardan "archivosRotados")
+//   - Si el disco no da abasto, lo pendiente no crece sin límite: pasado
+//     "maximoBytesPendientes" se descartan las líneas que no son errores (se
+//     cuentan y se avisa en el log cuando se puede volver a escribir)
+//   - Al salir del proceso se escribe lo pendiente de forma síncrona
+//
+// En modo clúster (cluster.js) los trabajadores no abren el archivo: pasan
+// cada volcado al proceso principal ("salida") y solo él escribe y rota.
+//
+// Se configura desde el .env (configurarDesdeEntorno): LOG_NIVEL
+// (error|warn|info|debug, por defecto info), LOG_ARCHIVO, LOG_TAMANYO_MAXIMO
+// (bytes) y LOG_CONSOLA=no para no repetirlo en la salida normal
+// ================================
 const fs = require('fs');
 const path = require('path');
+const util = require('util');
 
-// Definir el archivo de logs en la misma carpeta de tu app
-const logFile = path.join(__dirname, 'mi_log.txt');
-const logStream = fs.createWriteStream(logFile, { flags: 'a' });
-
-// Guardar referencias originales
-const originalLog = console.log;
-const originalError = console.error;
-const originalWarn = console.warn;
-
-// Sobrescribir console.log
-console.log = function (...args) {
-    const msg = `[LOG] ${new Date().toISOString()} - ${args.join(' ')}\n`;
-    logStream.write(msg);
-    originalLog.apply(console, args); // también lo muestra en la salida normal
-};
-
-// Sobrescribir console.error
-console.error = function (...args) {
-    const msg = `[ERROR] ${new Date().toISOString()} - ${args.join(' ')}\n`;
-    logStream.write(msg);
-    originalError.apply(console, args);
-};
-
-// Sobrescribir console.warn
-console.warn = function (...args) {
-    const msg = `[WARN] ${new Date().toISOString()} - ${args.join(' ')}\n`;
-    logStream.write(msg);
-    originalWarn.apply(console, args);
-};
-
-module.exports = {}; // no necesitas exportar nada, basta con requerir este archivo
+// Niveles de menos a más detallado
+const NIVELES = { error: 0, warn: 1, info: 2, debug: 3 };
+const ETIQUETAS = ['[ERROR] ', '[WARN] ', '[INFO] ', '[DEBUG] '];
+
+// Archivo de logs en la misma carpeta de la app
+const ARCHIVO_POR_DEFECTO = path.join(__dirname, 'mi_log.txt');
+
+// Tamaño a partir del cual se rota el archivo y cuántos rotados se guardan
+const TAMANYO_MAXIMO_POR_DEFECTO = 10 * 1024 * 1024;
+const ARCHIVOS_ROTADOS_POR_DEFECTO = 3;
+
+// Se escribe al juntar tantos bytes o, si no, pasado este tiempo
+const BYTES_POR_VOLCADO = 64 * 1024;
+const INTERVALO_VOLCADO_MS = 250;
+
+// Máximo pendiente de escribir; por encima solo se guardan los errores
+// (y hasta el doble: ni siquiera los errores pueden llenar la memoria)
+const MAXIMO_BYTES_PENDIENTES_POR_DEFECTO = 4 * 1024 * 1024;
+
+// Objetos en una sola línea y sin entrar demasiado
+const OPCIONES_INSPECT = { depth: 3, breakLength: Infinity, compact: true };
+
+function nada() {}
+
+// Une los argumentos como console.log, pero los objetos se ven (no
+// "[object Object]") y de los errores sale la pila
+function formatear(args) {
+    let texto = '';
+    for (let i = 0; i < args.length; i++) {
+        const a = args[i];
+        if (i > 0) texto += ' ';
+        if (typeof a === 'string') {
+            texto += a;
+        } else if (a instanceof Error) {
+            texto += a.stack || a.message;
+        } else if (typeof a === 'object' && a !== null) {
+            texto += util.inspect(a, OPCIONES_INSPECT);
+        } else {
+            texto += String(a);
+        }
+    }
+    return texto;
+}
+
+class Logger {
+    // ------------------------------------------------------------------------
+    // Constructor
+    // @param opciones - las de configurar()
+    // ------------------------------------------------------------------------
+    constructor(opciones = {}) {
+        this.nivel = 'info';
+        this.archivo = ARCHIVO_POR_DEFECTO;
+        this.tamanyoMaximo = TAMANYO_MAXIMO_POR_DEFECTO;
+        this.archivosRotados = ARCHIVOS_ROTADOS_POR_DEFECTO;
+        this.maximoBytesPendientes = MAXIMO_BYTES_PENDIENTES_POR_DEFECTO;
+        this.consola = true;
+        this.salida = null;
+
+        // Líneas esperando a escribirse y su tamaño (aproximado: caracteres)
+        this.pendientes = [];
+        this.bytesPendientes = 0;
+        this.temporizador = null;
+        this.escribiendo = false;
+
+        // Archivo abierto (FileHandle) y lo que lleva escrito
+        this.manejador = null;
+        this.bytesArchivo = 0;
+
+        // Fecha en ISO del segundo actual (solo se cambian los milisegundos)
+        this.segundoCache = -1;
+        this.prefijoCache = '';
+
+        // Contadores para las estadísticas
+        this.registradas = 0;
+        this.descartadas = 0;
+        this.descartadasSinAvisar = 0;
+        this.volcados = 0;
+        this.rotaciones = 0;
+        this.erroresEscritura = 0;
+
+        this.alVencer = () => {
+            this.temporizador = null;
+            this.volcar();
+        };
+        this.configurar(opciones);
+    }
+
+    // ------------------------------------------------------------------------
+    // Cambia la configuración (solo lo que se pase)
+    // @param opciones - { nivel, archivo (null = no escribir en archivo),
+    //                    tamanyoMaximo, archivosRotados, maximoBytesPendientes,
+    //                    consola (repetir en la salida normal),
+    //                    salida (función que recibe cada volcado en vez del
+    //                    archivo, o null) }
+    // ------------------------------------------------------------------------
+    configurar({ nivel, archivo, tamanyoMaximo, archivosRotados, maximoBytesPendientes, consola, salida } = {}) {
+        if (nivel !== undefined) {
+            if (NIVELES[nivel] === undefined) {
+                throw new Error(`Nivel de log desconocido: ${nivel}`);
+            }
+            this.nivel = nivel;
+        }
+        if (archivo !== undefined && archivo !== this.archivo) {
+            // Lo pendiente va al archivo anterior
+            this.volcarSincrono();
+            this.cerrarArchivo();
+            this.archivo = archivo;
+        }
+        if (tamanyoMaximo !== undefined) this.tamanyoMaximo = tamanyoMaximo;
+        if (archivosRotados !== undefined) this.archivosRotados = archivosRotados;
+        if (maximoBytesPendientes !== undefined) this.maximoBytesPendientes = maximoBytesPendientes;
+        if (consola !== undefined) this.consola = consola;
+        if (salida !== undefined) this.salida = salida;
+
+        // Un método por nivel: los desactivados no hacen nada
+        for (const [nombre, numero] of Object.entries(NIVELES)) {
+            this[nombre] = numero <= NIVELES[this.nivel] ? (...args) => this.registrar(numero, args) : nada;
+        }
+        return this;
+    }
+
+    // Configuración a partir de las variables de entorno (tras dotenv.config())
+    configurarDesdeEntorno() {
+        return this.configurar({
+            nivel: process.env.LOG_NIVEL || undefined,
+            archivo: process.env.LOG_ARCHIVO || undefined,
+            tamanyoMaximo: parseInt(process.env.LOG_TAMANYO_MAXIMO) || undefined,
+            consola: process.env.LOG_CONSOLA === undefined ? undefined : process.env.LOG_CONSOLA !== 'no'
+        });
+    }
+
+    // true si un nivel se está registrando (para no preparar argumentos caros)
+    activo(nivel) {
+        return NIVELES[nivel] <= NIVELES[this.nivel];
+    }
+
+    // Fecha ISO con milisegundos; la parte hasta el segundo se reutiliza
+    marcaTiempo(ms) {
+        const segundo = Math.floor(ms / 1000);
+        if (segundo !== this.segundoCache) {
+            this.segundoCache = segundo;
+            this.prefijoCache = new Date(segundo * 1000).toISOString().slice(0, 20);
+        }
+        const milis = ms - segundo * 1000;
+        return this.prefijoCache + (milis < 10 ? '00' : milis < 100 ? '0' : '') + milis + 'Z';
+    }
+
+    // Formatea una línea y la deja pendiente (o la descarta si no cabe)
+    registrar(numero, args) {
+        const linea = ETIQUETAS[numero] + this.marcaTiempo(Date.now()) + ' - ' + formatear(args) + '\n';
+        const limite = numero === NIVELES.error ? 2 * this.maximoBytesPendientes : this.maximoBytesPendientes;
+        if (this.bytesPendientes + linea.length > limite) {
+            this.descartadas++;
+            this.descartadasSinAvisar++;
+            return;
+        }
+        this.registradas++;
+        this.encolar(linea);
+    }
+
+    // Deja pendiente un volcado que llega ya formateado de un trabajador del
+    // clúster (sus líneas ya se contaron y filtraron allí)
+    anotarTexto(texto) {
+        if (this.bytesPendientes + texto.length > 2 * this.maximoBytesPendientes) {
+            this.descartadas++;
+            this.descartadasSinAvisar++;
+            return;
+        }
+        this.encolar(texto);
+    }
+
+    encolar(texto) {
+        this.pendientes.push(texto);
+        this.bytesPendientes += texto.length;
+
+        if (this.bytesPendientes >= BYTES_POR_VOLCADO) {
+            this.volcar();
+        } else if (this.temporizador === null) {
+            this.temporizador = setTimeout(this.alVencer, INTERVALO_VOLCADO_MS);
+            this.temporizador.unref();
+        }
+    }
+
+    // Saca lo pendiente como un único texto (con el aviso de descartadas)
+    sacarPendientes() {
+        let texto = this.pendientes.join('');
+        if (this.descartadasSinAvisar > 0) {
+            texto += `${ETIQUETAS[NIVELES.warn]}${this.marcaTiempo(Date.now())} - ⚠️ ${this.descartadasSinAvisar} ` +
+                `líneas de log descartadas (el disco no daba abasto)\n`;
+            this.descartadasSinAvisar = 0;
+        }
+        this.pendientes = [];
+        this.bytesPendientes = 0;
+        return texto;
+    }
+
+    // Escribe lo pendiente sin esperar (si ya hay una escritura en marcha,
+    // lo que se junte mientras tanto se escribe al terminar)
+    volcar() {
+        if (this.temporizador !== null) {
+            clearTimeout(this.temporizador);
+            this.temporizador = null;
+        }
+        if (this.escribiendo || (this.pendientes.length === 0 && this.descartadasSinAvisar === 0)) {
+            return;
+        }
+        const texto = this.sacarPendientes();
+        this.volcados++;
+        if (this.consola) {
+            process.stdout.write(texto);
+        }
+        if (this.salida !== null) {
+            this.salida(texto);
+            return;
+        }
+        if (this.archivo === null) {
+            return;
+        }
+
+        this.escribiendo = true;
+        this.escribirEnArchivo(Buffer.from(texto))
+            .catch((error) => {
+                this.erroresEscritura++;
+                process.stderr.write(`❌ Error escribiendo el log: ${error.message}\n`);
+                this.cerrarArchivo();
+            })
+            .finally(() => {
+                this.escribiendo = false;
+                if (this.bytesPendientes >= BYTES_POR_VOLCADO) {
+                    this.volcar();
+                } else if (this.pendientes.length > 0 && this.temporizador === null) {
+                    this.temporizador = setTimeout(this.alVencer, INTERVALO_VOLCADO_MS);
+                    this.temporizador.unref();
+                }
+            });
+    }
+
+    // Añade un trozo al archivo, abriéndolo y rotándolo si hace falta
+    async escribirEnArchivo(buffer) {
+        if (this.manejador === null) {
+            this.manejador = await fs.promises.open(this.archivo, 'a');
+            this.bytesArchivo = (await this.manejador.stat()).size;
+        }
+        if (this.bytesArchivo > 0 && this.bytesArchivo + buffer.length > this.tamanyoMaximo) {
+            await this.rotar();
+        }
+        await this.manejador.writeFile(buffer);
+        this.bytesArchivo += buffer.length;
+    }
+
+    // mi_log.txt → mi_log.1.txt → mi_log.2.txt ... (el más viejo se pierde)
+    async rotar() {
+        await this.manejador.close();
+        this.manejador = null;
+        const { dir, name, ext } = path.parse(this.archivo);
+        const rotado = (i) => path.join(dir, `${name}.${i}${ext}`);
+        for (let i = this.archivosRotados - 1; i >= 1; i--) {
+            await fs.promises.rename(rotado(i), rotado(i + 1)).catch(nada);
+        }
+        await fs.promises.rename(this.archivo, rotado(1));
+        this.manejador = await fs.promises.open(this.archivo, 'a');
+        this.bytesArchivo = 0;
+        this.rotaciones++;
+    }
+
+    // Escribe lo pendiente ya (al salir del proceso no da tiempo a esperar)
+    volcarSincrono() {
+        if (this.pendientes.length === 0 && this.descartadasSinAvisar === 0) {
+            return;
+        }
+        const texto = this.sacarPendientes();
+        if (this.consola) {
+            process.stdout.write(texto);
+        }
+        if (this.salida !== null) {
+            this.salida(texto);
+            return;
+        }
+        if (this.archivo === null) {
+            return;
+        }
+        try {
+            if (this.manejador !== null) {
+                fs.writeSync(this.manejador.fd, texto);
+            } else {
+                fs.appendFileSync(this.archivo, texto);
+            }
+        } catch (error) {
+            this.erroresEscritura++;
+        }
+    }
+
+    cerrarArchivo() {
+        if (this.manejador !== null) {
+            this.manejador.close().catch(nada);
+            this.manejador = null;
+        }
+    }
+
+    // Estadísticas para /api/health
+    getEstadisticas() {
+        return {
+            nivel: this.nivel,
+            lineas_registradas: this.registradas,
+            lineas_descartadas: this.descartadas,
+            bytes_pendientes: this.bytesPendientes,
+            escrituras: this.volcados,
+            rotaciones: this.rotaciones,
+            errores_escritura: this.erroresEscritura
+        };
+    }
+}
+
+// Una sola instancia para todo el servidor
+const logger = new Logger();
+process.on('exit', () => logger.volcarSincrono());
+
+module.exports = { logger, Logger, NIVELES };
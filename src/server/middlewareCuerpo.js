@@ -0,0 +1,192 @@
+// Importar crypto para calcular y comparar la firma HMAC
+const crypto = require('crypto');
+// Importar zlib para descomprimir los cuerpos gzip/deflate
+const zlib = require('zlib');
+// Importar el logger para avisar de las firmas no válidas
+const { logger } = require('./logger');
+
+// ================================
+// MIDDLEWARE DE CUERPOS COMPRIMIDOS Y FIRMADOS
+// La app Android puede enviar el cuerpo JSON comprimido (Content-Encoding:
+// gzip | deflate) y firmado con HMAC-SHA256 (cabecera X-Firma, en hexadecimal).
+// La firma se calcula sobre los bytes tal y como llegan (ya comprimidos), así
+// que un cuerpo falso se rechaza ANTES de descomprimirlo y de parsearlo.
+// ================================
+
+// Algoritmo de la firma (debe coincidir con CodificadorCuerpo.java)
+const ALGORITMO_FIRMA = 'sha256';
+
+// Nombre de la cabecera con la firma (Express las pasa a minúsculas)
+const CABECERA_FIRMA = 'x-firma';
+
+// Tamaño máximo del cuerpo, tanto comprimido como descomprimido (como express.json)
+const LIMITE_POR_DEFECTO = 5 * 1024 * 1024;
+
+// Con pool de hilos, los cuerpos de al menos este tamaño (tal y como llegan)
+// se decodifican en un hilo; los pequeños no compensan el viaje de ida y vuelta
+const UMBRAL_HILO_POR_DEFECTO = 64 * 1024;
+
+/**
+ * Calcula la firma HMAC de un buffer
+ * @param {Buffer} bytes - bytes a firmar (tal y como viajan por la red)
+ * @param {string|Buffer} clave - clave compartida con la app
+ * @returns {string} - firma en hexadecimal (minúsculas)
+ */
+function calcularFirma(bytes, clave) {
+    return crypto.createHmac(ALGORITMO_FIRMA, clave).update(bytes).digest('hex');
+}
+
+/**
+ * Comprueba la firma recibida en tiempo constante
+ * @param {Buffer} bytes - cuerpo recibido (sin descomprimir)
+ * @param {string} firmaRecibida - valor de la cabecera X-Firma
+ * @param {string|Buffer} clave - clave compartida con la app
+ * @returns {boolean} - true si la firma es correcta
+ */
+function verificarFirma(bytes, firmaRecibida, clave) {
+    // Una firma que no es hexadecimal de 64 caracteres no hace falta ni calcularla
+    if (typeof firmaRecibida !== 'string' || !/^[0-9a-fA-F]{64}$/.test(firmaRecibida)) {
+        return false;
+    }
+    const esperada = crypto.createHmac(ALGORITMO_FIRMA, clave).update(bytes).digest();
+    return crypto.timingSafeEqual(esperada, Buffer.from(firmaRecibida, 'hex'));
+}
+
+/**
+ * Descomprime el cuerpo según su Content-Encoding
+ * El límite de salida evita que un cuerpo pequeño se infle a gigas ("zip bomb")
+ * @param {Buffer} bytes - cuerpo recibido
+ * @param {string|undefined} codificacion - valor de Content-Encoding
+ * @param {number} limite - máximo de bytes descomprimidos
+ * @returns {Promise<Buffer>} - cuerpo descomprimido
+ */
+function descomprimir(bytes, codificacion, limite = LIMITE_POR_DEFECTO) {
+    const tipo = (codificacion || 'identity').toLowerCase();
+    if (tipo === 'identity') {
+        return Promise.resolve(bytes);
+    }
+    const funcion = tipo === 'gzip' ? zlib.gunzip : tipo === 'deflate' ? zlib.inflate : null;
+    if (!funcion) {
+        const error = new Error(`Content-Encoding no soportado: "${codificacion}"`);
+        error.status = 415;
+        return Promise.reject(error);
+    }
+    // La versión asíncrona usa el pool de libuv y no bloquea el bucle de eventos
+    return new Promise((resolve, reject) => {
+        funcion(bytes, { maxOutputLength: limite }, (err, resultado) => {
+            if (err) {
+                err.status = err.code === 'ERR_BUFFER_TOO_LARGE' ? 413 : 400;
+                return reject(err);
+            }
+            resolve(resultado);
+        });
+    });
+}
+
+/**
+ * Lee el cuerpo crudo de la petición sin pasarse del límite
+ * @param {http.IncomingMessage} req - petición
+ * @param {number} limite - máximo de bytes a aceptar
+ * @returns {Promise<Buffer>} - cuerpo recibido
+ */
+function leerCuerpoCrudo(req, limite) {
+    return new Promise((resolve, reject) => {
+        const trozos = [];
+        let total = 0;
+        req.on('data', (trozo) => {
+            total += trozo.length;
+            if (total > limite) {
+                const error = new Error('Cuerpo demasiado grande');
+                error.status = 413;
+                req.destroy();
+                return reject(error);
+            }
+            trozos.push(trozo);
+        });
+        req.on('end', () => resolve(Buffer.concat(trozos, total)));
+        req.on('error', reject);
+    });
+}
+
+/**
+ * Responde 401 a un cuerpo con la firma ausente o mal
+ * @param {http.IncomingMessage} req - petición
+ * @param {http.ServerResponse} res - respuesta (de Express)
+ */
+function rechazarFirma(req, res) {
+    logger.warn(`🔏 Firma no válida en ${req.method} ${req.url} - IP: ${req.ip}`);
+    return res.status(401).json({
+        success: false,
+        error: 'Firma del cuerpo ausente o no válida'
+    });
+}
+
+/**
+ * Crea el middleware que verifica, descomprime y parsea los cuerpos JSON
+ * Se coloca ANTES de express.json(): deja req.body listo y marca req._body
+ * para que express.json() no vuelva a leer el cuerpo
+ * @param {Object} opciones
+ * @param {string} [opciones.clave] - clave HMAC; si no hay, la firma no se exige
+ * @param {number} [opciones.limite] - tamaño máximo del cuerpo en bytes
+ * @param {PoolHilos} [opciones.pool] - pool de hilos para los cuerpos grandes
+ * @param {number} [opciones.umbralHilo] - tamaño a partir del cual se usa el pool
+ * @returns {Function} - middleware de Express
+ */
+function crearMiddlewareCuerpo({ clave, limite = LIMITE_POR_DEFECTO, pool = null, umbralHilo = UMBRAL_HILO_POR_DEFECTO } = {}) {
+    return async (req, res, next) => {
+        // Solo los cuerpos JSON; GET y compañía pasan sin tocar
+        if (req._body || !req.is('application/json')) {
+            return next();
+        }
+
+        try {
+            const crudo = await leerCuerpoCrudo(req, limite);
+
+            // Cuerpo grande con pool: los tres pasos en un hilo. El buffer se
+            // transfiere (no se copia) si es suyo entero, como pasa por encima
+            // del umbral (los pequeños comparten el pool de Buffer)
+            if (pool && crudo.length >= umbralHilo) {
+                const propio = crudo.byteOffset === 0 && crudo.byteLength === crudo.buffer.byteLength;
+                const { firmaValida, cuerpo } = await pool.ejecutar('decodificarCuerpo', {
+                    bytes: crudo,
+                    firma: req.headers[CABECERA_FIRMA],
+                    clave,
+                    codificacion: req.headers['content-encoding'],
+                    limite
+                }, propio ? [crudo.buffer] : []);
+                if (!firmaValida) {
+                    return rechazarFirma(req, res);
+                }
+                req.body = cuerpo;
+                req._body = true;
+                return next();
+            }
+
+            // 1) Firma: se comprueba sobre los bytes recibidos, antes de nada más
+            if (clave && !verificarFirma(crudo, req.headers[CABECERA_FIRMA], clave)) {
+                return rechazarFirma(req, res);
+            }
+
+            // 2) Descompresión (si la hay) y 3) parseo del JSON
+            const json = await descomprimir(crudo, req.headers['content-encoding'], limite);
+            req.body = json.length === 0 ? {} : JSON.parse(json.toString('utf8'));
+            req._body = true;
+            next();
+        } catch (error) {
+            // JSON mal formado o cuerpo corrupto: petición inválida
+            res.status(error.status || 400).json({
+                success: false,
+                error: error instanceof SyntaxError || error.sintaxis ? 'El cuerpo no es JSON válido' : error.message
+            });
+        }
+    };
+}
+
+// Exportar el middleware y las funciones sueltas (se usan en los benchmarks)
+module.exports = {
+    crearMiddlewareCuerpo,
+    calcularFirma,
+    verificarFirma,
+    descomprimir,
+    CABECERA_FIRMA
+};
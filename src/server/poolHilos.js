@@ -0,0 +1,147 @@
+// ================================
+// POOL DE HILOS (worker_threads) PARA TRABAJO DE CPU
+// Un número fijo de hilos que ejecutan las tareas de tareasHilos.js fuera del
+// bucle de eventos. Se usa (si HILOS_CUERPO > 0 en el .env) para verificar la
+// firma, descomprimir y parsear los cuerpos grandes en middlewareCuerpo.js:
+// mientras un hilo parsea un lote de miles de mediciones el proceso sigue
+// atendiendo otras peticiones.
+//
+//   - Las tareas que llegan con todos los hilos ocupados esperan en una cola
+//     (como mucho "maximoCola"; por encima se rechazan con status 503)
+//   - Si un hilo muere, sus tareas fallan y se crea otro en su lugar
+//   - Los datos van por copia estructurada; los ArrayBuffer que se pasen en
+//     "transferir" se mueven al hilo sin copiarlos
+// ================================
+const path = require('path');
+const { Worker } = require('worker_threads');
+
+// Script que ejecutan los hilos
+const SCRIPT_TAREAS = path.join(__dirname, 'tareasHilos.js');
+
+// Tareas esperando hilo libre como mucho, por hilo
+const COLA_POR_HILO = 64;
+
+class PoolHilos {
+    // ------------------------------------------------------------------------
+    // @param opciones - { hilos: número de hilos, maximoCola: tareas en espera }
+    // ------------------------------------------------------------------------
+    constructor({ hilos = 2, maximoCola = hilos * COLA_POR_HILO } = {}) {
+        this.maximoCola = maximoCola;
+        this.hilos = [];
+        this.libres = [];
+        this.cola = [];
+        this.cerrado = false;
+
+        // Estadísticas
+        this.ejecutadas = 0;
+        this.rechazadas = 0;
+        this.reinicios = 0;
+
+        for (let i = 0; i < hilos; i++) {
+            this.liberar(this.crearHilo());
+        }
+    }
+
+    crearHilo() {
+        const hilo = new Worker(SCRIPT_TAREAS);
+        // Tarea en curso: { resolve, reject }
+        hilo.tarea = null;
+        hilo.on('message', ({ ok, resultado, error }) => {
+            const tarea = hilo.tarea;
+            hilo.tarea = null;
+            this.ejecutadas++;
+            if (ok) {
+                tarea.resolve(resultado);
+            } else {
+                // El error vuelve como objeto plano: se reconstruye con su status
+                tarea.reject(Object.assign(new Error(error.message), error));
+            }
+            this.liberar(hilo);
+        });
+        hilo.on('error', (error) => {
+            if (hilo.tarea) {
+                hilo.tarea.reject(error);
+                hilo.tarea = null;
+            }
+        });
+        hilo.on('exit', () => {
+            this.hilos = this.hilos.filter(h => h !== hilo);
+            this.libres = this.libres.filter(h => h !== hilo);
+            if (hilo.tarea) {
+                hilo.tarea.reject(new Error('El hilo terminó sin acabar la tarea'));
+            }
+            if (!this.cerrado) {
+                this.reinicios++;
+                this.liberar(this.crearHilo());
+            }
+        });
+        this.hilos.push(hilo);
+        return hilo;
+    }
+
+    // El hilo queda libre: coge la siguiente tarea de la cola
+    liberar(hilo) {
+        const siguiente = this.cola.shift();
+        if (siguiente) {
+            this.enviar(hilo, siguiente);
+        } else if (!this.libres.includes(hilo)) {
+            this.libres.push(hilo);
+        }
+    }
+
+    enviar(hilo, tarea) {
+        hilo.tarea = tarea;
+        hilo.postMessage({ nombre: tarea.nombre, datos: tarea.datos }, tarea.transferir);
+    }
+
+    // ------------------------------------------------------------------------
+    // Ejecuta una tarea de tareasHilos.js en el primer hilo libre
+    // @param nombre - nombre de la tarea
+    // @param datos - argumento de la tarea (copia estructurada)
+    // @param transferir - ArrayBuffers que se mueven al hilo (dejan de valer aquí)
+    // @return promesa con el resultado de la tarea
+    // ------------------------------------------------------------------------
+    ejecutar(nombre, datos, transferir = []) {
+        return new Promise((resolve, reject) => {
+            if (this.cerrado) {
+                return reject(new Error('El pool de hilos está cerrado'));
+            }
+            const tarea = { nombre, datos, transferir, resolve, reject };
+            const hilo = this.libres.pop();
+            if (hilo) {
+                return this.enviar(hilo, tarea);
+            }
+            if (this.cola.length >= this.maximoCola) {
+                this.rechazadas++;
+                const error = new Error('Servidor ocupado, reintentar más tarde');
+                error.status = 503;
+                return reject(error);
+            }
+            this.cola.push(tarea);
+        });
+    }
+
+    // Termina los hilos (las tareas en cola fallan)
+    async cerrar() {
+        this.cerrado = true;
+        for (const tarea of this.cola.splice(0)) {
+            tarea.reject(new Error('El pool de hilos está cerrado'));
+        }
+        await Promise.all(this.hilos.map(h => h.terminate()));
+    }
+
+    // Estadísticas para /api/health
+    getEstadisticas() {
+        return {
+            hilos: this.hilos.length,
+            ocupados: this.hilos.length - this.libres.length,
+            en_cola: this.cola.length,
+            ejecutadas: this.ejecutadas,
+            rechazadas: this.rechazadas,
+            reinicios: this.reinicios
+        };
+    }
+}
+
+// Exportar la clase para api.js y los benchmarks
+module.exports = { PoolHilos };
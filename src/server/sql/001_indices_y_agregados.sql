@@ -0,0 +1,91 @@
+-- ============================================================================
+-- 001_indices_y_agregados.sql
+-- Índices compuestos sobre mediciones y tablas de agregados (rollups) por
+-- minuto, hora y día para cada sensor y tipo de medición.
+-- LogicaDeNegocio actualiza los agregados en la misma transacción que el
+-- INSERT (guardarMedicion y guardarMedicionesLote) y getSerieAgregada
+-- consulta la tabla más gruesa que sirve para la resolución pedida.
+--
+-- Uso: mysql -u <usuario> -p <base_de_datos> < sql/001_indices_y_agregados.sql
+-- ============================================================================
+
+-- ----------------------------------------------------------------------------
+-- Índices sobre mediciones
+-- ----------------------------------------------------------------------------
+
+-- Consultas por tipo en un rango de fechas (getMediciones con tipo y fechas)
+CREATE INDEX idx_mediciones_tipo_fecha ON mediciones (tipo, fecha);
+
+-- Consultas por sensor en un rango de fechas (getMediciones con dispositivo)
+CREATE INDEX idx_mediciones_sensor_fecha ON mediciones (id_sensor, fecha);
+
+-- getMedicionesRecientes: ORDER BY fecha DESC LIMIT N sin filtros
+-- (ninguno de los dos compuestos empieza por fecha)
+CREATE INDEX idx_mediciones_fecha ON mediciones (fecha);
+
+-- ----------------------------------------------------------------------------
+-- Tablas de agregados
+-- Una fila por (sensor, tipo, intervalo) con el número de mediciones, la suma
+-- (para la media), el mínimo y el máximo. La clave primaria es la que usa el
+-- ON DUPLICATE KEY UPDATE de la actualización incremental
+-- ----------------------------------------------------------------------------
+
+CREATE TABLE IF NOT EXISTS mediciones_minuto (
+    id_sensor INT NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    intervalo DATETIME NOT NULL,            -- Inicio del minuto
+    n INT UNSIGNED NOT NULL,                -- Número de mediciones
+    suma DOUBLE NOT NULL,                   -- Suma de los valores
+    minimo DOUBLE NOT NULL,
+    maximo DOUBLE NOT NULL,
+    PRIMARY KEY (id_sensor, tipo, intervalo),
+    KEY idx_minuto_tipo_intervalo (tipo, intervalo)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS mediciones_hora (
+    id_sensor INT NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    intervalo DATETIME NOT NULL,            -- Inicio de la hora
+    n INT UNSIGNED NOT NULL,
+    suma DOUBLE NOT NULL,
+    minimo DOUBLE NOT NULL,
+    maximo DOUBLE NOT NULL,
+    PRIMARY KEY (id_sensor, tipo, intervalo),
+    KEY idx_hora_tipo_intervalo (tipo, intervalo)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS mediciones_dia (
+    id_sensor INT NOT NULL,
+    tipo VARCHAR(20) NOT NULL,
+    intervalo DATETIME NOT NULL,            -- Inicio del día (00:00:00)
+    n INT UNSIGNED NOT NULL,
+    suma DOUBLE NOT NULL,
+    minimo DOUBLE NOT NULL,
+    maximo DOUBLE NOT NULL,
+    PRIMARY KEY (id_sensor, tipo, intervalo),
+    KEY idx_dia_tipo_intervalo (tipo, intervalo)
+) ENGINE = InnoDB;
+
+-- ----------------------------------------------------------------------------
+-- Relleno inicial con el histórico que ya existe
+-- (ejecutar con el servidor parado para no contar dos veces lo que entre
+-- mientras tanto; después la API mantiene los agregados al insertar)
+-- Todavía no hay valor_ing (004_calibraciones.sql), así que se agrega
+-- "valor"; 005_agregados_valor_ing.sql lo rehace con COALESCE(valor_ing, valor)
+-- ----------------------------------------------------------------------------
+
+INSERT INTO mediciones_minuto (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+SELECT id_sensor, tipo, DATE_FORMAT(fecha, '%Y-%m-%d %H:%i:00'), COUNT(*), SUM(valor), MIN(valor), MAX(valor)
+FROM mediciones
+GROUP BY id_sensor, tipo, DATE_FORMAT(fecha, '%Y-%m-%d %H:%i:00');
+
+-- Las horas y los días salen de los minutos (mucho menos que leer)
+INSERT INTO mediciones_hora (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+SELECT id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d %H:00:00'), SUM(n), SUM(suma), MIN(minimo), MAX(maximo)
+FROM mediciones_minuto
+GROUP BY id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d %H:00:00');
+
+INSERT INTO mediciones_dia (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+SELECT id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d 00:00:00'), SUM(n), SUM(suma), MIN(minimo), MAX(maximo)
+FROM mediciones_hora
+GROUP BY id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d 00:00:00');
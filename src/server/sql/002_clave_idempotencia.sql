@@ -0,0 +1,17 @@
+-- ============================================================================
+-- 002_clave_idempotencia.sql
+-- Clave de idempotencia de cada medición (64 bits que calcula el Android con
+-- el sensor, el tipo, el contador del major y la ventana de la hora de
+-- captura, ver ClaveIdempotencia.java). El índice único es lo que garantiza
+-- que la misma lectura no se guarda dos veces: guardarMedicionesLote inserta
+-- con INSERT IGNORE y el filtro de Bloom de filtroClaves.js solo ahorra las
+-- consultas para confirmar las duplicadas.
+-- Las mediciones antiguas y las que llegan sin clave la tienen a NULL (un
+-- índice único admite varios NULL).
+--
+-- Uso: mysql -u <usuario> -p <base_de_datos> < sql/002_clave_idempotencia.sql
+-- ============================================================================
+
+ALTER TABLE mediciones
+    ADD COLUMN clave BINARY(8) NULL,
+    ADD UNIQUE KEY uq_mediciones_clave (clave);
@@ -0,0 +1,16 @@
+-- ============================================================================
+-- 003_colector_y_rssi.sql
+-- Quién subió cada medición y con qué RSSI la oyó. Cuando varios móviles o
+-- pasarelas (colectores) oyen el mismo sensor, fusionColectores.js junta las
+-- copias de la misma lectura y se queda con la del colector que mejor la oye;
+-- asignadorColectores.js usa esos RSSI para decirle a cada colector qué
+-- sensores le toca subir.
+-- Las mediciones antiguas y las que llegan sin colector o sin RSSI los tienen
+-- a NULL.
+--
+-- Uso: mysql -u <usuario> -p <base_de_datos> < sql/003_colector_y_rssi.sql
+-- ============================================================================
+
+ALTER TABLE mediciones
+    ADD COLUMN colector VARCHAR(64) NULL,
+    ADD COLUMN rssi SMALLINT NULL;
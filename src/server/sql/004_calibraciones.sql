@@ -0,0 +1,29 @@
+-- ============================================================================
+-- 004_calibraciones.sql
+-- Calibración de los sensores. El Android pasa el valor crudo del minor de
+-- cada lectura a unidades de ingeniería (ppm, ºC) con la curva de su sensor
+-- (tabla calibraciones, la descarga de GET /api/calibraciones) y lo sube en
+-- "valor_ing" junto al crudo, que se sigue guardando en "valor".
+-- Las mediciones antiguas y las de sensores sin curva tienen valor_ing a NULL.
+--
+-- Cada curva es:
+--   - forma 'polinomio': puntos = [c0, c1, c2, ...] (valor = c0 + c1·crudo + ...)
+--   - forma 'tramos':    puntos = [[crudo, valor], ...] con crudos crecientes
+--                        (0..65535), rectas entre ellos
+-- Los sensores sin fila usan las curvas de fábrica del Android (el gas ya en
+-- ppm y la temperatura en ºC como entero con signo de 16 bits).
+--
+-- Uso: mysql -u <usuario> -p <base_de_datos> < sql/004_calibraciones.sql
+-- ============================================================================
+
+ALTER TABLE mediciones
+    ADD COLUMN valor_ing DOUBLE NULL;
+
+CREATE TABLE IF NOT EXISTS calibraciones (
+    sensor VARCHAR(17) NOT NULL,     -- Dirección Bluetooth del sensor (D4:36:...)
+    tipo VARCHAR(20) NOT NULL,       -- 'gas' o 'temperatura'
+    forma VARCHAR(10) NOT NULL,      -- 'polinomio' o 'tramos'
+    puntos JSON NOT NULL,
+    actualizada TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (sensor, tipo)
+);
@@ -0,0 +1,37 @@
+-- ============================================================================
+-- 005_agregados_valor_ing.sql
+-- Rehace las tablas de agregados con el valor en unidades de ingeniería.
+-- Desde 004_calibraciones.sql, en las mediciones que traen valor_ing la
+-- columna "valor" guarda el crudo de 16 bits del minor (-12 ºC es 65524), así
+-- que los agregados, las series y las estadísticas usan
+-- COALESCE(valor_ing, valor). El relleno de 001_indices_y_agregados.sql se
+-- hizo cuando todavía no había valor_ing; este vuelve a calcular los tres
+-- niveles con el valor bueno para las mediciones calibradas que ya se
+-- guardaron.
+--
+-- Ejecutar con el servidor parado (como el relleno de 001): lo que entre
+-- mientras tanto se contaría dos veces.
+--
+-- Uso: mysql -u <usuario> -p <base_de_datos> < sql/005_agregados_valor_ing.sql
+-- ============================================================================
+
+DELETE FROM mediciones_minuto;
+DELETE FROM mediciones_hora;
+DELETE FROM mediciones_dia;
+
+INSERT INTO mediciones_minuto (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+SELECT id_sensor, tipo, DATE_FORMAT(fecha, '%Y-%m-%d %H:%i:00'), COUNT(*),
+       SUM(COALESCE(valor_ing, valor)), MIN(COALESCE(valor_ing, valor)), MAX(COALESCE(valor_ing, valor))
+FROM mediciones
+GROUP BY id_sensor, tipo, DATE_FORMAT(fecha, '%Y-%m-%d %H:%i:00');
+
+-- Las horas y los días salen de los minutos (mucho menos que leer)
+INSERT INTO mediciones_hora (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+SELECT id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d %H:00:00'), SUM(n), SUM(suma), MIN(minimo), MAX(maximo)
+FROM mediciones_minuto
+GROUP BY id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d %H:00:00');
+
+INSERT INTO mediciones_dia (id_sensor, tipo, intervalo, n, suma, minimo, maximo)
+SELECT id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d 00:00:00'), SUM(n), SUM(suma), MIN(minimo), MAX(maximo)
+FROM mediciones_hora
+GROUP BY id_sensor, tipo, DATE_FORMAT(intervalo, '%Y-%m-%d 00:00:00');
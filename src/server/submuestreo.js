@@ -0,0 +1,266 @@
+// ================================
+// SUBMUESTREO DE SERIES PARA GRÁFICAS
+// Reduce una serie (instante, valor) a como mucho N puntos conservando su
+// forma, en UNA pasada y en orden de tiempo: los puntos se van anotando según
+// llegan de la base de datos y no hace falta tener la serie entera en memoria.
+// El rango [desde, hasta] se parte en cubetas de igual duración.
+//
+//   - SubmuestreoLTTB (Largest-Triangle-Three-Buckets): de cada cubeta se
+//     queda el punto que forma el triángulo más grande con el punto elegido en
+//     la cubeta anterior y la media de la siguiente. Conserva picos y cambios
+//     de pendiente con un punto por cubeta. Como necesita la media de la
+//     cubeta siguiente, va una cubeta por detrás: solo guarda los puntos de
+//     dos cubetas a la vez.
+//   - SubmuestreoMinMax: de cada cubeta se queda el mínimo y el máximo (en el
+//     orden en que ocurrieron). Nunca pierde un extremo; dos puntos por cubeta
+//     y memoria constante.
+//
+// En los dos, el primer y el último punto de la serie se conservan siempre.
+// ================================
+
+// Mínimo de puntos que se pueden pedir (primero, último y el mínimo y el
+// máximo de una cubeta)
+const MINIMO_PUNTOS = 4;
+
+// Lista de puntos (t, v) en arrays tipados que crecen según hace falta
+// (se reutiliza al pasar de una cubeta a otra, sin crear objetos por punto)
+class ListaPuntos {
+    constructor() {
+        this.t = new Float64Array(64);
+        this.v = new Float64Array(64);
+        this.n = 0;
+        this.sumaT = 0;
+        this.sumaV = 0;
+    }
+
+    anotar(t, v) {
+        if (this.n === this.t.length) {
+            const t2 = new Float64Array(this.n * 2);
+            const v2 = new Float64Array(this.n * 2);
+            t2.set(this.t);
+            v2.set(this.v);
+            this.t = t2;
+            this.v = v2;
+        }
+        this.t[this.n] = t;
+        this.v[this.n] = v;
+        this.n++;
+        this.sumaT += t;
+        this.sumaV += v;
+    }
+
+    // Quita el último punto anotado
+    quitarUltimo() {
+        this.n--;
+        this.sumaT -= this.t[this.n];
+        this.sumaV -= this.v[this.n];
+    }
+
+    vaciar() {
+        this.n = 0;
+        this.sumaT = 0;
+        this.sumaV = 0;
+    }
+}
+
+// Base común: reparto en cubetas y lista de salida
+class Submuestreo {
+    // ------------------------------------------------------------------------
+    // @param desde, hasta - rango de la serie (ms)
+    // @param cubetas - número de cubetas en que se parte
+    // ------------------------------------------------------------------------
+    constructor(desde, hasta, cubetas) {
+        this.desde = desde;
+        this.cubetas = cubetas;
+        this.anchoMs = Math.max(1, (hasta - desde) / cubetas);
+        // Puntos elegidos: [instante ms, valor]
+        this.puntos = [];
+        // Puntos de entrada anotados (para las estadísticas)
+        this.leidos = 0;
+    }
+
+    // Cubeta en la que cae un instante (los de fuera del rango van a los extremos)
+    cubeta(t) {
+        return Math.min(this.cubetas - 1, Math.max(0, Math.floor((t - this.desde) / this.anchoMs)));
+    }
+}
+
+// ============================================================================
+// Largest-Triangle-Three-Buckets con cubetas de igual duración
+// ============================================================================
+class SubmuestreoLTTB extends Submuestreo {
+    constructor(desde, hasta, puntos) {
+        // El primero y el último van aparte
+        super(desde, hasta, Math.max(1, puntos - 2));
+        this.hayPrimero = false;
+        // Último punto elegido (vértice "a" del triángulo)
+        this.aT = 0;
+        this.aV = 0;
+        // Cubeta esperando a que se complete la siguiente, y la que se llena ahora
+        this.pendiente = new ListaPuntos();
+        this.actual = new ListaPuntos();
+        this.cubetaActual = -1;
+    }
+
+    // Anota el siguiente punto de la serie (en orden de tiempo)
+    anotar(t, v) {
+        this.leidos++;
+        if (!this.hayPrimero) {
+            this.hayPrimero = true;
+            this.aT = t;
+            this.aV = v;
+            this.puntos.push([t, v]);
+            return;
+        }
+        const b = this.cubeta(t);
+        if (b !== this.cubetaActual && this.actual.n > 0) {
+            // La cubeta actual ya está completa: ya se sabe su media, así que
+            // se puede elegir el punto de la pendiente
+            if (this.pendiente.n > 0) {
+                this.elegir(this.pendiente, this.actual.sumaT / this.actual.n, this.actual.sumaV / this.actual.n);
+            }
+            const vacia = this.pendiente;
+            vacia.vaciar();
+            this.pendiente = this.actual;
+            this.actual = vacia;
+        }
+        this.cubetaActual = b;
+        this.actual.anotar(t, v);
+    }
+
+    // Elige de "lista" el punto con el triángulo más grande entre el último
+    // elegido (a) y el punto (cT, cV)
+    elegir(lista, cT, cV) {
+        let mejor = 0;
+        let mejorArea = -1;
+        for (let i = 0; i < lista.n; i++) {
+            // El doble del área (no hace falta dividir para comparar)
+            const area = Math.abs((this.aT - cT) * (lista.v[i] - this.aV) - (this.aT - lista.t[i]) * (cV - this.aV));
+            if (area > mejorArea) {
+                mejorArea = area;
+                mejor = i;
+            }
+        }
+        this.aT = lista.t[mejor];
+        this.aV = lista.v[mejor];
+        this.puntos.push([this.aT, this.aV]);
+    }
+
+    // Termina la serie: elige lo que quede y añade el último punto
+    // @return array de [instante ms, valor]
+    terminar() {
+        if (this.actual.n === 0 && this.pendiente.n === 0) {
+            return this.puntos;
+        }
+        // El último punto anotado va aparte (siempre se conserva)
+        const ultima = this.actual.n > 0 ? this.actual : this.pendiente;
+        const ultimoT = ultima.t[ultima.n - 1];
+        const ultimoV = ultima.v[ultima.n - 1];
+        ultima.quitarUltimo();
+
+        if (this.pendiente.n > 0) {
+            if (this.actual.n > 0) {
+                this.elegir(this.pendiente, this.actual.sumaT / this.actual.n, this.actual.sumaV / this.actual.n);
+            } else {
+                this.elegir(this.pendiente, ultimoT, ultimoV);
+            }
+        }
+        if (this.actual.n > 0) {
+            this.elegir(this.actual, ultimoT, ultimoV);
+        }
+        this.pendiente.vaciar();
+        this.actual.vaciar();
+        this.puntos.push([ultimoT, ultimoV]);
+        return this.puntos;
+    }
+}
+
+// ============================================================================
+// Mínimo y máximo por cubeta
+// ============================================================================
+class SubmuestreoMinMax extends Submuestreo {
+    constructor(desde, hasta, puntos) {
+        // Dos puntos por cubeta, más el primero y el último
+        super(desde, hasta, Math.max(1, Math.floor((puntos - 2) / 2)));
+        this.hayPrimero = false;
+        this.cubetaActual = -1;
+        this.nCubeta = 0;
+        this.minT = 0;
+        this.minV = 0;
+        this.maxT = 0;
+        this.maxV = 0;
+        // El último punto anotado (se emite al terminar)
+        this.ultimoT = 0;
+        this.ultimoV = 0;
+        this.hayUltimo = false;
+    }
+
+    // Anota el siguiente punto de la serie (en orden de tiempo)
+    anotar(t, v) {
+        this.leidos++;
+        if (!this.hayPrimero) {
+            this.hayPrimero = true;
+            this.puntos.push([t, v]);
+            return;
+        }
+        // El último anotado no entra en su cubeta hasta que llega otro detrás
+        if (this.hayUltimo) {
+            this.anotarEnCubeta(this.ultimoT, this.ultimoV);
+        }
+        this.ultimoT = t;
+        this.ultimoV = v;
+        this.hayUltimo = true;
+    }
+
+    anotarEnCubeta(t, v) {
+        const b = this.cubeta(t);
+        if (b !== this.cubetaActual) {
+            this.cerrarCubeta();
+            this.cubetaActual = b;
+        }
+        if (this.nCubeta === 0 || v < this.minV) {
+            this.minT = t;
+            this.minV = v;
+        }
+        if (this.nCubeta === 0 || v > this.maxV) {
+            this.maxT = t;
+            this.maxV = v;
+        }
+        this.nCubeta++;
+    }
+
+    // Emite el mínimo y el máximo de la cubeta en curso, en orden de tiempo
+    cerrarCubeta() {
+        if (this.nCubeta === 0) {
+            return;
+        }
+        if (this.minT === this.maxT && this.minV === this.maxV) {
+            this.puntos.push([this.minT, this.minV]);
+        } else if (this.minT <= this.maxT) {
+            this.puntos.push([this.minT, this.minV], [this.maxT, this.maxV]);
+        } else {
+            this.puntos.push([this.maxT, this.maxV], [this.minT, this.minV]);
+        }
+        this.nCubeta = 0;
+    }
+
+    // Termina la serie: emite la última cubeta y el último punto
+    // @return array de [instante ms, valor]
+    terminar() {
+        this.cerrarCubeta();
+        if (this.hayUltimo) {
+            this.puntos.push([this.ultimoT, this.ultimoV]);
+            this.hayUltimo = false;
+        }
+        return this.puntos;
+    }
+}
+
+// Métodos disponibles por nombre (parámetro "metodo" de la API)
+const METODOS_SUBMUESTREO = {
+    lttb: SubmuestreoLTTB,
+    minmax: SubmuestreoMinMax
+};
+
+// Exportar las clases para LogicaDeNegocio y los benchmarks
+module.exports = { SubmuestreoLTTB, SubmuestreoMinMax, METODOS_SUBMUESTREO, MINIMO_PUNTOS };
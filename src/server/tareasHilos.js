@@ -0,0 +1,40 @@
+// ================================
+// TAREAS QUE EJECUTAN LOS HILOS DE poolHilos.js
+// Cada mensaje es { nombre, datos } y se contesta con { ok, resultado } o
+// { ok: false, error: { message, status } }. Un hilo hace una tarea a la vez.
+// ================================
+const { parentPort } = require('worker_threads');
+const { verificarFirma, descomprimir } = require('./middlewareCuerpo');
+
+const TAREAS = {
+    // ------------------------------------------------------------------------
+    // Lo mismo que middlewareCuerpo.js hace en el proceso: firma, descompresión
+    // y parseo de un cuerpo JSON
+    // @param datos - { bytes (Uint8Array), firma, clave, codificacion, limite }
+    // @return { firmaValida: false } o { firmaValida: true, cuerpo }
+    // ------------------------------------------------------------------------
+    async decodificarCuerpo({ bytes, firma, clave, codificacion, limite }) {
+        const crudo = Buffer.from(bytes.buffer, bytes.byteOffset, bytes.byteLength);
+        if (clave && !verificarFirma(crudo, firma, clave)) {
+            return { firmaValida: false };
+        }
+        const json = await descomprimir(crudo, codificacion, limite);
+        return { firmaValida: true, cuerpo: json.length === 0 ? {} : JSON.parse(json.toString('utf8')) };
+    }
+};
+
+parentPort.on('message', async ({ nombre, datos }) => {
+    try {
+        const tarea = TAREAS[nombre];
+        if (!tarea) {
+            throw new Error(`Tarea desconocida: ${nombre}`);
+        }
+        parentPort.postMessage({ ok: true, resultado: await tarea(datos) });
+    } catch (error) {
+        // SyntaxError se marca para que el middleware dé el mismo mensaje
+        parentPort.postMessage({
+            ok: false,
+            error: { message: error.message, status: error.status, sintaxis: error instanceof SyntaxError }
+        });
+    }
+});